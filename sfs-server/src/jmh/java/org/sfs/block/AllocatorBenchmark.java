@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.block;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+// Compares alloc and free latency of the allocators when the free space is split
+// into freeRanges holes of between one and sixteen blocks. The heap retained by the
+// free ranges is reported as the retainedBytes and bytesPerFreeRange counters so that
+// memory per million free ranges can be read off the freeRanges=1000000 run. Run with
+// -prof gc to see the garbage made per operation.
+//
+// mvn -Pjmh test-compile exec:exec -Djmh.benchmarks=AllocatorBenchmark
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocatorBenchmark {
+
+    // the data file block size
+    private static final int BLOCK_SIZE = 8;
+
+    @Param({"RECYCLING", "EXTENT"})
+    public AllocatorType allocatorType;
+
+    @Param({"1000", "1000000"})
+    public int freeRanges;
+
+    private Allocator allocator;
+    private long[] holes;
+    private long[] lengths;
+    private int next = 0;
+    private long retainedBytes;
+    private long bytesPerFreeRange;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        holes = new long[freeRanges];
+        lengths = new long[freeRanges];
+        long usedBefore = usedHeap();
+        allocator = allocatorType.create(BLOCK_SIZE);
+        for (int i = 0; i < freeRanges; i++) {
+            long length = BLOCK_SIZE * (1 + random.nextInt(16));
+            holes[i] = allocator.allocFromLastRange(length);
+            lengths[i] = length;
+            // keeps the holes from merging
+            allocator.allocFromLastRange(BLOCK_SIZE);
+        }
+        for (int i = 0; i < freeRanges; i++) {
+            allocator.free(holes[i], lengths[i]);
+        }
+        retainedBytes = usedHeap() - usedBefore;
+        bytesPerFreeRange = retainedBytes / allocator.getNumberOfFreeRanges();
+    }
+
+    // the counters are read at the end of every iteration so they're set again for each one
+    @Setup(Level.Iteration)
+    public void setupCounters(RetainedHeap retainedHeap) {
+        retainedHeap.retainedBytes = retainedBytes;
+        retainedHeap.bytesPerFreeRange = bytesPerFreeRange;
+    }
+
+    // takes a hole and gives it back so the number of free ranges stays the same
+    @Benchmark
+    public long allocNextAvailableAndFree(RetainedHeap retainedHeap) {
+        int index = nextIndex();
+        long position = allocator.allocNextAvailable(lengths[index]);
+        allocator.free(position, lengths[index]);
+        return position;
+    }
+
+    // the path taken when a volume rebuilds its allocators from the index
+    @Benchmark
+    public long allocAtPositionAndFree(RetainedHeap retainedHeap) {
+        int index = nextIndex();
+        long position = allocator.alloc(holes[index], lengths[index]);
+        allocator.free(holes[index], lengths[index]);
+        return position;
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = next + 1 == freeRanges ? 0 : next + 1;
+        return index;
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class RetainedHeap {
+
+        public long retainedBytes;
+        public long bytesPerFreeRange;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
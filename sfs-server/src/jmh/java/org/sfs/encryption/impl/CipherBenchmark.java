@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.encryption.impl;
+
+import io.vertx.core.buffer.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sfs.encryption.Algorithm;
+import org.sfs.io.CipherEndableWriteStream;
+import org.sfs.io.NullEndableWriteStream;
+
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+// Compares segment encryption and decryption throughput of the jce and bouncy castle
+// chunk cipher backends and the unchunked bouncy castle algorithm.
+//
+// mvn -Pjmh test-compile exec:exec -Djmh.benchmarks=CipherBenchmark
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CipherBenchmark {
+
+    // the size of the buffers the volumes and http connections hand us
+    private static final int WRITE_SIZE = 8192;
+
+    @Param({"SCAES256v01-JCE", "SCAES256v01-BOUNCY_CASTLE", "SAES256v01"})
+    public String algorithmName;
+
+    @Param({"65536", "8388608"})
+    public int size;
+
+    private Algorithm algorithm;
+    private Buffer[] plainText;
+    private Buffer[] cipherText;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        byte[] secret = new byte[32];
+        byte[] salt = new byte[12];
+        random.nextBytes(secret);
+        random.nextBytes(salt);
+        switch (algorithmName) {
+            case "SCAES256v01-JCE":
+                algorithm = new SCAES256v01(secret, salt, ChunkCipherBackend.JCE);
+                break;
+            case "SCAES256v01-BOUNCY_CASTLE":
+                algorithm = new SCAES256v01(secret, salt, ChunkCipherBackend.BOUNCY_CASTLE);
+                break;
+            case "SAES256v01":
+                algorithm = new SAES256v01(secret, salt);
+                break;
+            default:
+                throw new IllegalArgumentException(algorithmName);
+        }
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        plainText = split(data);
+        cipherText = split(algorithm.encrypt(data));
+    }
+
+    @Benchmark
+    public void encrypt() {
+        CipherEndableWriteStream writeStream = algorithm.encrypt(new NullEndableWriteStream());
+        for (Buffer buffer : plainText) {
+            writeStream.write(buffer);
+        }
+        writeStream.end();
+    }
+
+    @Benchmark
+    public void decrypt() {
+        CipherEndableWriteStream writeStream = algorithm.decrypt(new NullEndableWriteStream());
+        for (Buffer buffer : cipherText) {
+            writeStream.write(buffer);
+        }
+        writeStream.end();
+    }
+
+    protected static Buffer[] split(byte[] data) {
+        Buffer buffer = Buffer.buffer(data);
+        int count = (data.length + WRITE_SIZE - 1) / WRITE_SIZE;
+        Buffer[] buffers = new Buffer[count];
+        for (int i = 0; i < count; i++) {
+            int offset = i * WRITE_SIZE;
+            buffers[i] = buffer.slice(offset, Math.min(offset + WRITE_SIZE, data.length));
+        }
+        return buffers;
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes;
+
+import com.google.common.base.Ticker;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+// Replays placement decisions against a synthetic cluster so that placement policies can
+// be compared offline. Each volume writes at a fixed rate, one at a time, and one volume
+// is degraded. Uploads arrive at random and each one is placed using the stats a real
+// compute node would have: space and write queues as of the last one second refresh,
+// and its own in flight writes and observed latencies. The simulation is deterministic so
+// one iteration is enough. The score is only how long the simulation took, the results are
+// the uploads, meanMs, p99Ms, maxQueueMb and bytesMaxToMean counters.
+//
+// mvn -Pjmh test-compile exec:exec -Djmh.benchmarks=VolumePlacementSimulation
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(1)
+public class VolumePlacementSimulation {
+
+    private static final int NUMBER_OF_RACKS = 3;
+    private static final int NODES_PER_RACK = 4;
+    private static final int VOLUMES_PER_NODE = 4;
+    private static final int NUMBER_OF_COMPUTE_NODES = 4;
+    private static final int NUMBER_OF_COPIES = 3;
+    private static final long VOLUME_CAPACITY = 4L * 1024 * 1024 * 1024 * 1024;
+    private static final double VOLUME_BYTES_PER_MS = 150 * 1024;
+    private static final double DEGRADED_BYTES_PER_MS = 15 * 1024;
+    private static final long REFRESH_INTERVAL = 1000;
+    private static final long DURATION = 10 * 60 * 1000;
+    // about 60% of what the volumes can write with the object mix below
+    private static final double UPLOADS_PER_MS = 0.08;
+    // the object mix, sizes and how often they're uploaded
+    private static final long[] OBJECT_SIZES = new long[]{64L * 1024, 1024L * 1024, 16L * 1024 * 1024, 256L * 1024 * 1024, 5L * 1024 * 1024 * 1024};
+    private static final double[] OBJECT_WEIGHTS = new double[]{0.5, 0.3, 0.15, 0.0495, 0.0005};
+
+    @Param({"MOST_FREE_SPACE", "POWER_OF_TWO_CHOICES"})
+    public VolumePlacement placement;
+
+    private Random random;
+    private List<SimulatedVolume> volumes;
+    private VolumeWriteStats[] computeNodeStats;
+    // the simulated time in milliseconds
+    private double now;
+
+    @Benchmark
+    public void simulate(Results results) {
+        random = new Random(0);
+        volumes = new ArrayList<>();
+        computeNodeStats = new VolumeWriteStats[NUMBER_OF_COMPUTE_NODES];
+        now = 0;
+        for (int rack = 0; rack < NUMBER_OF_RACKS; rack++) {
+            for (int node = 0; node < NODES_PER_RACK; node++) {
+                for (int volume = 0; volume < VOLUMES_PER_NODE; volume++) {
+                    String nodeId = "rack" + rack + "-node" + node;
+                    boolean degraded = volumes.isEmpty();
+                    volumes.add(new SimulatedVolume(nodeId + "-volume" + volume, nodeId, "rack" + rack, degraded ? DEGRADED_BYTES_PER_MS : VOLUME_BYTES_PER_MS));
+                }
+            }
+        }
+        // the latencies decay with the simulated time instead of the wall clock
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return (long) (now * 1000000);
+            }
+        };
+        for (int i = 0; i < computeNodeStats.length; i++) {
+            computeNodeStats[i] = new VolumeWriteStats(0, ticker);
+        }
+
+        PriorityQueue<Completion> completions = new PriorityQueue<>();
+        List<Long> uploadLatencies = new ArrayList<>();
+        long maxQueueBytes = 0;
+        long nextRefresh = 0;
+        while (now < DURATION) {
+            now += -Math.log(1 - random.nextDouble()) / UPLOADS_PER_MS;
+
+            // finish the writes that completed before this upload arrived
+            while (!completions.isEmpty() && completions.peek().time <= now) {
+                Completion completion = completions.poll();
+                completion.volume.queueBytes -= completion.length;
+                completion.stats.end(completion.volume.volumeId, (long) (completion.time - completion.start), completion.length, false);
+            }
+
+            if (now >= nextRefresh) {
+                for (SimulatedVolume volume : volumes) {
+                    volume.refresh();
+                }
+                nextRefresh += REFRESH_INTERVAL;
+            }
+
+            long length = objectSize();
+            VolumeWriteStats stats = computeNodeStats[random.nextInt(computeNodeStats.length)];
+
+            List<VolumeCandidate> candidates = new ArrayList<>(volumes.size());
+            for (SimulatedVolume volume : volumes) {
+                if (volume.reportedUsableSpace * 0.90 >= length) {
+                    candidates.add(volume.toCandidate(stats));
+                }
+            }
+
+            // same node rule of VolumeReplicaGroup
+            Set<String> usedNodes = new HashSet<>();
+            double uploadDone = now;
+            for (VolumeCandidate candidate : placement.order(candidates, NUMBER_OF_COPIES, random)) {
+                if (usedNodes.size() >= NUMBER_OF_COPIES) {
+                    break;
+                }
+                if (usedNodes.add(candidate.getNodeId())) {
+                    SimulatedVolume volume = volume(candidate.getVolumeId());
+                    double done = volume.write(now, length);
+                    stats.begin(volume.volumeId);
+                    completions.add(new Completion(volume, stats, now, done, length));
+                    maxQueueBytes = Math.max(maxQueueBytes, volume.queueBytes);
+                    uploadDone = Math.max(uploadDone, done);
+                }
+            }
+            uploadLatencies.add((long) (uploadDone - now));
+        }
+
+        long[] sorted = new long[uploadLatencies.size()];
+        long sum = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = uploadLatencies.get(i);
+            sum += sorted[i];
+        }
+        Arrays.sort(sorted);
+        long maxWritten = 0;
+        long totalWritten = 0;
+        for (SimulatedVolume volume : volumes) {
+            maxWritten = Math.max(maxWritten, volume.written);
+            totalWritten += volume.written;
+        }
+        results.uploads = sorted.length;
+        results.meanMs = sum / (double) sorted.length;
+        results.p99Ms = sorted[(int) Math.ceil(0.99 * sorted.length) - 1];
+        results.maxQueueMb = maxQueueBytes / (1024d * 1024d);
+        results.bytesMaxToMean = maxWritten / (totalWritten / (double) volumes.size());
+    }
+
+    private long objectSize() {
+        double target = random.nextDouble();
+        for (int i = 0; i < OBJECT_SIZES.length; i++) {
+            target -= OBJECT_WEIGHTS[i];
+            if (target < 0) {
+                return OBJECT_SIZES[i];
+            }
+        }
+        return OBJECT_SIZES[OBJECT_SIZES.length - 1];
+    }
+
+    private SimulatedVolume volume(String volumeId) {
+        for (SimulatedVolume volume : volumes) {
+            if (volume.volumeId.equals(volumeId)) {
+                return volume;
+            }
+        }
+        throw new IllegalStateException(volumeId);
+    }
+
+    // the counters are set once per iteration and each iteration is a single simulation
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Results {
+
+        public long uploads;
+        public double meanMs;
+        public long p99Ms;
+        public double maxQueueMb;
+        public double bytesMaxToMean;
+    }
+
+    private static class SimulatedVolume {
+
+        private final String volumeId;
+        private final String nodeId;
+        private final String rack;
+        private final double bytesPerMs;
+        private double busyUntil = 0;
+        private long usableSpace = VOLUME_CAPACITY;
+        private long queueBytes = 0;
+        private long written = 0;
+        private long reportedUsableSpace = VOLUME_CAPACITY;
+        private long reportedQueueBytes = 0;
+
+        public SimulatedVolume(String volumeId, String nodeId, String rack, double bytesPerMs) {
+            this.volumeId = volumeId;
+            this.nodeId = nodeId;
+            this.rack = rack;
+            this.bytesPerMs = bytesPerMs;
+        }
+
+        // returns when the write will be done
+        public double write(double now, long length) {
+            busyUntil = Math.max(now, busyUntil) + length / bytesPerMs;
+            usableSpace -= length;
+            queueBytes += length;
+            written += length;
+            return busyUntil;
+        }
+
+        public void refresh() {
+            reportedUsableSpace = usableSpace;
+            reportedQueueBytes = queueBytes;
+        }
+
+        public VolumeCandidate toCandidate(VolumeWriteStats stats) {
+            return new VolumeCandidate(volumeId, nodeId, rack, reportedUsableSpace, reportedQueueBytes, stats.inFlight(volumeId), stats.latency(volumeId));
+        }
+    }
+
+    private static class Completion implements Comparable<Completion> {
+
+        private final SimulatedVolume volume;
+        private final VolumeWriteStats stats;
+        private final double start;
+        private final double time;
+        private final long length;
+
+        public Completion(SimulatedVolume volume, VolumeWriteStats stats, double start, double time, long length) {
+            this.volume = volume;
+            this.stats = stats;
+            this.start = start;
+            this.time = time;
+            this.length = length;
+        }
+
+        @Override
+        public int compareTo(Completion o) {
+            return Double.compare(time, o.time);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+// Measures the throughput of each digest over object sizes from 64KB to 5GB, fed in
+// 64KB buffers like the upload path does. An operation is one buffer and the digest
+// is finished every objectSize bytes, so multiply the score by 64KB for bytes per
+// second without having to hash a whole 5GB object per operation.
+//
+// mvn -Pjmh test-compile exec:exec -Djmh.benchmarks=MessageDigestBenchmark
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageDigestBenchmark {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Param({"SHA512", "SHA256", "MD5", "XXHASH64", "CRC32C"})
+    public MessageDigestFactory messageDigestFactory;
+
+    @Param({"65536", "1048576", "67108864", "1073741824", "5368709120"})
+    public long objectSize;
+
+    private MessageDigest messageDigest;
+    private byte[] buffer;
+    private long remaining;
+
+    @Setup
+    public void setup() {
+        buffer = new byte[BUFFER_SIZE];
+        new Random(0).nextBytes(buffer);
+        messageDigest = messageDigestFactory.instance();
+        remaining = objectSize;
+    }
+
+    @Benchmark
+    public byte[] update() {
+        int length = (int) Math.min(remaining, buffer.length);
+        messageDigest.update(buffer, 0, length);
+        remaining -= length;
+        if (remaining <= 0) {
+            remaining = objectSize;
+            return messageDigest.digest();
+        }
+        return buffer;
+    }
+}
@@ -22,6 +22,8 @@ import io.vertx.core.Context;
 import io.vertx.core.http.HttpClient;
 import org.sfs.auth.AuthProviderService;
 import org.sfs.elasticsearch.Elasticsearch;
+import org.sfs.elasticsearch.MetadataCache;
+import org.sfs.elasticsearch.UsageCounters;
 import org.sfs.encryption.AwsKms;
 import org.sfs.encryption.AzureKms;
 import org.sfs.encryption.ContainerKeys;
@@ -66,6 +68,10 @@ public abstract class Server extends AbstractVerticle implements SfsVerticle {
 
     public abstract ContainerKeys containerKeys();
 
+    public abstract MetadataCache metadataCache();
+
+    public abstract UsageCounters usageCounters();
+
     public abstract HttpClient httpClient(boolean https);
 
     public abstract ClusterInfo getClusterInfo();
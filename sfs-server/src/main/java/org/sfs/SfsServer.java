@@ -28,6 +28,8 @@ import io.vertx.core.logging.LoggerFactory;
 import io.vertx.core.shareddata.Lock;
 import org.sfs.auth.AuthProviderService;
 import org.sfs.elasticsearch.Elasticsearch;
+import org.sfs.elasticsearch.MetadataCache;
+import org.sfs.elasticsearch.UsageCounters;
 import org.sfs.encryption.AwsKms;
 import org.sfs.encryption.AzureKms;
 import org.sfs.encryption.ContainerKeys;
@@ -244,6 +246,16 @@ public class SfsServer extends Server {
         return getDelegate().containerKeys();
     }
 
+    @Override
+    public MetadataCache metadataCache() {
+        return getDelegate().metadataCache();
+    }
+
+    @Override
+    public UsageCounters usageCounters() {
+        return getDelegate().usageCounters();
+    }
+
     @Override
     public ClusterInfo getClusterInfo() {
         return getDelegate().getClusterInfo();
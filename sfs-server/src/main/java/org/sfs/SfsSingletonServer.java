@@ -25,10 +25,14 @@ import io.vertx.core.Context;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.http.Http2Settings;
 import io.vertx.core.http.HttpClient;
 import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpConnection;
 import io.vertx.core.http.HttpServer;
 import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpVersion;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
@@ -36,7 +40,10 @@ import io.vertx.core.shareddata.Shareable;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import org.sfs.auth.AuthProviderService;
+import org.sfs.block.AllocatorType;
 import org.sfs.elasticsearch.Elasticsearch;
+import org.sfs.elasticsearch.MetadataCache;
+import org.sfs.elasticsearch.UsageCounters;
 import org.sfs.encryption.AwsKms;
 import org.sfs.encryption.AzureKms;
 import org.sfs.encryption.ContainerKeys;
@@ -46,9 +53,13 @@ import org.sfs.jobs.Jobs;
 import org.sfs.nodes.ClusterInfo;
 import org.sfs.nodes.NodeStats;
 import org.sfs.nodes.Nodes;
+import org.sfs.nodes.VolumePlacement;
 import org.sfs.nodes.all.elasticsearch.RefreshIndex;
+import org.sfs.nodes.all.metadata.InvalidateMetadata;
 import org.sfs.nodes.all.stats.GetClusterStats;
 import org.sfs.nodes.all.stats.GetNodeStats;
+import org.sfs.nodes.all.stats.GossipClusterState;
+import org.sfs.nodes.all.usage.FlushUsageCounters;
 import org.sfs.nodes.compute.account.DeleteAccount;
 import org.sfs.nodes.compute.account.GetAccount;
 import org.sfs.nodes.compute.account.GetAccountMeta;
@@ -83,11 +94,15 @@ import org.sfs.nodes.compute.object.VerifyRepairObjectStop;
 import org.sfs.nodes.compute.test.ResetForTest;
 import org.sfs.nodes.compute.test.UpdateClusterStats;
 import org.sfs.nodes.data.AckBlob;
+import org.sfs.nodes.data.AckBlobs;
 import org.sfs.nodes.data.CanReadVolume;
 import org.sfs.nodes.data.CanWriteVolume;
 import org.sfs.nodes.data.ChecksumBlob;
+import org.sfs.nodes.data.ChecksumBlobs;
 import org.sfs.nodes.data.DeleteBlob;
+import org.sfs.nodes.data.DeleteBlobs;
 import org.sfs.nodes.data.GetBlob;
+import org.sfs.nodes.data.GetVolumeFragmentation;
 import org.sfs.nodes.data.PutBlob;
 import org.sfs.nodes.master.MasterNodeExecuteJob;
 import org.sfs.nodes.master.MasterNodeStopJob;
@@ -99,11 +114,14 @@ import org.sfs.rx.Terminus;
 import org.sfs.thread.NamedCapacityFixedThreadPool;
 import org.sfs.util.ConfigHelper;
 import org.sfs.util.FileSystemLock;
+import org.sfs.util.MessageDigestFactory;
+import org.sfs.util.SfsHttpHeaders;
 import rx.Observable;
 
 import java.net.HttpURLConnection;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -124,6 +142,8 @@ public class SfsSingletonServer extends Server implements Shareable {
     private AzureKms azureKms = new AzureKms();
     private MasterKeys masterKeys = new MasterKeys();
     private ContainerKeys containerKeys = new ContainerKeys();
+    private MetadataCache metadataCache = new MetadataCache();
+    private UsageCounters usageCounters = new UsageCounters();
     private Elasticsearch elasticsearch = new Elasticsearch();
     private ClusterInfo clusterInfo = new ClusterInfo();
     private NodeStats nodeStats = new NodeStats();
@@ -141,6 +161,11 @@ public class SfsSingletonServer extends Server implements Shareable {
     private Throwable startException = null;
     private int remoteNodeMaxPoolSize;
     private int remoteNodeConnectTimeout;
+    private boolean remoteNodeHttp2;
+    private int remoteNodeHttp2MaxPoolSize;
+    private int remoteNodeHttp2MultiplexingLimit;
+    private int http2StreamWindowSize;
+    private int http2ConnectionWindowSize;
     private HttpClient httpsClient;
     private HttpClient httpClient;
     private AuthProviderService authProviderService = new AuthProviderService();
@@ -229,6 +254,20 @@ public class SfsSingletonServer extends Server implements Shareable {
         remoteNodeMaxPoolSize = new Integer(ConfigHelper.getFieldOrEnv(config, "remotenode.maxpoolsize", "25"));
         Preconditions.checkArgument(remoteNodeMaxPoolSize > 0, "remotenode.maxpoolsize must be greater than 0");
 
+        remoteNodeHttp2 = Boolean.valueOf(ConfigHelper.getFieldOrEnv(config, "remotenode.http2", "false"));
+
+        remoteNodeHttp2MaxPoolSize = new Integer(ConfigHelper.getFieldOrEnv(config, "remotenode.http2.maxpoolsize", "2"));
+        Preconditions.checkArgument(remoteNodeHttp2MaxPoolSize > 0, "remotenode.http2.maxpoolsize must be greater than 0");
+
+        remoteNodeHttp2MultiplexingLimit = new Integer(ConfigHelper.getFieldOrEnv(config, "remotenode.http2.multiplexinglimit", "100"));
+        Preconditions.checkArgument(remoteNodeHttp2MultiplexingLimit > 0, "remotenode.http2.multiplexinglimit must be greater than 0");
+
+        http2StreamWindowSize = new Integer(ConfigHelper.getFieldOrEnv(config, "http2.streamwindowsize", String.valueOf(1024 * 1024)));
+        Preconditions.checkArgument(http2StreamWindowSize >= 65535, "http2.streamwindowsize must be greater or equal to 65535");
+
+        http2ConnectionWindowSize = new Integer(ConfigHelper.getFieldOrEnv(config, "http2.connectionwindowsize", String.valueOf(16 * 1024 * 1024)));
+        Preconditions.checkArgument(http2ConnectionWindowSize >= http2StreamWindowSize, "http2.connectionwindowsize must be greater or equal to http2.streamwindowsize");
+
         remoteNodeConnectTimeout = new Integer(ConfigHelper.getFieldOrEnv(config, "remotenode.connectimeout", "30000"));
         Preconditions.checkArgument(remoteNodeConnectTimeout > 0, "remotenode.connectimeout must be greater than 0");
 
@@ -248,6 +287,40 @@ public class SfsSingletonServer extends Server implements Shareable {
         final boolean dataNode = Boolean.valueOf(ConfigHelper.getFieldOrEnv(config, "node.data", "true"));
         final boolean masterNode = Boolean.valueOf(ConfigHelper.getFieldOrEnv(config, "node.master", "true"));
 
+        int volumeFsyncBatchSize = new Integer(ConfigHelper.getFieldOrEnv(config, "volume.fsync.batchsize", "64"));
+        Preconditions.checkArgument(volumeFsyncBatchSize > 0, "volume.fsync.batchsize must be greater than 0");
+
+        long volumeFsyncWindow = new Long(ConfigHelper.getFieldOrEnv(config, "volume.fsync.window", "0"));
+        Preconditions.checkArgument(volumeFsyncWindow >= 0, "volume.fsync.window must be greater or equal to 0");
+
+        AllocatorType volumeAllocatorType = AllocatorType.fromNameIfExists(ConfigHelper.getFieldOrEnv(config, "volume.allocator", "recycling"));
+        Preconditions.checkArgument(volumeAllocatorType != null, "volume.allocator must be one of recycling or extent");
+
+        double remoteNodeHedgePercentile = new Double(ConfigHelper.getFieldOrEnv(config, "remotenode.hedge.percentile", "95"));
+        Preconditions.checkArgument(remoteNodeHedgePercentile >= 0 && remoteNodeHedgePercentile < 100, "remotenode.hedge.percentile must be greater or equal to 0 and less than 100");
+
+        long remoteNodeHedgeMinDelay = new Long(ConfigHelper.getFieldOrEnv(config, "remotenode.hedge.mindelay", "10"));
+        Preconditions.checkArgument(remoteNodeHedgeMinDelay >= 0, "remotenode.hedge.mindelay must be greater or equal to 0");
+
+        int objectReadPrefetch = new Integer(ConfigHelper.getFieldOrEnv(config, "object.read.prefetch", "4"));
+        Preconditions.checkArgument(objectReadPrefetch >= 0, "object.read.prefetch must be greater or equal to 0");
+
+        MessageDigestFactory objectBlobDigest = MessageDigestFactory.fromValueIfExists(ConfigHelper.getFieldOrEnv(config, "object.blob.digest", "sha-512")).orNull();
+        Preconditions.checkArgument(objectBlobDigest != null && objectBlobDigest != MessageDigestFactory.MD5, "object.blob.digest must be one of sha-512, sha-256, xxh64 or crc32c");
+
+        VolumePlacement volumePlacement = VolumePlacement.fromNameIfExists(ConfigHelper.getFieldOrEnv(config, "volume.placement", "power_of_two_choices"));
+        Preconditions.checkArgument(volumePlacement != null, "volume.placement must be one of most_free_space or power_of_two_choices");
+
+        String nodeRack = ConfigHelper.getFieldOrEnv(config, "node.rack");
+
+        boolean objectWriteChain = Boolean.valueOf(ConfigHelper.getFieldOrEnv(config, "object.write.chain", "false"));
+
+        long objectWriteStragglerTimeout = new Long(ConfigHelper.getFieldOrEnv(config, "object.write.straggler.timeout", "500"));
+        Preconditions.checkArgument(objectWriteStragglerTimeout >= 0, "object.write.straggler.timeout must be greater or equal to 0");
+
+        long objectWriteStragglerBuffer = new Long(ConfigHelper.getFieldOrEnv(config, "object.write.straggler.buffer", String.valueOf(4 * 1024 * 1024)));
+        Preconditions.checkArgument(objectWriteStragglerBuffer >= 0, "object.write.straggler.buffer must be greater or equal to 0");
+
         this.httpsClient = createHttpClient(vertx, true);
         this.httpClient = createHttpClient(vertx, false);
 
@@ -259,6 +332,8 @@ public class SfsSingletonServer extends Server implements Shareable {
                 .flatMap(aVoid -> azureKms.start(vertxContext, config))
                 .flatMap(aVoid -> tempDirectoryCleaner.start(vertxContext, tempFileTtl))
                 .flatMap(aVoid -> elasticsearch.start(vertxContext, config, masterNode))
+                .flatMap(aVoid -> metadataCache.start(vertxContext, config))
+                .flatMap(aVoid -> usageCounters.start(vertxContext, config))
                 .flatMap(aVoid ->
                         nodes.open(vertxContext,
                                 parsedPublishAddresses,
@@ -269,11 +344,23 @@ public class SfsSingletonServer extends Server implements Shareable {
                                 numberOfObjectReplicas,
                                 nodeStatsRefreshInterval,
                                 dataNode,
-                                masterNode))
+                                masterNode,
+                                volumeFsyncBatchSize,
+                                volumeFsyncWindow,
+                                volumeAllocatorType,
+                                remoteNodeHedgePercentile,
+                                remoteNodeHedgeMinDelay,
+                                objectReadPrefetch,
+                                objectBlobDigest,
+                                volumePlacement,
+                                nodeRack,
+                                objectWriteChain,
+                                objectWriteStragglerTimeout,
+                                objectWriteStragglerBuffer))
                 .flatMap(aVoid -> nodeStats.open(vertxContext))
-                .flatMap(aVoid -> clusterInfo.open(vertxContext))
+                .flatMap(aVoid -> clusterInfo.open(vertxContext, config))
                 .flatMap(aVoid -> masterKeys.start(vertxContext))
-                .flatMap(aVoid -> containerKeys.start(vertxContext))
+                .flatMap(aVoid -> containerKeys.start(vertxContext, config))
                 .flatMap(aVoid -> jobs.open(vertxContext, config))
                 .subscribe(
                         o -> {
@@ -344,6 +431,30 @@ public class SfsSingletonServer extends Server implements Shareable {
                         return Defer.aVoid();
                     }
                 })
+                .flatMap(aVoid -> {
+                    if (usageCounters != null) {
+                        return usageCounters
+                                .stop(vertxContext)
+                                .onErrorResumeNext(throwable -> {
+                                    LOGGER.error("Unhandled Exception", throwable);
+                                    return Defer.aVoid();
+                                });
+                    } else {
+                        return Defer.aVoid();
+                    }
+                })
+                .flatMap(aVoid -> {
+                    if (metadataCache != null) {
+                        return metadataCache
+                                .stop(vertxContext)
+                                .onErrorResumeNext(throwable -> {
+                                    LOGGER.error("Unhandled Exception", throwable);
+                                    return Defer.aVoid();
+                                });
+                    } else {
+                        return Defer.aVoid();
+                    }
+                })
                 .flatMap(aVoid -> {
                     if (clusterInfo != null) {
                         return clusterInfo.close(vertxContext)
@@ -548,6 +659,16 @@ public class SfsSingletonServer extends Server implements Shareable {
         return https ? httpsClient : httpClient;
     }
 
+    @Override
+    public MetadataCache metadataCache() {
+        return metadataCache;
+    }
+
+    @Override
+    public UsageCounters usageCounters() {
+        return usageCounters;
+    }
+
     @Override
     public ClusterInfo getClusterInfo() {
         return clusterInfo;
@@ -585,11 +706,41 @@ public class SfsSingletonServer extends Server implements Shareable {
                 .setIdleTimeout(httpServerIdleConnectionTimeout)
                 .setHandle100ContinueAutomatically(true);
         vertxContext.vertx().createHttpServer(httpServerOptions)
-                .requestHandler(router::accept)
+                .requestHandler(httpServerRequest -> {
+                    widenRemoteNodeConnection(httpServerRequest);
+                    router.accept(httpServerRequest);
+                })
                 .listen(hostAndPort.getPort(), hostAndPort.getHostText(), handler.toHandler());
         return handler;
     }
 
+    // cleartext http2 is always accepted but only connections from other nodes get the
+    // larger windows that let a few connections carry many concurrent blob streams.
+    // The public and internal routes share the listeners so a connection is widened
+    // once one of its requests carries the remote node token
+    protected void widenRemoteNodeConnection(HttpServerRequest httpServerRequest) {
+        if (httpServerRequest.version() != HttpVersion.HTTP_2) {
+            return;
+        }
+        HttpConnection httpConnection = httpServerRequest.connection();
+        if (httpConnection.settings().getInitialWindowSize() >= http2StreamWindowSize) {
+            return;
+        }
+        String token = httpServerRequest.headers().get(SfsHttpHeaders.X_SFS_REMOTE_NODE_TOKEN);
+        if (token == null) {
+            return;
+        }
+        byte[] actualToken = null;
+        try {
+            actualToken = BaseEncoding.base64().decode(token);
+        } catch (Throwable ignore) {
+        }
+        if (Arrays.equals(remoteNodeSecret, actualToken)) {
+            httpConnection.updateSettings(new Http2Settings().setInitialWindowSize(http2StreamWindowSize));
+            httpConnection.setWindowSize(http2ConnectionWindowSize);
+        }
+    }
+
     protected HttpClient createHttpClient(Vertx v, boolean https) {
         HttpClientOptions httpClientOptions = new HttpClientOptions()
                 .setConnectTimeout(remoteNodeConnectTimeout)
@@ -602,6 +753,18 @@ public class SfsSingletonServer extends Server implements Shareable {
                 .setIdleTimeout(remoteNodeIdleConnectionTimeout)
                 .setSsl(https);
 
+        // node to node traffic is multiplexed over a few cleartext http2 connections per
+        // node. The first request on a connection asks to upgrade so that nodes that
+        // only speak http/1.1 keep being served over http/1.1
+        if (remoteNodeHttp2 && !https) {
+            httpClientOptions.setProtocolVersion(HttpVersion.HTTP_2)
+                    .setHttp2ClearTextUpgrade(true)
+                    .setHttp2MaxPoolSize(remoteNodeHttp2MaxPoolSize)
+                    .setHttp2MultiplexingLimit(remoteNodeHttp2MultiplexingLimit)
+                    .setInitialSettings(new Http2Settings().setInitialWindowSize(http2StreamWindowSize))
+                    .setHttp2ConnectionWindowSize(http2ConnectionWindowSize);
+        }
+
         HttpClient client = v.createHttpClient(httpClientOptions);
 
         LOGGER.debug("Current Thread 1 is {}, http client is {}", Thread.currentThread(), client);
@@ -687,6 +850,13 @@ public class SfsSingletonServer extends Server implements Shareable {
 
         // node stats methods
         router.get("/_internal_node/stats").handler(new SfsRequestHandler(vertxContext, new GetNodeStats()));
+        router.post("/_internal_node/gossip").handler(new SfsRequestHandler(vertxContext, new GossipClusterState()));
+
+        // node metadata cache methods
+        router.post("/_internal_node/metadata/invalidate").handler(new SfsRequestHandler(vertxContext, new InvalidateMetadata()));
+
+        // node usage counter methods
+        router.post("/_internal_node/usage/flush").handler(new SfsRequestHandler(vertxContext, new FlushUsageCounters()));
 
         // data node blob store methods
         router.delete("/_internal_node_data/blob").handler(new SfsRequestHandler(vertxContext, new DeleteBlob()));
@@ -696,6 +866,10 @@ public class SfsSingletonServer extends Server implements Shareable {
         router.get("/_internal_node_data/blob/canread").handler(new SfsRequestHandler(vertxContext, new CanReadVolume()));
         router.put("/_internal_node_data/blob/ack").handler(new SfsRequestHandler(vertxContext, new AckBlob()));
         router.get("/_internal_node_data/blob/checksum").handler(new SfsRequestHandler(vertxContext, new ChecksumBlob()));
+        router.post("/_internal_node_data/blobs/ack").handler(new SfsRequestHandler(vertxContext, new AckBlobs()));
+        router.post("/_internal_node_data/blobs/delete").handler(new SfsRequestHandler(vertxContext, new DeleteBlobs()));
+        router.post("/_internal_node_data/blobs/checksum").handler(new SfsRequestHandler(vertxContext, new ChecksumBlobs()));
+        router.get("/_internal_node_data/volumes/fragmentation").handler(new SfsRequestHandler(vertxContext, new GetVolumeFragmentation()));
 
         if (testMode) {
             router.post("/admin/001/resetfortest").handler(new SfsRequestHandler(vertxContext, new ResetForTest()));
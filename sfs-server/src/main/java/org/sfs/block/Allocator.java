@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.block;
+
+import java.util.List;
+
+// Hands out block aligned positions in a file. Positions and lengths are in
+// bytes and lengths are rounded up to a multiple of the block size
+public interface Allocator {
+
+    long allocFromLastRange(long length);
+
+    long allocNextAvailable(long length);
+
+    // returns -1 if the range isn't free
+    long alloc(long position, long length);
+
+    void free(long position, long length);
+
+    // replaces the free ranges, used to restore a previously saved state
+    void setFreeRanges(Iterable<Range> ranges);
+
+    // a point in time copy of the free ranges, ordered by position
+    List<Range> copyFreeRanges();
+
+    Iterable<Range> freeRanges();
+
+    int getBlockSize();
+
+    long greatestFreePosition();
+
+    int getNumberOfFreeRanges();
+
+    long getBytesFree(long useableSpace);
+
+    FragmentationReport fragmentationReport();
+}
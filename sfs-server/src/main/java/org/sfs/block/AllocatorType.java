@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.block;
+
+public enum AllocatorType {
+
+    RECYCLING {
+        @Override
+        public Allocator create(int blockSize) {
+            return new RecyclingAllocator(blockSize);
+        }
+    },
+    EXTENT {
+        @Override
+        public Allocator create(int blockSize) {
+            return new ExtentAllocator(blockSize);
+        }
+    };
+
+    public abstract Allocator create(int blockSize);
+
+    public static AllocatorType fromNameIfExists(String name) {
+        if (name != null) {
+            for (AllocatorType type : values()) {
+                if (type.name().equalsIgnoreCase(name)) {
+                    return type;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.block;
+
+import com.google.common.base.Preconditions;
+import com.google.common.math.LongMath;
+import org.sfs.math.Rounding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.sfs.block.PagedLongMap.NONE;
+
+// An allocator with the same contract as RecyclingAllocator that keeps the free
+// ranges in primitive arrays instead of trees of Range objects. Free ranges are
+// indexed by position, for merging and allocating at a position, and by size
+// class, for allocating the next available range. Size classes split each
+// power of two number of blocks into four so that a range from the smallest
+// non empty class larger than the class of the requested length always fits
+// and only the requested length's own class has to be searched
+public class ExtentAllocator implements Allocator {
+
+    private static final int SUB_CLASS_BITS = 2;
+    private static final int SIZE_CLASS_COUNT = 64 << SUB_CLASS_BITS;
+    // how many ranges of the requested length's own size class are looked
+    // at before falling back to a larger class
+    private static final int SIZE_CLASS_SCAN_LIMIT = 32;
+    private final Object mutex = new Object();
+    // first -> last
+    private final PagedLongMap byPosition = new PagedLongMap();
+    // first -> last, by size class
+    private final PagedLongMap[] bySizeClass = new PagedLongMap[SIZE_CLASS_COUNT];
+    private final long[] nonEmptySizeClasses = new long[SIZE_CLASS_COUNT / 64];
+    private final AtomicLong bytesFree = new AtomicLong(0);
+    private final int blockSize;
+
+    public ExtentAllocator(int blockSize) {
+        Preconditions.checkArgument(blockSize >= 1, "BlockSize must be >= 1");
+        this.blockSize = blockSize;
+        putRange(0, computeLast(0, Rounding.down(Long.MAX_VALUE, blockSize)));
+    }
+
+    @Override
+    public long allocFromLastRange(long length) {
+        synchronized (mutex) {
+            long first = byPosition.lastKey();
+            Preconditions.checkState(first != NONE, "No free ranges");
+            return alloc0(first, computeLast(first, length));
+        }
+    }
+
+    @Override
+    public long allocNextAvailable(long length) {
+        Preconditions.checkArgument(length >= 0, "Length must be >= 0, Was %s", length);
+        long needed = Math.max(Rounding.up(length, blockSize), blockSize);
+        long blocks = needed / blockSize;
+        synchronized (mutex) {
+            int sizeClass = sizeClass(blocks);
+            long match = NONE;
+            PagedLongMap candidates = bySizeClass[sizeClass];
+            if (candidates != null) {
+                match = candidates.firstSpanning(needed, SIZE_CLASS_SCAN_LIMIT);
+            }
+            if (match == NONE) {
+                int larger = nextNonEmptySizeClass(sizeClass + 1);
+                if (larger >= 0) {
+                    match = bySizeClass[larger].firstKey();
+                } else if (candidates != null) {
+                    // only ranges of the requested length's class are left
+                    // so look at all of them
+                    match = candidates.firstSpanning(needed, Integer.MAX_VALUE);
+                }
+            }
+            Preconditions.checkState(match != NONE, "No free range of length %s", length);
+            if (length == 0) {
+                return match;
+            }
+            return alloc0(match, computeLast(match, length));
+        }
+    }
+
+    @Override
+    public long alloc(long position, long length) {
+        checkRange(position, length);
+        synchronized (mutex) {
+            return alloc0(position, computeLast(position, length));
+        }
+    }
+
+    protected long alloc0(long first, long last) {
+        long floor = byPosition.floorKey(first);
+        if (floor == NONE) {
+            return -1;
+        }
+        long floorLast = byPosition.get(floor);
+        if (floorLast < first || floorLast < last) {
+            return -1;
+        }
+        if (last < first) {
+            return first;
+        }
+        removeRange(floor, floorLast);
+        if (floor < first) {
+            putRange(floor, first - 1);
+        }
+        if (last < floorLast) {
+            putRange(last + 1, floorLast);
+        }
+        return first;
+    }
+
+    @Override
+    public void free(long position, long length) {
+        checkRange(position, length);
+        long last = computeLast(position, length);
+        if (last < position) {
+            return;
+        }
+        synchronized (mutex) {
+            free0(position, last);
+        }
+    }
+
+    protected void free0(long first, long last) {
+        long floor = byPosition.floorKey(first);
+        if (floor != NONE) {
+            long floorLast = byPosition.get(floor);
+            if (floorLast >= first - 1) {
+                removeRange(floor, floorLast);
+                first = floor;
+                last = Math.max(last, floorLast);
+            }
+        }
+        long next = byPosition.ceilingKey(first);
+        while (next != NONE && next <= last + 1) {
+            long nextLast = byPosition.get(next);
+            removeRange(next, nextLast);
+            last = Math.max(last, nextLast);
+            next = byPosition.ceilingKey(next);
+        }
+        putRange(first, last);
+    }
+
+    @Override
+    public void setFreeRanges(Iterable<Range> ranges) {
+        synchronized (mutex) {
+            byPosition.clear();
+            for (int i = 0; i < bySizeClass.length; i++) {
+                bySizeClass[i] = null;
+            }
+            for (int i = 0; i < nonEmptySizeClasses.length; i++) {
+                nonEmptySizeClasses[i] = 0;
+            }
+            bytesFree.set(0);
+            for (Range range : ranges) {
+                checkRange(range.getFirst(), range.getBlockCount());
+                Preconditions.checkArgument(range.getBlockCount() % blockSize == 0, "Length is not a multiple of the block size, Was %s", range.getBlockCount());
+                free0(range.getFirst(), range.getLast());
+            }
+        }
+    }
+
+    @Override
+    public List<Range> copyFreeRanges() {
+        synchronized (mutex) {
+            List<Range> ranges = new ArrayList<>(byPosition.size());
+            byPosition.forEach((first, last) -> ranges.add(new Range(first, last)));
+            return ranges;
+        }
+    }
+
+    // unlike RecyclingAllocator this is always a copy
+    @Override
+    public Iterable<Range> freeRanges() {
+        return copyFreeRanges();
+    }
+
+    @Override
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public long greatestFreePosition() {
+        synchronized (mutex) {
+            return byPosition.lastKey();
+        }
+    }
+
+    @Override
+    public int getNumberOfFreeRanges() {
+        synchronized (mutex) {
+            return byPosition.size();
+        }
+    }
+
+    @Override
+    public long getBytesFree(long useableSpace) {
+        long free = bytesFree.get();
+        synchronized (mutex) {
+            long first = byPosition.lastKey();
+            while (first != NONE) {
+                free -= byPosition.get(first) - first + 1;
+                if (first < useableSpace) {
+                    free += (useableSpace - first);
+                    break;
+                }
+                first = byPosition.lowerKey(first);
+            }
+        }
+        return free;
+    }
+
+    @Override
+    public FragmentationReport fragmentationReport() {
+        FragmentationReport report = new FragmentationReport("extent", blockSize);
+        synchronized (mutex) {
+            byPosition.forEach(report::add);
+        }
+        return report;
+    }
+
+    // the bytes used by the free range indexes
+    public long getMemoryBytes() {
+        synchronized (mutex) {
+            long bytes = byPosition.memoryBytes();
+            for (PagedLongMap sizeClass : bySizeClass) {
+                if (sizeClass != null) {
+                    bytes += sizeClass.memoryBytes();
+                }
+            }
+            return bytes;
+        }
+    }
+
+    private void putRange(long first, long last) {
+        long length = last - first + 1;
+        byPosition.put(first, last);
+        int sizeClass = sizeClass(length / blockSize);
+        PagedLongMap ranges = bySizeClass[sizeClass];
+        if (ranges == null) {
+            ranges = new PagedLongMap();
+            bySizeClass[sizeClass] = ranges;
+        }
+        ranges.put(first, last);
+        nonEmptySizeClasses[sizeClass >>> 6] |= 1L << sizeClass;
+        bytesFree.addAndGet(length);
+    }
+
+    private void removeRange(long first, long last) {
+        long length = last - first + 1;
+        Preconditions.checkState(byPosition.remove(first));
+        int sizeClass = sizeClass(length / blockSize);
+        PagedLongMap ranges = bySizeClass[sizeClass];
+        Preconditions.checkState(ranges != null && ranges.remove(first));
+        if (ranges.isEmpty()) {
+            nonEmptySizeClasses[sizeClass >>> 6] &= ~(1L << sizeClass);
+        }
+        bytesFree.addAndGet(-length);
+    }
+
+    private int nextNonEmptySizeClass(int from) {
+        for (int word = from >>> 6; word < nonEmptySizeClasses.length; word++) {
+            long bits = nonEmptySizeClasses[word];
+            if (word == from >>> 6) {
+                bits &= -1L << from;
+            }
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return -1;
+    }
+
+    // classes increase with the number of blocks. Each power of two is split
+    // into 1 << SUB_CLASS_BITS classes using the bits after the highest one bit
+    protected static int sizeClass(long blocks) {
+        int highestBit = 63 - Long.numberOfLeadingZeros(blocks);
+        if (highestBit < SUB_CLASS_BITS) {
+            return (int) blocks;
+        }
+        int subClass = (int) (blocks >>> (highestBit - SUB_CLASS_BITS)) & ((1 << SUB_CLASS_BITS) - 1);
+        return (highestBit << SUB_CLASS_BITS) + subClass;
+    }
+
+    protected void checkRange(long position, long length) {
+        Preconditions.checkArgument(position % blockSize == 0, "Position is not a multiple of the block size, Was %s", position);
+        Preconditions.checkArgument(position >= 0, "Position must be >= 0, Was %s", position);
+        Preconditions.checkArgument(length >= 0, "Length must be >= 0, Was %s", length);
+    }
+
+    protected long computeLast(long first, long length) {
+        return LongMath.checkedAdd(first, Rounding.up(length, blockSize)) - 1;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Range freeRange : freeRanges()) {
+            sb.append("Range: ");
+            sb.append(freeRange);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.block;
+
+import io.vertx.core.json.JsonObject;
+import org.sfs.math.Rounding;
+
+// A summary of an allocator's free ranges. The free range that runs to the end
+// of the address space is the unallocated end of the file so it isn't counted
+// as a hole. Holes are counted by the power of two their length rounds up to
+public class FragmentationReport {
+
+    private final String allocator;
+    private final int blockSize;
+    private final long lastPosition;
+    private final long[] holeCountBySize = new long[64];
+    private long freeRangeCount = 0;
+    private long holeCount = 0;
+    private long holeBytes = 0;
+    private long largestHole = 0;
+    private long endOfAllocated = 0;
+
+    public FragmentationReport(String allocator, int blockSize) {
+        this.allocator = allocator;
+        this.blockSize = blockSize;
+        this.lastPosition = Rounding.down(Long.MAX_VALUE, blockSize) - 1;
+    }
+
+    // ranges must be added in position order
+    public FragmentationReport add(long first, long last) {
+        freeRangeCount++;
+        if (last >= lastPosition) {
+            endOfAllocated = first;
+        } else {
+            long length = last - first + 1;
+            holeCount++;
+            holeBytes += length;
+            largestHole = Math.max(largestHole, length);
+            holeCountBySize[64 - Long.numberOfLeadingZeros(length - 1)]++;
+        }
+        return this;
+    }
+
+    public String getAllocator() {
+        return allocator;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public long getFreeRangeCount() {
+        return freeRangeCount;
+    }
+
+    public long getHoleCount() {
+        return holeCount;
+    }
+
+    public long getHoleBytes() {
+        return holeBytes;
+    }
+
+    public long getLargestHole() {
+        return largestHole;
+    }
+
+    public long getEndOfAllocated() {
+        return endOfAllocated;
+    }
+
+    // the share of the hole bytes that aren't in the largest hole. 0 when
+    // there are no holes or all of them have been merged into one
+    public double getFragmentation() {
+        return holeBytes > 0 ? 1.0d - ((double) largestHole / holeBytes) : 0.0d;
+    }
+
+    public JsonObject toJsonObject() {
+        JsonObject histogram = new JsonObject();
+        for (int i = 0; i < holeCountBySize.length; i++) {
+            if (holeCountBySize[i] > 0) {
+                histogram.put(String.valueOf(1L << i), holeCountBySize[i]);
+            }
+        }
+        return new JsonObject()
+                .put("allocator", allocator)
+                .put("block_size", blockSize)
+                .put("free_range_count", freeRangeCount)
+                .put("hole_count", holeCount)
+                .put("hole_bytes", holeBytes)
+                .put("largest_hole_bytes", largestHole)
+                .put("end_of_allocated", endOfAllocated)
+                .put("fragmentation", getFragmentation())
+                .put("holes_by_size", histogram);
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.block;
+
+import com.google.common.base.Optional;
+import rx.functions.Func1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.of;
+import static com.google.common.base.Preconditions.checkArgument;
+
+// A treap of closed intervals ordered by first position and insertion order where each
+// node also tracks the largest last position in its subtree so that the intervals
+// overlapping a range can be found without visiting the ones that can't overlap.
+// Not thread safe
+public class IntervalTree<V> {
+
+    private final Random random = new Random();
+    private Node<V> root;
+    private long sequence = 0;
+    private int size = 0;
+
+    public Entry<V> insert(long first, long last, V value) {
+        checkArgument(last >= first, "last must be >= first");
+        Node<V> node = new Node<>(first, last, sequence++, random.nextInt(), value);
+        root = insert(root, node);
+        size++;
+        return node;
+    }
+
+    public boolean remove(Entry<V> entry) {
+        if (!(entry instanceof Node) || ((Node<V>) entry).removed) {
+            return false;
+        }
+        Node<V> node = (Node<V>) entry;
+        root = remove(root, node);
+        node.removed = true;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // the first entry, in order of position, that overlaps [first, last] and matches the predicate
+    public Optional<Entry<V>> find(long first, long last, Func1<Entry<V>, Boolean> predicate) {
+        return find(root, first, last, predicate);
+    }
+
+    // the entries that overlap [first, last] in order of position
+    public List<Entry<V>> overlapping(long first, long last) {
+        List<Entry<V>> entries = new ArrayList<>();
+        find(root, first, last, entry -> {
+            entries.add(entry);
+            return false;
+        });
+        return entries;
+    }
+
+    private Optional<Entry<V>> find(Node<V> node, long first, long last, Func1<Entry<V>, Boolean> predicate) {
+        if (node == null || node.maxLast < first) {
+            return absent();
+        }
+        Optional<Entry<V>> found = find(node.left, first, last, predicate);
+        if (found.isPresent()) {
+            return found;
+        }
+        // everything to the right starts at or after this node
+        if (node.first > last) {
+            return absent();
+        }
+        if (node.last >= first && predicate.call(node)) {
+            return of(node);
+        }
+        return find(node.right, first, last, predicate);
+    }
+
+    private Node<V> insert(Node<V> parent, Node<V> node) {
+        if (parent == null) {
+            return node;
+        }
+        if (compare(node, parent) < 0) {
+            parent.left = insert(parent.left, node);
+            if (parent.left.priority > parent.priority) {
+                parent = rotateRight(parent);
+            }
+        } else {
+            parent.right = insert(parent.right, node);
+            if (parent.right.priority > parent.priority) {
+                parent = rotateLeft(parent);
+            }
+        }
+        update(parent);
+        return parent;
+    }
+
+    private Node<V> remove(Node<V> parent, Node<V> node) {
+        if (parent == null) {
+            return null;
+        }
+        if (parent == node) {
+            return merge(parent.left, parent.right);
+        }
+        if (compare(node, parent) < 0) {
+            parent.left = remove(parent.left, node);
+        } else {
+            parent.right = remove(parent.right, node);
+        }
+        update(parent);
+        return parent;
+    }
+
+    private Node<V> merge(Node<V> left, Node<V> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        } else {
+            right.left = merge(left, right.left);
+            update(right);
+            return right;
+        }
+    }
+
+    private Node<V> rotateRight(Node<V> node) {
+        Node<V> left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private Node<V> rotateLeft(Node<V> node) {
+        Node<V> right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    private void update(Node<V> node) {
+        long maxLast = node.last;
+        if (node.left != null) {
+            maxLast = Math.max(maxLast, node.left.maxLast);
+        }
+        if (node.right != null) {
+            maxLast = Math.max(maxLast, node.right.maxLast);
+        }
+        node.maxLast = maxLast;
+    }
+
+    private int compare(Node<V> a, Node<V> b) {
+        int c = Long.compare(a.first, b.first);
+        return c != 0 ? c : Long.compare(a.sequence, b.sequence);
+    }
+
+    public interface Entry<V> {
+
+        long getFirst();
+
+        long getLast();
+
+        // increases with every insert so entries can be ordered by age
+        long getSequence();
+
+        V getValue();
+    }
+
+    private static class Node<V> implements Entry<V> {
+
+        private final long first;
+        private final long last;
+        private final long sequence;
+        private final int priority;
+        private final V value;
+        private long maxLast;
+        private Node<V> left;
+        private Node<V> right;
+        private boolean removed = false;
+
+        public Node(long first, long last, long sequence, int priority, V value) {
+            this.first = first;
+            this.last = last;
+            this.sequence = sequence;
+            this.priority = priority;
+            this.value = value;
+            this.maxLast = last;
+        }
+
+        @Override
+        public long getFirst() {
+            return first;
+        }
+
+        @Override
+        public long getLast() {
+            return last;
+        }
+
+        @Override
+        public long getSequence() {
+            return sequence;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+    }
+}
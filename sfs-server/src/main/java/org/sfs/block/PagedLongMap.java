@@ -0,0 +1,293 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.block;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+// A sorted map of non negative long keys to long values kept in pages of
+// primitive arrays. A lookup is a binary search of the page directory followed by
+// a binary search of the page and an update only shifts the entries of one
+// page, so nothing is allocated per entry and neighbouring keys share cache lines.
+// Not thread safe
+class PagedLongMap {
+
+    static final long NONE = -1;
+    static final int PAGE_SIZE = 256;
+    private static final int INITIAL_PAGE_SIZE = 8;
+    private long[][] keys = new long[4][];
+    private long[][] values = new long[4][];
+    private int[] sizes = new int[4];
+    private int pageCount = 0;
+    private int size = 0;
+    // where the last key returned by floorKey or ceilingKey is, so that
+    // looking up its value doesn't search again. Reset by every update
+    private long foundKey = NONE;
+    private int foundPage;
+    private int foundIndex;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        keys = new long[4][];
+        values = new long[4][];
+        sizes = new int[4];
+        pageCount = 0;
+        size = 0;
+        foundKey = NONE;
+    }
+
+    public long get(long key) {
+        if (key == foundKey) {
+            return values[foundPage][foundIndex];
+        }
+        if (pageCount == 0) {
+            return NONE;
+        }
+        int page = page(key);
+        int index = Arrays.binarySearch(keys[page], 0, sizes[page], key);
+        return index >= 0 ? values[page][index] : NONE;
+    }
+
+    public void put(long key, long value) {
+        checkArgument(key >= 0, "Key must be >= 0");
+        foundKey = NONE;
+        if (pageCount == 0) {
+            insertPage(0, new long[INITIAL_PAGE_SIZE], new long[INITIAL_PAGE_SIZE], 0);
+        }
+        int page = page(key);
+        int index = Arrays.binarySearch(keys[page], 0, sizes[page], key);
+        if (index >= 0) {
+            values[page][index] = value;
+            return;
+        }
+        index = -index - 1;
+        int pageSize = sizes[page];
+        if (pageSize == keys[page].length) {
+            if (pageSize < PAGE_SIZE) {
+                int newLength = Math.min(pageSize * 2, PAGE_SIZE);
+                keys[page] = Arrays.copyOf(keys[page], newLength);
+                values[page] = Arrays.copyOf(values[page], newLength);
+            } else {
+                int half = pageSize / 2;
+                long[] splitKeys = new long[PAGE_SIZE];
+                long[] splitValues = new long[PAGE_SIZE];
+                System.arraycopy(keys[page], half, splitKeys, 0, pageSize - half);
+                System.arraycopy(values[page], half, splitValues, 0, pageSize - half);
+                sizes[page] = half;
+                insertPage(page + 1, splitKeys, splitValues, pageSize - half);
+                if (index > half) {
+                    page++;
+                    index -= half;
+                }
+                pageSize = sizes[page];
+            }
+        }
+        long[] pageKeys = keys[page];
+        long[] pageValues = values[page];
+        System.arraycopy(pageKeys, index, pageKeys, index + 1, pageSize - index);
+        System.arraycopy(pageValues, index, pageValues, index + 1, pageSize - index);
+        pageKeys[index] = key;
+        pageValues[index] = value;
+        sizes[page]++;
+        size++;
+    }
+
+    public boolean remove(long key) {
+        foundKey = NONE;
+        if (pageCount == 0) {
+            return false;
+        }
+        int page = page(key);
+        int pageSize = sizes[page];
+        int index = Arrays.binarySearch(keys[page], 0, pageSize, key);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(keys[page], index + 1, keys[page], index, pageSize - index - 1);
+        System.arraycopy(values[page], index + 1, values[page], index, pageSize - index - 1);
+        sizes[page]--;
+        size--;
+        if (sizes[page] == 0) {
+            removePage(page);
+        } else if (page + 1 < pageCount && sizes[page] + sizes[page + 1] <= PAGE_SIZE / 2) {
+            mergeNext(page);
+        } else if (page > 0 && sizes[page - 1] + sizes[page] <= PAGE_SIZE / 2) {
+            mergeNext(page - 1);
+        }
+        return true;
+    }
+
+    public long firstKey() {
+        return pageCount > 0 ? keys[0][0] : NONE;
+    }
+
+    public long lastKey() {
+        return pageCount > 0 ? keys[pageCount - 1][sizes[pageCount - 1] - 1] : NONE;
+    }
+
+    // the greatest key <= key
+    public long floorKey(long key) {
+        if (pageCount == 0 || key < 0) {
+            return NONE;
+        }
+        int page = page(key);
+        int index = Arrays.binarySearch(keys[page], 0, sizes[page], key);
+        if (index < 0) {
+            index = -index - 2;
+            if (index < 0) {
+                return NONE;
+            }
+        }
+        return found(page, index);
+    }
+
+    // the least key >= key
+    public long ceilingKey(long key) {
+        if (pageCount == 0) {
+            return NONE;
+        }
+        int page = page(key);
+        int index = Arrays.binarySearch(keys[page], 0, sizes[page], key);
+        if (index < 0) {
+            index = -index - 1;
+            if (index == sizes[page]) {
+                if (page + 1 == pageCount) {
+                    return NONE;
+                }
+                page++;
+                index = 0;
+            }
+        }
+        return found(page, index);
+    }
+
+    public long lowerKey(long key) {
+        return floorKey(key - 1);
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        for (int page = 0; page < pageCount; page++) {
+            long[] pageKeys = keys[page];
+            long[] pageValues = values[page];
+            for (int i = 0; i < sizes[page]; i++) {
+                consumer.accept(pageKeys[i], pageValues[i]);
+            }
+        }
+    }
+
+    // the first key, of the first limit keys, whose value is >= key + span - 1. Used
+    // with maps of first -> last positions to find a range of at least span bytes
+    public long firstSpanning(long span, int limit) {
+        int scanned = 0;
+        for (int page = 0; page < pageCount; page++) {
+            long[] pageKeys = keys[page];
+            long[] pageValues = values[page];
+            for (int i = 0; i < sizes[page]; i++) {
+                if (pageValues[i] - pageKeys[i] + 1 >= span) {
+                    return pageKeys[i];
+                }
+                if (++scanned >= limit) {
+                    return NONE;
+                }
+            }
+        }
+        return NONE;
+    }
+
+    // the bytes used by the page arrays and the page directory
+    public long memoryBytes() {
+        long bytes = keys.length * 8L * 2 + sizes.length * 4L;
+        for (int page = 0; page < pageCount; page++) {
+            bytes += keys[page].length * 8L * 2;
+        }
+        return bytes;
+    }
+
+    private long found(int page, int index) {
+        foundPage = page;
+        foundIndex = index;
+        foundKey = keys[page][index];
+        return foundKey;
+    }
+
+    // the last page whose first key is <= key, or the first page
+    private int page(long key) {
+        int low = 0;
+        int high = pageCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (keys[mid][0] <= key) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private void insertPage(int page, long[] pageKeys, long[] pageValues, int pageSize) {
+        if (pageCount == keys.length) {
+            int newLength = keys.length * 2;
+            keys = Arrays.copyOf(keys, newLength);
+            values = Arrays.copyOf(values, newLength);
+            sizes = Arrays.copyOf(sizes, newLength);
+        }
+        System.arraycopy(keys, page, keys, page + 1, pageCount - page);
+        System.arraycopy(values, page, values, page + 1, pageCount - page);
+        System.arraycopy(sizes, page, sizes, page + 1, pageCount - page);
+        keys[page] = pageKeys;
+        values[page] = pageValues;
+        sizes[page] = pageSize;
+        pageCount++;
+    }
+
+    private void removePage(int page) {
+        System.arraycopy(keys, page + 1, keys, page, pageCount - page - 1);
+        System.arraycopy(values, page + 1, values, page, pageCount - page - 1);
+        System.arraycopy(sizes, page + 1, sizes, page, pageCount - page - 1);
+        pageCount--;
+        keys[pageCount] = null;
+        values[pageCount] = null;
+        sizes[pageCount] = 0;
+    }
+
+    private void mergeNext(int page) {
+        int pageSize = sizes[page];
+        int nextSize = sizes[page + 1];
+        if (keys[page].length < pageSize + nextSize) {
+            keys[page] = Arrays.copyOf(keys[page], PAGE_SIZE);
+            values[page] = Arrays.copyOf(values[page], PAGE_SIZE);
+        }
+        System.arraycopy(keys[page + 1], 0, keys[page], pageSize, nextSize);
+        System.arraycopy(values[page + 1], 0, values[page], pageSize, nextSize);
+        sizes[page] = pageSize + nextSize;
+        removePage(page + 1);
+    }
+
+    interface EntryConsumer {
+
+        void accept(long key, long value);
+    }
+}
@@ -17,10 +17,12 @@
 package org.sfs.block;
 
 import com.google.common.base.Optional;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
 import io.vertx.core.logging.Logger;
 import org.sfs.SfsVertx;
 import org.sfs.rx.Defer;
-import org.sfs.rx.Holder2;
 import org.sfs.rx.ObservableFuture;
 import org.sfs.rx.RxHelper;
 import rx.Observable;
@@ -31,121 +33,80 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static com.google.common.base.Optional.absent;
 import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Optional.of;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.math.LongMath.checkedAdd;
+import static io.vertx.core.Future.failedFuture;
+import static io.vertx.core.Future.succeededFuture;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
-import static java.lang.Boolean.FALSE;
-import static java.lang.Boolean.TRUE;
 import static java.lang.Long.MAX_VALUE;
-import static java.lang.Math.floor;
-import static java.lang.Math.random;
 import static java.lang.System.currentTimeMillis;
 import static org.sfs.math.Rounding.up;
-import static rx.Observable.just;
-import static rx.Observable.using;
 
 public class RangeLock {
 
     private static final Logger LOGGER = getLogger(RangeLock.class);
     private final int blockSize;
     private final Object mutex = new Object();
-    private final List<LockedRange> readLocks = new ArrayList<>();
-    private final List<LockedRange> writeLocks = new ArrayList<>();
-    private AtomicInteger lockCount = new AtomicInteger(0);
+    // locks that are held and requests that are waiting for a lock. A request waits
+    // if it conflicts with a held lock or with a request that has been waiting longer
+    // so that a stream of readers can't starve a writer and waiters are served in order
+    private final IntervalTree<LockedRange> locks = new IntervalTree<>();
+    private final IntervalTree<Waiter> waiters = new IntervalTree<>();
+    private final AtomicInteger lockCount = new AtomicInteger(0);
+    private final AtomicInteger waiterCount = new AtomicInteger(0);
+    private final AtomicLong waitCount = new AtomicLong(0);
+    private final AtomicLong waitTime = new AtomicLong(0);
+    private final AtomicLong timeoutCount = new AtomicLong(0);
 
     public RangeLock(int blockSize) {
         this.blockSize = blockSize;
     }
 
     public static <R> Observable<R> lockedObservable(SfsVertx vertx,
-                                                     Func0<Optional<Lock>> lockFactory,
+                                                     LockRequest lockRequest,
                                                      Func0<? extends Observable<R>> observableFactory,
                                                      long lockWaitTimeoutMs) {
 
         ObservableFuture<R> handler = RxHelper.observableFuture();
-        long now = currentTimeMillis();
-        AtomicBoolean unSubscribed = new AtomicBoolean(false);
-        lockedObservable0(vertx, now, lockFactory, observableFactory, lockWaitTimeoutMs, handler, unSubscribed);
-        return handler
-                .doOnUnsubscribe(() -> unSubscribed.set(true));
-    }
+        Optional<Waiter> oWaiter = lockRequest.lock(vertx, lockWaitTimeoutMs, event -> {
+            if (event.failed()) {
+                handler.fail(event.cause());
+                return;
+            }
+            Lock lock = event.result();
+            Defer.aVoid()
+                    .flatMap(aVoid -> observableFactory.call())
+                    .subscribe(new Subscriber<R>() {
 
-    private static <R> void lockedObservable0(SfsVertx vertx,
-                                              long startTimeMs,
-                                              Func0<Optional<Lock>> lockFactory,
-                                              Func0<? extends Observable<R>> observableFactory,
-                                              long lockWaitTimeoutMs,
-                                              ObservableFuture<R> handler,
-                                              AtomicBoolean unSubscribed) {
-        using(
-                lockFactory::call,
-                oLock -> {
-                    if (oLock.isPresent()) {
-                        Lock lock = oLock.get();
-                        ObservableFuture<Holder2<Boolean, R>> innerHandler = RxHelper.observableFuture();
-                        Defer.aVoid()
-                                .flatMap(aVoid -> observableFactory.call())
-                                .subscribe(new Subscriber<R>() {
-
-                                    R value;
-
-                                    @Override
-                                    public void onCompleted() {
-                                        lock.unlock();
-                                        innerHandler.complete(new Holder2<>(TRUE, value));
-                                    }
-
-                                    @Override
-                                    public void onError(Throwable e) {
-                                        lock.unlock();
-                                        innerHandler.fail(e);
-                                    }
-
-                                    @Override
-                                    public void onNext(R r) {
-                                        value = r;
-                                    }
-                                });
-                        return innerHandler;
-                    } else {
-                        return just(new Holder2<>(FALSE, (R) null));
-                    }
-                },
-                oLock -> {
-                    if (oLock.isPresent()) {
-                        oLock.get().unlock();
-                    }
-                })
-                .subscribe(new Subscriber<Holder2<Boolean, R>>() {
-
-                    Holder2<Boolean, ? extends R> statusHolder;
-
-                    @Override
-                    public void onCompleted() {
-                        if (TRUE.equals(statusHolder.value0())) {
-                            handler.complete(statusHolder.value1());
-                        } else {
-                            if (currentTimeMillis() - startTimeMs >= lockWaitTimeoutMs) {
-                                TimedOutException timedOutException = new TimedOutException();
-                                handler.fail(timedOutException);
-                            } else {
-                                if (!unSubscribed.get()) {
-                                    vertx.setTimer((long) (floor(random() * 100) + 1), event -> lockedObservable0(vertx, startTimeMs, lockFactory, observableFactory, lockWaitTimeoutMs, handler, unSubscribed));
-                                }
-                            }
+                        R value;
+
+                        @Override
+                        public void onCompleted() {
+                            lock.unlock();
+                            handler.complete(value);
                         }
-                    }
 
-                    @Override
-                    public void onError(Throwable e) {
-                        handler.fail(e);
-                    }
+                        @Override
+                        public void onError(Throwable e) {
+                            lock.unlock();
+                            handler.fail(e);
+                        }
 
-                    @Override
-                    public void onNext(Holder2<Boolean, R> status) {
-                        statusHolder = status;
+                        @Override
+                        public void onNext(R r) {
+                            value = r;
+                        }
+                    });
+        });
+        return handler
+                .doOnUnsubscribe(() -> {
+                    if (oWaiter.isPresent()) {
+                        oWaiter.get().cancel();
                     }
                 });
     }
@@ -154,93 +115,138 @@ public class RangeLock {
         return lockCount.get();
     }
 
+    // the number of requests that are waiting for a lock
+    public int getWaiterCount() {
+        return waiterCount.get();
+    }
+
+    // the number of requests that had to wait for a lock
+    public long getWaitCount() {
+        return waitCount.get();
+    }
+
+    // the total time in milliseconds that requests which got a lock waited for it
+    public long getWaitTime() {
+        return waitTime.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public LockRequest writeLock(long position, long length) {
+        return new LockRequest(this, true, position, length);
+    }
+
+    public LockRequest readLock(long position, long length) {
+        return new LockRequest(this, false, position, length);
+    }
+
     public Optional<Lock> tryWriteLock(long position, long length) {
-        return fromNullable(lockWrite0(position, length));
+        return fromNullable(tryLock0(true, position, length));
     }
 
     public Optional<Lock> tryReadLock(long position, long length) {
-        return fromNullable(lockRead0(position, length));
+        return fromNullable(tryLock0(false, position, length));
     }
 
-    protected Lock lockWrite0(long position, long length) {
+    protected Lock tryLock0(boolean write, long position, long length) {
         Range range = new Range(position, computeLast(position, length));
         synchronized (mutex) {
-
-            if (isWriteConflict(range)
-                    || isReadConflict(range)) {
+            if (isConflict(range, write, MAX_VALUE)) {
                 return null;
             }
-
-            LockedRange lockedRange = new LockedRange(range);
-            addWriteLockedRange(lockedRange);
-            lockCount.incrementAndGet();
-            return new Lock() {
-                @Override
-                void unlock0() {
-                    synchronized (mutex) {
-                        removeWriteLockedRange(lockedRange);
-                        lockCount.decrementAndGet();
-                    }
-                }
-            };
+            return grant(range, write);
         }
     }
 
-    protected Lock lockRead0(long position, long length) {
+    // calls the handler on the context of the caller once the lock is acquired or the
+    // wait timed out. Returns the waiter if the lock couldn't be acquired immediately
+    protected Optional<Waiter> lock0(SfsVertx vertx, boolean write, long position, long length, long timeoutMs, Handler<AsyncResult<Lock>> handler) {
         Range range = new Range(position, computeLast(position, length));
+        Context context = vertx.getOrCreateContext();
+        Lock lock;
+        Waiter waiter = null;
         synchronized (mutex) {
-
-            if (isWriteConflict(range)) {
-                return null;
-            }
-
-            LockedRange lockedRange = new LockedRange(range);
-            addReadLockedRange(lockedRange);
-            lockCount.incrementAndGet();
-            return new Lock() {
-                @Override
-                void unlock0() {
-                    synchronized (mutex) {
-                        removeReadLockedRange(lockedRange);
-                        lockCount.decrementAndGet();
-                    }
+            if (!isConflict(range, write, MAX_VALUE)) {
+                lock = grant(range, write);
+            } else {
+                lock = null;
+                if (timeoutMs > 0) {
+                    waiter = new Waiter(vertx, context, range, write, handler);
+                    waiter.entry = waiters.insert(range.getFirst(), range.getLast(), waiter);
+                    waiterCount.incrementAndGet();
+                    waitCount.incrementAndGet();
                 }
-            };
+            }
         }
+        if (lock != null) {
+            handler.handle(succeededFuture(lock));
+            return absent();
+        }
+        if (waiter == null) {
+            timeoutCount.incrementAndGet();
+            handler.handle(failedFuture(new TimedOutException()));
+            return absent();
+        }
+        Waiter finalWaiter = waiter;
+        long timerId = vertx.setTimer(timeoutMs, id -> finalWaiter.timeout());
+        synchronized (mutex) {
+            if (waiter.done) {
+                vertx.cancelTimer(timerId);
+            } else {
+                waiter.timerId = timerId;
+            }
+        }
+        return of(waiter);
     }
 
-    private void removeReadLockedRange(LockedRange lockedRange) {
-        checkState(readLocks.remove(lockedRange));
-    }
-
-    private void removeWriteLockedRange(LockedRange lockedRange) {
-        checkState(writeLocks.remove(lockedRange));
-    }
-
-    private void addWriteLockedRange(LockedRange lockedRange) {
-        checkState(writeLocks.add(lockedRange));
-    }
-
-    private void addReadLockedRange(LockedRange lockedRange) {
-        checkState(readLocks.add(lockedRange));
+    // a request conflicts with the held locks and the requests that
+    // started waiting before it that it can't share the range with
+    protected boolean isConflict(Range range, boolean write, long waitingSince) {
+        if (locks.find(range.getFirst(), range.getLast(), entry -> write || entry.getValue().isWrite()).isPresent()) {
+            return true;
+        }
+        return waiters.find(range.getFirst(), range.getLast(), entry -> entry.getSequence() < waitingSince && (write || entry.getValue().write)).isPresent();
     }
 
-    protected boolean isReadConflict(Range range) {
-        for (LockedRange lockedRange : readLocks) {
-            if (lockedRange.intersects(range)) {
-                return true;
+    protected Lock grant(Range range, boolean write) {
+        LockedRange lockedRange = new LockedRange(range, write);
+        IntervalTree.Entry<LockedRange> entry = locks.insert(range.getFirst(), range.getLast(), lockedRange);
+        lockCount.incrementAndGet();
+        return new Lock() {
+            @Override
+            void unlock0() {
+                List<Granted> granted;
+                synchronized (mutex) {
+                    checkState(locks.remove(entry));
+                    lockCount.decrementAndGet();
+                    granted = grantWaiters(range);
+                }
+                for (Granted g : granted) {
+                    g.notifyWaiter();
+                }
             }
-        }
-        return false;
+        };
     }
 
-    protected boolean isWriteConflict(Range range) {
-        for (LockedRange lockedRange : writeLocks) {
-            if (lockedRange.intersects(range)) {
-                return true;
+    // the waiters that overlap a range whose locks or waiters changed, in the order they started
+    // waiting, are the only ones that may now be able to get a lock. Must be called holding the mutex
+    protected List<Granted> grantWaiters(Range range) {
+        List<Granted> granted = new ArrayList<>();
+        List<IntervalTree.Entry<Waiter>> candidates = waiters.overlapping(range.getFirst(), range.getLast());
+        candidates.sort((left, right) -> Long.compare(left.getSequence(), right.getSequence()));
+        for (IntervalTree.Entry<Waiter> entry : candidates) {
+            Waiter waiter = entry.getValue();
+            if (!waiter.done && !isConflict(waiter.range, waiter.write, entry.getSequence())) {
+                waiters.remove(entry);
+                waiterCount.decrementAndGet();
+                waiter.done = true;
+                waitTime.addAndGet(currentTimeMillis() - waiter.startTime);
+                granted.add(new Granted(waiter, grant(waiter.range, waiter.write)));
             }
         }
-        return false;
+        return granted;
     }
 
     protected long computeLast(long first, long length) {
@@ -253,12 +259,119 @@ public class RangeLock {
         return last - 1;
     }
 
+    public static class LockRequest {
+
+        private final RangeLock rangeLock;
+        private final boolean write;
+        private final long position;
+        private final long length;
+
+        public LockRequest(RangeLock rangeLock, boolean write, long position, long length) {
+            this.rangeLock = rangeLock;
+            this.write = write;
+            this.position = position;
+            this.length = length;
+        }
+
+        public boolean isWrite() {
+            return write;
+        }
+
+        public Optional<Lock> tryLock() {
+            return fromNullable(rangeLock.tryLock0(write, position, length));
+        }
+
+        public Optional<Waiter> lock(SfsVertx vertx, long timeoutMs, Handler<AsyncResult<Lock>> handler) {
+            return rangeLock.lock0(vertx, write, position, length, timeoutMs, handler);
+        }
+    }
+
+    public class Waiter {
+
+        private final SfsVertx vertx;
+        private final Context context;
+        private final Range range;
+        private final boolean write;
+        private final Handler<AsyncResult<Lock>> handler;
+        private final long startTime = currentTimeMillis();
+        private IntervalTree.Entry<Waiter> entry;
+        private long timerId = -1;
+        private boolean done = false;
+
+        private Waiter(SfsVertx vertx, Context context, Range range, boolean write, Handler<AsyncResult<Lock>> handler) {
+            this.vertx = vertx;
+            this.context = context;
+            this.range = range;
+            this.write = write;
+            this.handler = handler;
+        }
+
+        // stop waiting. The handler won't be called
+        public void cancel() {
+            remove(false);
+        }
+
+        protected void timeout() {
+            if (remove(true)) {
+                context.runOnContext(event -> handler.handle(failedFuture(new TimedOutException())));
+            }
+        }
+
+        private boolean remove(boolean timedOut) {
+            List<Granted> granted;
+            synchronized (mutex) {
+                if (done) {
+                    return false;
+                }
+                done = true;
+                checkState(waiters.remove(entry));
+                waiterCount.decrementAndGet();
+                if (timedOut) {
+                    timeoutCount.incrementAndGet();
+                }
+                // anything that was queued behind this may now be able to go
+                granted = grantWaiters(range);
+            }
+            if (!timedOut && timerId >= 0) {
+                vertx.cancelTimer(timerId);
+            }
+            for (Granted g : granted) {
+                g.notifyWaiter();
+            }
+            return true;
+        }
+    }
+
+    protected static class Granted {
+
+        private final Waiter waiter;
+        private final Lock lock;
+
+        public Granted(Waiter waiter, Lock lock) {
+            this.waiter = waiter;
+            this.lock = lock;
+        }
+
+        public void notifyWaiter() {
+            if (waiter.timerId >= 0) {
+                waiter.vertx.cancelTimer(waiter.timerId);
+            }
+            waiter.context.runOnContext(event -> waiter.handler.handle(succeededFuture(lock)));
+        }
+    }
+
     public static class LockedRange {
 
         private final Range range;
+        private final boolean write;
 
-        public LockedRange(Range range) {
+        public LockedRange(Range range, boolean write) {
             this.range = range;
+            this.write = write;
+        }
+
+        public boolean isWrite() {
+            return write;
         }
 
         public boolean adjacent(Range other) {
@@ -309,6 +422,7 @@ public class RangeLock {
         public String toString() {
             return "LockedRange{" +
                     "range=" + range +
+                    ", write=" + write +
                     '}';
         }
     }
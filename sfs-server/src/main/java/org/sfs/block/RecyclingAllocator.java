@@ -20,7 +20,9 @@ import com.google.common.base.Preconditions;
 import com.google.common.math.LongMath;
 import org.sfs.math.Rounding;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.NavigableSet;
@@ -28,7 +30,7 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicLong;
 
-public class RecyclingAllocator {
+public class RecyclingAllocator implements Allocator {
 
     private final Object mutex = new Object();
     private final NavigableMap<Long, Range> byPosition = new TreeMap<>();
@@ -44,9 +46,10 @@ public class RecyclingAllocator {
         free0(toMerge);
     }
 
+    @Override
     public long allocFromLastRange(long length) {
         synchronized (mutex) {
-            Map.Entry<Long, Range> lastEntry = byPosition.pollLastEntry();
+            Map.Entry<Long, Range> lastEntry = byPosition.lastEntry();
             Preconditions.checkNotNull(lastEntry);
             Range range = lastEntry.getValue();
             Preconditions.checkNotNull(lastEntry);
@@ -71,6 +74,7 @@ public class RecyclingAllocator {
         }
     }
 
+    @Override
     public long allocNextAvailable(long length) {
         Range match = null;
         synchronized (mutex) {
@@ -97,6 +101,7 @@ public class RecyclingAllocator {
         }
     }
 
+    @Override
     public long alloc(long position, long length) {
         checkRange(position, length);
         Range toRemove = new Range(position, computeLast(position, length));
@@ -156,6 +161,7 @@ public class RecyclingAllocator {
     }
 
 
+    @Override
     public void free(long position, long length) {
         checkRange(position, length);
         Range toMerge = new Range(position, computeLast(position, length));
@@ -194,18 +200,51 @@ public class RecyclingAllocator {
         Preconditions.checkArgument(length >= 0, "Length must be >= 0, Was %s", length);
     }
 
+    // replaces the free ranges, used to restore a previously saved state
+    @Override
+    public void setFreeRanges(Iterable<Range> ranges) {
+        synchronized (mutex) {
+            byPosition.clear();
+            bySize.clear();
+            bytesFree.set(0);
+            for (Range range : ranges) {
+                checkRange(range.getFirst(), range.getBlockCount());
+                Preconditions.checkArgument(range.getBlockCount() % blockSize == 0, "Length is not a multiple of the block size, Was %s", range.getBlockCount());
+                free0(range);
+            }
+        }
+    }
+
+    // a point in time copy of the free ranges that can be used
+    // while the allocator is being modified
+    @Override
+    public List<Range> copyFreeRanges() {
+        synchronized (mutex) {
+            return new ArrayList<>(byPosition.values());
+        }
+    }
+
+    @Override
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    @Override
     public Iterable<Range> freeRanges() {
         return byPosition.values();
     }
 
+    @Override
     public long greatestFreePosition() {
         return byPosition.lastEntry().getKey();
     }
 
+    @Override
     public int getNumberOfFreeRanges() {
         return byPosition.size();
     }
 
+    @Override
     public long getBytesFree(long useableSpace) {
         long free = bytesFree.get();
         synchronized (mutex) {
@@ -223,6 +262,17 @@ public class RecyclingAllocator {
         return free;
     }
 
+    @Override
+    public FragmentationReport fragmentationReport() {
+        FragmentationReport report = new FragmentationReport("recycling", blockSize);
+        synchronized (mutex) {
+            for (Range range : byPosition.values()) {
+                report.add(range.getFirst(), range.getLast());
+            }
+        }
+        return report;
+    }
+
     protected long computeLast(long first, long length) {
         return LongMath.checkedAdd(first, Rounding.up(length, blockSize)) - 1;
     }
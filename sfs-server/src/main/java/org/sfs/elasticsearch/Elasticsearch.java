@@ -246,7 +246,8 @@ public class Elasticsearch {
                     .flatMap(aVoid -> createUpdateIndex(vertxContext, accountIndex(), "es-account-mapping.json", Limits.NOT_SET, Limits.NOT_SET))
                     .flatMap(aVoid -> createUpdateIndex(vertxContext, containerIndex(), "es-container-mapping.json", Limits.NOT_SET, Limits.NOT_SET))
                     .flatMap(aVoid -> createUpdateIndex(vertxContext, containerKeyIndex(), "es-container-key-mapping.json", Limits.NOT_SET, Limits.NOT_SET))
-                    .flatMap(aVoid -> createUpdateIndex(vertxContext, masterKeyTypeIndex(), "es-master-key-mapping.json", Limits.NOT_SET, Limits.NOT_SET));
+                    .flatMap(aVoid -> createUpdateIndex(vertxContext, masterKeyTypeIndex(), "es-master-key-mapping.json", Limits.NOT_SET, Limits.NOT_SET))
+                    .flatMap(aVoid -> createUpdateIndex(vertxContext, usageIndex(), "es-usage-mapping.json", Limits.NOT_SET, Limits.NOT_SET));
         } else {
             return Defer.aVoid();
         }
@@ -367,6 +368,10 @@ public class Elasticsearch {
         return indexPrefix() + "master_key";
     }
 
+    public String usageIndex() {
+        return indexPrefix() + "usage";
+    }
+
     public boolean isObjectIndex(String indexName) {
         return indexName != null && indexName.startsWith(indexPrefix()) && indexName.endsWith("_objects");
     }
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.elasticsearch;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import org.sfs.Server;
+import org.sfs.VertxContext;
+import org.sfs.elasticsearch.account.LoadAccount;
+import org.sfs.elasticsearch.container.LoadContainer;
+import org.sfs.nodes.ClusterInfo;
+import org.sfs.nodes.Nodes;
+import org.sfs.rx.Defer;
+import org.sfs.rx.NullSubscriber;
+import org.sfs.rx.ToVoid;
+import org.sfs.util.ConfigHelper;
+import org.sfs.vo.PersistentAccount;
+import org.sfs.vo.PersistentContainer;
+import org.sfs.vo.TransientServiceDef;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Optional.of;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.cache.CacheBuilder.newBuilder;
+import static io.vertx.core.logging.LoggerFactory.getLogger;
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static rx.Observable.defer;
+
+// Node wide cache of account and container documents so that object requests
+// don't need to fetch them from elasticsearch every time. Entries expire after
+// ttl and are invalidated on this node and every other known node when an
+// account or container is updated or removed.
+//
+// Cached documents are never handed out directly since callers are free
+// to modify the account or container they're given
+public class MetadataCache {
+
+    private static final Logger LOGGER = getLogger(MetadataCache.class);
+    public static final long REMOVED = Long.MAX_VALUE;
+    private final AtomicBoolean closed = new AtomicBoolean(true);
+    private Cache<String, PersistentAccount> accounts;
+    private Cache<String, PersistentContainer> containers;
+    // the lowest persistent version that can be cached for an id. Stops a load
+    // that raced an update or remove from caching the document it replaced
+    private Cache<String, Long> minimumVersions;
+    private VertxContext<Server> vertxContext;
+
+    public Observable<Void> start(VertxContext<Server> vertxContext, JsonObject config) {
+        return Defer.aVoid()
+                .filter(aVoid -> closed.compareAndSet(true, false))
+                .map(aVoid -> {
+                    this.vertxContext = vertxContext;
+                    long maxSize = Long.parseLong(ConfigHelper.getFieldOrEnv(config, "metadata_cache.maxsize", "10000"));
+                    checkArgument(maxSize >= 0, "metadata_cache.maxsize must be greater or equal to 0");
+                    long ttl = Long.parseLong(ConfigHelper.getFieldOrEnv(config, "metadata_cache.ttl", String.valueOf(SECONDS.toMillis(10))));
+                    checkArgument(ttl >= 0, "metadata_cache.ttl must be greater or equal to 0");
+                    accounts = newBuilder()
+                            .ticker(ticker())
+                            .maximumSize(maxSize)
+                            .expireAfterWrite(ttl, MILLISECONDS)
+                            .build();
+                    containers = newBuilder()
+                            .ticker(ticker())
+                            .maximumSize(maxSize)
+                            .expireAfterWrite(ttl, MILLISECONDS)
+                            .build();
+                    minimumVersions = newBuilder()
+                            .ticker(ticker())
+                            .maximumSize(maxSize)
+                            .expireAfterWrite(ttl, MILLISECONDS)
+                            .build();
+                    return (Void) null;
+                })
+                .singleOrDefault(null);
+    }
+
+    public Observable<Void> stop(VertxContext<Server> vertxContext) {
+        return Defer.aVoid()
+                .filter(aVoid -> closed.compareAndSet(false, true))
+                .map(aVoid -> {
+                    accounts.invalidateAll();
+                    containers.invalidateAll();
+                    minimumVersions.invalidateAll();
+                    return (Void) null;
+                })
+                .singleOrDefault(null);
+    }
+
+    public Observable<Optional<PersistentAccount>> getAccount(VertxContext<Server> vertxContext, String accountId) {
+        return defer(() -> {
+            if (closed.get()) {
+                return loadAccount(vertxContext, accountId);
+            }
+            PersistentAccount cached = accounts.getIfPresent(accountId);
+            if (cached != null) {
+                return Defer.just(of(copy(cached)));
+            }
+            return loadAccount(vertxContext, accountId)
+                    .doOnNext(oPersistentAccount -> {
+                        if (oPersistentAccount.isPresent()) {
+                            put(oPersistentAccount.get());
+                        }
+                    });
+        });
+    }
+
+    public Observable<Optional<PersistentContainer>> getContainer(VertxContext<Server> vertxContext, PersistentAccount persistentAccount, String containerId) {
+        return defer(() -> {
+            if (closed.get()) {
+                return loadContainer(vertxContext, persistentAccount, containerId);
+            }
+            PersistentContainer cached = containers.getIfPresent(containerId);
+            if (cached != null) {
+                return Defer.just(of(copy(persistentAccount, cached)));
+            }
+            return loadContainer(vertxContext, persistentAccount, containerId)
+                    .doOnNext(oPersistentContainer -> {
+                        if (oPersistentContainer.isPresent()) {
+                            put(oPersistentContainer.get());
+                        }
+                    });
+        });
+    }
+
+    // the other nodes are invalidated in the background so that a write
+    // doesn't wait for the slowest node in the cluster
+    public Observable<Void> updated(VertxContext<Server> vertxContext, PersistentAccount persistentAccount) {
+        return Defer.aVoid()
+                .doOnNext(aVoid -> {
+                    invalidate(persistentAccount.getId(), persistentAccount.getPersistentVersion());
+                    put(persistentAccount);
+                    broadcast(vertxContext, persistentAccount.getId(), persistentAccount.getPersistentVersion())
+                            .subscribe(new NullSubscriber<>());
+                });
+    }
+
+    public Observable<Void> updated(VertxContext<Server> vertxContext, PersistentContainer persistentContainer) {
+        return Defer.aVoid()
+                .doOnNext(aVoid -> {
+                    invalidate(persistentContainer.getId(), persistentContainer.getPersistentVersion());
+                    put(persistentContainer);
+                    broadcast(vertxContext, persistentContainer.getId(), persistentContainer.getPersistentVersion())
+                            .subscribe(new NullSubscriber<>());
+                });
+    }
+
+    public Observable<Void> removed(VertxContext<Server> vertxContext, String id) {
+        return Defer.aVoid()
+                .doOnNext(aVoid -> {
+                    invalidate(id, REMOVED);
+                    broadcast(vertxContext, id, REMOVED)
+                            .subscribe(new NullSubscriber<>());
+                });
+    }
+
+    // evicts the id from this node's cache and stops documents older
+    // than minimumVersion from being cached until the ttl expires
+    public void invalidate(String id, long minimumVersion) {
+        if (closed.get()) {
+            return;
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(format("Invalidate {%s,%d}", id, minimumVersion));
+        }
+        minimumVersions.asMap().merge(id, minimumVersion, Math::max);
+        accounts.invalidate(id);
+        containers.invalidate(id);
+        if (minimumVersion == REMOVED) {
+            // a container created with the same name reuses the container key ids
+            vertxContext.verticle().containerKeys().invalidateContainer(id);
+        }
+    }
+
+    protected void put(PersistentAccount persistentAccount) {
+        String id = persistentAccount.getId();
+        long version = persistentAccount.getPersistentVersion();
+        if (!closed.get() && isCacheable(id, version)) {
+            PersistentAccount existing = accounts.getIfPresent(id);
+            if (existing == null || existing.getPersistentVersion() < version) {
+                accounts.put(id, copy(persistentAccount));
+            }
+        }
+    }
+
+    protected void put(PersistentContainer persistentContainer) {
+        String id = persistentContainer.getId();
+        long version = persistentContainer.getPersistentVersion();
+        if (!closed.get() && isCacheable(id, version)) {
+            PersistentContainer existing = containers.getIfPresent(id);
+            if (existing == null || existing.getPersistentVersion() < version) {
+                containers.put(id, copy(persistentContainer.getParent(), persistentContainer));
+            }
+        }
+    }
+
+    protected boolean isCacheable(String id, long version) {
+        Long minimumVersion = minimumVersions.getIfPresent(id);
+        return minimumVersion == null || version >= minimumVersion;
+    }
+
+    // other nodes are told on a best effort basis. A node that misses the
+    // message serves the old document until its ttl expires and the version
+    // check of the next write rejects anything written against it
+    protected Observable<Void> broadcast(VertxContext<Server> vertxContext, String id, long minimumVersion) {
+        List<Observable<Void>> invalidations = new ArrayList<>();
+        for (TransientServiceDef serviceDef : otherNodes(vertxContext)) {
+            invalidations.add(
+                    invalidateRemote(vertxContext, serviceDef, id, minimumVersion)
+                            .onErrorResumeNext(throwable -> {
+                                LOGGER.warn(format("Failed to invalidate %s on node %s", id, serviceDef.getId()), throwable);
+                                return Defer.aVoid();
+                            }));
+        }
+        return Observable.merge(invalidations)
+                .toList()
+                .map(new ToVoid<>());
+    }
+
+    protected List<TransientServiceDef> otherNodes(VertxContext<Server> vertxContext) {
+        Nodes nodes = vertxContext.verticle().nodes();
+        ClusterInfo clusterInfo = vertxContext.verticle().getClusterInfo();
+        List<TransientServiceDef> allNodes = clusterInfo.getAllNodes();
+        List<TransientServiceDef> otherNodes = new ArrayList<>();
+        if (allNodes != null) {
+            String localNodeId = nodes.getNodeId();
+            for (TransientServiceDef serviceDef : allNodes) {
+                if (!localNodeId.equals(serviceDef.getId())) {
+                    otherNodes.add(serviceDef);
+                }
+            }
+        }
+        return otherNodes;
+    }
+
+    protected Observable<Void> invalidateRemote(VertxContext<Server> vertxContext, TransientServiceDef serviceDef, String id, long minimumVersion) {
+        return vertxContext.verticle().nodes().remoteNode(vertxContext, serviceDef)
+                .invalidateMetadata(id, minimumVersion);
+    }
+
+    protected Observable<Optional<PersistentAccount>> loadAccount(VertxContext<Server> vertxContext, String accountId) {
+        return Defer.just(accountId)
+                .flatMap(new LoadAccount(vertxContext));
+    }
+
+    protected Observable<Optional<PersistentContainer>> loadContainer(VertxContext<Server> vertxContext, PersistentAccount persistentAccount, String containerId) {
+        return Defer.just(containerId)
+                .flatMap(new LoadContainer(vertxContext, persistentAccount));
+    }
+
+    protected Ticker ticker() {
+        return Ticker.systemTicker();
+    }
+
+    protected PersistentAccount copy(PersistentAccount persistentAccount) {
+        return new PersistentAccount(persistentAccount.getId(), persistentAccount.getPersistentVersion())
+                .merge(persistentAccount.toJsonObject());
+    }
+
+    protected PersistentContainer copy(PersistentAccount persistentAccount, PersistentContainer persistentContainer) {
+        return new PersistentContainer(persistentAccount, persistentContainer.getId(), persistentContainer.getPersistentVersion())
+                .merge(persistentContainer.toJsonObject());
+    }
+}
@@ -44,14 +44,12 @@ public class SearchHitDestroyObjectEndableWrite extends AbstractBulkUpdateEndabl
     private static final Logger LOGGER = LoggerFactory.getLogger(SearchHitDestroyObjectEndableWrite.class);
     private final ClusterInfo clusterInfo;
 
-    private final CachedAccount cachedAccount;
-    private final CachedContainer cachedContainer;
+    private final MetadataCache metadataCache;
 
     public SearchHitDestroyObjectEndableWrite(VertxContext<Server> vertxContext) {
         super(vertxContext);
         this.clusterInfo = vertxContext.verticle().getClusterInfo();
-        this.cachedAccount = new CachedAccount(vertxContext);
-        this.cachedContainer = new CachedContainer(vertxContext);
+        this.metadataCache = vertxContext.verticle().metadataCache();
     }
 
     @Override
@@ -97,10 +95,12 @@ public class SearchHitDestroyObjectEndableWrite extends AbstractBulkUpdateEndabl
     }
 
     protected Observable<PersistentAccount> getAccount(String accountId) {
-        return cachedAccount.get(accountId);
+        return metadataCache.getAccount(vertxContext, accountId)
+                .map(Optional::get);
     }
 
     protected Observable<PersistentContainer> getContainer(PersistentAccount persistentAccount, String containerId) {
-        return cachedContainer.get(persistentAccount, containerId);
+        return metadataCache.getContainer(vertxContext, persistentAccount, containerId)
+                .map(Optional::get);
     }
 }
@@ -24,9 +24,9 @@ import org.sfs.Server;
 import org.sfs.VertxContext;
 import org.sfs.jobs.VerifyRepairAllContainerObjects;
 import org.sfs.nodes.ClusterInfo;
-import org.sfs.nodes.all.blobreference.AcknowledgeBlobReference;
-import org.sfs.nodes.all.blobreference.DeleteBlobReference;
-import org.sfs.nodes.all.blobreference.VerifyBlobReference;
+import org.sfs.nodes.all.blobreference.AcknowledgeBlobReferences;
+import org.sfs.nodes.all.blobreference.DeleteBlobReferences;
+import org.sfs.nodes.all.blobreference.VerifyBlobReferences;
 import org.sfs.nodes.all.segment.RebalanceSegment;
 import org.sfs.nodes.compute.object.PruneObject;
 import org.sfs.rx.Defer;
@@ -42,6 +42,7 @@ import org.sfs.vo.TransientVersion;
 import rx.Observable;
 import rx.Scheduler;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -62,8 +63,7 @@ public class SearchHitMaintainObjectEndableWrite extends AbstractBulkUpdateEndab
     private static final Logger LOGGER = LoggerFactory.getLogger(SearchHitMaintainObjectEndableWrite.class);
     private final ClusterInfo clusterInfo;
 
-    private final CachedAccount cachedAccount;
-    private final CachedContainer cachedContainer;
+    private final MetadataCache metadataCache;
 
     private final List<TransientServiceDef> dataNodes;
     private final Set<String> forceRemoveVolumes;
@@ -76,8 +76,7 @@ public class SearchHitMaintainObjectEndableWrite extends AbstractBulkUpdateEndab
                 from(clusterInfo.getDataNodes())
                         .transform(TransientServiceDef::copy)
                         .toList();
-        this.cachedAccount = new CachedAccount(vertxContext);
-        this.cachedContainer = new CachedContainer(vertxContext);
+        this.metadataCache = vertxContext.verticle().metadataCache();
         this.forceRemoveVolumes = forceRemoveVolumes;
         if (!forceRemoveVolumes.isEmpty()) {
             LOGGER.info("forceRemoveVolumes: " + forceRemoveVolumes);
@@ -143,36 +142,46 @@ public class SearchHitMaintainObjectEndableWrite extends AbstractBulkUpdateEndab
                 .filter(transientSegment -> !transientSegment.isTinyData())
                 .flatMap(transientSegment -> Observable.from(transientSegment.getBlobs()))
                 .filter(transientBlobReference -> !transientBlobReference.isDeleted())
-                .flatMap(transientBlobReference -> {
-                            boolean alreadyAckd = transientBlobReference.isAcknowledged();
-                            Optional<Integer> oVerifyFailCount = transientBlobReference.getVerifyFailCount();
-                            int verifyFailCount = oVerifyFailCount.isPresent() ? oVerifyFailCount.get() : 0;
-                            return just(transientBlobReference)
-                                    .flatMap(new VerifyBlobReference(vertxContext))
-                                    .map(verified -> {
-                                        // we do this here to unAck blob refs
-                                        // in cases where the referenced volume has somehow
-                                        // become corrupted
-                                        if (!verified) {
-                                            if (verifyFailCount >= VerifyRepairAllContainerObjects.VERIFY_RETRY_COUNT) {
-                                                transientBlobReference.setAcknowledged(FALSE);
-                                            } else {
-                                                transientBlobReference.setVerifyFailCount(verifyFailCount + 1);
-                                            }
+                .toList()
+                .flatMap(transientBlobReferences -> {
+                    List<Boolean> alreadyAckds = new ArrayList<>(transientBlobReferences.size());
+                    for (TransientBlobReference transientBlobReference : transientBlobReferences) {
+                        alreadyAckds.add(transientBlobReference.isAcknowledged());
+                    }
+                    return just(transientBlobReferences)
+                            .flatMap(new VerifyBlobReferences(vertxContext))
+                            .map(verifieds -> {
+                                List<TransientBlobReference> toAck = new ArrayList<>();
+                                for (int i = 0; i < transientBlobReferences.size(); i++) {
+                                    TransientBlobReference transientBlobReference = transientBlobReferences.get(i);
+                                    boolean verified = verifieds.get(i);
+                                    Optional<Integer> oVerifyFailCount = transientBlobReference.getVerifyFailCount();
+                                    int verifyFailCount = oVerifyFailCount.isPresent() ? oVerifyFailCount.get() : 0;
+                                    // we do this here to unAck blob refs
+                                    // in cases where the referenced volume has somehow
+                                    // become corrupted
+                                    if (!verified) {
+                                        if (verifyFailCount >= VerifyRepairAllContainerObjects.VERIFY_RETRY_COUNT) {
+                                            transientBlobReference.setAcknowledged(FALSE);
                                         } else {
-                                            transientBlobReference.setVerifyFailCount(0);
-                                            transientBlobReference.setAcknowledged(TRUE);
+                                            transientBlobReference.setVerifyFailCount(verifyFailCount + 1);
                                         }
-                                        return verified;
-                                    })
-                                    // only call ack on the volume if this blob reference
-                                    // was successfully verified and not already ackd since
-                                    // there's not sense in re-ack'ing
-                                    .filter(verified -> verified && !alreadyAckd)
-                                    .map(aVoid -> transientBlobReference)
-                                    .flatMap(new AcknowledgeBlobReference(vertxContext));
-                        }
-                )
+                                    } else {
+                                        transientBlobReference.setVerifyFailCount(0);
+                                        transientBlobReference.setAcknowledged(TRUE);
+                                        // only call ack on the volume if this blob reference
+                                        // was successfully verified and not already ackd since
+                                        // there's not sense in re-ack'ing
+                                        if (!alreadyAckds.get(i)) {
+                                            toAck.add(transientBlobReference);
+                                        }
+                                    }
+                                }
+                                return toAck;
+                            })
+                            .filter(toAck -> !toAck.isEmpty())
+                            .flatMap(new AcknowledgeBlobReferences(vertxContext));
+                })
                 .count()
                 .map(new ToType<>(persistentObject));
     }
@@ -215,13 +224,16 @@ public class SearchHitMaintainObjectEndableWrite extends AbstractBulkUpdateEndab
                         Optional<Integer> oVerifyFailCount = transientBlobReference.getVerifyFailCount();
                         return oVerifyFailCount.isPresent() && oVerifyFailCount.get() >= VerifyRepairAllContainerObjects.VERIFY_RETRY_COUNT;
                     })
-                    .flatMap(transientBlobReference ->
-                            just(transientBlobReference)
-                                    .flatMap(new DeleteBlobReference(vertxContext))
-                                    .filter(deleted -> deleted)
-                                    .map(deleted -> {
-                                        if (Boolean.TRUE.equals(deleted)) {
-                                            transientBlobReference.setDeleted(deleted);
+                    .toList()
+                    .filter(transientBlobReferences -> !transientBlobReferences.isEmpty())
+                    .flatMap(transientBlobReferences ->
+                            just(transientBlobReferences)
+                                    .flatMap(new DeleteBlobReferences(vertxContext))
+                                    .map(deleteds -> {
+                                        for (int i = 0; i < transientBlobReferences.size(); i++) {
+                                            if (Boolean.TRUE.equals(deleteds.get(i))) {
+                                                transientBlobReferences.get(i).setDeleted(TRUE);
+                                            }
                                         }
                                         return (Void) null;
                                     }))
@@ -248,10 +260,12 @@ public class SearchHitMaintainObjectEndableWrite extends AbstractBulkUpdateEndab
     }
 
     protected Observable<PersistentAccount> getAccount(String accountId) {
-        return cachedAccount.get(accountId);
+        return metadataCache.getAccount(vertxContext, accountId)
+                .map(Optional::get);
     }
 
     protected Observable<PersistentContainer> getContainer(PersistentAccount persistentAccount, String containerId) {
-        return cachedContainer.get(persistentAccount, containerId);
+        return metadataCache.getContainer(vertxContext, persistentAccount, containerId)
+                .map(Optional::get);
     }
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sfs.elasticsearch;
+
+import com.google.common.base.Optional;
+import io.vertx.core.json.JsonObject;
+import org.sfs.Server;
+import org.sfs.VertxContext;
+import org.sfs.vo.PersistentAccount;
+import rx.Observable;
+
+// corrects the usage of each account by what the usage of its
+// containers adds up to. The account documents are left as they are
+public class SearchHitReconcileAccountUsageEndableWrite extends AbstractBulkUpdateEndableWriteStream {
+
+    private final UsageCounters usageCounters;
+
+    public SearchHitReconcileAccountUsageEndableWrite(VertxContext<Server> vertxContext) {
+        super(vertxContext);
+        this.usageCounters = vertxContext.verticle().usageCounters();
+    }
+
+    @Override
+    protected Observable<Optional<JsonObject>> transform(JsonObject data, String id, long version) {
+        PersistentAccount persistentAccount = new PersistentAccount(id, version).merge(data);
+        return usageCounters.reconcileAccount(vertxContext, persistentAccount)
+                .map(aVoid -> Optional.of(data));
+    }
+}
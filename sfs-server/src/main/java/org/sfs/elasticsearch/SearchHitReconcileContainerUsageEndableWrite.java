@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sfs.elasticsearch;
+
+import com.google.common.base.Optional;
+import io.vertx.core.json.JsonObject;
+import org.sfs.Server;
+import org.sfs.VertxContext;
+import org.sfs.vo.PersistentContainer;
+import rx.Observable;
+
+import static org.sfs.rx.Defer.just;
+
+// corrects the usage of each container by what its objects add up to.
+// The container documents are left as they are
+public class SearchHitReconcileContainerUsageEndableWrite extends AbstractBulkUpdateEndableWriteStream {
+
+    private final MetadataCache metadataCache;
+    private final UsageCounters usageCounters;
+
+    public SearchHitReconcileContainerUsageEndableWrite(VertxContext<Server> vertxContext) {
+        super(vertxContext);
+        this.metadataCache = vertxContext.verticle().metadataCache();
+        this.usageCounters = vertxContext.verticle().usageCounters();
+    }
+
+    @Override
+    protected Observable<Optional<JsonObject>> transform(JsonObject data, String id, long version) {
+        String accountId = data.getString("account_id");
+        if (accountId == null) {
+            return just(Optional.of(data));
+        }
+        return metadataCache.getAccount(vertxContext, accountId)
+                .flatMap(oPersistentAccount -> {
+                    if (oPersistentAccount.isPresent()) {
+                        PersistentContainer persistentContainer =
+                                new PersistentContainer(oPersistentAccount.get(), id, version)
+                                        .merge(data);
+                        return usageCounters.reconcileContainer(vertxContext, persistentContainer)
+                                .map(aVoid -> Optional.of(data));
+                    } else {
+                        return just(Optional.of(data));
+                    }
+                });
+    }
+}
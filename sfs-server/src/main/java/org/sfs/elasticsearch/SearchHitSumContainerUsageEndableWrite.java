@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sfs.elasticsearch;
+
+import com.google.common.base.Optional;
+import io.vertx.core.json.JsonObject;
+import org.sfs.Server;
+import org.sfs.VertxContext;
+import org.sfs.elasticsearch.usage.LoadContainerUsage;
+import org.sfs.vo.PersistentAccount;
+import org.sfs.vo.PersistentContainer;
+import rx.Observable;
+
+import static org.sfs.rx.Defer.just;
+
+// sums the usage of the containers of an account. The container
+// documents are left as they are
+public class SearchHitSumContainerUsageEndableWrite extends AbstractBulkUpdateEndableWriteStream {
+
+    private final PersistentAccount persistentAccount;
+    private long containerCount;
+    private long objectCount;
+    private long bytesUsed;
+    private boolean incomplete;
+
+    public SearchHitSumContainerUsageEndableWrite(VertxContext<Server> vertxContext, PersistentAccount persistentAccount) {
+        super(vertxContext);
+        this.persistentAccount = persistentAccount;
+    }
+
+    public long getContainerCount() {
+        return containerCount;
+    }
+
+    public long getObjectCount() {
+        return objectCount;
+    }
+
+    public long getBytesUsed() {
+        return bytesUsed;
+    }
+
+    // true if the usage of a container couldn't be loaded
+    public boolean isIncomplete() {
+        return incomplete;
+    }
+
+    @Override
+    protected Observable<Optional<JsonObject>> transform(JsonObject data, String id, long version) {
+        PersistentContainer persistentContainer =
+                new PersistentContainer(persistentAccount, id, version)
+                        .merge(data);
+        return just(persistentContainer)
+                .flatMap(new LoadContainerUsage(vertxContext))
+                .map(containerStats -> {
+                    containerCount++;
+                    objectCount += containerStats.getObjectCount();
+                    bytesUsed += (long) containerStats.getBytesUsed();
+                    return Optional.of(data);
+                })
+                .doOnError(throwable -> incomplete = true);
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.elasticsearch;
+
+import com.google.common.base.Optional;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import org.sfs.Server;
+import org.sfs.VertxContext;
+import org.sfs.elasticsearch.account.LoadAccountStats;
+import org.sfs.elasticsearch.container.LoadContainerStats;
+import org.sfs.elasticsearch.usage.LoadUsage;
+import org.sfs.elasticsearch.usage.PersistUsage;
+import org.sfs.elasticsearch.usage.RemoveUsage;
+import org.sfs.nodes.ClusterInfo;
+import org.sfs.nodes.Nodes;
+import org.sfs.rx.Defer;
+import org.sfs.rx.ToVoid;
+import org.sfs.util.ConfigHelper;
+import org.sfs.vo.PersistentAccount;
+import org.sfs.vo.PersistentContainer;
+import org.sfs.vo.TransientServiceDef;
+import org.sfs.vo.Usage;
+import rx.Observable;
+import rx.Subscriber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.vertx.core.logging.LoggerFactory.getLogger;
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+// Node wide accumulator of the changes in object count and bytes used of the
+// containers written through this node. The changes are added to the usage
+// documents of the containers every flush interval and, once a container's usage
+// has been updated, to the usage document of its account so that the usage of a
+// container or account is read from a single document instead of aggregating
+// over every object. The usage documents are kept apart from the container and
+// account documents so that counting never conflicts with the updates users make.
+//
+// Changes that can't be applied because of a version conflict or an error are
+// retried on the next flush. Changes to a container or account without a usage
+// document are dropped since the usage is computed from scratch the first time
+// it's read. The counters drift if a node stops before it flushes, so the verify
+// repair jobs flush every node and then correct them from the objects
+public class UsageCounters {
+
+    private static final Logger LOGGER = getLogger(UsageCounters.class);
+    private final AtomicBoolean closed = new AtomicBoolean(true);
+    private final ConcurrentMap<String, Delta> containers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Delta> accounts = new ConcurrentHashMap<>();
+    private VertxContext<Server> vertxContext;
+    private long flushInterval;
+    private Long timerId;
+
+    public Observable<Void> start(VertxContext<Server> vertxContext, JsonObject config) {
+        return Defer.aVoid()
+                .filter(aVoid -> closed.compareAndSet(true, false))
+                .map(aVoid -> {
+                    this.vertxContext = vertxContext;
+                    flushInterval = Long.parseLong(ConfigHelper.getFieldOrEnv(config, "usagecounters.flushinterval", String.valueOf(SECONDS.toMillis(5))));
+                    checkArgument(flushInterval > 0, "usagecounters.flushinterval must be greater than 0");
+                    startTimer();
+                    return (Void) null;
+                })
+                .singleOrDefault(null);
+    }
+
+    public Observable<Void> stop(VertxContext<Server> vertxContext) {
+        return Defer.aVoid()
+                .filter(aVoid -> closed.compareAndSet(false, true))
+                .doOnNext(aVoid -> stopTimer())
+                .flatMap(aVoid -> flush(vertxContext))
+                .singleOrDefault(null);
+    }
+
+    public void objectsChanged(PersistentContainer persistentContainer, long objectCount, long bytesUsed) {
+        if (objectCount != 0 || bytesUsed != 0) {
+            containers.merge(persistentContainer.getId(), new Delta(0, objectCount, bytesUsed), Delta::plus);
+        }
+    }
+
+    public void containersChanged(String accountId, long containerCount, long objectCount, long bytesUsed) {
+        if (containerCount != 0 || objectCount != 0 || bytesUsed != 0) {
+            accounts.merge(accountId, new Delta(containerCount, objectCount, bytesUsed), Delta::plus);
+        }
+    }
+
+    public Observable<Void> accountCreated(VertxContext<Server> vertxContext, PersistentAccount persistentAccount) {
+        return persistUsage(vertxContext, Usage.ofAccount(persistentAccount))
+                .map(new ToVoid<>())
+                .onErrorResumeNext(throwable -> {
+                    LOGGER.warn(format("Failed to create usage of account %s", persistentAccount.getId()), throwable);
+                    return Defer.aVoid();
+                });
+    }
+
+    public Observable<Void> accountRemoved(VertxContext<Server> vertxContext, PersistentAccount persistentAccount) {
+        accounts.remove(persistentAccount.getId());
+        return removeUsage(vertxContext, persistentAccount.getId())
+                .onErrorResumeNext(throwable -> {
+                    LOGGER.warn(format("Failed to remove usage of account %s", persistentAccount.getId()), throwable);
+                    return Defer.aVoid();
+                });
+    }
+
+    public Observable<Void> containerCreated(VertxContext<Server> vertxContext, PersistentContainer persistentContainer) {
+        containersChanged(persistentContainer.getParent().getId(), 1, 0, 0);
+        return persistUsage(vertxContext, Usage.ofContainer(persistentContainer))
+                .map(new ToVoid<>())
+                .onErrorResumeNext(throwable -> {
+                    LOGGER.warn(format("Failed to create usage of container %s", persistentContainer.getId()), throwable);
+                    return Defer.aVoid();
+                });
+    }
+
+    // the account no longer counts the container or the usage
+    // that was flushed to it. Changes that weren't flushed yet
+    // never reached the account so they're dropped
+    public Observable<Void> containerRemoved(VertxContext<Server> vertxContext, PersistentContainer persistentContainer) {
+        String accountId = persistentContainer.getParent().getId();
+        containers.remove(persistentContainer.getId());
+        return loadUsage(vertxContext, persistentContainer.getId())
+                .flatMap(oUsage -> {
+                    if (oUsage.isPresent()) {
+                        Usage usage = oUsage.get();
+                        containersChanged(accountId, -1, -usage.getObjectCount(), -usage.getBytesUsed());
+                        return removeUsage(vertxContext, persistentContainer.getId());
+                    } else {
+                        containersChanged(accountId, -1, 0, 0);
+                        return Defer.aVoid();
+                    }
+                })
+                .onErrorResumeNext(throwable -> {
+                    LOGGER.warn(format("Failed to remove usage of container %s", persistentContainer.getId()), throwable);
+                    return Defer.aVoid();
+                });
+    }
+
+    // applies the changes accumulated so far. The containers are flushed before
+    // the accounts so that their changes reach the accounts in the same flush
+    public Observable<Void> flush(VertxContext<Server> vertxContext) {
+        return Defer.aVoid()
+                .flatMap(aVoid -> Observable.from(new ArrayList<>(containers.keySet()))
+                        .concatMap(containerId -> {
+                            Delta delta = containers.remove(containerId);
+                            if (delta == null) {
+                                return Defer.aVoid();
+                            }
+                            return flushContainer(vertxContext, containerId, delta)
+                                    .onErrorResumeNext(throwable -> {
+                                        LOGGER.warn(format("Failed to flush usage of container %s", containerId), throwable);
+                                        containers.merge(containerId, delta, Delta::plus);
+                                        return Defer.aVoid();
+                                    });
+                        })
+                        .count())
+                .flatMap(count -> Observable.from(new ArrayList<>(accounts.keySet()))
+                        .concatMap(accountId -> {
+                            Delta delta = accounts.remove(accountId);
+                            if (delta == null) {
+                                return Defer.aVoid();
+                            }
+                            return flushAccount(vertxContext, accountId, delta)
+                                    .onErrorResumeNext(throwable -> {
+                                        LOGGER.warn(format("Failed to flush usage of account %s", accountId), throwable);
+                                        accounts.merge(accountId, delta, Delta::plus);
+                                        return Defer.aVoid();
+                                    });
+                        })
+                        .count())
+                .map(new ToVoid<>());
+    }
+
+    // flushes this node and then every other node so that the usage
+    // documents have every change that was made before this was called
+    public Observable<Void> flushAll(VertxContext<Server> vertxContext) {
+        return flush(vertxContext)
+                .flatMap(aVoid -> {
+                    Nodes nodes = vertxContext.verticle().nodes();
+                    ClusterInfo clusterInfo = vertxContext.verticle().getClusterInfo();
+                    List<TransientServiceDef> allNodes = clusterInfo.getAllNodes();
+                    List<Observable<Void>> flushes = new ArrayList<>();
+                    if (allNodes != null) {
+                        String localNodeId = nodes.getNodeId();
+                        for (TransientServiceDef serviceDef : allNodes) {
+                            if (!localNodeId.equals(serviceDef.getId())) {
+                                flushes.add(
+                                        nodes.remoteNode(vertxContext, serviceDef)
+                                                .flushUsageCounters()
+                                                .onErrorResumeNext(throwable -> {
+                                                    LOGGER.warn(format("Failed to flush usage counters on node %s", serviceDef.getId()), throwable);
+                                                    return Defer.aVoid();
+                                                }));
+                            }
+                        }
+                    }
+                    return Observable.merge(flushes)
+                            .toList()
+                            .map(new ToVoid<>());
+                });
+    }
+
+    // corrects the usage of the container by the difference between what its objects
+    // add up to and what its usage document has so that changes other nodes haven't
+    // flushed yet aren't lost. Every node is expected to have been flushed and the
+    // indexes refreshed before so that the document has the changes to the objects
+    public Observable<Void> reconcileContainer(VertxContext<Server> vertxContext, PersistentContainer persistentContainer) {
+        return loadUsage(vertxContext, persistentContainer.getId())
+                .flatMap(oUsage -> Defer.just(persistentContainer)
+                        .flatMap(new LoadContainerStats(vertxContext))
+                        .flatMap(containerStats -> {
+                            long objectCount = containerStats.getObjectCount();
+                            long bytesUsed = (long) containerStats.getBytesUsed();
+                            if (oUsage.isPresent()) {
+                                Usage usage = oUsage.get();
+                                objectsChanged(persistentContainer, objectCount - usage.getObjectCount(), bytesUsed - usage.getBytesUsed());
+                                return Defer.aVoid();
+                            } else {
+                                Usage usage = Usage.ofContainer(persistentContainer)
+                                        .setObjectCount(objectCount)
+                                        .setBytesUsed(bytesUsed);
+                                return persistUsage(vertxContext, usage)
+                                        .map(new ToVoid<>());
+                            }
+                        }));
+    }
+
+    // corrects the usage of the account by the difference between what the usage
+    // documents of its containers add up to and what its usage document has
+    public Observable<Void> reconcileAccount(VertxContext<Server> vertxContext, PersistentAccount persistentAccount) {
+        return loadUsage(vertxContext, persistentAccount.getId())
+                .flatMap(oUsage -> Defer.just(persistentAccount)
+                        .flatMap(new LoadAccountStats(vertxContext))
+                        .flatMap(accountStats -> {
+                            if (oUsage.isPresent()) {
+                                Usage usage = oUsage.get();
+                                containersChanged(
+                                        persistentAccount.getId(),
+                                        accountStats.getContainerCount() - usage.getContainerCount(),
+                                        accountStats.getObjectCount() - usage.getObjectCount(),
+                                        accountStats.getBytesUsed() - usage.getBytesUsed());
+                                return Defer.aVoid();
+                            } else {
+                                Usage usage = Usage.ofAccount(persistentAccount)
+                                        .setContainerCount(accountStats.getContainerCount())
+                                        .setObjectCount(accountStats.getObjectCount())
+                                        .setBytesUsed(accountStats.getBytesUsed());
+                                return persistUsage(vertxContext, usage)
+                                        .map(new ToVoid<>());
+                            }
+                        }));
+    }
+
+    protected Observable<Void> flushContainer(VertxContext<Server> vertxContext, String containerId, Delta delta) {
+        return loadUsage(vertxContext, containerId)
+                .flatMap(oUsage -> {
+                    if (oUsage.isPresent()) {
+                        Usage usage = oUsage.get();
+                        usage.setObjectCount(usage.getObjectCount() + delta.objectCount)
+                                .setBytesUsed(usage.getBytesUsed() + delta.bytesUsed);
+                        return persistUsage(vertxContext, usage)
+                                .map(oPersisted -> {
+                                    if (oPersisted.isPresent()) {
+                                        containersChanged(usage.getAccountId(), 0, delta.objectCount, delta.bytesUsed);
+                                    } else {
+                                        // the usage changed since it was loaded
+                                        containers.merge(containerId, delta, Delta::plus);
+                                    }
+                                    return (Void) null;
+                                });
+                    } else {
+                        // the container was removed or its usage
+                        // hasn't been computed yet
+                        return Defer.aVoid();
+                    }
+                });
+    }
+
+    protected Observable<Void> flushAccount(VertxContext<Server> vertxContext, String accountId, Delta delta) {
+        return loadUsage(vertxContext, accountId)
+                .flatMap(oUsage -> {
+                    if (oUsage.isPresent()) {
+                        Usage usage = oUsage.get();
+                        usage.setContainerCount(usage.getContainerCount() + delta.containerCount)
+                                .setObjectCount(usage.getObjectCount() + delta.objectCount)
+                                .setBytesUsed(usage.getBytesUsed() + delta.bytesUsed);
+                        return persistUsage(vertxContext, usage)
+                                .map(oPersisted -> {
+                                    if (!oPersisted.isPresent()) {
+                                        // the usage changed since it was loaded
+                                        accounts.merge(accountId, delta, Delta::plus);
+                                    }
+                                    return (Void) null;
+                                });
+                    } else {
+                        return Defer.aVoid();
+                    }
+                });
+    }
+
+    protected Observable<Optional<Usage>> loadUsage(VertxContext<Server> vertxContext, String id) {
+        return Defer.just(id)
+                .flatMap(new LoadUsage(vertxContext));
+    }
+
+    protected Observable<Optional<Usage>> persistUsage(VertxContext<Server> vertxContext, Usage usage) {
+        return Defer.just(usage)
+                .flatMap(new PersistUsage(vertxContext));
+    }
+
+    protected Observable<Void> removeUsage(VertxContext<Server> vertxContext, String id) {
+        return Defer.just(id)
+                .flatMap(new RemoveUsage(vertxContext));
+    }
+
+    protected void startTimer() {
+        Handler<Long> handler = new Handler<Long>() {
+
+            Handler<Long> _this = this;
+
+            @Override
+            public void handle(Long event) {
+                flush(vertxContext)
+                        .subscribe(new Subscriber<Void>() {
+                            @Override
+                            public void onCompleted() {
+                                if (!closed.get()) {
+                                    timerId = vertxContext.vertx().setTimer(flushInterval, _this);
+                                }
+                            }
+
+                            @Override
+                            public void onError(Throwable e) {
+                                LOGGER.debug("Handling Exception", e);
+                                if (!closed.get()) {
+                                    timerId = vertxContext.vertx().setTimer(flushInterval, _this);
+                                }
+                            }
+
+                            @Override
+                            public void onNext(Void aVoid1) {
+
+                            }
+                        });
+            }
+        };
+        timerId = vertxContext.vertx().setTimer(flushInterval, handler);
+    }
+
+    protected void stopTimer() {
+        if (timerId != null) {
+            vertxContext.vertx().cancelTimer(timerId);
+        }
+    }
+
+    protected static class Delta {
+
+        private final long containerCount;
+        private final long objectCount;
+        private final long bytesUsed;
+
+        public Delta(long containerCount, long objectCount, long bytesUsed) {
+            this.containerCount = containerCount;
+            this.objectCount = objectCount;
+            this.bytesUsed = bytesUsed;
+        }
+
+        public Delta plus(Delta other) {
+            return new Delta(
+                    containerCount + other.containerCount,
+                    objectCount + other.objectCount,
+                    bytesUsed + other.bytesUsed);
+        }
+    }
+}
@@ -29,7 +29,7 @@ import org.sfs.VertxContext;
 import org.sfs.auth.AuthProviderService;
 import org.sfs.elasticsearch.Elasticsearch;
 import org.sfs.elasticsearch.Jsonify;
-import org.sfs.elasticsearch.container.LoadContainerStats;
+import org.sfs.elasticsearch.usage.LoadContainerUsage;
 import org.sfs.rx.ToVoid;
 import org.sfs.vo.ContainerList;
 import org.sfs.vo.ObjectPath;
@@ -251,7 +251,7 @@ public class ListContainers implements Func1<PersistentAccount, Observable<Conta
                         return authProviderService.canContainerRead(sfsRequest, persistentContainer)
                                 .filter(canDo -> canDo)
                                 .map(canDo -> persistentContainer)
-                                .flatMap(new LoadContainerStats(vertxContext))
+                                .flatMap(new LoadContainerUsage(vertxContext))
                                 .map(containerStats -> {
                                     long objectCount = containerStats.getObjectCount();
                                     double bytesUsed = containerStats.getBytesUsed();
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.elasticsearch.account;
+
+import io.vertx.core.logging.Logger;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.aggregations.Aggregation;
+import org.elasticsearch.search.aggregations.bucket.SingleBucketAggregation;
+import org.elasticsearch.search.aggregations.bucket.filter.FilterAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.sum.Sum;
+import org.sfs.Server;
+import org.sfs.VertxContext;
+import org.sfs.elasticsearch.Elasticsearch;
+import org.sfs.elasticsearch.Jsonify;
+import org.sfs.vo.AccountStats;
+import org.sfs.vo.PersistentAccount;
+import rx.Observable;
+import rx.functions.Func1;
+
+import static io.vertx.core.logging.LoggerFactory.getLogger;
+import static java.lang.String.format;
+import static org.elasticsearch.common.unit.TimeValue.timeValueMillis;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.existsQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.filter;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.sum;
+
+// sums the usage documents of the containers of an account
+public class LoadAccountStats implements Func1<PersistentAccount, Observable<AccountStats>> {
+
+    private static final Logger LOGGER = getLogger(LoadAccountStats.class);
+    private final VertxContext<Server> vertxContext;
+
+    public LoadAccountStats(VertxContext<Server> vertxContext) {
+        this.vertxContext = vertxContext;
+    }
+
+    @Override
+    public Observable<AccountStats> call(PersistentAccount persistentAccount) {
+        final Elasticsearch elasticSearch = vertxContext.verticle().elasticsearch();
+
+        FilterAggregationBuilder aggregation =
+                filter("filter_by_account")
+                        .filter(boolQuery()
+                                .must(termQuery("account_id", persistentAccount.getId()))
+                                .must(existsQuery("container_id")))
+                        .subAggregation(sum("object_count").field("object_count"))
+                        .subAggregation(sum("bytes_used").field("bytes_used"));
+
+        SearchRequestBuilder aggregateRequest = elasticSearch.get()
+                .prepareSearch(elasticSearch.usageIndex())
+                .setTypes(elasticSearch.defaultType())
+                .setSize(0)
+                .addAggregation(aggregation)
+                .setTimeout(timeValueMillis(elasticSearch.getDefaultSearchTimeout() - 10));
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(format("Search Request = %s", Jsonify.toString(aggregateRequest)));
+        }
+
+        return elasticSearch.execute(vertxContext, aggregateRequest, elasticSearch.getDefaultSearchTimeout())
+                .map(oSearchResponse -> {
+
+                    SearchResponse searchResponse = oSearchResponse.get();
+
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug(format("Search Response = %s", Jsonify.toString(searchResponse)));
+                    }
+
+                    long containerCount = 0;
+                    long objectCount = 0;
+                    long bytesUsed = 0;
+                    SingleBucketAggregation filterAgg = searchResponse.getAggregations().get("filter_by_account");
+                    if (filterAgg != null) {
+                        containerCount += filterAgg.getDocCount();
+                        for (Aggregation sumAgg : filterAgg.getAggregations()) {
+                            Sum sum = (Sum) sumAgg;
+                            if ("object_count".equals(sum.getName())) {
+                                objectCount += (long) sum.getValue();
+                            } else if ("bytes_used".equals(sum.getName())) {
+                                bytesUsed += (long) sum.getValue();
+                            }
+                        }
+                    }
+                    return new AccountStats(containerCount, objectCount, bytesUsed, persistentAccount);
+                });
+    }
+}
@@ -24,12 +24,12 @@ import org.sfs.Server;
 import org.sfs.VertxContext;
 import org.sfs.elasticsearch.Elasticsearch;
 import org.sfs.elasticsearch.Jsonify;
+import org.sfs.rx.Defer;
 import org.sfs.vo.PersistentAccount;
 import org.sfs.vo.TransientAccount;
 import rx.Observable;
 import rx.functions.Func1;
 
-import static com.google.common.base.Optional.absent;
 import static com.google.common.base.Optional.of;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
 import static java.lang.String.format;
@@ -79,7 +79,15 @@ public class PersistAccount implements Func1<TransientAccount, Observable<Option
                         return of(fromIndexResponse(indexResponse.get(), source));
                     } else {
                         LOGGER.debug(format("Index Response {%s,%s,%s} = %s", elasticSearch.defaultType(), elasticSearch.accountIndex(), transientAccount.getId(), "null"));
-                        return absent();
+                        return Optional.<PersistentAccount>absent();
+                    }
+                })
+                .flatMap(oPersisted -> {
+                    if (oPersisted.isPresent()) {
+                        return vertxContext.verticle().usageCounters().accountCreated(vertxContext, oPersisted.get())
+                                .map(aVoid -> oPersisted);
+                    } else {
+                        return Defer.just(oPersisted);
                     }
                 });
     }
@@ -23,6 +23,8 @@ import org.sfs.Server;
 import org.sfs.VertxContext;
 import org.sfs.elasticsearch.Elasticsearch;
 import org.sfs.elasticsearch.Jsonify;
+import org.sfs.elasticsearch.MetadataCache;
+import org.sfs.rx.Defer;
 import org.sfs.vo.PersistentAccount;
 import rx.Observable;
 import rx.functions.Func1;
@@ -71,7 +73,19 @@ public class RemoveAccount implements Func1<PersistentAccount, Observable<Option
                         if (LOGGER.isDebugEnabled()) {
                             LOGGER.debug(format("Remove Response {%s,%s,%s,%d} = %s", elasticSearch.defaultType(), elasticSearch.accountIndex(), persistentAccount.getId(), persistentAccount.getPersistentVersion(), "null"));
                         }
-                        return absent();
+                        return Optional.<PersistentAccount>absent();
+                    }
+                })
+                .flatMap(oRemoved -> {
+                    MetadataCache metadataCache = vertxContext.verticle().metadataCache();
+                    if (oRemoved.isPresent()) {
+                        return vertxContext.verticle().usageCounters().accountRemoved(vertxContext, persistentAccount)
+                                .flatMap(aVoid -> metadataCache.removed(vertxContext, persistentAccount.getId()))
+                                .map(aVoid -> oRemoved);
+                    } else {
+                        // the version we have is stale
+                        metadataCache.invalidate(persistentAccount.getId(), persistentAccount.getPersistentVersion() + 1);
+                        return Defer.just(oRemoved);
                     }
                 });
     }
@@ -24,6 +24,8 @@ import org.sfs.Server;
 import org.sfs.VertxContext;
 import org.sfs.elasticsearch.Elasticsearch;
 import org.sfs.elasticsearch.Jsonify;
+import org.sfs.elasticsearch.MetadataCache;
+import org.sfs.rx.Defer;
 import org.sfs.vo.PersistentAccount;
 import rx.Observable;
 import rx.functions.Func1;
@@ -80,7 +82,18 @@ public class UpdateAccount implements Func1<PersistentAccount, Observable<Option
                         if (LOGGER.isDebugEnabled()) {
                             LOGGER.debug(format("Index Response {%s,%s,%s,%d} = %s", elasticSearch.defaultType(), elasticSearch.accountIndex(), persistentAccount.getId(), persistentAccount.getPersistentVersion(), "null"));
                         }
-                        return absent();
+                        return Optional.<PersistentAccount>absent();
+                    }
+                })
+                .flatMap(oUpdated -> {
+                    MetadataCache metadataCache = vertxContext.verticle().metadataCache();
+                    if (oUpdated.isPresent()) {
+                        return metadataCache.updated(vertxContext, oUpdated.get())
+                                .map(aVoid -> oUpdated);
+                    } else {
+                        // the version we have is stale
+                        metadataCache.invalidate(persistentAccount.getId(), persistentAccount.getPersistentVersion() + 1);
+                        return Defer.just(oUpdated);
                     }
                 });
     }
@@ -17,22 +17,23 @@
 package org.sfs.elasticsearch.container;
 
 import com.google.common.base.Optional;
-import com.google.common.base.Predicates;
-import com.google.common.collect.FluentIterable;
 import io.vertx.core.MultiMap;
 import io.vertx.core.logging.Logger;
-import org.elasticsearch.action.search.ClearScrollRequestBuilder;
 import org.elasticsearch.action.search.SearchRequestBuilder;
-import org.elasticsearch.action.search.SearchScrollRequestBuilder;
 import org.elasticsearch.index.IndexNotFoundException;
-import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.bucket.SingleBucketAggregation;
+import org.elasticsearch.search.aggregations.metrics.sum.Sum;
 import org.sfs.Server;
 import org.sfs.SfsRequest;
 import org.sfs.VertxContext;
-import org.sfs.auth.AuthProviderService;
 import org.sfs.elasticsearch.Elasticsearch;
 import org.sfs.elasticsearch.Jsonify;
 import org.sfs.rx.Defer;
+import org.sfs.rx.ToVoid;
 import org.sfs.util.HttpRequestValidationException;
 import org.sfs.validate.ValidateVersionHasSegments;
 import org.sfs.validate.ValidateVersionIsReadable;
@@ -48,21 +49,33 @@ import org.sfs.vo.TransientVersion;
 import rx.Observable;
 import rx.functions.Func1;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NavigableMap;
 import java.util.TreeMap;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.collect.Lists.partition;
 import static com.google.common.net.MediaType.OCTET_STREAM;
 import static com.google.common.primitives.Ints.tryParse;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
 import static java.lang.Integer.valueOf;
 import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
 import static java.util.Collections.emptyList;
 import static org.elasticsearch.common.unit.TimeValue.timeValueMillis;
+import static org.elasticsearch.index.mapper.Uid.createUid;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.existsQuery;
 import static org.elasticsearch.index.query.QueryBuilders.prefixQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.filter;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.sum;
 import static org.elasticsearch.search.sort.SortOrder.ASC;
-import static org.elasticsearch.search.sort.SortParseElement.DOC_FIELD_NAME;
 import static org.sfs.util.ExceptionHelper.containsException;
 import static org.sfs.util.SfsHttpQueryParams.DELIMITER;
 import static org.sfs.util.SfsHttpQueryParams.END_MARKER;
@@ -79,6 +92,13 @@ import static rx.Observable.just;
 public class ListObjects implements Func1<PersistentContainer, Observable<ObjectList>> {
 
     private static final Logger LOGGER = getLogger(ListObjects.class);
+    private static final String UID_FIELD_NAME = "_uid";
+    private static final String NAME_FIELD_NAME = "name";
+    private static final String LISTED_LENGTH_FIELD_NAME = "listed_length";
+    private static final String LISTED_DELETE_AT_FIELD_NAME = "listed_delete_at";
+    private static final int DIRECTORY_BATCH_SIZE = 100;
+    private static final int MIN_PAGE_SIZE = 10;
+    private static final int MAX_PAGE_SIZE = 1000;
     private final SfsRequest sfsRequest;
     private final VertxContext<Server> vertxContext;
 
@@ -102,28 +122,29 @@ public class ListObjects implements Func1<PersistentContainer, Observable<Object
         Integer parsedLimit = !isNullOrEmpty(limit) ? tryParse(limit) : valueOf(10000);
         parsedLimit = parsedLimit == null || parsedLimit < 0 || parsedLimit > 10000 ? 10000 : parsedLimit;
 
-        String containerId = container.getId();
+        final NavigableMap<String, ListedObject> listedObjects = new TreeMap<>();
 
-        String containerPrefix = containerId + ObjectPath.DELIMITER;
-        if (!isNullOrEmpty(prefix)) {
-            containerPrefix += prefix;
+        if (parsedLimit <= 0) {
+            return just(new ObjectList(container, listedObjects.values()));
         }
 
         String objectIndex = elasticSearch.objectIndex(container.getName());
-
-        final SearchRequestBuilder scrollRequest = elasticSearch.get()
-                .prepareSearch(objectIndex)
-                .setTypes(elasticSearch.defaultType())
-                .addSort(DOC_FIELD_NAME, ASC)
-                .setScroll(timeValueMillis(elasticSearch.getDefaultScrollTimeout()))
-                .setTimeout(timeValueMillis(elasticSearch.getDefaultSearchTimeout() - 10))
-                .setQuery(prefixQuery("_id", containerPrefix))
-                .setSize(100);
-
-        final Integer finalParsedLimit = parsedLimit;
-
-        final NavigableMap<String, ListedObject> listedObjects = new TreeMap<>();
-        return scan(container, prefix, delimiter, marker, endMarker, finalParsedLimit, elasticSearch, scrollRequest, listedObjects)
+        final int finalLimit = parsedLimit;
+
+        return hasUnnamedObjects(elasticSearch, objectIndex, container)
+                .map(unnamedObjects ->
+                        new Cursor(
+                                container,
+                                objectIndex,
+                                !unnamedObjects,
+                                isNullOrEmpty(prefix) ? null : prefix,
+                                isNullOrEmpty(delimiter) ? null : delimiter,
+                                isNullOrEmpty(marker) ? null : marker,
+                                isNullOrEmpty(endMarker) ? null : endMarker,
+                                finalLimit,
+                                listedObjects))
+                .flatMap(cursor -> seek(elasticSearch, cursor)
+                        .flatMap(aVoid -> sumDirectories(elasticSearch, cursor)))
                 .map(aVoid -> new ObjectList(container, listedObjects.values()))
                 .onErrorResumeNext(throwable -> {
                     if (containsException(IndexNotFoundException.class, throwable)) {
@@ -134,22 +155,43 @@ public class ListObjects implements Func1<PersistentContainer, Observable<Object
                 });
     }
 
-    protected Observable<Void> scan(
-            final PersistentContainer container,
-            final String prefix,
-            final String delimiter,
-            final String marker,
-            final String endMarker,
-            final int limit,
-            final Elasticsearch elasticsearch,
-            final SearchRequestBuilder scrollRequest,
-            final NavigableMap<String, ListedObject> listedObjects) {
+    // objects written before the name and listed length fields were added are
+    // sorted by _uid, which loads field data, until the maintain job has
+    // rewritten them. Until then they also don't count towards directory sizes
+    protected Observable<Boolean> hasUnnamedObjects(Elasticsearch elasticsearch, String objectIndex, PersistentContainer container) {
+        SearchRequestBuilder request = elasticsearch.get()
+                .prepareSearch(objectIndex)
+                .setTypes(elasticsearch.defaultType())
+                .setQuery(boolQuery()
+                        .must(termQuery("container_id", container.getId()))
+                        .mustNot(existsQuery(LISTED_LENGTH_FIELD_NAME)))
+                .setSize(0)
+                .setTerminateAfter(1);
+
+        return elasticsearch.execute(vertxContext, request, elasticsearch.getDefaultSearchTimeout())
+                .map(oSearchResponse -> oSearchResponse.get().getHits().getTotalHits() > 0);
+    }
+
+    // Each seek fetches the next page of objects sorted by name starting after the cursor
+    // position. When the delimiter rolls an object up into a common prefix the cursor
+    // jumps past every object under the prefix so that the next page starts at
+    // the next sibling instead of walking the whole subtree
+    protected Observable<Void> seek(Elasticsearch elasticsearch, Cursor cursor) {
+        int pageSize = Math.min(Math.max(cursor.limit - cursor.listedObjects.size(), MIN_PAGE_SIZE), MAX_PAGE_SIZE);
+
+        SearchRequestBuilder searchRequest = elasticsearch.get()
+                .prepareSearch(cursor.objectIndex)
+                .setTypes(elasticsearch.defaultType())
+                .addSort(cursor.sortField(), ASC)
+                .setTimeout(timeValueMillis(elasticsearch.getDefaultSearchTimeout() - 10))
+                .setQuery(cursor.toQuery(elasticsearch.defaultType()))
+                .setSize(pageSize);
 
         if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug(format("Search Request = %s", Jsonify.toString(scrollRequest)));
+            LOGGER.debug(format("Search Request = %s", Jsonify.toString(searchRequest)));
         }
 
-        return elasticsearch.execute(vertxContext, scrollRequest, elasticsearch.getDefaultSearchTimeout())
+        return elasticsearch.execute(vertxContext, searchRequest, elasticsearch.getDefaultSearchTimeout())
                 .map(Optional::get)
                 .flatMap(searchResponse -> {
 
@@ -157,171 +199,283 @@ public class ListObjects implements Func1<PersistentContainer, Observable<Object
                         LOGGER.debug(format("Search Response = %s", Jsonify.toString(searchResponse)));
                     }
 
-                    SearchHits hits = searchResponse.getHits();
+                    SearchHit[] hits = searchResponse.getHits().getHits();
 
-                    for (ListedObject listedObject : toIterable(container, prefix, delimiter, marker, endMarker, hits)) {
-                        String id = listedObject.getName();
-                        ListedObject existing = listedObjects.get(id);
-                        if (existing == null) {
-                            listedObjects.put(id, listedObject);
-                        } else {
-                            existing.setLength(existing.getLength() + listedObject.getLength());
+                    for (SearchHit searchHit : hits) {
+                        if (cursor.listedObjects.size() >= cursor.limit) {
+                            return Defer.aVoid();
                         }
-                        if (listedObjects.size() > limit) {
-                            listedObjects.pollLastEntry();
+                        cursor.advance(searchHit);
+                        if (cursor.isExhausted()) {
+                            return Defer.aVoid();
                         }
                     }
 
-                    return scroll(container, prefix, delimiter, marker, endMarker, limit, elasticsearch, searchResponse.getScrollId(), listedObjects);
+                    if (hits.length < pageSize || cursor.listedObjects.size() >= cursor.limit) {
+                        return Defer.aVoid();
+                    }
+
+                    return seek(elasticsearch, cursor);
                 });
     }
 
-    protected Observable<Void> scroll(
-            final PersistentContainer container,
-            final String prefix,
-            final String delimiter,
-            final String marker,
-            final String endMarker,
-            final int limit,
-            final Elasticsearch elasticsearch,
-            final String scrollId,
-            final NavigableMap<String, ListedObject> listedObjects) {
-        SearchScrollRequestBuilder scrollRequest =
-                elasticsearch.get().prepareSearchScroll(scrollId)
-                        .setScroll(timeValueMillis(elasticsearch.getDefaultScrollTimeout()));
-
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug(format("Search Request = %s", Jsonify.toString(scrollRequest)));
+    // the smallest string that sorts after every string starting with value or
+    // null if there is no such string
+    protected static String successor(String value) {
+        StringBuilder sb = new StringBuilder(value);
+        while (sb.length() > 0) {
+            int lastIndex = sb.length() - 1;
+            char c = sb.charAt(lastIndex);
+            if (c < Character.MAX_VALUE) {
+                sb.setCharAt(lastIndex, (char) (c + 1));
+                return sb.toString();
+            }
+            sb.setLength(lastIndex);
         }
+        return null;
+    }
 
-        return elasticsearch.execute(vertxContext, scrollRequest, elasticsearch.getDefaultSearchTimeout())
-                .map(Optional::get)
-                .flatMap(searchResponse -> {
+    // a directory is as large as the newest listable versions of the objects
+    // under it, the same lengths the objects report when listed on their own.
+    // Each object stores that length in a doc values field when it's persisted
+    // so the sums read one column instead of the versions and segments. The
+    // delimiter is picked per request so the sizes can't be kept per prefix
+    protected Observable<Void> sumDirectories(Elasticsearch elasticsearch, Cursor cursor) {
+        if (cursor.directories.isEmpty()) {
+            return Defer.aVoid();
+        }
+        long now = currentTimeMillis();
+        List<List<String>> batches = partition(new ArrayList<>(cursor.directories.keySet()), DIRECTORY_BATCH_SIZE);
+        return Observable.from(batches)
+                .concatMap(batch -> {
+                    SearchRequestBuilder searchRequest = elasticsearch.get()
+                            .prepareSearch(cursor.objectIndex)
+                            .setTypes(elasticsearch.defaultType())
+                            .setQuery(boolQuery()
+                                    .must(termQuery("container_id", cursor.container.getId()))
+                                    // expired objects aren't listed
+                                    .mustNot(rangeQuery(LISTED_DELETE_AT_FIELD_NAME).lte(now)))
+                            .setSize(0)
+                            .setTimeout(timeValueMillis(elasticsearch.getDefaultSearchTimeout() - 10));
+                    for (int i = 0; i < batch.size(); i++) {
+                        String commonPrefix = cursor.directories.get(batch.get(i));
+                        searchRequest.addAggregation(
+                                filter(String.valueOf(i))
+                                        .filter(cursor.byName
+                                                ? prefixQuery(NAME_FIELD_NAME, commonPrefix)
+                                                : prefixQuery("_id", cursor.container.getId() + ObjectPath.DELIMITER + commonPrefix))
+                                        .subAggregation(
+                                                sum("bytes_used")
+                                                        .field(LISTED_LENGTH_FIELD_NAME)));
+                    }
 
                     if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug(format("Search Response = %s", Jsonify.toString(searchResponse)));
-                    }
-                    SearchHits hits = searchResponse.getHits();
-                    int numberOfHits = hits.getHits().length;
-                    if (numberOfHits > 0) {
-                        for (ListedObject listedObject : toIterable(container, prefix, delimiter, marker, endMarker, hits)) {
-                            String id = listedObject.getName();
-                            ListedObject existing = listedObjects.get(id);
-                            if (existing == null) {
-                                listedObjects.put(id, listedObject);
-                            } else {
-                                existing.setLength(existing.getLength() + listedObject.getLength());
-                            }
-                            if (listedObjects.size() > limit) {
-                                listedObjects.pollLastEntry();
-                            }
-                        }
-                        return scroll(container, prefix, delimiter, marker, endMarker, limit, elasticsearch, searchResponse.getScrollId(), listedObjects);
-                    } else {
-                        return clearScroll(elasticsearch, searchResponse.getScrollId());
+                        LOGGER.debug(format("Search Request = %s", Jsonify.toString(searchRequest)));
                     }
-                });
-    }
 
-    protected Observable<Void> clearScroll(Elasticsearch elasticSearch, String scrollId) {
-        ClearScrollRequestBuilder request =
-                elasticSearch.get()
-                        .prepareClearScroll()
-                        .addScrollId(scrollId);
-        return elasticSearch.execute(vertxContext, request, elasticSearch.getDefaultSearchTimeout())
-                .onErrorResumeNext(throwable -> {
-                    LOGGER.warn("Handling Clear Scroll Error", throwable);
-                    return Defer.just(null);
+                    return elasticsearch.execute(vertxContext, searchRequest, elasticsearch.getDefaultSearchTimeout())
+                            .map(Optional::get)
+                            .map(searchResponse -> {
+                                for (int i = 0; i < batch.size(); i++) {
+                                    SingleBucketAggregation filterAgg = searchResponse.getAggregations().get(String.valueOf(i));
+                                    Sum sum = filterAgg.getAggregations().get("bytes_used");
+                                    cursor.listedObjects.get(batch.get(i)).setLength((long) sum.getValue());
+                                }
+                                return (Void) null;
+                            });
                 })
-                .map(clearScrollResponseOptional -> null);
+                .count()
+                .map(new ToVoid<>());
     }
 
-    protected Iterable<ListedObject> toIterable(final PersistentContainer container, final String prefix, final String delimiter, final String marker, final String endMarker, SearchHits searchHits) {
+    protected class Cursor {
+
+        private final PersistentContainer container;
+        private final String objectIndex;
+        // sort and seek on the name field instead of _uid
+        private final boolean byName;
+        private final String prefix;
+        private final String delimiter;
+        private final String marker;
+        private final String endMarker;
+        private final int limit;
+        private final NavigableMap<String, ListedObject> listedObjects;
+        // listed directory names and the common prefix of the objects under them
+        private final Map<String, String> directories = new HashMap<>();
         // container id looks like /account/container
         // object id looks like /account/container/a/b/c/1/2/3
         // which makes the start index of the object name is the length of the
         // container id + 1
-        int objectNameStartIndex = container.getId().length() + DELIMITER_LENGTH;
-        return FluentIterable.from(searchHits)
-                .transform(searchHit -> {
-
-                    String objectId = searchHit.getId();
-                    objectId = objectId.substring(objectNameStartIndex, objectId.length());
-                    boolean trimmed = false;
-                    if (delimiter != null) {
-                        int prefixLength = prefix != null ? prefix.length() : 0;
-                        int objectIdLength = objectId.length();
-                        if (objectIdLength > prefixLength) {
-                            int indexOfDelimiter = objectId.indexOf(delimiter, prefixLength);
-                            if (indexOfDelimiter <= objectIdLength && indexOfDelimiter >= 0) {
-                                objectId = objectId.substring(0, indexOfDelimiter);
-                                trimmed = true;
-                            }
-                        }
-                    }
+        private final int objectNameStartIndex;
+        // the object name the next page starts at
+        private String from;
+        private boolean fromInclusive;
+        private boolean exhausted;
+
+        public Cursor(PersistentContainer container, String objectIndex, boolean byName, String prefix, String delimiter, String marker, String endMarker, int limit, NavigableMap<String, ListedObject> listedObjects) {
+            this.container = container;
+            this.objectIndex = objectIndex;
+            this.byName = byName;
+            this.prefix = prefix;
+            this.delimiter = delimiter;
+            this.marker = marker;
+            this.endMarker = endMarker;
+            this.limit = limit;
+            this.listedObjects = listedObjects;
+            this.objectNameStartIndex = container.getId().length() + DELIMITER_LENGTH;
+            this.from = marker;
+            this.fromInclusive = false;
+        }
+
+        public boolean isExhausted() {
+            return exhausted;
+        }
 
-                    boolean isInRange = (marker == null || objectId.compareTo(marker) > 0)
-                            && (endMarker == null || objectId.compareTo(endMarker) < 0);
-
-                    if (isInRange) {
-                        PersistentObject persistentObject = fromSearchHit(container, searchHit);
-                        Optional<TransientVersion> oTransientVersion = persistentObject.getNewestVersion();
-
-                        if (oTransientVersion.isPresent()) {
-                            TransientVersion transientVersion = oTransientVersion.get();
-
-                            boolean finalTrimmed = trimmed;
-                            String finalObjectId = objectId;
-
-                            // TODO clean this up!. Make GET object and HEAD object share the same logic
-                            try {
-                                new ValidateVersionNotDeleted().call(transientVersion);
-                                new ValidateVersionNotDeleteMarker().call(transientVersion);
-                                new ValidateVersionNotExpired().call(transientVersion);
-                                new ValidateVersionHasSegments().call(transientVersion);
-                                new ValidateVersionSegmentsHasData().call(transientVersion);
-                                new ValidateVersionIsReadable().call(transientVersion);
-                            } catch (HttpRequestValidationException e) {
-                                LOGGER.debug("Version " + transientVersion.getId() + " failed validation", e);
-                                return null;
-                            }
-
-
-                            Optional<byte[]> oEtag = transientVersion.calculateMd5();
-                            Calendar lastModified = transientVersion.getUpdateTs();
-                            Optional<Long> oContentLength = transientVersion.calculateLength();
-                            Optional<String> oContentType = transientVersion.getContentType();
-
-                            ListedObject listedObject = new ListedObject(finalObjectId);
-
-                            if (oEtag.isPresent()) {
-                                listedObject.setEtag(oEtag.get());
-                            } else {
-                                listedObject.setEtag(EMPTY_MD5);
-                            }
-
-                            listedObject.setLastModified(lastModified);
-
-                            if (finalTrimmed) {
-                                listedObject.setContentType("application/directory");
-                            } else if (oContentType.isPresent()) {
-                                listedObject.setContentType(oContentType.get());
-                            } else {
-                                listedObject.setContentType(OCTET_STREAM.toString());
-                            }
-
-                            if (oContentLength.isPresent()) {
-                                listedObject.setLength(oContentLength.get());
-                            } else {
-                                listedObject.setLength(0);
-                            }
-
-                            return listedObject;
+        public String sortField() {
+            return byName ? NAME_FIELD_NAME : UID_FIELD_NAME;
+        }
+
+        public QueryBuilder toQuery(String type) {
+            String containerPrefix = container.getId() + ObjectPath.DELIMITER;
+            BoolQueryBuilder query;
+            if (byName) {
+                query = boolQuery()
+                        .must(termQuery("container_id", container.getId()));
+                if (prefix != null) {
+                    query = query.filter(prefixQuery(NAME_FIELD_NAME, prefix));
+                }
+            } else {
+                query = boolQuery()
+                        .must(prefixQuery("_id", prefix != null ? containerPrefix + prefix : containerPrefix));
+            }
+            if (from != null || endMarker != null) {
+                RangeQueryBuilder range = rangeQuery(sortField());
+                if (from != null) {
+                    range = range.from(byName ? from : createUid(type, containerPrefix + from)).includeLower(fromInclusive);
+                }
+                if (endMarker != null) {
+                    range = range.to(byName ? endMarker : createUid(type, containerPrefix + endMarker)).includeUpper(false);
+                }
+                query = query.filter(range);
+            }
+            return query;
+        }
+
+        public void advance(SearchHit searchHit) {
+            String objectId = searchHit.getId();
+            objectId = objectId.substring(objectNameStartIndex, objectId.length());
+
+            // hits on the current page that sort before the cursor are under
+            // a common prefix that has already been listed
+            if (from != null) {
+                int compare = objectId.compareTo(from);
+                if (compare < 0 || (compare == 0 && !fromInclusive)) {
+                    return;
+                }
+            }
+            from = objectId;
+            fromInclusive = false;
+
+            String name = objectId;
+            String commonPrefix = null;
+            if (delimiter != null) {
+                int prefixLength = prefix != null ? prefix.length() : 0;
+                int objectIdLength = objectId.length();
+                if (objectIdLength > prefixLength) {
+                    int indexOfDelimiter = objectId.indexOf(delimiter, prefixLength);
+                    if (indexOfDelimiter <= objectIdLength && indexOfDelimiter >= 0) {
+                        name = objectId.substring(0, indexOfDelimiter);
+                        commonPrefix = objectId.substring(0, indexOfDelimiter + delimiter.length());
+                    }
+                }
+            }
+
+            boolean trimmed = commonPrefix != null;
+            boolean isInRange = (marker == null || name.compareTo(marker) > 0)
+                    && (endMarker == null || name.compareTo(endMarker) < 0);
+
+            boolean listed = false;
+            if (isInRange) {
+                ListedObject listedObject = toListedObject(container, searchHit, name, trimmed);
+                if (listedObject != null) {
+                    if (!listedObjects.containsKey(name)) {
+                        listedObjects.put(name, listedObject);
+                        if (trimmed) {
+                            directories.put(name, commonPrefix);
                         }
                     }
-                    return null;
-                })
-                .filter(Predicates.notNull());
+                    listed = true;
+                }
+            }
+
+            // once a common prefix is listed, or can never be listed because of the markers,
+            // nothing else under it can be so jump to the first name after the prefix
+            if (trimmed && (listed || !isInRange)) {
+                from = successor(commonPrefix);
+                fromInclusive = true;
+                if (from == null) {
+                    exhausted = true;
+                }
+            }
+        }
+    }
+
+    protected ListedObject toListedObject(PersistentContainer container, SearchHit searchHit, String name, boolean trimmed) {
+        PersistentObject persistentObject = fromSearchHit(container, searchHit);
+        Optional<TransientVersion> oTransientVersion = persistentObject.getNewestVersion();
+
+        if (oTransientVersion.isPresent()) {
+            TransientVersion transientVersion = oTransientVersion.get();
+
+            // TODO clean this up!. Make GET object and HEAD object share the same logic
+            try {
+                new ValidateVersionNotDeleted().call(transientVersion);
+                new ValidateVersionNotDeleteMarker().call(transientVersion);
+                new ValidateVersionNotExpired().call(transientVersion);
+                new ValidateVersionHasSegments().call(transientVersion);
+                new ValidateVersionSegmentsHasData().call(transientVersion);
+                new ValidateVersionIsReadable().call(transientVersion);
+            } catch (HttpRequestValidationException e) {
+                LOGGER.debug("Version " + transientVersion.getId() + " failed validation", e);
+                return null;
+            }
+
+
+            Optional<byte[]> oEtag = transientVersion.calculateMd5();
+            Calendar lastModified = transientVersion.getUpdateTs();
+            Optional<Long> oContentLength = transientVersion.calculateLength();
+            Optional<String> oContentType = transientVersion.getContentType();
+
+            ListedObject listedObject = new ListedObject(name);
+
+            if (oEtag.isPresent()) {
+                listedObject.setEtag(oEtag.get());
+            } else {
+                listedObject.setEtag(EMPTY_MD5);
+            }
+
+            listedObject.setLastModified(lastModified);
+
+            if (trimmed) {
+                // the length is summed once the listing is complete
+                listedObject.setContentType("application/directory");
+                listedObject.setLength(0);
+            } else {
+                if (oContentType.isPresent()) {
+                    listedObject.setContentType(oContentType.get());
+                } else {
+                    listedObject.setContentType(OCTET_STREAM.toString());
+                }
+                if (oContentLength.isPresent()) {
+                    listedObject.setLength(oContentLength.get());
+                } else {
+                    listedObject.setLength(0);
+                }
+            }
+
+            return listedObject;
+        }
+        return null;
     }
 
     public static class ListedObject {
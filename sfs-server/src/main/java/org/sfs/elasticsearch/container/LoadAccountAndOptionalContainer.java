@@ -20,7 +20,7 @@ import com.google.common.base.Optional;
 import io.vertx.core.logging.Logger;
 import org.sfs.Server;
 import org.sfs.VertxContext;
-import org.sfs.elasticsearch.account.LoadAccount;
+import org.sfs.elasticsearch.MetadataCache;
 import org.sfs.validate.ValidatePersistentAccountExists;
 import org.sfs.vo.ObjectPath;
 import org.sfs.vo.PersistentContainer;
@@ -28,7 +28,6 @@ import rx.Observable;
 import rx.functions.Func1;
 
 import static io.vertx.core.logging.LoggerFactory.getLogger;
-import static rx.Observable.just;
 
 public class LoadAccountAndOptionalContainer implements Func1<ObjectPath, Observable<Optional<PersistentContainer>>> {
 
@@ -43,11 +42,9 @@ public class LoadAccountAndOptionalContainer implements Func1<ObjectPath, Observ
     public Observable<Optional<PersistentContainer>> call(ObjectPath objectPath) {
         String accountId = objectPath.accountPath().get();
         String containerId = objectPath.containerPath().get();
-        return just(accountId)
-                .flatMap(new LoadAccount(vertxContext))
+        MetadataCache metadataCache = vertxContext.verticle().metadataCache();
+        return metadataCache.getAccount(vertxContext, accountId)
                 .map(new ValidatePersistentAccountExists())
-                .flatMap(persistentAccount ->
-                        just(containerId)
-                                .flatMap(new LoadContainer(vertxContext, persistentAccount)));
+                .flatMap(persistentAccount -> metadataCache.getContainer(vertxContext, persistentAccount, containerId));
     }
 }
\ No newline at end of file
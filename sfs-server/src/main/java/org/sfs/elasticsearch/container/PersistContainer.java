@@ -24,12 +24,12 @@ import org.sfs.Server;
 import org.sfs.VertxContext;
 import org.sfs.elasticsearch.Elasticsearch;
 import org.sfs.elasticsearch.Jsonify;
+import org.sfs.rx.Defer;
 import org.sfs.vo.PersistentContainer;
 import org.sfs.vo.TransientContainer;
 import rx.Observable;
 import rx.functions.Func1;
 
-import static com.google.common.base.Optional.absent;
 import static com.google.common.base.Optional.of;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
 import static java.lang.String.format;
@@ -83,7 +83,15 @@ public class PersistContainer implements Func1<TransientContainer, Observable<Op
                         if (LOGGER.isDebugEnabled()) {
                             LOGGER.debug(format("Index Response {%s,%s,%s} = %s", elasticSearch.defaultType(), elasticSearch.containerIndex(), transientContainer.getId(), "null"));
                         }
-                        return absent();
+                        return Optional.<PersistentContainer>absent();
+                    }
+                })
+                .flatMap(oPersisted -> {
+                    if (oPersisted.isPresent()) {
+                        return vertxContext.verticle().usageCounters().containerCreated(vertxContext, oPersisted.get())
+                                .map(aVoid -> oPersisted);
+                    } else {
+                        return Defer.just(oPersisted);
                     }
                 });
     }
@@ -23,6 +23,8 @@ import org.sfs.Server;
 import org.sfs.VertxContext;
 import org.sfs.elasticsearch.Elasticsearch;
 import org.sfs.elasticsearch.Jsonify;
+import org.sfs.elasticsearch.MetadataCache;
+import org.sfs.rx.Defer;
 import org.sfs.vo.PersistentContainer;
 import rx.Observable;
 import rx.functions.Func1;
@@ -71,7 +73,19 @@ public class RemoveContainer implements Func1<PersistentContainer, Observable<Op
                         if (LOGGER.isDebugEnabled()) {
                             LOGGER.debug(format("Remove Response {%s,%s,%s,%d} = %s", elasticSearch.defaultType(), elasticSearch.containerIndex(), persistentContainer.getId(), persistentContainer.getPersistentVersion(), "null"));
                         }
-                        return absent();
+                        return Optional.<PersistentContainer>absent();
+                    }
+                })
+                .flatMap(oRemoved -> {
+                    MetadataCache metadataCache = vertxContext.verticle().metadataCache();
+                    if (oRemoved.isPresent()) {
+                        return vertxContext.verticle().usageCounters().containerRemoved(vertxContext, persistentContainer)
+                                .flatMap(aVoid -> metadataCache.removed(vertxContext, persistentContainer.getId()))
+                                .map(aVoid -> oRemoved);
+                    } else {
+                        // the version we have is stale
+                        metadataCache.invalidate(persistentContainer.getId(), persistentContainer.getPersistentVersion() + 1);
+                        return Defer.just(oRemoved);
                     }
                 });
     }
@@ -24,6 +24,8 @@ import org.sfs.Server;
 import org.sfs.VertxContext;
 import org.sfs.elasticsearch.Elasticsearch;
 import org.sfs.elasticsearch.Jsonify;
+import org.sfs.elasticsearch.MetadataCache;
+import org.sfs.rx.Defer;
 import org.sfs.vo.PersistentContainer;
 import rx.Observable;
 import rx.functions.Func1;
@@ -81,7 +83,18 @@ public class UpdateContainer implements Func1<PersistentContainer, Observable<Op
                         if (LOGGER.isDebugEnabled()) {
                             LOGGER.debug(format("Index Response {%s,%s,%s,%d} = %s", elasticSearch.defaultType(), elasticSearch.containerIndex(), persistentContainer.getId(), persistentContainer.getPersistentVersion(), "null"));
                         }
-                        return absent();
+                        return Optional.<PersistentContainer>absent();
+                    }
+                })
+                .flatMap(oUpdated -> {
+                    MetadataCache metadataCache = vertxContext.verticle().metadataCache();
+                    if (oUpdated.isPresent()) {
+                        return metadataCache.updated(vertxContext, oUpdated.get())
+                                .map(aVoid -> oUpdated);
+                    } else {
+                        // the version we have is stale
+                        metadataCache.invalidate(persistentContainer.getId(), persistentContainer.getPersistentVersion() + 1);
+                        return Defer.just(oUpdated);
                     }
                 });
     }
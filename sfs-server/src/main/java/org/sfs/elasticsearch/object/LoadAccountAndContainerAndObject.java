@@ -18,8 +18,7 @@ package org.sfs.elasticsearch.object;
 
 import org.sfs.Server;
 import org.sfs.VertxContext;
-import org.sfs.elasticsearch.account.LoadAccount;
-import org.sfs.elasticsearch.container.LoadContainer;
+import org.sfs.elasticsearch.MetadataCache;
 import org.sfs.validate.ValidatePersistentAccountExists;
 import org.sfs.validate.ValidatePersistentContainerExists;
 import org.sfs.validate.ValidatePersistentObjectExists;
@@ -43,12 +42,11 @@ public class LoadAccountAndContainerAndObject implements Func1<ObjectPath, Obser
         String accountId = objectPath.accountPath().get();
         String containerId = objectPath.containerPath().get();
         String objectId = objectPath.objectPath().get();
-        return just(accountId)
-                .flatMap(new LoadAccount(vertxContext))
+        MetadataCache metadataCache = vertxContext.verticle().metadataCache();
+        return metadataCache.getAccount(vertxContext, accountId)
                 .map(new ValidatePersistentAccountExists())
                 .flatMap(persistentAccount ->
-                        just(containerId)
-                                .flatMap(new LoadContainer(vertxContext, persistentAccount))
+                        metadataCache.getContainer(vertxContext, persistentAccount, containerId)
                                 .map(new ValidatePersistentContainerExists())
                                 .flatMap(persistentContainer ->
                                         just(objectId)
@@ -81,6 +81,7 @@ public class PersistObject implements Func1<TransientObject, Observable<Optional
                         if (LOGGER.isDebugEnabled()) {
                             LOGGER.debug(format("Index Response {%s,%s,%s} = %s", elasticSearch.defaultType(), objectIndex, transientObject.getId(), Jsonify.toString(indexResponse.get())));
                         }
+                        vertxContext.verticle().usageCounters().objectsChanged(container, 1, transientObject.getBytesUsed());
                         return of(fromIndexResponse(transientObject.getParent(), indexResponse.get(), source));
                     } else {
                         if (LOGGER.isDebugEnabled()) {
@@ -71,6 +71,7 @@ public class RemoveObject implements Func1<PersistentObject, Observable<Optional
                         if (LOGGER.isDebugEnabled()) {
                             LOGGER.debug(format("Remove Response {%s,%s,%s,%d} = %s", elasticSearch.defaultType(), objectIndex, persistentObject.getId(), persistentObject.getPersistentVersion(), Jsonify.toString(oDeleteResponse.get())));
                         }
+                        vertxContext.verticle().usageCounters().objectsChanged(persistentContainer, -1, -persistentObject.getPersistedBytesUsed());
                         return of(persistentObject);
                     } else {
                         if (LOGGER.isDebugEnabled()) {
@@ -82,6 +82,7 @@ public class UpdateObject implements Func1<PersistentObject, Observable<Optional
                         if (LOGGER.isDebugEnabled()) {
                             LOGGER.debug(format("Index Response {%s,%s,%s,%d} = %s", elasticSearch.defaultType(), objectIndex, persistentObject.getId(), persistentObject.getPersistentVersion(), Jsonify.toString(indexResponse.get())));
                         }
+                        vertxContext.verticle().usageCounters().objectsChanged(persistentContainer, 0, persistentObject.getBytesUsed() - persistentObject.getPersistedBytesUsed());
                         return of(fromIndexResponse(persistentObject.getParent(), indexResponse.get(), source));
                     } else {
                         if (LOGGER.isDebugEnabled()) {
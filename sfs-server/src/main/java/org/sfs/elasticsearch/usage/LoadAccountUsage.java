@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sfs.elasticsearch.usage;
+
+import com.google.common.base.Optional;
+import io.vertx.core.logging.Logger;
+import org.sfs.Server;
+import org.sfs.VertxContext;
+import org.sfs.elasticsearch.Elasticsearch;
+import org.sfs.elasticsearch.ScanAndScrollStreamProducer;
+import org.sfs.elasticsearch.SearchHitSumContainerUsageEndableWrite;
+import org.sfs.io.AsyncIO;
+import org.sfs.rx.Defer;
+import org.sfs.vo.AccountStats;
+import org.sfs.vo.PersistentAccount;
+import org.sfs.vo.Usage;
+import rx.Observable;
+import rx.functions.Func1;
+
+import static io.vertx.core.logging.LoggerFactory.getLogger;
+import static java.lang.String.format;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+
+// the usage of the account. An account that hasn't been counted yet is
+// counted from the usage of its containers the first time
+public class LoadAccountUsage implements Func1<PersistentAccount, Observable<AccountStats>> {
+
+    private static final Logger LOGGER = getLogger(LoadAccountUsage.class);
+    private final VertxContext<Server> vertxContext;
+
+    public LoadAccountUsage(VertxContext<Server> vertxContext) {
+        this.vertxContext = vertxContext;
+    }
+
+    @Override
+    public Observable<AccountStats> call(PersistentAccount persistentAccount) {
+        return Defer.just(persistentAccount.getId())
+                .flatMap(new LoadUsage(vertxContext))
+                .flatMap(oUsage -> {
+                    if (oUsage.isPresent()) {
+                        Usage usage = oUsage.get();
+                        return Defer.just(new AccountStats(usage.getContainerCount(), usage.getObjectCount(), usage.getBytesUsed(), persistentAccount));
+                    } else {
+                        return countContainers(persistentAccount);
+                    }
+                });
+    }
+
+    protected Observable<AccountStats> countContainers(PersistentAccount persistentAccount) {
+        Elasticsearch elasticSearch = vertxContext.verticle().elasticsearch();
+
+        ScanAndScrollStreamProducer producer =
+                new ScanAndScrollStreamProducer(vertxContext, termQuery("account_id", persistentAccount.getId()))
+                        .setIndeces(elasticSearch.containerIndex())
+                        .setTypes(elasticSearch.defaultType())
+                        .setReturnVersion(true);
+
+        SearchHitSumContainerUsageEndableWrite consumer = new SearchHitSumContainerUsageEndableWrite(vertxContext, persistentAccount);
+
+        return AsyncIO.pump(producer, consumer)
+                .flatMap(aVoid -> {
+                    AccountStats accountStats = new AccountStats(consumer.getContainerCount(), consumer.getObjectCount(), consumer.getBytesUsed(), persistentAccount);
+                    if (consumer.isIncomplete()) {
+                        // counted again on the next read
+                        return Defer.just(accountStats);
+                    }
+                    Usage usage = Usage.ofAccount(persistentAccount)
+                            .setContainerCount(accountStats.getContainerCount())
+                            .setObjectCount(accountStats.getObjectCount())
+                            .setBytesUsed(accountStats.getBytesUsed());
+                    return Defer.just(usage)
+                            .flatMap(new PersistUsage(vertxContext))
+                            .onErrorResumeNext(throwable -> {
+                                LOGGER.warn(format("Failed to persist usage of account %s", persistentAccount.getId()), throwable);
+                                return Defer.just(Optional.<Usage>absent());
+                            })
+                            .map(oPersisted -> accountStats);
+                });
+    }
+}
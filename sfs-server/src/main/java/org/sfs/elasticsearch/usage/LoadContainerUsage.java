@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sfs.elasticsearch.usage;
+
+import com.google.common.base.Optional;
+import io.vertx.core.logging.Logger;
+import org.sfs.Server;
+import org.sfs.VertxContext;
+import org.sfs.elasticsearch.container.LoadContainerStats;
+import org.sfs.rx.Defer;
+import org.sfs.vo.ContainerStats;
+import org.sfs.vo.PersistentContainer;
+import org.sfs.vo.Usage;
+import rx.Observable;
+import rx.functions.Func1;
+
+import static io.vertx.core.logging.LoggerFactory.getLogger;
+import static java.lang.String.format;
+
+// the usage of the container. A container that hasn't been counted yet, ie. one that
+// was created before usage was counted, is counted from its objects the first time
+public class LoadContainerUsage implements Func1<PersistentContainer, Observable<ContainerStats>> {
+
+    private static final Logger LOGGER = getLogger(LoadContainerUsage.class);
+    private final VertxContext<Server> vertxContext;
+
+    public LoadContainerUsage(VertxContext<Server> vertxContext) {
+        this.vertxContext = vertxContext;
+    }
+
+    @Override
+    public Observable<ContainerStats> call(PersistentContainer persistentContainer) {
+        return Defer.just(persistentContainer.getId())
+                .flatMap(new LoadUsage(vertxContext))
+                .flatMap(oUsage -> {
+                    if (oUsage.isPresent()) {
+                        Usage usage = oUsage.get();
+                        return Defer.just(new ContainerStats(usage.getBytesUsed(), usage.getObjectCount(), persistentContainer));
+                    } else {
+                        return Defer.just(persistentContainer)
+                                .flatMap(new LoadContainerStats(vertxContext))
+                                .flatMap(containerStats -> {
+                                    Usage usage = Usage.ofContainer(persistentContainer)
+                                            .setObjectCount(containerStats.getObjectCount())
+                                            .setBytesUsed((long) containerStats.getBytesUsed());
+                                    return Defer.just(usage)
+                                            .flatMap(new PersistUsage(vertxContext))
+                                            .onErrorResumeNext(throwable -> {
+                                                LOGGER.warn(format("Failed to persist usage of container %s", persistentContainer.getId()), throwable);
+                                                return Defer.just(Optional.<Usage>absent());
+                                            })
+                                            .map(oPersisted -> containerStats);
+                                });
+                    }
+                });
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sfs.elasticsearch.usage;
+
+import io.vertx.core.logging.Logger;
+import org.elasticsearch.action.delete.DeleteRequestBuilder;
+import org.sfs.Server;
+import org.sfs.VertxContext;
+import org.sfs.elasticsearch.Elasticsearch;
+import org.sfs.elasticsearch.Jsonify;
+import rx.Observable;
+import rx.functions.Func1;
+
+import static io.vertx.core.logging.LoggerFactory.getLogger;
+import static java.lang.String.format;
+import static org.elasticsearch.common.unit.TimeValue.timeValueMillis;
+
+// removes the usage of the container or account with the id
+public class RemoveUsage implements Func1<String, Observable<Void>> {
+
+    private static final Logger LOGGER = getLogger(RemoveUsage.class);
+    private final VertxContext<Server> vertxContext;
+
+    public RemoveUsage(VertxContext<Server> vertxContext) {
+        this.vertxContext = vertxContext;
+    }
+
+    @Override
+    public Observable<Void> call(String id) {
+        final Elasticsearch elasticSearch = vertxContext.verticle().elasticsearch();
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(format("Remove Request {%s,%s,%s}", elasticSearch.defaultType(), elasticSearch.usageIndex(), id));
+        }
+
+        DeleteRequestBuilder request =
+                elasticSearch.get()
+                        .prepareDelete(
+                                elasticSearch.usageIndex(),
+                                elasticSearch.defaultType(),
+                                id)
+                        .setTimeout(timeValueMillis(elasticSearch.getDefaultDeleteTimeout() - 10));
+
+        return elasticSearch.execute(vertxContext, request, elasticSearch.getDefaultDeleteTimeout())
+                .map(oDeleteResponse -> {
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug(format("Remove Response {%s,%s,%s} = %s", elasticSearch.defaultType(), elasticSearch.usageIndex(), id, oDeleteResponse.isPresent() ? Jsonify.toString(oDeleteResponse.get()) : "null"));
+                    }
+                    return (Void) null;
+                });
+    }
+}
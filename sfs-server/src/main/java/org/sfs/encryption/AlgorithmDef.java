@@ -19,6 +19,7 @@ package org.sfs.encryption;
 import io.vertx.core.Vertx;
 import org.sfs.SfsVertx;
 import org.sfs.encryption.impl.SAES256v01;
+import org.sfs.encryption.impl.SCAES256v01;
 import org.sfs.rx.RxHelper;
 import org.sfs.util.PrngRandom;
 import rx.Observable;
@@ -43,6 +44,26 @@ public enum AlgorithmDef {
             PrngRandom.getCurrentInstance().nextBytesBlocking(key);
             return key;
         }
+    },
+
+    SALTED_CHUNKED_AES256_V01("SCAES256v01") {
+        @Override
+        public Algorithm create(byte[] secret, byte[] salt) {
+            return new SCAES256v01(secret, salt);
+        }
+
+        @Override
+        public byte[] generateKeyBlocking() {
+            byte[] key = new byte[SCAES256v01.KEY_SIZE_BYTES];
+            PrngRandom.getCurrentInstance().nextBytesBlocking(key);
+            return key;
+        }
+
+        public byte[] generateSaltBlocking() {
+            byte[] key = new byte[SCAES256v01.NONCE_SIZE_BYTES];
+            PrngRandom.getCurrentInstance().nextBytesBlocking(key);
+            return key;
+        }
     };
 
     private final String algorithmName;
@@ -56,7 +77,7 @@ public enum AlgorithmDef {
     }
 
     public static AlgorithmDef getPreferred() {
-        return SALTED_AES256_V01;
+        return SALTED_CHUNKED_AES256_V01;
     }
 
     /**
@@ -16,7 +16,13 @@
 
 package org.sfs.encryption;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import org.sfs.Server;
 import org.sfs.VertxContext;
@@ -29,6 +35,7 @@ import org.sfs.rx.Holder2;
 import org.sfs.rx.Holder3;
 import org.sfs.rx.ToType;
 import org.sfs.rx.ToVoid;
+import org.sfs.util.ConfigHelper;
 import org.sfs.vo.ObjectPath;
 import org.sfs.vo.PersistentContainer;
 import org.sfs.vo.PersistentContainerKey;
@@ -36,12 +43,17 @@ import org.sfs.vo.TransientContainerKey;
 import org.sfs.vo.TransientServiceDef;
 import rx.Observable;
 
+import java.nio.ByteBuffer;
 import java.util.Calendar;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.of;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Strings.padStart;
 import static com.google.common.math.LongMath.checkedAdd;
@@ -52,6 +64,8 @@ import static java.lang.System.currentTimeMillis;
 import static java.util.Arrays.fill;
 import static java.util.Calendar.getInstance;
 import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static org.sfs.encryption.AlgorithmDef.getPreferred;
 import static org.sfs.rx.Defer.aVoid;
 import static org.sfs.rx.Defer.just;
@@ -68,13 +82,43 @@ public class ContainerKeys {
     private AtomicBoolean closed = new AtomicBoolean(true);
     private VertxContext<Server> startedVertxContext;
     private Set<Long> timerIds = new ConcurrentSkipListSet<>();
-
-
-    public Observable<Void> start(VertxContext<Server> vertxContext) {
+    // decrypted container keys by container key id and the newest container key
+    // by container id so that encrypting and decrypting segments doesn't need
+    // to load the container key and call the key store every time
+    private Cache<String, ClearContainerKey> clearContainerKeys;
+    private Cache<String, PersistentContainerKey> newestContainerKeys;
+    private final AtomicLong clearKeyHitCount = new AtomicLong(0);
+    private final AtomicLong clearKeyMissCount = new AtomicLong(0);
+    private final AtomicLong newestKeyHitCount = new AtomicLong(0);
+    private final AtomicLong newestKeyMissCount = new AtomicLong(0);
+
+
+    public Observable<Void> start(VertxContext<Server> vertxContext, JsonObject config) {
         return aVoid()
                 .filter(aVoid -> closed.compareAndSet(true, false))
                 .map(aVoid -> {
                     startedVertxContext = vertxContext;
+                    long maxSize = Long.parseLong(ConfigHelper.getFieldOrEnv(config, "container_key_cache.maxsize", "1000"));
+                    checkArgument(maxSize >= 0, "container_key_cache.maxsize must be greater or equal to 0");
+                    long ttl = Long.parseLong(ConfigHelper.getFieldOrEnv(config, "container_key_cache.ttl", String.valueOf(MINUTES.toMillis(1))));
+                    checkArgument(ttl >= 0, "container_key_cache.ttl must be greater or equal to 0");
+                    clearContainerKeys = CacheBuilder.newBuilder()
+                            .maximumSize(maxSize)
+                            .expireAfterWrite(ttl, MILLISECONDS)
+                            .ticker(ticker())
+                            .removalListener((RemovalListener<String, ClearContainerKey>) notification -> notification.getValue().destroy())
+                            .build();
+                    newestContainerKeys = CacheBuilder.newBuilder()
+                            .maximumSize(maxSize)
+                            .expireAfterWrite(ttl, MILLISECONDS)
+                            .ticker(ticker())
+                            .build();
+                    if (ttl > 0) {
+                        // expired entries are otherwise only removed, and their
+                        // key material zeroed, when the cache is next written to
+                        long timerId = vertxContext.vertx().setPeriodic(ttl, id -> cleanUp());
+                        timerIds.add(timerId);
+                    }
                     return (Void) null;
                 })
                 .singleOrDefault(null);
@@ -92,6 +136,7 @@ public class ContainerKeys {
                             startedVertxContext.vertx().cancelTimer(timerId);
                         }
                     }
+                    invalidateAll();
                     return (Void) null;
                 })
                 .singleOrDefault(null);
@@ -101,6 +146,10 @@ public class ContainerKeys {
     public Observable<KeyResponse> algorithm(VertxContext<Server> vertxContext, PersistentContainer persistentContainer, String keyId, byte[] salt) {
         return defer(() -> {
             checkOpen();
+            Optional<Algorithm> oCachedAlgorithm = cachedAlgorithm(keyId, salt);
+            if (oCachedAlgorithm.isPresent()) {
+                return just(new KeyResponse(keyId, salt, oCachedAlgorithm.get()));
+            }
             return just(new Holder2<>(persistentContainer, keyId))
                     .flatMap(new LoadContainerKey(vertxContext))
                     .map(holder -> {
@@ -108,24 +157,9 @@ public class ContainerKeys {
                         checkState(oPersistentContainerKey.isPresent(), "ContainerKey %s not found", keyId);
                         return oPersistentContainerKey.get();
                     })
-                    .flatMap(persistentContainerKey -> {
-                        MasterKeys masterKeys = vertxContext.verticle().masterKeys();
-                        return masterKeys.decrypt(vertxContext,
-                                new MasterKeys.Encrypted(
-                                        persistentContainerKey.getKeyStoreKeyId().get(),
-                                        persistentContainerKey.getCipherSalt().get(),
-                                        persistentContainerKey.getEncryptedKey().get()))
-                                .map(Optional::get)
-                                .map(clearContainerKey -> {
-                                    try {
-                                        AlgorithmDef algorithmDef = persistentContainerKey.getAlgorithmDef().get();
-                                        Algorithm algorithm = algorithmDef.create(clearContainerKey, salt);
-                                        return new KeyResponse(persistentContainerKey.getId(), salt, algorithm);
-                                    } finally {
-                                        fill(clearContainerKey, (byte) 0);
-                                    }
-                                });
-                    });
+                    .flatMap(persistentContainerKey ->
+                            decryptAlgorithm(vertxContext, persistentContainerKey, salt)
+                                    .map(algorithm -> new KeyResponse(persistentContainerKey.getId(), salt, algorithm)));
         });
 
     }
@@ -133,40 +167,143 @@ public class ContainerKeys {
     public Observable<KeyResponse> preferredAlgorithm(VertxContext<Server> vertxContext, PersistentContainer persistentContainer) {
         return defer(() -> {
             checkOpen();
-            return just(persistentContainer)
-                    .flatMap(new GetNewestContainerKey(vertxContext))
-                    .flatMap(persistentContainerKeyOptional -> {
-                        if (persistentContainerKeyOptional.isPresent()) {
-                            return rotateIfRequired(vertxContext, persistentContainerKeyOptional.get());
-                        } else {
-                            return newIfAbsent(vertxContext, persistentContainer);
-                        }
-                    })
+            return newestContainerKey(vertxContext, persistentContainer)
                     .flatMap(persistentContainerKey -> {
-                        MasterKeys masterKeys = vertxContext.verticle().masterKeys();
-                        return masterKeys.decrypt(vertxContext,
-                                new MasterKeys.Encrypted(
-                                        persistentContainerKey.getKeyStoreKeyId().get(),
-                                        persistentContainerKey.getCipherSalt().get(),
-                                        persistentContainerKey.getEncryptedKey().get()))
-                                .map(Optional::get)
-                                .flatMap(clearContainerKey ->
-                                        Observable.using(
-                                                () -> null,
-                                                aVoid -> {
-                                                    AlgorithmDef algorithmDef = persistentContainerKey.getAlgorithmDef().get();
-                                                    return algorithmDef.generateSalt(vertxContext.vertx())
-                                                            .map(salt -> {
-                                                                Algorithm algorithm = algorithmDef.create(clearContainerKey, salt);
-                                                                return new KeyResponse(persistentContainerKey.getId(), salt, algorithm);
-                                                            });
-                                                },
-                                                resource -> fill(clearContainerKey, (byte) 0)));
+                        AlgorithmDef algorithmDef = persistentContainerKey.getAlgorithmDef().get();
+                        return algorithmDef.generateSalt(vertxContext.vertx())
+                                .flatMap(salt -> {
+                                    Optional<Algorithm> oCachedAlgorithm = cachedAlgorithm(persistentContainerKey.getId(), salt);
+                                    if (oCachedAlgorithm.isPresent()) {
+                                        return just(oCachedAlgorithm.get());
+                                    }
+                                    return decryptAlgorithm(vertxContext, persistentContainerKey, salt);
+                                })
+                                .map(algorithm -> new KeyResponse(persistentContainerKey.getId(), algorithm.getSalt(), algorithm));
                     });
         });
 
     }
 
+    // forget the container keys of a container that was removed since a container
+    // created with the same name will have new keys with the same ids
+    public void invalidateContainer(String containerId) {
+        if (closed.get()) {
+            return;
+        }
+        newestContainerKeys.invalidate(containerId);
+        String prefix = containerId + "/";
+        clearContainerKeys.asMap().keySet().removeIf(keyId -> keyId.startsWith(prefix));
+    }
+
+    public void cleanUp() {
+        if (clearContainerKeys != null) {
+            clearContainerKeys.cleanUp();
+        }
+        if (newestContainerKeys != null) {
+            newestContainerKeys.cleanUp();
+        }
+    }
+
+    public void invalidateAll() {
+        if (clearContainerKeys != null) {
+            clearContainerKeys.invalidateAll();
+        }
+        if (newestContainerKeys != null) {
+            newestContainerKeys.invalidateAll();
+        }
+    }
+
+    public long getClearKeyHitCount() {
+        return clearKeyHitCount.get();
+    }
+
+    public long getClearKeyMissCount() {
+        return clearKeyMissCount.get();
+    }
+
+    public long getNewestKeyHitCount() {
+        return newestKeyHitCount.get();
+    }
+
+    public long getNewestKeyMissCount() {
+        return newestKeyMissCount.get();
+    }
+
+    public long getCachedKeyCount() {
+        return clearContainerKeys != null ? clearContainerKeys.size() : 0;
+    }
+
+    @VisibleForTesting
+    protected Optional<ClearContainerKey> getCachedKey(String keyId) {
+        return closed.get() ? absent() : Optional.fromNullable(clearContainerKeys.getIfPresent(keyId));
+    }
+
+    protected Ticker ticker() {
+        return Ticker.systemTicker();
+    }
+
+    // the newest container key is cached until it's due to be rotated
+    protected Observable<PersistentContainerKey> newestContainerKey(VertxContext<Server> vertxContext, PersistentContainer persistentContainer) {
+        PersistentContainerKey cached = closed.get() ? null : newestContainerKeys.getIfPresent(persistentContainer.getId());
+        if (cached != null && !shouldRotate(cached.getCreateTs(), cached.getAlgorithmDef().get(), getPreferred())) {
+            newestKeyHitCount.incrementAndGet();
+            return just(cached);
+        }
+        newestKeyMissCount.incrementAndGet();
+        return just(persistentContainer)
+                .flatMap(new GetNewestContainerKey(vertxContext))
+                .flatMap(persistentContainerKeyOptional -> {
+                    if (persistentContainerKeyOptional.isPresent()) {
+                        return rotateIfRequired(vertxContext, persistentContainerKeyOptional.get());
+                    } else {
+                        return newIfAbsent(vertxContext, persistentContainer);
+                    }
+                })
+                .doOnNext(persistentContainerKey -> {
+                    if (!closed.get()) {
+                        newestContainerKeys.put(persistentContainer.getId(), persistentContainerKey);
+                    }
+                });
+    }
+
+    protected Optional<Algorithm> cachedAlgorithm(String keyId, byte[] salt) {
+        if (closed.get()) {
+            return absent();
+        }
+        ClearContainerKey clearContainerKey = clearContainerKeys.getIfPresent(keyId);
+        if (clearContainerKey != null) {
+            // the key may have been evicted and zeroed after it was looked up
+            Optional<Algorithm> oAlgorithm = clearContainerKey.create(salt);
+            if (oAlgorithm.isPresent()) {
+                clearKeyHitCount.incrementAndGet();
+                return oAlgorithm;
+            }
+        }
+        clearKeyMissCount.incrementAndGet();
+        return absent();
+    }
+
+    protected Observable<Algorithm> decryptAlgorithm(VertxContext<Server> vertxContext, PersistentContainerKey persistentContainerKey, byte[] salt) {
+        MasterKeys masterKeys = vertxContext.verticle().masterKeys();
+        return masterKeys.decrypt(vertxContext,
+                new MasterKeys.Encrypted(
+                        persistentContainerKey.getKeyStoreKeyId().get(),
+                        persistentContainerKey.getCipherSalt().get(),
+                        persistentContainerKey.getEncryptedKey().get()))
+                .map(Optional::get)
+                .map(clearContainerKey -> {
+                    try {
+                        AlgorithmDef algorithmDef = persistentContainerKey.getAlgorithmDef().get();
+                        if (!closed.get()) {
+                            clearContainerKeys.put(persistentContainerKey.getId(), new ClearContainerKey(algorithmDef, clearContainerKey));
+                        }
+                        return algorithmDef.create(clearContainerKey, salt);
+                    } finally {
+                        fill(clearContainerKey, (byte) 0);
+                    }
+                });
+    }
+
     public Observable<Void> maintain(VertxContext<Server> vertxContext) {
         return defer(() -> {
             if (vertxContext.verticle().nodes().isDataNode()) {
@@ -209,6 +346,12 @@ public class ContainerKeys {
                                             .setReEncryptTs(getInstance())
                                             .setUpdateTs(getInstance())))
                     .flatMap(new UpdateContainerKey(vertxContext))
+                    .doOnNext(holder -> {
+                        if (!closed.get()) {
+                            clearContainerKeys.invalidate(persistentContainerKey.getId());
+                            newestContainerKeys.invalidate(persistentContainerKey.getPersistentContainer().getId());
+                        }
+                    })
                     .onErrorResumeNext(throwable -> {
                         LOGGER.warn("Failed to reEncrypt key " + persistentContainerKey.getId(), throwable);
                         return just(null);
@@ -391,6 +534,50 @@ public class ContainerKeys {
         return padStart(unpadded, DEFAULT_PAD, '0');
     }
 
+    // Holds the clear key outside of the heap so that the garbage collector never
+    // leaves copies of it behind and zeroes it when it's evicted from the cache
+    protected static class ClearContainerKey {
+
+        private final AlgorithmDef algorithmDef;
+        private final ByteBuffer key;
+        private boolean destroyed;
+
+        public ClearContainerKey(AlgorithmDef algorithmDef, byte[] clearKey) {
+            this.algorithmDef = algorithmDef;
+            this.key = ByteBuffer.allocateDirect(clearKey.length);
+            this.key.put(clearKey);
+        }
+
+        public synchronized Optional<Algorithm> create(byte[] salt) {
+            if (destroyed) {
+                return absent();
+            }
+            byte[] clearKey = new byte[key.capacity()];
+            try {
+                for (int i = 0; i < clearKey.length; i++) {
+                    clearKey[i] = key.get(i);
+                }
+                return of(algorithmDef.create(clearKey, salt));
+            } finally {
+                fill(clearKey, (byte) 0);
+            }
+        }
+
+        public synchronized void destroy() {
+            if (!destroyed) {
+                for (int i = 0; i < key.capacity(); i++) {
+                    key.put(i, (byte) 0);
+                }
+                destroyed = true;
+            }
+        }
+
+        @VisibleForTesting
+        protected synchronized ByteBuffer getKey() {
+            return key.asReadOnlyBuffer();
+        }
+    }
+
     public static class KeyResponse {
         private final String keyId;
         private final byte[] salt;
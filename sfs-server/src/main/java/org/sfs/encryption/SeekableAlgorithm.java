@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.encryption;
+
+import org.sfs.io.BufferEndableWriteStream;
+import org.sfs.io.CipherEndableWriteStream;
+import org.sfs.vo.ByteRange;
+
+// Algorithms that authenticate the cipher text in independent chunks can decrypt
+// a range of the plain text without reading the cipher text from the start
+public abstract class SeekableAlgorithm extends Algorithm {
+
+    // the range of cipher text that needs to be read to decrypt plainTextRange
+    public abstract ByteRange encryptedRange(ByteRange plainTextRange, long encryptedLength);
+
+    // accepts the cipher text identified by encryptedRange and writes
+    // the plain text identified by plainTextRange to writeStream
+    public abstract <T extends CipherEndableWriteStream> T decrypt(BufferEndableWriteStream writeStream, ByteRange plainTextRange, long encryptedLength);
+}
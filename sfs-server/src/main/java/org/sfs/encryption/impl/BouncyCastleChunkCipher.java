@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.encryption.impl;
+
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.engines.AESFastEngine;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+import javax.crypto.AEADBadTagException;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+public class BouncyCastleChunkCipher implements ChunkCipher {
+
+    private final boolean forEncryption;
+    private final KeyParameter key;
+    private final int macSizeBits;
+    private final GCMBlockCipher cipher;
+
+    public BouncyCastleChunkCipher(boolean forEncryption, byte[] key, int macSizeBits) {
+        this.forEncryption = forEncryption;
+        this.key = new KeyParameter(key);
+        this.macSizeBits = macSizeBits;
+        this.cipher = new GCMBlockCipher(new AESFastEngine());
+    }
+
+    @Override
+    public byte[] process(byte[] nonce, byte[] associatedData, byte[] in, int off, int len) throws GeneralSecurityException {
+        cipher.init(forEncryption, new AEADParameters(key, macSizeBits, nonce, associatedData));
+        byte[] output = new byte[cipher.getOutputSize(len)];
+        try {
+            int outputLength = cipher.processBytes(in, off, len, output, 0);
+            outputLength += cipher.doFinal(output, outputLength);
+            return outputLength == output.length ? output : Arrays.copyOf(output, outputLength);
+        } catch (InvalidCipherTextException e) {
+            AEADBadTagException exception = new AEADBadTagException(e.getMessage());
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+}
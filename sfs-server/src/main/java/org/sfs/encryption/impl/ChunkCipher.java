@@ -0,0 +1,27 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.encryption.impl;
+
+import java.security.GeneralSecurityException;
+
+// Seals or opens a single AES-GCM chunk. Instances aren't thread safe
+public interface ChunkCipher {
+
+    // returns a new array holding the output so that it can be handed
+    // downstream without being copied
+    byte[] process(byte[] nonce, byte[] associatedData, byte[] in, int off, int len) throws GeneralSecurityException;
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.encryption.impl;
+
+import io.vertx.core.logging.Logger;
+
+import javax.crypto.Cipher;
+
+import static io.vertx.core.logging.LoggerFactory.getLogger;
+
+// Both backends produce the same bytes so the one used to seal
+// a chunk doesn't need to be the one used to open it
+public enum ChunkCipherBackend {
+
+    JCE {
+        @Override
+        public ChunkCipher create(boolean forEncryption, byte[] key, int macSizeBits) {
+            return new JceChunkCipher(forEncryption, key, macSizeBits);
+        }
+    },
+
+    BOUNCY_CASTLE {
+        @Override
+        public ChunkCipher create(boolean forEncryption, byte[] key, int macSizeBits) {
+            return new BouncyCastleChunkCipher(forEncryption, key, macSizeBits);
+        }
+    };
+
+    private static final Logger LOGGER = getLogger(ChunkCipherBackend.class);
+    private static final ChunkCipherBackend PREFERRED = detectPreferred();
+
+    public abstract ChunkCipher create(boolean forEncryption, byte[] key, int macSizeBits);
+
+    public static ChunkCipherBackend getPreferred() {
+        return PREFERRED;
+    }
+
+    // some jdks are shipped with restricted key sizes which
+    // rules out the jce provider for 256 bit keys
+    private static ChunkCipherBackend detectPreferred() {
+        try {
+            Cipher.getInstance(JceChunkCipher.TRANSFORMATION);
+            if (Cipher.getMaxAllowedKeyLength("AES") >= 256) {
+                return JCE;
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Jce AES/GCM is unavailable", e);
+        }
+        return BOUNCY_CASTLE;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.encryption.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+import org.sfs.io.BufferWritable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static io.netty.buffer.Unpooled.wrappedBuffer;
+
+// Encrypts or decrypts a stream as a sequence of independently authenticated
+// AES-GCM chunks. Chunk i is sealed with a nonce derived from the base nonce
+// and i, and the chunk index plus a flag marking the last chunk are
+// authenticated so that chunks can't be reordered, dropped or truncated.
+//
+// The plain text of chunk i starts at i * chunkSize and the cipher text
+// at i * (chunkSize + macSize) which is what makes the format seekable.
+//
+// Whole chunks are processed straight out of the array they're written in and
+// each output chunk is handed downstream as is, so when both ends of the stream
+// deal in Buffers the only copies made are those of partial chunks
+public class ChunkedCipherOutputStream extends OutputStream implements BufferWritable {
+
+    private final OutputStream out;
+    private final ChunkCipher cipher;
+    private final byte[] nonce;
+    private final int inputChunkSize;
+    private final long lastChunkIndex;
+    private final byte[] pending;
+    private int pendingLength = 0;
+    private long chunkIndex;
+    private boolean processedChunk = false;
+    private boolean closed = false;
+
+    // lastChunkIndex is -1 when the stream will run to the end of the cipher text,
+    // in which case the last chunk is the one pending when the stream is closed
+    public ChunkedCipherOutputStream(OutputStream out, boolean forEncryption, ChunkCipher cipher, byte[] nonce, int chunkSize, int macSizeBits, long firstChunkIndex, long lastChunkIndex) {
+        checkArgument(chunkSize > 0, "chunkSize must be > 0");
+        checkArgument(firstChunkIndex >= 0, "firstChunkIndex must be >= 0");
+        checkArgument(nonce.length >= 8, "nonce must be at least 8 bytes");
+        this.out = out;
+        this.cipher = cipher;
+        this.nonce = nonce.clone();
+        this.inputChunkSize = forEncryption ? chunkSize : chunkSize + macSizeBits / 8;
+        this.chunkIndex = firstChunkIndex;
+        this.lastChunkIndex = lastChunkIndex;
+        this.pending = new byte[inputChunkSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(Buffer buffer) throws IOException {
+        ByteBuf byteBuf = buffer.getByteBuf();
+        if (byteBuf.hasArray()) {
+            write(byteBuf.array(), byteBuf.arrayOffset() + byteBuf.readerIndex(), byteBuf.readableBytes());
+        } else {
+            checkState(!closed, "Already closed");
+            while (byteBuf.isReadable()) {
+                if (pendingLength == inputChunkSize) {
+                    processChunk(pending, 0, pendingLength, false);
+                }
+                int toCopy = Math.min(byteBuf.readableBytes(), inputChunkSize - pendingLength);
+                byteBuf.readBytes(pending, pendingLength, toCopy);
+                pendingLength += toCopy;
+                if (isFullChunkNotLast(pendingLength)) {
+                    processChunk(pending, 0, pendingLength, false);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkState(!closed, "Already closed");
+        while (len > 0) {
+            // a full chunk is only processed once we know whether or not it's the last one
+            if (pendingLength == inputChunkSize) {
+                processChunk(pending, 0, pendingLength, false);
+            }
+            if (pendingLength == 0 && (len > inputChunkSize || isFullChunkNotLast(len))) {
+                processChunk(b, off, inputChunkSize, false);
+                off += inputChunkSize;
+                len -= inputChunkSize;
+                continue;
+            }
+            int toCopy = Math.min(len, inputChunkSize - pendingLength);
+            System.arraycopy(b, off, pending, pendingLength, toCopy);
+            pendingLength += toCopy;
+            off += toCopy;
+            len -= toCopy;
+            if (isFullChunkNotLast(pendingLength)) {
+                processChunk(pending, 0, pendingLength, false);
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (pendingLength > 0 || !processedChunk) {
+                boolean lastChunk = lastChunkIndex < 0 || chunkIndex == lastChunkIndex;
+                processChunk(pending, 0, pendingLength, lastChunk);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    protected boolean isFullChunkNotLast(int length) {
+        return length == inputChunkSize && lastChunkIndex >= 0 && chunkIndex < lastChunkIndex;
+    }
+
+    protected void processChunk(byte[] in, int off, int len, boolean lastChunk) throws IOException {
+        byte[] output;
+        try {
+            output = cipher.process(chunkNonce(chunkIndex), associatedData(chunkIndex, lastChunk), in, off, len);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Chunk " + chunkIndex + " failed authentication", e);
+        }
+        if (in == pending) {
+            pendingLength = 0;
+        }
+        chunkIndex++;
+        processedChunk = true;
+        if (out instanceof BufferWritable) {
+            ((BufferWritable) out).write(Buffer.buffer(wrappedBuffer(output)));
+        } else {
+            out.write(output);
+        }
+    }
+    protected byte[] chunkNonce(long index) {
+        byte[] chunkNonce = nonce.clone();
+        int offset = chunkNonce.length - 8;
+        for (int i = 0; i < 8; i++) {
+            chunkNonce[offset + i] ^= (byte) (index >>> (56 - i * 8));
+        }
+        return chunkNonce;
+    }
+
+    protected byte[] associatedData(long index, boolean lastChunk) {
+        byte[] associatedData = new byte[9];
+        for (int i = 0; i < 8; i++) {
+            associatedData[i] = (byte) (index >>> (56 - i * 8));
+        }
+        associatedData[8] = lastChunk ? (byte) 1 : (byte) 0;
+        return associatedData;
+    }
+}
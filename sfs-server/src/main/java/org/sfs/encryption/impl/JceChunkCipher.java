@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.encryption.impl;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import static javax.crypto.Cipher.DECRYPT_MODE;
+import static javax.crypto.Cipher.ENCRYPT_MODE;
+
+// Uses the jdk's AES/GCM provider which hotspot compiles to the AES-NI and
+// carry-less multiply instructions when the cpu has them
+public class JceChunkCipher implements ChunkCipher {
+
+    public static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private final int mode;
+    private final SecretKeySpec key;
+    private final int macSizeBits;
+    private final Cipher cipher;
+
+    public JceChunkCipher(boolean forEncryption, byte[] key, int macSizeBits) {
+        this.mode = forEncryption ? ENCRYPT_MODE : DECRYPT_MODE;
+        this.key = new SecretKeySpec(key, "AES");
+        this.macSizeBits = macSizeBits;
+        try {
+            this.cipher = Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("could not create cipher for AES256", e);
+        }
+    }
+
+    @Override
+    public byte[] process(byte[] nonce, byte[] associatedData, byte[] in, int off, int len) throws GeneralSecurityException {
+        cipher.init(mode, key, new GCMParameterSpec(macSizeBits, nonce));
+        cipher.updateAAD(associatedData);
+        byte[] output = new byte[cipher.getOutputSize(len)];
+        int outputLength = cipher.doFinal(in, off, len, output, 0);
+        return outputLength == output.length ? output : Arrays.copyOf(output, outputLength);
+    }
+}
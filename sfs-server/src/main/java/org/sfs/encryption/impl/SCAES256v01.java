@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.encryption.impl;
+
+import com.google.common.hash.Hashing;
+import com.google.common.math.LongMath;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import org.sfs.encryption.SeekableAlgorithm;
+import org.sfs.io.BufferEndableWriteStream;
+import org.sfs.io.CipherEndableWriteStream;
+import org.sfs.io.CipherReadStream;
+import org.sfs.io.RangeEndableWriteStream;
+import org.sfs.vo.ByteRange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static java.math.RoundingMode.CEILING;
+
+// Salted, chunked AES256-GCM. Same key and salt sizes as SAES256v01 but the plain text
+// is sealed in CHUNK_SIZE_BYTES chunks so that any range can be decrypted and
+// verified without reading the cipher text from the start
+public class SCAES256v01 extends SeekableAlgorithm {
+
+    public static final int KEY_SIZE_BYTES = 32;
+    public static final int NONCE_SIZE_BYTES = 12;
+    public static final int CHUNK_SIZE_BYTES = 64 * 1024;
+    private static final int MAC_SIZE_BITS = 128;
+    private static final int MAC_SIZE_BYTES = MAC_SIZE_BITS / 8;
+    private static final int ENCRYPTED_CHUNK_SIZE_BYTES = CHUNK_SIZE_BYTES + MAC_SIZE_BYTES;
+    private static final long MAX_LONG_BUFFER_SIZE = (Long.MAX_VALUE / ENCRYPTED_CHUNK_SIZE_BYTES - 1) * CHUNK_SIZE_BYTES;
+    private final byte[] salt;
+    private final byte[] nonce;
+    private final byte[] key;
+    private final ChunkCipherBackend backend;
+
+    public SCAES256v01(byte[] secretBytes, byte[] salt) {
+        this(secretBytes, salt, ChunkCipherBackend.getPreferred());
+    }
+
+    public SCAES256v01(byte[] secretBytes, byte[] salt, ChunkCipherBackend backend) {
+        this.backend = backend;
+        this.salt = salt.clone();
+        this.nonce = salt.length == NONCE_SIZE_BYTES
+                ? salt.clone()
+                : Arrays.copyOf(Hashing.sha256().hashBytes(salt).asBytes(), NONCE_SIZE_BYTES);
+        this.key = secretBytes.length == KEY_SIZE_BYTES
+                ? secretBytes.clone()
+                : Hashing.sha256().hashBytes(secretBytes).asBytes();
+    }
+
+    @Override
+    public long maxEncryptInputSize() {
+        return MAX_LONG_BUFFER_SIZE;
+    }
+
+    @Override
+    public long encryptOutputSize(long size) {
+        try {
+            long numberOfChunks = size <= 0 ? 1 : LongMath.divide(size, CHUNK_SIZE_BYTES, CEILING);
+            return LongMath.checkedAdd(size, LongMath.checkedMultiply(numberOfChunks, MAC_SIZE_BYTES));
+        } catch (ArithmeticException e) {
+            // do nothing
+        }
+        return -1;
+    }
+
+    @Override
+    public byte[] getSalt() {
+        return salt.clone();
+    }
+
+    @Override
+    public byte[] encrypt(byte[] buffer) {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (OutputStream cipherOutputStream = encryptor(byteArrayOutputStream)) {
+            cipherOutputStream.write(buffer);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    @Override
+    public byte[] decrypt(byte[] buffer) {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (OutputStream cipherOutputStream = decryptor(byteArrayOutputStream, 0, -1)) {
+            cipherOutputStream.write(buffer);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    @Override
+    public Buffer encrypt(Buffer buffer) {
+        return Buffer.buffer(encrypt(buffer.getBytes()));
+    }
+
+    @Override
+    public Buffer decrypt(Buffer buffer) {
+        return Buffer.buffer(decrypt(buffer.getBytes()));
+    }
+
+    @Override
+    public <T extends CipherEndableWriteStream> T decrypt(BufferEndableWriteStream writeStream) {
+        return (T) new CipherEndableWriteStream(writeStream, outputStream -> decryptor(outputStream, 0, -1));
+    }
+
+    @Override
+    public <T extends CipherEndableWriteStream> T encrypt(BufferEndableWriteStream writeStream) {
+        return (T) new CipherEndableWriteStream(writeStream, this::encryptor);
+    }
+
+    @Override
+    public <T extends CipherReadStream> T encrypt(ReadStream<Buffer> readStream) {
+        return (T) new CipherReadStream(readStream, this::encryptor);
+    }
+
+    @Override
+    public <T extends CipherReadStream> T decrypt(ReadStream<Buffer> readStream) {
+        return (T) new CipherReadStream(readStream, outputStream -> decryptor(outputStream, 0, -1));
+    }
+
+    @Override
+    public ByteRange encryptedRange(ByteRange plainTextRange, long encryptedLength) {
+        long firstChunk = plainTextRange.getFirst() / CHUNK_SIZE_BYTES;
+        long lastChunk = plainTextRange.getLast() / CHUNK_SIZE_BYTES;
+        long first = LongMath.checkedMultiply(firstChunk, ENCRYPTED_CHUNK_SIZE_BYTES);
+        long last = Math.min(LongMath.checkedMultiply(lastChunk + 1, ENCRYPTED_CHUNK_SIZE_BYTES), encryptedLength) - 1;
+        return new ByteRange(first, last);
+    }
+
+    @Override
+    public <T extends CipherEndableWriteStream> T decrypt(BufferEndableWriteStream writeStream, ByteRange plainTextRange, long encryptedLength) {
+        long firstChunk = plainTextRange.getFirst() / CHUNK_SIZE_BYTES;
+        long lastChunk = LongMath.divide(encryptedLength, ENCRYPTED_CHUNK_SIZE_BYTES, CEILING) - 1;
+        long skip = plainTextRange.getFirst() - firstChunk * CHUNK_SIZE_BYTES;
+        RangeEndableWriteStream rangeWriteStream = new RangeEndableWriteStream(writeStream, skip, plainTextRange.getLength());
+        return (T) new CipherEndableWriteStream(rangeWriteStream, outputStream -> decryptor(outputStream, firstChunk, Math.max(lastChunk, 0)));
+    }
+
+    protected OutputStream encryptor(OutputStream outputStream) {
+        return new ChunkedCipherOutputStream(outputStream, true, backend.create(true, key, MAC_SIZE_BITS), nonce, CHUNK_SIZE_BYTES, MAC_SIZE_BITS, 0, -1);
+    }
+
+    protected OutputStream decryptor(OutputStream outputStream, long firstChunk, long lastChunk) {
+        return new ChunkedCipherOutputStream(outputStream, false, backend.create(false, key, MAC_SIZE_BITS), nonce, CHUNK_SIZE_BYTES, MAC_SIZE_BITS, firstChunk, lastChunk);
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.erasure;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+// Systematic Reed-Solomon code over GF(2^8). The first dataShards rows of the
+// encoding matrix are the identity so the data shards are stored as is and any
+// dataShards of the dataShards + parityShards shards can be used to rebuild the others
+public class ReedSolomon {
+
+    private static final int FIELD_SIZE = 256;
+    private static final int GENERATING_POLYNOMIAL = 0x11D;
+    private static final int[] LOG = new int[FIELD_SIZE];
+    private static final int[] EXP = new int[FIELD_SIZE * 2];
+    private static final byte[][] MULTIPLY = new byte[FIELD_SIZE][FIELD_SIZE];
+
+    static {
+        int b = 1;
+        for (int i = 0; i < FIELD_SIZE - 1; i++) {
+            EXP[i] = b;
+            LOG[b] = i;
+            b <<= 1;
+            if (b >= FIELD_SIZE) {
+                b ^= GENERATING_POLYNOMIAL;
+            }
+        }
+        for (int i = FIELD_SIZE - 1; i < EXP.length; i++) {
+            EXP[i] = EXP[i - (FIELD_SIZE - 1)];
+        }
+        for (int x = 0; x < FIELD_SIZE; x++) {
+            for (int y = 0; y < FIELD_SIZE; y++) {
+                MULTIPLY[x][y] = (byte) multiply(x, y);
+            }
+        }
+    }
+
+    private final int dataShards;
+    private final int parityShards;
+    private final int totalShards;
+    private final int[][] matrix;
+
+    public ReedSolomon(int dataShards, int parityShards) {
+        checkArgument(dataShards > 0, "dataShards must be > 0");
+        checkArgument(parityShards >= 0, "parityShards must be >= 0");
+        checkArgument(dataShards + parityShards < FIELD_SIZE, "dataShards + parityShards must be < %s", FIELD_SIZE);
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+        this.totalShards = dataShards + parityShards;
+        int[][] vandermonde = new int[totalShards][dataShards];
+        for (int r = 0; r < totalShards; r++) {
+            for (int c = 0; c < dataShards; c++) {
+                vandermonde[r][c] = power(r, c);
+            }
+        }
+        int[][] top = new int[dataShards][];
+        System.arraycopy(vandermonde, 0, top, 0, dataShards);
+        this.matrix = times(vandermonde, invert(top));
+    }
+
+    public int getDataShards() {
+        return dataShards;
+    }
+
+    public int getParityShards() {
+        return parityShards;
+    }
+
+    public int getTotalShards() {
+        return totalShards;
+    }
+
+    // computes shards[dataShards..totalShards) from shards[0..dataShards)
+    public void encodeParity(byte[][] shards, int offset, int length) {
+        checkShards(shards, offset, length);
+        for (int p = dataShards; p < totalShards; p++) {
+            computeShard(matrix[p], shards, shards[p], offset, length);
+        }
+    }
+
+    // rebuilds the shards that aren't present. At least dataShards shards must be present
+    // and all shards, including the ones being rebuilt, must be allocated
+    public void decodeMissing(byte[][] shards, boolean[] present, int offset, int length) {
+        checkShards(shards, offset, length);
+        checkArgument(present.length == totalShards, "present must have %s entries", totalShards);
+
+        int numberPresent = 0;
+        boolean dataPresent = true;
+        for (int i = 0; i < totalShards; i++) {
+            if (present[i]) {
+                numberPresent++;
+            } else if (i < dataShards) {
+                dataPresent = false;
+            }
+        }
+        checkArgument(numberPresent >= dataShards, "Need %s shards to decode but only %s are present", dataShards, numberPresent);
+
+        if (!dataPresent) {
+            int[][] subMatrix = new int[dataShards][];
+            byte[][] subShards = new byte[dataShards][];
+            int row = 0;
+            for (int i = 0; i < totalShards && row < dataShards; i++) {
+                if (present[i]) {
+                    subMatrix[row] = matrix[i];
+                    subShards[row] = shards[i];
+                    row++;
+                }
+            }
+            int[][] decodeMatrix = invert(subMatrix);
+            for (int d = 0; d < dataShards; d++) {
+                if (!present[d]) {
+                    computeShard(decodeMatrix[d], subShards, shards[d], offset, length);
+                }
+            }
+        }
+
+        for (int p = dataShards; p < totalShards; p++) {
+            if (!present[p]) {
+                computeShard(matrix[p], shards, shards[p], offset, length);
+            }
+        }
+    }
+
+    protected void computeShard(int[] coefficients, byte[][] inputs, byte[] output, int offset, int length) {
+        int end = offset + length;
+        byte[] multiplyTable = MULTIPLY[coefficients[0]];
+        byte[] input = inputs[0];
+        for (int i = offset; i < end; i++) {
+            output[i] = multiplyTable[input[i] & 0xFF];
+        }
+        for (int c = 1; c < dataShards; c++) {
+            multiplyTable = MULTIPLY[coefficients[c]];
+            input = inputs[c];
+            for (int i = offset; i < end; i++) {
+                output[i] ^= multiplyTable[input[i] & 0xFF];
+            }
+        }
+    }
+
+    protected void checkShards(byte[][] shards, int offset, int length) {
+        checkArgument(shards.length == totalShards, "shards must have %s entries", totalShards);
+        checkArgument(offset >= 0 && length >= 0, "offset and length must be >= 0");
+        for (byte[] shard : shards) {
+            checkArgument(shard != null && shard.length >= offset + length, "shards must be allocated and hold offset + length bytes");
+        }
+    }
+
+    private static int multiply(int a, int b) {
+        if (a == 0 || b == 0) {
+            return 0;
+        }
+        return EXP[LOG[a] + LOG[b]];
+    }
+
+    private static int inverse(int a) {
+        checkArgument(a != 0, "Zero has no inverse");
+        return EXP[(FIELD_SIZE - 1) - LOG[a]];
+    }
+
+    private static int power(int a, int n) {
+        if (n == 0) {
+            return 1;
+        }
+        if (a == 0) {
+            return 0;
+        }
+        return EXP[(LOG[a] * n) % (FIELD_SIZE - 1)];
+    }
+
+    private static int[][] times(int[][] left, int[][] right) {
+        int rows = left.length;
+        int columns = right[0].length;
+        int inner = right.length;
+        int[][] result = new int[rows][columns];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                int value = 0;
+                for (int i = 0; i < inner; i++) {
+                    value ^= multiply(left[r][i], right[i][c]);
+                }
+                result[r][c] = value;
+            }
+        }
+        return result;
+    }
+
+    // gauss-jordan elimination on [m | I]
+    private static int[][] invert(int[][] m) {
+        int size = m.length;
+        int[][] work = new int[size][size * 2];
+        for (int r = 0; r < size; r++) {
+            System.arraycopy(m[r], 0, work[r], 0, size);
+            work[r][size + r] = 1;
+        }
+        for (int c = 0; c < size; c++) {
+            int pivot = c;
+            while (pivot < size && work[pivot][c] == 0) {
+                pivot++;
+            }
+            checkArgument(pivot < size, "Matrix is singular");
+            if (pivot != c) {
+                int[] tmp = work[pivot];
+                work[pivot] = work[c];
+                work[c] = tmp;
+            }
+            int scale = inverse(work[c][c]);
+            for (int i = 0; i < size * 2; i++) {
+                work[c][i] = multiply(work[c][i], scale);
+            }
+            for (int r = 0; r < size; r++) {
+                if (r != c && work[r][c] != 0) {
+                    int factor = work[r][c];
+                    for (int i = 0; i < size * 2; i++) {
+                        work[r][i] ^= multiply(factor, work[c][i]);
+                    }
+                }
+            }
+        }
+        int[][] result = new int[size][size];
+        for (int r = 0; r < size; r++) {
+            System.arraycopy(work[r], size, result[r], 0, size);
+        }
+        return result;
+    }
+}
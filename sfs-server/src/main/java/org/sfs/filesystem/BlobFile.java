@@ -20,6 +20,7 @@ import com.google.common.base.Optional;
 import io.vertx.core.Context;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.impl.ConcurrentHashSet;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.streams.ReadStream;
@@ -52,16 +53,21 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.net.HttpHeaders.CONTENT_LENGTH;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
+import static java.lang.String.valueOf;
 import static java.lang.System.currentTimeMillis;
 import static java.nio.file.Files.createDirectories;
 import static java.util.Collections.addAll;
 import static org.sfs.block.RangeLock.Lock;
+import static org.sfs.block.RangeLock.LockRequest;
 import static org.sfs.filesystem.BlobFile.Status.STARTED;
 import static org.sfs.filesystem.BlobFile.Status.STARTING;
 import static org.sfs.filesystem.BlobFile.Status.START_FAILED;
 import static org.sfs.filesystem.BlobFile.Status.STOPPED;
 import static org.sfs.filesystem.BlobFile.Status.STOPPING;
+import static org.sfs.filesystem.GroupCommit.DEFAULT_BATCH_SIZE;
+import static org.sfs.filesystem.GroupCommit.DEFAULT_WINDOW;
 import static org.sfs.io.AsyncIO.end;
 import static org.sfs.io.AsyncIO.pump;
 import static org.sfs.rx.Defer.aVoid;
@@ -94,13 +100,22 @@ public class BlobFile {
     private Set<Long> periodics = new ConcurrentHashSet<>();
     private final AtomicReference<Status> status = new AtomicReference<>(STOPPED);
     private ExecutorService executorService;
+    private final GroupCommit groupCommit;
 
     public BlobFile(Path file, int blockSize, long writeStreamTimeout) {
+        this(file, blockSize, writeStreamTimeout, DEFAULT_BATCH_SIZE, DEFAULT_WINDOW);
+    }
+
+    public BlobFile(Path file, int blockSize, long writeStreamTimeout, int forceBatchSize, long forceWindow) {
         this.file = file;
         this.blockSize = blockSize;
         this.produceBufferSize = blockSize * 10000;
         this.lock = new RangeLock(blockSize);
         this.writeStreamTimeout = writeStreamTimeout;
+        this.groupCommit = new GroupCommit(forceBatchSize, forceWindow, metaData -> {
+            checkOpen();
+            channel.force(metaData);
+        });
     }
 
     public Status getStatus() {
@@ -166,6 +181,30 @@ public class BlobFile {
         return lock.getLockCount();
     }
 
+    public int getLockWaiterCount() {
+        return lock.getWaiterCount();
+    }
+
+    public long getLockWaitCount() {
+        return lock.getWaitCount();
+    }
+
+    public long getLockWaitTime() {
+        return lock.getWaitTime();
+    }
+
+    public long getLockTimeoutCount() {
+        return lock.getTimeoutCount();
+    }
+
+    public LockRequest writeLock(long position, long length) {
+        return lock.writeLock(position, length);
+    }
+
+    public LockRequest readLock(long position, long length) {
+        return lock.readLock(position, length);
+    }
+
     public Optional<Lock> tryWriteLock(long position, long length) {
         return lock.tryWriteLock(position, length);
     }
@@ -269,6 +308,20 @@ public class BlobFile {
     }
 
 
+    // The bytes go from the page cache to the socket without being copied into the
+    // jvm (unless the connection is encrypted in which case netty falls back to
+    // reading the file in chunks). The caller is expected to hold a read lock on the range
+    public Observable<Void> sendFile(long position, long length, HttpServerResponse httpServerResponse) {
+        return defer(() -> {
+            checkOpen();
+            ObservableFuture<Void> handler = RxHelper.observableFuture();
+            httpServerResponse.setChunked(false)
+                    .putHeader(CONTENT_LENGTH, valueOf(length))
+                    .sendFile(file.toString(), position, length, handler.toHandler());
+            return handler;
+        });
+    }
+
     public Observable<Void> consume(SfsVertx vertx, long position, long length, ReadStream<Buffer> src, boolean assertAlignment) {
         return defer(() -> {
             checkOpen();
@@ -368,16 +421,15 @@ public class BlobFile {
     }
 
     public Observable<Void> force(SfsVertx vertx, boolean metaData) {
-        Context context = vertx.getOrCreateContext();
-        return RxHelper.executeBlocking(context, vertx.getIoPool(), () -> {
-            checkOpen();
-            try {
-                channel.force(metaData);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            return (Void) null;
-        });
+        return groupCommit.force(vertx, metaData);
+    }
+
+    public long getForceRequestCount() {
+        return groupCommit.getRequestCount();
+    }
+
+    public long getForceCount() {
+        return groupCommit.getForceCount();
     }
 
     protected void checkAligned(long value, int blockSize) {
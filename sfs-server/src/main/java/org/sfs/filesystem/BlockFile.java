@@ -58,10 +58,13 @@ import static java.lang.Integer.MAX_VALUE;
 import static java.nio.file.Files.createDirectories;
 import static java.util.Collections.addAll;
 import static org.sfs.block.RangeLock.Lock;
+import static org.sfs.block.RangeLock.LockRequest;
 import static org.sfs.filesystem.BlockFile.Status.STARTED;
 import static org.sfs.filesystem.BlockFile.Status.STARTING;
 import static org.sfs.filesystem.BlockFile.Status.STOPPED;
 import static org.sfs.filesystem.BlockFile.Status.STOPPING;
+import static org.sfs.filesystem.GroupCommit.DEFAULT_BATCH_SIZE;
+import static org.sfs.filesystem.GroupCommit.DEFAULT_WINDOW;
 import static org.sfs.io.AsyncIO.end;
 import static org.sfs.io.AsyncIO.pump;
 import static org.sfs.io.Block.decodeFrame;
@@ -92,11 +95,20 @@ public class BlockFile {
     private AtomicBoolean readOnly = new AtomicBoolean(true);
     private final AtomicReference<Status> status = new AtomicReference<>(STOPPED);
     private ExecutorService executorService;
+    private final GroupCommit groupCommit;
 
     public BlockFile(Path file, int blockSize) {
+        this(file, blockSize, DEFAULT_BATCH_SIZE, DEFAULT_WINDOW);
+    }
+
+    public BlockFile(Path file, int blockSize, int forceBatchSize, long forceWindow) {
         this.file = file;
         this.blockSize = blockSize;
         this.lock = new RangeLock(blockSize);
+        this.groupCommit = new GroupCommit(forceBatchSize, forceWindow, metaData -> {
+            checkOpen();
+            channel.force(metaData);
+        });
     }
 
     public int getBlockSize() {
@@ -149,6 +161,30 @@ public class BlockFile {
         return lock.getLockCount();
     }
 
+    public int getLockWaiterCount() {
+        return lock.getWaiterCount();
+    }
+
+    public long getLockWaitCount() {
+        return lock.getWaitCount();
+    }
+
+    public long getLockWaitTime() {
+        return lock.getWaitTime();
+    }
+
+    public long getLockTimeoutCount() {
+        return lock.getTimeoutCount();
+    }
+
+    public LockRequest writeLock(long position, long length) {
+        return lock.writeLock(position, length);
+    }
+
+    public LockRequest readLock(long position, long length) {
+        return lock.readLock(position, length);
+    }
+
     public Optional<Lock> tryWriteLock(long position, long length) {
         return lock.tryWriteLock(position, length);
     }
@@ -331,16 +367,15 @@ public class BlockFile {
     }
 
     public Observable<Void> force(SfsVertx vertx, boolean metaData) {
-        Context context = vertx.getOrCreateContext();
-        return RxHelper.executeBlocking(context, vertx.getIoPool(), () -> {
-            checkOpen();
-            try {
-                channel.force(metaData);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            return (Void) null;
-        });
+        return groupCommit.force(vertx, metaData);
+    }
+
+    public long getForceRequestCount() {
+        return groupCommit.getRequestCount();
+    }
+
+    public long getForceCount() {
+        return groupCommit.getForceCount();
     }
 
     protected AsyncFileReader createReadStream(Context context, final long startPosition,
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.filesystem;
+
+import io.vertx.core.Context;
+import io.vertx.core.logging.Logger;
+import org.sfs.SfsVertx;
+import org.sfs.rx.ObservableFuture;
+import org.sfs.rx.RxHelper;
+import rx.Observable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.vertx.core.logging.LoggerFactory.getLogger;
+import static rx.Observable.defer;
+
+// Coalesces force requests so that many writers share one fsync. A request is
+// only completed by a force that started after the request was made so each
+// caller gets the same guarantee it would get from calling force itself.
+//
+// Requests that arrive while a force is running are batched and forced as soon as
+// it finishes. When the file is idle the first request waits up to window
+// milliseconds, or until batchSize requests are pending, for others to join it
+public class GroupCommit {
+
+    public interface Forceable {
+
+        void force(boolean metaData) throws IOException;
+    }
+
+    private static final Logger LOGGER = getLogger(GroupCommit.class);
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    public static final long DEFAULT_WINDOW = 0;
+    private final int batchSize;
+    private final long window;
+    private final Forceable forceable;
+    private final AtomicLong requestCount = new AtomicLong(0);
+    private final AtomicLong forceCount = new AtomicLong(0);
+    private List<Waiter> pending = new ArrayList<>();
+    private boolean pendingMetaData = false;
+    private boolean forcing = false;
+    private boolean scheduled = false;
+
+    public GroupCommit(int batchSize, long window, Forceable forceable) {
+        checkArgument(batchSize >= 1, "batchSize must be >= 1");
+        checkArgument(window >= 0, "window must be >= 0");
+        this.batchSize = batchSize;
+        this.window = window;
+        this.forceable = forceable;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getWindow() {
+        return window;
+    }
+
+    // the number of times force was called
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    // the number of times the file was actually forced
+    public long getForceCount() {
+        return forceCount.get();
+    }
+
+    public Observable<Void> force(SfsVertx vertx, boolean metaData) {
+        return defer(() -> {
+            requestCount.incrementAndGet();
+            ObservableFuture<Void> handler = RxHelper.observableFuture();
+            Waiter waiter = new Waiter(vertx.getOrCreateContext(), handler);
+            boolean forceNow = false;
+            boolean schedule = false;
+            synchronized (this) {
+                pending.add(waiter);
+                pendingMetaData |= metaData;
+                if (!forcing) {
+                    if (window <= 0 || pending.size() >= batchSize) {
+                        forcing = true;
+                        forceNow = true;
+                    } else if (!scheduled) {
+                        scheduled = true;
+                        schedule = true;
+                    }
+                }
+            }
+            if (forceNow) {
+                forcePending(vertx);
+            } else if (schedule) {
+                vertx.setTimer(window, timerId -> onWindowElapsed(vertx));
+            }
+            return handler;
+        });
+    }
+
+    protected void onWindowElapsed(SfsVertx vertx) {
+        synchronized (this) {
+            scheduled = false;
+            // a full batch or a running force has already taken care of the requests
+            if (forcing || pending.isEmpty()) {
+                return;
+            }
+            forcing = true;
+        }
+        forcePending(vertx);
+    }
+
+    protected void forcePending(SfsVertx vertx) {
+        List<Waiter> batch;
+        boolean metaData;
+        synchronized (this) {
+            batch = pending;
+            metaData = pendingMetaData;
+            pending = new ArrayList<>();
+            pendingMetaData = false;
+        }
+        try {
+            vertx.getIoPool().execute(() -> {
+                Throwable error = null;
+                try {
+                    forceable.force(metaData);
+                    forceCount.incrementAndGet();
+                } catch (Throwable e) {
+                    error = e;
+                }
+                onForced(vertx, batch, error);
+            });
+        } catch (Throwable e) {
+            onForced(vertx, batch, e);
+        }
+    }
+
+    protected void onForced(SfsVertx vertx, List<Waiter> batch, Throwable error) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Forced " + batch.size() + " requests");
+        }
+        for (Waiter waiter : batch) {
+            waiter.complete(error);
+        }
+        boolean forceAgain = false;
+        synchronized (this) {
+            forcing = false;
+            // anything pending arrived while the force was running and has
+            // already waited at least as long as the window would make it
+            if (!pending.isEmpty()) {
+                forcing = true;
+                forceAgain = true;
+            }
+        }
+        if (forceAgain) {
+            forcePending(vertx);
+        }
+    }
+
+    private static class Waiter {
+
+        private final Context context;
+        private final ObservableFuture<Void> handler;
+
+        public Waiter(Context context, ObservableFuture<Void> handler) {
+            this.context = context;
+            this.handler = handler;
+        }
+
+        public void complete(Throwable error) {
+            if (error == null) {
+                context.runOnContext(event -> handler.complete(null));
+            } else {
+                context.runOnContext(event -> handler.fail(error));
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.filesystem.volume;
+
+import io.vertx.core.json.JsonObject;
+
+import static org.sfs.util.SfsHttpHeaders.X_CONTENT_POSITION;
+import static org.sfs.util.SfsHttpHeaders.X_CONTENT_VOLUME;
+
+public class BlobAddress {
+
+    private final String volume;
+    private final long position;
+
+    public BlobAddress(String volume, long position) {
+        this.volume = volume;
+        this.position = position;
+    }
+
+    public BlobAddress(JsonObject jsonObject) {
+        this.volume = jsonObject.getString(X_CONTENT_VOLUME);
+        Long position = jsonObject.getLong(X_CONTENT_POSITION);
+        this.position = position != null ? position : -1;
+    }
+
+    public String getVolume() {
+        return volume;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public JsonObject toJsonObject() {
+        return new JsonObject()
+                .put(X_CONTENT_VOLUME, volume)
+                .put(X_CONTENT_POSITION, position);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BlobAddress)) return false;
+
+        BlobAddress that = (BlobAddress) o;
+
+        if (position != that.position) return false;
+        return volume != null ? volume.equals(that.volume) : that.volume == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = volume != null ? volume.hashCode() : 0;
+        result = 31 * result + (int) (position ^ (position >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "BlobAddress{" +
+                "volume='" + volume + '\'' +
+                ", position=" + position +
+                '}';
+    }
+}
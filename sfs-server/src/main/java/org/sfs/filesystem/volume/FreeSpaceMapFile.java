@@ -0,0 +1,275 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.filesystem.volume;
+
+import com.google.common.base.Optional;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.logging.Logger;
+import org.sfs.block.Allocator;
+import org.sfs.block.Range;
+import org.sfs.io.Block;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.of;
+import static io.vertx.core.logging.LoggerFactory.getLogger;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+// A saved copy of the index and data file allocators, and of the blocks waiting
+// to be garbage collected, so that a volume can be opened without scanning the
+// entire index. The file is only trusted if it belongs to the same volume and
+// index and the frame checksum is valid.
+//
+// Each saved map has a generation. Space freed after a map was saved, and blocks
+// that became garbage collection candidates, are appended to a journal tagged with
+// that generation so that the map can be brought up to date after a crash. Space
+// allocated after the map was saved isn't journaled since it can only be in space
+// the map has as free, which the volume scans when it's opened
+public class FreeSpaceMapFile {
+
+    private static final Logger LOGGER = getLogger(FreeSpaceMapFile.class);
+    private static final int VERSION = 3;
+    private final Path path;
+    private final Path tempPath;
+    private final Path journalPath;
+
+    public FreeSpaceMapFile(Path path) {
+        this.path = path;
+        this.tempPath = Paths.get(path.toString() + ".tmp");
+        this.journalPath = Paths.get(path.toString() + ".journal");
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public Path getJournalPath() {
+        return journalPath;
+    }
+
+    // returns the generation of the map if the allocators were restored from it
+    public Optional<Long> load(String volumeId, long indexFileSize, Allocator indexFileAllocator, Allocator dataFileAllocator, Map<Long, Long> gcCandidates) throws IOException {
+        if (!Files.exists(path)) {
+            LOGGER.info("Free space map " + path + " does not exist");
+            return absent();
+        }
+        Optional<Block.Frame<byte[]>> oFrame = Block.decodeFrame(Buffer.buffer(Files.readAllBytes(path)), false);
+        if (!oFrame.isPresent() || !oFrame.get().isChecksumValid()) {
+            LOGGER.warn("Free space map " + path + " is corrupt");
+            return absent();
+        }
+        Buffer buffer = Buffer.buffer(oFrame.get().getData());
+        int position = 0;
+        int version = buffer.getInt(position);
+        position += 4;
+        if (version != VERSION) {
+            LOGGER.warn("Free space map " + path + " version was " + version + ", expected " + VERSION);
+            return absent();
+        }
+        int volumeIdLength = buffer.getInt(position);
+        position += 4;
+        String savedVolumeId = buffer.getString(position, position + volumeIdLength, UTF_8.toString());
+        position += volumeIdLength;
+        long generation = buffer.getLong(position);
+        position += 8;
+        long savedIndexFileSize = buffer.getLong(position);
+        position += 8;
+        int savedIndexBlockSize = buffer.getInt(position);
+        position += 4;
+        int savedDataBlockSize = buffer.getInt(position);
+        position += 4;
+        // the index only ever grows so a smaller index isn't the one the map was saved from
+        if (!volumeId.equals(savedVolumeId)
+                || indexFileSize < savedIndexFileSize
+                || indexFileAllocator.getBlockSize() != savedIndexBlockSize
+                || dataFileAllocator.getBlockSize() != savedDataBlockSize) {
+            LOGGER.warn("Free space map " + path + " is stale");
+            return absent();
+        }
+        List<Range> indexFreeRanges = new ArrayList<>();
+        position = readRanges(buffer, position, indexFreeRanges);
+        List<Range> dataFreeRanges = new ArrayList<>();
+        position = readRanges(buffer, position, dataFreeRanges);
+        readGcCandidates(buffer, position, gcCandidates);
+        indexFileAllocator.setFreeRanges(indexFreeRanges);
+        dataFileAllocator.setFreeRanges(dataFreeRanges);
+        return of(generation);
+    }
+
+    public void save(String volumeId, long generation, long indexFileSize, int indexBlockSize, int dataBlockSize, List<Range> indexFreeRanges, List<Range> dataFreeRanges, Map<Long, Long> gcCandidates) throws IOException {
+        byte[] volumeIdBytes = volumeId.getBytes(UTF_8);
+        Buffer buffer = Buffer.buffer()
+                .appendInt(VERSION)
+                .appendInt(volumeIdBytes.length)
+                .appendBytes(volumeIdBytes)
+                .appendLong(generation)
+                .appendLong(indexFileSize)
+                .appendInt(indexBlockSize)
+                .appendInt(dataBlockSize);
+        writeRanges(buffer, indexFreeRanges);
+        writeRanges(buffer, dataFreeRanges);
+        writeGcCandidates(buffer, gcCandidates);
+        Buffer frame = Block.encodeFrame(buffer).getData();
+        try (FileChannel channel = FileChannel.open(tempPath, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            ByteBuffer byteBuffer = frame.getByteBuf().nioBuffer();
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tempPath, path, ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    // appends an entry to the journal and returns once it's on disk. Entries are
+    // length prefixed frames so that one torn by a crash ends the journal
+    public void appendJournal(long generation, List<Range> indexFrees, List<Range> dataFrees, Map<Long, Long> gcCandidates) throws IOException {
+        Buffer buffer = Buffer.buffer()
+                .appendLong(generation);
+        writeRanges(buffer, indexFrees);
+        writeRanges(buffer, dataFrees);
+        writeGcCandidates(buffer, gcCandidates);
+        Buffer frame = Block.encodeFrame(buffer).getData();
+        Buffer entry = Buffer.buffer()
+                .appendInt(frame.length())
+                .appendBuffer(frame);
+        try (FileChannel channel = FileChannel.open(journalPath, CREATE, WRITE)) {
+            long size = channel.size();
+            try {
+                ByteBuffer byteBuffer = entry.getByteBuf().nioBuffer();
+                long position = size;
+                while (byteBuffer.hasRemaining()) {
+                    position += channel.write(byteBuffer, position);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                // don't leave a partial entry in front of the next one
+                channel.truncate(size);
+                throw e;
+            }
+        }
+    }
+
+    // applies the journal entries written since the map with this generation was
+    // saved and returns the number of entries applied
+    public int replayJournal(long generation, Allocator indexFileAllocator, Allocator dataFileAllocator, Map<Long, Long> gcCandidates) throws IOException {
+        if (!Files.exists(journalPath)) {
+            return 0;
+        }
+        Buffer journal = Buffer.buffer(Files.readAllBytes(journalPath));
+        int applied = 0;
+        int position = 0;
+        while (position + 4 <= journal.length()) {
+            int frameLength = journal.getInt(position);
+            position += 4;
+            if (frameLength <= 0 || position + frameLength > journal.length()) {
+                LOGGER.warn("Free space journal " + journalPath + " has a torn entry at " + (position - 4));
+                break;
+            }
+            Optional<Block.Frame<byte[]>> oFrame = Block.decodeFrame(journal.slice(position, position + frameLength), false);
+            position += frameLength;
+            if (!oFrame.isPresent() || !oFrame.get().isChecksumValid()) {
+                LOGGER.warn("Free space journal " + journalPath + " has a corrupt entry at " + (position - frameLength - 4));
+                break;
+            }
+            Buffer buffer = Buffer.buffer(oFrame.get().getData());
+            if (buffer.getLong(0) != generation) {
+                // written before the map was saved so it's already in the map
+                continue;
+            }
+            List<Range> indexFrees = new ArrayList<>();
+            int offset = readRanges(buffer, 8, indexFrees);
+            List<Range> dataFrees = new ArrayList<>();
+            offset = readRanges(buffer, offset, dataFrees);
+            readGcCandidates(buffer, offset, gcCandidates);
+            for (Range range : indexFrees) {
+                indexFileAllocator.free(range.getFirst(), range.getBlockCount());
+            }
+            for (Range range : dataFrees) {
+                dataFileAllocator.free(range.getFirst(), range.getBlockCount());
+            }
+            applied++;
+        }
+        return applied;
+    }
+
+    // the entries are all older than a newly saved map
+    public void resetJournal() throws IOException {
+        Files.deleteIfExists(journalPath);
+    }
+
+    public void delete() throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(tempPath);
+        Files.deleteIfExists(journalPath);
+    }
+
+    private static void writeRanges(Buffer buffer, List<Range> ranges) {
+        buffer.appendInt(ranges.size());
+        for (Range range : ranges) {
+            buffer.appendLong(range.getFirst());
+            buffer.appendLong(range.getLast());
+        }
+    }
+
+    private static int readRanges(Buffer buffer, int position, List<Range> ranges) {
+        int count = buffer.getInt(position);
+        position += 4;
+        for (int i = 0; i < count; i++) {
+            long first = buffer.getLong(position);
+            position += 8;
+            long last = buffer.getLong(position);
+            position += 8;
+            ranges.add(new Range(first, last));
+        }
+        return position;
+    }
+
+    private static void writeGcCandidates(Buffer buffer, Map<Long, Long> gcCandidates) {
+        buffer.appendInt(gcCandidates.size());
+        for (Map.Entry<Long, Long> entry : gcCandidates.entrySet()) {
+            buffer.appendLong(entry.getKey());
+            buffer.appendLong(entry.getValue());
+        }
+    }
+
+    private static int readGcCandidates(Buffer buffer, int position, Map<Long, Long> gcCandidates) {
+        int count = buffer.getInt(position);
+        position += 4;
+        for (int i = 0; i < count; i++) {
+            long indexPosition = buffer.getLong(position);
+            position += 8;
+            long expiresAt = buffer.getLong(position);
+            position += 8;
+            gcCandidates.put(indexPosition, expiresAt);
+        }
+        return position;
+    }
+}
@@ -81,15 +81,9 @@ public class IndexBlockReader {
         if (READ.equals(lockType) || WRITE.equals(lockType)) {
             checkState(lockWaitTimeout > 0, "Invalid LockWaitTimeout value %s", lockWaitTimeout);
             return lockedObservable(vertx,
-                    () -> {
-                        if (WRITE.equals(lockType)) {
-                            return blockFile.tryWriteLock(position, readSize);
-                        } else if (READ.equals(lockType)) {
-                            return blockFile.tryReadLock(position, readSize);
-                        } else {
-                            throw new IllegalStateException("Unsupported Locked Type " + lockType);
-                        }
-                    },
+                    WRITE.equals(lockType)
+                            ? blockFile.writeLock(position, readSize)
+                            : blockFile.readLock(position, readSize),
                     () -> blockFile.getBlocks(vertx, position, batchSize)
                             .map(Lists::newArrayList)
                             .doOnNext(checksummedPositionals -> hasNext = !checksummedPositionals.isEmpty())
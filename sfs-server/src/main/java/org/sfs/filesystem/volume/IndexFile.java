@@ -33,6 +33,7 @@ import static io.vertx.core.buffer.Buffer.buffer;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
 import static java.lang.String.format;
 import static org.sfs.block.RangeLock.Lock;
+import static org.sfs.block.RangeLock.LockRequest;
 import static org.sfs.protobuf.XVolume.XIndexBlock;
 import static org.sfs.protobuf.XVolume.XIndexBlock.parseFrom;
 
@@ -45,6 +46,10 @@ public class IndexFile {
         blockFile = new BlockFile(path, blockSize);
     }
 
+    public IndexFile(Path path, int blockSize, int forceBatchSize, long forceWindow) {
+        blockFile = new BlockFile(path, blockSize, forceBatchSize, forceWindow);
+    }
+
     public long getWriteQueueSize() {
         return blockFile.getWriteQueueSize();
     }
@@ -77,6 +82,22 @@ public class IndexFile {
         return blockFile.getLockCount();
     }
 
+    public int getLockWaiterCount() {
+        return blockFile.getLockWaiterCount();
+    }
+
+    public long getLockWaitCount() {
+        return blockFile.getLockWaitCount();
+    }
+
+    public long getLockWaitTime() {
+        return blockFile.getLockWaitTime();
+    }
+
+    public long getLockTimeoutCount() {
+        return blockFile.getLockTimeoutCount();
+    }
+
     public Observable<Optional<ChecksummedPositional<XIndexBlock>>> getBlock(SfsVertx vertx, long position) {
         return blockFile.getBlock(vertx, position)
                 .filter(Optional::isPresent)
@@ -119,10 +140,26 @@ public class IndexFile {
         return blockFile.tryWriteLock(position, length);
     }
 
+    public LockRequest readLock(long position, long length) {
+        return blockFile.readLock(position, length);
+    }
+
+    public LockRequest writeLock(long position, long length) {
+        return blockFile.writeLock(position, length);
+    }
+
     public Observable<Void> force(SfsVertx vertx, boolean metaData) {
         return blockFile.force(vertx, metaData);
     }
 
+    public long getForceRequestCount() {
+        return blockFile.getForceRequestCount();
+    }
+
+    public long getForceCount() {
+        return blockFile.getForceCount();
+    }
+
     protected Optional<ChecksummedPositional<XIndexBlock>> parse(ChecksummedPositional<byte[]> checksummedPositional) {
         try {
             if (checksummedPositional.isChecksumValid()) {
@@ -81,15 +81,9 @@ public class IndexScanner {
         if (READ.equals(lockType) || WRITE.equals(lockType)) {
             checkState(lockWaitTimeout > 0, "Invalid LockWaitTimeout value %s", lockWaitTimeout);
             lockedObservable(vertx,
-                    () -> {
-                        if (WRITE.equals(lockType)) {
-                            return indexFile.tryWriteLock(position, bufferSize);
-                        } else if (READ.equals(lockType)) {
-                            return indexFile.tryReadLock(position, bufferSize);
-                        } else {
-                            throw new IllegalStateException("Unsupported Locked Type " + lockType);
-                        }
-                    },
+                    WRITE.equals(lockType)
+                            ? indexFile.writeLock(position, bufferSize)
+                            : indexFile.readLock(position, bufferSize),
                     () -> indexFile.getBlocks(vertx, position, batchSize),
                     lockWaitTimeout)
                     .flatMap(checksummedPositionals ->
@@ -33,6 +33,7 @@ import static io.vertx.core.buffer.Buffer.buffer;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
 import static java.lang.Long.MAX_VALUE;
 import static org.sfs.block.RangeLock.Lock;
+import static org.sfs.block.RangeLock.LockRequest;
 import static org.sfs.protobuf.XVolume.XSuperBlock;
 import static org.sfs.protobuf.XVolume.XSuperBlock.parseFrom;
 import static org.sfs.rx.RxHelper.combineSinglesDelayError;
@@ -95,6 +96,14 @@ public class MetaFile {
         return blockFile.tryWriteLock(0, MAX_VALUE);
     }
 
+    public LockRequest readLock() {
+        return blockFile.readLock(0, MAX_VALUE);
+    }
+
+    public LockRequest writeLock() {
+        return blockFile.writeLock(0, MAX_VALUE);
+    }
+
     public Observable<Optional<XSuperBlock>> getBlock(SfsVertx vertx) {
         // attempt to read position0, if position1 fails then attempt to read position1
         return getBlock0(vertx, position0)
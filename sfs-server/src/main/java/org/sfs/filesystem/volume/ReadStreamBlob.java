@@ -49,4 +49,9 @@ public abstract class ReadStreamBlob extends HeaderBlob {
     }
 
     public abstract Observable<Void> produce(BufferEndableWriteStream bufferStreamConsumer);
+
+    // releases anything held by a stream that will never be produced
+    public void discard() {
+        // do nothing
+    }
 }
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.filesystem.volume;
+
+import io.vertx.core.http.HttpServerResponse;
+import rx.Observable;
+
+// Blobs read from a local file can be written to an http response
+// straight from that file instead of being produced
+public abstract class SendFileReadStreamBlob extends ReadStreamBlob {
+
+    public SendFileReadStreamBlob(String volume, long position, long offset, long length) {
+        super(volume, position, offset, length);
+    }
+
+    // writes the blob as the whole body of the response and ends the
+    // response. The response headers must not have been written yet
+    public abstract Observable<Void> sendFile(HttpServerResponse httpServerResponse);
+}
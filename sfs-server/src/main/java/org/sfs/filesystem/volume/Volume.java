@@ -17,6 +17,7 @@
 package org.sfs.filesystem.volume;
 
 import com.google.common.base.Optional;
+import io.vertx.core.json.JsonObject;
 import org.sfs.SfsVertx;
 import org.sfs.vo.TransientXVolume;
 import rx.Observable;
@@ -46,6 +47,8 @@ public interface Volume {
 
     Observable<TransientXVolume> volumeInfo(SfsVertx vertx);
 
+    Observable<JsonObject> fragmentationReport(SfsVertx vertx);
+
     Observable<Void> open(SfsVertx vertx);
 
     Status status();
@@ -60,6 +63,8 @@ public interface Volume {
 
     Observable<WriteStreamBlob> putDataStream(SfsVertx vertx, long length);
 
+    Observable<WriteStreamBlob> putChunkedDataStream(SfsVertx vertx, long maxLength);
+
     Observable<Optional<HeaderBlob>> acknowledge(SfsVertx vertx, long position);
 
     Observable<Optional<HeaderBlob>> delete(SfsVertx vertx, final long position);
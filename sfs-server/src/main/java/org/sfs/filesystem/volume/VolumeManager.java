@@ -24,6 +24,8 @@ import io.vertx.core.logging.Logger;
 import org.sfs.Server;
 import org.sfs.SfsVertx;
 import org.sfs.VertxContext;
+import org.sfs.block.AllocatorType;
+import org.sfs.filesystem.GroupCommit;
 import org.sfs.rx.ObservableFuture;
 import org.sfs.rx.RxHelper;
 import org.sfs.rx.ToVoid;
@@ -56,9 +58,23 @@ public class VolumeManager {
     private Map<String, Volume> volumeMap = new HashMap<>();
     private Path basePath;
     private boolean open = false;
+    private final int forceBatchSize;
+    private final long forceWindow;
+    private final AllocatorType allocatorType;
 
     public VolumeManager(Path basePath) {
+        this(basePath, GroupCommit.DEFAULT_BATCH_SIZE, GroupCommit.DEFAULT_WINDOW);
+    }
+
+    public VolumeManager(Path basePath, int forceBatchSize, long forceWindow) {
+        this(basePath, forceBatchSize, forceWindow, AllocatorType.RECYCLING);
+    }
+
+    public VolumeManager(Path basePath, int forceBatchSize, long forceWindow, AllocatorType allocatorType) {
         this.basePath = Paths.get(basePath.toString(), "volumes");
+        this.forceBatchSize = forceBatchSize;
+        this.forceWindow = forceWindow;
+        this.allocatorType = allocatorType;
     }
 
     public boolean isOpen() {
@@ -87,7 +103,7 @@ public class VolumeManager {
                         return true;
                     })
                     .flatMap(volumeDirectory -> {
-                        final Volume volume = new VolumeV1(volumeDirectory);
+                        final Volume volume = new VolumeV1(volumeDirectory, forceBatchSize, forceWindow, allocatorType);
                         return volume.open(vertxContext.vertx())
                                 .map(aVoid -> volume);
                     })
@@ -148,7 +164,7 @@ public class VolumeManager {
                     })
                     .flatMap(aVoid -> {
                         if (!exists.get()) {
-                            final Volume volume = new VolumeV1(path);
+                            final Volume volume = new VolumeV1(path, forceBatchSize, forceWindow, allocatorType);
                             return volume.open(vertxContext.vertx())
                                     .map(aVoid1 -> volume);
                         } else {
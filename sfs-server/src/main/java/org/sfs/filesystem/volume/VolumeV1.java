@@ -25,15 +25,22 @@ import com.google.common.math.LongMath;
 import io.vertx.core.Context;
 import io.vertx.core.Handler;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.core.streams.ReadStream;
 import org.sfs.SfsVertx;
+import org.sfs.block.Range;
 import org.sfs.block.RangeLock;
-import org.sfs.block.RecyclingAllocator;
+import org.sfs.block.Allocator;
+import org.sfs.block.AllocatorType;
 import org.sfs.filesystem.BlobFile;
 import org.sfs.filesystem.ChecksummedPositional;
+import org.sfs.filesystem.GroupCommit;
 import org.sfs.io.BufferEndableWriteStream;
+import org.sfs.io.CountingReadStream;
+import org.sfs.math.Rounding;
 import org.sfs.protobuf.XVolume;
 import org.sfs.rx.Defer;
 import org.sfs.rx.ObservableFuture;
@@ -45,6 +52,7 @@ import org.sfs.vo.TransientXFileSystem;
 import org.sfs.vo.TransientXVolume;
 import rx.Observable;
 import rx.Subscriber;
+import rx.functions.Func0;
 import rx.functions.Func1;
 
 import java.io.IOException;
@@ -53,11 +61,19 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class VolumeV1 implements Volume {
@@ -84,13 +100,17 @@ public class VolumeV1 implements Volume {
     private static final int INDEX_SCAN_BATCH_SIZE = 1000;
     private static final long ACTIVE_WRITE_STREAM_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
     private static final long LOCK_WAIT_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
-    private static final int MAX_FREE_RANGES = 100000;
+    private static final long GC_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    // the maximum number of index blocks that will be examined by one garbage collection run
+    private static final int GC_BUDGET = 10000;
+    private static final long FREE_SPACE_MAP_INTERVAL = TimeUnit.MINUTES.toMillis(5);
     private Path metaFilePath;
     private Path dataFilePath;
     private Path indexFilePath;
+    private Path freeSpaceMapPath;
     private Logger gcLogger;
-    private RecyclingAllocator dataFileAllocator;
-    private RecyclingAllocator indexFileAllocator;
+    private Allocator dataFileAllocator;
+    private Allocator indexFileAllocator;
     private final Path basePath;
     private String volumeId;
     private AtomicReference<GcState> gcState = new AtomicReference<>(GcState.STOPPED);
@@ -98,14 +118,58 @@ public class VolumeV1 implements Volume {
     private MetaFile metaFile;
     private IndexFile indexFile;
     private BlobFile blobFile;
+    private FreeSpaceMapFile freeSpaceMapFile;
+    // guards the allocators and the changes that haven't been journaled yet. Freed
+    // space isn't returned to the allocators until it's in the free space journal
+    // since otherwise it could be reused while a saved map and the journal still
+    // have it as allocated, and a crash would then lose the block that reused it
+    private final Object freeSpaceMapMutex = new Object();
+    private boolean freeSpaceMapSaved = false;
+    // the generation of the saved map that the journal applies to. Guarded by freeSpaceMapFile
+    private long freeSpaceMapGeneration = 0;
+    private List<Range> unjournaledIndexFrees = new ArrayList<>();
+    private List<Range> unjournaledDataFrees = new ArrayList<>();
+    private Map<Long, Long> unjournaledGcCandidates = new HashMap<>();
+    // the unused tail of a chunked write is reused straight away. It's only journaled
+    // so that a crash doesn't leak it, if a crash loses it and the space was reused the
+    // scan on open finds the block that reused it and falls back to scanning the index
+    private List<Range> unjournaledTruncatedFrees = new ArrayList<>();
+    // incremented each time the allocators are copied to be saved
+    private long freeSpaceMapSnapshots = 0;
+    // allocations whose index block hasn't been written yet. A saved map has them as
+    // free so that the scan on open decides if they were written before a crash
+    private final Map<Long, AllocatedPosition> unwrittenAllocations = new HashMap<>();
+    // index blocks waiting to be garbage collected and when they expire. They're also
+    // grouped by expiry time, rounded down to GC_INTERVAL, so that a run only has to look
+    // at the blocks that have expired. Guarded by freeSpaceMapMutex since they're saved
+    // with the free space map
+    private final Map<Long, Long> gcCandidates = new HashMap<>();
+    private final NavigableMap<Long, Set<Long>> gcCandidatesByExpiry = new TreeMap<>();
+    private final AtomicLong gcReclaimedCount = new AtomicLong(0);
+    private final AtomicLong gcReclaimedBytes = new AtomicLong(0);
     private int indexBlockSize = -1;
     private int dataBlockSize = -1;
+    private final int forceBatchSize;
+    private final long forceWindow;
+    private final AllocatorType allocatorType;
 
     public VolumeV1(Path path) {
+        this(path, GroupCommit.DEFAULT_BATCH_SIZE, GroupCommit.DEFAULT_WINDOW);
+    }
+
+    public VolumeV1(Path path, int forceBatchSize, long forceWindow) {
+        this(path, forceBatchSize, forceWindow, AllocatorType.RECYCLING);
+    }
+
+    public VolumeV1(Path path, int forceBatchSize, long forceWindow, AllocatorType allocatorType) {
         this.basePath = path;
+        this.forceBatchSize = forceBatchSize;
+        this.forceWindow = forceWindow;
+        this.allocatorType = allocatorType;
         this.metaFilePath = metaFilePath(basePath);
         this.dataFilePath = dataFilePath(basePath);
         this.indexFilePath = indexFilePath(basePath);
+        this.freeSpaceMapPath = freeSpaceMapPath(basePath);
         logger = LoggerFactory.getLogger(VolumeV1.class.getName() + "." + join(basePath));
         gcLogger = LoggerFactory.getLogger(VolumeV1.class.getName() + "." + join(basePath) + ".gc");
     }
@@ -126,6 +190,10 @@ public class VolumeV1 implements Volume {
         return Paths.get(basePath.toString(), "data").normalize();
     }
 
+    protected Path freeSpaceMapPath(Path basePath) {
+        return Paths.get(basePath.toString(), "freespace").normalize();
+    }
+
     @Override
     public String getVolumeId() {
         return volumeId;
@@ -163,9 +231,15 @@ public class VolumeV1 implements Volume {
                                     .setBytesFree(indexFileAllocator.getBytesFree(usableSpace))
                                     .setFreeRangeCount(indexFileAllocator.getNumberOfFreeRanges())
                                     .setLockCount(indexFile.getLockCount())
+                                    .setLockWaiterCount(indexFile.getLockWaiterCount())
+                                    .setLockWaitCount(indexFile.getLockWaitCount())
+                                    .setLockWaitTime(indexFile.getLockWaitTime())
+                                    .setLockTimeoutCount(indexFile.getLockTimeoutCount())
                                     .setWriteQueueBytesPending(indexFile.getWriteQueueSize())
                                     .setWriteQueueBytesFull(indexFile.getWriteQueueMaxWrites())
-                                    .setWriteQueueBytesDrained(indexFile.getWriteQueueLowWater());
+                                    .setWriteQueueBytesDrained(indexFile.getWriteQueueLowWater())
+                                    .setForceRequestCount(indexFile.getForceRequestCount())
+                                    .setForceCount(indexFile.getForceCount());
 
                             TransientXAllocatedFile dataFileInfo = new TransientXAllocatedFile()
                                     .setFile(dataFilePath.toString())
@@ -173,9 +247,15 @@ public class VolumeV1 implements Volume {
                                     .setBytesFree(dataFileAllocator.getBytesFree(usableSpace))
                                     .setFreeRangeCount(dataFileAllocator.getNumberOfFreeRanges())
                                     .setLockCount(blobFile.getLockCount())
+                                    .setLockWaiterCount(blobFile.getLockWaiterCount())
+                                    .setLockWaitCount(blobFile.getLockWaitCount())
+                                    .setLockWaitTime(blobFile.getLockWaitTime())
+                                    .setLockTimeoutCount(blobFile.getLockTimeoutCount())
                                     .setWriteQueueBytesPending(blobFile.getWriteQueueSize())
                                     .setWriteQueueBytesFull(blobFile.getWriteQueueMaxWrites())
-                                    .setWriteQueueBytesDrained(blobFile.getWriteQueueLowWater());
+                                    .setWriteQueueBytesDrained(blobFile.getWriteQueueLowWater())
+                                    .setForceRequestCount(blobFile.getForceRequestCount())
+                                    .setForceCount(blobFile.getForceCount());
 
 
                             TransientXFileSystem fileSystemInfo = new TransientXFileSystem()
@@ -188,13 +268,21 @@ public class VolumeV1 implements Volume {
                                     .setPartition(basePath.getRoot().toString());
 
 
+                            long gcPendingCount;
+                            synchronized (freeSpaceMapMutex) {
+                                gcPendingCount = gcCandidates.size();
+                            }
+
                             TransientXVolume volumeInfo = new TransientXVolume()
                                     .setId(volumeId)
                                     .setIndexFile(indexFileInfo)
                                     .setDataFile(dataFileInfo)
                                     .setFileSystem(fileSystemInfo)
                                     .setUsableSpace(actualUsableSpace)
-                                    .setStatus(volumeState.get());
+                                    .setStatus(volumeState.get())
+                                    .setGcPendingCount(gcPendingCount)
+                                    .setGcReclaimedCount(gcReclaimedCount.get())
+                                    .setGcReclaimedBytes(gcReclaimedBytes.get());
 
                             return volumeInfo;
 
@@ -319,24 +407,41 @@ public class VolumeV1 implements Volume {
 
     protected Observable<XVolume.XSuperBlock> getSuperBlock(SfsVertx vertx) {
         return RangeLock.lockedObservable(vertx,
-                () -> metaFile.tryReadLock(),
+                metaFile.readLock(),
                 () -> metaFile.getBlock(vertx).map(Optional::get),
                 LOCK_WAIT_TIMEOUT);
     }
 
     protected Observable<Void> setSuperBlock(SfsVertx vertx, XVolume.XSuperBlock xSuperBlock) {
         return RangeLock.lockedObservable(vertx,
-                () -> metaFile.tryWriteLock(),
+                metaFile.writeLock(),
                 () -> metaFile.set(vertx, xSuperBlock),
                 LOCK_WAIT_TIMEOUT)
                 .flatMap(aVoid -> metaFile.force(vertx, false));
     }
 
+    // walks all the free ranges so it's run on the background pool
+    @Override
+    public Observable<JsonObject> fragmentationReport(SfsVertx vertx) {
+        return Defer.aVoid()
+                .doOnNext(aVoid -> checkStarted())
+                .flatMap(aVoid -> {
+                    Context context = vertx.getOrCreateContext();
+                    return RxHelper.executeBlocking(context, vertx.getBackgroundPool(), () ->
+                            new JsonObject()
+                                    .put("volume_id", volumeId)
+                                    .put("index_file", indexFileAllocator.fragmentationReport().toJsonObject())
+                                    .put("data_file", dataFileAllocator.fragmentationReport().toJsonObject()));
+                });
+    }
+
     @Override
     public Observable<Void> open(SfsVertx vertx) {
         final VolumeV1 _this = this;;
         return Defer.aVoid()
                 .doOnNext(aVoid -> Preconditions.checkState(volumeState.compareAndSet(Status.STOPPED, Status.STARTING)))
+                // close leaves the gc paused
+                .doOnNext(aVoid -> gcState.set(GcState.STOPPED))
                 .doOnNext(aVoid -> logger.info("Starting volume " + basePath.toString()))
                 .flatMap(aVoid -> {
                     Context context = vertx.getOrCreateContext();
@@ -348,6 +453,7 @@ public class VolumeV1 implements Volume {
                             metaFilePath = metaFilePath(basePath).normalize();
                             dataFilePath = dataFilePath(basePath).normalize();
                             indexFilePath = indexFilePath(basePath).normalize();
+                            freeSpaceMapPath = freeSpaceMapPath(basePath).normalize();
 
                             return (Void) null;
 
@@ -396,17 +502,23 @@ public class VolumeV1 implements Volume {
                 .doOnNext(aVoid -> logger.info("Finished Metadata Initialization"))
                 .doOnNext(aVoid -> {
                     dataFileAllocator =
-                            new RecyclingAllocator(dataBlockSize);
+                            allocatorType.create(dataBlockSize);
                     indexFileAllocator =
-                            new RecyclingAllocator(indexBlockSize);
+                            allocatorType.create(indexBlockSize);
 
-                    indexFile = new IndexFile(indexFilePath, indexBlockSize);
-                    blobFile = new BlobFile(dataFilePath, dataBlockSize, ACTIVE_WRITE_STREAM_TIMEOUT);
+                    indexFile = new IndexFile(indexFilePath, indexBlockSize, forceBatchSize, forceWindow);
+                    blobFile = new BlobFile(dataFilePath, dataBlockSize, ACTIVE_WRITE_STREAM_TIMEOUT, forceBatchSize, forceWindow);
+                    freeSpaceMapFile = new FreeSpaceMapFile(freeSpaceMapPath);
                 })
                 .flatMap(aVoid -> indexFile.open(vertx, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
                 .flatMap(aVoid -> blobFile.open(vertx, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
                 .doOnNext(aVoid -> logger.info("Started Allocator Initialization"))
-                .flatMap(aVoid ->
+                .flatMap(aVoid -> loadFreeSpaceMap(vertx))
+                .flatMap(loaded -> loaded ? scanFreeIndexRanges(vertx) : Observable.just(false))
+                .flatMap(loaded -> loaded ? Observable.just(true) : discardFreeSpaceMap(vertx).map(aVoid -> false))
+                .filter(loaded -> !loaded)
+                .doOnNext(loaded -> logger.info("Scanning index to rebuild allocators"))
+                .flatMap(loaded ->
                         scanIndex(vertx, IndexBlockReader.LockType.NONE, checksummedPositional -> {
                             XVolume.XIndexBlock header = checksummedPositional.getValue();
                             // Allocate all records that haven't been marked as garbage collected
@@ -425,15 +537,21 @@ public class VolumeV1 implements Volume {
                                 if (allocatedIndexPosition != headerPosition) {
                                     Preconditions.checkState(allocatedIndexPosition == headerPosition, "Header position was %s, expected %s, block allocator was %s", allocatedIndexPosition, headerPosition, indexFileAllocator.toString());
                                 }
+
+                                if (isGcCandidate(header)) {
+                                    synchronized (freeSpaceMapMutex) {
+                                        putGcCandidate(headerPosition, gcExpiry(header));
+                                    }
+                                }
                             }
                             return Observable.just(null);
                         }))
+                .singleOrDefault(null)
                 .doOnNext(aVoid -> logger.info("Finished Allocator Initialization"))
                 .flatMap(aVoid -> indexFile.enableWrites(vertx))
                 .flatMap(aVoid -> blobFile.enableWrites(vertx))
                 .doOnNext(aVoid -> logger.info("Starting Garbage Collector Initialization"))
                 .map(aVoid -> {
-                    final long interval = TimeUnit.MINUTES.toMillis(1);
                     Handler<Long> handler = new Handler<Long>() {
 
                         Handler<Long> _this = this;
@@ -447,12 +565,12 @@ public class VolumeV1 implements Volume {
                                     .subscribe(new Subscriber<Void>() {
                                         @Override
                                         public void onCompleted() {
-                                            vertx.setTimer(interval, _this);
+                                            vertx.setTimer(GC_INTERVAL, _this);
                                         }
 
                                         @Override
                                         public void onError(Throwable e) {
-                                            vertx.setTimer(interval, _this);
+                                            vertx.setTimer(GC_INTERVAL, _this);
                                         }
 
                                         @Override
@@ -462,10 +580,43 @@ public class VolumeV1 implements Volume {
                                     });
                         }
                     };
-                    vertx.setTimer(interval, handler);
+                    vertx.setTimer(GC_INTERVAL, handler);
                     return (Void) null;
                 })
                 .doOnNext(aVoid -> logger.info("Finished Garbage Collector Initialization"))
+                .doOnNext(aVoid -> {
+                    Handler<Long> handler = new Handler<Long>() {
+
+                        Handler<Long> _this = this;
+
+                        @Override
+                        public void handle(Long event) {
+                            if (!Status.STARTED.equals(volumeState.get())) {
+                                return;
+                            }
+                            flushFreeSpaceJournal(vertx)
+                                    .flatMap(aVoid -> saveFreeSpaceMap(vertx))
+                                    .subscribe(new Subscriber<Void>() {
+                                        @Override
+                                        public void onCompleted() {
+                                            vertx.setTimer(FREE_SPACE_MAP_INTERVAL, _this);
+                                        }
+
+                                        @Override
+                                        public void onError(Throwable e) {
+                                            logger.warn("Failed to save free space map " + freeSpaceMapPath, e);
+                                            vertx.setTimer(FREE_SPACE_MAP_INTERVAL, _this);
+                                        }
+
+                                        @Override
+                                        public void onNext(Void aVoid) {
+                                            // do nothing
+                                        }
+                                    });
+                        }
+                    };
+                    vertx.setTimer(FREE_SPACE_MAP_INTERVAL, handler);
+                })
                 .doOnNext(aVoid -> Preconditions.checkState(volumeState.compareAndSet(Status.STARTING, Status.STARTED)))
                 .doOnNext(aVoid -> {
                     logger.info("Started volume " + basePath.toString());
@@ -485,6 +636,17 @@ public class VolumeV1 implements Volume {
                     logger.error("Handling error", throwable);
                     return Observable.just(null);
                 })
+                .flatMap(aVoid -> {
+                    // the journal is flushed while the index can still be forced
+                    if (indexFile != null && freeSpaceMapFile != null) {
+                        return flushFreeSpaceJournal(vertx);
+                    }
+                    return Observable.just(null);
+                })
+                .onErrorResumeNext(throwable -> {
+                    logger.error("Handling error", throwable);
+                    return Observable.just(null);
+                })
                 .flatMap(aVoid -> {
                     if (metaFile != null) {
                         return metaFile.disableWrites(vertx)
@@ -521,6 +683,16 @@ public class VolumeV1 implements Volume {
                     logger.error("Handling error", throwable);
                     return Observable.just(null);
                 })
+                .flatMap(aVoid -> {
+                    if (freeSpaceMapFile != null) {
+                        return saveFreeSpaceMap(vertx);
+                    }
+                    return Observable.just(null);
+                })
+                .onErrorResumeNext(throwable -> {
+                    logger.error("Handling error", throwable);
+                    return Observable.just(null);
+                })
                 .doOnNext(aVoid -> Preconditions.checkState(volumeState.compareAndSet(Status.STOPPING, Status.STOPPED)))
                 .doOnNext(aVoid -> {
                     logger.info("Stopped volume " + basePath.toString());
@@ -533,7 +705,7 @@ public class VolumeV1 implements Volume {
                 .doOnNext(aVoid -> checkStarted())
                 .flatMap(aVoid ->
                         RangeLock.lockedObservable(vertx,
-                                () -> indexFile.tryReadLock(position, indexBlockSize),
+                                indexFile.readLock(position, indexBlockSize),
                                 () -> getIndexBlock0(vertx, position),
                                 LOCK_WAIT_TIMEOUT))
                 .filter(Optional::isPresent)
@@ -552,20 +724,22 @@ public class VolumeV1 implements Volume {
                         startPosition = dataPosition;
                     }
 
+                    long endPosition = LongMath.checkedAdd(dataPosition, dataLength);
+                    if (startPosition >= endPosition) {
+                        Preconditions.checkState(startPosition <= endPosition, "Offset must be <= %s", endPosition - dataPosition);
+                    }
+
+                    // never read past the end of the blob when an offset was supplied
+                    long availableLength = endPosition - startPosition;
                     long normalizedLength;
                     if (oLength.isPresent()) {
                         long length = oLength.get();
-                        normalizedLength = length <= -1 ? dataLength : Math.min(dataLength, length);
+                        normalizedLength = length <= -1 ? availableLength : Math.min(availableLength, length);
                     } else {
-                        normalizedLength = dataLength;
-                    }
-
-                    long endPosition = LongMath.checkedAdd(dataPosition, dataLength);
-                    if (startPosition >= endPosition) {
-                        Preconditions.checkState(startPosition <= endPosition, "Offset must be <= %s", endPosition - dataPosition);
+                        normalizedLength = availableLength;
                     }
                     ReadStreamBlob readStreamBlob =
-                            new ReadStreamBlob(volumeId, position, 0, normalizedLength) {
+                            new SendFileReadStreamBlob(volumeId, position, 0, normalizedLength) {
                                 @Override
                                 public Observable<Void> produce(BufferEndableWriteStream endableWriteStream) {
                                     return blobFile.produce(vertx, startPosition, normalizedLength, endableWriteStream)
@@ -578,6 +752,20 @@ public class VolumeV1 implements Volume {
                                                 }
                                             });
                                 }
+
+                                // the read lock stops the space from being reused by a new
+                                // blob while the socket is still reading it
+                                @Override
+                                public Observable<Void> sendFile(HttpServerResponse httpServerResponse) {
+                                    if (normalizedLength <= 0) {
+                                        httpServerResponse.end();
+                                        return Defer.aVoid();
+                                    }
+                                    return RangeLock.lockedObservable(vertx,
+                                            blobFile.readLock(startPosition, normalizedLength),
+                                            () -> blobFile.sendFile(startPosition, normalizedLength, httpServerResponse),
+                                            LOCK_WAIT_TIMEOUT);
+                                }
                             };
                     return Observable.just(Optional.of(readStreamBlob));
                 })
@@ -599,18 +787,128 @@ public class VolumeV1 implements Volume {
                     checkStarted();
                     Preconditions.checkArgument(length >= 0, "Length must be >= 0");
                 })
-                .flatMap(aVoid -> allocate(length))
+                .flatMap(aVoid -> allocateIndexBlock(vertx, length))
+                .map(allocatedPosition -> {
+                    final long dataPosition = allocatedPosition.getDataPosition();
+                    WriteStreamBlob writeStreamBlob = new WriteStreamBlob(volumeId, allocatedPosition.getHeaderPosition(), length) {
+
+                        @Override
+                        public Observable<Void> consume(ReadStream<Buffer> src) {
+                            return Defer.aVoid()
+                                    .flatMap(aVoid1 -> {
+                                        // space freed by the garbage collector may
+                                        // still be being sent by a sendFile read
+                                        if (length <= 0) {
+                                            return blobFile.consume(vertx, dataPosition, length, src);
+                                        }
+                                        return RangeLock.lockedObservable(vertx,
+                                                blobFile.writeLock(dataPosition, length),
+                                                () -> blobFile.consume(vertx, dataPosition, length, src),
+                                                LOCK_WAIT_TIMEOUT);
+                                    })
+                                    .flatMap(aVoid1 -> blobFile.force(vertx, false))
+                                    .onErrorResumeNext(throwable -> {
+                                        Optional<RejectedExecutionException> oException = ExceptionHelper.unwrapCause(RejectedExecutionException.class, throwable);
+                                        if (oException.isPresent()) {
+                                            return Observable.error(new VolumeToBusyExecutionException(oException.get()));
+                                        } else {
+                                            return Observable.error(throwable);
+                                        }
+                                    });
+                        }
+                    };
+                    return writeStreamBlob;
+                })
+                .onErrorResumeNext(throwable -> {
+                    Optional<RejectedExecutionException> oException = ExceptionHelper.unwrapCause(RejectedExecutionException.class, throwable);
+                    if (oException.isPresent()) {
+                        return Observable.error(new VolumeToBusyExecutionException(oException.get()));
+                    } else {
+                        return Observable.error(throwable);
+                    }
+                });
+    }
+
+    // Space for up to maxLength bytes is allocated up front and the index block
+    // records maxLength until the stream ends so that if the volume stops mid write
+    // the garbage collector reclaims the whole allocation. Once the stream ends the
+    // index block is rewritten with the number of bytes actually written and the
+    // unused tail of the allocation is freed. The data file is sparse so allocating
+    // space that's never written costs nothing on disk
+    @Override
+    public Observable<WriteStreamBlob> putChunkedDataStream(SfsVertx vertx, final long maxLength) {
+        return Defer.aVoid()
+                .doOnNext(aVoid -> {
+                    checkStarted();
+                    Preconditions.checkArgument(maxLength >= 0, "Max length must be >= 0");
+                })
+                .flatMap(aVoid -> allocateIndexBlock(vertx, maxLength))
+                .map(allocatedPosition -> {
+                    final long headerPosition = allocatedPosition.getHeaderPosition();
+                    final long dataPosition = allocatedPosition.getDataPosition();
+                    WriteStreamBlob writeStreamBlob = new WriteStreamBlob(volumeId, headerPosition, maxLength) {
+
+                        private final AtomicLong length = new AtomicLong(-1);
+
+                        @Override
+                        public long getLength() {
+                            long written = length.get();
+                            return written >= 0 ? written : super.getLength();
+                        }
+
+                        @Override
+                        public Observable<Void> consume(ReadStream<Buffer> src) {
+                            CountingReadStream countingReadStream = new CountingReadStream(src);
+                            return Defer.aVoid()
+                                    .flatMap(aVoid1 -> {
+                                        if (maxLength <= 0) {
+                                            return blobFile.consume(vertx, dataPosition, maxLength, countingReadStream);
+                                        }
+                                        return RangeLock.lockedObservable(vertx,
+                                                blobFile.writeLock(dataPosition, maxLength),
+                                                () -> blobFile.consume(vertx, dataPosition, maxLength, countingReadStream),
+                                                LOCK_WAIT_TIMEOUT);
+                                    })
+                                    .flatMap(aVoid1 -> blobFile.force(vertx, false))
+                                    .flatMap(aVoid1 -> truncateIndexBlock(vertx, headerPosition, dataPosition, maxLength, countingReadStream.count()))
+                                    .doOnNext(aVoid1 -> length.set(countingReadStream.count()))
+                                    .onErrorResumeNext(throwable -> {
+                                        Optional<RejectedExecutionException> oException = ExceptionHelper.unwrapCause(RejectedExecutionException.class, throwable);
+                                        if (oException.isPresent()) {
+                                            return Observable.error(new VolumeToBusyExecutionException(oException.get()));
+                                        } else {
+                                            return Observable.error(throwable);
+                                        }
+                                    });
+                        }
+                    };
+                    return writeStreamBlob;
+                })
+                .onErrorResumeNext(throwable -> {
+                    Optional<RejectedExecutionException> oException = ExceptionHelper.unwrapCause(RejectedExecutionException.class, throwable);
+                    if (oException.isPresent()) {
+                        return Observable.error(new VolumeToBusyExecutionException(oException.get()));
+                    } else {
+                        return Observable.error(throwable);
+                    }
+                });
+    }
+
+    // Allocates space for the index block and dataLength bytes of data and writes
+    // an unacknowledged index block for them
+    protected Observable<AllocatedPosition> allocateIndexBlock(SfsVertx vertx, final long dataLength) {
+        return allocate(vertx, dataLength)
                 .flatMap(allocatedPosition -> {
                     final long headerPosition = allocatedPosition.getHeaderPosition();
                     return RangeLock.lockedObservable(
                             vertx,
-                            () -> indexFile.tryWriteLock(headerPosition, indexBlockSize),
+                            indexFile.writeLock(headerPosition, indexBlockSize),
                             () -> Observable.defer(() -> {
                                 final long dataPosition = allocatedPosition.getDataPosition();
 
                                 XVolume.XIndexBlock xHeader =
                                         XVolume.XIndexBlock.newBuilder()
-                                                .setDataLength(length)
+                                                .setDataLength(dataLength)
                                                 .setAcknowledged(false)
                                                 .setUpdatedTs(System.currentTimeMillis())
                                                 .setDeleted(false)
@@ -618,8 +916,13 @@ public class VolumeV1 implements Volume {
                                                 .setDataPosition(dataPosition)
                                                 .build();
                                 return setIndexBlock0(vertx, headerPosition, xHeader)
+                                        .doOnTerminate(() -> {
+                                            synchronized (freeSpaceMapMutex) {
+                                                unwrittenAllocations.remove(headerPosition);
+                                            }
+                                        })
                                         .onErrorResumeNext(throwable -> {
-                                            return deallocateHeaderAndData(headerPosition, dataPosition, length)
+                                            return deallocateHeaderAndData(vertx, headerPosition, dataPosition, dataLength)
                                                     .map(aVoid1 -> {
                                                         if (throwable instanceof RuntimeException) {
                                                             throw (RuntimeException) throwable;
@@ -628,42 +931,46 @@ public class VolumeV1 implements Volume {
                                                         }
                                                     });
                                         })
-                                        .map(aVoid -> {
-                                            WriteStreamBlob writeStreamBlob = new WriteStreamBlob(volumeId, headerPosition, length) {
-
-                                                @Override
-                                                public Observable<Void> consume(ReadStream<Buffer> src) {
-                                                    return Defer.aVoid()
-                                                            .flatMap(aVoid1 -> blobFile.consume(vertx, dataPosition, length, src))
-                                                            .flatMap(aVoid1 -> blobFile.force(vertx, false))
-                                                            .onErrorResumeNext(throwable -> {
-                                                                Optional<RejectedExecutionException> oException = ExceptionHelper.unwrapCause(RejectedExecutionException.class, throwable);
-                                                                if (oException.isPresent()) {
-                                                                    return Observable.error(new VolumeToBusyExecutionException(oException.get()));
-                                                                } else {
-                                                                    return Observable.error(throwable);
-                                                                }
-                                                            });
-                                                }
-                                            };
-                                            return writeStreamBlob;
-                                        });
+                                        .map(aVoid -> allocatedPosition);
                             }),
                             LOCK_WAIT_TIMEOUT)
-                            .flatMap(writeStreamBlob ->
+                            .flatMap(allocated ->
                                     indexFile.force(vertx, false)
-                                            .map(aVoid1 -> writeStreamBlob));
-                })
-                .onErrorResumeNext(throwable -> {
-                    Optional<RejectedExecutionException> oException = ExceptionHelper.unwrapCause(RejectedExecutionException.class, throwable);
-                    if (oException.isPresent()) {
-                        return Observable.error(new VolumeToBusyExecutionException(oException.get()));
-                    } else {
-                        return Observable.error(throwable);
-                    }
+                                            .map(aVoid1 -> allocated));
                 });
     }
 
+    // Shrinks the data length recorded in an index block from allocatedLength to
+    // dataLength and frees the data blocks that are no longer needed
+    protected Observable<Void> truncateIndexBlock(SfsVertx vertx, final long headerPosition, final long dataPosition, final long allocatedLength, final long dataLength) {
+        return RangeLock.lockedObservable(
+                vertx,
+                indexFile.writeLock(headerPosition, indexBlockSize),
+                () -> getIndexBlock0(vertx, headerPosition)
+                        .map(oPositional -> {
+                            Preconditions.checkState(oPositional.isPresent(), "Index block %s not found", headerPosition);
+                            return oPositional.get().getValue();
+                        })
+                        .flatMap(header -> {
+                            XVolume.XIndexBlock updated = header.toBuilder()
+                                    .setDataLength(dataLength)
+                                    .setUpdatedTs(System.currentTimeMillis())
+                                    .build();
+                            return setIndexBlock0(vertx, headerPosition, updated);
+                        }),
+                LOCK_WAIT_TIMEOUT)
+                .flatMap(aVoid -> indexFile.force(vertx, false))
+                .flatMap(aVoid -> updateFreeSpaceMap(() -> {
+                    long used = Rounding.up(dataLength, dataBlockSize);
+                    long allocated = Rounding.up(allocatedLength, dataBlockSize);
+                    if (allocated > used) {
+                        dataFileAllocator.free(dataPosition + used, allocated - used);
+                        addFree(unjournaledTruncatedFrees, dataPosition + used, allocated - used);
+                    }
+                    return (Void) null;
+                }));
+    }
+
     @Override
     public Observable<Optional<HeaderBlob>> acknowledge(SfsVertx vertx, final long position) {
         return Defer.aVoid()
@@ -671,7 +978,7 @@ public class VolumeV1 implements Volume {
                 .flatMap(aVoid ->
                         RangeLock.lockedObservable(
                                 vertx,
-                                () -> indexFile.tryWriteLock(position, indexBlockSize),
+                                indexFile.writeLock(position, indexBlockSize),
                                 () -> Defer.aVoid()
                                         .flatMap(aVoid2 -> getIndexBlock0(vertx, position))
                                         .filter(Optional::isPresent)
@@ -710,7 +1017,7 @@ public class VolumeV1 implements Volume {
                 .doOnNext(aVoid -> checkStarted())
                 .flatMap(aVoid ->
                         RangeLock.lockedObservable(vertx,
-                                () -> indexFile.tryWriteLock(position, indexBlockSize),
+                                indexFile.writeLock(position, indexBlockSize),
                                 () -> getIndexBlock0(vertx, position)
                                         .filter(Optional::isPresent)
                                         .map(Optional::get)
@@ -750,7 +1057,24 @@ public class VolumeV1 implements Volume {
     }
 
     protected Observable<Void> setIndexBlock0(SfsVertx vertx, final long position, final XVolume.XIndexBlock header) {
-        return indexFile.setBlock(vertx, position, header);
+        if (isGcCandidate(header)) {
+            long expiry = gcExpiry(header);
+            // record the candidate before the block is written so that it can't be missing
+            // from a saved free space map or the journal if the write succeeds
+            return updateFreeSpaceMap(() -> {
+                putGcCandidate(position, expiry);
+                unjournaledGcCandidates.put(position, expiry);
+                return (Void) null;
+            })
+                    .flatMap(aVoid -> indexFile.setBlock(vertx, position, header));
+        } else {
+            return indexFile.setBlock(vertx, position, header)
+                    .doOnNext(aVoid -> {
+                        synchronized (freeSpaceMapMutex) {
+                            removeGcCandidate(position);
+                        }
+                    });
+        }
     }
 
     protected void checkAligned(long value, int blockSize) {
@@ -774,58 +1098,17 @@ public class VolumeV1 implements Volume {
                             () -> gcState.compareAndSet(GcState.STOPPED, GcState.EXECUTING),
                             locked -> {
                                 if (Boolean.TRUE.equals(locked)) {
+                                    long now = System.currentTimeMillis();
+                                    List<Long> positions = expiredGcCandidates(now, GC_BUDGET);
                                     if (logger.isDebugEnabled()) {
-                                        logger.debug("Started Garbage Collection " + basePath.toString());
+                                        logger.debug("Started Garbage Collection " + basePath.toString() + ", " + positions.size() + " expired blocks");
                                     }
-                                    return scanIndex(vertx, IndexBlockReader.LockType.READ, checksummedPositional -> {
+                                    return RxHelper.iterate(vertx, positions, headerPosition -> {
                                         checkStarted();
-                                        XVolume.XIndexBlock xHeader = checksummedPositional.getValue();
-                                        boolean shouldDeallocate = false;
-                                        if (xHeader.getUpdatedTs() > 0) {
-                                            long age = System.currentTimeMillis() - xHeader.getUpdatedTs();
-                                            if (age >= MAX_GC_AGE
-                                                    && !xHeader.getGarbageCollected()
-                                                    && (xHeader.getDeleted()
-                                                    || !xHeader.getAcknowledged())) {
-                                                shouldDeallocate = true;
-                                            }
-                                        }
-                                        if (shouldDeallocate
-                                                && indexFileAllocator.getNumberOfFreeRanges() < MAX_FREE_RANGES
-                                                && dataFileAllocator.getNumberOfFreeRanges() < MAX_FREE_RANGES) {
-
-                                            final long headerPosition = checksummedPositional.getPosition();
-                                            long dataPosition = xHeader.getDataPosition();
-                                            long dataLength = xHeader.getDataLength();
-
-
-                                            if (gcLogger.isDebugEnabled()) {
-                                                gcLogger.debug(String.format("GC Recycle Blocks {%s/%d/%d %d/%d} = {%s}", BaseEncoding.base64().encode(checksummedPositional.getActualChecksum()), headerPosition, indexBlockSize, dataPosition, dataLength, xHeader));
-                                            }
-
-                                            return RangeLock.lockedObservable(vertx,
-                                                    () -> indexFile.tryWriteLock(headerPosition, indexBlockSize),
-                                                    () -> Defer.aVoid()
-                                                            .flatMap(aVoid1 -> getIndexBlock0(vertx, headerPosition))
-                                                            .map(Optional::get)
-                                                            .filter(optimisticLockChecksummedPositional -> Arrays.equals(checksummedPositional.getActualChecksum(), optimisticLockChecksummedPositional.getActualChecksum()))
-                                                            .flatMap(optimisticLockChecksummedPositional -> {
-                                                                XVolume.XIndexBlock updated =
-                                                                        xHeader.toBuilder()
-                                                                                .setUpdatedTs(System.currentTimeMillis())
-                                                                                .setGarbageCollected(true)
-                                                                                .setDeleted(true)
-                                                                                .build();
-                                                                return setIndexBlock0(vertx, headerPosition, updated);
-                                                            })
-                                                            .flatMap(aVoid1 -> deallocateHeaderAndData(headerPosition, dataPosition, dataLength))
-                                                            .singleOrDefault(null),
-                                                    LOCK_WAIT_TIMEOUT);
-                                        } else {
-                                            return Observable.just(null);
-                                        }
-                                    }).flatMap(aVoid1 ->
-                                            indexFile.force(vertx, false)
+                                        return collectGarbage(vertx, headerPosition, now)
+                                                .map(aVoid1 -> true);
+                                    }).flatMap(_continue ->
+                                            flushFreeSpaceJournal(vertx)
                                     ).doOnNext(aVoid1 -> {
                                         if (logger.isDebugEnabled()) {
                                             logger.debug("Finished Garbage Collection " + basePath.toString());
@@ -848,27 +1131,419 @@ public class VolumeV1 implements Volume {
     }
 
 
-    protected Observable<AllocatedPosition> allocate(final long dataLength) {
-        return Observable.defer(() -> {
+    protected Observable<Void> collectGarbage(SfsVertx vertx, long headerPosition, long now) {
+        return RangeLock.lockedObservable(vertx,
+                indexFile.writeLock(headerPosition, indexBlockSize),
+                () -> getIndexBlock0(vertx, headerPosition)
+                        .flatMap(oChecksummedPositional -> {
+                            if (!oChecksummedPositional.isPresent()
+                                    || !isGcCandidate(oChecksummedPositional.get().getValue())) {
+                                synchronized (freeSpaceMapMutex) {
+                                    removeGcCandidate(headerPosition);
+                                    if (oChecksummedPositional.isPresent()
+                                            && oChecksummedPositional.get().getValue().getGarbageCollected()) {
+                                        freeIfStillAllocated(headerPosition, oChecksummedPositional.get().getValue());
+                                    }
+                                }
+                                return Defer.aVoid();
+                            }
+                            ChecksummedPositional<XVolume.XIndexBlock> checksummedPositional = oChecksummedPositional.get();
+                            XVolume.XIndexBlock xHeader = checksummedPositional.getValue();
+                            long expiry = gcExpiry(xHeader);
+                            if (expiry > now) {
+                                // not expired yet or updated since it became a candidate. Collecting
+                                // it later doesn't need to invalidate a saved free space map
+                                synchronized (freeSpaceMapMutex) {
+                                    putGcCandidate(headerPosition, expiry);
+                                }
+                                return Defer.aVoid();
+                            }
+
+                            long dataPosition = xHeader.getDataPosition();
+                            long dataLength = xHeader.getDataLength();
+
+                            if (gcLogger.isDebugEnabled()) {
+                                gcLogger.debug(String.format("GC Recycle Blocks {%s/%d/%d %d/%d} = {%s}", BaseEncoding.base64().encode(checksummedPositional.getActualChecksum()), headerPosition, indexBlockSize, dataPosition, dataLength, xHeader));
+                            }
+
+                            XVolume.XIndexBlock updated =
+                                    xHeader.toBuilder()
+                                            .setUpdatedTs(System.currentTimeMillis())
+                                            .setGarbageCollected(true)
+                                            .setDeleted(true)
+                                            .build();
+                            return setIndexBlock0(vertx, headerPosition, updated)
+                                    .flatMap(aVoid -> deallocateHeaderAndData(vertx, headerPosition, dataPosition, dataLength))
+                                    .doOnNext(aVoid -> {
+                                        gcReclaimedCount.incrementAndGet();
+                                        gcReclaimedBytes.addAndGet(dataLength);
+                                    });
+                        }),
+                LOCK_WAIT_TIMEOUT);
+    }
+
+    // blocks that have been deleted or were never acknowledged become
+    // garbage MAX_GC_AGE after they were last updated
+    protected static boolean isGcCandidate(XVolume.XIndexBlock header) {
+        return header.getUpdatedTs() > 0
+                && !header.getGarbageCollected()
+                && (header.getDeleted() || !header.getAcknowledged());
+    }
+
+    protected static long gcExpiry(XVolume.XIndexBlock header) {
+        return LongMath.checkedAdd(header.getUpdatedTs(), MAX_GC_AGE);
+    }
+
+    private void putGcCandidate(long position, long expiry) {
+        removeGcCandidate(position);
+        gcCandidates.put(position, expiry);
+        long interval = Rounding.down(expiry, (int) GC_INTERVAL);
+        Set<Long> positions = gcCandidatesByExpiry.get(interval);
+        if (positions == null) {
+            positions = new HashSet<>();
+            gcCandidatesByExpiry.put(interval, positions);
+        }
+        positions.add(position);
+    }
+
+    private void removeGcCandidate(long position) {
+        Long expiry = gcCandidates.remove(position);
+        if (expiry != null) {
+            long interval = Rounding.down(expiry, (int) GC_INTERVAL);
+            Set<Long> positions = gcCandidatesByExpiry.get(interval);
+            positions.remove(position);
+            if (positions.isEmpty()) {
+                gcCandidatesByExpiry.remove(interval);
+            }
+        }
+    }
+
+    private void clearGcCandidates() {
+        gcCandidates.clear();
+        gcCandidatesByExpiry.clear();
+    }
+
+    protected List<Long> expiredGcCandidates(long now, int limit) {
+        List<Long> expired = new ArrayList<>();
+        synchronized (freeSpaceMapMutex) {
+            for (Set<Long> positions : gcCandidatesByExpiry.headMap(now, true).values()) {
+                for (Long position : positions) {
+                    if (expired.size() >= limit) {
+                        return expired;
+                    }
+                    expired.add(position);
+                }
+            }
+        }
+        return expired;
+    }
+
+    protected Observable<AllocatedPosition> allocate(SfsVertx vertx, final long dataLength) {
+        return updateFreeSpaceMap(() -> {
             long indexPosition = indexFileAllocator.allocNextAvailable(indexBlockSize);
             long dataPosition = dataFileAllocator.allocNextAvailable(dataLength);
             AllocatedPosition allocatedPosition = new AllocatedPosition()
                     .setHeaderPosition(indexPosition)
-                    .setDataPosition(dataPosition);
-            return Observable.just(allocatedPosition);
+                    .setDataPosition(dataPosition)
+                    .setDataLength(dataLength);
+            unwrittenAllocations.put(indexPosition, allocatedPosition);
+            return allocatedPosition;
         });
     }
 
-    protected Observable<Void> deallocateHeaderAndData(final long headerPosition, final long dataPosition, final long dataLength) {
-        return Observable.defer(() -> {
+    // the space is returned to the allocators by the next journal flush
+    protected Observable<Void> deallocateHeaderAndData(SfsVertx vertx, final long headerPosition, final long dataPosition, final long dataLength) {
+        return updateFreeSpaceMap(() -> {
             checkAligned(dataPosition, dataBlockSize);
             checkAligned(headerPosition, indexBlockSize);
-            dataFileAllocator.free(dataPosition, dataLength);
+            addFree(unjournaledDataFrees, dataPosition, Rounding.up(dataLength, dataBlockSize));
+            addFree(unjournaledIndexFrees, headerPosition, indexBlockSize);
+            return (Void) null;
+        });
+    }
+
+    protected <T> Observable<T> updateFreeSpaceMap(Func0<T> update) {
+        return Observable.defer(() -> {
+            synchronized (freeSpaceMapMutex) {
+                freeSpaceMapSaved = false;
+                return Observable.just(update.call());
+            }
+        });
+    }
+
+    private static void addFree(List<Range> frees, long position, long length) {
+        if (length > 0) {
+            frees.add(new Range(position, LongMath.checkedAdd(position, length) - 1));
+        }
+    }
+
+    // A block that was collected before a crash is still allocated if the crash lost the
+    // space it freed before it was journaled. It's only free if it's allocated and not
+    // waiting to be written, since anything that reused the space would have replaced
+    // the collected block. Must be called holding freeSpaceMapMutex
+    private void freeIfStillAllocated(long headerPosition, XVolume.XIndexBlock header) {
+        if (unwrittenAllocations.containsKey(headerPosition)) {
+            return;
+        }
+        if (indexFileAllocator.alloc(headerPosition, indexBlockSize) == headerPosition) {
             indexFileAllocator.free(headerPosition, indexBlockSize);
-            return Observable.just(null);
+            return;
+        }
+        Range indexRange = new Range(headerPosition, headerPosition + indexBlockSize - 1);
+        if (unjournaledIndexFrees.contains(indexRange)) {
+            return;
+        }
+        unjournaledIndexFrees.add(indexRange);
+        addFree(unjournaledDataFrees, header.getDataPosition(), Rounding.up(header.getDataLength(), dataBlockSize));
+        freeSpaceMapSaved = false;
+    }
+
+    // Writes the changes made since the last flush to the free space journal and
+    // only then returns the freed space to the allocators. The index is forced first
+    // so that the journal never has space as free while the index blocks that freed
+    // it could still be lost. Called by the garbage collector, before the map is
+    // saved and when the volume is closed so it's never on the write path
+    protected Observable<Void> flushFreeSpaceJournal(SfsVertx vertx) {
+        Context context = vertx.getOrCreateContext();
+        return indexFile.force(vertx, false)
+                .flatMap(aVoid -> {
+                    List<Range> indexFrees;
+                    List<Range> dataFrees;
+                    List<Range> truncatedFrees;
+                    Map<Long, Long> journaledGcCandidates;
+                    long snapshots;
+                    synchronized (freeSpaceMapMutex) {
+                        if (unjournaledIndexFrees.isEmpty()
+                                && unjournaledDataFrees.isEmpty()
+                                && unjournaledTruncatedFrees.isEmpty()
+                                && unjournaledGcCandidates.isEmpty()) {
+                            return Defer.aVoid();
+                        }
+                        indexFrees = unjournaledIndexFrees;
+                        dataFrees = unjournaledDataFrees;
+                        truncatedFrees = unjournaledTruncatedFrees;
+                        journaledGcCandidates = unjournaledGcCandidates;
+                        unjournaledIndexFrees = new ArrayList<>();
+                        unjournaledDataFrees = new ArrayList<>();
+                        unjournaledTruncatedFrees = new ArrayList<>();
+                        unjournaledGcCandidates = new HashMap<>();
+                        snapshots = freeSpaceMapSnapshots;
+                    }
+                    return RxHelper.executeBlocking(context, vertx.getBackgroundPool(), () -> {
+                        synchronized (freeSpaceMapFile) {
+                            List<Range> journaledDataFrees = new ArrayList<>(dataFrees);
+                            synchronized (freeSpaceMapMutex) {
+                                // a map saved since they were taken already has them
+                                if (snapshots == freeSpaceMapSnapshots) {
+                                    journaledDataFrees.addAll(truncatedFrees);
+                                }
+                            }
+                            try {
+                                freeSpaceMapFile.appendJournal(freeSpaceMapGeneration, indexFrees, journaledDataFrees, journaledGcCandidates);
+                            } catch (IOException e) {
+                                throw new RuntimeException(e);
+                            }
+                            synchronized (freeSpaceMapMutex) {
+                                for (Range range : indexFrees) {
+                                    indexFileAllocator.free(range.getFirst(), range.getBlockCount());
+                                }
+                                for (Range range : dataFrees) {
+                                    dataFileAllocator.free(range.getFirst(), range.getBlockCount());
+                                }
+                                freeSpaceMapSaved = false;
+                            }
+                            return (Void) null;
+                        }
+                    })
+                            .onErrorResumeNext(throwable -> {
+                                // keep the changes so that the next flush journals them
+                                synchronized (freeSpaceMapMutex) {
+                                    unjournaledIndexFrees.addAll(indexFrees);
+                                    unjournaledDataFrees.addAll(dataFrees);
+                                    if (snapshots == freeSpaceMapSnapshots) {
+                                        unjournaledTruncatedFrees.addAll(truncatedFrees);
+                                    }
+                                    for (Map.Entry<Long, Long> entry : journaledGcCandidates.entrySet()) {
+                                        unjournaledGcCandidates.putIfAbsent(entry.getKey(), entry.getValue());
+                                    }
+                                }
+                                return Observable.error(throwable);
+                            });
+                });
+    }
+
+    // restores the allocators from the saved map and the journal written since it was saved
+    protected Observable<Boolean> loadFreeSpaceMap(SfsVertx vertx) {
+        Context context = vertx.getOrCreateContext();
+        return RxHelper.executeBlocking(context, vertx.getBackgroundPool(), () -> {
+            synchronized (freeSpaceMapFile) {
+                Optional<Long> oGeneration;
+                int replayed = 0;
+                Map<Long, Long> savedGcCandidates = new HashMap<>();
+                try {
+                    oGeneration = freeSpaceMapFile.load(volumeId, Files.size(indexFilePath), indexFileAllocator, dataFileAllocator, savedGcCandidates);
+                    if (oGeneration.isPresent()) {
+                        replayed = freeSpaceMapFile.replayJournal(oGeneration.get(), indexFileAllocator, dataFileAllocator, savedGcCandidates);
+                        logger.info("Replayed " + replayed + " free space journal entries");
+                    }
+                } catch (Throwable e) {
+                    logger.warn("Failed to load free space map " + freeSpaceMapPath, e);
+                    oGeneration = Optional.absent();
+                }
+                if (!oGeneration.isPresent()) {
+                    return false;
+                }
+                freeSpaceMapGeneration = oGeneration.get();
+                synchronized (freeSpaceMapMutex) {
+                    clearGcCandidates();
+                    for (Map.Entry<Long, Long> entry : savedGcCandidates.entrySet()) {
+                        putGcCandidate(entry.getKey(), entry.getValue());
+                    }
+                    freeSpaceMapSaved = replayed <= 0;
+                }
+                return true;
+            }
         });
     }
 
+    // Blocks allocated after the map was saved, and before a crash, can only be in space
+    // that's free in the restored allocators so only that part of the index is read.
+    // Returns false if a block disagrees with the allocators
+    protected Observable<Boolean> scanFreeIndexRanges(SfsVertx vertx) {
+        return indexFile.size(vertx)
+                .flatMap(fileSize -> {
+                    long indexEnd = Rounding.up(fileSize, indexBlockSize);
+                    List<Range> batches = new ArrayList<>();
+                    for (Range range : indexFileAllocator.copyFreeRanges()) {
+                        long end = Math.min(range.getLast() + 1, indexEnd);
+                        for (long position = range.getFirst(); position < end; position += (long) INDEX_SCAN_BATCH_SIZE * indexBlockSize) {
+                            batches.add(new Range(position, Math.min(end, position + (long) INDEX_SCAN_BATCH_SIZE * indexBlockSize) - 1));
+                        }
+                    }
+                    return RxHelper.iterate(vertx, batches, batch ->
+                            indexFile.getBlocks(vertx, batch.getFirst(), (int) (batch.getBlockCount() / indexBlockSize))
+                                    .map(checksummedPositionals -> {
+                                        synchronized (freeSpaceMapMutex) {
+                                            for (ChecksummedPositional<XVolume.XIndexBlock> checksummedPositional : checksummedPositionals) {
+                                                XVolume.XIndexBlock header = checksummedPositional.getValue();
+                                                if (header.getGarbageCollected()) {
+                                                    continue;
+                                                }
+                                                long headerPosition = checksummedPositional.getPosition();
+                                                if (indexFileAllocator.alloc(headerPosition, indexBlockSize) != headerPosition
+                                                        || (header.getDataLength() > 0
+                                                        && dataFileAllocator.alloc(header.getDataPosition(), header.getDataLength()) != header.getDataPosition())) {
+                                                    logger.warn("Index block " + headerPosition + " overlaps space the free space map has as allocated");
+                                                    return false;
+                                                }
+                                                if (isGcCandidate(header)) {
+                                                    putGcCandidate(headerPosition, gcExpiry(header));
+                                                }
+                                                freeSpaceMapSaved = false;
+                                            }
+                                        }
+                                        return true;
+                                    }))
+                            .map(consistent -> !Boolean.FALSE.equals(consistent));
+                });
+    }
+
+    // starts again from empty allocators so that the index can be scanned
+    protected Observable<Void> discardFreeSpaceMap(SfsVertx vertx) {
+        Context context = vertx.getOrCreateContext();
+        return RxHelper.executeBlocking(context, vertx.getBackgroundPool(), () -> {
+            synchronized (freeSpaceMapFile) {
+                try {
+                    freeSpaceMapFile.delete();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                freeSpaceMapGeneration = 0;
+                synchronized (freeSpaceMapMutex) {
+                    indexFileAllocator = allocatorType.create(indexBlockSize);
+                    dataFileAllocator = allocatorType.create(dataBlockSize);
+                    clearGcCandidates();
+                    unjournaledIndexFrees.clear();
+                    unjournaledDataFrees.clear();
+                    unjournaledTruncatedFrees.clear();
+                    unjournaledGcCandidates.clear();
+                    freeSpaceMapSaved = false;
+                }
+                return (Void) null;
+            }
+        });
+    }
+
+    protected Observable<Void> saveFreeSpaceMap(SfsVertx vertx) {
+        Context context = vertx.getOrCreateContext();
+        return RxHelper.executeBlocking(context, vertx.getBackgroundPool(), () -> {
+            synchronized (freeSpaceMapFile) {
+                List<Range> indexFreeRanges;
+                List<Range> dataFreeRanges;
+                Map<Long, Long> savedGcCandidates;
+                synchronized (freeSpaceMapMutex) {
+                    if (freeSpaceMapSaved) {
+                        // nothing has changed since it was last saved
+                        return (Void) null;
+                    }
+                    indexFreeRanges = indexFileAllocator.copyFreeRanges();
+                    dataFreeRanges = dataFileAllocator.copyFreeRanges();
+                    // space that's waiting to be journaled, and allocations that haven't been written,
+                    // are saved as free since the scan on open finds any block that's still there
+                    if (!unwrittenAllocations.isEmpty() || !unjournaledIndexFrees.isEmpty()) {
+                        List<Range> indexFrees = new ArrayList<>(unjournaledIndexFrees);
+                        for (AllocatedPosition allocatedPosition : unwrittenAllocations.values()) {
+                            addFree(indexFrees, allocatedPosition.getHeaderPosition(), indexBlockSize);
+                        }
+                        indexFreeRanges = withFree(indexFreeRanges, indexBlockSize, indexFrees);
+                    }
+                    if (!unwrittenAllocations.isEmpty() || !unjournaledDataFrees.isEmpty()) {
+                        List<Range> dataFrees = new ArrayList<>(unjournaledDataFrees);
+                        for (AllocatedPosition allocatedPosition : unwrittenAllocations.values()) {
+                            addFree(dataFrees, allocatedPosition.getDataPosition(), Rounding.up(allocatedPosition.getDataLength(), dataBlockSize));
+                        }
+                        dataFreeRanges = withFree(dataFreeRanges, dataBlockSize, dataFrees);
+                    }
+                    savedGcCandidates = new HashMap<>(gcCandidates);
+                    // already free in the saved map so journaling them for its generation
+                    // could free space that's been reused before the map was saved
+                    unjournaledTruncatedFrees.clear();
+                    freeSpaceMapSnapshots++;
+                    // anything that changes from here on makes it unsaved again
+                    freeSpaceMapSaved = true;
+                }
+                long generation = freeSpaceMapGeneration + 1;
+                try {
+                    freeSpaceMapFile.save(volumeId, generation, Files.size(indexFilePath), indexBlockSize, dataBlockSize, indexFreeRanges, dataFreeRanges, savedGcCandidates);
+                } catch (IOException e) {
+                    synchronized (freeSpaceMapMutex) {
+                        freeSpaceMapSaved = false;
+                    }
+                    throw new RuntimeException(e);
+                }
+                freeSpaceMapGeneration = generation;
+                try {
+                    freeSpaceMapFile.resetJournal();
+                } catch (IOException e) {
+                    // the entries are ignored since they're for an older generation
+                    logger.warn("Failed to reset free space journal " + freeSpaceMapFile.getJournalPath(), e);
+                }
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Saved free space map " + freeSpaceMapPath + " generation " + generation);
+                }
+                return (Void) null;
+            }
+        });
+    }
+
+    private List<Range> withFree(List<Range> freeRanges, int blockSize, List<Range> frees) {
+        Allocator allocator = allocatorType.create(blockSize);
+        allocator.setFreeRanges(freeRanges);
+        for (Range range : frees) {
+            allocator.free(range.getFirst(), range.getBlockCount());
+        }
+        return allocator.copyFreeRanges();
+    }
 
     protected Observable<Void> scanIndex(SfsVertx vertx, IndexBlockReader.LockType lockType, Func1<ChecksummedPositional<XVolume.XIndexBlock>, Observable<Void>> transformer) {
         IndexScanner indexScanner = new IndexScanner(indexFile, INDEX_SCAN_BATCH_SIZE, LOCK_WAIT_TIMEOUT);
@@ -879,6 +1554,7 @@ public class VolumeV1 implements Volume {
 
         private long headerPosition;
         private long dataPosition;
+        private long dataLength;
 
         public AllocatedPosition() {
         }
@@ -900,6 +1576,15 @@ public class VolumeV1 implements Volume {
         public long getDataPosition() {
             return dataPosition;
         }
+
+        public AllocatedPosition setDataLength(long dataLength) {
+            this.dataLength = dataLength;
+            return this;
+        }
+
+        public long getDataLength() {
+            return dataLength;
+        }
     }
 
     protected void resumeGc() {
@@ -17,18 +17,32 @@
 package org.sfs.io;
 
 
-import io.vertx.core.AsyncResult;
+import io.netty.buffer.ByteBuf;
 import io.vertx.core.Context;
-import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.logging.Logger;
 
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousFileChannel;
-
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.netty.buffer.Unpooled.buffer;
+
+// Each read fills the Buffer that's handed to the data handler so the bytes
+// are never copied on their way out. Buffers can't be pooled since consumers
+// are free to hold on to them and Vert.x never releases them.
+//
+// The read size doubles, up to maxBufferSize, for as long as the consumer keeps
+// up and halves when it pauses. The next read is started before a Buffer is
+// handed to the consumer and at most one read is held while the stream is paused
 public class AsyncFileReaderImpl implements AsyncFileReader {
 
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 1024 * 1024;
+    private static final AtomicLong READ_COUNT = new AtomicLong(0);
+    private static final AtomicLong READ_BYTES = new AtomicLong(0);
+    private static final AtomicLong ALLOCATED_BYTES = new AtomicLong(0);
     private final Logger log;
 
     private final AsynchronousFileChannel ch;
@@ -40,13 +54,23 @@ public class AsyncFileReaderImpl implements AsyncFileReader {
     private Handler<Void> endHandler;
     private long readPos;
     private boolean readInProgress;
+    private Buffer readAhead;
+    private boolean eof;
     private final int bufferSize;
+    private final int maxBufferSize;
+    private int readSize;
     private final long startPosition;
     private long bytesRemaining;
 
     public AsyncFileReaderImpl(Context context, long startPosition, int bufferSize, long length, AsynchronousFileChannel dataFile, Logger log) {
+        this(context, startPosition, bufferSize, Math.max(bufferSize, DEFAULT_MAX_BUFFER_SIZE), length, dataFile, log);
+    }
+
+    public AsyncFileReaderImpl(Context context, long startPosition, int bufferSize, int maxBufferSize, long length, AsynchronousFileChannel dataFile, Logger log) {
         this.log = log;
         this.bufferSize = bufferSize;
+        this.maxBufferSize = Math.max(bufferSize, maxBufferSize);
+        this.readSize = bufferSize;
         this.readPos = startPosition;
         this.bytesRemaining = length;
         this.startPosition = startPosition;
@@ -54,6 +78,17 @@ public class AsyncFileReaderImpl implements AsyncFileReader {
         this.context = context;
     }
 
+    public static long getReadCount() {
+        return READ_COUNT.get();
+    }
+
+    public static long getReadBytes() {
+        return READ_BYTES.get();
+    }
+
+    public static long getAllocatedBytes() {
+        return ALLOCATED_BYTES.get();
+    }
 
     @Override
     public long startPosition() {
@@ -84,51 +119,59 @@ public class AsyncFileReaderImpl implements AsyncFileReader {
         }
     }
 
-    private AsyncFileReaderImpl read(Buffer buffer, int offset, long position, int length, Handler<AsyncResult<Buffer>> handler) {
+    private void doRead() {
         try {
-            ByteBuffer bb = ByteBuffer.allocate(length);
-            doRead(buffer, offset, bb, position, handler);
-            return this;
+            if (readInProgress || readAhead != null || eof || dataHandler == null) {
+                return;
+            }
+            if (bytesRemaining <= 0) {
+                eof = true;
+                return;
+            }
+            readInProgress = true;
+            int countOfBytesToRead = (int) Math.min(bytesRemaining, readSize);
+            ByteBuf byteBuf = buffer(countOfBytesToRead, countOfBytesToRead);
+            ALLOCATED_BYTES.addAndGet(countOfBytesToRead);
+            ByteBuffer bb = byteBuf.nioBuffer(0, countOfBytesToRead);
+            doRead(bb, readPos, (bytesRead, reachedEof) -> {
+                readInProgress = false;
+                READ_COUNT.incrementAndGet();
+                READ_BYTES.addAndGet(bytesRead);
+                bytesRemaining -= bytesRead;
+                readPos += bytesRead;
+                if (reachedEof) {
+                    eof = true;
+                }
+                if (bytesRead > 0) {
+                    readAhead = Buffer.buffer(byteBuf.writerIndex(bytesRead));
+                }
+                // grow while the consumer keeps up
+                if (!paused && readSize < maxBufferSize) {
+                    readSize = Math.min(maxBufferSize, readSize * 2);
+                }
+                pump();
+            });
         } catch (Throwable e) {
+            readInProgress = false;
             handleException(e);
-            return this;
         }
     }
 
-    private void doRead() {
+    private void pump() {
         try {
-            if (!readInProgress) {
-                readInProgress = true;
-                int countOfBytesToRead = (int) Math.min(bytesRemaining, bufferSize);
-                final Buffer buff = Buffer.buffer(countOfBytesToRead);
-
-                Handler<AsyncResult<Buffer>> handler = ar -> {
-                    readInProgress = false;
-                    try {
-                        if (ar.succeeded()) {
-
-                            Buffer buffer = ar.result();
-                            int bufferLength = buffer.length();
-                            bytesRemaining -= bufferLength;
-
-                            if (bufferLength <= 0) {
-                                // Empty buffer represents end of file
-                                handleEnd();
-                            } else {
-                                readPos += bufferLength;
-                                handleData(buffer);
-                                if (!paused && dataHandler != null) {
-                                    doRead();
-                                }
-                            }
-                        } else {
-                            handleException(ar.cause());
-                        }
-                    } catch (Throwable e) {
-                        handleException(e);
-                    }
-                };
-                read(buff, 0, readPos, countOfBytesToRead, handler);
+            if (readAhead != null) {
+                if (paused || dataHandler == null) {
+                    return;
+                }
+                Buffer buffer = readAhead;
+                readAhead = null;
+                doRead();
+                handleData(buffer);
+            } else {
+                doRead();
+            }
+            if (eof && readAhead == null && !readInProgress && !paused && dataHandler != null) {
+                handleEnd();
             }
         } catch (Throwable e) {
             handleException(e);
@@ -138,7 +181,7 @@ public class AsyncFileReaderImpl implements AsyncFileReader {
     @Override
     public AsyncFileReaderImpl handler(Handler<Buffer> handler) {
         this.dataHandler = handler;
-        doRead();
+        pump();
         return this;
     }
 
@@ -150,14 +193,18 @@ public class AsyncFileReaderImpl implements AsyncFileReader {
 
     @Override
     public AsyncFileReaderImpl pause() {
-        paused = true;
+        if (!paused) {
+            paused = true;
+            // bigger reads don't help a consumer that can't keep up
+            readSize = Math.max(bufferSize, readSize / 2);
+        }
         return this;
     }
 
     @Override
     public AsyncFileReaderImpl resume() {
         paused = false;
-        doRead();
+        pump();
         return this;
     }
 
@@ -175,17 +222,24 @@ public class AsyncFileReaderImpl implements AsyncFileReader {
         }
     }
 
-    private void doRead(final Buffer writeBuff, final int offset, final ByteBuffer buff, final long position, final Handler<AsyncResult<Buffer>> handler) {
+    private interface ReadHandler {
+
+        void handle(int bytesRead, boolean eof);
+    }
 
-        ch.read(buff, position, null, new java.nio.channels.CompletionHandler<Integer, Object>() {
+    private void doRead(final ByteBuffer buff, final long position, final ReadHandler handler) {
+
+        ch.read(buff, position, null, new CompletionHandler<Integer, Object>() {
 
             long pos = position;
 
             private void done(boolean eof) {
                 context.runOnContext(event -> {
-                    buff.flip();
-                    writeBuff.setBytes(offset, buff);
-                    Future.succeededFuture(writeBuff).setHandler(handler);
+                    try {
+                        handler.handle(buff.position(), eof);
+                    } catch (Throwable e) {
+                        handleException(e);
+                    }
                 });
             }
 
@@ -197,7 +251,7 @@ public class AsyncFileReaderImpl implements AsyncFileReader {
                     // partial read
                     pos += bytesRead;
                     // resubmit
-                    doRead(writeBuff, offset, buff, pos, handler);
+                    ch.read(buff, pos, null, this);
                 } else {
                     // It's been fully written
                     done(false);
@@ -205,7 +259,10 @@ public class AsyncFileReaderImpl implements AsyncFileReader {
             }
 
             public void failed(final Throwable t, Object attachment) {
-                context.runOnContext(event -> Future.<Buffer>failedFuture(t).setHandler(handler));
+                context.runOnContext(event -> {
+                    readInProgress = false;
+                    handleException(t);
+                });
             }
         });
     }
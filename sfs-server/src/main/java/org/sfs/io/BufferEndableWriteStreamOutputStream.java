@@ -23,7 +23,7 @@ import java.io.OutputStream;
 
 import static io.vertx.core.buffer.Buffer.buffer;
 
-public class BufferEndableWriteStreamOutputStream extends OutputStream {
+public class BufferEndableWriteStreamOutputStream extends OutputStream implements BufferWritable {
 
     private final BufferEndableWriteStream delegate;
 
@@ -41,6 +41,11 @@ public class BufferEndableWriteStreamOutputStream extends OutputStream {
 
     }
 
+    @Override
+    public void write(Buffer buffer) throws IOException {
+        delegate.write(buffer);
+    }
+
     @Override
     public void write(byte[] b) throws IOException {
         delegate.write(buffer(b));
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.io;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.io.IOException;
+
+// Implemented by OutputStreams that can also be handed whole Buffers so that
+// streams which consume and produce Buffers don't need to copy them into
+// and out of byte arrays. The caller must not modify a Buffer once it's written
+public interface BufferWritable {
+
+    void write(Buffer buffer) throws IOException;
+}
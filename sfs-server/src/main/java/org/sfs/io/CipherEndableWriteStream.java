@@ -21,8 +21,10 @@ import io.vertx.core.buffer.Buffer;
 import io.vertx.core.logging.Logger;
 import org.bouncycastle.crypto.io.CipherOutputStream;
 import org.bouncycastle.crypto.modes.AEADBlockCipher;
+import rx.functions.Func1;
 
 import java.io.IOException;
+import java.io.OutputStream;
 
 import static com.google.common.base.Preconditions.checkState;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
@@ -32,14 +34,18 @@ public class CipherEndableWriteStream implements BufferEndableWriteStream {
     private static final Logger LOGGER = getLogger(CipherEndableWriteStream.class);
     private final BufferEndableWriteStream delegate;
     private Handler<Throwable> delegateExceptionHandler;
-    private CipherOutputStream outputStream;
+    private OutputStream outputStream;
     private BufferEndableWriteStreamOutputStream bufferEndableWriteStreamOutputStream;
     private boolean ended = false;
 
     public CipherEndableWriteStream(BufferEndableWriteStream delegate, AEADBlockCipher cipher) {
+        this(delegate, outputStream -> new CipherOutputStream(outputStream, cipher));
+    }
+
+    public CipherEndableWriteStream(BufferEndableWriteStream delegate, Func1<OutputStream, OutputStream> cipherOutputStreamFactory) {
         this.delegate = delegate;
         this.bufferEndableWriteStreamOutputStream = new BufferEndableWriteStreamOutputStream(delegate);
-        this.outputStream = new CipherOutputStream(bufferEndableWriteStreamOutputStream, cipher);
+        this.outputStream = cipherOutputStreamFactory.call(bufferEndableWriteStreamOutputStream);
     }
 
     @Override
@@ -53,7 +59,7 @@ public class CipherEndableWriteStream implements BufferEndableWriteStream {
     public CipherEndableWriteStream write(Buffer data) {
         checkNotEnded();
         try {
-            outputStream.write(data.getBytes());
+            write(outputStream, data);
         } catch (IOException e) {
             handleError(e);
         }
@@ -93,7 +99,7 @@ public class CipherEndableWriteStream implements BufferEndableWriteStream {
         checkNotEnded();
         ended = true;
         try {
-            outputStream.write(data.getBytes());
+            write(outputStream, data);
             outputStream.close();
         } catch (IOException e) {
             handleError(e);
@@ -111,6 +117,14 @@ public class CipherEndableWriteStream implements BufferEndableWriteStream {
         }
     }
 
+    protected static void write(OutputStream outputStream, Buffer data) throws IOException {
+        if (outputStream instanceof BufferWritable) {
+            ((BufferWritable) outputStream).write(data);
+        } else {
+            outputStream.write(data.getBytes());
+        }
+    }
+
     protected void handleError(Throwable e) {
         if (delegateExceptionHandler != null) {
             delegateExceptionHandler.handle(e);
@@ -22,8 +22,10 @@ import io.vertx.core.logging.Logger;
 import io.vertx.core.streams.ReadStream;
 import org.bouncycastle.crypto.io.CipherOutputStream;
 import org.bouncycastle.crypto.modes.AEADBlockCipher;
+import rx.functions.Func1;
 
 import java.io.IOException;
+import java.io.OutputStream;
 
 import static io.vertx.core.logging.LoggerFactory.getLogger;
 
@@ -34,7 +36,7 @@ public class CipherReadStream implements ReadStream<Buffer> {
     private Handler<Void> delegateEndHandler;
     private Handler<Throwable> delegateExceptionHandler;
     private Handler<Buffer> delegateDataHandler;
-    private CipherOutputStream cipherOutputStream;
+    private OutputStream cipherOutputStream;
     private ReadStreamDataHandlerOutputStream readStreamDataHandlerOutputStream;
     private boolean ended = false;
     private Handler<Void> endHandler = new Handler<Void>() {
@@ -73,8 +75,11 @@ public class CipherReadStream implements ReadStream<Buffer> {
         @Override
         public void handle(Buffer buffer) {
             try {
-                byte[] data = buffer.getBytes();
-                cipherOutputStream.write(data);
+                if (cipherOutputStream instanceof BufferWritable) {
+                    ((BufferWritable) cipherOutputStream).write(buffer);
+                } else {
+                    cipherOutputStream.write(buffer.getBytes());
+                }
             } catch (IOException e) {
                 handleError(e);
             }
@@ -83,9 +88,13 @@ public class CipherReadStream implements ReadStream<Buffer> {
 
 
     public CipherReadStream(ReadStream<Buffer> delegate, AEADBlockCipher aeadBlockCipher) {
+        this(delegate, outputStream -> new CipherOutputStream(outputStream, aeadBlockCipher));
+    }
+
+    public CipherReadStream(ReadStream<Buffer> delegate, Func1<OutputStream, OutputStream> cipherOutputStreamFactory) {
         this.delegate = delegate;
         this.readStreamDataHandlerOutputStream = new ReadStreamDataHandlerOutputStream(dataHandler);
-        this.cipherOutputStream = new CipherOutputStream(readStreamDataHandlerOutputStream, aeadBlockCipher);
+        this.cipherOutputStream = cipherOutputStreamFactory.call(readStreamDataHandlerOutputStream);
     }
 
 
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.io;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.logging.Logger;
+import org.sfs.erasure.ReedSolomon;
+import org.sfs.vo.ErasureCoding;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.primitives.Ints.toArray;
+import static io.vertx.core.logging.LoggerFactory.getLogger;
+
+// Reassembles the stripes of an erasure coded segment. Each of the available
+// fragments is written to its own fragment write stream and as soon as every
+// fragment has supplied the next cell the stripe is decoded and its data cells
+// are written to the delegate. A fragment that gets ahead of the others
+// reports a full write queue until the others catch up
+public class ErasureDecoder {
+
+    private static final Logger LOGGER = getLogger(ErasureDecoder.class);
+    private static final int MAX_PENDING_CELLS = 2;
+    private final BufferEndableWriteStream delegate;
+    private final ReedSolomon reedSolomon;
+    private final int cellSize;
+    private final int[] fragmentIndexes;
+    private final FragmentWriteStream[] fragmentWriteStreams;
+    private final boolean[] present;
+    private final boolean allDataPresent;
+    private boolean waitingForDelegateDrain = false;
+    private boolean ended = false;
+    private boolean completed = false;
+    private boolean failed = false;
+
+    public ErasureDecoder(BufferEndableWriteStream delegate, ErasureCoding erasureCoding, Collection<Integer> fragmentIndexes) {
+        int dataFragments = erasureCoding.getDataFragments();
+        int numberOfFragments = erasureCoding.getNumberOfFragments();
+        checkArgument(fragmentIndexes.size() == dataFragments, "Expected %s fragments but was %s", dataFragments, fragmentIndexes.size());
+        this.delegate = delegate;
+        this.reedSolomon = new ReedSolomon(dataFragments, erasureCoding.getParityFragments());
+        this.cellSize = erasureCoding.getCellSize();
+        this.fragmentIndexes = toArray(fragmentIndexes);
+        Arrays.sort(this.fragmentIndexes);
+        this.present = new boolean[numberOfFragments];
+        this.fragmentWriteStreams = new FragmentWriteStream[this.fragmentIndexes.length];
+        for (int i = 0; i < this.fragmentIndexes.length; i++) {
+            int fragmentIndex = this.fragmentIndexes[i];
+            checkArgument(fragmentIndex >= 0 && fragmentIndex < numberOfFragments, "Invalid fragment index %s", fragmentIndex);
+            checkArgument(!present[fragmentIndex], "Duplicate fragment index %s", fragmentIndex);
+            present[fragmentIndex] = true;
+            fragmentWriteStreams[i] = new FragmentWriteStream();
+        }
+        // since the fragments are sorted this is only true if they're exactly the data fragments
+        this.allDataPresent = this.fragmentIndexes[dataFragments - 1] == dataFragments - 1;
+        delegate.exceptionHandler(this::handleError);
+    }
+
+    public BufferEndableWriteStream fragmentWriteStream(int fragmentIndex) {
+        int i = Arrays.binarySearch(fragmentIndexes, fragmentIndex);
+        checkArgument(i >= 0, "Fragment %s is not being decoded", fragmentIndex);
+        return fragmentWriteStreams[i];
+    }
+
+    protected void decodeAvailableStripes() {
+        while (!failed) {
+            for (FragmentWriteStream fragmentWriteStream : fragmentWriteStreams) {
+                if (fragmentWriteStream.pending.length() < cellSize) {
+                    return;
+                }
+            }
+            decodeStripe();
+        }
+    }
+
+    protected void decodeStripe() {
+        int totalShards = reedSolomon.getTotalShards();
+        int dataShards = reedSolomon.getDataShards();
+        byte[][] shards = new byte[totalShards][];
+        for (int i = 0; i < fragmentIndexes.length; i++) {
+            FragmentWriteStream fragmentWriteStream = fragmentWriteStreams[i];
+            Buffer pending = fragmentWriteStream.pending;
+            shards[fragmentIndexes[i]] = pending.getBytes(0, cellSize);
+            fragmentWriteStream.pending = pending.getBuffer(cellSize, pending.length());
+        }
+        Buffer data = Buffer.buffer(dataShards * cellSize);
+        if (allDataPresent) {
+            for (int i = 0; i < dataShards; i++) {
+                data.appendBytes(shards[i]);
+            }
+        } else {
+            for (int i = 0; i < totalShards; i++) {
+                if (shards[i] == null) {
+                    shards[i] = new byte[cellSize];
+                }
+            }
+            try {
+                reedSolomon.decodeMissing(shards, present, 0, cellSize);
+            } catch (Throwable e) {
+                handleError(e);
+                return;
+            }
+            for (int i = 0; i < dataShards; i++) {
+                data.appendBytes(shards[i]);
+            }
+        }
+        delegate.write(data);
+    }
+
+    protected void handleDrain() {
+        if (delegate.writeQueueFull()) {
+            if (!waitingForDelegateDrain) {
+                waitingForDelegateDrain = true;
+                delegate.drainHandler(event -> {
+                    waitingForDelegateDrain = false;
+                    handleDrain();
+                });
+            }
+            return;
+        }
+        for (FragmentWriteStream fragmentWriteStream : fragmentWriteStreams) {
+            Handler<Void> handler = fragmentWriteStream.drainHandler;
+            if (handler != null && !fragmentWriteStream.writeQueueFull()) {
+                fragmentWriteStream.drainHandler = null;
+                handler.handle(null);
+            }
+        }
+    }
+
+    protected void handleEnd() {
+        if (ended || failed) {
+            return;
+        }
+        int maxPending = 0;
+        for (FragmentWriteStream fragmentWriteStream : fragmentWriteStreams) {
+            maxPending = Math.max(maxPending, fragmentWriteStream.pending.length());
+        }
+        boolean allEnded = true;
+        for (FragmentWriteStream fragmentWriteStream : fragmentWriteStreams) {
+            if (!fragmentWriteStream.ended) {
+                allEnded = false;
+            } else if (fragmentWriteStream.pending.length() < maxPending) {
+                // an ended fragment is shorter than one of the others. Fail now
+                // instead of waiting on a fragment that's paused until the stripe completes
+                handleError(new IllegalStateException("Fragments have different lengths"));
+                return;
+            }
+        }
+        if (!allEnded) {
+            return;
+        }
+        ended = true;
+        decodeAvailableStripes();
+        if (failed) {
+            return;
+        }
+        for (FragmentWriteStream fragmentWriteStream : fragmentWriteStreams) {
+            if (fragmentWriteStream.pending.length() > 0) {
+                handleError(new IllegalStateException("Fragments ended with a partial or missing cell"));
+                return;
+            }
+        }
+        delegate.endHandler(event -> {
+            completed = true;
+            for (FragmentWriteStream fragmentWriteStream : fragmentWriteStreams) {
+                Handler<Void> handler = fragmentWriteStream.endHandler;
+                if (handler != null) {
+                    fragmentWriteStream.endHandler = null;
+                    handler.handle(null);
+                }
+            }
+        });
+        delegate.end();
+    }
+
+    protected void handleError(Throwable e) {
+        failed = true;
+        boolean handled = false;
+        for (FragmentWriteStream fragmentWriteStream : fragmentWriteStreams) {
+            Handler<Throwable> handler = fragmentWriteStream.exceptionHandler;
+            if (handler != null) {
+                fragmentWriteStream.exceptionHandler = null;
+                handler.handle(e);
+                handled = true;
+            }
+        }
+        if (!handled) {
+            LOGGER.error("Unhandled Exception", e);
+        }
+    }
+
+    private class FragmentWriteStream implements BufferEndableWriteStream {
+
+        private Buffer pending = Buffer.buffer();
+        private Handler<Void> drainHandler;
+        private Handler<Void> endHandler;
+        private Handler<Throwable> exceptionHandler;
+        private boolean ended = false;
+
+        @Override
+        public FragmentWriteStream write(Buffer data) {
+            checkState(!ended, "Already ended");
+            pending.appendBuffer(data);
+            decodeAvailableStripes();
+            handleDrain();
+            return this;
+        }
+
+        @Override
+        public FragmentWriteStream setWriteQueueMaxSize(int maxSize) {
+            return this;
+        }
+
+        @Override
+        public boolean writeQueueFull() {
+            return pending.length() >= MAX_PENDING_CELLS * cellSize || delegate.writeQueueFull();
+        }
+
+        @Override
+        public FragmentWriteStream drainHandler(Handler<Void> handler) {
+            this.drainHandler = handler;
+            handleDrain();
+            return this;
+        }
+
+        @Override
+        public FragmentWriteStream exceptionHandler(Handler<Throwable> handler) {
+            this.exceptionHandler = handler;
+            return this;
+        }
+
+        @Override
+        public FragmentWriteStream endHandler(Handler<Void> endHandler) {
+            if (completed && endHandler != null) {
+                endHandler.handle(null);
+            } else {
+                this.endHandler = endHandler;
+            }
+            return this;
+        }
+
+        @Override
+        public void end(Buffer buffer) {
+            write(buffer);
+            end();
+        }
+
+        @Override
+        public void end() {
+            checkState(!ended, "Already ended");
+            ended = true;
+            handleEnd();
+        }
+    }
+}
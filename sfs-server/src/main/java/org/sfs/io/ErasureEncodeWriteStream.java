@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.io;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import org.sfs.erasure.ReedSolomon;
+import org.sfs.vo.ErasureCoding;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+// Stripes everything written to it into data and parity cells and writes
+// cell i of each stripe to fragment write stream i
+public class ErasureEncodeWriteStream implements BufferEndableWriteStream {
+
+    private final ReedSolomon reedSolomon;
+    private final int cellSize;
+    private final List<BufferEndableWriteStream> fragmentWriteStreams;
+    private final MultiEndableWriteStream multiWriteStream;
+    private final byte[] stripe;
+    private int stripeLength = 0;
+    private boolean wroteStripe = false;
+    private boolean ended = false;
+
+    public ErasureEncodeWriteStream(ErasureCoding erasureCoding, List<BufferEndableWriteStream> fragmentWriteStreams) {
+        checkArgument(fragmentWriteStreams.size() == erasureCoding.getNumberOfFragments(), "Expected %s fragment write streams", erasureCoding.getNumberOfFragments());
+        this.reedSolomon = new ReedSolomon(erasureCoding.getDataFragments(), erasureCoding.getParityFragments());
+        this.cellSize = erasureCoding.getCellSize();
+        this.fragmentWriteStreams = fragmentWriteStreams;
+        this.multiWriteStream = new MultiEndableWriteStream(fragmentWriteStreams);
+        this.stripe = new byte[Math.toIntExact(erasureCoding.getStripeSize())];
+    }
+
+    @Override
+    public ErasureEncodeWriteStream write(Buffer data) {
+        checkState(!ended, "Already ended");
+        byte[] bytes = data.getBytes();
+        int offset = 0;
+        while (offset < bytes.length) {
+            int toCopy = Math.min(bytes.length - offset, stripe.length - stripeLength);
+            System.arraycopy(bytes, offset, stripe, stripeLength, toCopy);
+            stripeLength += toCopy;
+            offset += toCopy;
+            if (stripeLength == stripe.length) {
+                writeStripe();
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public ErasureEncodeWriteStream setWriteQueueMaxSize(int maxSize) {
+        multiWriteStream.setWriteQueueMaxSize(maxSize);
+        return this;
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+        return multiWriteStream.writeQueueFull();
+    }
+
+    @Override
+    public ErasureEncodeWriteStream drainHandler(Handler<Void> handler) {
+        multiWriteStream.drainHandler(handler);
+        return this;
+    }
+
+    @Override
+    public ErasureEncodeWriteStream exceptionHandler(Handler<Throwable> handler) {
+        multiWriteStream.exceptionHandler(handler);
+        return this;
+    }
+
+    @Override
+    public ErasureEncodeWriteStream endHandler(Handler<Void> endHandler) {
+        multiWriteStream.endHandler(endHandler);
+        return this;
+    }
+
+    @Override
+    public void end(Buffer buffer) {
+        write(buffer);
+        end();
+    }
+
+    @Override
+    public void end() {
+        checkState(!ended, "Already ended");
+        ended = true;
+        // an empty stream still produces one (zero filled) stripe
+        if (stripeLength > 0 || !wroteStripe) {
+            Arrays.fill(stripe, stripeLength, stripe.length, (byte) 0);
+            writeStripe();
+        }
+        multiWriteStream.end();
+    }
+
+    protected void writeStripe() {
+        int dataShards = reedSolomon.getDataShards();
+        int totalShards = reedSolomon.getTotalShards();
+        byte[][] shards = new byte[totalShards][];
+        for (int i = 0; i < dataShards; i++) {
+            shards[i] = Arrays.copyOfRange(stripe, i * cellSize, (i + 1) * cellSize);
+        }
+        for (int i = dataShards; i < totalShards; i++) {
+            shards[i] = new byte[cellSize];
+        }
+        reedSolomon.encodeParity(shards, 0, cellSize);
+        for (int i = 0; i < totalShards; i++) {
+            fragmentWriteStreams.get(i).write(Buffer.buffer(shards[i]));
+        }
+        stripeLength = 0;
+        wroteStripe = true;
+    }
+}
@@ -119,6 +119,14 @@ public class PipedEndableWriteStream implements BufferEndableWriteStream {
         readStream.drainWriteStream();
     }
 
+    // drops what hasn't been read yet and fails the read stream instead of
+    // ending it so that whatever is consuming it gives up on the write
+    public void fail(Throwable throwable) {
+        chunks.clear();
+        writesOutstanding = 0;
+        readStream.handleError(throwable);
+    }
+
     protected Buffer poll() {
         Buffer chunk = chunks.poll();
         if (chunk != null) {
@@ -32,6 +32,7 @@ public class PipedReadStream implements ReadStream<Buffer> {
     private Handler<Throwable> exceptionHandler;
     private PipedEndableWriteStream writeStream;
     private boolean draining = false;
+    private Throwable error;
 
     protected void connect(PipedEndableWriteStream writeStream) {
         this.writeStream = writeStream;
@@ -85,6 +86,9 @@ public class PipedReadStream implements ReadStream<Buffer> {
 
     protected void drainWriteStream() {
         if (!draining) {
+            // a write made from inside a handler is picked up by the loop
+            // below instead of being delivered ahead of the current chunk
+            draining = true;
             try {
                 while (true) {
                     Handler<Buffer> handler = dataHandler;
@@ -108,11 +112,23 @@ public class PipedReadStream implements ReadStream<Buffer> {
     @Override
     public PipedReadStream exceptionHandler(Handler<Throwable> handler) {
         this.exceptionHandler = handler;
+        if (error != null) {
+            handleError(error);
+        }
         return this;
     }
 
+    protected void handleError(Throwable throwable) {
+        error = throwable;
+        Handler<Throwable> handler = exceptionHandler;
+        if (handler != null) {
+            exceptionHandler = null;
+            handler.handle(throwable);
+        }
+    }
+
     protected void handleEnd() {
-        if (writeStream.ended() && writeStream.writeQueueEmpty()) {
+        if (error == null && writeStream.ended() && writeStream.writeQueueEmpty()) {
             Handler<Void> handler = endHandler;
             if (handler != null) {
                 endHandler = null;
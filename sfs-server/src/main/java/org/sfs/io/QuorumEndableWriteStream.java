@@ -0,0 +1,289 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.io;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.logging.Logger;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static io.vertx.core.logging.LoggerFactory.getLogger;
+import static java.lang.String.format;
+
+// Like MultiEndableWriteStream except that only quorum of the write streams need
+// to keep up. A write stream that falls behind has what it hasn't accepted yet
+// buffered and is abandoned once that is more than maxLagBytes. Ends once quorum
+// of the write streams have ended, the others keep draining their buffers
+public class QuorumEndableWriteStream implements BufferEndableWriteStream {
+
+    private static final Logger LOGGER = getLogger(QuorumEndableWriteStream.class);
+    private final List<Delegate> delegates;
+    private final int quorum;
+    private final long maxLagBytes;
+    private Handler<Void> delegateEndHandler;
+    private Handler<Void> delegateDrainHandler;
+    private Handler<Throwable> delegateErrorHandler;
+    private Handler<Integer> abandonHandler;
+    private Throwable error;
+    private boolean ended = false;
+    private boolean endHandled = false;
+
+    public QuorumEndableWriteStream(List<BufferEndableWriteStream> writeStreams, int quorum, long maxLagBytes) {
+        checkArgument(quorum > 0 && quorum <= writeStreams.size(), "quorum must be between 1 and %s", writeStreams.size());
+        checkArgument(maxLagBytes >= 0, "maxLagBytes must be >= 0");
+        this.quorum = quorum;
+        this.maxLagBytes = maxLagBytes;
+        this.delegates = new ArrayList<>(writeStreams.size());
+        for (int i = 0; i < writeStreams.size(); i++) {
+            delegates.add(new Delegate(i, writeStreams.get(i)));
+        }
+    }
+
+    // called with the index of a write stream when it's abandoned. Nothing more is
+    // written to the write stream and it's never ended so the handler has to abort it
+    public QuorumEndableWriteStream abandonHandler(Handler<Integer> handler) {
+        this.abandonHandler = handler;
+        return this;
+    }
+
+    public boolean isAbandoned(int index) {
+        return delegates.get(index).abandoned;
+    }
+
+    // stops writing to the write stream at index. Fails this stream
+    // if that leaves less than quorum write streams
+    public void abandon(int index) {
+        abandon(delegates.get(index));
+    }
+
+    @Override
+    public QuorumEndableWriteStream write(Buffer data) {
+        checkState(!ended, "Already ended");
+        for (Delegate delegate : delegates) {
+            if (!delegate.abandoned) {
+                if (delegate.lag.isEmpty() && !delegate.writeStream.writeQueueFull()) {
+                    delegate.writeStream.write(data);
+                } else {
+                    delegate.lag.offer(data);
+                    delegate.lagBytes += data.length();
+                    if (delegate.lagBytes > maxLagBytes) {
+                        LOGGER.warn(format("Write stream %d is more than %d bytes behind", delegate.index, maxLagBytes));
+                        abandon(delegate);
+                    } else {
+                        waitForDrain(delegate);
+                    }
+                }
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public QuorumEndableWriteStream setWriteQueueMaxSize(int maxSize) {
+        for (Delegate delegate : delegates) {
+            delegate.writeStream.setWriteQueueMaxSize(maxSize);
+        }
+        return this;
+    }
+
+    // full unless quorum of the write streams can take more
+    @Override
+    public boolean writeQueueFull() {
+        int keepingUp = 0;
+        for (Delegate delegate : delegates) {
+            if (!delegate.abandoned && delegate.lag.isEmpty() && !delegate.writeStream.writeQueueFull()) {
+                keepingUp++;
+            }
+        }
+        return keepingUp < quorum;
+    }
+
+    @Override
+    public QuorumEndableWriteStream drainHandler(Handler<Void> handler) {
+        this.delegateDrainHandler = handler;
+        for (Delegate delegate : delegates) {
+            if (!delegate.abandoned && (!delegate.lag.isEmpty() || delegate.writeStream.writeQueueFull())) {
+                waitForDrain(delegate);
+            }
+        }
+        handleDrain();
+        return this;
+    }
+
+    @Override
+    public QuorumEndableWriteStream exceptionHandler(Handler<Throwable> handler) {
+        this.delegateErrorHandler = handler;
+        for (Delegate delegate : delegates) {
+            delegate.writeStream.exceptionHandler(throwable -> {
+                LOGGER.warn(format("Write stream %d failed", delegate.index), throwable);
+                abandon(delegate);
+            });
+        }
+        if (error != null) {
+            handleError(error);
+        }
+        return this;
+    }
+
+    @Override
+    public QuorumEndableWriteStream endHandler(Handler<Void> handler) {
+        this.delegateEndHandler = handler;
+        handleEnd();
+        return this;
+    }
+
+    @Override
+    public void end(Buffer buffer) {
+        write(buffer);
+        end();
+    }
+
+    @Override
+    public void end() {
+        checkState(!ended, "Already ended");
+        ended = true;
+        for (Delegate delegate : delegates) {
+            if (!delegate.abandoned && delegate.lag.isEmpty()) {
+                endDelegate(delegate);
+            }
+        }
+        handleEnd();
+    }
+
+    protected void waitForDrain(Delegate delegate) {
+        if (!delegate.waitingForDrain) {
+            delegate.waitingForDrain = true;
+            delegate.writeStream.drainHandler(event -> {
+                delegate.waitingForDrain = false;
+                flush(delegate);
+                handleDrain();
+            });
+        }
+    }
+
+    protected void flush(Delegate delegate) {
+        if (delegate.abandoned) {
+            return;
+        }
+        while (!delegate.lag.isEmpty() && !delegate.writeStream.writeQueueFull()) {
+            Buffer buffer = delegate.lag.poll();
+            delegate.lagBytes -= buffer.length();
+            delegate.writeStream.write(buffer);
+        }
+        if (!delegate.lag.isEmpty()) {
+            waitForDrain(delegate);
+        } else if (ended && !delegate.ended) {
+            endDelegate(delegate);
+        }
+    }
+
+    protected void endDelegate(Delegate delegate) {
+        delegate.ended = true;
+        delegate.writeStream.endHandler(event -> {
+            delegate.endCompleted = true;
+            handleEnd();
+        });
+        delegate.writeStream.end();
+    }
+
+    protected void abandon(Delegate delegate) {
+        if (!delegate.abandoned) {
+            delegate.abandoned = true;
+            delegate.lag.clear();
+            delegate.lagBytes = 0;
+            Handler<Integer> handler = abandonHandler;
+            if (handler != null) {
+                handler.handle(delegate.index);
+            }
+            int remaining = 0;
+            for (Delegate d : delegates) {
+                if (!d.abandoned) {
+                    remaining++;
+                }
+            }
+            if (remaining < quorum) {
+                handleError(new IOException(format("%d of %d write streams remaining, %d required", remaining, delegates.size(), quorum)));
+            } else {
+                handleDrain();
+                handleEnd();
+            }
+        }
+    }
+
+    protected void handleDrain() {
+        Handler<Void> handler = delegateDrainHandler;
+        if (handler != null && error == null && !writeQueueFull()) {
+            delegateDrainHandler = null;
+            handler.handle(null);
+        }
+    }
+
+    protected void handleEnd() {
+        Handler<Void> handler = delegateEndHandler;
+        if (ended && handler != null && error == null && !endHandled) {
+            int endCompleted = 0;
+            for (Delegate delegate : delegates) {
+                if (!delegate.abandoned && delegate.endCompleted) {
+                    endCompleted++;
+                }
+            }
+            if (endCompleted >= quorum) {
+                endHandled = true;
+                delegateEndHandler = null;
+                handler.handle(null);
+            }
+        }
+    }
+
+    protected void handleError(Throwable throwable) {
+        // once ended the stream is done with and losing
+        // a straggler is left to whoever is consuming it
+        if (endHandled) {
+            return;
+        }
+        error = throwable;
+        Handler<Throwable> handler = delegateErrorHandler;
+        if (handler != null) {
+            delegateErrorHandler = null;
+            handler.handle(throwable);
+        }
+    }
+
+    private static class Delegate {
+
+        private final int index;
+        private final BufferEndableWriteStream writeStream;
+        private final Deque<Buffer> lag = new ArrayDeque<>();
+        private long lagBytes;
+        private boolean waitingForDrain;
+        private boolean ended;
+        private boolean endCompleted;
+        private boolean abandoned;
+
+        public Delegate(int index, BufferEndableWriteStream writeStream) {
+            this.index = index;
+            this.writeStream = writeStream;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.io;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.math.LongMath.checkedAdd;
+
+// Passes through length bytes starting at offset and silently drops
+// everything else. Used when the bytes of a range can't be read directly
+// from the volume (encrypted and tiny data segments)
+public class RangeEndableWriteStream implements BufferEndableWriteStream {
+
+    private final BufferEndableWriteStream delegate;
+    private final long startInclusive;
+    private final long endExclusive;
+    private long position = 0;
+
+    public RangeEndableWriteStream(BufferEndableWriteStream delegate, long offset, long length) {
+        checkArgument(offset >= 0, "offset must be >= 0");
+        checkArgument(length >= 0, "length must be >= 0");
+        this.delegate = delegate;
+        this.startInclusive = offset;
+        this.endExclusive = checkedAdd(offset, length);
+    }
+
+    @Override
+    public RangeEndableWriteStream write(Buffer data) {
+        Buffer slice = slice(data);
+        if (slice != null) {
+            delegate.write(slice);
+        }
+        return this;
+    }
+
+    @Override
+    public RangeEndableWriteStream exceptionHandler(Handler<Throwable> handler) {
+        delegate.exceptionHandler(handler);
+        return this;
+    }
+
+    @Override
+    public RangeEndableWriteStream setWriteQueueMaxSize(int maxSize) {
+        delegate.setWriteQueueMaxSize(maxSize);
+        return this;
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+        return delegate.writeQueueFull();
+    }
+
+    @Override
+    public RangeEndableWriteStream drainHandler(Handler<Void> handler) {
+        delegate.drainHandler(handler);
+        return this;
+    }
+
+    @Override
+    public RangeEndableWriteStream endHandler(Handler<Void> endHandler) {
+        delegate.endHandler(endHandler);
+        return this;
+    }
+
+    @Override
+    public void end(Buffer buffer) {
+        Buffer slice = slice(buffer);
+        if (slice != null) {
+            delegate.end(slice);
+        } else {
+            delegate.end();
+        }
+    }
+
+    @Override
+    public void end() {
+        delegate.end();
+    }
+
+    protected Buffer slice(Buffer data) {
+        long bufferStart = position;
+        long bufferEnd = checkedAdd(position, data.length());
+        position = bufferEnd;
+        long from = Math.max(bufferStart, startInclusive);
+        long to = Math.min(bufferEnd, endExclusive);
+        if (from >= to) {
+            return null;
+        }
+        if (from == bufferStart && to == bufferEnd) {
+            return data;
+        }
+        return data.slice((int) (from - bufferStart), (int) (to - bufferStart));
+    }
+}
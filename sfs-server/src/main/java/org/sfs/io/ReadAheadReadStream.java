@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.sfs.io;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import org.sfs.rx.ObservableFuture;
+import org.sfs.rx.RxHelper;
+import rx.Observable;
+
+// Reads at least limit bytes, or everything if the delegate ends first, so that
+// a decision can be made on how much data there is before the stream is consumed.
+// The bytes read ahead are replayed ahead of the rest of the delegate
+public class ReadAheadReadStream implements ReadStream<Buffer> {
+
+    private final ReadStream<Buffer> delegate;
+    private final int limit;
+    private final Buffer readAhead = Buffer.buffer();
+    private boolean readAheadComplete = false;
+    private boolean readAheadDelivered = false;
+    private boolean delegateEnded = false;
+    private boolean endDelivered = false;
+    private boolean attached = false;
+    private boolean paused = false;
+    private Handler<Buffer> dataHandler;
+    private Handler<Void> endHandler;
+    private Handler<Throwable> exceptionHandler;
+
+    public ReadAheadReadStream(ReadStream<Buffer> delegate, int limit) {
+        this.delegate = delegate;
+        this.limit = limit;
+    }
+
+    public Observable<Void> readAhead() {
+        return Observable.defer(() -> {
+            ObservableFuture<Void> observableFuture = RxHelper.observableFuture();
+            delegate.exceptionHandler(observableFuture::fail);
+            delegate.endHandler(event -> {
+                delegateEnded = true;
+                readAheadComplete = true;
+                observableFuture.complete(null);
+            });
+            delegate.handler(buffer -> {
+                if (readAheadDelivered) {
+                    // the read ahead has been handed on so it mustn't change
+                    if (dataHandler != null) {
+                        dataHandler.handle(buffer);
+                    }
+                    return;
+                }
+                readAhead.appendBuffer(buffer);
+                if (!readAheadComplete && readAhead.length() >= limit) {
+                    delegate.pause();
+                    readAheadComplete = true;
+                    observableFuture.complete(null);
+                }
+            });
+            delegate.resume();
+            return observableFuture;
+        });
+    }
+
+    // true if the delegate ended during the read ahead in which case
+    // the read ahead bytes are all the bytes the stream will produce
+    public boolean isEnded() {
+        return delegateEnded;
+    }
+
+    public int getReadAheadLength() {
+        return readAhead.length();
+    }
+
+    @Override
+    public ReadAheadReadStream exceptionHandler(Handler<Throwable> handler) {
+        this.exceptionHandler = handler;
+        if (attached) {
+            delegate.exceptionHandler(handler);
+        }
+        return this;
+    }
+
+    @Override
+    public ReadAheadReadStream handler(Handler<Buffer> handler) {
+        this.dataHandler = handler;
+        if (attached) {
+            delegate.handler(handler);
+        } else {
+            handleData();
+        }
+        return this;
+    }
+
+    @Override
+    public ReadAheadReadStream pause() {
+        paused = true;
+        if (attached) {
+            delegate.pause();
+        }
+        return this;
+    }
+
+    @Override
+    public ReadAheadReadStream resume() {
+        paused = false;
+        if (attached) {
+            delegate.resume();
+        } else {
+            handleData();
+        }
+        return this;
+    }
+
+    @Override
+    public ReadAheadReadStream endHandler(Handler<Void> endHandler) {
+        this.endHandler = endHandler;
+        if (attached) {
+            delegate.endHandler(endHandler);
+        }
+        return this;
+    }
+
+    protected void handleData() {
+        if (!readAheadComplete || paused || dataHandler == null) {
+            return;
+        }
+        if (!readAheadDelivered) {
+            readAheadDelivered = true;
+            if (readAhead.length() > 0) {
+                dataHandler.handle(readAhead);
+                if (paused || dataHandler == null) {
+                    return;
+                }
+            }
+        }
+        if (delegateEnded) {
+            if (!endDelivered) {
+                endDelivered = true;
+                if (endHandler != null) {
+                    endHandler.handle(null);
+                }
+            }
+        } else if (!attached) {
+            attached = true;
+            delegate.exceptionHandler(exceptionHandler);
+            delegate.endHandler(endHandler);
+            delegate.handler(dataHandler);
+            delegate.resume();
+        }
+    }
+}
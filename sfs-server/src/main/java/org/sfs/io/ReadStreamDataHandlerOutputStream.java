@@ -24,7 +24,7 @@ import java.io.OutputStream;
 
 import static io.vertx.core.buffer.Buffer.buffer;
 
-public class ReadStreamDataHandlerOutputStream extends OutputStream {
+public class ReadStreamDataHandlerOutputStream extends OutputStream implements BufferWritable {
 
     private Handler<Buffer> dataHandler;
 
@@ -41,6 +41,11 @@ public class ReadStreamDataHandlerOutputStream extends OutputStream {
 
     }
 
+    @Override
+    public void write(Buffer buffer) throws IOException {
+        dataHandler.handle(buffer);
+    }
+
     @Override
     public void write(byte[] b) throws IOException {
         dataHandler.handle(buffer(b));
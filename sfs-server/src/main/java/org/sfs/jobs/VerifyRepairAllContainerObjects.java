@@ -25,10 +25,15 @@ import io.vertx.core.logging.LoggerFactory;
 import org.elasticsearch.index.query.RangeQueryBuilder;
 import org.sfs.Server;
 import org.sfs.VertxContext;
+import org.sfs.elasticsearch.AbstractBulkUpdateEndableWriteStream;
 import org.sfs.elasticsearch.Elasticsearch;
+import org.sfs.elasticsearch.IndexRefresh;
 import org.sfs.elasticsearch.ListSfsObjectIndexes;
 import org.sfs.elasticsearch.ScanAndScrollStreamProducer;
 import org.sfs.elasticsearch.SearchHitMaintainObjectEndableWrite;
+import org.sfs.elasticsearch.SearchHitReconcileAccountUsageEndableWrite;
+import org.sfs.elasticsearch.SearchHitReconcileContainerUsageEndableWrite;
+import org.sfs.elasticsearch.UsageCounters;
 import org.sfs.io.AsyncIO;
 import org.sfs.rx.Defer;
 import org.sfs.rx.ToVoid;
@@ -41,6 +46,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
 import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
 import static org.sfs.util.DateFormatter.toDateTimeString;
 
@@ -76,6 +82,7 @@ public class VerifyRepairAllContainerObjects extends AbstractJob {
     protected Observable<Void> execute0(VertxContext<Server> vertxContext, MultiMap parameters) {
 
         final Elasticsearch elasticSearch = vertxContext.verticle().elasticsearch();
+        final UsageCounters usageCounters = vertxContext.verticle().usageCounters();
 
         return Defer.aVoid()
                 .flatMap(new ListSfsObjectIndexes(vertxContext))
@@ -111,7 +118,36 @@ public class VerifyRepairAllContainerObjects extends AbstractJob {
                             .doOnNext(aVoid1 -> LOGGER.info("Finished maintain on index " + index));
                 })
                 .count()
-                .map(new ToVoid<>());
+                .map(new ToVoid<>())
+                // the containers are reconciled from the maintained objects
+                // and then the accounts from the reconciled containers
+                .flatMap(aVoid -> usageCounters.flushAll(vertxContext))
+                .flatMap(new IndexRefresh(vertxContext))
+                .flatMap(aVoid -> reconcileUsage(vertxContext, elasticSearch.containerIndex(), new SearchHitReconcileContainerUsageEndableWrite(vertxContext)))
+                .flatMap(aVoid -> usageCounters.flush(vertxContext))
+                .flatMap(new IndexRefresh(vertxContext))
+                .flatMap(aVoid -> reconcileUsage(vertxContext, elasticSearch.accountIndex(), new SearchHitReconcileAccountUsageEndableWrite(vertxContext)))
+                .flatMap(aVoid -> usageCounters.flush(vertxContext));
+    }
+
+    protected Observable<Void> reconcileUsage(VertxContext<Server> vertxContext, String index, AbstractBulkUpdateEndableWriteStream consumer) {
+        Elasticsearch elasticSearch = vertxContext.verticle().elasticsearch();
+
+        ScanAndScrollStreamProducer producer =
+                new ScanAndScrollStreamProducer(vertxContext, matchAllQuery())
+                        .setIndeces(index)
+                        .setTypes(elasticSearch.defaultType())
+                        .setReturnVersion(true);
+        producerList.add(producer);
+
+        if (aborted) {
+            producer.abort();
+        }
+
+        LOGGER.info("Starting usage reconcile on index " + index);
+
+        return AsyncIO.pump(producer, consumer)
+                .doOnNext(aVoid1 -> LOGGER.info("Finished usage reconcile on index " + index));
     }
 }
 
@@ -16,6 +16,7 @@
 
 package org.sfs.jobs;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.Sets;
@@ -27,10 +28,15 @@ import org.elasticsearch.index.query.TermQueryBuilder;
 import org.sfs.Server;
 import org.sfs.VertxContext;
 import org.sfs.elasticsearch.Elasticsearch;
+import org.sfs.elasticsearch.IndexRefresh;
 import org.sfs.elasticsearch.ScanAndScrollStreamProducer;
 import org.sfs.elasticsearch.SearchHitMaintainObjectEndableWrite;
+import org.sfs.elasticsearch.UsageCounters;
+import org.sfs.elasticsearch.account.LoadAccount;
+import org.sfs.elasticsearch.container.LoadContainer;
 import org.sfs.io.AsyncIO;
 import org.sfs.rx.Defer;
+import org.sfs.rx.ToVoid;
 import org.sfs.vo.ObjectPath;
 import rx.Observable;
 
@@ -97,7 +103,34 @@ public class VerifyRepairContainerObjects extends AbstractJob {
         LOGGER.info("Starting maintain on container " + containerId);
 
         return AsyncIO.pump(producer, consumer)
-                .doOnNext(aVoid1 -> LOGGER.info("Finished maintain on container " + containerId));
+                .doOnNext(aVoid1 -> LOGGER.info("Finished maintain on container " + containerId))
+                .flatMap(aVoid1 -> vertxContext.verticle().usageCounters().flushAll(vertxContext))
+                .flatMap(new IndexRefresh(vertxContext))
+                .flatMap(aVoid1 -> reconcileUsage(vertxContext, containerId))
+                .doOnNext(aVoid1 -> LOGGER.info("Finished usage reconcile on container " + containerId));
+    }
+
+    // corrects the usage of the container and then of its account by the
+    // difference between what the objects add up to and what was counted
+    protected Observable<Void> reconcileUsage(VertxContext<Server> vertxContext, String containerId) {
+        UsageCounters usageCounters = vertxContext.verticle().usageCounters();
+        String accountId = ObjectPath.fromPaths(containerId).accountPath().get();
+        return Defer.just(accountId)
+                .flatMap(new LoadAccount(vertxContext))
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .flatMap(persistentAccount -> Defer.just(containerId)
+                        .flatMap(new LoadContainer(vertxContext, persistentAccount))
+                        .filter(Optional::isPresent)
+                        .map(Optional::get)
+                        .flatMap(persistentContainer -> usageCounters.reconcileContainer(vertxContext, persistentContainer))
+                        // so that the account sums the reconciled container
+                        .flatMap(aVoid -> usageCounters.flush(vertxContext))
+                        .flatMap(new IndexRefresh(vertxContext))
+                        .flatMap(aVoid -> usageCounters.reconcileAccount(vertxContext, persistentAccount))
+                        .flatMap(aVoid -> usageCounters.flush(vertxContext)))
+                .count()
+                .map(new ToVoid<>());
     }
 }
 
@@ -18,13 +18,16 @@ package org.sfs.nodes;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.net.HostAndPort;
 import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import org.sfs.Server;
 import org.sfs.VertxContext;
 import org.sfs.rx.Defer;
 import org.sfs.rx.RxHelper;
 import org.sfs.rx.ToVoid;
+import org.sfs.util.ConfigHelper;
 import org.sfs.vo.TransientServiceDef;
 import org.sfs.vo.XVolume;
 import rx.Observable;
@@ -32,42 +35,54 @@ import rx.Subscriber;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.Random;
 import java.util.Set;
-import java.util.TreeMap;
 
-import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.FluentIterable.from;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
 import static java.lang.Boolean.TRUE;
-import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 import static java.util.concurrent.TimeUnit.SECONDS;
-import static org.sfs.filesystem.volume.Volume.Status;
 import static org.sfs.rx.Defer.aVoid;
 
 public class ClusterInfo {
 
     private static final Logger LOGGER = getLogger(ClusterInfo.class);
+    public static final String MEMBERSHIP_GOSSIP = "gossip";
+    public static final String MEMBERSHIP_POLL = "poll";
+    // every this many rounds a seed is gossiped with even when there are enough
+    // live peers so that partitions that don't know about each other merge
+    private static final int SEED_ROUND_INTERVAL = 10;
     private final long refreshInterval = SECONDS.toMillis(1);
+    private final Random random = new Random();
     private boolean started = false;
     private VertxContext<Server> vertxContext;
-    private volatile List<TransientServiceDef> allNodes;
-    private volatile Map<String, TransientServiceDef> nodesByStartedVolume;
-    private volatile NavigableMap<Long, Set<String>> startedVolumeIdByUseableSpace;
-    private volatile int numberOfStartedVolumes;
-    private volatile TransientServiceDef currentMaintainerNode;
-    private volatile List<TransientServiceDef> masterNodes;
+    private String membershipMode;
+    private int gossipFanout;
+    private Membership membership;
+    private Map<String, Long> liveVersions = emptyMap();
+    private long round;
+    private volatile ClusterState state = ClusterState.EMPTY;
     private Long timerId;
 
-    public Observable<Void> open(VertxContext<Server> vertxContext) {
+    public Observable<Void> open(VertxContext<Server> vertxContext, JsonObject config) {
         this.vertxContext = vertxContext;
         return aVoid()
-                .flatMap(aVoid -> updateClusterInfo(vertxContext))
+                .doOnNext(aVoid -> {
+                    membershipMode = ConfigHelper.getFieldOrEnv(config, "cluster.membership", MEMBERSHIP_GOSSIP);
+                    gossipFanout = Integer.parseInt(ConfigHelper.getFieldOrEnv(config, "cluster.gossip.fanout", "3"));
+                    long failureTimeout = Long.parseLong(ConfigHelper.getFieldOrEnv(config, "cluster.gossip.failuretimeout", String.valueOf(SECONDS.toMillis(10))));
+                    checkArgument(MEMBERSHIP_GOSSIP.equals(membershipMode) || MEMBERSHIP_POLL.equals(membershipMode), "cluster.membership must be %s or %s", MEMBERSHIP_GOSSIP, MEMBERSHIP_POLL);
+                    checkArgument(gossipFanout >= 1, "cluster.gossip.fanout must be >= 1");
+                    checkArgument(failureTimeout > refreshInterval, "cluster.gossip.failuretimeout must be > %s", refreshInterval);
+                    membership = new Membership(vertxContext.verticle().nodes().getNodeId(), failureTimeout);
+                })
+                .flatMap(aVoid -> refresh(vertxContext, true))
                 .doOnNext(aVoid -> startTimer())
                 .doOnNext(aVoid -> started = true);
     }
@@ -76,18 +91,17 @@ public class ClusterInfo {
         return aVoid()
                 .doOnNext(aVoid -> started = false)
                 .doOnNext(aVoid -> stopTimer())
-                .doOnNext(aVoid -> {
-                    if (nodesByStartedVolume != null) {
-                        nodesByStartedVolume.clear();
-                        nodesByStartedVolume = null;
-                    }
-                    currentMaintainerNode = null;
-                    masterNodes = null;
-                });
+                .doOnNext(aVoid -> state = ClusterState.EMPTY);
+    }
+
+    // the current view of the cluster. Use the same snapshot for
+    // decisions that look at the cluster more than once
+    public ClusterState getState() {
+        return state;
     }
 
     public List<TransientServiceDef> getAllNodes() {
-        return allNodes;
+        return state.getAllNodes();
     }
 
     public long getRefreshInterval() {
@@ -95,27 +109,38 @@ public class ClusterInfo {
     }
 
     public int getNumberOfStartedVolumes() {
-        return numberOfStartedVolumes;
+        return state.getNumberOfStartedVolumes();
     }
 
     public NavigableMap<Long, Set<String>> getStartedVolumeIdByUseableSpace() {
-        NavigableMap<Long, Set<String>> snapshot = startedVolumeIdByUseableSpace;
-        return snapshot != null ? snapshot : Collections.emptyNavigableMap();
+        return state.getStartedVolumeIdByUseableSpace();
+    }
+
+    public Optional<XVolume<?>> getStartedVolume(String volumeId) {
+        return state.getStartedVolume(volumeId);
     }
 
     public Observable<Void> forceRefresh(VertxContext<Server> vertxContext) {
         return aVoid()
                 .doOnNext(aVoid -> checkStarted())
-                .flatMap(aVoid -> updateClusterInfo(vertxContext));
+                .flatMap(aVoid -> refresh(vertxContext, true));
+    }
+
+    // merges a gossip message from another node into this node's
+    // view of the cluster and returns what the other node is missing
+    public JsonObject mergeGossip(JsonObject message) {
+        checkStarted();
+        checkState(membership != null && MEMBERSHIP_GOSSIP.equals(membershipMode), "Gossip is not enabled");
+        long now = System.currentTimeMillis();
+        updateSelf(now);
+        JsonObject reply = membership.merge(message, now);
+        updateState(now);
+        return reply;
     }
 
     public Iterable<TransientServiceDef> getNodesWithStartedVolumes() {
         checkStarted();
-        Map<String, TransientServiceDef> snapshot = nodesByStartedVolume;
-        if (snapshot == null) {
-            return emptyList();
-        }
-        return snapshot.values();
+        return state.getNodesWithStartedVolumes();
     }
 
     public Observable<Boolean> isOnline() {
@@ -129,29 +154,60 @@ public class ClusterInfo {
     }
 
     public Optional<XNode> getNodeForVolume(VertxContext<Server> vertxContext, String volumeId) {
+        return getNodeForVolume(vertxContext, state, volumeId);
+    }
+
+    public Optional<XNode> getNodeForVolume(VertxContext<Server> vertxContext, ClusterState clusterState, String volumeId) {
         Nodes nodes = vertxContext.verticle().nodes();
-        TransientServiceDef serviceDef = nodesByStartedVolume.get(volumeId);
-        if (serviceDef != null) {
-            return Optional.of(nodes.remoteNode(vertxContext, serviceDef));
+        Optional<TransientServiceDef> oServiceDef = clusterState.getServiceDefForVolume(volumeId);
+        if (oServiceDef.isPresent()) {
+            return Optional.of(nodes.remoteNode(vertxContext, oServiceDef.get()));
         } else {
             return Optional.absent();
         }
     }
 
+    // same as getNodeForVolume except that volumes on this node are
+    // read directly instead of through this node's http interface
+    public Optional<XNode> getReadNodeForVolume(VertxContext<Server> vertxContext, String volumeId) {
+        Nodes nodes = vertxContext.verticle().nodes();
+        Optional<TransientServiceDef> oServiceDef = state.getServiceDefForVolume(volumeId);
+        if (oServiceDef.isPresent()) {
+            TransientServiceDef serviceDef = oServiceDef.get();
+            if (isLocal(nodes, serviceDef)) {
+                return Optional.of(new LocalNode(vertxContext, nodes.volumeManager()));
+            } else {
+                return Optional.of(nodes.remoteNode(vertxContext, serviceDef));
+            }
+        } else {
+            return Optional.absent();
+        }
+    }
+
+    public boolean isLocalVolume(VertxContext<Server> vertxContext, String volumeId) {
+        Optional<TransientServiceDef> oServiceDef = state.getServiceDefForVolume(volumeId);
+        return oServiceDef.isPresent() && isLocal(vertxContext.verticle().nodes(), oServiceDef.get());
+    }
+
+    private boolean isLocal(Nodes nodes, TransientServiceDef serviceDef) {
+        return nodes.isDataNode()
+                && nodes.volumeManager() != null
+                && serviceDef.getId().equals(nodes.getNodeId());
+    }
+
     public Optional<TransientServiceDef> getServiceDefForVolume(String volumeId) {
         checkStarted();
-        Map<String, TransientServiceDef> snapshot = nodesByStartedVolume;
-        return snapshot != null ? Optional.fromNullable(snapshot.get(volumeId)) : Optional.absent();
+        return state.getServiceDefForVolume(volumeId);
     }
 
     public Optional<TransientServiceDef> getCurrentMaintainerNode() {
         checkStarted();
-        return fromNullable(currentMaintainerNode);
+        return state.getMaintainerNode();
     }
 
     public TransientServiceDef getCurrentMasterNode() {
         checkStarted();
-        List<TransientServiceDef> snapshot = masterNodes;
+        List<TransientServiceDef> snapshot = state.getMasterNodes();
         Preconditions.checkState(!snapshot.isEmpty(), "no elected master node");
         Preconditions.checkState(snapshot.size() <= 1, "more than one elected master node");
         return snapshot.get(0);
@@ -173,7 +229,7 @@ public class ClusterInfo {
 
             @Override
             public void handle(Long event) {
-                updateClusterInfo(vertxContext)
+                refresh(vertxContext, false)
                         .subscribe(new Subscriber<Void>() {
                             @Override
                             public void onCompleted() {
@@ -206,6 +262,95 @@ public class ClusterInfo {
         checkState(started, "Not started");
     }
 
+    protected Observable<Void> refresh(VertxContext<Server> vertxContext, boolean all) {
+        if (MEMBERSHIP_POLL.equals(membershipMode)) {
+            return updateClusterInfo(vertxContext);
+        } else {
+            return gossip(vertxContext, all);
+        }
+    }
+
+    // one round of gossip. This node's entry is sent to a few random live nodes and
+    // what they know that this node doesn't comes back in the reply. Cluster hosts
+    // are used as seeds to join the cluster and to heal partitions. When all is
+    // true every live node and every seed is gossiped with
+    protected Observable<Void> gossip(VertxContext<Server> vertxContext, boolean all) {
+        return aVoid()
+                .flatMap(aVoid -> {
+                    Nodes nodes = vertxContext.verticle().nodes();
+                    long now = System.currentTimeMillis();
+                    updateSelf(now);
+                    round++;
+
+                    List<TransientServiceDef> peers = new ArrayList<>();
+                    for (TransientServiceDef serviceDef : membership.getLiveNodes(now)) {
+                        if (!membership.getNodeId().equals(serviceDef.getId())) {
+                            peers.add(serviceDef);
+                        }
+                    }
+                    List<HostAndPort> seeds = new ArrayList<>();
+                    for (HostAndPort clusterHost : nodes.getClusterHosts()) {
+                        if (!nodes.getPublishAddresses().contains(clusterHost)) {
+                            seeds.add(clusterHost);
+                        }
+                    }
+
+                    List<XNode> targets = new ArrayList<>();
+                    if (all) {
+                        for (TransientServiceDef peer : peers) {
+                            targets.add(nodes.remoteNode(vertxContext, peer));
+                        }
+                        for (HostAndPort seed : seeds) {
+                            targets.add(nodes.remoteNode(vertxContext, seed));
+                        }
+                    } else {
+                        Collections.shuffle(peers, random);
+                        for (TransientServiceDef peer : peers.subList(0, Math.min(gossipFanout, peers.size()))) {
+                            targets.add(nodes.remoteNode(vertxContext, peer));
+                        }
+                        if (!seeds.isEmpty() && (peers.size() < gossipFanout || round % SEED_ROUND_INTERVAL == 0)) {
+                            targets.add(nodes.remoteNode(vertxContext, seeds.get(random.nextInt(seeds.size()))));
+                        }
+                    }
+
+                    // only the stats that changed within the last few rounds are sent.
+                    // Nodes that missed them get them in the reply to their own gossip
+                    JsonObject message = membership.newMessage(now, refreshInterval * 3);
+
+                    List<Observable<Void>> exchanges = new ArrayList<>(targets.size());
+                    for (XNode target : targets) {
+                        exchanges.add(
+                                target.gossip(message)
+                                        .doOnNext(reply -> membership.mergeReply(reply, System.currentTimeMillis()))
+                                        .map(new ToVoid<>())
+                                        .onErrorResumeNext(throwable -> {
+                                            LOGGER.debug("Handling Gossip Error", throwable);
+                                            return Defer.aVoid();
+                                        }));
+                    }
+                    return Observable.merge(exchanges)
+                            .toList()
+                            .map(new ToVoid<>());
+                })
+                .doOnNext(aVoid -> updateState(System.currentTimeMillis()));
+    }
+
+    protected void updateSelf(long now) {
+        Optional<TransientServiceDef> oStats = vertxContext.verticle().getNodeStats().getStats();
+        if (oStats.isPresent()) {
+            membership.updateSelf(oStats.get(), now);
+        }
+    }
+
+    // a new state is only built when a node joined, left or changed
+    protected synchronized void updateState(long now) {
+        Map<String, Long> updatedLiveVersions = membership.getLiveVersions(now);
+        if (!updatedLiveVersions.equals(liveVersions)) {
+            liveVersions = updatedLiveVersions;
+            state = new ClusterState(state.getVersion() + 1, membership.getLiveNodes(now));
+        }
+    }
+
     protected Observable<Void> updateClusterInfo(VertxContext<Server> vertxContext) {
         Nodes nodes = vertxContext.verticle().nodes();
         List<TransientServiceDef> transientServiceDefs = new ArrayList<>();
@@ -224,66 +369,6 @@ public class ClusterInfo {
                     });
         })
                 .map(new ToVoid<>())
-                .doOnNext(aVoid -> {
-
-                    int updatedNumberOfStartedVolumes = 0;
-
-                    Map<String, TransientServiceDef> updatedNodesByStartedVolume = new HashMap<>();
-                    NavigableMap<Long, Set<String>> updatedStartedVolumeIdByUseableSpace = new TreeMap<>();
-                    List<TransientServiceDef> updatedMasterNodes = new ArrayList<>();
-
-                    TransientServiceDef candidateMaintainerNode = null;
-
-                    for (TransientServiceDef transientServiceDef : transientServiceDefs) {
-
-                        if (Boolean.TRUE.equals(transientServiceDef.getMaster().orNull())) {
-                            updatedMasterNodes.add(transientServiceDef);
-                        }
-
-                        if (candidateMaintainerNode == null) {
-                            candidateMaintainerNode = transientServiceDef;
-                        } else {
-                            long currentDocumentCount = candidateMaintainerNode.getDocumentCount().or(0L);
-                            long candidateDocumentCount = transientServiceDef.getDocumentCount().or(0L);
-                            if (candidateDocumentCount < currentDocumentCount) {
-                                candidateMaintainerNode = transientServiceDef;
-                            }
-                        }
-
-                        for (XVolume<?> xVolume : transientServiceDef.getVolumes()) {
-                            Optional<String> oVolumeId = xVolume.getId();
-                            Optional<Status> oStatus = xVolume.getStatus();
-                            Optional<Long> oUseableSpace = xVolume.getUsableSpace();
-                            if (oVolumeId.isPresent()
-                                    && oStatus.isPresent()
-                                    && oUseableSpace.isPresent()) {
-                                Status status = oStatus.get();
-                                if (Status.STARTED.equals(status)) {
-                                    String volumeId = oVolumeId.get();
-
-                                    long useableSpace = oUseableSpace.get();
-
-                                    updatedNumberOfStartedVolumes++;
-                                    Set<String> volumeIdsForSpace = updatedStartedVolumeIdByUseableSpace.get(useableSpace);
-                                    if (volumeIdsForSpace == null) {
-                                        volumeIdsForSpace = new HashSet<>();
-                                        updatedStartedVolumeIdByUseableSpace.put(useableSpace, volumeIdsForSpace);
-                                    }
-                                    volumeIdsForSpace.add(volumeId);
-
-
-                                    updatedNodesByStartedVolume.put(volumeId, transientServiceDef);
-                                }
-                            }
-                        }
-                    }
-
-                    numberOfStartedVolumes = updatedNumberOfStartedVolumes;
-                    startedVolumeIdByUseableSpace = updatedStartedVolumeIdByUseableSpace;
-                    nodesByStartedVolume = updatedNodesByStartedVolume;
-                    currentMaintainerNode = candidateMaintainerNode;
-                    allNodes = transientServiceDefs;
-                    masterNodes = updatedMasterNodes;
-                });
+                .doOnNext(aVoid -> state = new ClusterState(state.getVersion() + 1, transientServiceDefs));
     }
 }
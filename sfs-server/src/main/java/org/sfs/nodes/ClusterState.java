@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes;
+
+import com.google.common.base.Optional;
+import org.sfs.vo.TransientServiceDef;
+import org.sfs.vo.XVolume;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static com.google.common.base.Optional.fromNullable;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Collections.unmodifiableNavigableMap;
+import static org.sfs.filesystem.volume.Volume.Status;
+
+// An immutable view of the cluster. A new one with a higher version is built
+// each time the nodes of the cluster or their stats change so that decisions
+// that look at the cluster more than once (placement for example) can take a
+// single snapshot and see consistent state
+public class ClusterState {
+
+    public static final ClusterState EMPTY = new ClusterState(0, Collections.emptyList());
+
+    private final long version;
+    private final List<TransientServiceDef> allNodes;
+    private final Map<String, TransientServiceDef> nodesByStartedVolume;
+    private final NavigableMap<Long, Set<String>> startedVolumeIdByUseableSpace;
+    private final Map<String, XVolume<?>> startedVolumesById;
+    private final int numberOfStartedVolumes;
+    private final TransientServiceDef maintainerNode;
+    private final List<TransientServiceDef> masterNodes;
+
+    public ClusterState(long version, List<TransientServiceDef> nodes) {
+        int updatedNumberOfStartedVolumes = 0;
+
+        Map<String, TransientServiceDef> updatedNodesByStartedVolume = new HashMap<>();
+        Map<String, XVolume<?>> updatedStartedVolumesById = new HashMap<>();
+        NavigableMap<Long, Set<String>> updatedStartedVolumeIdByUseableSpace = new TreeMap<>();
+        List<TransientServiceDef> updatedMasterNodes = new ArrayList<>();
+
+        TransientServiceDef candidateMaintainerNode = null;
+
+        for (TransientServiceDef transientServiceDef : nodes) {
+
+            if (Boolean.TRUE.equals(transientServiceDef.getMaster().orNull())) {
+                updatedMasterNodes.add(transientServiceDef);
+            }
+
+            // ties are broken by id so that every node picks the
+            // same maintainer no matter what order it learned the nodes in
+            if (candidateMaintainerNode == null) {
+                candidateMaintainerNode = transientServiceDef;
+            } else {
+                long currentDocumentCount = candidateMaintainerNode.getDocumentCount().or(0L);
+                long candidateDocumentCount = transientServiceDef.getDocumentCount().or(0L);
+                if (candidateDocumentCount < currentDocumentCount
+                        || (candidateDocumentCount == currentDocumentCount
+                        && transientServiceDef.getId().compareTo(candidateMaintainerNode.getId()) < 0)) {
+                    candidateMaintainerNode = transientServiceDef;
+                }
+            }
+
+            for (XVolume<?> xVolume : transientServiceDef.getVolumes()) {
+                Optional<String> oVolumeId = xVolume.getId();
+                Optional<Status> oStatus = xVolume.getStatus();
+                Optional<Long> oUseableSpace = xVolume.getUsableSpace();
+                if (oVolumeId.isPresent()
+                        && oStatus.isPresent()
+                        && oUseableSpace.isPresent()) {
+                    Status status = oStatus.get();
+                    if (Status.STARTED.equals(status)) {
+                        String volumeId = oVolumeId.get();
+
+                        long useableSpace = oUseableSpace.get();
+
+                        updatedNumberOfStartedVolumes++;
+                        Set<String> volumeIdsForSpace = updatedStartedVolumeIdByUseableSpace.get(useableSpace);
+                        if (volumeIdsForSpace == null) {
+                            volumeIdsForSpace = new HashSet<>();
+                            updatedStartedVolumeIdByUseableSpace.put(useableSpace, volumeIdsForSpace);
+                        }
+                        volumeIdsForSpace.add(volumeId);
+
+                        updatedNodesByStartedVolume.put(volumeId, transientServiceDef);
+                        updatedStartedVolumesById.put(volumeId, xVolume);
+                    }
+                }
+            }
+        }
+
+        this.version = version;
+        this.allNodes = unmodifiableList(new ArrayList<>(nodes));
+        this.numberOfStartedVolumes = updatedNumberOfStartedVolumes;
+        this.startedVolumeIdByUseableSpace = unmodifiableNavigableMap(updatedStartedVolumeIdByUseableSpace);
+        this.nodesByStartedVolume = unmodifiableMap(updatedNodesByStartedVolume);
+        this.startedVolumesById = unmodifiableMap(updatedStartedVolumesById);
+        this.maintainerNode = candidateMaintainerNode;
+        this.masterNodes = unmodifiableList(updatedMasterNodes);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<TransientServiceDef> getAllNodes() {
+        return allNodes;
+    }
+
+    public int getNumberOfStartedVolumes() {
+        return numberOfStartedVolumes;
+    }
+
+    public NavigableMap<Long, Set<String>> getStartedVolumeIdByUseableSpace() {
+        return startedVolumeIdByUseableSpace;
+    }
+
+    public Optional<XVolume<?>> getStartedVolume(String volumeId) {
+        return fromNullable(startedVolumesById.get(volumeId));
+    }
+
+    public Optional<TransientServiceDef> getServiceDefForVolume(String volumeId) {
+        return fromNullable(nodesByStartedVolume.get(volumeId));
+    }
+
+    public Iterable<TransientServiceDef> getNodesWithStartedVolumes() {
+        return nodesByStartedVolume.values();
+    }
+
+    public Optional<TransientServiceDef> getMaintainerNode() {
+        return fromNullable(maintainerNode);
+    }
+
+    public List<TransientServiceDef> getMasterNodes() {
+        return masterNodes;
+    }
+}
@@ -19,10 +19,12 @@ package org.sfs.nodes;
 import com.google.common.base.Optional;
 import com.google.common.net.HostAndPort;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.streams.ReadStream;
 import org.sfs.Server;
 import org.sfs.VertxContext;
+import org.sfs.filesystem.volume.BlobAddress;
 import org.sfs.filesystem.volume.DigestBlob;
 import org.sfs.filesystem.volume.HeaderBlob;
 import org.sfs.filesystem.volume.ReadStreamBlob;
@@ -32,26 +34,38 @@ import org.sfs.filesystem.volume.WriteStreamBlob;
 import org.sfs.io.BufferEndableWriteStream;
 import org.sfs.io.DigestEndableWriteStream;
 import org.sfs.io.DigestReadStream;
+import org.sfs.io.MultiEndableWriteStream;
 import org.sfs.io.NullEndableWriteStream;
+import org.sfs.io.PipedEndableWriteStream;
+import org.sfs.io.PipedReadStream;
 import org.sfs.rx.Defer;
 import org.sfs.rx.HandleServerToBusy;
 import org.sfs.rx.Holder2;
+import org.sfs.util.HttpStatusCodeException;
 import org.sfs.util.MessageDigestFactory;
 import org.sfs.vo.TransientServiceDef;
 import rx.Observable;
 import rx.functions.Func1;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import static com.google.common.base.Joiner.on;
 import static com.google.common.base.Optional.of;
 import static com.google.common.net.HostAndPort.fromHost;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
 import static java.lang.String.format;
+import static java.net.HttpURLConnection.HTTP_UNAVAILABLE;
+import static org.sfs.io.AsyncIO.pump;
 import static org.sfs.rx.Defer.just;
+import static org.sfs.rx.RxHelper.combineSinglesDelayError;
 import static rx.Observable.defer;
 
 public class LocalNode extends AbstractNode {
 
     private static final Logger LOGGER = getLogger(LocalNode.class);
+    private static final int BATCH_CONCURRENCY = 8;
     private final VolumeManager volumeManager;
     private final HostAndPort hostAndPort;
     private final VertxContext<Server> vertxContext;
@@ -68,6 +82,11 @@ public class LocalNode extends AbstractNode {
         return Defer.just(nodeStats.getStats());
     }
 
+    @Override
+    public Observable<JsonObject> gossip(JsonObject message) {
+        return defer(() -> Defer.just(vertxContext.verticle().getClusterInfo().mergeGossip(message)));
+    }
+
     @Override
     public Observable<Optional<DigestBlob>> checksum(String volumeId, long position, Optional<Long> oOffset, Optional<Long> oLength, MessageDigestFactory... messageDigestFactories) {
         return defer(() -> {
@@ -137,6 +156,45 @@ public class LocalNode extends AbstractNode {
         });
     }
 
+    @Override
+    public Observable<List<Optional<DigestBlob>>> checksum(List<BlobAddress> blobAddresses, MessageDigestFactory... messageDigestFactories) {
+        return forEach(blobAddresses, blobAddress -> checksum(blobAddress.getVolume(), blobAddress.getPosition(), Optional.absent(), Optional.absent(), messageDigestFactories));
+    }
+
+    @Override
+    public Observable<List<Optional<HeaderBlob>>> acknowledge(List<BlobAddress> blobAddresses) {
+        return forEach(blobAddresses, blobAddress -> acknowledge(blobAddress.getVolume(), blobAddress.getPosition()));
+    }
+
+    @Override
+    public Observable<List<Optional<HeaderBlob>>> delete(List<BlobAddress> blobAddresses) {
+        return forEach(blobAddresses, blobAddress -> delete(blobAddress.getVolume(), blobAddress.getPosition()));
+    }
+
+    // a few addresses are processed at a time and the results are put back in the order
+    // of the addresses. An address that fails doesn't fail the others
+    protected <T> Observable<List<Optional<T>>> forEach(List<BlobAddress> blobAddresses, Func1<BlobAddress, Observable<Optional<T>>> func) {
+        return Observable.range(0, blobAddresses.size())
+                .flatMap(index -> {
+                    BlobAddress blobAddress = blobAddresses.get(index);
+                    return defer(() -> func.call(blobAddress))
+                            .onErrorResumeNext(throwable -> {
+                                LOGGER.warn("Handling error for " + blobAddress, throwable);
+                                return just(Optional.<T>absent());
+                            })
+                            .singleOrDefault(Optional.absent())
+                            .map(result -> new Holder2<>(index, result));
+                }, BATCH_CONCURRENCY)
+                .toSortedList((left, right) -> Integer.compare(left.value0(), right.value0()))
+                .map(holders -> {
+                    List<Optional<T>> results = new ArrayList<>(holders.size());
+                    for (Holder2<Integer, Optional<T>> holder : holders) {
+                        results.add(holder.value1());
+                    }
+                    return results;
+                });
+    }
+
     @Override
     public Observable<Optional<ReadStreamBlob>> createReadStream(String volumeId, long position, Optional<Long> offset, Optional<Long> length) {
         return defer(() -> {
@@ -176,37 +234,150 @@ public class LocalNode extends AbstractNode {
 
     @Override
     public Observable<NodeWriteStreamBlob> createWriteStream(String volumeId, long length, final MessageDigestFactory... messageDigestFactories) {
-        LocalNode _this = this;
         return defer(() -> {
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug(format("createWriteStream {volumeId=%s,length=%d,messageDigests=%s}", volumeId, length, on(',').join(messageDigestFactories)));
             }
             final Volume volume = volumeManager.get(volumeId).get();
             return volume.putDataStream(vertxContext.vertx(), length)
-                    .map((Func1<WriteStreamBlob, NodeWriteStreamBlob>) writeStreamBlob -> new NodeWriteStreamBlob(_this) {
-                        @Override
-                        public Observable<DigestBlob> consume(ReadStream<Buffer> src) {
-                            DigestReadStream digestWriteStream = new DigestReadStream(src, messageDigestFactories);
-                            return writeStreamBlob.consume(digestWriteStream)
-                                    .map(aVoid -> {
-                                        DigestBlob digestBlob =
-                                                new DigestBlob(writeStreamBlob.getVolume(),
-                                                        writeStreamBlob.getPosition(),
-                                                        writeStreamBlob.getLength());
-                                        for (MessageDigestFactory messageDigestFactory : messageDigestFactories) {
-                                            digestBlob.withDigest(messageDigestFactory, digestWriteStream.getDigest(messageDigestFactory).get());
-                                        }
-                                        return digestBlob;
-                                    });
-                        }
-                    });
+                    .map(writeStreamBlob -> toNodeWriteStreamBlob(writeStreamBlob, messageDigestFactories));
+        }).onErrorResumeNext(new HandleServerToBusy<>());
+    }
+
+    @Override
+    public Observable<NodeWriteStreamBlob> createChunkedWriteStream(String volumeId, long maxLength, final MessageDigestFactory... messageDigestFactories) {
+        return defer(() -> {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(format("createChunkedWriteStream {volumeId=%s,maxLength=%d,messageDigests=%s}", volumeId, maxLength, on(',').join(messageDigestFactories)));
+            }
+            final Volume volume = volumeManager.get(volumeId).get();
+            return volume.putChunkedDataStream(vertxContext.vertx(), maxLength)
+                    .map(writeStreamBlob -> toNodeWriteStreamBlob(writeStreamBlob, messageDigestFactories));
         }).onErrorResumeNext(new HandleServerToBusy<>());
     }
 
+    @Override
+    public Observable<ChainWriteStreamBlob> createChainWriteStream(String volumeId, long length, List<String> downstreamVolumeIds, final MessageDigestFactory... messageDigestFactories) {
+        return createChainWriteStream(volumeId, length, false, downstreamVolumeIds, messageDigestFactories);
+    }
+
+    @Override
+    public Observable<ChainWriteStreamBlob> createChunkedChainWriteStream(String volumeId, long maxLength, List<String> downstreamVolumeIds, final MessageDigestFactory... messageDigestFactories) {
+        return createChainWriteStream(volumeId, maxLength, true, downstreamVolumeIds, messageDigestFactories);
+    }
+
+    // the next volume in the chain is connected before the local blob is created
+    // so that a broken chain fails before anything has been written
+    protected Observable<ChainWriteStreamBlob> createChainWriteStream(String volumeId, long length, boolean chunked, List<String> downstreamVolumeIds, final MessageDigestFactory... messageDigestFactories) {
+        return defer(() -> {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(format("createChainWriteStream {volumeId=%s,length=%d,chunked=%s,downstreamVolumeIds=%s,messageDigests=%s}", volumeId, length, chunked, downstreamVolumeIds, on(',').join(messageDigestFactories)));
+            }
+            Observable<NodeWriteStreamBlob> oLocal =
+                    chunked
+                            ? createChunkedWriteStream(volumeId, length, messageDigestFactories)
+                            : createWriteStream(volumeId, length, messageDigestFactories);
+            if (downstreamVolumeIds.isEmpty()) {
+                return oLocal.map(this::toChainWriteStreamBlob);
+            }
+            String downstreamVolumeId = downstreamVolumeIds.get(0);
+            List<String> remainingVolumeIds = downstreamVolumeIds.subList(1, downstreamVolumeIds.size());
+            Optional<XNode> oDownstreamNode = vertxContext.verticle().getClusterInfo().getNodeForVolume(vertxContext, downstreamVolumeId);
+            if (!oDownstreamNode.isPresent()) {
+                throw new HttpStatusCodeException(format("Volume %s not found", downstreamVolumeId), HTTP_UNAVAILABLE);
+            }
+            XNode downstreamNode = oDownstreamNode.get();
+            Observable<ChainWriteStreamBlob> oDownstream =
+                    chunked
+                            ? downstreamNode.createChunkedChainWriteStream(downstreamVolumeId, length, remainingVolumeIds, messageDigestFactories)
+                            : downstreamNode.createChainWriteStream(downstreamVolumeId, length, remainingVolumeIds, messageDigestFactories);
+            return oDownstream
+                    .flatMap(downstream ->
+                            oLocal.map(local -> toChainWriteStreamBlob(local, downstream)));
+        });
+    }
+
+    protected ChainWriteStreamBlob toChainWriteStreamBlob(NodeWriteStreamBlob local) {
+        return new ChainWriteStreamBlob(this) {
+            @Override
+            public Observable<List<DigestBlob>> consume(ReadStream<Buffer> src) {
+                return local.consume(src)
+                        .map(Collections::singletonList);
+            }
+        };
+    }
+
+    protected ChainWriteStreamBlob toChainWriteStreamBlob(NodeWriteStreamBlob local, ChainWriteStreamBlob downstream) {
+        return new ChainWriteStreamBlob(this) {
+            @Override
+            public Observable<List<DigestBlob>> consume(ReadStream<Buffer> src) {
+                PipedReadStream localReadStream = new PipedReadStream();
+                PipedReadStream downstreamReadStream = new PipedReadStream();
+                MultiEndableWriteStream multiWriteStream =
+                        new MultiEndableWriteStream(
+                                new PipedEndableWriteStream(localReadStream),
+                                new PipedEndableWriteStream(downstreamReadStream));
+                Observable<Void> producer = pump(src, multiWriteStream).single();
+                Observable<List<DigestBlob>> consumer =
+                        combineSinglesDelayError(
+                                local.consume(localReadStream),
+                                downstream.consume(downstreamReadStream),
+                                (digestBlob, downstreamDigestBlobs) -> {
+                                    List<DigestBlob> digestBlobs = new ArrayList<>(downstreamDigestBlobs.size() + 1);
+                                    digestBlobs.add(digestBlob);
+                                    digestBlobs.addAll(downstreamDigestBlobs);
+                                    return digestBlobs;
+                                });
+                // the zip operator will not work here
+                // since the subscriptions need to run
+                // in parallel due to the pipe connections
+                return combineSinglesDelayError(
+                        producer,
+                        consumer,
+                        (aVoid, digestBlobs) -> digestBlobs);
+            }
+        };
+    }
+
+    protected NodeWriteStreamBlob toNodeWriteStreamBlob(WriteStreamBlob writeStreamBlob, MessageDigestFactory... messageDigestFactories) {
+        return new NodeWriteStreamBlob(this) {
+            @Override
+            public Observable<DigestBlob> consume(ReadStream<Buffer> src) {
+                DigestReadStream digestWriteStream = new DigestReadStream(src, messageDigestFactories);
+                return writeStreamBlob.consume(digestWriteStream)
+                        .map(aVoid -> {
+                            // read the length once consumed since chunked
+                            // writes only know their length at the end
+                            DigestBlob digestBlob =
+                                    new DigestBlob(writeStreamBlob.getVolume(),
+                                            writeStreamBlob.getPosition(),
+                                            writeStreamBlob.getLength());
+                            for (MessageDigestFactory messageDigestFactory : messageDigestFactories) {
+                                digestBlob.withDigest(messageDigestFactory, digestWriteStream.getDigest(messageDigestFactory).get());
+                            }
+                            return digestBlob;
+                        });
+            }
+        };
+    }
+
     @Override
     public String toString() {
         return "LocalNode{" +
                 "hostAndPort=" + hostAndPort +
                 '}';
     }
+
+    @Override
+    public Observable<Void> invalidateMetadata(String id, long minimumVersion) {
+        return defer(() -> {
+            vertxContext.verticle().metadataCache().invalidate(id, minimumVersion);
+            return Defer.aVoid();
+        });
+    }
+
+    @Override
+    public Observable<Void> flushUsageCounters() {
+        return defer(() -> vertxContext.verticle().usageCounters().flush(vertxContext));
+    }
 }
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.sfs.vo.TransientServiceDef;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The nodes of the cluster as learned by gossip. Each node owns its own entry and is
+// the only one that advances it. The heartbeat advances every round and the version
+// only when the stats other nodes use change, so that gossip only carries the stats of
+// nodes that changed. Both start at the time the node started so that the entry of a
+// restarted node is always newer than what the cluster remembers of it. A node whose
+// heartbeat hasn't advanced within failureTimeout is taken to be down
+public class Membership {
+
+    private final String nodeId;
+    private final long failureTimeout;
+    private final Map<String, Member> members = new HashMap<>();
+
+    public Membership(String nodeId, long failureTimeout) {
+        this.nodeId = nodeId;
+        this.failureTimeout = failureTimeout;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getFailureTimeout() {
+        return failureTimeout;
+    }
+
+    public synchronized void updateSelf(TransientServiceDef serviceDef, long now) {
+        String fingerprint = fingerprint(serviceDef);
+        Member self = members.get(nodeId);
+        if (self == null) {
+            members.put(nodeId, new Member(serviceDef, fingerprint, now, now, now));
+        } else {
+            self.heartbeat++;
+            self.lastHeartbeatAt = now;
+            if (!fingerprint.equals(self.fingerprint)) {
+                self.version++;
+                self.serviceDef = serviceDef;
+                self.fingerprint = fingerprint;
+                self.changedAt = now;
+            }
+        }
+    }
+
+    // the heartbeats and versions of the live nodes. The stats are only
+    // included for the nodes that changed within the last recentWindow ms
+    public synchronized JsonObject newMessage(long now, long recentWindow) {
+        JsonArray jsonMembers = new JsonArray();
+        for (Member member : members.values()) {
+            if (isLive(member, now)) {
+                jsonMembers.add(member.toJsonObject(now - member.changedAt <= recentWindow));
+            }
+        }
+        return new JsonObject()
+                .put("members", jsonMembers);
+    }
+
+    // merges a message from another node and returns what this
+    // node knows that is newer than what was in the message
+    public synchronized JsonObject merge(JsonObject message, long now) {
+        Map<String, long[]> theirs = merge0(message, now);
+        JsonArray jsonMembers = new JsonArray();
+        for (Member member : members.values()) {
+            if (isLive(member, now)) {
+                long[] their = theirs.get(member.serviceDef.getId());
+                if (their == null || member.version > their[1]) {
+                    jsonMembers.add(member.toJsonObject(true));
+                } else if (member.heartbeat > their[0]) {
+                    jsonMembers.add(member.toJsonObject(false));
+                }
+            }
+        }
+        return new JsonObject()
+                .put("members", jsonMembers);
+    }
+
+    public synchronized void mergeReply(JsonObject reply, long now) {
+        merge0(reply, now);
+    }
+
+    public synchronized List<TransientServiceDef> getLiveNodes(long now) {
+        List<TransientServiceDef> serviceDefs = new ArrayList<>(members.size());
+        for (Member member : members.values()) {
+            if (isLive(member, now)) {
+                serviceDefs.add(member.serviceDef);
+            }
+        }
+        serviceDefs.sort((o1, o2) -> o1.getId().compareTo(o2.getId()));
+        return serviceDefs;
+    }
+
+    // the version of each live node. Equal between two calls
+    // when no node has changed, joined or been found to be down
+    public synchronized Map<String, Long> getLiveVersions(long now) {
+        Map<String, Long> versions = new HashMap<>();
+        for (Member member : members.values()) {
+            if (isLive(member, now)) {
+                versions.put(member.serviceDef.getId(), member.version);
+            }
+        }
+        return versions;
+    }
+
+    protected boolean isLive(Member member, long now) {
+        return nodeId.equals(member.serviceDef.getId()) || now - member.lastHeartbeatAt <= failureTimeout;
+    }
+
+    protected Map<String, long[]> merge0(JsonObject message, long now) {
+        Map<String, long[]> theirs = new HashMap<>();
+        JsonArray jsonMembers = message.getJsonArray("members");
+        if (jsonMembers == null) {
+            return theirs;
+        }
+        for (Object o : jsonMembers) {
+            JsonObject jsonMember = (JsonObject) o;
+            String id = jsonMember.getString("id");
+            Long heartbeat = jsonMember.getLong("heartbeat");
+            Long version = jsonMember.getLong("version");
+            if (id == null || heartbeat == null || version == null) {
+                continue;
+            }
+            theirs.put(id, new long[]{heartbeat, version});
+            // this node is the only source of its own entry
+            if (nodeId.equals(id)) {
+                continue;
+            }
+            JsonObject jsonNode = jsonMember.getJsonObject("node");
+            Member member = members.get(id);
+            if (member == null) {
+                if (jsonNode != null) {
+                    TransientServiceDef serviceDef = toServiceDef(jsonNode);
+                    members.put(id, new Member(serviceDef, fingerprint(serviceDef), heartbeat, version, now));
+                }
+            } else {
+                if (heartbeat > member.heartbeat) {
+                    member.heartbeat = heartbeat;
+                    member.lastHeartbeatAt = now;
+                }
+                if (version > member.version && jsonNode != null) {
+                    TransientServiceDef serviceDef = toServiceDef(jsonNode);
+                    member.version = version;
+                    member.serviceDef = serviceDef;
+                    member.fingerprint = fingerprint(serviceDef);
+                    member.changedAt = now;
+                }
+            }
+        }
+        return theirs;
+    }
+
+    protected TransientServiceDef toServiceDef(JsonObject jsonNode) {
+        TransientServiceDef serviceDef = new TransientServiceDef();
+        serviceDef.merge(jsonNode);
+        return serviceDef;
+    }
+
+    // the stats without the ones that change all the time
+    // and that other nodes don't make decisions on
+    protected String fingerprint(TransientServiceDef serviceDef) {
+        JsonObject jsonObject = serviceDef.toJsonObject();
+        jsonObject.remove("update_ts");
+        jsonObject.remove("free_memory");
+        jsonObject.remove("total_memory");
+        return jsonObject.encode();
+    }
+
+    private static class Member {
+
+        private TransientServiceDef serviceDef;
+        private String fingerprint;
+        private long heartbeat;
+        private long version;
+        private long lastHeartbeatAt;
+        private long changedAt;
+
+        public Member(TransientServiceDef serviceDef, String fingerprint, long heartbeat, long version, long now) {
+            this.serviceDef = serviceDef;
+            this.fingerprint = fingerprint;
+            this.heartbeat = heartbeat;
+            this.version = version;
+            this.lastHeartbeatAt = now;
+            this.changedAt = now;
+        }
+
+        public JsonObject toJsonObject(boolean withNode) {
+            JsonObject jsonObject = new JsonObject()
+                    .put("id", serviceDef.getId())
+                    .put("heartbeat", heartbeat)
+                    .put("version", version);
+            if (withNode) {
+                jsonObject.put("node", serviceDef.toJsonObject());
+            }
+            return jsonObject;
+        }
+    }
+}
@@ -168,6 +168,7 @@ public class NodeStats {
                                     .setTotalMemory(runtime.totalMemory())
                                     .setDataNode(nodes.isDataNode())
                                     .setMaster(nodes.isMaster())
+                                    .setRack(nodes.getRack().orNull())
                                     .setFileSystem(fileSystemInfo)
                                     .setPublishAddresses(publishAddresses);
 
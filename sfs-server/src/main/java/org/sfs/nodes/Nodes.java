@@ -17,6 +17,7 @@
 package org.sfs.nodes;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.net.HostAndPort;
@@ -26,11 +27,13 @@ import io.vertx.core.logging.Logger;
 import org.sfs.Server;
 import org.sfs.SfsVertx;
 import org.sfs.VertxContext;
+import org.sfs.block.AllocatorType;
 import org.sfs.filesystem.volume.VolumeManager;
 import org.sfs.rx.Defer;
 import org.sfs.rx.RxHelper;
 import org.sfs.rx.Sleep;
 import org.sfs.util.HttpClientRequestAndResponse;
+import org.sfs.util.MessageDigestFactory;
 import org.sfs.vo.TransientServiceDef;
 import rx.Observable;
 import rx.exceptions.CompositeException;
@@ -47,6 +50,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Optional.fromNullable;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.ImmutableList.copyOf;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
@@ -56,6 +60,7 @@ import static java.nio.file.Files.readAllBytes;
 import static java.nio.file.Files.write;
 import static java.nio.file.Paths.get;
 import static org.sfs.rx.Defer.aVoid;
+import static org.sfs.util.MessageDigestFactory.SHA512;
 
 public class Nodes {
 
@@ -75,6 +80,15 @@ public class Nodes {
     private long nodeStatsRefreshInterval;
     private ImmutableList<HostAndPort> clusterHosts;
     private ImmutableList<HostAndPort> publishAddresses;
+    private ReplicaReadStats replicaReadStats = new ReplicaReadStats(0, 0, 0);
+    private int segmentReadPrefetch = 0;
+    private MessageDigestFactory blobDigest = SHA512;
+    private VolumePlacement volumePlacement = VolumePlacement.MOST_FREE_SPACE;
+    private VolumeWriteStats volumeWriteStats = new VolumeWriteStats(0);
+    private String rack;
+    private boolean chainWrites = false;
+    private long writeStragglerTimeout = 0;
+    private long writeStragglerBuffer = 0;
 
     public Nodes() {
     }
@@ -89,10 +103,25 @@ public class Nodes {
             final int numberOfObjectReplicas,
             final long nodeStatsRefreshInterval,
             final boolean dataNode,
-            final boolean masterNode) {
+            final boolean masterNode,
+            final int volumeFsyncBatchSize,
+            final long volumeFsyncWindow,
+            final AllocatorType volumeAllocatorType,
+            final double readHedgePercentile,
+            final long readHedgeMinDelay,
+            final int segmentReadPrefetch,
+            final MessageDigestFactory blobDigest,
+            final VolumePlacement volumePlacement,
+            final String rack,
+            final boolean chainWrites,
+            final long writeStragglerTimeout,
+            final long writeStragglerBuffer) {
 
         checkArgument(numberOfObjectReplicas >= 0, "Replicas must be > 0");
         checkArgument(nodeStatsRefreshInterval >= 1000, "RefreshInterval must be greater than 1000");
+        checkArgument(segmentReadPrefetch >= 0, "SegmentReadPrefetch must be >= 0");
+        checkArgument(writeStragglerTimeout >= 0, "WriteStragglerTimeout must be >= 0");
+        checkArgument(writeStragglerBuffer >= 0, "WriteStragglerBuffer must be >= 0");
 
         this.dataNode = dataNode;
         this.masterNode = masterNode;
@@ -103,10 +132,19 @@ public class Nodes {
         this.connectTimeout = connectTimeout;
         this.responseTimeout = responseTimeout;
         this.nodeIdPath = get(vertxContext.verticle().sfsFileSystem().workingDirectory().toString(), "node", ".nodeId");
-        this.volumeManager = new VolumeManager(vertxContext.verticle().sfsFileSystem().workingDirectory());
+        this.volumeManager = new VolumeManager(vertxContext.verticle().sfsFileSystem().workingDirectory(), volumeFsyncBatchSize, volumeFsyncWindow, volumeAllocatorType);
         this.publishAddresses = copyOf(publicAddresses);
         this.clusterHosts = copyOf(clusterHosts);
         this.nodeStatsRefreshInterval = nodeStatsRefreshInterval;
+        this.replicaReadStats = new ReplicaReadStats(readHedgePercentile, readHedgeMinDelay, responseTimeout);
+        this.segmentReadPrefetch = segmentReadPrefetch;
+        this.blobDigest = blobDigest;
+        this.volumePlacement = volumePlacement;
+        this.volumeWriteStats = new VolumeWriteStats(responseTimeout);
+        this.rack = rack;
+        this.chainWrites = chainWrites;
+        this.writeStragglerTimeout = writeStragglerTimeout;
+        this.writeStragglerBuffer = writeStragglerBuffer;
 
         return aVoid()
                 .flatMap(aVoid -> initNode(vertxContext)
@@ -219,6 +257,47 @@ public class Nodes {
         return nodeId;
     }
 
+    public ReplicaReadStats replicaReadStats() {
+        return replicaReadStats;
+    }
+
+    public int getSegmentReadPrefetch() {
+        return segmentReadPrefetch;
+    }
+
+    // the digest data nodes compute to verify new blobs
+    public MessageDigestFactory getBlobDigest() {
+        return blobDigest;
+    }
+
+    public VolumePlacement getVolumePlacement() {
+        return volumePlacement;
+    }
+
+    public VolumeWriteStats volumeWriteStats() {
+        return volumeWriteStats;
+    }
+
+    public Optional<String> getRack() {
+        return fromNullable(rack);
+    }
+
+    // when true replicated segments are written to the first data node
+    // which forwards them along the chain of replica volumes
+    public boolean isChainWrites() {
+        return chainWrites;
+    }
+
+    // how long replica writes are waited for once a quorum of them have finished
+    public long getWriteStragglerTimeout() {
+        return writeStragglerTimeout;
+    }
+
+    // how many bytes a replica write may fall behind the quorum before it's abandoned
+    public long getWriteStragglerBuffer() {
+        return writeStragglerBuffer;
+    }
+
     public Observable<Void> close(VertxContext<Server> vertxContext) {
         String aNodeId = nodeId;
         return aVoid()
@@ -24,11 +24,13 @@ import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpClient;
 import io.vertx.core.http.HttpClientRequest;
 import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.streams.ReadStream;
 import org.sfs.Server;
 import org.sfs.VertxContext;
+import org.sfs.filesystem.volume.BlobAddress;
 import org.sfs.filesystem.volume.DigestBlob;
 import org.sfs.filesystem.volume.HeaderBlob;
 import org.sfs.filesystem.volume.ReadStreamBlob;
@@ -44,11 +46,18 @@ import org.sfs.util.HttpClientRequestAndResponse;
 import org.sfs.util.MessageDigestFactory;
 import org.sfs.vo.TransientServiceDef;
 import rx.Observable;
+import rx.functions.Func1;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Charsets.UTF_8;
 import static com.google.common.base.Optional.of;
+import static com.google.common.collect.Lists.partition;
 import static com.google.common.io.BaseEncoding.base64;
 import static com.google.common.net.UrlEscapers.urlFragmentEscaper;
 import static io.vertx.core.http.HttpHeaders.CONTENT_LENGTH;
@@ -61,11 +70,16 @@ import static java.net.HttpURLConnection.HTTP_NO_CONTENT;
 import static java.net.HttpURLConnection.HTTP_OK;
 import static org.sfs.io.AsyncIO.pump;
 import static org.sfs.rx.RxHelper.combineSinglesDelayError;
+import static org.sfs.util.Limits.MAX_BLOB_BATCH_SIZE;
 import static org.sfs.util.SfsHttpHeaders.X_SFS_REMOTE_NODE_TOKEN;
+import static org.sfs.util.SfsHttpQueryParams.DOWNSTREAM_VOLUME;
+import static org.sfs.util.SfsHttpQueryParams.ID;
 import static org.sfs.util.SfsHttpQueryParams.KEEP_ALIVE_TIMEOUT;
 import static org.sfs.util.SfsHttpQueryParams.LENGTH;
+import static org.sfs.util.SfsHttpQueryParams.MAX_LENGTH;
 import static org.sfs.util.SfsHttpQueryParams.OFFSET;
 import static org.sfs.util.SfsHttpQueryParams.POSITION;
+import static org.sfs.util.SfsHttpQueryParams.VERSION;
 import static org.sfs.util.SfsHttpQueryParams.VOLUME;
 import static org.sfs.util.SfsHttpQueryParams.X_CONTENT_COMPUTED_DIGEST_PREFIX;
 import static rx.Observable.just;
@@ -136,6 +150,45 @@ public class RemoteNode extends AbstractNode {
                 .singleOrDefault(Optional.absent());
     }
 
+    @Override
+    public Observable<JsonObject> gossip(JsonObject message) {
+        return Defer.aVoid()
+                .map(aVoid -> Buffer.buffer(message.encode(), UTF_8.toString()))
+                .flatMap(body ->
+                        nodes.connectFirstAvailable(
+                                vertx,
+                                hostAndPorts,
+                                hostAndPort -> {
+                                    String url =
+                                            format("http://%s/_internal_node/gossip", hostAndPort.toString());
+
+                                    if (LOGGER.isDebugEnabled()) {
+                                        LOGGER.debug("gossip " + url);
+                                    }
+
+                                    ObservableFuture<HttpClientResponse> handler = RxHelper.observableFuture();
+
+                                    HttpClientRequest httpClientRequest =
+                                            httpClient
+                                                    .postAbs(url, httpClientResponse -> {
+                                                        httpClientResponse.pause();
+                                                        handler.complete(httpClientResponse);
+                                                    })
+                                                    .exceptionHandler(handler::fail)
+                                                    .putHeader(X_SFS_REMOTE_NODE_TOKEN, remoteNodeSecret)
+                                                    .putHeader(CONTENT_LENGTH, valueOf(body.length()))
+                                                    .setTimeout(responseTimeout);
+                                    httpClientRequest.end(body);
+
+                                    return handler.map(httpClientResponse -> new HttpClientRequestAndResponse(httpClientRequest, httpClientResponse));
+                                }))
+                .map(HttpClientRequestAndResponse::getResponse)
+                .flatMap(httpClientResponse ->
+                        Defer.just(httpClientResponse)
+                                .flatMap(new HttpClientResponseBodyBuffer(HTTP_OK))
+                                .map(new BufferToJsonObject()));
+    }
+
 
     @Override
     public Observable<Optional<DigestBlob>> checksum(String volumeId, long position, Optional<Long> oOffset, Optional<Long> oLength, MessageDigestFactory... messageDigestFactories) {
@@ -340,6 +393,123 @@ public class RemoteNode extends AbstractNode {
 
     }
 
+    @Override
+    public Observable<List<Optional<DigestBlob>>> checksum(List<BlobAddress> blobAddresses, MessageDigestFactory... messageDigestFactories) {
+        return batch("/_internal_node_data/blobs/checksum", blobAddresses, messageDigestFactories, DigestBlob::new);
+    }
+
+    @Override
+    public Observable<List<Optional<HeaderBlob>>> acknowledge(List<BlobAddress> blobAddresses) {
+        return batch("/_internal_node_data/blobs/ack", blobAddresses, new MessageDigestFactory[0], HeaderBlob::new);
+    }
+
+    @Override
+    public Observable<List<Optional<HeaderBlob>>> delete(List<BlobAddress> blobAddresses) {
+        return batch("/_internal_node_data/blobs/delete", blobAddresses, new MessageDigestFactory[0], HeaderBlob::new);
+    }
+
+    // large lists are sent MAX_BLOB_BATCH_SIZE addresses per request
+    protected <T> Observable<List<Optional<T>>> batch(String path, List<BlobAddress> blobAddresses, MessageDigestFactory[] messageDigestFactories, Func1<JsonObject, T> toBlob) {
+        if (blobAddresses.isEmpty()) {
+            return Defer.just(Collections.emptyList());
+        }
+        return Observable.from(partition(blobAddresses, MAX_BLOB_BATCH_SIZE))
+                .concatMap(batch -> batchRequest(path, batch, messageDigestFactories, toBlob))
+                .collect(() -> new ArrayList<Optional<T>>(blobAddresses.size()), List::addAll)
+                .map(results -> (List<Optional<T>>) results);
+    }
+
+    protected <T> Observable<List<Optional<T>>> batchRequest(String path, List<BlobAddress> blobAddresses, MessageDigestFactory[] messageDigestFactories, Func1<JsonObject, T> toBlob) {
+        return Defer.aVoid()
+                .map(aVoid -> {
+                    JsonArray jsonBlobs = new JsonArray();
+                    for (BlobAddress blobAddress : blobAddresses) {
+                        jsonBlobs.add(blobAddress.toJsonObject());
+                    }
+                    return Buffer.buffer(new JsonObject().put("blobs", jsonBlobs).encode(), UTF_8.toString());
+                })
+                .flatMap(body ->
+                        nodes.connectFirstAvailable(
+                                vertx,
+                                hostAndPorts,
+                                hostAndPort -> {
+                                    Escaper escaper = urlFragmentEscaper();
+
+                                    StringBuilder urlBuilder =
+                                            new StringBuilder("http://")
+                                                    .append(hostAndPort.toString())
+                                                    .append(path)
+                                                    .append('?')
+                                                    .append(KEEP_ALIVE_TIMEOUT)
+                                                    .append('=')
+                                                    .append(responseTimeout / 2);
+
+                                    for (MessageDigestFactory instance : messageDigestFactories) {
+                                        urlBuilder =
+                                                urlBuilder
+                                                        .append('&')
+                                                        .append(escaper.escape(format("%s%s", X_CONTENT_COMPUTED_DIGEST_PREFIX, instance.getValue())))
+                                                        .append('=')
+                                                        .append("true");
+                                    }
+
+                                    final String url = urlBuilder.toString();
+
+                                    if (LOGGER.isDebugEnabled()) {
+                                        LOGGER.debug("post " + url + " with " + blobAddresses.size() + " blobs");
+                                    }
+
+                                    ObservableFuture<HttpClientResponse> handler = RxHelper.observableFuture();
+
+                                    HttpClientRequest httpClientRequest =
+                                            httpClient
+                                                    .postAbs(url, httpClientResponse -> {
+                                                        httpClientResponse.pause();
+                                                        handler.complete(httpClientResponse);
+                                                    })
+                                                    .exceptionHandler(handler::fail)
+                                                    .putHeader(X_SFS_REMOTE_NODE_TOKEN, remoteNodeSecret)
+                                                    .putHeader(CONTENT_LENGTH, valueOf(body.length()))
+                                                    .setTimeout(responseTimeout);
+                                    httpClientRequest.end(body);
+
+                                    return handler.map(httpClientResponse -> new HttpClientRequestAndResponse(httpClientRequest, httpClientResponse));
+                                }))
+                .map(HttpClientRequestAndResponse::getResponse)
+                .flatMap(httpClientResponse ->
+                        just(httpClientResponse)
+                                .flatMap(new HttpClientKeepAliveResponseBodyBuffer())
+                                .map(buffer -> {
+                                    if (HTTP_OK != httpClientResponse.statusCode()) {
+                                        throw new HttpClientResponseException(httpClientResponse, buffer);
+                                    }
+                                    return buffer;
+                                })
+                                .map(new BufferToJsonObject())
+                                .map(jsonObject -> {
+                                    Integer code = jsonObject.getInteger("code");
+                                    JsonArray jsonResults = jsonObject.getJsonArray("results");
+                                    if (code == null
+                                            || HTTP_OK != code
+                                            || jsonResults == null
+                                            || jsonResults.size() != blobAddresses.size()) {
+                                        throw new HttpClientResponseException(httpClientResponse, jsonObject);
+                                    }
+                                    List<Optional<T>> results = new ArrayList<>(jsonResults.size());
+                                    for (Object o : jsonResults) {
+                                        JsonObject jsonResult = (JsonObject) o;
+                                        Integer resultCode = jsonResult.getInteger("code");
+                                        if (resultCode != null && HTTP_OK == resultCode) {
+                                            results.add(of(toBlob.call(jsonResult.getJsonObject("blob"))));
+                                        } else {
+                                            results.add(absent());
+                                        }
+                                    }
+                                    return results;
+                                }))
+                .single();
+    }
+
     @Override
     public Observable<Optional<ReadStreamBlob>> createReadStream(String volumeId, final long position, final Optional<Long> oOffset, final Optional<Long> oLength) {
         return Defer.aVoid()
@@ -412,6 +582,13 @@ public class RemoteNode extends AbstractNode {
                             public Observable<Void> produce(BufferEndableWriteStream endableWriteStream) {
                                 return pump(httpClientResponse, endableWriteStream);
                             }
+
+                            @Override
+                            public void discard() {
+                                // the response is paused so close the connection
+                                // instead of reading a body that nobody wants
+                                httpClientResponse.request().reset();
+                            }
                         };
                         return just(of(readStreamBlob));
                     } else if (HTTP_NOT_FOUND == status) {
@@ -519,6 +696,44 @@ public class RemoteNode extends AbstractNode {
 
     @Override
     public Observable<NodeWriteStreamBlob> createWriteStream(final String volumeId, final long length, final MessageDigestFactory... messageDigestFactories) {
+        return createWriteStream(volumeId, length, false, messageDigestFactories);
+    }
+
+    // the request body is sent chunked and the data node sizes the blob
+    // from what it receives, reserving at most maxLength bytes
+    @Override
+    public Observable<NodeWriteStreamBlob> createChunkedWriteStream(final String volumeId, final long maxLength, final MessageDigestFactory... messageDigestFactories) {
+        return createWriteStream(volumeId, maxLength, true, messageDigestFactories);
+    }
+
+    @Override
+    public Observable<ChainWriteStreamBlob> createChainWriteStream(final String volumeId, final long length, final List<String> downstreamVolumeIds, final MessageDigestFactory... messageDigestFactories) {
+        return createWriteStream(volumeId, length, false, downstreamVolumeIds, messageDigestFactories);
+    }
+
+    @Override
+    public Observable<ChainWriteStreamBlob> createChunkedChainWriteStream(final String volumeId, final long maxLength, final List<String> downstreamVolumeIds, final MessageDigestFactory... messageDigestFactories) {
+        return createWriteStream(volumeId, maxLength, true, downstreamVolumeIds, messageDigestFactories);
+    }
+
+    protected Observable<NodeWriteStreamBlob> createWriteStream(final String volumeId, final long length, final boolean chunked, final MessageDigestFactory... messageDigestFactories) {
+        return createWriteStream(volumeId, length, chunked, Collections.emptyList(), messageDigestFactories)
+                .map(this::toNodeWriteStreamBlob);
+    }
+
+    protected NodeWriteStreamBlob toNodeWriteStreamBlob(ChainWriteStreamBlob chainWriteStreamBlob) {
+        return new NodeWriteStreamBlob(this) {
+            @Override
+            public Observable<DigestBlob> consume(ReadStream<Buffer> src) {
+                return chainWriteStreamBlob.consume(src)
+                        .map(digestBlobs -> digestBlobs.get(0));
+            }
+        };
+    }
+
+    // when downstreamVolumeIds isn't empty the data node forwards
+    // what it receives to the next volume in the list
+    protected Observable<ChainWriteStreamBlob> createWriteStream(final String volumeId, final long length, final boolean chunked, final List<String> downstreamVolumeIds, final MessageDigestFactory... messageDigestFactories) {
         final XNode _this = this;
 
         return Defer.aVoid()
@@ -540,6 +755,18 @@ public class RemoteNode extends AbstractNode {
                                     urlBuilder = urlBuilder.append(VOLUME);
                                     urlBuilder = urlBuilder.append('=');
                                     urlBuilder = urlBuilder.append(escaper.escape(volumeId));
+                                    if (chunked) {
+                                        urlBuilder = urlBuilder.append('&');
+                                        urlBuilder = urlBuilder.append(MAX_LENGTH);
+                                        urlBuilder = urlBuilder.append('=');
+                                        urlBuilder = urlBuilder.append(length);
+                                    }
+                                    for (String downstreamVolumeId : downstreamVolumeIds) {
+                                        urlBuilder = urlBuilder.append('&');
+                                        urlBuilder = urlBuilder.append(DOWNSTREAM_VOLUME);
+                                        urlBuilder = urlBuilder.append('=');
+                                        urlBuilder = urlBuilder.append(escaper.escape(downstreamVolumeId));
+                                    }
 
                                     if (messageDigestFactories.length > 0) {
                                         for (MessageDigestFactory instance : messageDigestFactories) {
@@ -569,8 +796,12 @@ public class RemoteNode extends AbstractNode {
                                                     })
                                                     .exceptionHandler(handler::fail)
                                                     .putHeader(X_SFS_REMOTE_NODE_TOKEN, remoteNodeSecret)
-                                                    .putHeader(CONTENT_LENGTH, valueOf(length))
                                                     .setTimeout(responseTimeout);
+                                    if (chunked) {
+                                        httpClientRequest.setChunked(true);
+                                    } else {
+                                        httpClientRequest.putHeader(CONTENT_LENGTH, valueOf(length));
+                                    }
                                     httpClientRequest.sendHead();
 
                                     return handler.map(httpClientResponse -> new HttpClientRequestAndResponse(httpClientRequest, httpClientResponse));
@@ -583,7 +814,7 @@ public class RemoteNode extends AbstractNode {
                         httpClientResponse.resume();
                         throw new HttpClientResponseException(httpClientResponse, Buffer.buffer());
                     }
-                    Observable<DigestBlob> oResponse =
+                    Observable<List<DigestBlob>> oResponse =
                             Defer.just(httpClientResponse)
                                     .flatMap(new HttpClientKeepAliveResponseBodyBuffer())
                                     .map(new BufferToJsonObject())
@@ -595,20 +826,38 @@ public class RemoteNode extends AbstractNode {
                                         return jsonObject;
                                     })
                                     .map(jsonObject -> {
-                                        JsonObject blob = jsonObject.getJsonObject("blob");
-                                        return new DigestBlob(blob);
+                                        // chained writes return the blob of every volume in the chain
+                                        JsonArray blobs = jsonObject.getJsonArray("blobs");
+                                        if (blobs == null) {
+                                            return Collections.singletonList(new DigestBlob(jsonObject.getJsonObject("blob")));
+                                        }
+                                        List<DigestBlob> digestBlobs = new ArrayList<>(blobs.size());
+                                        for (Object o : blobs) {
+                                            digestBlobs.add(new DigestBlob((JsonObject) o));
+                                        }
+                                        if (digestBlobs.size() != downstreamVolumeIds.size() + 1) {
+                                            throw new HttpClientResponseException(httpClientResponse, jsonObject);
+                                        }
+                                        return digestBlobs;
                                     });
 
-                    NodeWriteStreamBlob writeStreamBlob = new NodeWriteStreamBlob(_this) {
+                    ChainWriteStreamBlob writeStreamBlob = new ChainWriteStreamBlob(_this) {
                         @Override
-                        public Observable<DigestBlob> consume(ReadStream<Buffer> src) {
-
+                        public Observable<List<DigestBlob>> consume(ReadStream<Buffer> src) {
+                            // the request is reset if src fails or the write is abandoned
+                            // before it finishes so the data node stops waiting for the rest
+                            AtomicBoolean terminated = new AtomicBoolean(false);
                             return combineSinglesDelayError(
-                                    pump(src, new HttpClientRequestEndableWriteStream(httpClientRequest)),
+                                    pump(src, new HttpClientRequestEndableWriteStream(httpClientRequest))
+                                            .doOnError(throwable -> httpClientRequest.reset()),
                                     oResponse,
-                                    (aVoid1, digestBlob) -> digestBlob);
-
-
+                                    (aVoid1, digestBlobs) -> digestBlobs)
+                                    .doOnTerminate(() -> terminated.set(true))
+                                    .doOnUnsubscribe(() -> {
+                                        if (!terminated.get()) {
+                                            httpClientRequest.reset();
+                                        }
+                                    });
                         }
                     };
                     return writeStreamBlob;
@@ -621,4 +870,83 @@ public class RemoteNode extends AbstractNode {
                 "hostAndPorts=" + hostAndPorts +
                 '}';
     }
+
+    @Override
+    public Observable<Void> invalidateMetadata(String id, long minimumVersion) {
+        return Defer.aVoid()
+                .flatMap(aVoid ->
+                        nodes.connectFirstAvailable(
+                                vertx,
+                                hostAndPorts,
+                                hostAndPort -> {
+                                    Escaper escaper = urlFragmentEscaper();
+                                    final String url =
+                                            format("http://%s/_internal_node/metadata/invalidate?%s=%s&%s=%d",
+                                                    hostAndPort.toString(),
+                                                    escaper.escape(ID),
+                                                    escaper.escape(id),
+                                                    escaper.escape(VERSION),
+                                                    minimumVersion);
+
+                                    if (LOGGER.isDebugEnabled()) {
+                                        LOGGER.debug("invalidateMetadata " + url);
+                                    }
+
+                                    ObservableFuture<HttpClientResponse> handler = RxHelper.observableFuture();
+
+                                    HttpClientRequest httpClientRequest =
+                                            httpClient
+                                                    .postAbs(url, httpClientResponse -> {
+                                                        httpClientResponse.pause();
+                                                        handler.complete(httpClientResponse);
+                                                    })
+                                                    .exceptionHandler(handler::fail)
+                                                    .putHeader(X_SFS_REMOTE_NODE_TOKEN, remoteNodeSecret)
+                                                    .setTimeout(responseTimeout);
+                                    httpClientRequest.end();
+
+                                    return handler.map(httpClientResponse -> new HttpClientRequestAndResponse(httpClientRequest, httpClientResponse));
+                                }))
+                .map(HttpClientRequestAndResponse::getResponse)
+                .flatMap(httpClientResponse ->
+                        Defer.just(httpClientResponse)
+                                .flatMap(new HttpClientResponseBodyBuffer(HTTP_NO_CONTENT))
+                                .map(buffer -> (Void) null));
+    }
+
+    @Override
+    public Observable<Void> flushUsageCounters() {
+        return Defer.aVoid()
+                .flatMap(aVoid ->
+                        nodes.connectFirstAvailable(
+                                vertx,
+                                hostAndPorts,
+                                hostAndPort -> {
+                                    final String url = format("http://%s/_internal_node/usage/flush", hostAndPort.toString());
+
+                                    if (LOGGER.isDebugEnabled()) {
+                                        LOGGER.debug("flushUsageCounters " + url);
+                                    }
+
+                                    ObservableFuture<HttpClientResponse> handler = RxHelper.observableFuture();
+
+                                    HttpClientRequest httpClientRequest =
+                                            httpClient
+                                                    .postAbs(url, httpClientResponse -> {
+                                                        httpClientResponse.pause();
+                                                        handler.complete(httpClientResponse);
+                                                    })
+                                                    .exceptionHandler(handler::fail)
+                                                    .putHeader(X_SFS_REMOTE_NODE_TOKEN, remoteNodeSecret)
+                                                    .setTimeout(responseTimeout);
+                                    httpClientRequest.end();
+
+                                    return handler.map(httpClientResponse -> new HttpClientRequestAndResponse(httpClientRequest, httpClientResponse));
+                                }))
+                .map(HttpClientRequestAndResponse::getResponse)
+                .flatMap(httpClientResponse ->
+                        Defer.just(httpClientResponse)
+                                .flatMap(new HttpClientResponseBodyBuffer(HTTP_NO_CONTENT))
+                                .map(buffer -> (Void) null));
+    }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+// Recently observed read latencies and error rates of the nodes that blobs are
+// read from. Used to try the replicas that are likely to respond first and to
+// decide how long to wait for a replica before reading from another one as well
+public class ReplicaReadStats {
+
+    private static final double ALPHA = 0.2;
+    private static final int SAMPLE_SIZE = 1024;
+    private static final int MIN_SAMPLES = 32;
+    private static final int RECALCULATE_INTERVAL = 64;
+    private final ConcurrentMap<String, NodeStats> nodeStats = new ConcurrentHashMap<>();
+    private final double hedgePercentile;
+    private final long hedgeMinDelay;
+    private final long failurePenalty;
+    private final long[] samples = new long[SAMPLE_SIZE];
+    private int sampleCount = 0;
+    private int sampleIndex = 0;
+    private int samplesSinceCalculated = 0;
+    private long hedgeDelay = -1;
+
+    // hedgePercentile is the percentile of recent read latencies after which a second replica is
+    // read. Hedging is disabled if it's 0. failurePenalty is what a failed read is expected to cost
+    public ReplicaReadStats(double hedgePercentile, long hedgeMinDelay, long failurePenalty) {
+        checkArgument(hedgePercentile >= 0 && hedgePercentile < 100, "hedgePercentile must be >= 0 and < 100");
+        checkArgument(hedgeMinDelay >= 0, "hedgeMinDelay must be >= 0");
+        checkArgument(failurePenalty >= 0, "failurePenalty must be >= 0");
+        this.hedgePercentile = hedgePercentile;
+        this.hedgeMinDelay = hedgeMinDelay;
+        this.failurePenalty = failurePenalty;
+    }
+
+    public void record(String nodeId, long latency, boolean failed) {
+        NodeStats stats = nodeStats.get(nodeId);
+        if (stats == null) {
+            NodeStats existing = nodeStats.putIfAbsent(nodeId, stats = new NodeStats());
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        stats.record(latency, failed);
+        if (!failed) {
+            synchronized (samples) {
+                samples[sampleIndex] = latency;
+                sampleIndex = (sampleIndex + 1) % SAMPLE_SIZE;
+                sampleCount = Math.min(sampleCount + 1, SAMPLE_SIZE);
+                samplesSinceCalculated++;
+            }
+        }
+    }
+
+    // the expected cost of reading from the node. Nodes that haven't
+    // been read from yet are expected to be as fast as possible
+    public double expectedLatency(String nodeId) {
+        NodeStats stats = nodeStats.get(nodeId);
+        return stats != null ? stats.expectedLatency(failurePenalty) : 0;
+    }
+
+    // how long to wait for a read before starting another one,
+    // or -1 if reads should not be hedged
+    public long hedgeDelay() {
+        if (hedgePercentile <= 0) {
+            return -1;
+        }
+        synchronized (samples) {
+            if (sampleCount < MIN_SAMPLES) {
+                return -1;
+            }
+            if (hedgeDelay < 0 || samplesSinceCalculated >= RECALCULATE_INTERVAL) {
+                long[] sorted = Arrays.copyOf(samples, sampleCount);
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(hedgePercentile / 100 * sorted.length) - 1;
+                hedgeDelay = Math.max(hedgeMinDelay, sorted[Math.max(index, 0)]);
+                samplesSinceCalculated = 0;
+            }
+            return hedgeDelay;
+        }
+    }
+
+    private static class NodeStats {
+
+        private double latency = -1;
+        private double errorRate = 0;
+
+        public synchronized void record(long observed, boolean failed) {
+            errorRate = ALPHA * (failed ? 1 : 0) + (1 - ALPHA) * errorRate;
+            if (!failed) {
+                latency = latency < 0 ? observed : ALPHA * observed + (1 - ALPHA) * latency;
+            }
+        }
+
+        public synchronized double expectedLatency(long failurePenalty) {
+            return Math.max(latency, 0) + errorRate * failurePenalty;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes;
+
+// What's known about a volume when deciding where to write. The space and
+// write queue are from the last cluster stats refresh, the in flight writes
+// and latency are what this node observed
+public class VolumeCandidate {
+
+    private final String volumeId;
+    private final String nodeId;
+    private final String rack;
+    private final long usableSpace;
+    private final long writeQueueBytes;
+    private final int inFlight;
+    private final double latency;
+
+    public VolumeCandidate(String volumeId, String nodeId, String rack, long usableSpace, long writeQueueBytes, int inFlight, double latency) {
+        this.volumeId = volumeId;
+        this.nodeId = nodeId;
+        this.rack = rack;
+        this.usableSpace = usableSpace;
+        this.writeQueueBytes = writeQueueBytes;
+        this.inFlight = inFlight;
+        this.latency = latency;
+    }
+
+    public String getVolumeId() {
+        return volumeId;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    // null if the node doesn't have a rack
+    public String getRack() {
+        return rack;
+    }
+
+    public long getUsableSpace() {
+        return usableSpace;
+    }
+
+    public long getWriteQueueBytes() {
+        return writeQueueBytes;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public double getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+        return "VolumeCandidate{" +
+                "volumeId='" + volumeId + '\'' +
+                ", nodeId='" + nodeId + '\'' +
+                ", rack='" + rack + '\'' +
+                ", usableSpace=" + usableSpace +
+                ", writeQueueBytes=" + writeQueueBytes +
+                ", inFlight=" + inFlight +
+                ", latency=" + latency +
+                '}';
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Decides the order that volumes are tried in when writing a blob. The candidates
+// have already been checked for space. Writers take volumes from the front of the
+// returned list until enough copies have been connected, so the first
+// numberOfCopies entries are what the policy intends to write to and the rest
+// are fallbacks for volumes that can't be connected to
+public enum VolumePlacement {
+
+    // the volumes with the most usable space first. Every write placed between two
+    // stats refreshes goes to the same volumes
+    MOST_FREE_SPACE {
+        @Override
+        public List<VolumeCandidate> order(List<VolumeCandidate> candidates, int numberOfCopies, Random random) {
+            return bySpace(candidates);
+        }
+    },
+    // for each copy two volumes are sampled, weighted by their usable space, and the
+    // one with the least load is used. Volumes on racks and nodes that don't have a copy
+    // yet are sampled first so that the copies end up in different failure domains
+    POWER_OF_TWO_CHOICES {
+        @Override
+        public List<VolumeCandidate> order(List<VolumeCandidate> candidates, int numberOfCopies, Random random) {
+            List<VolumeCandidate> remaining = new ArrayList<>(candidates);
+            List<VolumeCandidate> ordered = new ArrayList<>(candidates.size());
+            Set<String> usedNodes = new HashSet<>();
+            Set<String> usedRacks = new HashSet<>();
+            // pick a few more than needed so that a volume that can't be
+            // connected to is also replaced by a load aware choice
+            int numberToPick = Math.min(remaining.size(), numberOfCopies * 2);
+            for (int i = 0; i < numberToPick; i++) {
+                List<VolumeCandidate> pool = mostDiverse(remaining, usedNodes, usedRacks);
+                VolumeCandidate first = sample(pool, random, null);
+                VolumeCandidate second = sample(pool, random, first);
+                VolumeCandidate chosen = second != null && cost(second) < cost(first) ? second : first;
+                ordered.add(chosen);
+                remaining.remove(chosen);
+                usedNodes.add(chosen.getNodeId());
+                if (chosen.getRack() != null) {
+                    usedRacks.add(chosen.getRack());
+                }
+            }
+            ordered.addAll(bySpace(remaining));
+            return ordered;
+        }
+    };
+
+    // a write queue of this many bytes doubles the cost of a volume
+    private static final double WRITE_QUEUE_BYTES_SCALE = 8 * 1024 * 1024;
+    // a latency of this many milliseconds per megabyte doubles the cost of a volume
+    private static final double LATENCY_SCALE = 10;
+
+    public abstract List<VolumeCandidate> order(List<VolumeCandidate> candidates, int numberOfCopies, Random random);
+
+    public static VolumePlacement fromNameIfExists(String name) {
+        if (name != null) {
+            for (VolumePlacement placement : values()) {
+                if (placement.name().equalsIgnoreCase(name)) {
+                    return placement;
+                }
+            }
+        }
+        return null;
+    }
+
+    // what writing another blob to the volume is expected to cost
+    protected static double cost(VolumeCandidate candidate) {
+        return (1 + candidate.getInFlight())
+                * (1 + candidate.getWriteQueueBytes() / WRITE_QUEUE_BYTES_SCALE)
+                * (1 + candidate.getLatency() / LATENCY_SCALE);
+    }
+
+    protected static List<VolumeCandidate> bySpace(List<VolumeCandidate> candidates) {
+        List<VolumeCandidate> ordered = new ArrayList<>(candidates);
+        Collections.sort(ordered, (left, right) -> Long.compare(right.getUsableSpace(), left.getUsableSpace()));
+        return ordered;
+    }
+
+    // the candidates on racks and nodes that don't have a copy. If there are none then
+    // the candidates on nodes that don't have a copy and if there are none of those
+    // then all the candidates
+    protected static List<VolumeCandidate> mostDiverse(List<VolumeCandidate> candidates, Set<String> usedNodes, Set<String> usedRacks) {
+        List<VolumeCandidate> newRack = new ArrayList<>();
+        List<VolumeCandidate> newNode = new ArrayList<>();
+        for (VolumeCandidate candidate : candidates) {
+            if (!usedNodes.contains(candidate.getNodeId())) {
+                newNode.add(candidate);
+                if (candidate.getRack() == null || !usedRacks.contains(candidate.getRack())) {
+                    newRack.add(candidate);
+                }
+            }
+        }
+        if (!newRack.isEmpty()) {
+            return newRack;
+        } else if (!newNode.isEmpty()) {
+            return newNode;
+        } else {
+            return candidates;
+        }
+    }
+
+    // a random candidate, other than exclude, with a probability
+    // proportional to its usable space. Null if there isn't one
+    protected static VolumeCandidate sample(List<VolumeCandidate> candidates, Random random, VolumeCandidate exclude) {
+        double totalSpace = 0;
+        int count = 0;
+        for (VolumeCandidate candidate : candidates) {
+            if (candidate != exclude) {
+                totalSpace += Math.max(candidate.getUsableSpace(), 1);
+                count++;
+            }
+        }
+        if (count <= 0) {
+            return null;
+        }
+        double target = random.nextDouble() * totalSpace;
+        VolumeCandidate last = null;
+        for (VolumeCandidate candidate : candidates) {
+            if (candidate != exclude) {
+                target -= Math.max(candidate.getUsableSpace(), 1);
+                last = candidate;
+                if (target < 0) {
+                    return candidate;
+                }
+            }
+        }
+        return last;
+    }
+}
@@ -18,6 +18,7 @@ package org.sfs.nodes;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.Iterables;
+import io.vertx.core.Context;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.logging.Logger;
@@ -26,22 +27,35 @@ import org.sfs.Server;
 import org.sfs.VertxContext;
 import org.sfs.filesystem.volume.DigestBlob;
 import org.sfs.io.BufferEndableWriteStream;
-import org.sfs.io.MultiEndableWriteStream;
+import org.sfs.io.DigestEndableWriteStream;
+import org.sfs.io.ErasureEncodeWriteStream;
+import org.sfs.io.NullEndableWriteStream;
 import org.sfs.io.PipedEndableWriteStream;
 import org.sfs.io.PipedReadStream;
+import org.sfs.io.QuorumEndableWriteStream;
 import org.sfs.rx.Defer;
+import org.sfs.rx.Holder2;
+import org.sfs.rx.ObservableFuture;
 import org.sfs.rx.RxHelper;
 import org.sfs.util.MessageDigestFactory;
+import org.sfs.vo.ErasureCoding;
 import org.sfs.vo.TransientServiceDef;
+import org.sfs.vo.XVolume;
 import rx.Observable;
+import rx.Subscription;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.NavigableMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Iterables.toArray;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
 import static java.util.Collections.singletonList;
@@ -51,6 +65,9 @@ import static org.sfs.rx.RxHelper.combineSinglesDelayError;
 public class VolumeReplicaGroup {
 
     private static final Logger LOGGER = getLogger(VolumeReplicaGroup.class);
+    // a chunked upload can be as long as its maxLength but most are far smaller so
+    // volumes only need this much space, or maxLength if it's smaller, to be used
+    private static final long MIN_CHUNKED_USEABLE_SPACE = 256L * 1024 * 1024;
     private final VertxContext<Server> vertxContext;
     private int numberOfObjectCopies;
     private boolean allowSameNode = false;
@@ -104,25 +121,135 @@ public class VolumeReplicaGroup {
     }
 
     public Observable<List<DigestBlob>> consume(final long length, final Iterable<MessageDigestFactory> messageDigestFactories, ReadStream<Buffer> src) {
-        return calculateNodeWriteStreamBlobs(length, toArray(messageDigestFactories, MessageDigestFactory.class))
+        return consume(length, false, toArray(messageDigestFactories, MessageDigestFactory.class), src);
+    }
+
+    // Same as consume but for streams whose length isn't known up front. Each
+    // replica reserves maxLength bytes and keeps what it actually receives
+    public Observable<List<DigestBlob>> consumeChunked(final long maxLength, final MessageDigestFactory messageDigestFactory, ReadStream<Buffer> src) {
+        return consume(maxLength, true, new MessageDigestFactory[]{messageDigestFactory}, src);
+    }
+
+    protected Observable<List<DigestBlob>> consume(final long length, boolean chunked, MessageDigestFactory[] messageDigestFactories, ReadStream<Buffer> src) {
+        if (numberOfObjectCopies > 1 && vertxContext.verticle().nodes().isChainWrites()) {
+            return consumeChain(length, chunked, messageDigestFactories, src);
+        }
+        return consume(calculateNodeWriteStreamBlobs(length, chunked, messageDigestFactories), src);
+    }
+
+    // Sends src once to the first volume of a chain and the data nodes forward it
+    // along the chain, so this node's upload bandwidth isn't divided by the number
+    // of copies. If the chain can't be connected every replica is written from here
+    protected Observable<List<DigestBlob>> consumeChain(final long length, boolean chunked, MessageDigestFactory[] messageDigestFactories, ReadStream<Buffer> src) {
+        return Observable.defer(() -> {
+            List<String> chainVolumeIds = new ArrayList<>(numberOfObjectCopies);
+            Set<String> seenNodes = new HashSet<>();
+            Set<String> seenVolumes = new HashSet<>();
+            for (VolumeCandidate candidate : placeVolumes(length, numberOfObjectCopies, chunked)) {
+                if (chainVolumeIds.size() >= numberOfObjectCopies) {
+                    break;
+                }
+                String volumeId = candidate.getVolumeId();
+                if (seenVolumes.add(volumeId)
+                        && clusterInfo.getNodeForVolume(vertxContext, volumeId).isPresent()
+                        && (allowSameNode || seenNodes.add(candidate.getNodeId()))) {
+                    chainVolumeIds.add(volumeId);
+                }
+            }
+            checkFoundSufficientVolumes(chainVolumeIds.size(), getQuorumMinNumberOfCopies(), false);
+
+            String headVolumeId = chainVolumeIds.get(0);
+            List<String> downstreamVolumeIds = chainVolumeIds.subList(1, chainVolumeIds.size());
+            XNode xNode = clusterInfo.getNodeForVolume(vertxContext, headVolumeId).get();
+            Observable<ChainWriteStreamBlob> oChainWriteStreamBlob =
+                    chunked
+                            ? xNode.createChunkedChainWriteStream(headVolumeId, length, downstreamVolumeIds, messageDigestFactories)
+                            : xNode.createChainWriteStream(headVolumeId, length, downstreamVolumeIds, messageDigestFactories);
+            return oChainWriteStreamBlob
+                    .map(Optional::of)
+                    .onErrorResumeNext(throwable -> {
+                        LOGGER.warn(String.format("Failed to connect chain %s", chainVolumeIds), throwable);
+                        return Defer.just(Optional.<ChainWriteStreamBlob>absent());
+                    })
+                    .flatMap(oConnected -> {
+                        if (oConnected.isPresent()) {
+                            return consumeChain(chainVolumeIds, oConnected.get(), src);
+                        }
+                        return consume(calculateNodeWriteStreamBlobs(length, chunked, messageDigestFactories), src);
+                    });
+        });
+    }
+
+    // this node only sees how long the whole chain took so every
+    // volume in the chain is recorded with that time
+    protected Observable<List<DigestBlob>> consumeChain(List<String> chainVolumeIds, ChainWriteStreamBlob chainWriteStreamBlob, ReadStream<Buffer> src) {
+        VolumeWriteStats volumeWriteStats = vertxContext.verticle().nodes().volumeWriteStats();
+        return Observable.defer(() -> {
+            long startTime = System.currentTimeMillis();
+            AtomicBoolean ended = new AtomicBoolean(false);
+            for (String volumeId : chainVolumeIds) {
+                volumeWriteStats.begin(volumeId);
+            }
+            return chainWriteStreamBlob.consume(src)
+                    .doOnNext(digestBlobs -> {
+                        if (ended.compareAndSet(false, true)) {
+                            long elapsed = System.currentTimeMillis() - startTime;
+                            for (int i = 0; i < chainVolumeIds.size(); i++) {
+                                volumeWriteStats.end(chainVolumeIds.get(i), elapsed, digestBlobs.get(i).getLength(), false);
+                            }
+                        }
+                    })
+                    .doOnError(throwable -> {
+                        if (ended.compareAndSet(false, true)) {
+                            long elapsed = System.currentTimeMillis() - startTime;
+                            for (String volumeId : chainVolumeIds) {
+                                volumeWriteStats.end(volumeId, elapsed, 0, true);
+                            }
+                        }
+                    })
+                    .doOnUnsubscribe(() -> {
+                        // abandoned before it finished
+                        if (ended.compareAndSet(false, true)) {
+                            long elapsed = System.currentTimeMillis() - startTime;
+                            for (String volumeId : chainVolumeIds) {
+                                volumeWriteStats.end(volumeId, elapsed, 0, true);
+                            }
+                        }
+                    });
+        });
+    }
+
+    // The upload only has to keep up with the quickest quorum of the replicas. The others
+    // are given a bounded buffer to fall behind by and once quorum replicas are written
+    // the others are waited for a bounded time. Replicas that fail, fall too far behind
+    // or are still running then are abandoned and left out of the blobs returned so
+    // that the segment is seen as missing copies and verify repair recreates them
+    protected Observable<List<DigestBlob>> consume(Observable<List<NodeWriteStreamBlob>> oNodeWriteStreamBlobs, ReadStream<Buffer> src) {
+        return oNodeWriteStreamBlobs
                 .flatMap(nodeWriteStreamBlobs -> {
+                    Nodes nodes = vertxContext.verticle().nodes();
                     int size = nodeWriteStreamBlobs.size();
+                    int quorum = Math.min(getQuorumMinNumberOfCopies(), size);
                     List<Observable<DigestBlob>> oDigests = new ArrayList<>(size);
-                    List<BufferEndableWriteStream> writeStreams = new ArrayList<>(size);
+                    List<PipedEndableWriteStream> pipes = new ArrayList<>(size);
                     for (int i = 0; i < size; i++) {
                         PipedReadStream readStream = new PipedReadStream();
                         PipedEndableWriteStream writeStream = new PipedEndableWriteStream(readStream);
                         Observable<DigestBlob> oDigest = nodeWriteStreamBlobs.get(i).consume(readStream);
                         oDigests.add(oDigest);
-                        writeStreams.add(writeStream);
+                        pipes.add(writeStream);
                     }
+                    List<BufferEndableWriteStream> writeStreams = new ArrayList<>(pipes);
 
-                    MultiEndableWriteStream multiWriteStream = new MultiEndableWriteStream(writeStreams);
-                    Observable<Void> producer = pump(src, multiWriteStream).single();
+                    QuorumEndableWriteStream quorumWriteStream = new QuorumEndableWriteStream(writeStreams, quorum, nodes.getWriteStragglerBuffer());
+                    Observable<Void> producer = pump(src, quorumWriteStream).single();
                     Observable<List<DigestBlob>> consumer =
-                            Observable.mergeDelayError(oDigests)
-                                    .toList()
-                                    .single();
+                            Observable.defer(() -> {
+                                ObservableFuture<List<DigestBlob>> handler = RxHelper.observableFuture();
+                                QuorumWrite quorumWrite = new QuorumWrite(vertxContext.vertx(), quorum, nodes.getWriteStragglerTimeout(), quorumWriteStream, pipes, handler);
+                                vertxContext.vertx().runOnContext(event -> quorumWrite.start(oDigests));
+                                return handler;
+                            });
                     // the zip operator will not work here
                     // since the subscriptions need to run
                     // in parallel due to the pipe connections
@@ -133,16 +260,75 @@ public class VolumeReplicaGroup {
                 });
     }
 
+    // Stripes src into the fragments of erasureCoding and writes the fragments listed in
+    // fragmentIndexes to distinct volumes. Fragments that aren't listed are computed and
+    // discarded, which is what allows missing fragments to be regenerated. Unlike replicas
+    // every fragment must be written since each one is a unique part of the segment.
+    // The returned blobs are in the same order as fragmentIndexes
+    public Observable<List<DigestBlob>> consume(final long length, ErasureCoding erasureCoding, List<Integer> fragmentIndexes, MessageDigestFactory messageDigestFactory, ReadStream<Buffer> src) {
+        long fragmentLength = erasureCoding.getFragmentLength(length);
+        int numberOfFragmentsToWrite = fragmentIndexes.size();
+        return getReplicaVolumesForWrite(Collections.emptyList(), fragmentLength, numberOfFragmentsToWrite, allowSameNode, messageDigestFactory)
+                .doOnNext(targetVolumes -> checkFoundSufficientVolumes(targetVolumes.size(), numberOfFragmentsToWrite, false))
+                .flatMap(targetVolumes -> {
+                    int numberOfFragments = erasureCoding.getNumberOfFragments();
+                    List<BufferEndableWriteStream> writeStreams = new ArrayList<>(numberOfFragments);
+                    for (int i = 0; i < numberOfFragments; i++) {
+                        writeStreams.add(new NullEndableWriteStream());
+                    }
+                    List<Observable<Holder2<Integer, DigestBlob>>> oDigests = new ArrayList<>(numberOfFragmentsToWrite);
+                    for (int i = 0; i < numberOfFragmentsToWrite; i++) {
+                        int fragmentIndex = fragmentIndexes.get(i);
+                        int order = i;
+                        PipedReadStream readStream = new PipedReadStream();
+                        DigestEndableWriteStream writeStream = new DigestEndableWriteStream(new PipedEndableWriteStream(readStream), messageDigestFactory);
+                        Observable<Holder2<Integer, DigestBlob>> oDigest =
+                                targetVolumes.get(i).getNodeWriteStreamBlob().consume(readStream)
+                                        .map(digestBlob -> {
+                                            // the volume must have received exactly what was sent since
+                                            // the digest sent is what the fragment will be verified against
+                                            checkState(digestBlob.getLength() == fragmentLength, "Fragment %s length was %s, expected %s", fragmentIndex, digestBlob.getLength(), fragmentLength);
+                                            checkState(Arrays.equals(writeStream.getDigest(messageDigestFactory).get(), digestBlob.getDigest(messageDigestFactory).get()), "Fragment %s digest mismatch", fragmentIndex);
+                                            return new Holder2<>(order, digestBlob);
+                                        });
+                        oDigests.add(oDigest);
+                        writeStreams.set(fragmentIndex, writeStream);
+                    }
+
+                    ErasureEncodeWriteStream erasureEncodeWriteStream = new ErasureEncodeWriteStream(erasureCoding, writeStreams);
+                    Observable<Void> producer = pump(src, erasureEncodeWriteStream).single();
+                    Observable<List<DigestBlob>> consumer =
+                            Observable.mergeDelayError(oDigests)
+                                    .toSortedList((left, right) -> Integer.compare(left.value0(), right.value0()))
+                                    .map(holders -> {
+                                        List<DigestBlob> digestBlobs = new ArrayList<>(holders.size());
+                                        for (Holder2<Integer, DigestBlob> holder : holders) {
+                                            digestBlobs.add(holder.value1());
+                                        }
+                                        return digestBlobs;
+                                    })
+                                    .single();
+                    return combineSinglesDelayError(
+                            producer,
+                            consumer,
+                            (aVoid, response) -> response);
+                });
+    }
+
     public Observable<List<ConnectedVolume>> getReplicaVolumesForWrite(List<ConnectedVolume> toIgnore, long requiredSpace, int numberOfReplicas, boolean allowSameNode, MessageDigestFactory... messageDigestFactories) {
+        return getReplicaVolumesForWrite(toIgnore, requiredSpace, numberOfReplicas, allowSameNode, false, messageDigestFactories);
+    }
+
+    protected Observable<List<ConnectedVolume>> getReplicaVolumesForWrite(List<ConnectedVolume> toIgnore, long requiredSpace, int numberOfReplicas, boolean allowSameNode, boolean chunked, MessageDigestFactory... messageDigestFactories) {
         if (numberOfReplicas > 0) {
-            return getVolumesForWrite(clusterInfo.getStartedVolumeIdByUseableSpace(), toIgnore, requiredSpace, numberOfReplicas, allowSameNode, messageDigestFactories);
+            return getVolumesForWrite(placeVolumes(requiredSpace, numberOfReplicas, chunked), toIgnore, requiredSpace, numberOfReplicas, allowSameNode, chunked, messageDigestFactories);
         }
         return Defer.just(Collections.emptyList());
     }
 
-    protected Observable<List<NodeWriteStreamBlob>> calculateNodeWriteStreamBlobs(final long length, final MessageDigestFactory... messageDigestFactories) {
+    protected Observable<List<NodeWriteStreamBlob>> calculateNodeWriteStreamBlobs(final long length, boolean chunked, final MessageDigestFactory... messageDigestFactories) {
         int replicaQuorumNumber = getQuorumMinNumberOfCopies();
-        return getReplicaVolumesForWrite(Collections.emptyList(), length, numberOfObjectCopies, allowSameNode, messageDigestFactories)
+        return getReplicaVolumesForWrite(Collections.emptyList(), length, numberOfObjectCopies, allowSameNode, chunked, messageDigestFactories)
                 .doOnNext(targetReplicaVolumes -> checkFoundSufficientVolumes(targetReplicaVolumes.size(), replicaQuorumNumber, false))
                 .flatMap(Observable::from)
                 .map(ConnectedVolume::getNodeWriteStreamBlob)
@@ -156,10 +342,53 @@ public class VolumeReplicaGroup {
         }
     }
 
-    protected Observable<List<ConnectedVolume>> getVolumesForWrite(NavigableMap<Long, Set<String>> volumesBySpace, List<ConnectedVolume> toSkip, long requiredSpace, int numberToCollect, boolean allowSameNode, MessageDigestFactory... messageDigestFactories) {
-        if (volumesBySpace != null && numberToCollect > 0) {
+    // the started volumes that have space for requiredSpace in the order that the placement
+    // policy wants them tried. When chunked requiredSpace is only the most that will be
+    // written so volumes only need MIN_CHUNKED_USEABLE_SPACE and the ones with the most
+    // headroom are tried first
+    protected List<VolumeCandidate> placeVolumes(long requiredSpace, int numberOfCopies, boolean chunked) {
+        Nodes nodes = vertxContext.verticle().nodes();
+        VolumeWriteStats volumeWriteStats = nodes.volumeWriteStats();
+        // one snapshot so that the volumes, their nodes and their stats agree
+        ClusterState clusterState = clusterInfo.getState();
+        List<VolumeCandidate> candidates = new ArrayList<>();
+        long minimumSpace = chunked ? Math.min(requiredSpace, MIN_CHUNKED_USEABLE_SPACE) : requiredSpace;
+        for (Map.Entry<Long, Set<String>> entry : clusterState.getStartedVolumeIdByUseableSpace().entrySet()) {
+            long useableSpace = entry.getKey();
+            if (useableSpace * 0.90 >= minimumSpace) {
+                for (String volumeId : entry.getValue()) {
+                    if (excludeVolumes != null && excludeVolumes.contains(volumeId)) {
+                        continue;
+                    }
+                    Optional<TransientServiceDef> oServiceDef = clusterState.getServiceDefForVolume(volumeId);
+                    if (oServiceDef.isPresent()) {
+                        TransientServiceDef serviceDef = oServiceDef.get();
+                        long writeQueueBytes = 0;
+                        Optional<XVolume<?>> oVolume = clusterState.getStartedVolume(volumeId);
+                        if (oVolume.isPresent() && oVolume.get().getDataFile().isPresent()) {
+                            writeQueueBytes = oVolume.get().getDataFile().get().getWriteQueueBytesPending().or(0L);
+                        }
+                        candidates.add(
+                                new VolumeCandidate(
+                                        volumeId,
+                                        serviceDef.getId(),
+                                        serviceDef.getRack().orNull(),
+                                        useableSpace,
+                                        writeQueueBytes,
+                                        volumeWriteStats.inFlight(volumeId),
+                                        volumeWriteStats.latency(volumeId)));
+                    }
+                }
+            }
+        }
+        if (chunked) {
+            return VolumePlacement.bySpace(candidates);
+        }
+        return nodes.getVolumePlacement().order(candidates, numberOfCopies, ThreadLocalRandom.current());
+    }
 
-            NavigableMap<Long, Set<String>> descendingMap = volumesBySpace.descendingMap();
+    protected Observable<List<ConnectedVolume>> getVolumesForWrite(List<VolumeCandidate> candidates, List<ConnectedVolume> toSkip, long requiredSpace, int numberToCollect, boolean allowSameNode, boolean chunked, MessageDigestFactory... messageDigestFactories) {
+        if (numberToCollect > 0) {
 
             List<ConnectedVolume> results = new ArrayList<>(numberToCollect);
 
@@ -169,61 +398,210 @@ public class VolumeReplicaGroup {
                 seenNodes.add(primaryTargetVolume.getNodeId());
                 seenVolumes.add(primaryTargetVolume.getVolumeId());
             }
-            if (excludeVolumes != null) {
-                seenVolumes.addAll(excludeVolumes);
-            }
             Vertx vertx = vertxContext.vertx();
-            return RxHelper.iterate(vertx, descendingMap.entrySet(), entry -> {
-                long useableSpace = entry.getKey();
-                if (useableSpace * 0.90 >= requiredSpace) {
-                    Set<String> volumeIds = entry.getValue();
-                    return RxHelper.iterate(vertx, volumeIds, volumeId -> {
-                        if (seenVolumes.add(volumeId)) {
-                            Optional<TransientServiceDef> oServiceDef = clusterInfo.getServiceDefForVolume(volumeId);
-                            if (oServiceDef.isPresent()) {
-                                TransientServiceDef serviceDef = oServiceDef.get();
-                                Optional<XNode> oXNode = clusterInfo.getNodeForVolume(vertxContext, volumeId);
-                                if (oXNode.isPresent()) {
-                                    XNode xNode = oXNode.get();
-                                    return xNode.createWriteStream(volumeId, requiredSpace, messageDigestFactories)
-                                            .onErrorResumeNext(throwable -> {
-                                                LOGGER.warn(String.format("Failed to connect to volume %s", volumeId), throwable);
-                                                return Defer.just(null);
-                                            })
-                                            .doOnNext(nodeWriteStreamBlob -> {
-                                                if (nodeWriteStreamBlob != null) {
-                                                    ConnectedVolume connectedVolume = new ConnectedVolume();
-                                                    connectedVolume.setxNode(xNode);
-                                                    connectedVolume.setVolumeId(volumeId);
-                                                    connectedVolume.setNodeId(serviceDef.getId());
-                                                    connectedVolume.setNodeWriteStreamBlob(nodeWriteStreamBlob);
-                                                    if (allowSameNode || seenNodes.add(connectedVolume.getNodeId())) {
-                                                        results.add(connectedVolume);
-                                                    }
-                                                }
-                                            })
-                                            .map(nodeWriteStreamBlob -> {
-                                                if (results.size() >= numberToCollect) {
-                                                    return false;
-                                                } else {
-                                                    return true;
-                                                }
-                                            });
-                                } else {
-                                    return Defer.just(true);
-                                }
-                            }
-                        }
-                        return Defer.just(true);
-                    });
-                } else {
-                    return Defer.just(true);
+            VolumeWriteStats volumeWriteStats = vertxContext.verticle().nodes().volumeWriteStats();
+            return RxHelper.iterate(vertx, candidates, candidate -> {
+                String volumeId = candidate.getVolumeId();
+                if (results.size() < numberToCollect && seenVolumes.add(volumeId)) {
+                    Optional<XNode> oXNode = clusterInfo.getNodeForVolume(vertxContext, volumeId);
+                    if (oXNode.isPresent()) {
+                        XNode xNode = oXNode.get();
+                        Observable<NodeWriteStreamBlob> oNodeWriteStreamBlob =
+                                chunked
+                                        ? xNode.createChunkedWriteStream(volumeId, requiredSpace, messageDigestFactories)
+                                        : xNode.createWriteStream(volumeId, requiredSpace, messageDigestFactories);
+                        return oNodeWriteStreamBlob
+                                .onErrorResumeNext(throwable -> {
+                                    LOGGER.warn(String.format("Failed to connect to volume %s", volumeId), throwable);
+                                    return Defer.just(null);
+                                })
+                                .doOnNext(nodeWriteStreamBlob -> {
+                                    if (nodeWriteStreamBlob != null) {
+                                        ConnectedVolume connectedVolume = new ConnectedVolume();
+                                        connectedVolume.setxNode(xNode);
+                                        connectedVolume.setVolumeId(volumeId);
+                                        connectedVolume.setNodeId(candidate.getNodeId());
+                                        connectedVolume.setNodeWriteStreamBlob(new TrackedNodeWriteStreamBlob(volumeWriteStats, volumeId, nodeWriteStreamBlob));
+                                        if (allowSameNode || seenNodes.add(connectedVolume.getNodeId())) {
+                                            results.add(connectedVolume);
+                                        }
+                                    }
+                                })
+                                .map(nodeWriteStreamBlob -> results.size() < numberToCollect);
+                    }
                 }
+                return Defer.just(results.size() < numberToCollect);
             }).map(aBoolean -> results);
         }
         return Defer.just(Collections.emptyList());
     }
 
+    private class QuorumWrite {
+
+        private final Vertx vertx;
+        private final Context context;
+        private final int quorum;
+        private final long stragglerTimeout;
+        private final QuorumEndableWriteStream writeStream;
+        private final List<PipedEndableWriteStream> pipes;
+        private final ObservableFuture<List<DigestBlob>> handler;
+        private final List<Subscription> subscriptions = new ArrayList<>();
+        private DigestBlob[] results;
+        private boolean[] finished;
+        private int numberSucceeded = 0;
+        private int numberFinished = 0;
+        private long timerId = -1;
+        private boolean done = false;
+
+        public QuorumWrite(Vertx vertx, int quorum, long stragglerTimeout, QuorumEndableWriteStream writeStream, List<PipedEndableWriteStream> pipes, ObservableFuture<List<DigestBlob>> handler) {
+            this.vertx = vertx;
+            // state is only ever touched on this context
+            this.context = vertx.getOrCreateContext();
+            this.quorum = quorum;
+            this.stragglerTimeout = stragglerTimeout;
+            this.writeStream = writeStream;
+            this.pipes = pipes;
+            this.handler = handler;
+        }
+
+        protected void start(List<Observable<DigestBlob>> oDigests) {
+            int size = oDigests.size();
+            results = new DigestBlob[size];
+            finished = new boolean[size];
+            // the replica's pipe is failed rather than left open so that its write to the
+            // volume is aborted instead of waiting for data that will never come
+            writeStream.abandonHandler(index -> context.runOnContext(event -> {
+                pipes.get(index).fail(new IOException(String.format("Replica %d was abandoned", index)));
+                abandoned(index);
+            }));
+            for (int i = 0; i < size; i++) {
+                int index = i;
+                subscriptions.add(
+                        oDigests.get(i)
+                                .single()
+                                .subscribe(
+                                        digestBlob -> context.runOnContext(event -> succeeded(index, digestBlob)),
+                                        throwable -> context.runOnContext(event -> failed(index, throwable))));
+            }
+        }
+
+        protected void succeeded(int index, DigestBlob digestBlob) {
+            if (!done && !finished[index]) {
+                finished[index] = true;
+                results[index] = digestBlob;
+                numberSucceeded++;
+                numberFinished++;
+                check();
+            }
+        }
+
+        protected void failed(int index, Throwable throwable) {
+            if (!done && !finished[index]) {
+                LOGGER.warn(String.format("Replica %d failed", index), throwable);
+                finished[index] = true;
+                numberFinished++;
+                writeStream.abandon(index);
+                check();
+            }
+        }
+
+        // the write stream gave up on the replica since it fell too far behind
+        protected void abandoned(int index) {
+            if (!done && !finished[index]) {
+                finished[index] = true;
+                numberFinished++;
+                subscriptions.get(index).unsubscribe();
+                check();
+            }
+        }
+
+        protected void check() {
+            int size = results.length;
+            if (numberFinished >= size || numberSucceeded + (size - numberFinished) < quorum) {
+                complete();
+            } else if (numberSucceeded >= quorum && timerId < 0) {
+                if (stragglerTimeout <= 0) {
+                    complete();
+                } else {
+                    timerId = vertx.setTimer(stragglerTimeout, id -> {
+                        timerId = -1;
+                        if (!done) {
+                            complete();
+                        }
+                    });
+                }
+            }
+        }
+
+        protected void complete() {
+            cancelTimer();
+            done = true;
+            List<DigestBlob> digestBlobs = new ArrayList<>(results.length);
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] != null) {
+                    digestBlobs.add(results[i]);
+                } else if (!finished[i]) {
+                    LOGGER.warn(String.format("Abandoning replica %d since it didn't finish within %dms of quorum", i, stragglerTimeout));
+                    subscriptions.get(i).unsubscribe();
+                    writeStream.abandon(i);
+                }
+            }
+            if (digestBlobs.size() < quorum) {
+                handler.fail(new InsufficientReplicaVolumesAvailableException(quorum, digestBlobs.size()));
+            } else {
+                handler.complete(digestBlobs);
+            }
+        }
+
+        protected void cancelTimer() {
+            if (timerId >= 0) {
+                vertx.cancelTimer(timerId);
+                timerId = -1;
+            }
+        }
+    }
+
+    // records the write in the volume write stats once something is written to it
+    private static class TrackedNodeWriteStreamBlob extends NodeWriteStreamBlob {
+
+        private final VolumeWriteStats volumeWriteStats;
+        private final String volumeId;
+        private final NodeWriteStreamBlob delegate;
+
+        public TrackedNodeWriteStreamBlob(VolumeWriteStats volumeWriteStats, String volumeId, NodeWriteStreamBlob delegate) {
+            super(delegate.getNode());
+            this.volumeWriteStats = volumeWriteStats;
+            this.volumeId = volumeId;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Observable<DigestBlob> consume(ReadStream<Buffer> src) {
+            return Observable.defer(() -> {
+                long startTime = System.currentTimeMillis();
+                AtomicBoolean ended = new AtomicBoolean(false);
+                volumeWriteStats.begin(volumeId);
+                return delegate.consume(src)
+                        .doOnNext(digestBlob -> {
+                            if (ended.compareAndSet(false, true)) {
+                                volumeWriteStats.end(volumeId, System.currentTimeMillis() - startTime, digestBlob.getLength(), false);
+                            }
+                        })
+                        .doOnError(throwable -> {
+                            if (ended.compareAndSet(false, true)) {
+                                volumeWriteStats.end(volumeId, System.currentTimeMillis() - startTime, 0, true);
+                            }
+                        })
+                        .doOnUnsubscribe(() -> {
+                            // abandoned before it finished
+                            if (ended.compareAndSet(false, true)) {
+                                volumeWriteStats.end(volumeId, System.currentTimeMillis() - startTime, 0, true);
+                            }
+                        });
+            });
+        }
+    }
+
     public static class ConnectedVolume {
 
         private String nodeId;
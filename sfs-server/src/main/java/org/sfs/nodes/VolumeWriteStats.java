@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes;
+
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+// The writes this node currently has open to each volume and how long recent
+// writes to the volume took. The cluster stats are only refreshed periodically
+// so these are what keep concurrent writes from all being placed on the same volume.
+// The latency halves every LATENCY_HALF_LIFE that the volume isn't written to so
+// that a volume that failed or was slow is tried again once it's had time to recover
+public class VolumeWriteStats {
+
+    private static final double ALPHA = 0.2;
+    private static final double BYTES_PER_MB = 1024 * 1024;
+    private static final long LATENCY_HALF_LIFE = SECONDS.toNanos(10);
+    // ten times the latency at which VolumePlacement doubles the cost of a volume. Enough
+    // to steer writes away from the volume without taking it out of rotation for minutes
+    private static final long MAX_FAILURE_PENALTY = 100;
+    private final ConcurrentMap<String, VolumeStats> volumeStats = new ConcurrentHashMap<>();
+    private final long failurePenalty;
+    private final Ticker ticker;
+
+    // failurePenalty is the latency recorded for a write that failed
+    public VolumeWriteStats(long failurePenalty) {
+        this(failurePenalty, Ticker.systemTicker());
+    }
+
+    public VolumeWriteStats(long failurePenalty, Ticker ticker) {
+        checkArgument(failurePenalty >= 0, "failurePenalty must be >= 0");
+        this.failurePenalty = Math.min(failurePenalty, MAX_FAILURE_PENALTY);
+        this.ticker = checkNotNull(ticker, "ticker cannot be null");
+    }
+
+    public void begin(String volumeId) {
+        stats(volumeId).begin();
+    }
+
+    // the latency of a write is normalized to milliseconds per megabyte
+    // so that large and small writes can be compared
+    public void end(String volumeId, long elapsed, long length, boolean failed) {
+        double latency = failed ? failurePenalty : elapsed / Math.max(1, length / BYTES_PER_MB);
+        stats(volumeId).end(latency, ticker.read());
+    }
+
+    public int inFlight(String volumeId) {
+        VolumeStats stats = volumeStats.get(volumeId);
+        return stats != null ? stats.inFlight() : 0;
+    }
+
+    // milliseconds per megabyte or 0 if nothing was written to the volume yet
+    public double latency(String volumeId) {
+        VolumeStats stats = volumeStats.get(volumeId);
+        return stats != null ? stats.latency(ticker.read()) : 0;
+    }
+
+    protected VolumeStats stats(String volumeId) {
+        VolumeStats stats = volumeStats.get(volumeId);
+        if (stats == null) {
+            VolumeStats existing = volumeStats.putIfAbsent(volumeId, stats = new VolumeStats());
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    private static class VolumeStats {
+
+        private int inFlight = 0;
+        private double latency = -1;
+        private long updated;
+
+        public synchronized void begin() {
+            inFlight++;
+        }
+
+        public synchronized void end(double observed, long now) {
+            inFlight = Math.max(inFlight - 1, 0);
+            latency = latency < 0 ? observed : ALPHA * observed + (1 - ALPHA) * decayed(now);
+            updated = now;
+        }
+
+        public synchronized int inFlight() {
+            return inFlight;
+        }
+
+        public synchronized double latency(long now) {
+            return latency < 0 ? 0 : decayed(now);
+        }
+
+        private double decayed(long now) {
+            long elapsed = Math.max(now - updated, 0);
+            return latency * Math.pow(0.5, elapsed / (double) LATENCY_HALF_LIFE);
+        }
+    }
+}
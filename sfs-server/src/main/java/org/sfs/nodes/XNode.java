@@ -18,6 +18,8 @@ package org.sfs.nodes;
 
 import com.google.common.base.Optional;
 import com.google.common.net.HostAndPort;
+import io.vertx.core.json.JsonObject;
+import org.sfs.filesystem.volume.BlobAddress;
 import org.sfs.filesystem.volume.DigestBlob;
 import org.sfs.filesystem.volume.HeaderBlob;
 import org.sfs.filesystem.volume.ReadStreamBlob;
@@ -31,12 +33,23 @@ public interface XNode {
 
     Observable<Optional<TransientServiceDef>> getNodeStats();
 
+    // sends this node's view of the cluster and returns what the node knows that the message didn't
+    Observable<JsonObject> gossip(JsonObject message);
+
     Observable<Optional<DigestBlob>> checksum(String volumeId, long position, Optional<Long> oOffset, Optional<Long> oLength, MessageDigestFactory... messageDigestFactories);
 
     Observable<Optional<HeaderBlob>> acknowledge(String volumeId, long position);
 
     Observable<Optional<HeaderBlob>> delete(String volumeId, final long position);
 
+    // the batch variants return one result per address in the same order as the
+    // addresses. An address that couldn't be processed is absent in the results
+    Observable<List<Optional<DigestBlob>>> checksum(List<BlobAddress> blobAddresses, MessageDigestFactory... messageDigestFactories);
+
+    Observable<List<Optional<HeaderBlob>>> acknowledge(List<BlobAddress> blobAddresses);
+
+    Observable<List<Optional<HeaderBlob>>> delete(List<BlobAddress> blobAddresses);
+
     Observable<Optional<ReadStreamBlob>> createReadStream(String volumeId, long position, Optional<Long> offset, Optional<Long> length);
 
     Observable<Boolean> canWriteVolume(String volumeId);
@@ -44,4 +57,17 @@ public interface XNode {
     Observable<Boolean> canReadVolume(String volumeId);
 
     Observable<NodeWriteStreamBlob> createWriteStream(String volumeId, long length, MessageDigestFactory... messageDigestFactories);
+
+    Observable<NodeWriteStreamBlob> createChunkedWriteStream(String volumeId, long maxLength, MessageDigestFactory... messageDigestFactories);
+
+    // the blob is written to volumeId and the data node forwards it to each of
+    // downstreamVolumeIds in turn. The blobs are returned in the order of the chain
+    Observable<ChainWriteStreamBlob> createChainWriteStream(String volumeId, long length, List<String> downstreamVolumeIds, MessageDigestFactory... messageDigestFactories);
+
+    Observable<ChainWriteStreamBlob> createChunkedChainWriteStream(String volumeId, long maxLength, List<String> downstreamVolumeIds, MessageDigestFactory... messageDigestFactories);
+
+    Observable<Void> invalidateMetadata(String id, long minimumVersion);
+
+    // applies the usage changes the node has accumulated so far
+    Observable<Void> flushUsageCounters();
 }
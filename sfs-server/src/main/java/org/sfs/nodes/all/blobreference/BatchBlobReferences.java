@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes.all.blobreference;
+
+import com.google.common.base.Optional;
+import io.vertx.core.logging.Logger;
+import org.sfs.Server;
+import org.sfs.VertxContext;
+import org.sfs.filesystem.volume.BlobAddress;
+import org.sfs.nodes.ClusterInfo;
+import org.sfs.nodes.XNode;
+import org.sfs.rx.Defer;
+import org.sfs.vo.TransientBlobReference;
+import org.sfs.vo.TransientServiceDef;
+import rx.Observable;
+import rx.functions.Func1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.vertx.core.logging.LoggerFactory.getLogger;
+import static java.lang.Boolean.FALSE;
+import static rx.Observable.defer;
+
+// Groups the blob references by the node that has their volume so that each node
+// gets a single batch request instead of one request per blob. Volumes on this node are
+// processed directly instead of through this node's http interface. The results are in the
+// same order as the blob references and a blob reference that couldn't be
+// processed is false
+public abstract class BatchBlobReferences<T> implements Func1<List<TransientBlobReference>, Observable<List<Boolean>>> {
+
+    private static final Logger LOGGER = getLogger(BatchBlobReferences.class);
+    protected final VertxContext<Server> vertxContext;
+
+    public BatchBlobReferences(VertxContext<Server> vertxContext) {
+        this.vertxContext = vertxContext;
+    }
+
+    @Override
+    public Observable<List<Boolean>> call(List<TransientBlobReference> transientBlobReferences) {
+        Boolean[] results = new Boolean[transientBlobReferences.size()];
+        Arrays.fill(results, FALSE);
+        return defer(() -> {
+            ClusterInfo clusterInfo = vertxContext.verticle().getClusterInfo();
+            Map<String, NodeBatch> batches = new LinkedHashMap<>();
+            for (int i = 0; i < transientBlobReferences.size(); i++) {
+                TransientBlobReference transientBlobReference = transientBlobReferences.get(i);
+                if (!transientBlobReference.getVolumeId().isPresent()
+                        || !transientBlobReference.getPosition().isPresent()
+                        || !include(transientBlobReference)) {
+                    continue;
+                }
+                String volumeId = transientBlobReference.getVolumeId().get();
+                Optional<TransientServiceDef> oServiceDef = clusterInfo.getServiceDefForVolume(volumeId);
+                Optional<XNode> oXNode = clusterInfo.getReadNodeForVolume(vertxContext, volumeId);
+                if (!oServiceDef.isPresent() || !oXNode.isPresent()) {
+                    LOGGER.warn("No nodes contain volume " + volumeId);
+                    continue;
+                }
+                TransientServiceDef serviceDef = oServiceDef.get();
+                NodeBatch nodeBatch = batches.get(serviceDef.getId());
+                if (nodeBatch == null) {
+                    nodeBatch = new NodeBatch(serviceDef, oXNode.get());
+                    batches.put(serviceDef.getId(), nodeBatch);
+                }
+                nodeBatch.indexes.add(i);
+                nodeBatch.blobReferences.add(transientBlobReference);
+                nodeBatch.blobAddresses.add(new BlobAddress(volumeId, transientBlobReference.getPosition().get()));
+            }
+            return Observable.from(batches.values())
+                    .flatMap(nodeBatch ->
+                            execute(nodeBatch.xNode, nodeBatch.blobReferences, nodeBatch.blobAddresses)
+                                    .doOnNext(blobs -> {
+                                        for (int i = 0; i < nodeBatch.indexes.size(); i++) {
+                                            int index = nodeBatch.indexes.get(i);
+                                            results[index] = toResult(transientBlobReferences.get(index), blobs.get(i));
+                                        }
+                                    })
+                                    .onErrorResumeNext(throwable -> {
+                                        LOGGER.error("Batch of " + nodeBatch.blobAddresses.size() + " blobs failed on node " + nodeBatch.serviceDef.getId(), throwable);
+                                        return Observable.empty();
+                                    }))
+                    .count();
+        })
+                .onErrorResumeNext(throwable -> {
+                    LOGGER.error("Batch of " + transientBlobReferences.size() + " blob references failed", throwable);
+                    return Defer.just(0);
+                })
+                .map(count -> Arrays.asList(results));
+    }
+
+    protected boolean include(TransientBlobReference transientBlobReference) {
+        return true;
+    }
+
+    protected boolean toResult(TransientBlobReference transientBlobReference, Optional<T> oBlob) {
+        return oBlob.isPresent();
+    }
+
+    // blobAddresses are the addresses of the blob references in the same order
+    protected abstract Observable<List<Optional<T>>> execute(XNode xNode, List<TransientBlobReference> transientBlobReferences, List<BlobAddress> blobAddresses);
+
+    private static class NodeBatch {
+
+        private final TransientServiceDef serviceDef;
+        private final XNode xNode;
+        private final List<Integer> indexes = new ArrayList<>();
+        private final List<TransientBlobReference> blobReferences = new ArrayList<>();
+        private final List<BlobAddress> blobAddresses = new ArrayList<>();
+
+        public NodeBatch(TransientServiceDef serviceDef, XNode xNode) {
+            this.serviceDef = serviceDef;
+            this.xNode = xNode;
+        }
+    }
+}
@@ -23,10 +23,13 @@ import org.sfs.VertxContext;
 import org.sfs.filesystem.volume.DigestBlob;
 import org.sfs.filesystem.volume.ReadStreamBlob;
 import org.sfs.nodes.ClusterInfo;
+import org.sfs.nodes.ReplicaReadStats;
 import org.sfs.nodes.XNode;
 import org.sfs.rx.Defer;
+import org.sfs.util.MessageDigestFactory;
 import org.sfs.vo.Segment;
 import org.sfs.vo.TransientBlobReference;
+import org.sfs.vo.TransientServiceDef;
 import rx.Observable;
 import rx.functions.Func1;
 
@@ -36,17 +39,24 @@ import static com.google.common.base.Optional.absent;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
 import static java.lang.Boolean.FALSE;
 import static org.sfs.rx.Defer.just;
-import static org.sfs.util.MessageDigestFactory.SHA512;
 
 public class GetBlobReferenceReadStream implements Func1<TransientBlobReference, Observable<Optional<ReadStreamBlob>>> {
 
     private static final Logger LOGGER = getLogger(GetBlobReferenceReadStream.class);
     private VertxContext<Server> vertxContext;
     private boolean verifyChecksum = false;
+    private Optional<Long> oOffset;
+    private Optional<Long> oLength;
 
     public GetBlobReferenceReadStream(VertxContext<Server> vertxContext, boolean verifyChecksum) {
+        this(vertxContext, verifyChecksum, absent(), absent());
+    }
+
+    public GetBlobReferenceReadStream(VertxContext<Server> vertxContext, boolean verifyChecksum, Optional<Long> oOffset, Optional<Long> oLength) {
         this.vertxContext = vertxContext;
         this.verifyChecksum = verifyChecksum;
+        this.oOffset = oOffset;
+        this.oLength = oLength;
     }
 
     @Override
@@ -56,40 +66,47 @@ public class GetBlobReferenceReadStream implements Func1<TransientBlobReference,
         }
         ClusterInfo clusterInfo = vertxContext.verticle().getClusterInfo();
         Segment<? extends Segment> segment = transientBlobReference.getSegment();
-        Optional<byte[]> writeSha512 = segment.getWriteSha512();
-        Optional<Long> writeLength = segment.getWriteLength();
+        Optional<byte[]> writeDigest = segment.getExpectedBlobDigest(transientBlobReference);
+        MessageDigestFactory digestAlgorithm = transientBlobReference.getDigestAlgorithm();
+        Optional<Long> writeLength = segment.getExpectedBlobLength(transientBlobReference);
         return just(transientBlobReference)
                 .filter(transientBlobReference1 -> transientBlobReference1.getVolumeId().isPresent() && transientBlobReference1.getPosition().isPresent())
                 .flatMap(transientBlobReference1 -> {
                     String volumeId = transientBlobReference1.getVolumeId().get();
                     Long position = transientBlobReference1.getPosition().get();
-                    Optional<XNode> oXNode = clusterInfo.getNodeForVolume(vertxContext, volumeId);
+                    Optional<XNode> oXNode = clusterInfo.getReadNodeForVolume(vertxContext, volumeId);
                     if (!oXNode.isPresent()) {
                         LOGGER.warn("No nodes contain volume " + volumeId);
                         return Defer.just(Optional.<ReadStreamBlob>absent());
                     } else {
                         XNode xNode = oXNode.get();
                         if (verifyChecksum) {
-                            return xNode.checksum(volumeId, position, absent(), absent(), SHA512)
+                            return xNode.checksum(volumeId, position, absent(), absent(), digestAlgorithm)
                                     .flatMap(digestBlobOptional -> {
                                         if (digestBlobOptional.isPresent()) {
                                             DigestBlob digestBlob = digestBlobOptional.get();
-                                            byte[] expectedSha512 = digestBlob.getDigest(SHA512).get();
+                                            byte[] expectedDigest = digestBlob.getDigest(digestAlgorithm).get();
                                             Long expectedLength = digestBlob.getLength();
-                                            Optional<byte[]> oExistingSha512 = transientBlobReference1.getReadSha512();
+                                            Optional<byte[]> oExistingDigest = transientBlobReference1.getReadDigest();
                                             Optional<Long> oExistingLength = transientBlobReference1.getReadLength();
-                                            boolean sha512Match = oExistingSha512.isPresent() ? Arrays.equals(expectedSha512, oExistingSha512.get()) : FALSE;
+                                            boolean digestMatch = oExistingDigest.isPresent() ? Arrays.equals(expectedDigest, oExistingDigest.get()) : FALSE;
                                             boolean lengthMatch = oExistingLength.isPresent() ? oExistingLength.get().equals(expectedLength) : FALSE;
-                                            if (sha512Match && lengthMatch
-                                                    && Arrays.equals(writeSha512.get(), expectedSha512)
+                                            if (digestMatch && lengthMatch
+                                                    && writeDigest.isPresent()
+                                                    && Arrays.equals(writeDigest.get(), expectedDigest)
                                                     && writeLength.get().equals(expectedLength)) {
-                                                return xNode.createReadStream(volumeId, position, absent(), absent());
+                                                return xNode.createReadStream(volumeId, position, oOffset, oLength);
                                             }
                                         }
                                         return Defer.just(Optional.<ReadStreamBlob>absent());
                                     });
                         } else {
-                            return xNode.createReadStream(volumeId, position, absent(), absent());
+                            // only reads that don't verify the checksum are timed since the
+                            // checksum is computed by reading the whole blob
+                            long startTime = System.currentTimeMillis();
+                            return xNode.createReadStream(volumeId, position, oOffset, oLength)
+                                    .doOnNext(oReadStreamBlob -> recordRead(volumeId, startTime, false))
+                                    .doOnError(throwable -> recordRead(volumeId, startTime, true));
                         }
                     }
                 })
@@ -105,4 +122,12 @@ public class GetBlobReferenceReadStream implements Func1<TransientBlobReference,
                 });
 
     }
+
+    protected void recordRead(String volumeId, long startTime, boolean failed) {
+        Optional<TransientServiceDef> oServiceDef = vertxContext.verticle().getClusterInfo().getServiceDefForVolume(volumeId);
+        if (oServiceDef.isPresent()) {
+            ReplicaReadStats replicaReadStats = vertxContext.verticle().nodes().replicaReadStats();
+            replicaReadStats.record(oServiceDef.get().getId(), System.currentTimeMillis() - startTime, failed);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes.all.blobreference;
+
+import com.google.common.base.Optional;
+import org.sfs.Server;
+import org.sfs.VertxContext;
+import org.sfs.filesystem.volume.BlobAddress;
+import org.sfs.filesystem.volume.DigestBlob;
+import org.sfs.nodes.XNode;
+import org.sfs.util.MessageDigestFactory;
+import org.sfs.vo.Segment;
+import org.sfs.vo.TransientBlobReference;
+import rx.Observable;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.google.common.collect.Iterables.toArray;
+
+public class VerifyBlobReferences extends BatchBlobReferences<DigestBlob> {
+
+    public VerifyBlobReferences(VertxContext<Server> vertxContext) {
+        super(vertxContext);
+    }
+
+    @Override
+    protected boolean include(TransientBlobReference transientBlobReference) {
+        Segment<? extends Segment> segment = transientBlobReference.getSegment();
+        return segment.getExpectedBlobDigest(transientBlobReference).isPresent()
+                && segment.getExpectedBlobLength(transientBlobReference).isPresent();
+    }
+
+    @Override
+    protected Observable<List<Optional<DigestBlob>>> execute(XNode xNode, List<TransientBlobReference> transientBlobReferences, List<BlobAddress> blobAddresses) {
+        // a batch normally has a single algorithm but it will have more
+        // while blobs written with a previous configuration still exist
+        Set<MessageDigestFactory> messageDigestFactories = EnumSet.noneOf(MessageDigestFactory.class);
+        for (TransientBlobReference transientBlobReference : transientBlobReferences) {
+            messageDigestFactories.add(transientBlobReference.getDigestAlgorithm());
+        }
+        return xNode.checksum(blobAddresses, toArray(messageDigestFactories, MessageDigestFactory.class));
+    }
+
+    @Override
+    protected boolean toResult(TransientBlobReference transientBlobReference, Optional<DigestBlob> oDigestBlob) {
+        if (!oDigestBlob.isPresent()) {
+            return false;
+        }
+        Segment<? extends Segment> segment = transientBlobReference.getSegment();
+        byte[] writeDigest = segment.getExpectedBlobDigest(transientBlobReference).get();
+        Long writeLength = segment.getExpectedBlobLength(transientBlobReference).get();
+        Optional<byte[]> oExpectedDigest = oDigestBlob.get().getDigest(transientBlobReference.getDigestAlgorithm());
+        if (!oExpectedDigest.isPresent()) {
+            return false;
+        }
+        byte[] expectedDigest = oExpectedDigest.get();
+        Long expectedLength = oDigestBlob.get().getLength();
+        Optional<byte[]> oExistingDigest = transientBlobReference.getReadDigest();
+        Optional<Long> oExistingLength = transientBlobReference.getReadLength();
+        boolean digestMatch = oExistingDigest.isPresent() && Arrays.equals(expectedDigest, oExistingDigest.get());
+        boolean lengthMatch = oExistingLength.isPresent() && oExistingLength.get().equals(expectedLength);
+        return digestMatch && lengthMatch
+                && Arrays.equals(writeDigest, expectedDigest)
+                && writeLength.equals(expectedLength);
+    }
+}
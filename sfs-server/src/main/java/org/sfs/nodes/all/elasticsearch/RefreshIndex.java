@@ -29,6 +29,8 @@ public class RefreshIndex implements Handler<SfsRequest> {
     @Override
     public void handle(SfsRequest sfsRequest) {
         aVoid()
+                // so that the usage counted by this node is searchable after the refresh
+                .flatMap(aVoid -> sfsRequest.vertxContext().verticle().usageCounters().flush(sfsRequest.vertxContext()))
                 .flatMap(new IndexRefresh(sfsRequest.vertxContext()))
                 .subscribe(new Terminus<Void>(sfsRequest) {
                     @Override
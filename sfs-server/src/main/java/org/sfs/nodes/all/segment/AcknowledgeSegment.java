@@ -19,14 +19,16 @@ package org.sfs.nodes.all.segment;
 import io.vertx.core.logging.Logger;
 import org.sfs.Server;
 import org.sfs.VertxContext;
-import org.sfs.nodes.all.blobreference.AcknowledgeBlobReference;
-import org.sfs.rx.Defer;
+import org.sfs.nodes.all.blobreference.AcknowledgeBlobReferences;
+import org.sfs.vo.TransientBlobReference;
 import org.sfs.vo.TransientSegment;
 import rx.Observable;
 import rx.functions.Func1;
 
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
-import static rx.Observable.from;
 import static rx.Observable.just;
 
 public class AcknowledgeSegment implements Func1<TransientSegment, Observable<Boolean>> {
@@ -49,20 +51,21 @@ public class AcknowledgeSegment implements Func1<TransientSegment, Observable<Bo
             }
             return just(true);
         } else {
-            return from(transientSegment.verifiedUnAckdBlobs())
-                    .flatMap(transientBlobReference ->
-                            Defer.just(transientBlobReference)
-                                    .flatMap(new AcknowledgeBlobReference(vertxContext))
-                                    .map(ackd -> {
-                                        transientBlobReference.setAcknowledged(ackd);
-                                        if (ackd && LOGGER.isDebugEnabled()) {
-                                            LOGGER.debug("marked acknowledge object=" + transientSegment.getParent().getParent().getId() + ", version=" + transientSegment.getParent().getId() + ", segment=" + transientSegment.getId());
-                                        }
-                                        return ackd;
-                                    }))
-                    .filter(ackd -> ackd)
-                    .count()
-                    .map(numberOfAcks -> numberOfAcks > 0)
+            List<TransientBlobReference> transientBlobReferences = newArrayList(transientSegment.verifiedUnAckdBlobs());
+            return just(transientBlobReferences)
+                    .flatMap(new AcknowledgeBlobReferences(vertxContext))
+                    .map(ackds -> {
+                        boolean ackd = false;
+                        for (int i = 0; i < transientBlobReferences.size(); i++) {
+                            Boolean blobAckd = ackds.get(i);
+                            transientBlobReferences.get(i).setAcknowledged(blobAckd);
+                            ackd |= blobAckd;
+                        }
+                        if (ackd && LOGGER.isDebugEnabled()) {
+                            LOGGER.debug("marked acknowledge object=" + transientSegment.getParent().getParent().getId() + ", version=" + transientSegment.getParent().getId() + ", segment=" + transientSegment.getId());
+                        }
+                        return ackd;
+                    })
                     .map(ackd -> {
                         if (LOGGER.isDebugEnabled()) {
                             LOGGER.debug("end acknowledge object=" + transientSegment.getParent().getParent().getId() + ", version=" + transientSegment.getParent().getId() + ", segment=" + transientSegment.getId());
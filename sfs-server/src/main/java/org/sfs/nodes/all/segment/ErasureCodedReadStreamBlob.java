@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes.all.segment;
+
+import com.google.common.base.Optional;
+import org.sfs.filesystem.volume.ReadStreamBlob;
+import org.sfs.io.BufferEndableWriteStream;
+import org.sfs.io.ErasureDecoder;
+import org.sfs.io.RangeEndableWriteStream;
+import org.sfs.vo.ErasureCoding;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+// Produces the bytes of an erasure coded segment by decoding the stripes read from
+// dataFragments fragments. The fragment read streams start at the first stripe
+// of the stripe range
+public class ErasureCodedReadStreamBlob extends ReadStreamBlob {
+
+    private final ErasureCoding erasureCoding;
+    private final SortedMap<Integer, ReadStreamBlob> fragments;
+    private final long skip;
+
+    public ErasureCodedReadStreamBlob(String volume, long position, ErasureCoding erasureCoding, StripeRange stripeRange, SortedMap<Integer, ReadStreamBlob> fragments) {
+        super(volume, position, stripeRange.getOffset(), stripeRange.getLength());
+        this.erasureCoding = erasureCoding;
+        this.fragments = fragments;
+        this.skip = stripeRange.getSkip();
+    }
+
+    @Override
+    public void discard() {
+        for (ReadStreamBlob fragment : fragments.values()) {
+            fragment.discard();
+        }
+    }
+
+    @Override
+    public Observable<Void> produce(BufferEndableWriteStream bufferStreamConsumer) {
+        ErasureDecoder erasureDecoder = new ErasureDecoder(new RangeEndableWriteStream(bufferStreamConsumer, skip, getLength()), erasureCoding, fragments.keySet());
+        List<Observable<Void>> producers = new ArrayList<>(fragments.size());
+        for (Map.Entry<Integer, ReadStreamBlob> entry : fragments.entrySet()) {
+            producers.add(entry.getValue().produce(erasureDecoder.fragmentWriteStream(entry.getKey())));
+        }
+        return Observable.mergeDelayError(producers)
+                .count()
+                .map(count -> (Void) null);
+    }
+
+    // The stripes that hold the requested bytes of a segment and the range of
+    // each fragment they're stored in. Skip is the number of decoded bytes
+    // before the requested offset
+    public static class StripeRange {
+
+        private final long offset;
+        private final long length;
+        private final long fragmentOffset;
+        private final long fragmentLength;
+        private final long skip;
+
+        public StripeRange(ErasureCoding erasureCoding, long writeLength, Optional<Long> oOffset, Optional<Long> oLength) {
+            long offset = Math.min(Math.max(oOffset.or(0L), 0L), writeLength);
+            long length = writeLength - offset;
+            if (oLength.isPresent() && oLength.get() >= 0) {
+                length = Math.min(length, oLength.get());
+            }
+            long stripeSize = erasureCoding.getStripeSize();
+            long firstStripe = offset / stripeSize;
+            long lastStripe = length > 0 ? (offset + length - 1) / stripeSize : firstStripe;
+            this.offset = offset;
+            this.length = length;
+            this.fragmentOffset = firstStripe * erasureCoding.getCellSize();
+            this.fragmentLength = (lastStripe - firstStripe + 1) * erasureCoding.getCellSize();
+            this.skip = offset - firstStripe * stripeSize;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getFragmentOffset() {
+            return fragmentOffset;
+        }
+
+        public long getFragmentLength() {
+            return fragmentLength;
+        }
+
+        public long getSkip() {
+            return skip;
+        }
+    }
+}
@@ -17,26 +17,44 @@
 package org.sfs.nodes.all.segment;
 
 import com.google.common.base.Optional;
+import io.vertx.core.Context;
 import io.vertx.core.Vertx;
 import io.vertx.core.logging.Logger;
 import org.sfs.Server;
 import org.sfs.VertxContext;
 import org.sfs.filesystem.volume.ReadStreamBlob;
+import org.sfs.nodes.ClusterInfo;
+import org.sfs.nodes.ReplicaReadStats;
 import org.sfs.nodes.all.blobreference.GetBlobReferenceReadStream;
+import org.sfs.nodes.all.segment.ErasureCodedReadStreamBlob.StripeRange;
 import org.sfs.rx.Defer;
 import org.sfs.rx.Holder2;
+import org.sfs.rx.ObservableFuture;
+import org.sfs.rx.RxHelper;
+import org.sfs.vo.ErasureCoding;
 import org.sfs.vo.TransientBlobReference;
 import org.sfs.vo.TransientSegment;
+import org.sfs.vo.TransientServiceDef;
 import rx.Observable;
 import rx.functions.Func1;
 
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static com.google.common.base.Optional.absent;
 import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Optional.of;
+import static com.google.common.collect.FluentIterable.from;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
 import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
 import static org.sfs.rx.RxHelper.iterate;
+import static rx.Observable.error;
 import static rx.Observable.just;
 
 public class GetSegmentReadStream implements Func1<TransientSegment, Observable<Optional<Holder2<TransientBlobReference, ReadStreamBlob>>>> {
@@ -44,10 +62,18 @@ public class GetSegmentReadStream implements Func1<TransientSegment, Observable<
     private static final Logger LOGGER = getLogger(GetSegmentReadStream.class);
     private VertxContext<Server> vertxContext;
     private boolean verifyChecksum;
+    private Optional<Long> oOffset;
+    private Optional<Long> oLength;
 
     public GetSegmentReadStream(VertxContext<Server> vertxContext, boolean verifyChecksum) {
+        this(vertxContext, verifyChecksum, absent(), absent());
+    }
+
+    public GetSegmentReadStream(VertxContext<Server> vertxContext, boolean verifyChecksum, Optional<Long> oOffset, Optional<Long> oLength) {
         this.vertxContext = vertxContext;
         this.verifyChecksum = verifyChecksum;
+        this.oOffset = oOffset;
+        this.oLength = oLength;
     }
 
     @Override
@@ -56,6 +82,20 @@ public class GetSegmentReadStream implements Func1<TransientSegment, Observable<
             LOGGER.debug("begin getsegmentreadstream object=" + transientSegment.getParent().getParent().getId() + ", version=" + transientSegment.getParent().getId() + ", segment=" + transientSegment.getId());
         }
         Vertx vertx = vertxContext.vertx();
+        if (transientSegment.isErasureCoded()) {
+            if (verifyChecksum) {
+                return tryFragments(vertx, transientSegment, transientSegment.getBlobs(), true);
+            } else {
+                return tryFragments(vertx, transientSegment, transientSegment.verifiedAckdBlobs(), false)
+                        .flatMap(resultOptional -> {
+                            if (resultOptional.isPresent()) {
+                                return Defer.just(resultOptional);
+                            } else {
+                                return tryFragments(vertx, transientSegment, transientSegment.getBlobs(), true);
+                            }
+                        });
+            }
+        }
         if (verifyChecksum) {
             return tryVerified(vertx, transientSegment);
         } else {
@@ -75,10 +115,10 @@ public class GetSegmentReadStream implements Func1<TransientSegment, Observable<
         return iterate(
                 vertx,
                 // if we're going to be verifying ourselves don't bother looking in the metadata to see if the blob is verified
-                transientSegment.getBlobs(),
+                rank(transientSegment.getBlobs()),
                 transientBlobReference ->
                         just(transientBlobReference)
-                                .flatMap(new GetBlobReferenceReadStream(vertxContext, true))
+                                .flatMap(new GetBlobReferenceReadStream(vertxContext, true, oOffset, oLength))
                                 .map(oReadStreamBlob -> {
                                     if (oReadStreamBlob.isPresent()) {
                                         match.set(new Holder2<>(transientBlobReference, oReadStreamBlob.get()));
@@ -90,23 +130,186 @@ public class GetSegmentReadStream implements Func1<TransientSegment, Observable<
                 .map(aborted -> fromNullable(match.get()));
     }
 
+    // Reads from the replicas that are known to be verified, nearest first. If the
+    // read from a replica hasn't produced a stream within the hedge delay a second
+    // replica is read as well, the first stream produced wins and the other is discarded
     private Observable<Optional<Holder2<TransientBlobReference, ReadStreamBlob>>> tryQuickVerified(Vertx vertx, TransientSegment transientSegment) {
-        AtomicReference<Holder2<TransientBlobReference, ReadStreamBlob>> match = new AtomicReference<>();
-        return iterate(
-                vertx,
-                // if we're going to be verifying ourselves don't bother looking in the metadata to see if the blob is verified
-                transientSegment.verifiedAckdBlobs(),
-                transientBlobReference ->
-                        just(transientBlobReference)
-                                .flatMap(new GetBlobReferenceReadStream(vertxContext, false))
-                                .map(oReadStreamBlob -> {
-                                    if (oReadStreamBlob.isPresent()) {
-                                        match.set(new Holder2<>(transientBlobReference, oReadStreamBlob.get()));
-                                        return FALSE;
+        List<TransientBlobReference> candidates = rank(transientSegment.verifiedAckdBlobs());
+        long hedgeDelay = vertxContext.verticle().nodes().replicaReadStats().hedgeDelay();
+        ObservableFuture<Optional<Holder2<TransientBlobReference, ReadStreamBlob>>> handler = RxHelper.observableFuture();
+        vertx.runOnContext(event -> new HedgedRead(vertx, candidates, hedgeDelay, handler).next());
+        return handler;
+    }
+
+    // the local replica first, then the remote replicas in order of expected latency.
+    // The sort is stable so replicas without stats keep the order they were written in
+    private List<TransientBlobReference> rank(Iterable<TransientBlobReference> blobs) {
+        ClusterInfo clusterInfo = vertxContext.verticle().getClusterInfo();
+        ReplicaReadStats replicaReadStats = vertxContext.verticle().nodes().replicaReadStats();
+        Map<TransientBlobReference, Double> scores = new IdentityHashMap<>();
+        for (TransientBlobReference blob : blobs) {
+            double score = 0;
+            Optional<String> oVolumeId = blob.getVolumeId();
+            if (oVolumeId.isPresent()) {
+                String volumeId = oVolumeId.get();
+                if (clusterInfo.isLocalVolume(vertxContext, volumeId)) {
+                    score = -1;
+                } else {
+                    Optional<TransientServiceDef> oServiceDef = clusterInfo.getServiceDefForVolume(volumeId);
+                    if (oServiceDef.isPresent()) {
+                        score = replicaReadStats.expectedLatency(oServiceDef.get().getId());
+                    }
+                }
+            }
+            scores.put(blob, score);
+        }
+        return from(blobs)
+                .toSortedList((left, right) -> Double.compare(scores.get(left), scores.get(right)));
+    }
+
+    private class HedgedRead {
+
+        private final Vertx vertx;
+        private final Context context;
+        private final Iterator<TransientBlobReference> candidates;
+        private final long hedgeDelay;
+        private final ObservableFuture<Optional<Holder2<TransientBlobReference, ReadStreamBlob>>> handler;
+        private int inFlight = 0;
+        private long timerId = -1;
+        private boolean done = false;
+
+        public HedgedRead(Vertx vertx, List<TransientBlobReference> candidates, long hedgeDelay, ObservableFuture<Optional<Holder2<TransientBlobReference, ReadStreamBlob>>> handler) {
+            this.vertx = vertx;
+            // state is only ever touched on this context
+            this.context = vertx.getOrCreateContext();
+            this.candidates = candidates.iterator();
+            this.hedgeDelay = hedgeDelay;
+            this.handler = handler;
+        }
+
+        protected void next() {
+            cancelTimer();
+            if (!candidates.hasNext()) {
+                if (inFlight <= 0) {
+                    complete(absent());
+                }
+                return;
+            }
+            TransientBlobReference transientBlobReference = candidates.next();
+            inFlight++;
+            just(transientBlobReference)
+                    .flatMap(new GetBlobReferenceReadStream(vertxContext, false, oOffset, oLength))
+                    .subscribe(
+                            oReadStreamBlob -> context.runOnContext(event -> {
+                                inFlight--;
+                                if (oReadStreamBlob.isPresent()) {
+                                    if (done) {
+                                        oReadStreamBlob.get().discard();
                                     } else {
-                                        return TRUE;
+                                        complete(of(new Holder2<>(transientBlobReference, oReadStreamBlob.get())));
                                     }
-                                }))
-                .map(aborted -> fromNullable(match.get()));
+                                } else if (!done) {
+                                    next();
+                                }
+                            }),
+                            throwable -> context.runOnContext(event -> {
+                                inFlight--;
+                                LOGGER.warn("Handling Error", throwable);
+                                if (!done) {
+                                    next();
+                                }
+                            }));
+            // only ever hedge once, the slow read and the hedge are left to race
+            if (hedgeDelay >= 0 && inFlight < 2 && candidates.hasNext()) {
+                timerId = vertx.setTimer(hedgeDelay, id -> {
+                    timerId = -1;
+                    if (!done) {
+                        next();
+                    }
+                });
+            }
+        }
+
+        protected void complete(Optional<Holder2<TransientBlobReference, ReadStreamBlob>> result) {
+            cancelTimer();
+            done = true;
+            handler.complete(result);
+        }
+
+        protected void cancelTimer() {
+            if (timerId >= 0) {
+                vertx.cancelTimer(timerId);
+                timerId = -1;
+            }
+        }
+    }
+
+    // Opens read streams on dataFragments distinct fragments, preferring the data fragments
+    // since the stripes don't need to be decoded if they're all available. Only the
+    // stripes that contain the requested bytes are read from the fragments
+    private Observable<Optional<Holder2<TransientBlobReference, ReadStreamBlob>>> tryFragments(Vertx vertx, TransientSegment transientSegment, Iterable<TransientBlobReference> blobs, boolean verify) {
+        ErasureCoding erasureCoding = transientSegment.getErasureCoding().get();
+        int dataFragments = erasureCoding.getDataFragments();
+        long writeLength = transientSegment.getWriteLength().get();
+        StripeRange stripeRange = new StripeRange(erasureCoding, writeLength, oOffset, oLength);
+        Optional<Long> oFragmentOffset = of(stripeRange.getFragmentOffset());
+        Optional<Long> oFragmentLength = of(stripeRange.getFragmentLength());
+
+        List<TransientBlobReference> candidates =
+                from(blobs)
+                        .filter(blob -> blob.getFragmentIndex().isPresent())
+                        .toSortedList((left, right) -> Integer.compare(left.getFragmentIndex().get(), right.getFragmentIndex().get()));
+
+        AtomicReference<TransientBlobReference> first = new AtomicReference<>();
+        SortedMap<Integer, ReadStreamBlob> fragments = new TreeMap<>();
+        return iterate(
+                vertx,
+                candidates,
+                transientBlobReference -> {
+                    int fragmentIndex = transientBlobReference.getFragmentIndex().get();
+                    if (fragments.containsKey(fragmentIndex)) {
+                        return just(TRUE);
+                    }
+                    return just(transientBlobReference)
+                            .flatMap(new GetBlobReferenceReadStream(vertxContext, verify, oFragmentOffset, oFragmentLength))
+                            .map(oReadStreamBlob -> {
+                                if (oReadStreamBlob.isPresent()) {
+                                    first.compareAndSet(null, transientBlobReference);
+                                    fragments.put(fragmentIndex, oReadStreamBlob.get());
+                                }
+                                return fragments.size() < dataFragments;
+                            });
+                })
+                // the fragments that were opened hold remote responses and
+                // local read locks so they're released if they can't be used
+                .onErrorResumeNext(throwable -> {
+                    discardFragments(fragments);
+                    return error(throwable);
+                })
+                .map(aborted -> {
+                    if (fragments.size() < dataFragments) {
+                        if (LOGGER.isDebugEnabled()) {
+                            LOGGER.debug("getsegmentreadstream found " + fragments.size() + " of " + dataFragments + " fragments object=" + transientSegment.getParent().getParent().getId() + ", version=" + transientSegment.getParent().getId() + ", segment=" + transientSegment.getId());
+                        }
+                        discardFragments(fragments);
+                        return Optional.<Holder2<TransientBlobReference, ReadStreamBlob>>absent();
+                    }
+                    TransientBlobReference transientBlobReference = first.get();
+                    ReadStreamBlob readStreamBlob =
+                            new ErasureCodedReadStreamBlob(
+                                    transientBlobReference.getVolumeId().get(),
+                                    transientBlobReference.getPosition().get(),
+                                    erasureCoding,
+                                    stripeRange,
+                                    fragments);
+                    return of(new Holder2<>(transientBlobReference, readStreamBlob));
+                });
+    }
+
+    private void discardFragments(Map<Integer, ReadStreamBlob> fragments) {
+        for (ReadStreamBlob fragment : fragments.values()) {
+            fragment.discard();
+        }
+        fragments.clear();
     }
 }
@@ -29,13 +29,19 @@ import org.sfs.nodes.Nodes;
 import org.sfs.nodes.VolumeReplicaGroup;
 import org.sfs.nodes.all.blobreference.DeleteBlobReference;
 import org.sfs.rx.Defer;
+import org.sfs.rx.Holder2;
+import org.sfs.util.MessageDigestFactory;
+import org.sfs.vo.ErasureCoding;
 import org.sfs.vo.TransientBlobReference;
 import org.sfs.vo.TransientSegment;
 import org.sfs.vo.TransientServiceDef;
 import rx.Observable;
 import rx.functions.Func1;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -47,7 +53,6 @@ import static java.lang.Math.abs;
 import static org.sfs.rx.RxHelper.combineSinglesDelayError;
 import static org.sfs.rx.RxHelper.iterate;
 import static org.sfs.util.Limits.NOT_SET;
-import static org.sfs.util.MessageDigestFactory.SHA512;
 import static rx.Observable.just;
 
 public class RebalanceSegment implements Func1<TransientSegment, Observable<Boolean>> {
@@ -71,10 +76,80 @@ public class RebalanceSegment implements Func1<TransientSegment, Observable<Bool
             return just(true);
         } else {
             return Defer.aVoid()
-                    .flatMap(aVoid -> reBalance(transientSegment));
+                    .flatMap(aVoid -> {
+                        if (transientSegment.isErasureCoded()) {
+                            return reBalanceFragments(transientSegment);
+                        } else {
+                            return reBalance(transientSegment);
+                        }
+                    });
         }
     }
 
+    // Erasure coded segments need exactly one copy of every fragment. Extra copies
+    // of a fragment are deleted and missing fragments are regenerated by decoding
+    // the segment from the fragments that exist and re-encoding it
+    protected Observable<Boolean> reBalanceFragments(TransientSegment transientSegment) {
+        ErasureCoding erasureCoding = transientSegment.getErasureCoding().get();
+        List<TransientBlobReference> existingFragments =
+                from(transientSegment.verifiedAckdBlobs())
+                        .filter(input -> {
+                            Optional<Integer> verifyFailCount = input.getVerifyFailCount();
+                            return !verifyFailCount.isPresent() || verifyFailCount.get() <= 0;
+                        })
+                        .toList();
+
+        Map<Integer, TransientBlobReference> fragmentsByIndex = new HashMap<>();
+        List<TransientBlobReference> extraFragments = new ArrayList<>();
+        for (TransientBlobReference fragment : existingFragments) {
+            int fragmentIndex = fragment.getFragmentIndex().get();
+            if (fragmentsByIndex.containsKey(fragmentIndex)) {
+                extraFragments.add(fragment);
+            } else {
+                fragmentsByIndex.put(fragmentIndex, fragment);
+            }
+        }
+
+        List<Integer> missingFragmentIndexes = new ArrayList<>();
+        for (Integer fragmentIndex : erasureCoding.getFragmentIndexes()) {
+            if (!fragmentsByIndex.containsKey(fragmentIndex)) {
+                missingFragmentIndexes.add(fragmentIndex);
+            }
+        }
+
+        return Defer.aVoid()
+                .flatMap(aVoid -> {
+                    if (!extraFragments.isEmpty()) {
+                        return balanceDown(extraFragments, extraFragments.size())
+                                .onErrorResumeNext(throwable -> {
+                                    LOGGER.error("Handling Balance Down Fragments Exception", throwable);
+                                    return Defer.just(false);
+                                });
+                    } else {
+                        return Defer.just(false);
+                    }
+                })
+                .flatMap(balancedDown -> {
+                    if (!missingFragmentIndexes.isEmpty() && fragmentsByIndex.size() >= erasureCoding.getDataFragments()) {
+                        Set<String> usedVolumeIds =
+                                from(fragmentsByIndex.values())
+                                        .transform(input -> input.getVolumeId().get())
+                                        .toSet();
+                        return regenerateFragments(transientSegment, erasureCoding, usedVolumeIds, missingFragmentIndexes)
+                                .map(regenerated -> balancedDown || regenerated)
+                                .onErrorResumeNext(throwable -> {
+                                    LOGGER.error("Handling Regenerate Fragments Exception", throwable);
+                                    return Defer.just(balancedDown);
+                                });
+                    } else {
+                        if (fragmentsByIndex.size() < erasureCoding.getDataFragments()) {
+                            LOGGER.warn("Only " + fragmentsByIndex.size() + " of " + erasureCoding.getDataFragments() + " fragments needed to regenerate are available object=" + transientSegment.getParent().getParent().getId() + ", version=" + transientSegment.getParent().getId() + ", segment=" + transientSegment.getId());
+                        }
+                        return Defer.just(balancedDown);
+                    }
+                });
+    }
+
 
     protected Observable<Boolean> reBalance(TransientSegment transientSegment) {
         List<TransientBlobReference> existingObjectCopies =
@@ -148,23 +223,23 @@ public class RebalanceSegment implements Func1<TransientSegment, Observable<Bool
 
     protected Observable<Boolean> balanceUp(TransientSegment transientSegment, Set<String> usedVolumeIds, int numberOfCopiesNeeded) {
         return Defer.just(transientSegment)
-                .flatMap(new GetSegmentReadStream(vertxContext, true))
+                .flatMap(this::readSegment)
                 .filter(Optional::isPresent)
                 .map(Optional::get)
                 .flatMap(holder -> {
                     ReadStreamBlob readStreamBlob = holder.value1();
 
 
-                    VolumeReplicaGroup volumeReplicaGroup =
-                            new VolumeReplicaGroup(vertxContext, numberOfCopiesNeeded)
-                                    .setAllowSameNode(nodes.isAllowSameNode())
-                                    .setExcludeVolumeIds(usedVolumeIds);
+                    VolumeReplicaGroup volumeReplicaGroup = volumeReplicaGroup(numberOfCopiesNeeded, usedVolumeIds);
 
                     PipedReadStream pipedReadStream = new PipedReadStream();
                     PipedEndableWriteStream pipedEndableWriteStream = new PipedEndableWriteStream(pipedReadStream);
                     Observable<Void> producer = readStreamBlob.produce(pipedEndableWriteStream);
 
-                    Observable<List<DigestBlob>> consumer = volumeReplicaGroup.consume(readStreamBlob.getLength(), SHA512, pipedReadStream);
+                    // new copies must be verifiable against the digest the segment already has
+                    MessageDigestFactory blobDigest = transientSegment.getBlobDigestAlgorithm();
+
+                    Observable<List<DigestBlob>> consumer = volumeReplicaGroup.consume(readStreamBlob.getLength(), blobDigest, pipedReadStream);
 
                     return combineSinglesDelayError(producer, consumer, (aVoid, digestBlobs) -> {
                         for (DigestBlob digestBlob : digestBlobs) {
@@ -172,7 +247,8 @@ public class RebalanceSegment implements Func1<TransientSegment, Observable<Bool
                                     .setVolumeId(digestBlob.getVolume())
                                     .setPosition(digestBlob.getPosition())
                                     .setReadLength(digestBlob.getLength())
-                                    .setReadSha512(digestBlob.getDigest(SHA512).get());
+                                    .setReadDigest(digestBlob.getDigest(blobDigest).get())
+                                    .setDigestAlgorithm(blobDigest);
                         }
                         return null;
                     });
@@ -191,5 +267,51 @@ public class RebalanceSegment implements Func1<TransientSegment, Observable<Bool
                 .map(transientSegment1 -> true)
                 .singleOrDefault(false);
     }
-}
 
+    protected Observable<Boolean> regenerateFragments(TransientSegment transientSegment, ErasureCoding erasureCoding, Set<String> usedVolumeIds, List<Integer> fragmentIndexes) {
+        return Defer.just(transientSegment)
+                .flatMap(this::readSegment)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .flatMap(holder -> {
+                    ReadStreamBlob readStreamBlob = holder.value1();
+
+                    VolumeReplicaGroup volumeReplicaGroup = volumeReplicaGroup(fragmentIndexes.size(), usedVolumeIds);
+
+                    PipedReadStream pipedReadStream = new PipedReadStream();
+                    PipedEndableWriteStream pipedEndableWriteStream = new PipedEndableWriteStream(pipedReadStream);
+                    Observable<Void> producer = readStreamBlob.produce(pipedEndableWriteStream);
+
+                    MessageDigestFactory blobDigest = transientSegment.getBlobDigestAlgorithm();
+
+                    Observable<List<DigestBlob>> consumer = volumeReplicaGroup.consume(readStreamBlob.getLength(), erasureCoding, fragmentIndexes, blobDigest, pipedReadStream);
+
+                    return combineSinglesDelayError(producer, consumer, (aVoid, digestBlobs) -> {
+                        for (int i = 0; i < digestBlobs.size(); i++) {
+                            DigestBlob digestBlob = digestBlobs.get(i);
+                            transientSegment.newBlob()
+                                    .setFragmentIndex(fragmentIndexes.get(i))
+                                    .setVolumeId(digestBlob.getVolume())
+                                    .setPosition(digestBlob.getPosition())
+                                    .setReadLength(digestBlob.getLength())
+                                    .setReadDigest(digestBlob.getDigest(blobDigest).get())
+                                    .setDigestAlgorithm(blobDigest);
+                        }
+                        return null;
+                    });
+                })
+                // not ackd for the same reason as balanceUp
+                .map(aVoid -> true)
+                .singleOrDefault(false);
+    }
+
+    protected Observable<Optional<Holder2<TransientBlobReference, ReadStreamBlob>>> readSegment(TransientSegment transientSegment) {
+        return new GetSegmentReadStream(vertxContext, true).call(transientSegment);
+    }
+
+    protected VolumeReplicaGroup volumeReplicaGroup(int numberOfCopies, Set<String> usedVolumeIds) {
+        return new VolumeReplicaGroup(vertxContext, numberOfCopies)
+                .setAllowSameNode(nodes.isAllowSameNode())
+                .setExcludeVolumeIds(usedVolumeIds);
+    }
+}
@@ -21,6 +21,7 @@ import org.sfs.Server;
 import org.sfs.VertxContext;
 import org.sfs.nodes.Nodes;
 import org.sfs.nodes.VolumeReplicaGroup;
+import org.sfs.vo.ErasureCoding;
 import org.sfs.vo.TransientSegment;
 import rx.Observable;
 import rx.functions.Func1;
@@ -50,6 +51,13 @@ public class VerifySegmentQuick implements Func1<TransientSegment, Observable<Bo
                 LOGGER.debug("end verifysegmentquick object=" + transientSegment.getParent().getParent().getId() + ", version=" + transientSegment.getParent().getId() + ", segment=" + transientSegment.getId() + ", verified=" + true);
             }
             return just(true);
+        } else if (transientSegment.isErasureCoded()) {
+            ErasureCoding erasureCoding = transientSegment.getErasureCoding().get();
+            boolean verified = transientSegment.verifiedAckdFragmentIndexes().size() >= erasureCoding.getQuorumNumberOfFragments();
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("end verifysegmentquick object=" + transientSegment.getParent().getParent().getId() + ", version=" + transientSegment.getParent().getId() + ", segment=" + transientSegment.getId() + ", verified=" + verified);
+            }
+            return just(verified);
         } else {
             int replicas = nodes.getNumberOfObjectCopies();
             boolean allowSameNode = nodes.isAllowSameNode();
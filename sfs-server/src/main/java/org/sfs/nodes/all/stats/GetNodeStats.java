@@ -25,6 +25,8 @@ import org.sfs.Server;
 import org.sfs.SfsRequest;
 import org.sfs.VertxContext;
 import org.sfs.auth.Authenticate;
+import org.sfs.encryption.ContainerKeys;
+import org.sfs.io.AsyncFileReaderImpl;
 import org.sfs.nodes.NodeStats;
 import org.sfs.rx.Terminus;
 import org.sfs.validate.ValidateActionAdminOrSystem;
@@ -53,11 +55,22 @@ public class GetNodeStats implements Handler<SfsRequest> {
                 .map(aVoid -> {
                     NodeStats nodeStats = vertxContext.verticle().getNodeStats();
                     Optional<TransientServiceDef> oNodeStats = nodeStats.getStats();
-                    if (oNodeStats.isPresent()) {
-                        return oNodeStats.get().toJsonObject();
-                    } else {
-                        return new JsonObject();
-                    }
+                    JsonObject jsonObject = oNodeStats.isPresent() ? oNodeStats.get().toJsonObject() : new JsonObject();
+                    ContainerKeys containerKeys = vertxContext.verticle().containerKeys();
+                    jsonObject.put("container_key_cache", new JsonObject()
+                            .put("size", containerKeys.getCachedKeyCount())
+                            .put("key_hit_count", containerKeys.getClearKeyHitCount())
+                            .put("key_miss_count", containerKeys.getClearKeyMissCount())
+                            .put("newest_key_hit_count", containerKeys.getNewestKeyHitCount())
+                            .put("newest_key_miss_count", containerKeys.getNewestKeyMissCount()));
+                    long readCount = AsyncFileReaderImpl.getReadCount();
+                    long readBytes = AsyncFileReaderImpl.getReadBytes();
+                    jsonObject.put("file_reads", new JsonObject()
+                            .put("read_count", readCount)
+                            .put("read_bytes", readBytes)
+                            .put("average_read_size", readCount > 0 ? readBytes / readCount : 0)
+                            .put("allocated_bytes", AsyncFileReaderImpl.getAllocatedBytes()));
+                    return jsonObject;
                 })
                 .single()
                 .subscribe(new Terminus<JsonObject>(httpServerRequest) {
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes.all.stats;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.sfs.Server;
+import org.sfs.SfsRequest;
+import org.sfs.VertxContext;
+import org.sfs.auth.Authenticate;
+import org.sfs.io.BufferWriteEndableWriteStream;
+import org.sfs.io.LimitedWriteEndableWriteStream;
+import org.sfs.nodes.LocalNode;
+import org.sfs.rx.BufferToJsonObject;
+import org.sfs.rx.Terminus;
+import org.sfs.validate.ValidateActionAdminOrSystem;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.net.HttpHeaders.CONTENT_LENGTH;
+import static io.vertx.core.buffer.Buffer.buffer;
+import static java.lang.String.valueOf;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static org.sfs.io.AsyncIO.pump;
+import static org.sfs.rx.Defer.aVoid;
+import static org.sfs.util.Limits.MAX_GOSSIP_REQUEST_SIZE;
+
+// Merges the view of the cluster another node sent and responds
+// with the entries that node is missing or has older versions of
+public class GossipClusterState implements Handler<SfsRequest> {
+
+    @Override
+    public void handle(final SfsRequest httpServerRequest) {
+
+        VertxContext<Server> vertxContext = httpServerRequest.vertxContext();
+
+        aVoid()
+                .flatMap(new Authenticate(httpServerRequest))
+                .flatMap(new ValidateActionAdminOrSystem(httpServerRequest))
+                .flatMap(aVoid -> {
+                    BufferWriteEndableWriteStream bufferWriteStream = new BufferWriteEndableWriteStream();
+                    LimitedWriteEndableWriteStream limitedWriteStream = new LimitedWriteEndableWriteStream(bufferWriteStream, MAX_GOSSIP_REQUEST_SIZE);
+                    return pump(httpServerRequest, limitedWriteStream)
+                            .map(aVoid1 -> bufferWriteStream.toBuffer());
+                })
+                .map(new BufferToJsonObject())
+                .flatMap(message -> {
+                    LocalNode localNode = new LocalNode(vertxContext, vertxContext.verticle().nodes().volumeManager());
+                    return localNode.gossip(message);
+                })
+                .single()
+                .subscribe(new Terminus<JsonObject>(httpServerRequest) {
+
+                    @Override
+                    public void onNext(JsonObject jsonObject) {
+                        Buffer encoded = buffer(jsonObject.encode().getBytes(UTF_8));
+                        httpServerRequest.response()
+                                .setStatusCode(HTTP_OK)
+                                .putHeader(CONTENT_LENGTH, valueOf(encoded.length()))
+                                .write(encoded);
+                    }
+                });
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes.all.usage;
+
+import io.vertx.core.Handler;
+import org.sfs.Server;
+import org.sfs.SfsRequest;
+import org.sfs.VertxContext;
+import org.sfs.auth.Authenticate;
+import org.sfs.nodes.LocalNode;
+import org.sfs.rx.Terminus;
+import org.sfs.validate.ValidateActionAdminOrSystem;
+
+import static java.net.HttpURLConnection.HTTP_NO_CONTENT;
+import static org.sfs.rx.Defer.aVoid;
+
+public class FlushUsageCounters implements Handler<SfsRequest> {
+
+    @Override
+    public void handle(final SfsRequest httpServerRequest) {
+
+        VertxContext<Server> vertxContext = httpServerRequest.vertxContext();
+
+        aVoid()
+                .flatMap(new Authenticate(httpServerRequest))
+                .flatMap(new ValidateActionAdminOrSystem(httpServerRequest))
+                .flatMap(aVoid -> {
+                    LocalNode localNode = new LocalNode(vertxContext, vertxContext.verticle().nodes().volumeManager());
+                    return localNode.flushUsageCounters();
+                })
+                .single()
+                .subscribe(new Terminus<Void>(httpServerRequest) {
+
+                    @Override
+                    public void onNext(Void aVoid) {
+                        httpServerRequest.response().setStatusCode(HTTP_NO_CONTENT);
+                    }
+                });
+
+    }
+}
@@ -28,6 +28,7 @@ import org.sfs.SfsRequest;
 import org.sfs.auth.Authenticate;
 import org.sfs.elasticsearch.account.ListContainers;
 import org.sfs.elasticsearch.account.LoadAccount;
+import org.sfs.elasticsearch.usage.LoadAccountUsage;
 import org.sfs.io.AsyncIO;
 import org.sfs.io.BufferOutputStream;
 import org.sfs.metadata.Metadata;
@@ -61,6 +62,7 @@ import static java.math.BigDecimal.ROUND_HALF_UP;
 import static java.net.HttpURLConnection.HTTP_OK;
 import static javax.xml.stream.XMLOutputFactory.newFactory;
 import static org.sfs.rx.Defer.aVoid;
+import static org.sfs.rx.Defer.just;
 import static org.sfs.util.NullSafeAscii.equalsIgnoreCase;
 import static org.sfs.util.SfsHttpHeaders.X_ACCOUNT_BYTES_USED;
 import static org.sfs.util.SfsHttpHeaders.X_ACCOUNT_CONTAINER_COUNT;
@@ -86,7 +88,15 @@ public class GetAccount implements Handler<SfsRequest> {
                 .map(objectPath -> objectPath.accountPath().get())
                 .flatMap(new LoadAccount(httpServerRequest.vertxContext()))
                 .map(new ValidatePersistentAccountExists())
-                .flatMap(new ListContainers(httpServerRequest))
+                .flatMap(new LoadAccountUsage(httpServerRequest.vertxContext()))
+                .flatMap(accountStats -> {
+                    HttpServerResponse httpServerResponse = httpServerRequest.response();
+                    httpServerResponse.putHeader(X_ACCOUNT_OBJECT_COUNT, valueOf(accountStats.getObjectCount()));
+                    httpServerResponse.putHeader(X_ACCOUNT_CONTAINER_COUNT, valueOf(accountStats.getContainerCount()));
+                    httpServerResponse.putHeader(X_ACCOUNT_BYTES_USED, valueOf(accountStats.getBytesUsed()));
+                    return just(accountStats.getPersistentAccount())
+                            .flatMap(new ListContainers(httpServerRequest));
+                })
                 .flatMap(containerList -> {
                     HttpServerResponse httpServerResponse = httpServerRequest.response();
                     MultiMap headerParams = httpServerRequest.headers();
@@ -106,15 +116,6 @@ public class GetAccount implements Handler<SfsRequest> {
                         }
                     }
 
-                    httpServerResponse.putHeader(X_ACCOUNT_OBJECT_COUNT, valueOf(containerList.getObjectCount()));
-                    httpServerResponse.putHeader(X_ACCOUNT_CONTAINER_COUNT, valueOf(containerList.getContainerCount()));
-                    httpServerResponse.putHeader(
-                            X_ACCOUNT_BYTES_USED,
-                            BigDecimal.valueOf(containerList.getBytesUsed())
-                                    .setScale(0, ROUND_HALF_UP)
-                                    .toString()
-                    );
-
                     MediaType parsedAccept = null;
                     if (!isNullOrEmpty(accept)) {
                         parsedAccept = parse(accept);
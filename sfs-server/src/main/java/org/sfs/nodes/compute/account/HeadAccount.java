@@ -20,31 +20,25 @@ import io.vertx.core.Handler;
 import io.vertx.core.http.HttpServerResponse;
 import org.sfs.SfsRequest;
 import org.sfs.auth.Authenticate;
-import org.sfs.elasticsearch.account.ListContainers;
 import org.sfs.elasticsearch.account.LoadAccount;
+import org.sfs.elasticsearch.usage.LoadAccountUsage;
 import org.sfs.metadata.Metadata;
 import org.sfs.rx.ConnectionCloseTerminus;
 import org.sfs.validate.ValidateAccountPath;
 import org.sfs.validate.ValidateActionAdmin;
 import org.sfs.validate.ValidatePersistentAccountExists;
 import org.sfs.vo.PersistentAccount;
-import rx.Observable;
-import rx.functions.Func1;
 
-import java.math.BigDecimal;
 import java.util.SortedSet;
 
 import static java.lang.String.format;
 import static java.lang.String.valueOf;
-import static java.math.BigDecimal.ROUND_HALF_UP;
 import static java.net.HttpURLConnection.HTTP_NO_CONTENT;
 import static org.sfs.rx.Defer.aVoid;
-import static org.sfs.rx.Defer.just;
 import static org.sfs.util.SfsHttpHeaders.X_ACCOUNT_BYTES_USED;
 import static org.sfs.util.SfsHttpHeaders.X_ACCOUNT_CONTAINER_COUNT;
 import static org.sfs.util.SfsHttpHeaders.X_ACCOUNT_OBJECT_COUNT;
 import static org.sfs.util.SfsHttpHeaders.X_ADD_ACCOUNT_META_PREFIX;
-import static org.sfs.util.SfsHttpQueryParams.LIMIT;
 import static org.sfs.vo.ObjectPath.fromSfsRequest;
 
 public class HeadAccount implements Handler<SfsRequest> {
@@ -60,25 +54,13 @@ public class HeadAccount implements Handler<SfsRequest> {
                 .map(objectPath -> objectPath.accountPath().get())
                 .flatMap(new LoadAccount(httpServerRequest.vertxContext()))
                 .map(new ValidatePersistentAccountExists())
-                .flatMap(new Func1<PersistentAccount, Observable<PersistentAccount>>() {
-                    @Override
-                    public Observable<PersistentAccount> call(final PersistentAccount persistentAccount) {
-                        httpServerRequest.params().set(LIMIT, "0");
-                        return just(persistentAccount)
-                                .flatMap(new ListContainers(httpServerRequest))
-                                .map(containerList -> {
-                                    HttpServerResponse httpServerResponse = httpServerRequest.response();
-                                    httpServerResponse.putHeader(X_ACCOUNT_OBJECT_COUNT, valueOf(containerList.getObjectCount()));
-                                    httpServerResponse.putHeader(X_ACCOUNT_CONTAINER_COUNT, valueOf(containerList.getContainerCount()));
-                                    httpServerResponse.putHeader(
-                                            X_ACCOUNT_BYTES_USED,
-                                            BigDecimal.valueOf(containerList.getBytesUsed())
-                                                    .setScale(0, ROUND_HALF_UP)
-                                                    .toString()
-                                    );
-                                    return persistentAccount;
-                                });
-                    }
+                .flatMap(new LoadAccountUsage(httpServerRequest.vertxContext()))
+                .map(accountStats -> {
+                    HttpServerResponse httpServerResponse = httpServerRequest.response();
+                    httpServerResponse.putHeader(X_ACCOUNT_OBJECT_COUNT, valueOf(accountStats.getObjectCount()));
+                    httpServerResponse.putHeader(X_ACCOUNT_CONTAINER_COUNT, valueOf(accountStats.getContainerCount()));
+                    httpServerResponse.putHeader(X_ACCOUNT_BYTES_USED, valueOf(accountStats.getBytesUsed()));
+                    return accountStats.getPersistentAccount();
                 })
                 .single()
                 .subscribe(new ConnectionCloseTerminus<PersistentAccount>(httpServerRequest) {
@@ -33,7 +33,7 @@ import org.sfs.VertxContext;
 import org.sfs.auth.Authenticate;
 import org.sfs.elasticsearch.container.ListObjects;
 import org.sfs.elasticsearch.container.LoadAccountAndContainer;
-import org.sfs.elasticsearch.container.LoadContainerStats;
+import org.sfs.elasticsearch.usage.LoadContainerUsage;
 import org.sfs.io.AsyncIO;
 import org.sfs.io.BufferOutputStream;
 import org.sfs.metadata.Metadata;
@@ -135,7 +135,7 @@ public class GetContainer implements Handler<SfsRequest> {
                     if (hasPrefix) {
                         oContainerStats =
                                 just(persistentContainer)
-                                        .flatMap(new LoadContainerStats(httpServerRequest.vertxContext()))
+                                        .flatMap(new LoadContainerUsage(httpServerRequest.vertxContext()))
                                         .map(Optional::of);
                     } else {
                         oContainerStats = Defer.just(Optional.<ContainerStats>absent());
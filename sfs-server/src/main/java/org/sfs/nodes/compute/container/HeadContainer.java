@@ -23,7 +23,7 @@ import org.sfs.SfsRequest;
 import org.sfs.VertxContext;
 import org.sfs.auth.Authenticate;
 import org.sfs.elasticsearch.container.LoadAccountAndContainer;
-import org.sfs.elasticsearch.container.LoadContainerStats;
+import org.sfs.elasticsearch.usage.LoadContainerUsage;
 import org.sfs.metadata.Metadata;
 import org.sfs.rx.ConnectionCloseTerminus;
 import org.sfs.validate.ValidateActionAuthenticated;
@@ -61,7 +61,7 @@ public class HeadContainer implements Handler<SfsRequest> {
                 .flatMap(persistentContainer -> {
                     httpServerRequest.params().set(LIMIT, "0");
                     return just(persistentContainer)
-                            .flatMap(new LoadContainerStats(httpServerRequest.vertxContext()))
+                            .flatMap(new LoadContainerUsage(vertxContext))
                             .map(containerStats -> {
                                 HttpServerResponse httpServerResponse = httpServerRequest.response();
 
@@ -27,12 +27,14 @@ import org.sfs.rx.ConnectionCloseTerminus;
 import org.sfs.validate.ValidateActionAuthenticated;
 import org.sfs.validate.ValidateActionContainerUpdate;
 import org.sfs.validate.ValidateContainerPath;
+import org.sfs.validate.ValidateHeaderErasureCoding;
 import org.sfs.validate.ValidateOptimisticContainerLock;
 import org.sfs.vo.PersistentContainer;
 
 import static java.net.HttpURLConnection.HTTP_NO_CONTENT;
 import static org.sfs.rx.Defer.aVoid;
 import static org.sfs.rx.Defer.just;
+import static org.sfs.util.SfsHttpHeaders.X_SFS_OBJECT_ERASURE_CODING;
 import static org.sfs.vo.ObjectPath.fromSfsRequest;
 
 public class PostContainer implements Handler<SfsRequest> {
@@ -44,6 +46,8 @@ public class PostContainer implements Handler<SfsRequest> {
         aVoid()
                 .flatMap(new Authenticate(httpServerRequest))
                 .flatMap(new ValidateActionAuthenticated(httpServerRequest))
+                .map(aVoid -> httpServerRequest)
+                .map(new ValidateHeaderErasureCoding(X_SFS_OBJECT_ERASURE_CODING))
                 .map(aVoid -> fromSfsRequest(httpServerRequest))
                 .map(new ValidateContainerPath())
                 .flatMap(new LoadAccountAndContainer(vertxContext))
@@ -33,6 +33,7 @@ import org.sfs.validate.ValidateActionAuthenticated;
 import org.sfs.validate.ValidateActionContainerCreate;
 import org.sfs.validate.ValidateContainerPath;
 import org.sfs.validate.ValidateHeaderBetweenInteger;
+import org.sfs.validate.ValidateHeaderErasureCoding;
 import org.sfs.validate.ValidateOptimisticContainerLock;
 import org.sfs.validate.ValidatePersistentAccountExists;
 import org.sfs.validate.ValidatePersistentContainerNotExists;
@@ -42,6 +43,7 @@ import org.sfs.vo.TransientContainer;
 import static java.lang.Integer.parseInt;
 import static java.net.HttpURLConnection.HTTP_CREATED;
 import static org.sfs.rx.Defer.aVoid;
+import static org.sfs.util.SfsHttpHeaders.X_SFS_OBJECT_ERASURE_CODING;
 import static org.sfs.util.SfsHttpHeaders.X_SFS_OBJECT_INDEX_REPLICAS;
 import static org.sfs.util.SfsHttpHeaders.X_SFS_OBJECT_INDEX_SHARDS;
 import static org.sfs.util.SfsHttpHeaders.X_SFS_OBJECT_REPLICAS;
@@ -60,6 +62,7 @@ public class PutContainer implements Handler<SfsRequest> {
                 .map(new ValidateHeaderBetweenInteger(X_SFS_OBJECT_INDEX_SHARDS, 1, 1024))
                 .map(new ValidateHeaderBetweenInteger(X_SFS_OBJECT_INDEX_REPLICAS, 1, 6))
                 .map(new ValidateHeaderBetweenInteger(X_SFS_OBJECT_REPLICAS, 1, 6))
+                .map(new ValidateHeaderErasureCoding(X_SFS_OBJECT_ERASURE_CODING))
                 .map(aVoid -> fromSfsRequest(httpServerRequest))
                 .map(new ValidateContainerPath())
                 .flatMap(objectPath -> {
@@ -19,13 +19,21 @@ package org.sfs.nodes.compute.object;
 import com.google.common.base.Optional;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.logging.Logger;
 import org.sfs.Server;
 import org.sfs.VertxContext;
+import org.sfs.encryption.Algorithm;
 import org.sfs.encryption.ContainerKeys;
+import org.sfs.encryption.SeekableAlgorithm;
+import org.sfs.filesystem.volume.ReadStreamBlob;
+import org.sfs.filesystem.volume.SendFileReadStreamBlob;
 import org.sfs.io.BufferEndableWriteStream;
 import org.sfs.io.NoEndEndableWriteStream;
+import org.sfs.io.RangeEndableWriteStream;
 import org.sfs.nodes.all.segment.GetSegmentReadStream;
+import org.sfs.rx.Holder2;
+import org.sfs.vo.ByteRange;
 import org.sfs.vo.Segment;
 import org.sfs.vo.TransientBlobReference;
 import org.sfs.vo.TransientSegment;
@@ -33,12 +41,21 @@ import org.sfs.vo.XVersion;
 import rx.Observable;
 import rx.functions.Func1;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.of;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.math.LongMath.checkedAdd;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
 import static java.lang.Boolean.TRUE;
 import static org.sfs.io.AsyncIO.end;
 import static org.sfs.rx.Defer.just;
 import static org.sfs.rx.RxHelper.iterate;
+import static org.sfs.encryption.ContainerKeys.KeyResponse;
 import static org.sfs.vo.Segment.SegmentCipher;
 
 public class CopySegmentsReadStreams implements Func1<Iterable<TransientSegment>, Observable<Iterable<TransientSegment>>> {
@@ -47,11 +64,26 @@ public class CopySegmentsReadStreams implements Func1<Iterable<TransientSegment>
     private final VertxContext<Server> vertxContext;
     private final BufferEndableWriteStream writeStream;
     private final boolean verifyChecksum;
+    private final Optional<ByteRange> oRange;
+    private final Optional<HttpServerResponse> oSendFileResponse;
 
     public CopySegmentsReadStreams(VertxContext<Server> vertxContext, BufferEndableWriteStream writeStream, boolean verifyChecksum) {
+        this(vertxContext, writeStream, verifyChecksum, absent());
+    }
+
+    public CopySegmentsReadStreams(VertxContext<Server> vertxContext, BufferEndableWriteStream writeStream, boolean verifyChecksum, Optional<ByteRange> oRange) {
+        this(vertxContext, writeStream, verifyChecksum, oRange, absent());
+    }
+
+    // when oSendFileResponse is present and the only segment being copied is an unencrypted
+    // blob on a local volume the blob is sent as the whole body of the response straight
+    // from the volume's data file, which ends the response
+    public CopySegmentsReadStreams(VertxContext<Server> vertxContext, BufferEndableWriteStream writeStream, boolean verifyChecksum, Optional<ByteRange> oRange, Optional<HttpServerResponse> oSendFileResponse) {
         this.vertxContext = vertxContext;
         this.writeStream = writeStream;
         this.verifyChecksum = verifyChecksum;
+        this.oRange = oRange;
+        this.oSendFileResponse = oSendFileResponse;
     }
 
     @Override
@@ -59,27 +91,65 @@ public class CopySegmentsReadStreams implements Func1<Iterable<TransientSegment>
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("begin copy segment read streams");
         }
-        Vertx vertx = vertxContext.vertx();
+        return copy(segmentRanges(transientSegments, oRange))
+                .map(aVoid -> {
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("end copy segment read streams");
+                    }
+                    return transientSegments;
+                });
+    }
+
+    // Copies the segments to the write stream one after another. While a segment is being
+    // copied the read streams of the next few segments are opened so that their index lookups
+    // and connection setup overlap with the copy. A stream isn't read until it's its turn
+    // so the write stream still applies back pressure and the output stays in order
+    public Observable<Void> copy(List<Holder2<TransientSegment, Optional<ByteRange>>> segmentRanges) {
+        Vertx vertx = vertx();
+        int prefetch = prefetch();
+        long maxIdle = maxIdle();
+        List<Observable<OpenedSegment>> opened = new ArrayList<>(segmentRanges.size());
+        for (int i = 0; i < segmentRanges.size(); i++) {
+            opened.add(null);
+        }
+        AtomicInteger position = new AtomicInteger(0);
+        AtomicBoolean discarded = new AtomicBoolean(false);
         return iterate(
                 vertx,
-                transientSegments,
-                transientSegment -> {
+                segmentRanges,
+                segmentRange -> {
+                    int index = position.getAndIncrement();
+                    int lastPrefetch = Math.min(segmentRanges.size() - 1, index + prefetch);
+                    for (int i = index; i <= lastPrefetch; i++) {
+                        if (opened.get(i) == null && !segmentRanges.get(i).value0().isTinyData()) {
+                            Observable<OpenedSegment> openedSegment = open(segmentRanges.get(i)).cache();
+                            // start opening now. Errors are seen when the segment is copied
+                            openedSegment.subscribe(o -> {
+                            }, throwable -> {
+                            });
+                            opened.set(i, openedSegment);
+                        }
+                    }
+                    TransientSegment transientSegment = segmentRange.value0();
+                    Optional<ByteRange> oSegmentRange = segmentRange.value1();
                     if (!transientSegment.isTinyData()) {
-                        return just(transientSegment)
-                                .flatMap(new GetSegmentReadStream(vertxContext, verifyChecksum))
-                                .doOnNext(oHolder -> {
-                                    if (!oHolder.isPresent()) {
-                                        throw new SegmentReadStreamNotFoundException(String.format("Failed to find ReadStream for segment %d from object %s %s", transientSegment.getId(), transientSegment.getParent().getParent().getId(), transientSegment.getParent().getParent().toJsonObject().encodePrettily()));
+                        return opened.get(index)
+                                .flatMap(openedSegment -> {
+                                    if (System.currentTimeMillis() - openedSegment.getOpenedAt() > maxIdle) {
+                                        openedSegment.getReadStreamBlob().discard();
+                                        return open(segmentRange);
                                     }
+                                    return just(openedSegment);
                                 })
-                                .map(Optional::get)
-                                .flatMap(holder -> {
-                                    TransientBlobReference transientBlobReference = holder.value0();
+                                .flatMap(openedSegment -> {
+                                    if (canSendFile(segmentRanges.size(), openedSegment)) {
+                                        return ((SendFileReadStreamBlob) openedSegment.getReadStreamBlob()).sendFile(oSendFileResponse.get());
+                                    }
+                                    TransientBlobReference transientBlobReference = openedSegment.getBlobReference();
                                     if (LOGGER.isDebugEnabled()) {
                                         LOGGER.debug("begin copy of blob reference object=" + transientBlobReference.getSegment().getParent().getParent().getId() + ", version=" + transientBlobReference.getSegment().getParent().getId() + ", segment=" + transientBlobReference.getSegment().getId() + ", volume=" + transientBlobReference.getVolumeId() + ", position=" + transientBlobReference.getPosition());
                                     }
-                                    return prepareWriteStream(new NoEndEndableWriteStream(writeStream), transientSegment)
-                                            .flatMap(holder.value1()::produce)
+                                    return openedSegment.getReadStreamBlob().produce(openedSegment.getSegmentRead().getWriteStream())
                                             .doOnNext(aVoid -> {
                                                 if (LOGGER.isDebugEnabled()) {
                                                     LOGGER.debug("end copy of blob reference object=" + transientBlobReference.getSegment().getParent().getParent().getId() + ", version=" + transientBlobReference.getSegment().getParent().getId() + ", segment=" + transientBlobReference.getSegment().getId() + ", volume=" + transientBlobReference.getVolumeId() + ", position=" + transientBlobReference.getPosition());
@@ -92,7 +162,11 @@ public class CopySegmentsReadStreams implements Func1<Iterable<TransientSegment>
                         if (LOGGER.isDebugEnabled()) {
                             LOGGER.debug("begin copy of blob reference object=" + transientSegment.getParent().getParent().getId() + ", version=" + transientSegment.getParent().getId() + ", segment=" + transientSegment.getId());
                         }
-                        return prepareWriteStream(new NoEndEndableWriteStream(writeStream), transientSegment)
+                        BufferEndableWriteStream segmentWriteStream =
+                                oSegmentRange.isPresent()
+                                        ? rangeWriteStream(oSegmentRange.get())
+                                        : new NoEndEndableWriteStream(writeStream);
+                        return prepareWriteStream(segmentWriteStream, transientSegment)
                                 .flatMap(writeStream -> end(tinyData, writeStream))
                                 .doOnNext(aVoid -> {
                                     if (LOGGER.isDebugEnabled()) {
@@ -103,40 +177,206 @@ public class CopySegmentsReadStreams implements Func1<Iterable<TransientSegment>
                     }
                 }
         )
-                .map(_continue -> {
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("end copy segment read streams");
+                .doOnError(throwable -> discard(opened, position.get(), discarded))
+                .doOnUnsubscribe(() -> discard(opened, position.get(), discarded))
+                .map(_continue -> (Void) null);
+    }
+
+    protected Vertx vertx() {
+        return vertxContext.vertx();
+    }
+
+    // the number of segments opened ahead of the one being copied
+    protected int prefetch() {
+        return vertxContext.verticle().nodes().getSegmentReadPrefetch();
+    }
+
+    // a paused remote response is closed by the http client if it sits idle for too long
+    // so streams that have waited longer than a response is allowed to take are reopened
+    protected long maxIdle() {
+        return vertxContext.verticle().nodes().getResponseTimeout();
+    }
+
+    // the streams that were opened ahead of a copy that failed or was abandoned
+    // will never be read so give back whatever they hold
+    protected void discard(List<Observable<OpenedSegment>> opened, int fromIndex, AtomicBoolean discarded) {
+        if (discarded.compareAndSet(false, true)) {
+            for (int i = fromIndex; i < opened.size(); i++) {
+                Observable<OpenedSegment> openedSegment = opened.get(i);
+                if (openedSegment != null) {
+                    openedSegment.subscribe(o -> o.getReadStreamBlob().discard(), throwable -> {
+                    });
+                }
+            }
+        }
+    }
+
+    protected Observable<OpenedSegment> open(Holder2<TransientSegment, Optional<ByteRange>> segmentRange) {
+        TransientSegment transientSegment = segmentRange.value0();
+        return prepareSegmentRead(transientSegment, segmentRange.value1())
+                .flatMap(segmentRead ->
+                        just(transientSegment)
+                                .flatMap(new GetSegmentReadStream(vertxContext, verifyChecksum, segmentRead.getOffset(), segmentRead.getLength()))
+                                .doOnNext(oHolder -> {
+                                    if (!oHolder.isPresent()) {
+                                        throw new SegmentReadStreamNotFoundException(String.format("Failed to find ReadStream for segment %d from object %s %s", transientSegment.getId(), transientSegment.getParent().getParent().getId(), transientSegment.getParent().getParent().toJsonObject().encodePrettily()));
+                                    }
+                                })
+                                .map(Optional::get)
+                                .map(holder -> new OpenedSegment(segmentRead, holder.value0(), holder.value1())));
+    }
+
+    // pair each segment with the part of the range that falls inside of it, relative
+    // to the start of the segment. Segments that don't overlap the range are skipped
+    public static List<Holder2<TransientSegment, Optional<ByteRange>>> segmentRanges(Iterable<TransientSegment> transientSegments, Optional<ByteRange> oRange) {
+        List<Holder2<TransientSegment, Optional<ByteRange>>> segmentRanges = new ArrayList<>();
+        if (oRange.isPresent()) {
+            ByteRange range = oRange.get();
+            long segmentStart = 0;
+            for (TransientSegment transientSegment : transientSegments) {
+                long segmentLength = transientSegment.getReadLength().get();
+                Optional<ByteRange> oSegmentRange = range.intersect(segmentStart, segmentLength);
+                if (oSegmentRange.isPresent()) {
+                    segmentRanges.add(new Holder2<>(transientSegment, oSegmentRange));
+                }
+                segmentStart = checkedAdd(segmentStart, segmentLength);
+            }
+        } else {
+            for (TransientSegment transientSegment : transientSegments) {
+                segmentRanges.add(new Holder2<>(transientSegment, absent()));
+            }
+        }
+        return segmentRanges;
+    }
+
+    protected BufferEndableWriteStream rangeWriteStream(ByteRange segmentRange) {
+        return new RangeEndableWriteStream(new NoEndEndableWriteStream(writeStream), segmentRange.getFirst(), segmentRange.getLength());
+    }
+
+    protected boolean canSendFile(int segmentCount, OpenedSegment openedSegment) {
+        return oSendFileResponse.isPresent()
+                && segmentCount == 1
+                && !isServerSideEncrypted(openedSegment.getBlobReference().getSegment())
+                && openedSegment.getReadStreamBlob() instanceof SendFileReadStreamBlob
+                && !oSendFileResponse.get().headWritten();
+    }
+
+    protected boolean isServerSideEncrypted(Segment<? extends Segment> segment) {
+        Optional<Boolean> oServerSideEncryption = segment.getParent().getServerSideEncryption();
+        return oServerSideEncryption.isPresent() && TRUE.equals(oServerSideEncryption.get());
+    }
+
+    // Works out which bytes of the blob need to be read and the stream that turns
+    // them into the bytes of the range. Unencrypted blobs and blobs encrypted using
+    // a seekable algorithm are read starting at the range. Everything else is read
+    // from the start since the cipher text can only be decrypted from the start
+    protected Observable<SegmentRead> prepareSegmentRead(TransientSegment transientSegment, Optional<ByteRange> oSegmentRange) {
+        if (!oSegmentRange.isPresent()) {
+            return prepareWriteStream(new NoEndEndableWriteStream(writeStream), transientSegment)
+                    .map(segmentWriteStream -> new SegmentRead(absent(), absent(), segmentWriteStream));
+        }
+        ByteRange segmentRange = oSegmentRange.get();
+        if (!isServerSideEncrypted(transientSegment)) {
+            return Observable.just(new SegmentRead(of(segmentRange.getFirst()), of(segmentRange.getLength()), new NoEndEndableWriteStream(writeStream)));
+        }
+        return keyResponse(transientSegment)
+                .map(keyResponse -> {
+                    Algorithm algorithm = keyResponse.getData();
+                    if (algorithm instanceof SeekableAlgorithm) {
+                        SeekableAlgorithm seekableAlgorithm = (SeekableAlgorithm) algorithm;
+                        long encryptedLength = transientSegment.getWriteLength().get();
+                        ByteRange encryptedRange = seekableAlgorithm.encryptedRange(segmentRange, encryptedLength);
+                        BufferEndableWriteStream segmentWriteStream = seekableAlgorithm.decrypt(new NoEndEndableWriteStream(writeStream), segmentRange, encryptedLength);
+                        return new SegmentRead(of(encryptedRange.getFirst()), of(encryptedRange.getLength()), segmentWriteStream);
+                    } else {
+                        BufferEndableWriteStream segmentWriteStream = algorithm.decrypt(rangeWriteStream(segmentRange));
+                        return new SegmentRead(absent(), absent(), segmentWriteStream);
                     }
-                    return transientSegments;
                 });
     }
 
     public Observable<BufferEndableWriteStream> prepareWriteStream(
             BufferEndableWriteStream delegateWriteStream, Segment<? extends Segment> segment) {
+        if (isServerSideEncrypted(segment)) {
+            return keyResponse(segment)
+                    .map(keyResponse -> keyResponse.getData().decrypt(delegateWriteStream));
+        } else {
+            return Observable.just(delegateWriteStream);
+        }
+    }
+
+    protected Observable<KeyResponse> keyResponse(Segment<? extends Segment> segment) {
 
         final XVersion<? extends XVersion> transientVersion = segment.getParent();
-        Optional<Boolean> oServerSideEncryption = transientVersion.getServerSideEncryption();
-        boolean serverSideEncryption = oServerSideEncryption.isPresent() && TRUE.equals(oServerSideEncryption.get());
 
-        if (serverSideEncryption) {
+        Optional<SegmentCipher> oSegmentCipher = segment.getSegmentCipher();
+        SegmentCipher segmentCipher = oSegmentCipher.get();
 
-            Optional<SegmentCipher> oSegmentCipher = segment.getSegmentCipher();
-            SegmentCipher segmentCipher = oSegmentCipher.get();
+        Optional<String> oContainerKeyId = segmentCipher.getContainerKeyId();
+        checkState(oContainerKeyId.isPresent(), "SegmentCipher missing ContainerKeyId for Object %s", transientVersion.getId());
+        String containerKeyId = oContainerKeyId.get();
 
-            Optional<String> oContainerKeyId = segmentCipher.getContainerKeyId();
-            checkState(oContainerKeyId.isPresent(), "SegmentCipher missing ContainerKeyId for Object %s", transientVersion.getId());
-            String containerKeyId = oContainerKeyId.get();
+        Optional<byte[]> oSalt = segmentCipher.getSalt();
+        checkState(oSalt.isPresent(), "SegmentCipher missing salt for Object %s", transientVersion.getId());
+        final byte[] salt = oSalt.get();
 
-            Optional<byte[]> oSalt = segmentCipher.getSalt();
-            checkState(oSalt.isPresent(), "SegmentCipher missing salt for Object %s", transientVersion.getId());
-            final byte[] salt = oSalt.get();
+        ContainerKeys containerKeys = vertxContext.verticle().containerKeys();
 
-            ContainerKeys containerKeys = vertxContext.verticle().containerKeys();
+        return containerKeys.algorithm(vertxContext, transientVersion.getParent().getParent(), containerKeyId, salt);
+    }
 
-            return containerKeys.algorithm(vertxContext, transientVersion.getParent().getParent(), containerKeyId, salt)
-                    .map(keyResponse -> keyResponse.getData().decrypt(delegateWriteStream));
-        } else {
-            return Observable.just(delegateWriteStream);
+    protected static class SegmentRead {
+
+        private final Optional<Long> oOffset;
+        private final Optional<Long> oLength;
+        private final BufferEndableWriteStream writeStream;
+
+        public SegmentRead(Optional<Long> oOffset, Optional<Long> oLength, BufferEndableWriteStream writeStream) {
+            this.oOffset = oOffset;
+            this.oLength = oLength;
+            this.writeStream = writeStream;
+        }
+
+        public Optional<Long> getOffset() {
+            return oOffset;
+        }
+
+        public Optional<Long> getLength() {
+            return oLength;
+        }
+
+        public BufferEndableWriteStream getWriteStream() {
+            return writeStream;
+        }
+    }
+
+    protected static class OpenedSegment {
+
+        private final SegmentRead segmentRead;
+        private final TransientBlobReference blobReference;
+        private final ReadStreamBlob readStreamBlob;
+        private final long openedAt = System.currentTimeMillis();
+
+        public OpenedSegment(SegmentRead segmentRead, TransientBlobReference blobReference, ReadStreamBlob readStreamBlob) {
+            this.segmentRead = segmentRead;
+            this.blobReference = blobReference;
+            this.readStreamBlob = readStreamBlob;
+        }
+
+        public long getOpenedAt() {
+            return openedAt;
+        }
+
+        public SegmentRead getSegmentRead() {
+            return segmentRead;
+        }
+
+        public TransientBlobReference getBlobReference() {
+            return blobReference;
+        }
+
+        public ReadStreamBlob getReadStreamBlob() {
+            return readStreamBlob;
         }
     }
 
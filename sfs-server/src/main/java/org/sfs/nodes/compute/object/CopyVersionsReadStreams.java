@@ -16,18 +16,26 @@
 
 package org.sfs.nodes.compute.object;
 
-import io.vertx.core.Vertx;
+import com.google.common.base.Optional;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.logging.Logger;
 import org.sfs.Server;
 import org.sfs.VertxContext;
 import org.sfs.io.BufferEndableWriteStream;
+import org.sfs.rx.Holder2;
+import org.sfs.vo.ByteRange;
+import org.sfs.vo.TransientSegment;
 import org.sfs.vo.TransientVersion;
 import rx.Observable;
 import rx.functions.Func1;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Optional.absent;
+import static com.google.common.math.LongMath.checkedAdd;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
-import static org.sfs.rx.Defer.just;
-import static org.sfs.rx.RxHelper.iterate;
+import static org.sfs.nodes.compute.object.CopySegmentsReadStreams.segmentRanges;
 
 public class CopyVersionsReadStreams implements Func1<Iterable<TransientVersion>, Observable<Iterable<TransientVersion>>> {
 
@@ -35,11 +43,23 @@ public class CopyVersionsReadStreams implements Func1<Iterable<TransientVersion>
     private final VertxContext<Server> vertxContext;
     private final BufferEndableWriteStream writeStream;
     private final boolean verifyChecksum;
+    private final Optional<ByteRange> oRange;
+    private final Optional<HttpServerResponse> oSendFileResponse;
 
     public CopyVersionsReadStreams(VertxContext<Server> vertxContext, BufferEndableWriteStream writeStream, boolean verifyChecksum) {
+        this(vertxContext, writeStream, verifyChecksum, absent());
+    }
+
+    public CopyVersionsReadStreams(VertxContext<Server> vertxContext, BufferEndableWriteStream writeStream, boolean verifyChecksum, Optional<ByteRange> oRange) {
+        this(vertxContext, writeStream, verifyChecksum, oRange, absent());
+    }
+
+    public CopyVersionsReadStreams(VertxContext<Server> vertxContext, BufferEndableWriteStream writeStream, boolean verifyChecksum, Optional<ByteRange> oRange, Optional<HttpServerResponse> oSendFileResponse) {
         this.vertxContext = vertxContext;
         this.writeStream = writeStream;
         this.verifyChecksum = verifyChecksum;
+        this.oRange = oRange;
+        this.oSendFileResponse = oSendFileResponse;
     }
 
     @Override
@@ -47,29 +67,46 @@ public class CopyVersionsReadStreams implements Func1<Iterable<TransientVersion>
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("begin copy segment version streams");
         }
-        Vertx vertx = vertxContext.vertx();
-        return iterate(
-                vertx,
-                transientVersions, transientVersion -> {
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("begin copy version object=" + transientVersion.getParent().getId() + ", version=" + transientVersion.getId());
-                    }
-                    return just(transientVersion.getSegments())
-                            .flatMap(new CopySegmentsReadStreams(vertxContext, writeStream, verifyChecksum))
-                            .map(transientSegments -> {
-                                if (LOGGER.isDebugEnabled()) {
-                                    LOGGER.debug("end copy version object=" + transientVersion.getParent().getId() + ", version=" + transientVersion.getId());
-                                }
-                                return true;
-                            });
-                }
-        )
-                .map(_continue -> {
+        // the segments of all the versions are copied as one sequence so that
+        // segments are opened ahead across the boundaries of dynamic large object parts
+        List<Holder2<TransientSegment, Optional<ByteRange>>> segmentRanges = new ArrayList<>();
+        for (Holder2<TransientVersion, Optional<ByteRange>> holder : versionRanges(transientVersions)) {
+            TransientVersion transientVersion = holder.value0();
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("copy version object=" + transientVersion.getParent().getId() + ", version=" + transientVersion.getId() + ", range=" + holder.value1());
+            }
+            segmentRanges.addAll(segmentRanges(transientVersion.getSegments(), holder.value1()));
+        }
+        return new CopySegmentsReadStreams(vertxContext, writeStream, verifyChecksum, absent(), oSendFileResponse)
+                .copy(segmentRanges)
+                .map(aVoid -> {
                     if (LOGGER.isDebugEnabled()) {
                         LOGGER.debug("end copy segment version streams");
                     }
                     return transientVersions;
                 });
     }
-}
 
+    // pair each version with the part of the range that falls inside of it, relative
+    // to the start of the version. Versions that don't overlap the range are skipped
+    protected List<Holder2<TransientVersion, Optional<ByteRange>>> versionRanges(Iterable<TransientVersion> transientVersions) {
+        List<Holder2<TransientVersion, Optional<ByteRange>>> versionRanges = new ArrayList<>();
+        if (oRange.isPresent()) {
+            ByteRange range = oRange.get();
+            long versionStart = 0;
+            for (TransientVersion transientVersion : transientVersions) {
+                long versionLength = transientVersion.calculateLength().get();
+                Optional<ByteRange> oVersionRange = range.intersect(versionStart, versionLength);
+                if (oVersionRange.isPresent()) {
+                    versionRanges.add(new Holder2<>(transientVersion, oVersionRange));
+                }
+                versionStart = checkedAdd(versionStart, versionLength);
+            }
+        } else {
+            for (TransientVersion transientVersion : transientVersions) {
+                versionRanges.add(new Holder2<>(transientVersion, absent()));
+            }
+        }
+        return versionRanges;
+    }
+}
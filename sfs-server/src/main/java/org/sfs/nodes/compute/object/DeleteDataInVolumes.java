@@ -19,7 +19,7 @@ package org.sfs.nodes.compute.object;
 import io.vertx.core.logging.Logger;
 import org.sfs.Server;
 import org.sfs.VertxContext;
-import org.sfs.nodes.all.blobreference.DeleteBlobReference;
+import org.sfs.nodes.all.blobreference.DeleteBlobReferences;
 import org.sfs.rx.Holder1;
 import org.sfs.rx.ToVoid;
 import org.sfs.vo.PersistentObject;
@@ -30,6 +30,7 @@ import rx.functions.Func1;
 import java.util.Set;
 
 import static io.vertx.core.logging.LoggerFactory.getLogger;
+import static java.lang.Boolean.TRUE;
 import static java.util.Collections.emptySet;
 import static org.sfs.rx.Defer.just;
 import static rx.Observable.from;
@@ -67,18 +68,21 @@ public class DeleteDataInVolumes implements Func1<PersistentObject, Observable<B
                 })
                 .filter(transientSegment -> !transientSegment.isTinyData())
                 .flatMap(transientSegment -> from(transientSegment.getBlobs()))
-                .flatMap(transientBlobReference ->
-                        just(transientBlobReference)
-                                .flatMap(new DeleteBlobReference(vertxContext))
-                                .filter(deleted -> deleted)
-                                .map(deleted -> {
-                                    if (Boolean.TRUE.equals(deleted)) {
-                                        transientBlobReference.setDeleted(deleted);
+                .toList()
+                .filter(transientBlobReferences -> !transientBlobReferences.isEmpty())
+                .flatMap(transientBlobReferences ->
+                        just(transientBlobReferences)
+                                .flatMap(new DeleteBlobReferences(vertxContext))
+                                .map(deleteds -> {
+                                    for (int i = 0; i < transientBlobReferences.size(); i++) {
+                                        if (Boolean.TRUE.equals(deleteds.get(i))) {
+                                            transientBlobReferences.get(i).setDeleted(TRUE);
+                                            modifiedHolder.value |= true;
+                                        }
                                     }
-                                    if (deleted && LOGGER.isDebugEnabled()) {
+                                    if (modifiedHolder.value && LOGGER.isDebugEnabled()) {
                                         LOGGER.debug("mark deletedatainvolumes object=" + persistentObject.getId());
                                     }
-                                    modifiedHolder.value |= true;
                                     return (Void) null;
                                 }))
                 .count()
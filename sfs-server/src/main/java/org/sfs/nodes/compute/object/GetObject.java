@@ -45,7 +45,6 @@ import org.sfs.validate.ValidateVersionSegmentsHasData;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.common.primitives.Longs.tryParse;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
-import static java.net.HttpURLConnection.HTTP_OK;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static org.sfs.rx.Defer.aVoid;
@@ -117,16 +116,14 @@ public class GetObject implements Handler<SfsRequest> {
                                 .flatMap(transientVersions ->
                                         just(transientVersions)
                                                 .map(new ValidateDynamicLargeObjectHasParts(transientVersion))
-                                                .doOnNext(aVoid -> httpServerRequest.response().setStatusCode(HTTP_OK))
                                                 .map(new WriteHttpServerResponseHeaders(httpServerRequest, transientVersion, transientVersions))
                                                 .map(aVoid -> transientVersions)
-                                                .flatMap(new ReadSegments(vertxContext, httpResponseWriteStream)));
+                                                .flatMap(new ReadRangedSegments(httpServerRequest, httpResponseWriteStream)));
                     } else {
                         return aVoid()
-                                .doOnNext(aVoid -> httpServerRequest.response().setStatusCode(HTTP_OK))
                                 .map(new WriteHttpServerResponseHeaders(httpServerRequest, transientVersion, emptyList()))
                                 .map(aVoid -> singletonList(transientVersion))
-                                .flatMap(new ReadSegments(vertxContext, httpResponseWriteStream));
+                                .flatMap(new ReadRangedSegments(httpServerRequest, httpResponseWriteStream));
                     }
                 })
                 .map(new ToVoid<>())
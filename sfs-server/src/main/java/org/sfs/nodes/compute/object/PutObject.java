@@ -31,6 +31,7 @@ import org.sfs.elasticsearch.object.UpdateObject;
 import org.sfs.io.CountingReadStream;
 import org.sfs.io.FileBackedBuffer;
 import org.sfs.io.LimitedReadStream;
+import org.sfs.io.ReadAheadReadStream;
 import org.sfs.nodes.all.segment.AcknowledgeSegment;
 import org.sfs.nodes.all.segment.VerifySegmentQuick;
 import org.sfs.rx.ConnectionCloseTerminus;
@@ -67,6 +68,7 @@ import static java.lang.String.valueOf;
 import static java.net.HttpURLConnection.HTTP_CREATED;
 import static java.util.Calendar.getInstance;
 import static java.util.Collections.emptyList;
+import static org.sfs.filesystem.volume.VolumeV1.TINY_DATA_THRESHOLD;
 import static org.sfs.io.AsyncIO.pump;
 import static org.sfs.rx.Defer.aVoid;
 import static org.sfs.rx.Defer.just;
@@ -92,6 +94,7 @@ public class PutObject implements Handler<SfsRequest> {
         VertxContext<Server> vertxContext = httpServerRequest.vertxContext();
 
         final AtomicReference<FileBackedBuffer> tempFileRef = new AtomicReference<>();
+        final AtomicReference<ReadAheadReadStream> chunkedStreamRef = new AtomicReference<>();
 
         Observable<Void> o =
                 aVoid()
@@ -132,7 +135,27 @@ public class PutObject implements Handler<SfsRequest> {
                         .flatMap(transientVersion -> {
                             final MultiMap headers = httpServerRequest.headers();
                             String contentLength = headers.get(CONTENT_LENGTH);
-                            if (contentLength == null) {
+                            if (contentLength != null) {
+                                return just(transientVersion);
+                            }
+                            if (!transientVersion.getParent().getParent().getObjectErasureCoding().isPresent()) {
+                                // read just enough to tell if the body is tiny data. If it ends
+                                // first the length is known, otherwise it's streamed to the
+                                // volumes as it arrives and the length is set once it's written
+                                ReadAheadReadStream readStream = new ReadAheadReadStream(new LimitedReadStream(httpServerRequest, MAX_SEGMENT_SIZE), TINY_DATA_THRESHOLD + 1);
+                                chunkedStreamRef.set(readStream);
+                                return readStream.readAhead()
+                                        .map(aVoid -> {
+                                            if (readStream.isEnded()) {
+                                                long length = readStream.getReadAheadLength();
+                                                transientVersion.setContentLength(length);
+                                                httpServerRequest.headers().set(CONTENT_LENGTH, valueOf(length));
+                                            }
+                                            return transientVersion;
+                                        });
+                            } else {
+                                // erasure coded segments are striped by length so
+                                // the body has to be spooled before it can be written
                                 Path tempDirectory = httpServerRequest.vertxContext().verticle().sfsFileSystem().tmpDirectory();
                                 FileBackedBuffer fileBackedBuffer = new FileBackedBuffer(vertxContext.vertx(), 8192, true, tempDirectory);
                                 tempFileRef.set(fileBackedBuffer);
@@ -144,8 +167,6 @@ public class PutObject implements Handler<SfsRequest> {
                                             httpServerRequest.headers().set(CONTENT_LENGTH, valueOf(countingWriteStream.count()));
                                             return transientVersion;
                                         });
-                            } else {
-                                return just(transientVersion);
                             }
                         })
                         .flatMap(transientVersion ->
@@ -153,20 +174,28 @@ public class PutObject implements Handler<SfsRequest> {
                                         .map(new ValidateHeaderBetweenLong(CONTENT_LENGTH, 0L, MAX_SEGMENT_SIZE))
                                         .map(httpServerRequest1 -> transientVersion))
                         .flatMap(transientVersion -> {
-                            long length = transientVersion.getContentLength().get();
-                            if (length > 0) {
+                            Optional<Long> oLength = transientVersion.getContentLength();
+                            if (!oLength.isPresent() || oLength.get() > 0) {
                                 return aVoid()
                                         .flatMap(aVoid -> {
                                             if (tempFileRef.get() != null) {
                                                 FileBackedBuffer fileBackedBuffer = tempFileRef.get();
                                                 return Observable.just(transientVersion)
                                                         .flatMap(new WriteNewSegment(httpServerRequest.vertxContext(), fileBackedBuffer.readStream()));
+                                            } else if (chunkedStreamRef.get() != null) {
+                                                return Observable.just(transientVersion)
+                                                        .flatMap(new WriteNewSegment(httpServerRequest.vertxContext(), chunkedStreamRef.get()));
                                             } else {
                                                 return Observable.just(transientVersion)
                                                         .flatMap(new WriteNewSegment(httpServerRequest.vertxContext(), httpServerRequest));
                                             }
                                         })
                                         .map(transientSegment -> {
+                                            if (!oLength.isPresent()) {
+                                                long length = transientSegment.getReadLength().get();
+                                                transientVersion.setContentLength(length);
+                                                httpServerRequest.headers().set(CONTENT_LENGTH, valueOf(length));
+                                            }
                                             validateSegment(transientSegment);
                                             return transientSegment;
                                         })
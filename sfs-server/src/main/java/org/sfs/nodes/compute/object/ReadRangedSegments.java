@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes.compute.object;
+
+import com.google.common.base.Optional;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import org.sfs.Server;
+import org.sfs.SfsRequest;
+import org.sfs.VertxContext;
+import org.sfs.io.BufferEndableWriteStream;
+import org.sfs.util.HttpRequestValidationException;
+import org.sfs.vo.ByteRange;
+import org.sfs.vo.TransientVersion;
+import rx.Observable;
+import rx.functions.Func1;
+
+import java.util.List;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.of;
+import static com.google.common.math.LongMath.checkedAdd;
+import static com.google.common.net.HttpHeaders.CONTENT_LENGTH;
+import static com.google.common.net.HttpHeaders.CONTENT_RANGE;
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
+import static com.google.common.net.HttpHeaders.ETAG;
+import static com.google.common.net.HttpHeaders.IF_RANGE;
+import static com.google.common.net.HttpHeaders.LAST_MODIFIED;
+import static com.google.common.net.HttpHeaders.RANGE;
+import static io.vertx.core.logging.LoggerFactory.getLogger;
+import static java.lang.String.format;
+import static java.lang.String.valueOf;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static java.net.HttpURLConnection.HTTP_PARTIAL;
+import static org.sfs.rx.Defer.aVoid;
+import static org.sfs.rx.Defer.just;
+import static org.sfs.rx.RxHelper.iterate;
+import static org.sfs.util.UUIDGen.getTimeUUID;
+import static org.sfs.vo.ByteRange.HTTP_REQUESTED_RANGE_NOT_SATISFIABLE;
+import static org.sfs.vo.ByteRange.toUnsatisfiedContentRange;
+
+// Sets the response status and streams either the whole object or, if the request
+// contains a satisfiable Range header, only the requested byte ranges. The response
+// headers must have already been written since the ETag and Last-Modified
+// headers are used to evaluate If-Range
+public class ReadRangedSegments implements Func1<Iterable<TransientVersion>, Observable<Iterable<TransientVersion>>> {
+
+    private static final Logger LOGGER = getLogger(ReadRangedSegments.class);
+    private final SfsRequest httpServerRequest;
+    private final BufferEndableWriteStream bufferStreamConsumer;
+
+    public ReadRangedSegments(SfsRequest httpServerRequest, BufferEndableWriteStream bufferStreamConsumer) {
+        this.httpServerRequest = httpServerRequest;
+        this.bufferStreamConsumer = bufferStreamConsumer;
+    }
+
+    @Override
+    public Observable<Iterable<TransientVersion>> call(Iterable<TransientVersion> transientVersions) {
+        VertxContext<Server> vertxContext = httpServerRequest.vertxContext();
+        HttpServerResponse httpServerResponse = httpServerRequest.response();
+
+        long contentLength = 0;
+        for (TransientVersion transientVersion : transientVersions) {
+            contentLength = checkedAdd(contentLength, transientVersion.calculateLength().get());
+        }
+
+        Optional<List<ByteRange>> oRanges = requestedRanges(contentLength);
+
+        if (!oRanges.isPresent()) {
+            httpServerResponse.setStatusCode(HTTP_OK);
+            return just(transientVersions)
+                    .flatMap(new ReadSegments(vertxContext, bufferStreamConsumer, false, absent(), of(httpServerResponse)));
+        }
+
+        List<ByteRange> ranges = oRanges.get();
+
+        if (ranges.isEmpty()) {
+            httpServerResponse.putHeader(CONTENT_RANGE, toUnsatisfiedContentRange(contentLength));
+            JsonObject jsonObject = new JsonObject()
+                    .put("message", format("Range %s is not satisfiable", httpServerRequest.headers().get(RANGE)));
+            throw new HttpRequestValidationException(HTTP_REQUESTED_RANGE_NOT_SATISFIABLE, jsonObject);
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("reading ranges " + ranges + " of " + contentLength + " bytes");
+        }
+
+        httpServerResponse.setStatusCode(HTTP_PARTIAL);
+
+        if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            httpServerResponse.setChunked(false);
+            httpServerResponse.putHeader(CONTENT_RANGE, range.toContentRange(contentLength));
+            httpServerResponse.putHeader(CONTENT_LENGTH, valueOf(range.getLength()));
+            return just(transientVersions)
+                    .flatMap(new ReadSegments(vertxContext, bufferStreamConsumer, false, of(range), of(httpServerResponse)));
+        } else {
+            final long finalContentLength = contentLength;
+            String boundary = getTimeUUID().toString();
+            String partContentType = httpServerResponse.headers().get(CONTENT_TYPE);
+            httpServerResponse.putHeader(CONTENT_TYPE, format("multipart/byteranges; boundary=%s", boundary));
+            return iterate(
+                    vertxContext.vertx(),
+                    ranges,
+                    range -> {
+                        StringBuilder partHeader = new StringBuilder()
+                                .append("\r\n--").append(boundary).append("\r\n");
+                        if (partContentType != null) {
+                            partHeader.append(CONTENT_TYPE).append(": ").append(partContentType).append("\r\n");
+                        }
+                        partHeader.append(CONTENT_RANGE).append(": ").append(range.toContentRange(finalContentLength)).append("\r\n\r\n");
+                        return aVoid()
+                                .doOnNext(aVoid -> bufferStreamConsumer.write(Buffer.buffer(partHeader.toString(), UTF_8.toString())))
+                                .map(aVoid -> transientVersions)
+                                .flatMap(new ReadSegments(vertxContext, bufferStreamConsumer, false, of(range)))
+                                .map(input -> true);
+                    })
+                    .doOnNext(_continue -> bufferStreamConsumer.write(Buffer.buffer(format("\r\n--%s--\r\n", boundary), UTF_8.toString())))
+                    .map(_continue -> transientVersions);
+        }
+    }
+
+    protected Optional<List<ByteRange>> requestedRanges(long contentLength) {
+        MultiMap headers = httpServerRequest.headers();
+        String range = headers.get(RANGE);
+        if (range == null) {
+            return Optional.absent();
+        }
+        // If-Range means send the ranges only if the representation is unchanged,
+        // otherwise send the whole thing
+        String ifRange = headers.get(IF_RANGE);
+        if (ifRange != null) {
+            MultiMap responseHeaders = httpServerRequest.response().headers();
+            String etag = responseHeaders.get(ETAG);
+            String lastModified = responseHeaders.get(LAST_MODIFIED);
+            String unquoted = ifRange.trim();
+            if (unquoted.length() >= 2 && unquoted.startsWith("\"") && unquoted.endsWith("\"")) {
+                unquoted = unquoted.substring(1, unquoted.length() - 1);
+            }
+            if (!unquoted.equals(etag) && !ifRange.trim().equals(lastModified)) {
+                return Optional.absent();
+            }
+        }
+        return ByteRange.parse(range, contentLength);
+    }
+}
@@ -16,14 +16,18 @@
 
 package org.sfs.nodes.compute.object;
 
+import com.google.common.base.Optional;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.logging.Logger;
 import org.sfs.Server;
 import org.sfs.VertxContext;
 import org.sfs.io.BufferEndableWriteStream;
+import org.sfs.vo.ByteRange;
 import org.sfs.vo.TransientVersion;
 import rx.Observable;
 import rx.functions.Func1;
 
+import static com.google.common.base.Optional.absent;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
 import static org.sfs.rx.Defer.just;
 
@@ -33,11 +37,23 @@ public class ReadSegments implements Func1<Iterable<TransientVersion>, Observabl
     private final VertxContext<Server> vertxContext;
     private final BufferEndableWriteStream bufferStreamConsumer;
     private final boolean verifyChecksum;
+    private final Optional<ByteRange> oRange;
+    private final Optional<HttpServerResponse> oSendFileResponse;
 
-    public ReadSegments(VertxContext<Server> vertxContext, BufferEndableWriteStream bufferStreamConsumer, boolean verifyChecksum) {
+    public ReadSegments(VertxContext<Server> vertxContext, BufferEndableWriteStream bufferStreamConsumer, boolean verifyChecksum, Optional<ByteRange> oRange, Optional<HttpServerResponse> oSendFileResponse) {
         this.vertxContext = vertxContext;
         this.bufferStreamConsumer = bufferStreamConsumer;
         this.verifyChecksum = verifyChecksum;
+        this.oRange = oRange;
+        this.oSendFileResponse = oSendFileResponse;
+    }
+
+    public ReadSegments(VertxContext<Server> vertxContext, BufferEndableWriteStream bufferStreamConsumer, boolean verifyChecksum, Optional<ByteRange> oRange) {
+        this(vertxContext, bufferStreamConsumer, verifyChecksum, oRange, absent());
+    }
+
+    public ReadSegments(VertxContext<Server> vertxContext, BufferEndableWriteStream bufferStreamConsumer, boolean verifyChecksum) {
+        this(vertxContext, bufferStreamConsumer, verifyChecksum, absent());
     }
 
     public ReadSegments(VertxContext<Server> vertxContext, BufferEndableWriteStream bufferStreamConsumer) {
@@ -47,7 +63,7 @@ public class ReadSegments implements Func1<Iterable<TransientVersion>, Observabl
     @Override
     public Observable<Iterable<TransientVersion>> call(Iterable<TransientVersion> transientVersions) {
         return just(transientVersions)
-                .flatMap(new CopyVersionsReadStreams(vertxContext, bufferStreamConsumer, verifyChecksum));
+                .flatMap(new CopyVersionsReadStreams(vertxContext, bufferStreamConsumer, verifyChecksum, oRange, oSendFileResponse));
     }
 
 }
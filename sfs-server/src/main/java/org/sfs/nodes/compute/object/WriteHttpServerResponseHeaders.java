@@ -79,7 +79,7 @@ public class WriteHttpServerResponseHeaders implements Func1<Void, Void> {
         Calendar createTs = parentVersion.getCreateTs();
         Calendar updateTs = parentVersion.getUpdateTs();
 
-        httpServerResponse = httpServerResponse.putHeader(ACCEPT_RANGES, "none");
+        httpServerResponse = httpServerResponse.putHeader(ACCEPT_RANGES, "bytes");
         httpServerResponse = httpServerResponse.putHeader(LAST_MODIFIED, toRfc1123String(updateTs));
         httpServerResponse = httpServerResponse.putHeader(DATE, toRfc1123String(getInstance()));
         httpServerResponse = httpServerResponse.putHeader(X_CONTENT_VERSION, valueOf(parentVersion.getId()));
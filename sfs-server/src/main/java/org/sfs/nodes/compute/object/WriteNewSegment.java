@@ -16,6 +16,7 @@
 
 package org.sfs.nodes.compute.object;
 
+import com.google.common.base.Optional;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.streams.ReadStream;
@@ -31,15 +32,24 @@ import org.sfs.nodes.VolumeReplicaGroup;
 import org.sfs.nodes.XNode;
 import org.sfs.rx.Holder2;
 import org.sfs.util.MessageDigestFactory;
+import org.sfs.vo.ErasureCoding;
 import org.sfs.vo.PersistentContainer;
+import org.sfs.vo.TransientBlobReference;
 import org.sfs.vo.TransientSegment;
 import org.sfs.vo.TransientVersion;
 import rx.Observable;
 import rx.functions.Func1;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.of;
+import static com.google.common.base.Preconditions.checkState;
 import static io.vertx.core.logging.LoggerFactory.getLogger;
 import static org.sfs.filesystem.volume.VolumeV1.TINY_DATA_THRESHOLD;
 import static org.sfs.io.AsyncIO.pump;
+import static org.sfs.util.Limits.MAX_SEGMENT_SIZE;
 import static org.sfs.util.MessageDigestFactory.MD5;
 import static org.sfs.util.MessageDigestFactory.SHA512;
 import static org.sfs.vo.Segment.SegmentCipher;
@@ -59,13 +69,20 @@ public class WriteNewSegment implements Func1<TransientVersion, Observable<Trans
     public Observable<TransientSegment> call(TransientVersion transientVersion) {
         final PersistentContainer persistentContainer = transientVersion.getParent().getParent();
 
-        final long contentLength = transientVersion.getContentLength().get();
+        // a version without a content length must be known to be bigger than tiny
+        // data. It's streamed to the volumes as chunked blobs and the lengths are
+        // whatever was read
+        final Optional<Long> oContentLength = transientVersion.getContentLength();
         final boolean serverSideEncryption = transientVersion.useServerSideEncryption();
+        final Optional<ErasureCoding> oErasureCoding = persistentContainer.getObjectErasureCoding();
 
         final Nodes nodes = vertxContext.verticle().nodes();
 
         final MessageDigestFactory sha512Digest = SHA512;
         final MessageDigestFactory md5Digest = MD5;
+        // md5 and sha512 of the clear text are returned to clients. The blobs
+        // only need a digest that the data nodes can verify them with
+        final MessageDigestFactory blobDigest = nodes.getBlobDigest();
 
         if (serverSideEncryption) {
             ContainerKeys containerKeys = vertxContext.verticle().containerKeys();
@@ -76,7 +93,8 @@ public class WriteNewSegment implements Func1<TransientVersion, Observable<Trans
                         VolumeReplicaGroup volumeReplicaGroup = new VolumeReplicaGroup(vertxContext, nodes.getNumberOfObjectCopies())
                                 .setAllowSameNode(nodes.isAllowSameNode());
 
-                        long encryptedLength = keyResponse.getData().encryptOutputSize(contentLength);
+                        Optional<Long> oEncryptedLength = oContentLength.isPresent() ? of(keyResponse.getData().encryptOutputSize(oContentLength.get())) : absent();
+                        long maxEncryptedLength = keyResponse.getData().encryptOutputSize(MAX_SEGMENT_SIZE);
 
                         final CountingReadStream clearByteCount = new CountingReadStream(readStream);
 
@@ -86,17 +104,18 @@ public class WriteNewSegment implements Func1<TransientVersion, Observable<Trans
 
                         final CountingReadStream encryptedByteCount = new CountingReadStream(cipherWriteStream);
 
-                        final DigestReadStream blobDigestReadStream = new DigestReadStream(encryptedByteCount, md5Digest, sha512Digest);
+                        final DigestReadStream blobDigestReadStream = new DigestReadStream(encryptedByteCount, blobDigest);
 
-                        if (encryptedLength > TINY_DATA_THRESHOLD) {
+                        if (!oEncryptedLength.isPresent() || oEncryptedLength.get() > TINY_DATA_THRESHOLD) {
 
-                            return volumeReplicaGroup.consume(encryptedLength, sha512Digest, blobDigestReadStream)
+                            return consume(volumeReplicaGroup, oErasureCoding, oEncryptedLength, maxEncryptedLength, blobDigest, blobDigestReadStream)
                                     .map(digestBlobs -> {
                                         SegmentCipher segmentCipher = new SegmentCipher(keyResponse.getKeyId(), keyResponse.getSalt());
 
                                         final TransientSegment newSegment = transientVersion.newSegment();
 
-                                        newSegment.setWriteSha512(blobDigestReadStream.getDigest(sha512Digest).get())
+                                        newSegment.setWriteDigest(blobDigestReadStream.getDigest(blobDigest).get())
+                                                .setBlobDigestAlgorithm(blobDigest)
                                                 .setSegmentCipher(segmentCipher)
                                                 .setWriteLength(encryptedByteCount.count())
                                                 .setReadSha512(serverObjectDigestReadStream.getDigest(sha512Digest).get())
@@ -104,13 +123,7 @@ public class WriteNewSegment implements Func1<TransientVersion, Observable<Trans
                                                 .setReadLength(clearByteCount.count())
                                                 .setIsTinyData(false);
 
-                                        for (DigestBlob digestBlob : digestBlobs) {
-                                            newSegment.newBlob()
-                                                    .setVolumeId(digestBlob.getVolume())
-                                                    .setPosition(digestBlob.getPosition())
-                                                    .setReadLength(digestBlob.getLength())
-                                                    .setReadSha512(digestBlob.getDigest(sha512Digest).get());
-                                        }
+                                        addBlobs(newSegment, oErasureCoding, digestBlobs, blobDigest);
 
                                         return newSegment;
                                     });
@@ -122,7 +135,8 @@ public class WriteNewSegment implements Func1<TransientVersion, Observable<Trans
 
                                         final TransientSegment newSegment = transientVersion.newSegment();
 
-                                        newSegment.setWriteSha512(blobDigestReadStream.getDigest(sha512Digest).get())
+                                        newSegment.setWriteDigest(blobDigestReadStream.getDigest(blobDigest).get())
+                                                .setBlobDigestAlgorithm(blobDigest)
                                                 .setSegmentCipher(segmentCipher)
                                                 .setWriteLength(encryptedByteCount.count())
                                                 .setReadSha512(serverObjectDigestReadStream.getDigest(sha512Digest).get())
@@ -144,16 +158,21 @@ public class WriteNewSegment implements Func1<TransientVersion, Observable<Trans
                             .setAllowSameNode(nodes.isAllowSameNode());
 
             final CountingReadStream clearByteCount = new CountingReadStream(readStream);
-            final DigestReadStream digestReadStream = new DigestReadStream(clearByteCount, md5Digest, sha512Digest);
+            // the clear text is what's written to the blobs so the sha512 is
+            // reused when it's also the blob digest
+            final DigestReadStream digestReadStream = blobDigest.equals(sha512Digest)
+                    ? new DigestReadStream(clearByteCount, md5Digest, sha512Digest)
+                    : new DigestReadStream(clearByteCount, md5Digest, sha512Digest, blobDigest);
 
-            if (contentLength > TINY_DATA_THRESHOLD) {
+            if (!oContentLength.isPresent() || oContentLength.get() > TINY_DATA_THRESHOLD) {
 
-                return volumeReplicaGroup.consume(contentLength, sha512Digest, digestReadStream)
+                return consume(volumeReplicaGroup, oErasureCoding, oContentLength, MAX_SEGMENT_SIZE, blobDigest, digestReadStream)
                         .map(digestBlobs -> {
 
                             final TransientSegment newSegment = transientVersion.newSegment();
 
-                            newSegment.setWriteSha512(digestReadStream.getDigest(sha512Digest).get())
+                            newSegment.setWriteDigest(digestReadStream.getDigest(blobDigest).get())
+                                    .setBlobDigestAlgorithm(blobDigest)
                                     .setSegmentCipher(null)
                                     .setWriteLength(clearByteCount.count())
                                     .setReadSha512(digestReadStream.getDigest(sha512Digest).get())
@@ -161,13 +180,7 @@ public class WriteNewSegment implements Func1<TransientVersion, Observable<Trans
                                     .setReadLength(clearByteCount.count())
                                     .setIsTinyData(false);
 
-                            for (DigestBlob digestBlob : digestBlobs) {
-                                newSegment.newBlob()
-                                        .setVolumeId(digestBlob.getVolume())
-                                        .setPosition(digestBlob.getPosition())
-                                        .setReadLength(digestBlob.getLength())
-                                        .setReadSha512(digestBlob.getDigest(sha512Digest).get());
-                            }
+                            addBlobs(newSegment, oErasureCoding, digestBlobs, blobDigest);
 
                             return newSegment;
                         });
@@ -178,7 +191,8 @@ public class WriteNewSegment implements Func1<TransientVersion, Observable<Trans
 
                             final TransientSegment newSegment = transientVersion.newSegment();
 
-                            newSegment.setWriteSha512(digestReadStream.getDigest(sha512Digest).get())
+                            newSegment.setWriteDigest(digestReadStream.getDigest(blobDigest).get())
+                                    .setBlobDigestAlgorithm(blobDigest)
                                     .setSegmentCipher(null)
                                     .setWriteLength(clearByteCount.count())
                                     .setReadSha512(digestReadStream.getDigest(sha512Digest).get())
@@ -194,5 +208,41 @@ public class WriteNewSegment implements Func1<TransientVersion, Observable<Trans
         }
 
     }
-}
 
+    protected Observable<List<DigestBlob>> consume(VolumeReplicaGroup volumeReplicaGroup, Optional<ErasureCoding> oErasureCoding, Optional<Long> oLength, long maxLength, MessageDigestFactory messageDigestFactory, ReadStream<Buffer> src) {
+        if (oErasureCoding.isPresent()) {
+            // fragment lengths are derived from the segment length
+            checkState(oLength.isPresent(), "Erasure coded segments must have a length");
+            ErasureCoding erasureCoding = oErasureCoding.get();
+            return volumeReplicaGroup.consume(oLength.get(), erasureCoding, erasureCoding.getFragmentIndexes(), messageDigestFactory, src);
+        } else if (oLength.isPresent()) {
+            return volumeReplicaGroup.consume(oLength.get(), messageDigestFactory, src);
+        } else {
+            return volumeReplicaGroup.consumeChunked(maxLength, messageDigestFactory, src);
+        }
+    }
+
+    protected void addBlobs(TransientSegment newSegment, Optional<ErasureCoding> oErasureCoding, List<DigestBlob> digestBlobs, MessageDigestFactory messageDigestFactory) {
+        List<byte[]> fragmentDigests = new ArrayList<>(digestBlobs.size());
+        for (int i = 0; i < digestBlobs.size(); i++) {
+            DigestBlob digestBlob = digestBlobs.get(i);
+            byte[] digest = digestBlob.getDigest(messageDigestFactory).get();
+            TransientBlobReference blobReference =
+                    newSegment.newBlob()
+                            .setVolumeId(digestBlob.getVolume())
+                            .setPosition(digestBlob.getPosition())
+                            .setReadLength(digestBlob.getLength())
+                            .setReadDigest(digest)
+                            .setDigestAlgorithm(messageDigestFactory);
+            if (oErasureCoding.isPresent()) {
+                // the blobs are in fragment order
+                blobReference.setFragmentIndex(i);
+                fragmentDigests.add(digest);
+            }
+        }
+        if (oErasureCoding.isPresent()) {
+            newSegment.setErasureCoding(oErasureCoding.get())
+                    .setFragmentDigests(fragmentDigests);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes.data;
+
+import com.google.common.base.Optional;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.sfs.Server;
+import org.sfs.SfsRequest;
+import org.sfs.VertxContext;
+import org.sfs.auth.Authenticate;
+import org.sfs.filesystem.volume.BlobAddress;
+import org.sfs.filesystem.volume.HeaderBlob;
+import org.sfs.io.BufferWriteEndableWriteStream;
+import org.sfs.io.LimitedWriteEndableWriteStream;
+import org.sfs.nodes.LocalNode;
+import org.sfs.rx.BufferToJsonObject;
+import org.sfs.rx.HandleServerToBusy;
+import org.sfs.rx.Holder2;
+import org.sfs.rx.Terminus;
+import org.sfs.util.HttpRequestValidationException;
+import org.sfs.validate.ValidateActionAdminOrSystem;
+import org.sfs.validate.ValidateNodeIsDataNode;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static java.lang.String.format;
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
+import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static org.sfs.io.AsyncIO.pump;
+import static org.sfs.rx.Defer.aVoid;
+import static org.sfs.util.KeepAliveHttpServerResponse.DELIMITER_BUFFER;
+import static org.sfs.util.Limits.MAX_BLOB_BATCH_REQUEST_SIZE;
+import static org.sfs.util.Limits.MAX_BLOB_BATCH_SIZE;
+
+// Reads a {"blobs":[{volume,position},...]} request body, runs the same operation
+// against each blob on this node and responds with one result per blob in request order
+public abstract class BatchBlobHandler<T extends HeaderBlob> implements Handler<SfsRequest> {
+
+    @Override
+    public void handle(final SfsRequest httpServerRequest) {
+
+        VertxContext<Server> vertxContext = httpServerRequest.vertxContext();
+
+        aVoid()
+                .flatMap(new Authenticate(httpServerRequest))
+                .flatMap(new ValidateActionAdminOrSystem(httpServerRequest))
+                .map(new ValidateNodeIsDataNode<>(vertxContext))
+                .map(aVoid -> validate(httpServerRequest))
+                .flatMap(httpServerRequest1 -> {
+                    BufferWriteEndableWriteStream bufferWriteStream = new BufferWriteEndableWriteStream();
+                    LimitedWriteEndableWriteStream limitedWriteStream = new LimitedWriteEndableWriteStream(bufferWriteStream, MAX_BLOB_BATCH_REQUEST_SIZE);
+                    return pump(httpServerRequest1, limitedWriteStream)
+                            .map(aVoid -> bufferWriteStream.toBuffer());
+                })
+                .map(new BufferToJsonObject())
+                .map(this::toBlobAddresses)
+                .flatMap(blobAddresses -> {
+                    // let the client know we're alive by sending pings on the response stream
+                    httpServerRequest.startProxyKeepAlive();
+
+                    LocalNode localNode = new LocalNode(vertxContext, vertxContext.verticle().nodes().volumeManager());
+
+                    return execute(httpServerRequest, localNode, blobAddresses);
+                })
+                .map(results -> new Holder2<>(httpServerRequest, results))
+                .flatMap(holder -> httpServerRequest.stopKeepAlive()
+                        .map(aVoid -> holder))
+                .onErrorResumeNext(throwable ->
+                        httpServerRequest.stopKeepAlive()
+                                .flatMap(aVoid -> Observable.<Holder2<SfsRequest, List<Optional<T>>>>error(throwable)))
+                .single()
+                .onErrorResumeNext(new HandleServerToBusy<>())
+                .subscribe(new Terminus<Holder2<SfsRequest, List<Optional<T>>>>(httpServerRequest) {
+                    @Override
+                    public void onNext(Holder2<SfsRequest, List<Optional<T>>> holder) {
+                        JsonArray jsonResults = new JsonArray();
+                        for (Optional<T> oBlob : holder.value1()) {
+                            JsonObject jsonResult = new JsonObject();
+                            if (oBlob.isPresent()) {
+                                jsonResult.put("code", HTTP_OK)
+                                        .put("blob", oBlob.get().toJsonObject());
+                            } else {
+                                jsonResult.put("code", HTTP_NOT_FOUND);
+                            }
+                            jsonResults.add(jsonResult);
+                        }
+                        JsonObject jsonResponse = new JsonObject()
+                                .put("code", HTTP_OK)
+                                .put("results", jsonResults);
+                        HttpServerResponse httpResponse = holder.value0().response();
+                        httpResponse.write(jsonResponse.encode(), UTF_8.toString())
+                                .write(DELIMITER_BUFFER);
+                    }
+                });
+
+    }
+
+    protected SfsRequest validate(SfsRequest httpServerRequest) {
+        return httpServerRequest;
+    }
+
+    protected abstract Observable<List<Optional<T>>> execute(SfsRequest httpServerRequest, LocalNode localNode, List<BlobAddress> blobAddresses);
+
+    protected List<BlobAddress> toBlobAddresses(JsonObject jsonObject) {
+        JsonArray jsonBlobs = jsonObject.getJsonArray("blobs");
+        if (jsonBlobs == null) {
+            throw new HttpRequestValidationException(HTTP_BAD_REQUEST, new JsonObject()
+                    .put("message", "blobs is required"));
+        }
+        if (jsonBlobs.size() > MAX_BLOB_BATCH_SIZE) {
+            throw new HttpRequestValidationException(HTTP_BAD_REQUEST, new JsonObject()
+                    .put("message", format("blobs must contain at most %d entries", MAX_BLOB_BATCH_SIZE)));
+        }
+        List<BlobAddress> blobAddresses = new ArrayList<>(jsonBlobs.size());
+        for (Object o : jsonBlobs) {
+            BlobAddress blobAddress = new BlobAddress((JsonObject) o);
+            if (blobAddress.getVolume() == null || blobAddress.getPosition() < 0) {
+                throw new HttpRequestValidationException(HTTP_BAD_REQUEST, new JsonObject()
+                        .put("message", format("%s is not a valid blob", o)));
+            }
+            blobAddresses.add(blobAddress);
+        }
+        return blobAddresses;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes.data;
+
+import com.google.common.base.Optional;
+import org.sfs.SfsRequest;
+import org.sfs.filesystem.volume.BlobAddress;
+import org.sfs.filesystem.volume.DigestBlob;
+import org.sfs.nodes.LocalNode;
+import org.sfs.util.MessageDigestFactory;
+import org.sfs.validate.ValidateParamComputedDigest;
+import rx.Observable;
+
+import java.util.List;
+import java.util.regex.Matcher;
+
+import static com.google.common.collect.FluentIterable.from;
+import static com.google.common.collect.Iterables.toArray;
+import static org.sfs.util.MessageDigestFactory.fromValueIfExists;
+import static org.sfs.util.SfsHttpQueryParams.COMPUTED_DIGEST;
+
+public class ChecksumBlobs extends BatchBlobHandler<DigestBlob> {
+
+    @Override
+    protected SfsRequest validate(SfsRequest httpServerRequest) {
+        return new ValidateParamComputedDigest().call(httpServerRequest);
+    }
+
+    @Override
+    protected Observable<List<Optional<DigestBlob>>> execute(SfsRequest httpServerRequest, LocalNode localNode, List<BlobAddress> blobAddresses) {
+        Iterable<MessageDigestFactory> iterable =
+                from(httpServerRequest.params().names())
+                        .transform(param -> {
+                            Matcher matcher = COMPUTED_DIGEST.matcher(param);
+                            if (matcher.matches()) {
+                                return fromValueIfExists(matcher.group(1));
+                            }
+                            return Optional.<MessageDigestFactory>absent();
+                        })
+                        .filter(Optional::isPresent)
+                        .transform(Optional::get);
+        return localNode.checksum(blobAddresses, toArray(iterable, MessageDigestFactory.class));
+    }
+}
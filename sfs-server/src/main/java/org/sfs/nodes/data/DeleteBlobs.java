@@ -0,0 +1,34 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes.data;
+
+import com.google.common.base.Optional;
+import org.sfs.SfsRequest;
+import org.sfs.filesystem.volume.BlobAddress;
+import org.sfs.filesystem.volume.HeaderBlob;
+import org.sfs.nodes.LocalNode;
+import rx.Observable;
+
+import java.util.List;
+
+public class DeleteBlobs extends BatchBlobHandler<HeaderBlob> {
+
+    @Override
+    protected Observable<List<Optional<HeaderBlob>>> execute(SfsRequest httpServerRequest, LocalNode localNode, List<BlobAddress> blobAddresses) {
+        return localNode.delete(blobAddresses);
+    }
+}
@@ -26,6 +26,7 @@ import org.sfs.SfsRequest;
 import org.sfs.VertxContext;
 import org.sfs.auth.Authenticate;
 import org.sfs.filesystem.volume.ReadStreamBlob;
+import org.sfs.filesystem.volume.SendFileReadStreamBlob;
 import org.sfs.filesystem.volume.Volume;
 import org.sfs.io.HttpServerResponseEndableWriteStream;
 import org.sfs.io.NoEndEndableWriteStream;
@@ -105,6 +106,9 @@ public class GetBlob implements Handler<SfsRequest> {
                         ReadStreamBlob readStreamBlob = oReadStreamBlob.get();
                         HttpServerResponse httpServerResponse = input.value0().response();
                         httpServerResponse.setStatusCode(HTTP_OK);
+                        if (readStreamBlob instanceof SendFileReadStreamBlob && !httpServerResponse.headWritten()) {
+                            return ((SendFileReadStreamBlob) readStreamBlob).sendFile(httpServerResponse);
+                        }
                         NoEndEndableWriteStream endableWriteStream = new NoEndEndableWriteStream(new HttpServerResponseEndableWriteStream(httpServerResponse));
                         return readStreamBlob.produce(endableWriteStream);
                     } else {
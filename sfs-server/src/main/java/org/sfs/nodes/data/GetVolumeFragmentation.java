@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes.data;
+
+import com.google.common.base.Optional;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.sfs.Server;
+import org.sfs.SfsRequest;
+import org.sfs.VertxContext;
+import org.sfs.auth.Authenticate;
+import org.sfs.filesystem.volume.VolumeManager;
+import org.sfs.rx.Terminus;
+import org.sfs.validate.ValidateActionAdminOrSystem;
+import org.sfs.validate.ValidateNodeIsDataNode;
+import rx.Observable;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.collect.FluentIterable.from;
+import static com.google.common.net.HttpHeaders.CONTENT_LENGTH;
+import static io.vertx.core.buffer.Buffer.buffer;
+import static java.lang.String.valueOf;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static org.sfs.rx.Defer.aVoid;
+import static org.sfs.util.SfsHttpQueryParams.VOLUME;
+
+// Reports how fragmented the index and data file allocators of the
+// local volumes are. The volume query parameter limits it to one volume
+public class GetVolumeFragmentation implements Handler<SfsRequest> {
+
+    @Override
+    public void handle(SfsRequest httpServerRequest) {
+
+        VertxContext<Server> vertxContext = httpServerRequest.vertxContext();
+
+        aVoid()
+                .flatMap(new Authenticate(httpServerRequest))
+                .flatMap(new ValidateActionAdminOrSystem(httpServerRequest))
+                .map(new ValidateNodeIsDataNode<>(vertxContext))
+                .flatMap(aVoid -> {
+                    VolumeManager volumeManager = vertxContext.verticle().nodes().volumeManager();
+                    String volumeId = httpServerRequest.params().get(VOLUME);
+                    Iterable<String> volumeIds = volumeId != null ? from(volumeManager.volumes()).filter(volumeId::equals) : volumeManager.volumes();
+                    return Observable.from(volumeIds)
+                            .map(volumeManager::get)
+                            .filter(Optional::isPresent)
+                            .map(Optional::get)
+                            .concatMap(volume -> volume.fragmentationReport(vertxContext.vertx()))
+                            .reduce(new JsonArray(), JsonArray::add);
+                })
+                .map(volumes -> new JsonObject().put("volumes", volumes))
+                .single()
+                .subscribe(new Terminus<JsonObject>(httpServerRequest) {
+
+                    @Override
+                    public void onNext(JsonObject jsonObject) {
+                        Buffer encoded = buffer(jsonObject.encode().getBytes(UTF_8));
+                        httpServerRequest.response()
+                                .setStatusCode(HTTP_OK)
+                                .putHeader(CONTENT_LENGTH, valueOf(encoded.length()))
+                                .write(encoded);
+                    }
+                });
+    }
+}
@@ -23,6 +23,7 @@ import io.vertx.core.Handler;
 import io.vertx.core.MultiMap;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import org.sfs.Server;
@@ -32,9 +33,12 @@ import org.sfs.auth.Authenticate;
 import org.sfs.filesystem.volume.DigestBlob;
 import org.sfs.filesystem.volume.Volume;
 import org.sfs.filesystem.volume.VolumeManager;
+import org.sfs.filesystem.volume.WriteStreamBlob;
 import org.sfs.io.BufferWriteEndableWriteStream;
 import org.sfs.io.CountingReadStream;
 import org.sfs.io.DigestReadStream;
+import org.sfs.nodes.ChainWriteStreamBlob;
+import org.sfs.nodes.LocalNode;
 import org.sfs.rx.HandleServerToBusy;
 import org.sfs.rx.Holder2;
 import org.sfs.rx.Terminus;
@@ -45,14 +49,16 @@ import org.sfs.validate.ValidateActionAdminOrSystem;
 import org.sfs.validate.ValidateHeaderBetweenLong;
 import org.sfs.validate.ValidateHeaderExists;
 import org.sfs.validate.ValidateNodeIsDataNode;
+import org.sfs.validate.ValidateParamBetweenLong;
 import org.sfs.validate.ValidateParamComputedDigest;
 import org.sfs.validate.ValidateParamExists;
+import rx.Observable;
 
+import java.util.List;
 import java.util.regex.Matcher;
 
 import static com.google.common.base.Charsets.UTF_8;
 import static com.google.common.base.Optional.absent;
-import static com.google.common.base.Optional.of;
 import static com.google.common.collect.FluentIterable.from;
 import static com.google.common.collect.Iterables.toArray;
 import static com.google.common.net.HttpHeaders.CONTENT_LENGTH;
@@ -62,10 +68,13 @@ import static java.lang.Long.parseLong;
 import static java.net.HttpURLConnection.HTTP_INTERNAL_ERROR;
 import static java.net.HttpURLConnection.HTTP_OK;
 import static java.net.HttpURLConnection.HTTP_UNAVAILABLE;
+import static java.util.Collections.singletonList;
 import static org.sfs.rx.Defer.aVoid;
 import static org.sfs.util.KeepAliveHttpServerResponse.DELIMITER_BUFFER;
 import static org.sfs.util.MessageDigestFactory.fromValueIfExists;
 import static org.sfs.util.SfsHttpQueryParams.COMPUTED_DIGEST;
+import static org.sfs.util.SfsHttpQueryParams.DOWNSTREAM_VOLUME;
+import static org.sfs.util.SfsHttpQueryParams.MAX_LENGTH;
 import static org.sfs.util.SfsHttpQueryParams.VOLUME;
 
 public class PutBlob implements Handler<SfsRequest> {
@@ -85,8 +94,15 @@ public class PutBlob implements Handler<SfsRequest> {
                 .map(new ValidateNodeIsDataNode<>(vertxContext))
                 .map(aVoid -> httpServerRequest)
                 .map(new ValidateParamExists(VOLUME))
-                .map(new ValidateHeaderExists(CONTENT_LENGTH))
+                .map(httpServerRequest1 -> {
+                    // chunked writes send the most they may write instead of a length
+                    if (httpServerRequest1.params().get(MAX_LENGTH) == null) {
+                        return new ValidateHeaderExists(CONTENT_LENGTH).call(httpServerRequest1);
+                    }
+                    return httpServerRequest1;
+                })
                 .map(new ValidateHeaderBetweenLong(CONTENT_LENGTH, 0, MAX_VALUE))
+                .map(new ValidateParamBetweenLong(MAX_LENGTH, 0, MAX_VALUE))
                 .map(new ValidateParamComputedDigest())
                 .map(new ToVoid<>())
                 .map(aVoid -> httpServerRequest)
@@ -129,13 +145,43 @@ public class PutBlob implements Handler<SfsRequest> {
                         throw new HttpStatusCodeException(String.format("Volume %s not started", volumeId), HTTP_UNAVAILABLE);
                     }
 
-                    long length = parseLong(headers.get(CONTENT_LENGTH));
+                    String maxLength = params.get(MAX_LENGTH);
+
+                    List<String> downstreamVolumeIds = params.getAll(DOWNSTREAM_VOLUME);
+
+                    if (!downstreamVolumeIds.isEmpty()) {
+                        MessageDigestFactory[] messageDigestFactories = toArray(iterable, MessageDigestFactory.class);
+                        LocalNode localNode = new LocalNode(vertxContext, volumeManager);
+                        Observable<ChainWriteStreamBlob> oChainWriteStreamBlob;
+                        if (maxLength != null) {
+                            oChainWriteStreamBlob = localNode.createChunkedChainWriteStream(volumeId, parseLong(maxLength), downstreamVolumeIds, messageDigestFactories);
+                        } else {
+                            long length = parseLong(headers.get(CONTENT_LENGTH));
+                            oChainWriteStreamBlob = localNode.createChainWriteStream(volumeId, length, downstreamVolumeIds, messageDigestFactories);
+                        }
+                        // the keep alive only starts once the rest of the chain is connected
+                        // so that a chain that can't be connected is returned as an error status
+                        return oChainWriteStreamBlob
+                                .flatMap(chainWriteStreamBlob -> {
+                                    httpServerRequest1.startProxyKeepAlive();
+                                    return chainWriteStreamBlob.consume(httpServerRequest1);
+                                })
+                                .map(digestBlobs -> new Holder2<>(httpServerRequest1, digestBlobs));
+                    }
+
+                    Observable<WriteStreamBlob> oWriteStreamBlob;
+                    if (maxLength != null) {
+                        oWriteStreamBlob = volume.putChunkedDataStream(httpServerRequest1.vertxContext().vertx(), parseLong(maxLength));
+                    } else {
+                        long length = parseLong(headers.get(CONTENT_LENGTH));
+                        oWriteStreamBlob = volume.putDataStream(httpServerRequest1.vertxContext().vertx(), length);
+                    }
 
 
                     httpServerRequest1.startProxyKeepAlive();
 
 
-                    return volume.putDataStream(httpServerRequest1.vertxContext().vertx(), length)
+                    return oWriteStreamBlob
                             .flatMap(writeStreamBlob -> {
 
                                 DigestReadStream digestReadStream = new DigestReadStream(httpServerRequest1, toArray(iterable, MessageDigestFactory.class));
@@ -146,7 +192,7 @@ public class PutBlob implements Handler<SfsRequest> {
                                             for (Holder2<MessageDigestFactory, byte[]> digest : digestReadStream.digests()) {
                                                 digestBlob.withDigest(digest.value0(), digest.value1());
                                             }
-                                            return new Holder2<>(httpServerRequest1, of(digestBlob));
+                                            return new Holder2<>(httpServerRequest1, singletonList(digestBlob));
                                         });
 //                                        .flatMap(sfsRequestOptionalHolder2 ->
 //                                                volume.getDataStream(vertxContext.vertx(), writeStreamBlob.getPosition(), Optional.absent(), Optional.absent())
@@ -164,15 +210,23 @@ public class PutBlob implements Handler<SfsRequest> {
                 })
                 .single()
                 .onErrorResumeNext(new HandleServerToBusy<>())
-                .subscribe(new Terminus<Holder2<SfsRequest, Optional<DigestBlob>>>(httpServerRequest) {
+                .subscribe(new Terminus<Holder2<SfsRequest, List<DigestBlob>>>(httpServerRequest) {
 
                     @Override
-                    public void onNext(Holder2<SfsRequest, Optional<DigestBlob>> holder) {
-                        Optional<DigestBlob> oJsonDigestBlob = holder.value1();
+                    public void onNext(Holder2<SfsRequest, List<DigestBlob>> holder) {
+                        List<DigestBlob> digestBlobs = holder.value1();
                         JsonObject jsonResponse = new JsonObject();
-                        if (oJsonDigestBlob.isPresent()) {
+                        if (!digestBlobs.isEmpty()) {
                             jsonResponse.put("code", HTTP_OK)
-                                    .put("blob", oJsonDigestBlob.get().toJsonObject());
+                                    .put("blob", digestBlobs.get(0).toJsonObject());
+                            // chained writes also return the blobs written downstream
+                            if (digestBlobs.size() > 1) {
+                                JsonArray jsonBlobs = new JsonArray();
+                                for (DigestBlob digestBlob : digestBlobs) {
+                                    jsonBlobs.add(digestBlob.toJsonObject());
+                                }
+                                jsonResponse.put("blobs", jsonBlobs);
+                            }
                         } else {
                             jsonResponse.put("code", HTTP_INTERNAL_ERROR);
                         }
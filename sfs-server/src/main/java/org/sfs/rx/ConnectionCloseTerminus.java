@@ -48,7 +48,7 @@ public abstract class ConnectionCloseTerminus<T> extends Terminus<T> {
         // cyberduck sends keep-alive but then gets screwed up when connection: close isn't sent
         // if this is not a proxied request and originated in cyberduck then send the connection: close
         // headers. If it is a proxied request let the proxy deal with the issue
-        if (!headers.contains((X_FORWARDED_FOR))) {
+        if (!headers.contains((X_FORWARDED_FOR)) && !serverRequest.response().ended()) {
             String userAgent = toLowerCase(headers.get(USER_AGENT));
             if (userAgent != null && userAgent.contains("cyberduck")) {
                 serverRequest.response()
@@ -62,7 +62,10 @@ public abstract class Terminus<T> extends Subscriber<T> {
         LOGGER.debug("Ended onComplete");
         try {
             HttpServerResponse response = httpServerRequest.response();
-            response.end();
+            // sendFile ends the response itself
+            if (!response.ended()) {
+                response.end();
+            }
         } finally {
             httpServerRequest.resume();
         }
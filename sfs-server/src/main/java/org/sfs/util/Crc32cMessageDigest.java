@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.util;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.lang.reflect.Constructor;
+import java.security.MessageDigest;
+import java.util.zip.Checksum;
+
+// CRC32C using the intrinsified java.util.zip.CRC32C when the jvm has it (9+)
+// and guava's table driven implementation otherwise. Both produce the
+// crc in little endian byte order like guava's HashCode does
+public class Crc32cMessageDigest extends MessageDigest {
+
+    private static final Constructor<? extends Checksum> JDK_CRC32C = jdkCrc32c();
+    private final Checksum checksum;
+    private Hasher hasher;
+
+    public Crc32cMessageDigest() {
+        super("CRC32C");
+        this.checksum = newJdkChecksum();
+        if (checksum == null) {
+            this.hasher = Hashing.crc32c().newHasher();
+        }
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return 4;
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        if (checksum != null) {
+            checksum.update(input);
+        } else {
+            hasher.putByte(input);
+        }
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        if (checksum != null) {
+            checksum.update(input, offset, len);
+        } else {
+            hasher.putBytes(input, offset, len);
+        }
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        byte[] digest;
+        if (checksum != null) {
+            digest = HashCode.fromInt((int) checksum.getValue()).asBytes();
+        } else {
+            digest = hasher.hash().asBytes();
+        }
+        engineReset();
+        return digest;
+    }
+
+    @Override
+    protected void engineReset() {
+        if (checksum != null) {
+            checksum.reset();
+        } else {
+            hasher = Hashing.crc32c().newHasher();
+        }
+    }
+
+    private static Checksum newJdkChecksum() {
+        if (JDK_CRC32C != null) {
+            try {
+                return JDK_CRC32C.newInstance();
+            } catch (ReflectiveOperationException e) {
+                // fall back to guava
+            }
+        }
+        return null;
+    }
+
+    private static Constructor<? extends Checksum> jdkCrc32c() {
+        try {
+            return Class.forName("java.util.zip.CRC32C").asSubclass(Checksum.class).getConstructor();
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
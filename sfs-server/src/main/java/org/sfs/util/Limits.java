@@ -22,4 +22,7 @@ public class Limits {
     public static final long MAX_SEGMENT_SIZE = 5L * 1024 * 1024 * 1024;
     public static final int MAX_AUTH_REQUEST_SIZE = 1024 * 1024;
     public static final int MAX_OBJECT_REVISIONS = 0;
+    public static final int MAX_BLOB_BATCH_SIZE = 1000;
+    public static final int MAX_BLOB_BATCH_REQUEST_SIZE = 1024 * 1024;
+    public static final int MAX_GOSSIP_REQUEST_SIZE = 16 * 1024 * 1024;
 }
@@ -29,7 +29,11 @@ public enum MessageDigestFactory {
 
     SHA512("SHA-512"),
     SHA256("SHA-256"),
-    MD5("MD5");
+    MD5("MD5"),
+    // not cryptographic but much cheaper than SHA-512 and good enough to
+    // detect blobs that were corrupted on disk or in transit
+    XXHASH64("XXH64"),
+    CRC32C("CRC32C");
 
     /*
  * Copyright (C) 2009 The Simple File Server Authors
@@ -68,6 +72,12 @@ public enum MessageDigestFactory {
     }
 
     public MessageDigest instance() {
+        switch (this) {
+            case XXHASH64:
+                return new XxHash64MessageDigest();
+            case CRC32C:
+                return new Crc32cMessageDigest();
+        }
         try {
             return getInstance(getValue());
         } catch (NoSuchAlgorithmException e) {
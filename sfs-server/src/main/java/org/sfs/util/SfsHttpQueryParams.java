@@ -36,9 +36,12 @@ public class SfsHttpQueryParams {
     public static final String PREFIX = "prefix";
     public static final String DELIMITER = "delimiter";
     public static final String NODE = "node";
+    public static final String ID = "id";
     public static final String VOLUME = "volume";
     public static final String POSITION = "position";
     public static final String LENGTH = "length";
+    public static final String MAX_LENGTH = "max_length";
+    public static final String DOWNSTREAM_VOLUME = "downstream_volume";
     public static final String VERSION = "version";
     public static final String OFFSET = "offset";
     public static final Pattern COMPUTED_DIGEST = compile("^X-Computed-Digest-(.+)$", CASE_INSENSITIVE | UNICODE_CASE);
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.util;
+
+import com.google.common.primitives.Longs;
+
+import java.security.MessageDigest;
+
+// Streaming XXH64 with a seed of 0. The digest is the 64 bit hash in big endian
+// byte order which is the canonical form other implementations produce
+public class XxHash64MessageDigest extends MessageDigest implements Cloneable {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+    private static final int STRIPE_SIZE = 32;
+
+    private byte[] pending = new byte[STRIPE_SIZE];
+    private int pendingLength;
+    private long totalLength;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+
+    public XxHash64MessageDigest() {
+        super("XXH64");
+        engineReset();
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return 8;
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        engineUpdate(new byte[]{input}, 0, 1);
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        totalLength += len;
+        if (pendingLength > 0) {
+            int toCopy = Math.min(len, STRIPE_SIZE - pendingLength);
+            System.arraycopy(input, offset, pending, pendingLength, toCopy);
+            pendingLength += toCopy;
+            offset += toCopy;
+            len -= toCopy;
+            if (pendingLength < STRIPE_SIZE) {
+                return;
+            }
+            stripe(pending, 0);
+            pendingLength = 0;
+        }
+        int end = offset + len;
+        while (offset + STRIPE_SIZE <= end) {
+            stripe(input, offset);
+            offset += STRIPE_SIZE;
+        }
+        if (offset < end) {
+            System.arraycopy(input, offset, pending, 0, end - offset);
+            pendingLength = end - offset;
+        }
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        long hash;
+        if (totalLength >= STRIPE_SIZE) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = merge(hash, v1);
+            hash = merge(hash, v2);
+            hash = merge(hash, v3);
+            hash = merge(hash, v4);
+        } else {
+            hash = PRIME5;
+        }
+        hash += totalLength;
+
+        int offset = 0;
+        while (offset + 8 <= pendingLength) {
+            hash ^= round(0, getLong(pending, offset));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+            offset += 8;
+        }
+        if (offset + 4 <= pendingLength) {
+            hash ^= (getInt(pending, offset) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            offset += 4;
+        }
+        while (offset < pendingLength) {
+            hash ^= (pending[offset] & 0xFF) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+            offset++;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+
+        engineReset();
+        return Longs.toByteArray(hash);
+    }
+
+    @Override
+    protected void engineReset() {
+        pendingLength = 0;
+        totalLength = 0;
+        v1 = PRIME1 + PRIME2;
+        v2 = PRIME2;
+        v3 = 0;
+        v4 = -PRIME1;
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        XxHash64MessageDigest clone = (XxHash64MessageDigest) super.clone();
+        clone.pending = pending.clone();
+        return clone;
+    }
+
+    protected void stripe(byte[] input, int offset) {
+        v1 = round(v1, getLong(input, offset));
+        v2 = round(v2, getLong(input, offset + 8));
+        v3 = round(v3, getLong(input, offset + 16));
+        v4 = round(v4, getLong(input, offset + 24));
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long merge(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME1 + PRIME4;
+    }
+
+    private static long getLong(byte[] b, int offset) {
+        return (b[offset] & 0xFFL)
+                | (b[offset + 1] & 0xFFL) << 8
+                | (b[offset + 2] & 0xFFL) << 16
+                | (b[offset + 3] & 0xFFL) << 24
+                | (b[offset + 4] & 0xFFL) << 32
+                | (b[offset + 5] & 0xFFL) << 40
+                | (b[offset + 6] & 0xFFL) << 48
+                | (b[offset + 7] & 0xFFL) << 56;
+    }
+
+    private static int getInt(byte[] b, int offset) {
+        return (b[offset] & 0xFF)
+                | (b[offset + 1] & 0xFF) << 8
+                | (b[offset + 2] & 0xFF) << 16
+                | (b[offset + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.validate;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.json.JsonObject;
+import org.sfs.SfsRequest;
+import org.sfs.util.HttpRequestValidationException;
+import org.sfs.vo.ErasureCoding;
+import rx.functions.Func1;
+
+import static java.lang.String.format;
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
+import static org.sfs.vo.ErasureCoding.MAX_DATA_FRAGMENTS;
+import static org.sfs.vo.ErasureCoding.MAX_PARITY_FRAGMENTS;
+import static org.sfs.vo.ErasureCoding.MIN_DATA_FRAGMENTS;
+import static org.sfs.vo.ErasureCoding.MIN_PARITY_FRAGMENTS;
+
+public class ValidateHeaderErasureCoding implements Func1<SfsRequest, SfsRequest> {
+
+    private final String headerName;
+
+    public ValidateHeaderErasureCoding(String headerName) {
+        this.headerName = headerName;
+    }
+
+    @Override
+    public SfsRequest call(SfsRequest httpServerRequest) {
+        MultiMap headers = httpServerRequest.headers();
+
+        String value = headers.get(headerName);
+        if (value != null && !ErasureCoding.fromHeaderValue(value).isPresent()) {
+            JsonObject jsonObject = new JsonObject()
+                    .put("message", format("%s must be of the form <data fragments>+<parity fragments> with between %d and %d data fragments and between %d and %d parity fragments", headerName, MIN_DATA_FRAGMENTS, MAX_DATA_FRAGMENTS, MIN_PARITY_FRAGMENTS, MAX_PARITY_FRAGMENTS));
+
+            throw new HttpRequestValidationException(HTTP_BAD_REQUEST, jsonObject);
+        }
+        return httpServerRequest;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.vo;
+
+public class AccountStats {
+
+    private final long containerCount;
+    private final long objectCount;
+    private final long bytesUsed;
+    private final PersistentAccount persistentAccount;
+
+    public AccountStats(long containerCount, long objectCount, long bytesUsed, PersistentAccount persistentAccount) {
+        this.containerCount = containerCount;
+        this.objectCount = objectCount;
+        this.bytesUsed = bytesUsed;
+        this.persistentAccount = persistentAccount;
+    }
+
+    public long getContainerCount() {
+        return containerCount;
+    }
+
+    public long getObjectCount() {
+        return objectCount;
+    }
+
+    public long getBytesUsed() {
+        return bytesUsed;
+    }
+
+    public PersistentAccount getPersistentAccount() {
+        return persistentAccount;
+    }
+}
@@ -18,20 +18,25 @@ package org.sfs.vo;
 
 import com.google.common.base.Optional;
 import io.vertx.core.json.JsonObject;
+import org.sfs.util.MessageDigestFactory;
 
 import static com.google.common.base.Optional.fromNullable;
 import static java.lang.Boolean.TRUE;
+import static org.sfs.util.MessageDigestFactory.SHA512;
+import static org.sfs.util.MessageDigestFactory.fromValueIfExists;
 
 public abstract class BlobReference<T extends BlobReference> {
 
     private final Segment<? extends Segment> segment;
     private String volumeId;
     private Long position;
-    private byte[] readSha512;
+    private byte[] readDigest;
+    private MessageDigestFactory digestAlgorithm;
     private Long readLength;
     private Boolean acknowledged;
     private Boolean deleted;
     private Integer verifyFailCount;
+    private Integer fragmentIndex;
 
     public BlobReference(Segment segment) {
         this.segment = segment;
@@ -50,6 +55,16 @@ public abstract class BlobReference<T extends BlobReference> {
         return (T) this;
     }
 
+    // set when the segment is erasure coded
+    public Optional<Integer> getFragmentIndex() {
+        return fromNullable(fragmentIndex);
+    }
+
+    public T setFragmentIndex(Integer fragmentIndex) {
+        this.fragmentIndex = fragmentIndex;
+        return (T) this;
+    }
+
     public T setVolumeId(String volumeId) {
         this.volumeId = volumeId;
         return (T) this;
@@ -87,12 +102,24 @@ public abstract class BlobReference<T extends BlobReference> {
         return fromNullable(readLength);
     }
 
-    public Optional<byte[]> getReadSha512() {
-        return fromNullable(readSha512);
+    // the digest the data node computed when the blob was written
+    public Optional<byte[]> getReadDigest() {
+        return fromNullable(readDigest);
+    }
+
+    public T setReadDigest(byte[] readDigest) {
+        this.readDigest = readDigest;
+        return (T) this;
+    }
+
+    // blobs written before the digest was configurable don't
+    // have an algorithm and were always sha512
+    public MessageDigestFactory getDigestAlgorithm() {
+        return digestAlgorithm != null ? digestAlgorithm : SHA512;
     }
 
-    public T setReadSha512(byte[] readSha512) {
-        this.readSha512 = readSha512;
+    public T setDigestAlgorithm(MessageDigestFactory digestAlgorithm) {
+        this.digestAlgorithm = digestAlgorithm;
         return (T) this;
     }
 
@@ -108,22 +135,26 @@ public abstract class BlobReference<T extends BlobReference> {
         JsonObject jsonObject = new JsonObject()
                 .put("volume_id", volumeId)
                 .put("position", position)
-                .put("read_sha512", readSha512)
+                .put("read_sha512", readDigest)
+                .put("digest_algorithm", digestAlgorithm != null ? digestAlgorithm.getValue() : null)
                 .put("read_length", readLength)
                 .put("acknowledged", acknowledged)
                 .put("deleted", deleted)
-                .put("verify_fail_count", verifyFailCount);
+                .put("verify_fail_count", verifyFailCount)
+                .put("fragment_index", fragmentIndex);
         return jsonObject;
     }
 
     public T merge(JsonObject jsonObject) {
         volumeId = jsonObject.getString("volume_id");
         position = jsonObject.getLong("position");
-        readSha512 = jsonObject.getBinary("read_sha512");
+        readDigest = jsonObject.getBinary("read_sha512");
+        digestAlgorithm = fromValueIfExists(jsonObject.getString("digest_algorithm")).orNull();
         readLength = jsonObject.getLong("read_length");
         acknowledged = jsonObject.getBoolean("acknowledged");
         deleted = jsonObject.getBoolean("deleted");
         verifyFailCount = jsonObject.getInteger("verify_fail_count", 0);
+        fragmentIndex = jsonObject.getInteger("fragment_index");
 
         return (T) this;
     }
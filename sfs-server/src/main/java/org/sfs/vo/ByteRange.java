@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.vo;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.of;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.primitives.Longs.tryParse;
+import static java.lang.String.format;
+
+public class ByteRange {
+
+    public static final int HTTP_REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+    public static final int MAX_RANGES = 64;
+    private static final String BYTES_UNIT = "bytes=";
+    private final long first;
+    private final long last;
+
+    public ByteRange(long first, long last) {
+        checkArgument(first >= 0, "first must be >= 0");
+        checkArgument(last >= first, "last must be >= first");
+        this.first = first;
+        this.last = last;
+    }
+
+    // returns absent if the header is malformed (in which case rfc 7233 says it must be ignored),
+    // an empty list if none of the ranges are satisfiable, otherwise the satisfiable
+    // ranges in the order they were requested
+    public static Optional<List<ByteRange>> parse(String rangeHeader, long contentLength) {
+        if (isNullOrEmpty(rangeHeader)) {
+            return absent();
+        }
+        String trimmed = rangeHeader.trim();
+        if (!trimmed.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+            return absent();
+        }
+        List<String> specs = Splitter.on(',')
+                .trimResults()
+                .omitEmptyStrings()
+                .splitToList(trimmed.substring(BYTES_UNIT.length()));
+        if (specs.isEmpty() || specs.size() > MAX_RANGES) {
+            return absent();
+        }
+        List<ByteRange> ranges = new ArrayList<>(specs.size());
+        for (String spec : specs) {
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return absent();
+            }
+            String firstAsString = spec.substring(0, dash).trim();
+            String lastAsString = spec.substring(dash + 1).trim();
+            if (firstAsString.isEmpty()) {
+                // suffix range. The last N bytes
+                Long suffixLength = tryParse(lastAsString);
+                if (suffixLength == null || suffixLength < 0) {
+                    return absent();
+                }
+                if (suffixLength > 0 && contentLength > 0) {
+                    ranges.add(new ByteRange(Math.max(0, contentLength - suffixLength), contentLength - 1));
+                }
+            } else {
+                Long first = tryParse(firstAsString);
+                if (first == null || first < 0) {
+                    return absent();
+                }
+                Long last;
+                if (lastAsString.isEmpty()) {
+                    last = contentLength - 1;
+                } else {
+                    last = tryParse(lastAsString);
+                    if (last == null || last < first) {
+                        return absent();
+                    }
+                }
+                if (first < contentLength) {
+                    ranges.add(new ByteRange(first, Math.min(last, contentLength - 1)));
+                }
+            }
+        }
+        return of(ranges);
+    }
+
+    public long getFirst() {
+        return first;
+    }
+
+    public long getLast() {
+        return last;
+    }
+
+    public long getLength() {
+        return last - first + 1;
+    }
+
+    // the overlap of this range and [start, start + length) relative to start
+    public Optional<ByteRange> intersect(long start, long length) {
+        if (length <= 0) {
+            return absent();
+        }
+        long end = start + length - 1;
+        if (last < start || first > end) {
+            return absent();
+        }
+        return of(new ByteRange(Math.max(first, start) - start, Math.min(last, end) - start));
+    }
+
+    public String toContentRange(long contentLength) {
+        return format("bytes %d-%d/%d", first, last, contentLength);
+    }
+
+    public static String toUnsatisfiedContentRange(long contentLength) {
+        return format("bytes */%d", contentLength);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ByteRange)) return false;
+
+        ByteRange byteRange = (ByteRange) o;
+
+        if (first != byteRange.first) return false;
+        return last == byteRange.last;
+
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (first ^ (first >>> 32));
+        result = 31 * result + (int) (last ^ (last >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ByteRange{" +
+                "first=" + first +
+                ", last=" + last +
+                '}';
+    }
+}
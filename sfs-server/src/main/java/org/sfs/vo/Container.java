@@ -43,6 +43,7 @@ import static org.sfs.util.KnownMetadataKeys.X_TEMP_URL_KEY_2;
 import static org.sfs.util.Limits.MAX_OBJECT_REVISIONS;
 import static org.sfs.util.Limits.NOT_SET;
 import static org.sfs.util.NullSafeAscii.equalsIgnoreCase;
+import static org.sfs.util.SfsHttpHeaders.X_SFS_OBJECT_ERASURE_CODING;
 import static org.sfs.util.SfsHttpHeaders.X_SFS_OBJECT_REPLICAS;
 import static org.sfs.vo.ObjectPath.fromPaths;
 
@@ -57,6 +58,7 @@ public abstract class Container<T extends Container> {
     private Calendar createTs;
     private Calendar updateTs;
     private Integer objectReplicas;
+    private ErasureCoding objectErasureCoding;
 
     public Container(PersistentAccount parent, String id) {
         this.parent = parent;
@@ -167,6 +169,17 @@ public abstract class Container<T extends Container> {
         return (T) this;
     }
 
+    // when present new segments are striped into data and parity
+    // fragments instead of being written as full replicas
+    public Optional<ErasureCoding> getObjectErasureCoding() {
+        return fromNullable(objectErasureCoding);
+    }
+
+    public T setObjectErasureCoding(ErasureCoding objectErasureCoding) {
+        this.objectErasureCoding = objectErasureCoding;
+        return (T) this;
+    }
+
     public T merge(JsonObject document) {
 
         checkState(getParent().getId().equals(document.getString("account_id")));
@@ -190,6 +203,14 @@ public abstract class Container<T extends Container> {
 
         setObjectReplicas(document.containsKey("object_replicas") ? document.getInteger("object_replicas") : NOT_SET);
 
+        Integer objectDataFragments = document.getInteger("object_data_fragments");
+        Integer objectParityFragments = document.getInteger("object_parity_fragments");
+        if (objectDataFragments != null && objectParityFragments != null) {
+            setObjectErasureCoding(new ErasureCoding(objectDataFragments, objectParityFragments));
+        } else {
+            setObjectErasureCoding(null);
+        }
+
         return (T) this;
     }
 
@@ -203,6 +224,12 @@ public abstract class Container<T extends Container> {
             setObjectReplicas(NOT_SET);
         }
 
+        if (headers.contains(X_SFS_OBJECT_ERASURE_CODING)) {
+            setObjectErasureCoding(ErasureCoding.fromHeaderValue(headers.get(X_SFS_OBJECT_ERASURE_CODING)).orNull());
+        } else {
+            setObjectErasureCoding(null);
+        }
+
         getMetadata().withHttpHeaders(headers);
 
         return (T) this;
@@ -225,6 +252,11 @@ public abstract class Container<T extends Container> {
 
         document.put("object_replicas", objectReplicas);
 
+        if (objectErasureCoding != null) {
+            document.put("object_data_fragments", objectErasureCoding.getDataFragments());
+            document.put("object_parity_fragments", objectErasureCoding.getParityFragments());
+        }
+
         return document;
     }
 }
\ No newline at end of file
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.vo;
+
+import com.google.common.base.Optional;
+import com.google.common.math.LongMath;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.of;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.primitives.Ints.tryParse;
+import static java.math.RoundingMode.CEILING;
+
+// Describes how a segment is striped into data and parity fragments. Each stripe
+// is dataFragments cells of segment data followed by parityFragments parity cells
+// and fragment i holds cell i of every stripe. The last stripe is zero padded
+public class ErasureCoding {
+
+    public static final int MIN_DATA_FRAGMENTS = 2;
+    public static final int MAX_DATA_FRAGMENTS = 32;
+    public static final int MIN_PARITY_FRAGMENTS = 1;
+    public static final int MAX_PARITY_FRAGMENTS = 16;
+    public static final int DEFAULT_CELL_SIZE = 64 * 1024;
+    private final int dataFragments;
+    private final int parityFragments;
+    private final int cellSize;
+
+    public ErasureCoding(int dataFragments, int parityFragments) {
+        this(dataFragments, parityFragments, DEFAULT_CELL_SIZE);
+    }
+
+    public ErasureCoding(int dataFragments, int parityFragments, int cellSize) {
+        checkArgument(dataFragments > 0, "dataFragments must be > 0");
+        checkArgument(parityFragments >= 0, "parityFragments must be >= 0");
+        checkArgument(cellSize > 0, "cellSize must be > 0");
+        this.dataFragments = dataFragments;
+        this.parityFragments = parityFragments;
+        this.cellSize = cellSize;
+    }
+
+    // parses values like 6+3. Returns absent if the value is malformed or out of range
+    public static Optional<ErasureCoding> fromHeaderValue(String value) {
+        if (value == null) {
+            return absent();
+        }
+        int plus = value.indexOf('+');
+        if (plus < 0) {
+            return absent();
+        }
+        Integer dataFragments = tryParse(value.substring(0, plus).trim());
+        Integer parityFragments = tryParse(value.substring(plus + 1).trim());
+        if (dataFragments == null
+                || parityFragments == null
+                || dataFragments < MIN_DATA_FRAGMENTS
+                || dataFragments > MAX_DATA_FRAGMENTS
+                || parityFragments < MIN_PARITY_FRAGMENTS
+                || parityFragments > MAX_PARITY_FRAGMENTS) {
+            return absent();
+        }
+        return of(new ErasureCoding(dataFragments, parityFragments));
+    }
+
+    public String toHeaderValue() {
+        return dataFragments + "+" + parityFragments;
+    }
+
+    public int getDataFragments() {
+        return dataFragments;
+    }
+
+    public int getParityFragments() {
+        return parityFragments;
+    }
+
+    public int getNumberOfFragments() {
+        return dataFragments + parityFragments;
+    }
+
+    // the number of distinct fragments that must be verified for a write to be
+    // considered durable. Enough to read the segment plus half of the parity
+    public int getQuorumNumberOfFragments() {
+        return dataFragments + Math.max(1, parityFragments / 2);
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    public long getStripeSize() {
+        return (long) dataFragments * cellSize;
+    }
+
+    public long getNumberOfStripes(long length) {
+        return length <= 0 ? 1 : LongMath.divide(length, getStripeSize(), CEILING);
+    }
+
+    public long getFragmentLength(long length) {
+        return LongMath.checkedMultiply(getNumberOfStripes(length), cellSize);
+    }
+
+    public List<Integer> getFragmentIndexes() {
+        int numberOfFragments = getNumberOfFragments();
+        List<Integer> indexes = new ArrayList<>(numberOfFragments);
+        for (int i = 0; i < numberOfFragments; i++) {
+            indexes.add(i);
+        }
+        return indexes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ErasureCoding)) return false;
+
+        ErasureCoding that = (ErasureCoding) o;
+
+        if (dataFragments != that.dataFragments) return false;
+        if (parityFragments != that.parityFragments) return false;
+        return cellSize == that.cellSize;
+
+    }
+
+    @Override
+    public int hashCode() {
+        int result = dataFragments;
+        result = 31 * result + parityFragments;
+        result = 31 * result + cellSize;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ErasureCoding{" +
+                "dataFragments=" + dataFragments +
+                ", parityFragments=" + parityFragments +
+                ", cellSize=" + cellSize +
+                '}';
+    }
+}
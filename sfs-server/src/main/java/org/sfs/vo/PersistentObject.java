@@ -24,11 +24,15 @@ import org.elasticsearch.search.SearchHit;
 public class PersistentObject extends XObject<PersistentObject> {
 
     private final long persistentVersion;
+    // bytes used by the document as it was loaded so that an
+    // update can tell how much the usage of the container changed
+    private long persistedBytesUsed;
 
     public static PersistentObject fromIndexResponse(PersistentContainer persistentContainer, IndexResponse indexResponse, JsonObject source) {
         return
                 new PersistentObject(persistentContainer, indexResponse.getId(), indexResponse.getVersion())
-                        .merge(source);
+                        .merge(source)
+                        .persisted();
 
     }
 
@@ -39,20 +43,23 @@ public class PersistentObject extends XObject<PersistentObject> {
         JsonObject document = new JsonObject(getResponse.getSourceAsString());
 
         return new PersistentObject(container, id, persistentVersion)
-                .merge(document);
+                .merge(document)
+                .persisted();
 
     }
 
     public static PersistentObject fromSearchHit(PersistentContainer container, SearchHit searchHit) {
         JsonObject document = new JsonObject(searchHit.getSourceAsString());
         return new PersistentObject(container, searchHit.getId(), searchHit.getVersion())
-                .merge(document);
+                .merge(document)
+                .persisted();
     }
 
     public static PersistentObject fromSearchHit(PersistentContainer container, JsonObject searchHit) {
         JsonObject document = searchHit.getJsonObject("_source");
         return new PersistentObject(container, searchHit.getString("_id"), searchHit.getLong("_version"))
-                .merge(document);
+                .merge(document)
+                .persisted();
     }
 
     public PersistentObject(PersistentContainer persistentContainer, String id, long persistentVersion) {
@@ -64,4 +71,13 @@ public class PersistentObject extends XObject<PersistentObject> {
         return persistentVersion;
     }
 
+    public long getPersistedBytesUsed() {
+        return persistedBytesUsed;
+    }
+
+    protected PersistentObject persisted() {
+        persistedBytesUsed = getBytesUsed();
+        return this;
+    }
+
 }
@@ -19,11 +19,14 @@ package org.sfs.vo;
 import com.google.common.base.Optional;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import org.sfs.util.MessageDigestFactory;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static com.google.common.base.Optional.fromNullable;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -31,9 +34,12 @@ import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Predicates.notNull;
 import static com.google.common.collect.FluentIterable.from;
 import static com.google.common.collect.Iterables.addAll;
+import static com.google.common.collect.Iterables.isEmpty;
 import static com.google.common.hash.Hashing.md5;
 import static com.google.common.hash.Hashing.sha512;
 import static java.lang.Boolean.TRUE;
+import static org.sfs.util.MessageDigestFactory.SHA512;
+import static org.sfs.util.MessageDigestFactory.fromValueIfExists;
 
 public abstract class Segment<T extends Segment> implements Identity {
 
@@ -45,11 +51,14 @@ public abstract class Segment<T extends Segment> implements Identity {
     private Long readLength;
     private byte[] readMd5;
     private byte[] readSha512;
-    private byte[] writeSha512;
+    private byte[] writeDigest;
+    private MessageDigestFactory blobDigestAlgorithm;
     private byte[] tinyData;
     private Boolean isTinyData;
     private Boolean isTinyDataDeleted;
     private SegmentCipher segmentCipher;
+    private ErasureCoding erasureCoding;
+    private List<byte[]> fragmentDigests = new ArrayList<>();
     private List<TransientBlobReference> blobs = new ArrayList<>();
 
     public Segment(XVersion parent, long id) {
@@ -94,12 +103,25 @@ public abstract class Segment<T extends Segment> implements Identity {
         return (T) this;
     }
 
-    public Optional<byte[]> getWriteSha512() {
-        return fromNullable(writeSha512);
+    // the digest of the bytes written to the blobs, computed
+    // with the blob digest algorithm
+    public Optional<byte[]> getWriteDigest() {
+        return fromNullable(writeDigest);
     }
 
-    public T setWriteSha512(byte[] writeSha512) {
-        this.writeSha512 = writeSha512;
+    public T setWriteDigest(byte[] writeDigest) {
+        this.writeDigest = writeDigest;
+        return (T) this;
+    }
+
+    // segments written before the blob digest was configurable
+    // don't have an algorithm and were always sha512
+    public MessageDigestFactory getBlobDigestAlgorithm() {
+        return blobDigestAlgorithm != null ? blobDigestAlgorithm : SHA512;
+    }
+
+    public T setBlobDigestAlgorithm(MessageDigestFactory blobDigestAlgorithm) {
+        this.blobDigestAlgorithm = blobDigestAlgorithm;
         return (T) this;
     }
 
@@ -121,6 +143,77 @@ public abstract class Segment<T extends Segment> implements Identity {
         return (T) this;
     }
 
+    public Optional<ErasureCoding> getErasureCoding() {
+        return fromNullable(erasureCoding);
+    }
+
+    public T setErasureCoding(ErasureCoding erasureCoding) {
+        this.erasureCoding = erasureCoding;
+        return (T) this;
+    }
+
+    public boolean isErasureCoded() {
+        return erasureCoding != null;
+    }
+
+    public List<byte[]> getFragmentDigests() {
+        return fragmentDigests;
+    }
+
+    public T setFragmentDigests(Iterable<byte[]> fragmentDigests) {
+        this.fragmentDigests.clear();
+        addAll(this.fragmentDigests, fragmentDigests);
+        return (T) this;
+    }
+
+    // the digest a blob must have. Replicas are a copy of the segment
+    // and fragments are checked against the digest recorded for their index.
+    // A blob written with a different algorithm can never match
+    public Optional<byte[]> getExpectedBlobDigest(BlobReference<? extends BlobReference> blob) {
+        if (!getBlobDigestAlgorithm().equals(blob.getDigestAlgorithm())) {
+            return Optional.absent();
+        }
+        if (erasureCoding != null) {
+            Optional<Integer> oFragmentIndex = blob.getFragmentIndex();
+            if (oFragmentIndex.isPresent()) {
+                int fragmentIndex = oFragmentIndex.get();
+                if (fragmentIndex >= 0 && fragmentIndex < fragmentDigests.size()) {
+                    return fromNullable(fragmentDigests.get(fragmentIndex));
+                }
+            }
+            return Optional.absent();
+        }
+        return fromNullable(writeDigest);
+    }
+
+    public Optional<Long> getExpectedBlobLength(BlobReference<? extends BlobReference> blob) {
+        if (erasureCoding != null) {
+            if (writeLength != null && blob.getFragmentIndex().isPresent()) {
+                return Optional.of(erasureCoding.getFragmentLength(writeLength));
+            }
+            return Optional.absent();
+        }
+        return fromNullable(writeLength);
+    }
+
+    public Set<Integer> verifiedAckdFragmentIndexes() {
+        checkState(erasureCoding != null, "Segment is not erasure coded");
+        Set<Integer> fragmentIndexes = new HashSet<>();
+        for (TransientBlobReference blob : verifiedAckdBlobs()) {
+            fragmentIndexes.add(blob.getFragmentIndex().get());
+        }
+        return fragmentIndexes;
+    }
+
+    // true if there are enough verified blobs to read the segment. One replica
+    // or dataFragments distinct fragments
+    public boolean hasReadableBlobs() {
+        if (erasureCoding != null) {
+            return verifiedAckdFragmentIndexes().size() >= erasureCoding.getDataFragments();
+        }
+        return !isEmpty(verifiedAckdBlobs());
+    }
+
     public List<TransientBlobReference> getBlobs() {
         checkState(!TRUE.equals(isTinyData), "isTinyData must be set to false");
         return blobs;
@@ -164,15 +257,17 @@ public abstract class Segment<T extends Segment> implements Identity {
                 .filter(blob -> {
                     Optional<String> oVolumeId = blob.getVolumeId();
                     Optional<Long> oPosition = blob.getPosition();
-                    Optional<byte[]> oComputedSha512 = blob.getReadSha512();
+                    Optional<byte[]> oComputedDigest = blob.getReadDigest();
                     Optional<Long> oComputedLength = blob.getReadLength();
+                    Optional<byte[]> oExpectedDigest = getExpectedBlobDigest(blob);
+                    Optional<Long> oExpectedLength = getExpectedBlobLength(blob);
                     boolean deleted = blob.isDeleted();
                     boolean hasVolumeId = oVolumeId.isPresent();
                     boolean hasPosition = oPosition.isPresent();
-                    boolean sha512Match = oComputedSha512.isPresent() && Arrays.equals(writeSha512, oComputedSha512.get());
-                    boolean lengthMatch = oComputedLength.isPresent() && writeLength != null && writeLength.equals(oComputedLength.get());
-                    boolean noNullFields = writeLength != null && readLength != null && readMd5 != null && readSha512 != null && writeSha512 != null;
-                    return !deleted && hasVolumeId && hasPosition && sha512Match && lengthMatch && noNullFields;
+                    boolean digestMatch = oComputedDigest.isPresent() && oExpectedDigest.isPresent() && Arrays.equals(oExpectedDigest.get(), oComputedDigest.get());
+                    boolean lengthMatch = oComputedLength.isPresent() && oExpectedLength.isPresent() && oExpectedLength.get().equals(oComputedLength.get());
+                    boolean noNullFields = writeLength != null && readLength != null && readMd5 != null && readSha512 != null && writeDigest != null;
+                    return !deleted && hasVolumeId && hasPosition && digestMatch && lengthMatch && noNullFields;
                 });
     }
 
@@ -227,7 +322,8 @@ public abstract class Segment<T extends Segment> implements Identity {
         document.put("read_md5", readMd5);
         document.put("read_sha512", readSha512);
         document.put("read_length", readLength);
-        document.put("write_sha512", writeSha512);
+        document.put("write_digest", writeDigest);
+        document.put("blob_digest_algorithm", blobDigestAlgorithm != null ? blobDigestAlgorithm.getValue() : null);
         document.put("write_length", writeLength);
         document.put("tiny_data", tinyData);
         document.put("is_tiny_data", TRUE.equals(isTinyData));
@@ -250,6 +346,17 @@ public abstract class Segment<T extends Segment> implements Identity {
                     .put("cipher_salt", (byte[]) null);
         }
 
+        if (erasureCoding != null) {
+            JsonArray fragmentDigestJsonArray = new JsonArray();
+            for (byte[] fragmentDigest : fragmentDigests) {
+                fragmentDigestJsonArray.add(fragmentDigest);
+            }
+            document.put("data_fragments", erasureCoding.getDataFragments())
+                    .put("parity_fragments", erasureCoding.getParityFragments())
+                    .put("fragment_cell_size", erasureCoding.getCellSize())
+                    .put("fragment_digests", fragmentDigestJsonArray);
+        }
+
         JsonArray blobJsonArray = new JsonArray();
         for (TransientBlobReference transientBlobReference : blobs) {
             blobJsonArray.add(transientBlobReference.toJsonObject());
@@ -265,7 +372,10 @@ public abstract class Segment<T extends Segment> implements Identity {
         setReadMd5(document.getBinary("read_md5"));
         setReadSha512(document.getBinary("read_sha512"));
         setReadLength(document.getLong("read_length"));
-        setWriteSha512(document.getBinary("write_sha512"));
+        // documents written before blob_digest_algorithm existed used the sha512 names
+        byte[] writeDigest = document.getBinary("write_digest");
+        setWriteDigest(writeDigest != null ? writeDigest : document.getBinary("write_sha512"));
+        setBlobDigestAlgorithm(fromValueIfExists(document.getString("blob_digest_algorithm")).orNull());
         setWriteLength(document.getLong("write_length"));
         isTinyData = document.getBoolean("is_tiny_data");
         tinyData = document.getBinary("tiny_data");
@@ -276,6 +386,23 @@ public abstract class Segment<T extends Segment> implements Identity {
 
         segmentCipher = new SegmentCipher(cipherKey, cipherSalt);
 
+        Integer dataFragments = document.getInteger("data_fragments");
+        if (dataFragments != null) {
+            erasureCoding = new ErasureCoding(dataFragments, document.getInteger("parity_fragments"), document.getInteger("fragment_cell_size"));
+        } else {
+            erasureCoding = null;
+        }
+        this.fragmentDigests.clear();
+        JsonArray fragmentDigestJsonArray = document.getJsonArray("fragment_digests");
+        if (fragmentDigestJsonArray == null) {
+            fragmentDigestJsonArray = document.getJsonArray("fragment_sha512s");
+        }
+        if (fragmentDigestJsonArray != null) {
+            for (int i = 0; i < fragmentDigestJsonArray.size(); i++) {
+                this.fragmentDigests.add(fragmentDigestJsonArray.getBinary(i));
+            }
+        }
+
         JsonArray blobJsonArray = document.getJsonArray("blobs");
         this.blobs.clear();
         if (blobJsonArray != null) {
@@ -41,6 +41,7 @@ public abstract class ServiceDef<T extends ServiceDef> {
     private Calendar lastUpdate;
     private Boolean master;
     private Boolean dataNode;
+    private String rack;
     private Long documentCount;
     private Integer availableProcessors;
     private Long freeMemory;
@@ -90,6 +91,17 @@ public abstract class ServiceDef<T extends ServiceDef> {
         return (T) this;
     }
 
+    // the failure domain the node is in. Copies of a blob are
+    // spread across racks when there are enough of them
+    public Optional<String> getRack() {
+        return fromNullable(rack);
+    }
+
+    public T setRack(String rack) {
+        this.rack = rack;
+        return (T) this;
+    }
+
     public T setDocumentCount(Long documentCount) {
         this.documentCount = documentCount;
         return (T) this;
@@ -176,6 +188,7 @@ public abstract class ServiceDef<T extends ServiceDef> {
         }
         setMaster(t.master);
         setDataNode(t.dataNode);
+        setRack(t.rack);
         setAvailableProcessors(t.availableProcessors);
         setFreeMemory(t.freeMemory);
         setMaxMemory(t.maxMemory);
@@ -202,6 +215,7 @@ public abstract class ServiceDef<T extends ServiceDef> {
         this.lastUpdate = other.lastUpdate != null ? (Calendar) other.lastUpdate.clone() : null;
         this.master = other.master;
         this.dataNode = other.dataNode;
+        this.rack = other.rack;
         this.documentCount = other.documentCount;
         this.availableProcessors = other.availableProcessors;
         this.freeMemory = other.freeMemory;
@@ -220,6 +234,7 @@ public abstract class ServiceDef<T extends ServiceDef> {
         this.lastUpdate = fromDateTimeString(jsonObject.getString("update_ts"));
         this.master = jsonObject.getBoolean("master_node");
         this.dataNode = jsonObject.getBoolean("data_node");
+        this.rack = jsonObject.getString("rack");
         this.documentCount = jsonObject.getLong("document_count");
         this.availableProcessors = jsonObject.getInteger("available_processors");
         this.freeMemory = jsonObject.getLong("free_memory");
@@ -264,6 +279,7 @@ public abstract class ServiceDef<T extends ServiceDef> {
                 .put("update_ts", toDateTimeString(getLastUpdate()))
                 .put("master_node", master)
                 .put("data_node", dataNode)
+                .put("rack", rack)
                 .put("document_count", documentCount)
                 .put("available_processors", availableProcessors)
                 .put("free_memory", freeMemory)
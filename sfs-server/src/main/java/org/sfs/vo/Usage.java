@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.vo;
+
+import io.vertx.core.json.JsonObject;
+import org.elasticsearch.action.get.GetResponse;
+
+import static java.util.Calendar.getInstance;
+import static org.sfs.util.DateFormatter.toDateTimeString;
+
+// The usage counters of a container or an account. They're kept in documents of their
+// own so that counting doesn't change the version of the container and account
+// documents that users update. The persistent version is -1 until the usage is persisted
+public class Usage {
+
+    private final String id;
+    private final String accountId;
+    private final String containerId;
+    private final long persistentVersion;
+    private long containerCount;
+    private long objectCount;
+    private long bytesUsed;
+
+    public static Usage fromGetResponse(GetResponse getResponse) {
+        JsonObject document = new JsonObject(getResponse.getSourceAsString());
+        return new Usage(getResponse.getId(), document.getString("account_id"), document.getString("container_id"), getResponse.getVersion())
+                .merge(document);
+    }
+
+    public static Usage ofContainer(PersistentContainer persistentContainer) {
+        return new Usage(persistentContainer.getId(), persistentContainer.getParent().getId(), persistentContainer.getId(), -1);
+    }
+
+    public static Usage ofAccount(PersistentAccount persistentAccount) {
+        return new Usage(persistentAccount.getId(), persistentAccount.getId(), null, -1);
+    }
+
+    public Usage(String id, String accountId, String containerId, long persistentVersion) {
+        this.id = id;
+        this.accountId = accountId;
+        this.containerId = containerId;
+        this.persistentVersion = persistentVersion;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getAccountId() {
+        return accountId;
+    }
+
+    // null if this is the usage of an account
+    public String getContainerId() {
+        return containerId;
+    }
+
+    public long getPersistentVersion() {
+        return persistentVersion;
+    }
+
+    public boolean isPersisted() {
+        return persistentVersion >= 0;
+    }
+
+    public long getContainerCount() {
+        return containerCount;
+    }
+
+    public Usage setContainerCount(long containerCount) {
+        this.containerCount = containerCount;
+        return this;
+    }
+
+    public long getObjectCount() {
+        return objectCount;
+    }
+
+    public Usage setObjectCount(long objectCount) {
+        this.objectCount = objectCount;
+        return this;
+    }
+
+    public long getBytesUsed() {
+        return bytesUsed;
+    }
+
+    public Usage setBytesUsed(long bytesUsed) {
+        this.bytesUsed = bytesUsed;
+        return this;
+    }
+
+    public Usage merge(JsonObject document) {
+        setContainerCount(document.getLong("container_count", 0L));
+        setObjectCount(document.getLong("object_count", 0L));
+        setBytesUsed(document.getLong("bytes_used", 0L));
+        return this;
+    }
+
+    public JsonObject toJsonObject() {
+        JsonObject document = new JsonObject();
+
+        document.put("account_id", accountId);
+
+        if (containerId != null) {
+            document.put("container_id", containerId);
+        }
+
+        document.put("container_count", containerCount);
+
+        document.put("object_count", objectCount);
+
+        document.put("bytes_used", bytesUsed);
+
+        document.put("update_ts", toDateTimeString(getInstance()));
+
+        return document;
+    }
+}
@@ -28,9 +28,15 @@ public abstract class XAllocatedFile<T extends XAllocatedFile> {
     private Integer freeRangeCount;
     private Long bytesFree;
     private Integer lockCount;
+    private Integer lockWaiterCount;
+    private Long lockWaitCount;
+    private Long lockWaitTime;
+    private Long lockTimeoutCount;
     private Long writeQueueBytesPending;
     private Long writeQueueBytesFull;
     private Long writeQueueBytesDrained;
+    private Long forceRequestCount;
+    private Long forceCount;
 
     public String getFile() {
         return file;
@@ -104,6 +110,60 @@ public abstract class XAllocatedFile<T extends XAllocatedFile> {
         return (T) this;
     }
 
+    public Optional<Integer> getLockWaiterCount() {
+        return fromNullable(lockWaiterCount);
+    }
+
+    public T setLockWaiterCount(Integer lockWaiterCount) {
+        this.lockWaiterCount = lockWaiterCount;
+        return (T) this;
+    }
+
+    public Optional<Long> getLockWaitCount() {
+        return fromNullable(lockWaitCount);
+    }
+
+    public T setLockWaitCount(Long lockWaitCount) {
+        this.lockWaitCount = lockWaitCount;
+        return (T) this;
+    }
+
+    public Optional<Long> getLockWaitTime() {
+        return fromNullable(lockWaitTime);
+    }
+
+    public T setLockWaitTime(Long lockWaitTime) {
+        this.lockWaitTime = lockWaitTime;
+        return (T) this;
+    }
+
+    public Optional<Long> getLockTimeoutCount() {
+        return fromNullable(lockTimeoutCount);
+    }
+
+    public T setLockTimeoutCount(Long lockTimeoutCount) {
+        this.lockTimeoutCount = lockTimeoutCount;
+        return (T) this;
+    }
+
+    public Optional<Long> getForceRequestCount() {
+        return fromNullable(forceRequestCount);
+    }
+
+    public T setForceRequestCount(Long forceRequestCount) {
+        this.forceRequestCount = forceRequestCount;
+        return (T) this;
+    }
+
+    public Optional<Long> getForceCount() {
+        return fromNullable(forceCount);
+    }
+
+    public T setForceCount(Long forceCount) {
+        this.forceCount = forceCount;
+        return (T) this;
+    }
+
     public abstract T copy();
 
     protected T copyInternal(XAllocatedFile t) {
@@ -112,9 +172,15 @@ public abstract class XAllocatedFile<T extends XAllocatedFile> {
         setFile(t.file);
         setFileSizeBytes(t.fileSizeBytes);
         setLockCount(t.lockCount);
+        setLockWaiterCount(t.lockWaiterCount);
+        setLockWaitCount(t.lockWaitCount);
+        setLockWaitTime(t.lockWaitTime);
+        setLockTimeoutCount(t.lockTimeoutCount);
         setWriteQueueBytesPending(t.writeQueueBytesPending);
         setWriteQueueBytesFull(t.writeQueueBytesFull);
         setWriteQueueBytesDrained(t.writeQueueBytesDrained);
+        setForceRequestCount(t.forceRequestCount);
+        setForceCount(t.forceCount);
         return (T) this;
     }
 
@@ -124,9 +190,15 @@ public abstract class XAllocatedFile<T extends XAllocatedFile> {
         this.file = other.file;
         this.fileSizeBytes = other.fileSizeBytes;
         this.lockCount = other.lockCount;
+        this.lockWaiterCount = other.lockWaiterCount;
+        this.lockWaitCount = other.lockWaitCount;
+        this.lockWaitTime = other.lockWaitTime;
+        this.lockTimeoutCount = other.lockTimeoutCount;
         this.writeQueueBytesPending = other.writeQueueBytesPending;
         this.writeQueueBytesFull = other.writeQueueBytesFull;
         this.writeQueueBytesDrained = other.writeQueueBytesDrained;
+        this.forceRequestCount = other.forceRequestCount;
+        this.forceCount = other.forceCount;
         return (T) this;
     }
 
@@ -136,9 +208,15 @@ public abstract class XAllocatedFile<T extends XAllocatedFile> {
         this.file = jsonObject.getString("file");
         this.fileSizeBytes = jsonObject.getLong("file_size_bytes");
         this.lockCount = jsonObject.getInteger("lock_count");
+        this.lockWaiterCount = jsonObject.getInteger("lock_waiter_count");
+        this.lockWaitCount = jsonObject.getLong("lock_wait_count");
+        this.lockWaitTime = jsonObject.getLong("lock_wait_time_ms");
+        this.lockTimeoutCount = jsonObject.getLong("lock_timeout_count");
         this.writeQueueBytesPending = jsonObject.getLong("write_queue_pending_bytes");
         this.writeQueueBytesFull = jsonObject.getLong("write_queue_full_bytes");
         this.writeQueueBytesDrained = jsonObject.getLong("write_queue_drained_bytes");
+        this.forceRequestCount = jsonObject.getLong("force_request_count");
+        this.forceCount = jsonObject.getLong("force_count");
         return (T) this;
     }
 
@@ -149,8 +227,14 @@ public abstract class XAllocatedFile<T extends XAllocatedFile> {
                 .put("file", file)
                 .put("file_size_bytes", fileSizeBytes)
                 .put("lock_count", lockCount)
+                .put("lock_waiter_count", lockWaiterCount)
+                .put("lock_wait_count", lockWaitCount)
+                .put("lock_wait_time_ms", lockWaitTime)
+                .put("lock_timeout_count", lockTimeoutCount)
                 .put("write_queue_pending_bytes", writeQueueBytesPending)
                 .put("write_queue_full_bytes", writeQueueBytesFull)
-                .put("write_queue_drained_bytes", writeQueueBytesDrained);
+                .put("write_queue_drained_bytes", writeQueueBytesDrained)
+                .put("force_request_count", forceRequestCount)
+                .put("force_count", forceCount);
     }
 }
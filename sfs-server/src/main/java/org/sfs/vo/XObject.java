@@ -19,7 +19,13 @@ package org.sfs.vo;
 import com.google.common.base.Optional;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import org.sfs.util.HttpRequestValidationException;
 import org.sfs.util.IdentityComparator;
+import org.sfs.validate.ValidateVersionHasSegments;
+import org.sfs.validate.ValidateVersionIsReadable;
+import org.sfs.validate.ValidateVersionNotDeleteMarker;
+import org.sfs.validate.ValidateVersionNotDeleted;
+import org.sfs.validate.ValidateVersionSegmentsHasData;
 
 import java.util.Calendar;
 import java.util.NavigableSet;
@@ -36,6 +42,7 @@ import static com.google.common.math.LongMath.checkedAdd;
 import static java.util.Calendar.getInstance;
 import static org.sfs.util.DateFormatter.fromDateTimeString;
 import static org.sfs.util.DateFormatter.toDateTimeString;
+import static org.sfs.vo.ObjectPath.DELIMITER_LENGTH;
 
 public abstract class XObject<T extends XObject> {
 
@@ -132,6 +139,18 @@ public abstract class XObject<T extends XObject> {
         return versions;
     }
 
+    // the sum of the read lengths of the segments of every version. This
+    // is what the object counts towards the bytes used by its container
+    public long getBytesUsed() {
+        long bytesUsed = 0;
+        for (TransientVersion version : versions) {
+            for (TransientSegment segment : version.getSegments()) {
+                bytesUsed = checkedAdd(bytesUsed, segment.getReadLength().or(0L));
+            }
+        }
+        return bytesUsed;
+    }
+
     public T setVersions(Iterable<TransientVersion> versions) {
         this.versions.clear();
         addAll(this.versions, versions);
@@ -155,6 +174,27 @@ public abstract class XObject<T extends XObject> {
         }
     }
 
+    // the length of the newest version if a listing would show it. Listings sum
+    // it for rolled up directories. Expiry is left to the listing since it
+    // depends on when the listing runs
+    protected long listedLength() {
+        Optional<TransientVersion> oNewestVersion = getNewestVersion();
+        if (oNewestVersion.isPresent()) {
+            TransientVersion newestVersion = oNewestVersion.get();
+            try {
+                new ValidateVersionNotDeleted().call(newestVersion);
+                new ValidateVersionNotDeleteMarker().call(newestVersion);
+                new ValidateVersionHasSegments().call(newestVersion);
+                new ValidateVersionSegmentsHasData().call(newestVersion);
+                new ValidateVersionIsReadable().call(newestVersion);
+            } catch (HttpRequestValidationException e) {
+                return 0;
+            }
+            return newestVersion.calculateLength().or(0L);
+        }
+        return 0;
+    }
+
     public T merge(JsonObject document) {
         this.versions.clear();
         this.ownerGuid = document.getString("owner_guid");
@@ -194,6 +234,8 @@ public abstract class XObject<T extends XObject> {
 
         document.put("account_id", parent.getParent().getId());
         document.put("container_id", parent.getId());
+        // the object id without the container id. Listings sort on it
+        document.put("name", id.substring(parent.getId().length() + DELIMITER_LENGTH));
         document.put("node_id", nodeId);
         document.put("owner_guid", ownerGuid);
 
@@ -203,6 +245,13 @@ public abstract class XObject<T extends XObject> {
         }
         document.put("versions", versionsJsonArray);
         document.put("version_count", versions.size());
+        document.put("listed_length", listedLength());
+        Optional<TransientVersion> oNewestVersion = getNewestVersion();
+        if (oNewestVersion.isPresent()) {
+            document.put("listed_delete_at", oNewestVersion.get().getDeleteAt().orNull());
+        } else {
+            document.put("listed_delete_at", (Long) null);
+        }
         Optional<TransientVersion> oOldestVersion = getOldestVersion();
         if (oOldestVersion.isPresent()) {
             document.put("oldest_version_ts", toDateTimeString(oOldestVersion.get().getCreateTs()));
@@ -39,7 +39,6 @@ import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Predicates.notNull;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.common.collect.Iterables.addAll;
-import static com.google.common.collect.Iterables.isEmpty;
 import static com.google.common.collect.Iterables.size;
 import static com.google.common.collect.Ordering.from;
 import static com.google.common.hash.Hashing.md5;
@@ -389,7 +388,7 @@ public abstract class XVersion<T extends XVersion> implements Temporal, Identity
     public Iterable<TransientSegment> readableSegments() {
         return FluentIterable.from(segments)
                 .filter(notNull())
-                .filter(input -> (input.isTinyData() && !input.isTinyDataDeleted()) || !isEmpty(input.verifiedAckdBlobs()));
+                .filter(input -> (input.isTinyData() && !input.isTinyDataDeleted()) || input.hasReadableBlobs());
     }
 
     public T setSegments(Iterable<TransientSegment> segments) {
@@ -31,6 +31,9 @@ public abstract class XVolume<T extends XVolume> {
     private XAllocatedFile<? extends XAllocatedFile> dataFile;
     private Long usableSpace;
     private Status status;
+    private Long gcPendingCount;
+    private Long gcReclaimedCount;
+    private Long gcReclaimedBytes;
 
     public abstract T copy();
 
@@ -41,6 +44,9 @@ public abstract class XVolume<T extends XVolume> {
         setFileSystem(t.fileSystem != null ? t.fileSystem.copy() : null);
         setIndexFile(t.indexFile != null ? t.indexFile.copy() : null);
         setDataFile(t.dataFile != null ? t.dataFile.copy() : null);
+        setGcPendingCount(t.gcPendingCount);
+        setGcReclaimedCount(t.gcReclaimedCount);
+        setGcReclaimedBytes(t.gcReclaimedBytes);
         return (T) this;
     }
 
@@ -98,6 +104,34 @@ public abstract class XVolume<T extends XVolume> {
         return (T) this;
     }
 
+    // the number of blocks waiting to be garbage collected
+    public Optional<Long> getGcPendingCount() {
+        return fromNullable(gcPendingCount);
+    }
+
+    public T setGcPendingCount(Long gcPendingCount) {
+        this.gcPendingCount = gcPendingCount;
+        return (T) this;
+    }
+
+    public Optional<Long> getGcReclaimedCount() {
+        return fromNullable(gcReclaimedCount);
+    }
+
+    public T setGcReclaimedCount(Long gcReclaimedCount) {
+        this.gcReclaimedCount = gcReclaimedCount;
+        return (T) this;
+    }
+
+    public Optional<Long> getGcReclaimedBytes() {
+        return fromNullable(gcReclaimedBytes);
+    }
+
+    public T setGcReclaimedBytes(Long gcReclaimedBytes) {
+        this.gcReclaimedBytes = gcReclaimedBytes;
+        return (T) this;
+    }
+
     public T merge(XVolume<? extends XVolume> other) {
         this.id = other.id;
         this.fileSystem = other.fileSystem;
@@ -105,6 +139,9 @@ public abstract class XVolume<T extends XVolume> {
         this.indexFile = other.indexFile;
         this.dataFile = other.dataFile;
         this.usableSpace = other.usableSpace;
+        this.gcPendingCount = other.gcPendingCount;
+        this.gcReclaimedCount = other.gcReclaimedCount;
+        this.gcReclaimedBytes = other.gcReclaimedBytes;
         return (T) this;
     }
 
@@ -134,6 +171,9 @@ public abstract class XVolume<T extends XVolume> {
         }
         this.status = fromNameIfExists(jsonObject.getString("status"));
         this.usableSpace = jsonObject.getLong("usable_space");
+        this.gcPendingCount = jsonObject.getLong("gc_pending_count");
+        this.gcReclaimedCount = jsonObject.getLong("gc_reclaimed_count");
+        this.gcReclaimedBytes = jsonObject.getLong("gc_reclaimed_bytes");
         return (T) this;
     }
 
@@ -142,7 +182,10 @@ public abstract class XVolume<T extends XVolume> {
                 new JsonObject()
                         .put("id", id)
                         .put("status", status != null ? status.name() : null)
-                        .put("usable_space", usableSpace);
+                        .put("usable_space", usableSpace)
+                        .put("gc_pending_count", gcPendingCount)
+                        .put("gc_reclaimed_count", gcReclaimedCount)
+                        .put("gc_reclaimed_bytes", gcReclaimedBytes);
 
         if (fileSystem != null) {
             JsonObject jsonFileSystem = fileSystem.toJsonObject();
@@ -74,6 +74,8 @@ public class RunBootedTestOnContextRx extends RunTestOnContextRx {
     private ConcurrentMap<Context, HttpClient> contextHttpClientMap = new ConcurrentHashMap<>();
     private AuthorizationFactory.Producer authAdmin = httpBasic("admin", "admin");
     private static ConcurrentHashMap<Vertx, Func1<Vertx, Void>> map = new ConcurrentHashMap<>();
+    // replaces the settings read from intgtestconfig.json
+    private final JsonObject configOverrides = new JsonObject();
 
     public RunBootedTestOnContextRx() {
         this(new VertxOptions());
@@ -98,6 +100,11 @@ public class RunBootedTestOnContextRx extends RunTestOnContextRx {
         });
     }
 
+    public RunBootedTestOnContextRx putConfig(String name, Object value) {
+        configOverrides.put(name, value);
+        return this;
+    }
+
     protected void cleanup(Vertx vertx) {
         LOGGER.debug("Cleaning up");
         SfsServer.testCleanup(vertx);
@@ -142,6 +149,7 @@ public class RunBootedTestOnContextRx extends RunTestOnContextRx {
                 Buffer buffer = vertx.fileSystem().readFileBlocking(currentThread().getContextClassLoader().getResource("intgtestconfig.json").getFile());
                 verticleConfig = new JsonObject(buffer.toString(UTF_8));
                 verticleConfig.put("fs.home", tmpDir.toString());
+                verticleConfig.mergeIn(configOverrides);
 
                 if (!verticleConfig.containsKey("elasticsearch.cluster.name")) {
                     verticleConfig.put("elasticsearch.cluster.name", esClusterName);
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import org.sfs.auth.AuthProviderService;
+import org.sfs.elasticsearch.Elasticsearch;
+import org.sfs.elasticsearch.MetadataCache;
+import org.sfs.elasticsearch.UsageCounters;
+import org.sfs.encryption.AwsKms;
+import org.sfs.encryption.AzureKms;
+import org.sfs.encryption.ContainerKeys;
+import org.sfs.encryption.MasterKeys;
+import org.sfs.filesystem.temp.TempDirectoryCleaner;
+import org.sfs.jobs.Jobs;
+import org.sfs.nodes.ClusterInfo;
+import org.sfs.nodes.NodeStats;
+import org.sfs.nodes.Nodes;
+
+import java.util.concurrent.ExecutorService;
+
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
+
+// A server that isn't started so that classes which take a VertxContext can be
+// tested without elasticsearch or a cluster. Only vertx and nodes are available
+public class TestServer extends Server {
+
+    private final ExecutorService ioPool = newDirectExecutorService();
+    private final ExecutorService backgroundPool = newDirectExecutorService();
+    private final Nodes nodes = new Nodes();
+    private final VertxContext<Server> vertxContext;
+
+    public TestServer(Vertx vertx) {
+        init(vertx, vertx.getOrCreateContext());
+        this.vertxContext = new VertxContext<>(this);
+    }
+
+    @Override
+    public Context getContext() {
+        return context;
+    }
+
+    @Override
+    public ExecutorService getIoPool() {
+        return ioPool;
+    }
+
+    @Override
+    public ExecutorService getBackgroundPool() {
+        return backgroundPool;
+    }
+
+    @Override
+    public VertxContext<Server> vertxContext() {
+        return vertxContext;
+    }
+
+    @Override
+    public AuthProviderService authProviderService() {
+        return null;
+    }
+
+    @Override
+    public TempDirectoryCleaner tempFileFactory() {
+        return null;
+    }
+
+    @Override
+    public Elasticsearch elasticsearch() {
+        return null;
+    }
+
+    @Override
+    public Nodes nodes() {
+        return nodes;
+    }
+
+    @Override
+    public Jobs jobs() {
+        return null;
+    }
+
+    @Override
+    public SfsFileSystem sfsFileSystem() {
+        return null;
+    }
+
+    @Override
+    public JsonFactory jsonFactory() {
+        return null;
+    }
+
+    @Override
+    public AwsKms awsKms() {
+        return null;
+    }
+
+    @Override
+    public AzureKms azureKms() {
+        return null;
+    }
+
+    @Override
+    public MasterKeys masterKeys() {
+        return null;
+    }
+
+    @Override
+    public ContainerKeys containerKeys() {
+        return null;
+    }
+
+    @Override
+    public MetadataCache metadataCache() {
+        return null;
+    }
+
+    @Override
+    public UsageCounters usageCounters() {
+        return null;
+    }
+
+    @Override
+    public HttpClient httpClient(boolean https) {
+        return null;
+    }
+
+    @Override
+    public ClusterInfo getClusterInfo() {
+        return null;
+    }
+
+    @Override
+    public NodeStats getNodeStats() {
+        return null;
+    }
+
+    @Override
+    public byte[] getRemoteNodeSecret() {
+        return null;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.block;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sfs.TestSubscriber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static com.google.common.collect.Iterables.toArray;
+import static org.sfs.util.VertxAssert.assertArrayEquals;
+import static org.sfs.util.VertxAssert.assertEquals;
+import static org.sfs.util.VertxAssert.assertTrue;
+import static rx.Observable.just;
+
+@RunWith(VertxUnitRunner.class)
+public class ExtentAllocatorTest {
+
+    @Test
+    public void testAllocate(TestContext context) {
+        int blockSize = 8 * 1024;
+        ExtentAllocator allocator = new ExtentAllocator(blockSize);
+
+        Async async = context.async();
+        just((Void) null)
+                .map(aVoid -> {
+                    assertEquals(context, 0L, allocator.allocNextAvailable(2));
+                    assertEquals(context, blockSize, allocator.allocNextAvailable(100));
+                    assertEquals(context, blockSize * 2, allocator.allocNextAvailable(100));
+                    assertArrayEquals(
+                            context,
+                            new Range[]{
+                                    new Range(24576, 9223372036854767615L)},
+                            toArray(allocator.freeRanges(), Range.class));
+                    assertEquals(context, blockSize * 3, allocator.greatestFreePosition());
+                    return (Void) null;
+                })
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testRecycle(TestContext context) {
+        int blockSize = 8 * 1024;
+        ExtentAllocator allocator = new ExtentAllocator(blockSize);
+
+        Async async = context.async();
+        just((Void) null)
+                .map(aVoid -> {
+                    allocator.allocNextAvailable(blockSize);
+                    long small = allocator.allocNextAvailable(blockSize);
+                    allocator.allocNextAvailable(blockSize);
+                    long large = allocator.allocNextAvailable(blockSize * 5);
+                    allocator.allocNextAvailable(blockSize);
+                    allocator.free(large, blockSize * 5);
+                    allocator.free(small, blockSize);
+                    assertEquals(context, 100000 - (blockSize * 3), allocator.getBytesFree(100000));
+                    // the smaller hole is used for the smaller allocation
+                    // and the larger hole is split for the next one
+                    assertEquals(context, small, allocator.allocNextAvailable(blockSize));
+                    assertEquals(context, large, allocator.allocNextAvailable(blockSize * 2));
+                    assertEquals(context, large + blockSize * 2, allocator.allocNextAvailable(blockSize * 3));
+                    assertEquals(context, 1, allocator.getNumberOfFreeRanges());
+                    // allocating at a position only succeeds if the range is free
+                    assertEquals(context, -1L, allocator.alloc(large, blockSize));
+                    assertEquals(context, blockSize * 20L, allocator.alloc(blockSize * 20L, blockSize));
+                    assertEquals(context, 2, allocator.getNumberOfFreeRanges());
+                    return (Void) null;
+                })
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testRestoreFreeRanges(TestContext context) {
+        int blockSize = 8 * 1024;
+        ExtentAllocator allocator = new ExtentAllocator(blockSize);
+
+        Async async = context.async();
+        just((Void) null)
+                .map(aVoid -> {
+                    allocator.allocNextAvailable(blockSize);
+                    long position = allocator.allocNextAvailable(blockSize);
+                    allocator.allocNextAvailable(blockSize);
+                    allocator.free(position, blockSize);
+
+                    ExtentAllocator restored = new ExtentAllocator(blockSize);
+                    restored.setFreeRanges(allocator.copyFreeRanges());
+                    assertArrayEquals(context, toArray(allocator.freeRanges(), Range.class), toArray(restored.freeRanges(), Range.class));
+                    assertEquals(context, allocator.getBytesFree(Long.MAX_VALUE), restored.getBytesFree(Long.MAX_VALUE));
+                    assertEquals(context, position, restored.allocNextAvailable(blockSize));
+                    return (Void) null;
+                })
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testSameFreeRangesAsRecyclingAllocator(TestContext context) {
+        int blockSize = 8;
+        ExtentAllocator extentAllocator = new ExtentAllocator(blockSize);
+        RecyclingAllocator recyclingAllocator = new RecyclingAllocator(blockSize);
+
+        Async async = context.async();
+        just((Void) null)
+                .map(aVoid -> {
+                    Random random = new Random(1);
+                    Map<Long, Long> allocated = new TreeMap<>();
+                    for (int i = 0; i < 20000; i++) {
+                        if (allocated.isEmpty() || random.nextInt(3) > 0) {
+                            long length = 1 + random.nextInt(blockSize * 64);
+                            long position = extentAllocator.allocNextAvailable(length);
+                            // the allocators don't pick the same holes but
+                            // the rest of the contract is the same
+                            assertEquals(context, position, recyclingAllocator.alloc(position, length));
+                            allocated.put(position, length);
+                        } else {
+                            List<Long> positions = new ArrayList<>(allocated.keySet());
+                            long position = positions.get(random.nextInt(positions.size()));
+                            long length = allocated.remove(position);
+                            extentAllocator.free(position, length);
+                            recyclingAllocator.free(position, length);
+                        }
+                        if (i % 1000 == 0) {
+                            assertEquals(context, recyclingAllocator.copyFreeRanges(), extentAllocator.copyFreeRanges());
+                            assertEquals(context, recyclingAllocator.getBytesFree(1 << 20), extentAllocator.getBytesFree(1 << 20));
+                            assertEquals(context, recyclingAllocator.greatestFreePosition(), extentAllocator.greatestFreePosition());
+                        }
+                    }
+                    for (Map.Entry<Long, Long> entry : allocated.entrySet()) {
+                        extentAllocator.free(entry.getKey(), entry.getValue());
+                    }
+                    assertEquals(context, 1, extentAllocator.getNumberOfFreeRanges());
+                    assertEquals(context, 0L, extentAllocator.greatestFreePosition());
+                    return (Void) null;
+                })
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testFragmentationReport(TestContext context) {
+        int blockSize = 8;
+        ExtentAllocator allocator = new ExtentAllocator(blockSize);
+
+        Async async = context.async();
+        just((Void) null)
+                .map(aVoid -> {
+                    for (int i = 0; i < 10; i++) {
+                        allocator.allocNextAvailable(blockSize * 4);
+                    }
+                    allocator.free(0, blockSize * 4);
+                    allocator.free(blockSize * 8, blockSize * 8);
+                    FragmentationReport report = allocator.fragmentationReport();
+                    assertEquals(context, 3L, report.getFreeRangeCount());
+                    assertEquals(context, 2L, report.getHoleCount());
+                    assertEquals(context, blockSize * 12L, report.getHoleBytes());
+                    assertEquals(context, blockSize * 8L, report.getLargestHole());
+                    assertEquals(context, blockSize * 40L, report.getEndOfAllocated());
+                    JsonObject jsonObject = report.toJsonObject();
+                    assertEquals(context, "extent", jsonObject.getString("allocator"));
+                    assertEquals(context, 1L, jsonObject.getJsonObject("holes_by_size").getLong("32").longValue());
+                    assertEquals(context, 1L, jsonObject.getJsonObject("holes_by_size").getLong("64").longValue());
+                    return (Void) null;
+                })
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testPagedLongMap(TestContext context) {
+        Async async = context.async();
+        just((Void) null)
+                .map(aVoid -> {
+                    Random random = new Random(1);
+                    PagedLongMap map = new PagedLongMap();
+                    TreeMap<Long, Long> expected = new TreeMap<>();
+                    for (int i = 0; i < 100000; i++) {
+                        long key = random.nextInt(20000);
+                        // grow the map for the first half and shrink it for the second
+                        if (random.nextInt(10) < (i < 50000 ? 7 : 3)) {
+                            map.put(key, i);
+                            expected.put(key, (long) i);
+                        } else {
+                            assertEquals(context, expected.remove(key) != null, map.remove(key));
+                        }
+                        long probe = random.nextInt(20000);
+                        Long floor = expected.floorKey(probe);
+                        Long ceiling = expected.ceilingKey(probe);
+                        assertEquals(context, floor != null ? floor : PagedLongMap.NONE, map.floorKey(probe));
+                        assertEquals(context, ceiling != null ? ceiling : PagedLongMap.NONE, map.ceilingKey(probe));
+                        assertEquals(context, expected.containsKey(probe) ? expected.get(probe) : PagedLongMap.NONE, map.get(probe));
+                    }
+                    assertEquals(context, expected.size(), map.size());
+                    assertEquals(context, expected.firstKey().longValue(), map.firstKey());
+                    assertEquals(context, expected.lastKey().longValue(), map.lastKey());
+                    List<Long> keys = new ArrayList<>();
+                    map.forEach((key, value) -> keys.add(key));
+                    assertEquals(context, new ArrayList<>(expected.keySet()), keys);
+                    assertTrue(context, map.memoryBytes() > 0);
+                    return (Void) null;
+                })
+                .subscribe(new TestSubscriber(context, async));
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.block;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class IntervalTreeTest {
+
+    @Test
+    public void testOverlapping() {
+        IntervalTree<String> tree = new IntervalTree<>();
+        tree.insert(0, 9, "a");
+        tree.insert(20, 29, "b");
+        IntervalTree.Entry<String> c = tree.insert(5, 24, "c");
+        tree.insert(100, Long.MAX_VALUE, "d");
+
+        Assert.assertEquals(4, tree.size());
+        Assert.assertEquals("[a, c]", values(tree.overlapping(0, 5)));
+        Assert.assertEquals("[c]", values(tree.overlapping(10, 19)));
+        Assert.assertEquals("[c, b]", values(tree.overlapping(15, 20)));
+        Assert.assertEquals("[]", values(tree.overlapping(30, 99)));
+        Assert.assertEquals("[d]", values(tree.overlapping(1000, 1000)));
+
+        Assert.assertTrue(tree.remove(c));
+        Assert.assertFalse(tree.remove(c));
+        Assert.assertEquals(3, tree.size());
+        Assert.assertEquals("[]", values(tree.overlapping(10, 19)));
+        Assert.assertEquals("b", tree.find(0, 50, entry -> entry.getValue().equals("b")).get().getValue());
+    }
+
+    @Test
+    public void testMatchesBruteForce() {
+        Random random = new Random(1);
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        List<IntervalTree.Entry<Integer>> entries = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            if (!entries.isEmpty() && random.nextInt(3) == 0) {
+                Assert.assertTrue(tree.remove(entries.remove(random.nextInt(entries.size()))));
+            } else {
+                long first = random.nextInt(10000);
+                long last = first + random.nextInt(100);
+                entries.add(tree.insert(first, last, i));
+            }
+            long first = random.nextInt(10000);
+            long last = first + random.nextInt(200);
+            int expected = 0;
+            for (IntervalTree.Entry<Integer> entry : entries) {
+                if (entry.getFirst() <= last && entry.getLast() >= first) {
+                    expected++;
+                }
+            }
+            Assert.assertEquals(expected, tree.overlapping(first, last).size());
+        }
+        Assert.assertEquals(entries.size(), tree.size());
+    }
+
+    private String values(List<IntervalTree.Entry<String>> entries) {
+        List<String> values = new ArrayList<>();
+        for (IntervalTree.Entry<String> entry : entries) {
+            values.add(entry.getValue());
+        }
+        return values.toString();
+    }
+}
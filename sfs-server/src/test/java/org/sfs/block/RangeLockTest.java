@@ -17,14 +17,48 @@
 package org.sfs.block;
 
 import com.google.common.base.Optional;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sfs.RunTestOnContextRx;
+import org.sfs.SfsVertx;
+import org.sfs.SfsVertxImpl;
+import org.sfs.thread.NamedCapacityFixedThreadPool;
+import rx.Observable;
 
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.sfs.block.RangeLock.Lock;
+import static org.sfs.block.RangeLock.lockedObservable;
 
+@RunWith(VertxUnitRunner.class)
 public class RangeLockTest {
 
+    @Rule
+    public final RunTestOnContextRx rule = new RunTestOnContextRx();
+    private ExecutorService ioPool;
+    private ExecutorService backgroundPool;
+
+    @Before
+    public void start() {
+        ioPool = NamedCapacityFixedThreadPool.newInstance(10, "sfs-io-pool");
+        backgroundPool = NamedCapacityFixedThreadPool.newInstance(10, "sfs-blocking-action-pool");
+    }
+
+    @After
+    public void stop() {
+        ioPool.shutdown();
+        backgroundPool.shutdown();
+    }
+
     @Test
     public void testLockUnlock() {
         RangeLock rangeLock = new RangeLock(8192);
@@ -94,4 +128,71 @@ public class RangeLockTest {
         assertFalse(rangeLock.tryWriteLock(8192 * 3, 8192).isPresent());
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testLockEnclosingRange() {
+        RangeLock rangeLock = new RangeLock(8192);
+        Lock l0 = rangeLock.tryWriteLock(8192 * 2, 8192).get();
+        assertFalse(rangeLock.tryWriteLock(0, 8192 * 4).isPresent());
+        assertFalse(rangeLock.tryReadLock(0, 8192 * 4).isPresent());
+    }
+
+    @Test(timeout = 30000)
+    public void testWaiterGrantedOnUnlock(TestContext context) {
+        SfsVertx vertx = new SfsVertxImpl(rule.vertx(), backgroundPool, ioPool);
+        RangeLock rangeLock = new RangeLock(8192);
+        Lock l0 = rangeLock.tryWriteLock(0, 8192).get();
+        Async async = context.async();
+        lockedObservable(vertx, rangeLock.readLock(0, 8192), () -> Observable.just(rangeLock.getLockCount()), 10000)
+                .subscribe(
+                        lockCount -> {
+                            context.assertEquals(1, lockCount);
+                            context.assertEquals(0, rangeLock.getWaiterCount());
+                            context.assertEquals(1L, rangeLock.getWaitCount());
+                        },
+                        context::fail,
+                        () -> {
+                            context.assertEquals(0, rangeLock.getLockCount());
+                            async.complete();
+                        });
+        context.assertEquals(1, rangeLock.getWaiterCount());
+        vertx.setTimer(50, id -> l0.unlock());
+    }
+
+    @Test(timeout = 30000)
+    public void testWaiterTimesOut(TestContext context) {
+        SfsVertx vertx = new SfsVertxImpl(rule.vertx(), backgroundPool, ioPool);
+        RangeLock rangeLock = new RangeLock(8192);
+        Lock l0 = rangeLock.tryWriteLock(0, 8192).get();
+        Async async = context.async();
+        lockedObservable(vertx, rangeLock.writeLock(0, 8192), () -> Observable.just(true), 50)
+                .subscribe(
+                        aBoolean -> context.fail("lock should not have been acquired"),
+                        throwable -> {
+                            context.assertTrue(throwable instanceof RangeLock.TimedOutException);
+                            context.assertEquals(0, rangeLock.getWaiterCount());
+                            context.assertEquals(1L, rangeLock.getTimeoutCount());
+                            context.assertEquals(1, rangeLock.getLockCount());
+                            async.complete();
+                        });
+    }
+
+    @Test(timeout = 30000)
+    public void testWaitingWriterBlocksNewReaders(TestContext context) {
+        SfsVertx vertx = new SfsVertxImpl(rule.vertx(), backgroundPool, ioPool);
+        RangeLock rangeLock = new RangeLock(8192);
+        Lock l0 = rangeLock.tryReadLock(0, 8192).get();
+        Async async = context.async();
+        lockedObservable(vertx, rangeLock.writeLock(0, 8192), () -> Observable.just(rangeLock.getLockCount()), 10000)
+                .subscribe(
+                        lockCount -> context.assertEquals(1, lockCount),
+                        context::fail,
+                        async::complete);
+        // the writer is queued so a reader that arrives after it has to wait its turn
+        assertFalse(rangeLock.tryReadLock(0, 8192).isPresent());
+        // but ranges the writer doesn't need are still available
+        assertTrue(rangeLock.tryReadLock(8192, 8192).get().unlock());
+        assertEquals(1, rangeLock.getWaiterCount());
+        l0.unlock();
+    }
+}
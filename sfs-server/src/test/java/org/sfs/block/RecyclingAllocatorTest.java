@@ -381,6 +381,50 @@ public class RecyclingAllocatorTest {
     }
 
 
+    @Test
+    public void testAllocFromLastRange(TestContext context) {
+        int blockSize = 8 * 1024;
+        RecyclingAllocator allocator = new RecyclingAllocator(blockSize);
+
+        Async async = context.async();
+        just((Void) null)
+                .map(aVoid -> {
+                    allocator.allocNextAvailable(blockSize);
+                    long position = allocator.allocNextAvailable(blockSize);
+                    allocator.allocNextAvailable(blockSize);
+                    allocator.free(position, blockSize);
+                    // skips the hole
+                    assertEquals(context, blockSize * 3, allocator.allocFromLastRange(blockSize));
+                    assertEquals(context, blockSize * 4, allocator.greatestFreePosition());
+                    assertEquals(context, 2, allocator.getNumberOfFreeRanges());
+                    return (Void) null;
+                })
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testRestoreFreeRanges(TestContext context) {
+        int blockSize = 8 * 1024;
+        RecyclingAllocator allocator = new RecyclingAllocator(blockSize);
+
+        Async async = context.async();
+        just((Void) null)
+                .map(aVoid -> {
+                    allocator.allocNextAvailable(blockSize);
+                    long position = allocator.allocNextAvailable(blockSize);
+                    allocator.allocNextAvailable(blockSize);
+                    allocator.free(position, blockSize);
+
+                    RecyclingAllocator restored = new RecyclingAllocator(blockSize);
+                    restored.setFreeRanges(allocator.copyFreeRanges());
+                    assertArrayEquals(context, toArray(allocator.freeRanges(), Range.class), toArray(restored.freeRanges(), Range.class));
+                    assertEquals(context, allocator.getBytesFree(Long.MAX_VALUE), restored.getBytesFree(Long.MAX_VALUE));
+                    assertEquals(context, position, restored.allocNextAvailable(blockSize));
+                    return (Void) null;
+                })
+                .subscribe(new TestSubscriber(context, async));
+    }
+
     protected void print(RecyclingAllocator allocator) {
         for (Range freeRange : allocator.freeRanges()) {
             out.println("Range: " + freeRange);
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.elasticsearch;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import io.vertx.core.json.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sfs.Server;
+import org.sfs.VertxContext;
+import org.sfs.vo.PersistentAccount;
+import org.sfs.vo.PersistentContainer;
+import org.sfs.vo.TransientServiceDef;
+import rx.Observable;
+import rx.subjects.PublishSubject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Optional.of;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetadataCacheTest {
+
+    private static final String ACCOUNT_ID = "/account";
+    private static final String CONTAINER_ID = "/account/container";
+    private TestMetadataCache metadataCache;
+
+    @Before
+    public void before() {
+        metadataCache = start(10, 1000);
+    }
+
+    @After
+    public void after() {
+        metadataCache.stop(null).toBlocking().singleOrDefault(null);
+    }
+
+    @Test
+    public void testLoadedAccountIsCached() {
+        metadataCache.stored.put(ACCOUNT_ID, 1L);
+
+        PersistentAccount first = getAccount();
+        PersistentAccount second = getAccount();
+
+        assertEquals(1, metadataCache.loads);
+        assertEquals(1, second.getPersistentVersion());
+        // callers can modify what they're given so every get is a copy
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void testUpdateReplacesCachedVersion() {
+        metadataCache.stored.put(ACCOUNT_ID, 1L);
+        getAccount();
+
+        metadataCache.stored.put(ACCOUNT_ID, 2L);
+        metadataCache.updated(null, new PersistentAccount(ACCOUNT_ID, 2)).toBlocking().single();
+
+        assertEquals(2, getAccount().getPersistentVersion());
+        assertEquals(1, metadataCache.loads);
+    }
+
+    @Test
+    public void testInvalidateDuringLoad() {
+        metadataCache.stored.put(ACCOUNT_ID, 1L);
+        PublishSubject<Optional<PersistentAccount>> inFlight = PublishSubject.create();
+        metadataCache.inFlight = inFlight;
+        AtomicReference<PersistentAccount> loaded = new AtomicReference<>();
+        metadataCache.getAccount(null, ACCOUNT_ID).subscribe(oAccount -> loaded.set(oAccount.get()));
+
+        // the account is updated while the load that read version 1 is in flight
+        metadataCache.invalidate(ACCOUNT_ID, 2);
+        inFlight.onNext(of(new PersistentAccount(ACCOUNT_ID, 1)));
+        inFlight.onCompleted();
+        assertEquals(1, loaded.get().getPersistentVersion());
+
+        // so the version it read must not be cached
+        metadataCache.stored.put(ACCOUNT_ID, 2L);
+        assertEquals(2, getAccount().getPersistentVersion());
+        assertEquals(2, metadataCache.loads);
+        assertEquals(2, getAccount().getPersistentVersion());
+        assertEquals(2, metadataCache.loads);
+    }
+
+    @Test
+    public void testOlderVersionIgnoredAfterNewer() {
+        metadataCache.updated(null, new PersistentAccount(ACCOUNT_ID, 3)).toBlocking().single();
+
+        // a late invalidation with an older version doesn't lower the minimum
+        // so the version read by a slow load isn't cached after it
+        metadataCache.invalidate(ACCOUNT_ID, 1);
+        metadataCache.put(new PersistentAccount(ACCOUNT_ID, 2));
+        metadataCache.stored.put(ACCOUNT_ID, 3L);
+
+        assertEquals(3, getAccount().getPersistentVersion());
+        assertEquals(3, getAccount().getPersistentVersion());
+        assertEquals(1, metadataCache.loads);
+
+        // and an older put doesn't replace the cached version
+        metadataCache.put(new PersistentAccount(ACCOUNT_ID, 2));
+        assertEquals(3, getAccount().getPersistentVersion());
+        assertEquals(1, metadataCache.loads);
+    }
+
+    @Test
+    public void testContainerInvalidateDuringLoad() {
+        PersistentAccount account = new PersistentAccount(ACCOUNT_ID, 1);
+        metadataCache.stored.put(CONTAINER_ID, 1L);
+        assertEquals(1, getContainer(account).getPersistentVersion());
+
+        metadataCache.invalidate(CONTAINER_ID, 2);
+        metadataCache.put(container(account, CONTAINER_ID, 1));
+        metadataCache.stored.put(CONTAINER_ID, 2L);
+
+        assertEquals(2, getContainer(account).getPersistentVersion());
+        assertEquals(2, getContainer(account).getPersistentVersion());
+        assertEquals(2, metadataCache.loads);
+    }
+
+    @Test
+    public void testEntriesExpireAfterTtl() {
+        metadataCache.stored.put(ACCOUNT_ID, 1L);
+        getAccount();
+
+        metadataCache.nanos.addAndGet(MILLISECONDS.toNanos(999));
+        getAccount();
+        assertEquals(1, metadataCache.loads);
+
+        metadataCache.nanos.addAndGet(MILLISECONDS.toNanos(1));
+        getAccount();
+        assertEquals(2, metadataCache.loads);
+    }
+
+    @Test
+    public void testInvalidationExpiresAfterTtl() {
+        metadataCache.invalidate(ACCOUNT_ID, 2);
+        metadataCache.stored.put(ACCOUNT_ID, 1L);
+        getAccount();
+        getAccount();
+        assertEquals(2, metadataCache.loads);
+
+        // a node that missed the update is back to caching after the ttl
+        metadataCache.nanos.addAndGet(MILLISECONDS.toNanos(1000));
+        getAccount();
+        getAccount();
+        assertEquals(3, metadataCache.loads);
+    }
+
+    @Test
+    public void testMaximumSize() {
+        after();
+        metadataCache = start(1, 1000);
+        metadataCache.stored.put("/a", 1L);
+        metadataCache.stored.put("/b", 1L);
+
+        getAccount("/a");
+        getAccount("/b");
+        getAccount("/a");
+
+        assertEquals(3, metadataCache.loads);
+    }
+
+    @Test
+    public void testZeroSizeDisablesCaching() {
+        after();
+        metadataCache = start(0, 1000);
+        metadataCache.stored.put(ACCOUNT_ID, 1L);
+
+        getAccount();
+        getAccount();
+
+        assertEquals(2, metadataCache.loads);
+    }
+
+    @Test
+    public void testUpdateIsBroadcastInTheBackground() {
+        metadataCache.otherNodes = Arrays.asList(new TransientServiceDef("node1"), new TransientServiceDef("node2"), new TransientServiceDef("node3"));
+        // node1 fails and node2 never answers
+        metadataCache.remoteResults.put("node1", Observable.error(new RuntimeException("node1 is down")));
+        metadataCache.remoteResults.put("node2", Observable.never());
+
+        metadataCache.updated(null, new PersistentAccount(ACCOUNT_ID, 5)).toBlocking().single();
+
+        assertEquals(Arrays.asList("node1 /account 5", "node2 /account 5", "node3 /account 5"), metadataCache.remoteInvalidations);
+        assertEquals(5, getAccount().getPersistentVersion());
+        assertEquals(0, metadataCache.loads);
+    }
+
+    @Test
+    public void testBroadcastSurvivesFailedNode() {
+        metadataCache.otherNodes = Arrays.asList(new TransientServiceDef("node1"), new TransientServiceDef("node2"));
+        metadataCache.remoteResults.put("node1", Observable.error(new RuntimeException("node1 is down")));
+
+        metadataCache.broadcast(null, ACCOUNT_ID, 7).toBlocking().single();
+
+        assertEquals(Arrays.asList("node1 /account 7", "node2 /account 7"), metadataCache.remoteInvalidations);
+    }
+
+    @Test
+    public void testClosedCacheAlwaysLoads() {
+        after();
+        metadataCache.stored.put(ACCOUNT_ID, 1L);
+
+        getAccount();
+        getAccount();
+        metadataCache.invalidate(ACCOUNT_ID, 2);
+
+        assertEquals(2, metadataCache.loads);
+        assertTrue(metadataCache.remoteInvalidations.isEmpty());
+    }
+
+    protected PersistentAccount getAccount() {
+        return getAccount(ACCOUNT_ID);
+    }
+
+    protected PersistentAccount getAccount(String accountId) {
+        return metadataCache.getAccount(null, accountId).toBlocking().single().get();
+    }
+
+    protected PersistentContainer getContainer(PersistentAccount account) {
+        return metadataCache.getContainer(null, account, CONTAINER_ID).toBlocking().single().get();
+    }
+
+    protected static PersistentContainer container(PersistentAccount account, String containerId, long version) {
+        return new PersistentContainer(account, containerId, version)
+                .setObjectReplicas(1);
+    }
+
+    protected TestMetadataCache start(long maxSize, long ttl) {
+        TestMetadataCache metadataCache = new TestMetadataCache();
+        JsonObject config = new JsonObject()
+                .put("metadata_cache.maxsize", String.valueOf(maxSize))
+                .put("metadata_cache.ttl", String.valueOf(ttl));
+        metadataCache.start(null, config).toBlocking().singleOrDefault(null);
+        return metadataCache;
+    }
+
+    // loads the versions in stored instead of reading elasticsearch
+    // and records the invalidations sent to other nodes
+    private static class TestMetadataCache extends MetadataCache {
+
+        private final Map<String, Long> stored = new HashMap<>();
+        private final AtomicLong nanos = new AtomicLong();
+        private final Map<String, Observable<Void>> remoteResults = new HashMap<>();
+        private final List<String> remoteInvalidations = new ArrayList<>();
+        private List<TransientServiceDef> otherNodes = new ArrayList<>();
+        private Observable<Optional<PersistentAccount>> inFlight;
+        private int loads = 0;
+
+        @Override
+        protected Observable<Optional<PersistentAccount>> loadAccount(VertxContext<Server> vertxContext, String accountId) {
+            loads++;
+            if (inFlight != null) {
+                Observable<Optional<PersistentAccount>> load = inFlight;
+                inFlight = null;
+                return load;
+            }
+            return Observable.just(of(new PersistentAccount(accountId, stored.get(accountId))));
+        }
+
+        @Override
+        protected Observable<Optional<PersistentContainer>> loadContainer(VertxContext<Server> vertxContext, PersistentAccount persistentAccount, String containerId) {
+            loads++;
+            return Observable.just(of(container(persistentAccount, containerId, stored.get(containerId))));
+        }
+
+        @Override
+        protected List<TransientServiceDef> otherNodes(VertxContext<Server> vertxContext) {
+            return otherNodes;
+        }
+
+        @Override
+        protected Observable<Void> invalidateRemote(VertxContext<Server> vertxContext, TransientServiceDef serviceDef, String id, long minimumVersion) {
+            remoteInvalidations.add(serviceDef.getId() + " " + id + " " + minimumVersion);
+            Observable<Void> result = remoteResults.get(serviceDef.getId());
+            return result != null ? result : Observable.just(null);
+        }
+
+        @Override
+        protected Ticker ticker() {
+            return new Ticker() {
+                @Override
+                public long read() {
+                    return nanos.get();
+                }
+            };
+        }
+    }
+}
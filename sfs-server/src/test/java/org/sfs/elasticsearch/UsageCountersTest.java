@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.elasticsearch;
+
+import com.google.common.base.Optional;
+import org.junit.Before;
+import org.junit.Test;
+import org.sfs.Server;
+import org.sfs.VertxContext;
+import org.sfs.vo.PersistentAccount;
+import org.sfs.vo.PersistentContainer;
+import org.sfs.vo.Usage;
+import rx.Observable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class UsageCountersTest {
+
+    private PersistentAccount account;
+    private PersistentContainer container;
+    private InMemoryUsageCounters usageCounters;
+
+    @Before
+    public void before() {
+        account = new PersistentAccount("/account", 1);
+        container = new PersistentContainer(account, "/account/container", 1);
+        usageCounters = new InMemoryUsageCounters();
+        usageCounters.put(Usage.ofAccount(account).setContainerCount(1));
+        usageCounters.put(Usage.ofContainer(container));
+    }
+
+    @Test
+    public void testContainersAreFlushedBeforeAccounts() {
+        usageCounters.objectsChanged(container, 2, 100);
+        usageCounters.containersChanged(account.getId(), 1, 0, 0);
+        flush();
+
+        assertEquals(2, usageCounters.get(container.getId()).getObjectCount());
+        assertEquals(100, usageCounters.get(container.getId()).getBytesUsed());
+        // the change to the container reached the account in the same flush
+        assertEquals(2, usageCounters.get(account.getId()).getContainerCount());
+        assertEquals(2, usageCounters.get(account.getId()).getObjectCount());
+        assertEquals(100, usageCounters.get(account.getId()).getBytesUsed());
+        assertEquals(container.getId(), usageCounters.persisted.get(0));
+        assertEquals(account.getId(), usageCounters.persisted.get(1));
+    }
+
+    @Test
+    public void testConflictIsRetriedOnNextFlush() {
+        usageCounters.objectsChanged(container, 1, 10);
+        usageCounters.conflicts.add(container.getId());
+        flush();
+
+        assertEquals(0, usageCounters.get(container.getId()).getObjectCount());
+        assertEquals(0, usageCounters.get(account.getId()).getObjectCount());
+
+        usageCounters.objectsChanged(container, 1, 20);
+        flush();
+
+        assertEquals(2, usageCounters.get(container.getId()).getObjectCount());
+        assertEquals(30, usageCounters.get(container.getId()).getBytesUsed());
+        assertEquals(2, usageCounters.get(account.getId()).getObjectCount());
+        assertEquals(30, usageCounters.get(account.getId()).getBytesUsed());
+    }
+
+    @Test
+    public void testFailedFlushIsRetriedOnNextFlush() {
+        usageCounters.objectsChanged(container, 1, 10);
+        usageCounters.containersChanged(account.getId(), 1, 0, 0);
+        usageCounters.failures.add(container.getId());
+        usageCounters.failures.add(account.getId());
+        flush();
+
+        assertEquals(0, usageCounters.get(container.getId()).getObjectCount());
+        assertEquals(1, usageCounters.get(account.getId()).getContainerCount());
+
+        flush();
+
+        assertEquals(1, usageCounters.get(container.getId()).getObjectCount());
+        assertEquals(10, usageCounters.get(container.getId()).getBytesUsed());
+        assertEquals(2, usageCounters.get(account.getId()).getContainerCount());
+        assertEquals(1, usageCounters.get(account.getId()).getObjectCount());
+        assertEquals(10, usageCounters.get(account.getId()).getBytesUsed());
+    }
+
+    @Test
+    public void testChangesToUncountedContainerAreDropped() {
+        PersistentContainer uncounted = new PersistentContainer(account, "/account/uncounted", 1);
+        usageCounters.objectsChanged(uncounted, 1, 10);
+        flush();
+
+        assertFalse(usageCounters.usages.containsKey(uncounted.getId()));
+        assertEquals(0, usageCounters.get(account.getId()).getObjectCount());
+    }
+
+    @Test
+    public void testRemovedContainerIsSubtractedFromAccount() {
+        usageCounters.objectsChanged(container, 3, 300);
+        flush();
+
+        // never flushed so the account never counted it
+        usageCounters.objectsChanged(container, 1, 10);
+        usageCounters.containerRemoved(null, container).toBlocking().single();
+        flush();
+
+        assertFalse(usageCounters.usages.containsKey(container.getId()));
+        assertEquals(0, usageCounters.get(account.getId()).getContainerCount());
+        assertEquals(0, usageCounters.get(account.getId()).getObjectCount());
+        assertEquals(0, usageCounters.get(account.getId()).getBytesUsed());
+    }
+
+    @Test
+    public void testCreatedContainerIsAddedToAccount() {
+        PersistentContainer created = new PersistentContainer(account, "/account/created", 1);
+        usageCounters.containerCreated(null, created).toBlocking().single();
+        flush();
+
+        assertEquals(0, usageCounters.get(created.getId()).getObjectCount());
+        assertEquals(2, usageCounters.get(account.getId()).getContainerCount());
+    }
+
+    private void flush() {
+        usageCounters.flush(null).toBlocking().single();
+    }
+
+    private static class InMemoryUsageCounters extends UsageCounters {
+
+        private final Map<String, Usage> usages = new HashMap<>();
+        // ids whose next persist conflicts or fails
+        private final Set<String> conflicts = new HashSet<>();
+        private final Set<String> failures = new HashSet<>();
+        private final List<String> persisted = new ArrayList<>();
+
+        public void put(Usage usage) {
+            usages.put(usage.getId(), copy(usage, 0));
+        }
+
+        public Usage get(String id) {
+            return usages.get(id);
+        }
+
+        @Override
+        protected Observable<Optional<Usage>> loadUsage(VertxContext<Server> vertxContext, String id) {
+            Usage usage = usages.get(id);
+            if (usage == null) {
+                return Observable.just(Optional.<Usage>absent());
+            }
+            return Observable.just(Optional.of(copy(usage, usage.getPersistentVersion())));
+        }
+
+        @Override
+        protected Observable<Optional<Usage>> persistUsage(VertxContext<Server> vertxContext, Usage usage) {
+            if (failures.remove(usage.getId())) {
+                return Observable.error(new IOException("failed"));
+            }
+            Usage existing = usages.get(usage.getId());
+            if (conflicts.remove(usage.getId())
+                    || (usage.isPersisted() && (existing == null || existing.getPersistentVersion() != usage.getPersistentVersion()))
+                    || (!usage.isPersisted() && existing != null)) {
+                return Observable.just(Optional.<Usage>absent());
+            }
+            Usage updated = copy(usage, existing != null ? existing.getPersistentVersion() + 1 : 0);
+            usages.put(usage.getId(), updated);
+            persisted.add(usage.getId());
+            return Observable.just(Optional.of(updated));
+        }
+
+        @Override
+        protected Observable<Void> removeUsage(VertxContext<Server> vertxContext, String id) {
+            usages.remove(id);
+            return Observable.just(null);
+        }
+
+        private static Usage copy(Usage usage, long version) {
+            return new Usage(usage.getId(), usage.getAccountId(), usage.getContainerId(), version)
+                    .merge(usage.toJsonObject());
+        }
+    }
+}
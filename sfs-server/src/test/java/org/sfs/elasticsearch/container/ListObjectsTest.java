@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.elasticsearch.container;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ListObjectsTest {
+
+    @Test
+    public void testSuccessor() {
+        Assert.assertEquals("b", ListObjects.successor("a"));
+        Assert.assertEquals("photos0", ListObjects.successor("photos/"));
+        Assert.assertEquals("a/c", ListObjects.successor("a/b"));
+    }
+
+    @Test
+    public void testSuccessorSortsAfterEveryStringWithThePrefix() {
+        String prefix = "photos/";
+        String successor = ListObjects.successor(prefix);
+        Assert.assertTrue(successor.compareTo(prefix) > 0);
+        Assert.assertTrue(successor.compareTo(prefix + Character.MAX_VALUE + Character.MAX_VALUE) > 0);
+        Assert.assertTrue(successor.compareTo("photos2") < 0);
+    }
+
+    @Test
+    public void testSuccessorCarriesPastMaxValue() {
+        Assert.assertEquals("b", ListObjects.successor("a" + Character.MAX_VALUE));
+        Assert.assertEquals("b", ListObjects.successor("a" + Character.MAX_VALUE + Character.MAX_VALUE));
+    }
+
+    @Test
+    public void testSuccessorExhausted() {
+        Assert.assertNull(ListObjects.successor(""));
+        Assert.assertNull(ListObjects.successor(String.valueOf(Character.MAX_VALUE)));
+        Assert.assertNull(ListObjects.successor("" + Character.MAX_VALUE + Character.MAX_VALUE));
+    }
+}
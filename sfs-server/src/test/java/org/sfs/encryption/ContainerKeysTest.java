@@ -17,7 +17,9 @@
 package org.sfs.encryption;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
 import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.TestContext;
 import org.junit.Test;
 import org.sfs.elasticsearch.account.LoadAccount;
@@ -26,6 +28,7 @@ import org.sfs.elasticsearch.containerkey.GetNewestContainerKey;
 import org.sfs.elasticsearch.containerkey.UpdateContainerKey;
 import org.sfs.integration.java.BaseTestVerticle;
 import org.sfs.integration.java.func.AssertHttpClientResponseStatusCode;
+import org.sfs.integration.java.func.DeleteContainer;
 import org.sfs.integration.java.func.PostAccount;
 import org.sfs.integration.java.func.PostContainer;
 import org.sfs.integration.java.func.PutContainer;
@@ -33,10 +36,13 @@ import org.sfs.integration.java.func.RefreshIndex;
 import org.sfs.rx.Holder2;
 import org.sfs.rx.ToVoid;
 import org.sfs.util.HttpClientResponseHeaderLogger;
+import org.sfs.vo.PersistentContainer;
 import rx.Observable;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static com.google.common.base.Charsets.UTF_8;
@@ -45,6 +51,7 @@ import static java.net.HttpURLConnection.HTTP_CREATED;
 import static java.net.HttpURLConnection.HTTP_NO_CONTENT;
 import static java.util.Calendar.getInstance;
 import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.sfs.integration.java.help.AuthorizationFactory.Producer;
 import static org.sfs.integration.java.help.AuthorizationFactory.httpBasic;
 import static org.sfs.util.KnownMetadataKeys.X_MAX_OBJECT_REVISIONS;
@@ -52,6 +59,7 @@ import static org.sfs.util.SfsHttpHeaders.X_ADD_CONTAINER_META_PREFIX;
 import static org.sfs.util.VertxAssert.assertArrayEquals;
 import static org.sfs.util.VertxAssert.assertEquals;
 import static org.sfs.util.VertxAssert.assertFalse;
+import static org.sfs.util.VertxAssert.assertTrue;
 import static org.sfs.vo.ObjectPath.fromPaths;
 import static rx.Observable.just;
 
@@ -301,4 +309,138 @@ public class ContainerKeysTest extends BaseTestVerticle {
         });
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testCachedKeysExpireAfterTtl(TestContext context) {
+        runOnServerContext(context, () -> {
+            AtomicLong nanos = new AtomicLong(0);
+            ContainerKeys containerKeys = new TickerContainerKeys(nanos);
+            JsonObject config = new JsonObject()
+                    .put("container_key_cache.ttl", SECONDS.toMillis(10));
+
+            return containerKeys.start(vertxContext(), config)
+                    .flatMap(aVoid -> prepareContainer(context))
+                    .flatMap(aVoid -> loadContainer(containerName))
+                    .flatMap(persistentContainer ->
+                            containerKeys.preferredAlgorithm(vertxContext(), persistentContainer)
+                                    .flatMap(keyResponse -> containerKeys.preferredAlgorithm(vertxContext(), persistentContainer))
+                                    .map(keyResponse -> {
+                                        assertEquals(context, 1L, containerKeys.getNewestKeyHitCount());
+                                        assertEquals(context, 1L, containerKeys.getClearKeyHitCount());
+                                        assertTrue(context, containerKeys.getCachedKey(keyResponse.getKeyId()).isPresent());
+                                        nanos.addAndGet(SECONDS.toNanos(11));
+                                        containerKeys.cleanUp();
+                                        assertFalse(context, containerKeys.getCachedKey(keyResponse.getKeyId()).isPresent());
+                                        return (Void) null;
+                                    })
+                                    .flatMap(new RefreshIndex(httpClient(), authAdmin))
+                                    .flatMap(aVoid -> containerKeys.preferredAlgorithm(vertxContext(), persistentContainer))
+                                    .map(keyResponse -> {
+                                        assertEquals(context, 1L, containerKeys.getNewestKeyHitCount());
+                                        assertEquals(context, 2L, containerKeys.getNewestKeyMissCount());
+                                        assertEquals(context, 1L, containerKeys.getClearKeyHitCount());
+                                        assertEquals(context, 2L, containerKeys.getClearKeyMissCount());
+                                        return keyResponse;
+                                    }))
+                    .map(new ToVoid<>())
+                    .flatMap(aVoid -> containerKeys.stop(vertxContext()));
+        });
+    }
+
+    @Test
+    public void testClearKeyZeroedWhenEvicted(TestContext context) {
+        runOnServerContext(context, () -> {
+            String otherContainerName = containerName + "2";
+            ContainerKeys containerKeys = new ContainerKeys();
+            JsonObject config = new JsonObject()
+                    .put("container_key_cache.maxsize", 1);
+            AtomicReference<ContainerKeys.ClearContainerKey> evicted = new AtomicReference<>();
+
+            return containerKeys.start(vertxContext(), config)
+                    .flatMap(aVoid -> prepareContainer(context))
+                    .flatMap(new PutContainer(httpClient(), accountName, otherContainerName, authNonAdmin))
+                    .map(new HttpClientResponseHeaderLogger())
+                    .map(new AssertHttpClientResponseStatusCode(context, HTTP_CREATED))
+                    .map(new ToVoid<HttpClientResponse>())
+                    .flatMap(aVoid -> loadContainer(containerName))
+                    .flatMap(persistentContainer -> containerKeys.preferredAlgorithm(vertxContext(), persistentContainer))
+                    .map(keyResponse -> {
+                        ContainerKeys.ClearContainerKey clearContainerKey = containerKeys.getCachedKey(keyResponse.getKeyId()).get();
+                        assertFalse(context, isZeroed(clearContainerKey.getKey()));
+                        evicted.set(clearContainerKey);
+                        return keyResponse;
+                    })
+                    .flatMap(keyResponse ->
+                            loadContainer(otherContainerName)
+                                    .flatMap(persistentContainer -> containerKeys.preferredAlgorithm(vertxContext(), persistentContainer))
+                                    .map(otherKeyResponse -> {
+                                        assertFalse(context, containerKeys.getCachedKey(keyResponse.getKeyId()).isPresent());
+                                        assertTrue(context, containerKeys.getCachedKey(otherKeyResponse.getKeyId()).isPresent());
+                                        assertTrue(context, isZeroed(evicted.get().getKey()));
+                                        assertFalse(context, evicted.get().create(keyResponse.getSalt()).isPresent());
+                                        return otherKeyResponse;
+                                    }))
+                    .map(new ToVoid<>())
+                    .flatMap(aVoid -> containerKeys.stop(vertxContext()));
+        });
+    }
+
+    @Test
+    public void testRemovedContainerInvalidatesKeys(TestContext context) {
+        runOnServerContext(context, () -> {
+            ContainerKeys containerKeys = vertxContext().verticle().containerKeys();
+
+            return prepareContainer(context)
+                    .flatMap(aVoid -> loadContainer(containerName))
+                    .flatMap(persistentContainer -> containerKeys.preferredAlgorithm(vertxContext(), persistentContainer))
+                    .flatMap(keyResponse -> {
+                        assertTrue(context, containerKeys.getCachedKey(keyResponse.getKeyId()).isPresent());
+                        return just((Void) null)
+                                .flatMap(new DeleteContainer(httpClient(), accountName, containerName, authNonAdmin))
+                                .map(new HttpClientResponseHeaderLogger())
+                                .map(new AssertHttpClientResponseStatusCode(context, HTTP_NO_CONTENT))
+                                .map(httpClientResponse -> {
+                                    assertFalse(context, containerKeys.getCachedKey(keyResponse.getKeyId()).isPresent());
+                                    return (Void) null;
+                                });
+                    });
+        });
+    }
+
+    protected Observable<PersistentContainer> loadContainer(String containerName) {
+        return just(fromPaths(accountName).accountPath().get())
+                .flatMap(new LoadAccount(vertxContext()))
+                .map(Optional::get)
+                .flatMap(persistentAccount ->
+                        just(fromPaths(accountName, containerName).containerPath().get())
+                                .flatMap(new LoadContainer(vertxContext(), persistentAccount))
+                                .map(Optional::get));
+    }
+
+    protected boolean isZeroed(ByteBuffer buffer) {
+        for (int i = 0; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class TickerContainerKeys extends ContainerKeys {
+
+        private final AtomicLong nanos;
+
+        public TickerContainerKeys(AtomicLong nanos) {
+            this.nanos = nanos;
+        }
+
+        @Override
+        protected Ticker ticker() {
+            return new Ticker() {
+                @Override
+                public long read() {
+                    return nanos.get();
+                }
+            };
+        }
+    }
+}
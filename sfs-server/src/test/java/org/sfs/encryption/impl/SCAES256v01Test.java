@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.encryption.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.sfs.io.BufferWriteEndableWriteStream;
+import org.sfs.io.CipherEndableWriteStream;
+import org.sfs.util.PrngRandom;
+import org.sfs.vo.ByteRange;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.sfs.encryption.impl.SCAES256v01.CHUNK_SIZE_BYTES;
+import static org.sfs.util.PrngRandom.getCurrentInstance;
+
+public class SCAES256v01Test {
+
+    private static final int[] SIZES = new int[]{0, 1, CHUNK_SIZE_BYTES - 1, CHUNK_SIZE_BYTES, CHUNK_SIZE_BYTES + 1, 3 * CHUNK_SIZE_BYTES + 17};
+
+    @Test
+    public void testRoundTrip() {
+        SCAES256v01 algorithm = newAlgorithm();
+        for (int size : SIZES) {
+            byte[] data = randomBytes(size);
+            byte[] encrypted = algorithm.encrypt(data);
+            Assert.assertEquals(algorithm.encryptOutputSize(size), encrypted.length);
+            Assert.assertArrayEquals(data, algorithm.decrypt(encrypted));
+        }
+    }
+
+    @Test
+    public void testDecryptRange() {
+        SCAES256v01 algorithm = newAlgorithm();
+        int size = 3 * CHUNK_SIZE_BYTES + 17;
+        byte[] data = randomBytes(size);
+        byte[] encrypted = algorithm.encrypt(data);
+
+        ByteRange[] ranges = new ByteRange[]{
+                new ByteRange(0, 0),
+                new ByteRange(10, 20),
+                new ByteRange(CHUNK_SIZE_BYTES - 5, CHUNK_SIZE_BYTES + 5),
+                new ByteRange(CHUNK_SIZE_BYTES, 2 * CHUNK_SIZE_BYTES - 1),
+                new ByteRange(2 * CHUNK_SIZE_BYTES + 1, size - 1),
+                new ByteRange(size - 1, size - 1),
+                new ByteRange(0, size - 1)
+        };
+
+        for (ByteRange range : ranges) {
+            ByteRange encryptedRange = algorithm.encryptedRange(range, encrypted.length);
+            BufferWriteEndableWriteStream bufferWriteStream = new BufferWriteEndableWriteStream();
+            CipherEndableWriteStream cipherWriteStream = algorithm.decrypt(bufferWriteStream, range, encrypted.length);
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            cipherWriteStream.exceptionHandler(error::set);
+            cipherWriteStream.end(Buffer.buffer(Arrays.copyOfRange(encrypted, (int) encryptedRange.getFirst(), (int) encryptedRange.getLast() + 1)));
+            Assert.assertNull(String.valueOf(range), error.get());
+            Assert.assertArrayEquals(String.valueOf(range), Arrays.copyOfRange(data, (int) range.getFirst(), (int) range.getLast() + 1), bufferWriteStream.toBuffer().getBytes());
+        }
+    }
+
+    @Test
+    public void testTamperedCipherTextFails() {
+        SCAES256v01 algorithm = newAlgorithm();
+        byte[] encrypted = algorithm.encrypt(randomBytes(2 * CHUNK_SIZE_BYTES));
+        encrypted[CHUNK_SIZE_BYTES + 100] ^= 1;
+        try {
+            algorithm.decrypt(encrypted);
+            Assert.fail("tampered cipher text was decrypted");
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testTruncatedCipherTextFails() {
+        SCAES256v01 algorithm = newAlgorithm();
+        byte[] encrypted = algorithm.encrypt(randomBytes(2 * CHUNK_SIZE_BYTES + 10));
+        // drop the last chunk. The chunk that's now last wasn't sealed as the last chunk
+        byte[] truncated = Arrays.copyOf(encrypted, 2 * (CHUNK_SIZE_BYTES + 16));
+        try {
+            algorithm.decrypt(truncated);
+            Assert.fail("truncated cipher text was decrypted");
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testBackendsAreCompatible() {
+        byte[] secret = randomBytes(32);
+        byte[] salt = randomBytes(64);
+        SCAES256v01 jce = new SCAES256v01(secret, salt, ChunkCipherBackend.JCE);
+        SCAES256v01 bouncyCastle = new SCAES256v01(secret, salt, ChunkCipherBackend.BOUNCY_CASTLE);
+        for (int size : SIZES) {
+            byte[] data = randomBytes(size);
+            byte[] encrypted = jce.encrypt(data);
+            Assert.assertArrayEquals(bouncyCastle.encrypt(data), encrypted);
+            Assert.assertArrayEquals(data, bouncyCastle.decrypt(encrypted));
+            Assert.assertArrayEquals(data, jce.decrypt(encrypted));
+        }
+    }
+
+    @Test
+    public void testDirectBuffers() {
+        SCAES256v01 algorithm = newAlgorithm();
+        int size = 3 * CHUNK_SIZE_BYTES + 17;
+        byte[] data = randomBytes(size);
+        byte[] expected = algorithm.encrypt(data);
+
+        // pieces that straddle chunk boundaries and ones that are larger than a chunk
+        int[] pieceSizes = new int[]{1, CHUNK_SIZE_BYTES - 1, 2 * CHUNK_SIZE_BYTES + 3, 14};
+        BufferWriteEndableWriteStream bufferWriteStream = new BufferWriteEndableWriteStream();
+        CipherEndableWriteStream cipherWriteStream = algorithm.encrypt(bufferWriteStream);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        cipherWriteStream.exceptionHandler(error::set);
+        int offset = 0;
+        for (int pieceSize : pieceSizes) {
+            ByteBuf direct = Unpooled.directBuffer(pieceSize);
+            direct.writeBytes(data, offset, pieceSize);
+            cipherWriteStream.write(Buffer.buffer(direct));
+            offset += pieceSize;
+        }
+        Assert.assertEquals(size, offset);
+        cipherWriteStream.end();
+        Assert.assertNull(error.get());
+        Assert.assertArrayEquals(expected, bufferWriteStream.toBuffer().getBytes());
+    }
+
+    protected SCAES256v01 newAlgorithm() {
+        return new SCAES256v01(randomBytes(32), randomBytes(64));
+    }
+
+    protected byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        PrngRandom random = getCurrentInstance();
+        random.nextBytesBlocking(bytes);
+        return bytes;
+    }
+}
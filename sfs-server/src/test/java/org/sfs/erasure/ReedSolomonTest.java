@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.erasure;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.sfs.io.BufferEndableWriteStream;
+import org.sfs.io.BufferWriteEndableWriteStream;
+import org.sfs.io.ErasureDecoder;
+import org.sfs.io.ErasureEncodeWriteStream;
+import org.sfs.vo.ErasureCoding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ReedSolomonTest {
+
+    @Test
+    public void testDecodeEveryCombinationOfMissingShards() {
+        int dataShards = 4;
+        int parityShards = 2;
+        int length = 1000;
+        ReedSolomon reedSolomon = new ReedSolomon(dataShards, parityShards);
+        byte[][] expected = encode(reedSolomon, length, new Random(1));
+
+        int totalShards = dataShards + parityShards;
+        for (int missingA = 0; missingA < totalShards; missingA++) {
+            for (int missingB = missingA; missingB < totalShards; missingB++) {
+                byte[][] shards = copy(expected);
+                boolean[] present = new boolean[totalShards];
+                Arrays.fill(present, true);
+                present[missingA] = false;
+                present[missingB] = false;
+                Arrays.fill(shards[missingA], (byte) 0);
+                Arrays.fill(shards[missingB], (byte) 0);
+                reedSolomon.decodeMissing(shards, present, 0, length);
+                for (int i = 0; i < totalShards; i++) {
+                    Assert.assertArrayEquals("missing " + missingA + " and " + missingB, expected[i], shards[i]);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyMissingShards() {
+        ReedSolomon reedSolomon = new ReedSolomon(3, 1);
+        byte[][] shards = encode(reedSolomon, 10, new Random(2));
+        reedSolomon.decodeMissing(shards, new boolean[]{true, false, true, false}, 0, 10);
+    }
+
+    @Test
+    public void testStreamRoundTrip() {
+        ErasureCoding erasureCoding = new ErasureCoding(3, 2, 1024);
+        Random random = new Random(3);
+        int[] sizes = new int[]{1, 1023, 3 * 1024, 3 * 1024 + 1, 10 * 1024 + 7};
+        for (int size : sizes) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+
+            List<BufferWriteEndableWriteStream> fragments = new ArrayList<>();
+            List<BufferEndableWriteStream> fragmentWriteStreams = new ArrayList<>();
+            for (int i = 0; i < erasureCoding.getNumberOfFragments(); i++) {
+                BufferWriteEndableWriteStream fragment = new BufferWriteEndableWriteStream();
+                fragments.add(fragment);
+                fragmentWriteStreams.add(fragment);
+            }
+            ErasureEncodeWriteStream encoder = new ErasureEncodeWriteStream(erasureCoding, fragmentWriteStreams);
+            // write in uneven pieces so that stripes span writes
+            for (int offset = 0; offset < size; offset += 700) {
+                encoder.write(Buffer.buffer(Arrays.copyOfRange(data, offset, Math.min(size, offset + 700))));
+            }
+            encoder.end();
+
+            for (BufferWriteEndableWriteStream fragment : fragments) {
+                Assert.assertEquals(erasureCoding.getFragmentLength(size), fragment.toBuffer().length());
+            }
+
+            // all data fragments, one parity, and only parity where possible
+            List<List<Integer>> combinations = Arrays.asList(
+                    Arrays.asList(0, 1, 2),
+                    Arrays.asList(0, 2, 3),
+                    Arrays.asList(1, 3, 4));
+            for (List<Integer> fragmentIndexes : combinations) {
+                BufferWriteEndableWriteStream output = new BufferWriteEndableWriteStream();
+                ErasureDecoder decoder = new ErasureDecoder(output, erasureCoding, fragmentIndexes);
+                AtomicReference<Throwable> error = new AtomicReference<>();
+                AtomicBoolean ended = new AtomicBoolean(false);
+                for (int fragmentIndex : fragmentIndexes) {
+                    BufferEndableWriteStream fragmentWriteStream = decoder.fragmentWriteStream(fragmentIndex);
+                    fragmentWriteStream.exceptionHandler(error::set);
+                    fragmentWriteStream.endHandler(event -> ended.set(true));
+                }
+                // interleave the fragments like concurrent reads would
+                Buffer[] buffers = new Buffer[fragmentIndexes.size()];
+                for (int i = 0; i < buffers.length; i++) {
+                    buffers[i] = fragments.get(fragmentIndexes.get(i)).toBuffer();
+                }
+                int fragmentLength = buffers[0].length();
+                for (int offset = 0; offset < fragmentLength; offset += 300) {
+                    for (int i = 0; i < buffers.length; i++) {
+                        decoder.fragmentWriteStream(fragmentIndexes.get(i)).write(buffers[i].getBuffer(offset, Math.min(fragmentLength, offset + 300)));
+                    }
+                }
+                for (int fragmentIndex : fragmentIndexes) {
+                    decoder.fragmentWriteStream(fragmentIndex).end();
+                }
+                Assert.assertNull(error.get());
+                Assert.assertTrue(ended.get());
+                byte[] decoded = output.toBuffer().getBytes();
+                Assert.assertEquals(erasureCoding.getNumberOfStripes(size) * erasureCoding.getStripeSize(), decoded.length);
+                Assert.assertArrayEquals("size " + size + " fragments " + fragmentIndexes, data, Arrays.copyOf(decoded, size));
+            }
+        }
+    }
+
+    @Test
+    public void testFromHeaderValue() {
+        Assert.assertEquals(new ErasureCoding(6, 3), ErasureCoding.fromHeaderValue("6+3").get());
+        Assert.assertFalse(ErasureCoding.fromHeaderValue("6").isPresent());
+        Assert.assertFalse(ErasureCoding.fromHeaderValue("1+3").isPresent());
+        Assert.assertFalse(ErasureCoding.fromHeaderValue("6+0").isPresent());
+        Assert.assertFalse(ErasureCoding.fromHeaderValue("a+b").isPresent());
+    }
+
+    protected byte[][] encode(ReedSolomon reedSolomon, int length, Random random) {
+        byte[][] shards = new byte[reedSolomon.getTotalShards()][length];
+        for (int i = 0; i < reedSolomon.getDataShards(); i++) {
+            random.nextBytes(shards[i]);
+        }
+        reedSolomon.encodeParity(shards, 0, length);
+        return shards;
+    }
+
+    protected byte[][] copy(byte[][] shards) {
+        byte[][] copy = new byte[shards.length][];
+        for (int i = 0; i < shards.length; i++) {
+            copy[i] = shards[i].clone();
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.filesystem;
+
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sfs.RunTestOnContextRx;
+import org.sfs.SfsVertx;
+import org.sfs.SfsVertxImpl;
+import org.sfs.TestSubscriber;
+import org.sfs.thread.NamedCapacityFixedThreadPool;
+import rx.Observable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.sfs.util.VertxAssert.assertEquals;
+import static org.sfs.util.VertxAssert.assertTrue;
+
+@RunWith(VertxUnitRunner.class)
+public class GroupCommitTest {
+
+    @Rule
+    public final RunTestOnContextRx rule = new RunTestOnContextRx();
+    private SfsVertx sfsVertx;
+    private ExecutorService ioPool;
+    private ExecutorService backgroundPool;
+
+    @Before
+    public void start() {
+        ioPool = NamedCapacityFixedThreadPool.newInstance(200, "sfs-io-pool");
+        backgroundPool = NamedCapacityFixedThreadPool.newInstance(200, "sfs-blocking-action-pool");
+        sfsVertx = new SfsVertxImpl(rule.vertx(), backgroundPool, ioPool);
+    }
+
+    @After
+    public void stop(TestContext context) {
+        if (ioPool != null) {
+            ioPool.shutdown();
+        }
+        if (backgroundPool != null) {
+            backgroundPool.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentRequestsShareForce(TestContext context) {
+        AtomicInteger forces = new AtomicInteger(0);
+        GroupCommit groupCommit = new GroupCommit(64, 0, metaData -> {
+            forces.incrementAndGet();
+            sleep(100);
+        });
+
+        List<Observable<Void>> requests = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            requests.add(groupCommit.force(sfsVertx, false));
+        }
+
+        Async async = context.async();
+        Observable.merge(requests)
+                .count()
+                .map(count -> {
+                    assertEquals(context, 32, count.intValue());
+                    assertEquals(context, 32L, groupCommit.getRequestCount());
+                    // the first request forces immediately and everything else
+                    // arrives while that force is running
+                    assertEquals(context, 2, forces.get());
+                    assertEquals(context, 2L, groupCommit.getForceCount());
+                    return (Void) null;
+                })
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testWindowFlushesFullBatch(TestContext context) {
+        AtomicInteger forces = new AtomicInteger(0);
+        GroupCommit groupCommit = new GroupCommit(4, 60000, metaData -> forces.incrementAndGet());
+
+        List<Observable<Void>> requests = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            requests.add(groupCommit.force(sfsVertx, false));
+        }
+
+        Async async = context.async();
+        Observable.merge(requests)
+                .count()
+                .map(count -> {
+                    assertEquals(context, 4, count.intValue());
+                    assertEquals(context, 1, forces.get());
+                    return (Void) null;
+                })
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testFailureIsPropagated(TestContext context) {
+        GroupCommit groupCommit = new GroupCommit(64, 0, metaData -> {
+            throw new IOException("force failed");
+        });
+
+        Async async = context.async();
+        groupCommit.force(sfsVertx, true)
+                .map(aVoid -> false)
+                .onErrorResumeNext(throwable -> Observable.just(true))
+                .map(failed -> {
+                    assertTrue(context, failed);
+                    assertEquals(context, 0L, groupCommit.getForceCount());
+                    return (Void) null;
+                })
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -18,6 +18,10 @@ package org.sfs.filesystem.volume;
 
 import com.google.common.base.Optional;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.RunTestOnContext;
@@ -47,13 +51,17 @@ import rx.Subscriber;
 import rx.functions.Func1;
 
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Calendar;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.google.common.net.HttpHeaders.CONTENT_LENGTH;
+
 @RunWith(VertxUnitRunner.class)
 public class VolumeV1Test {
 
@@ -238,6 +246,213 @@ public class VolumeV1Test {
                 .subscribe(new TestSubscriber(context, async));
     }
 
+    @Test
+    public void testReopenFromFreeSpaceMap(TestContext context) {
+
+        SfsVertx sfsVertx = new SfsVertxImpl(rule.vertx(), backgroundPool, ioPool);
+
+        final Buffer expectedBuffer = Buffer.buffer("HELLO");
+        final VolumeV1 sfsDataV1 = new VolumeV1(path);
+        Path freeSpaceMapPath = sfsDataV1.freeSpaceMapPath(path);
+
+        Async async = context.async();
+        sfsDataV1.open(sfsVertx)
+                .flatMap(new PutFile<Void>(context, sfsVertx, sfsDataV1, expectedBuffer, 0L))
+                .flatMap(aLong -> sfsDataV1.close(sfsVertx))
+                .doOnNext(aVoid -> VertxAssert.assertTrue(context, Files.exists(freeSpaceMapPath)))
+                .flatMap(aVoid -> sfsDataV1.open(sfsVertx))
+                .doOnNext(aVoid -> VertxAssert.assertTrue(context, Files.exists(freeSpaceMapPath)))
+                .map(aVoid -> 0L)
+                .flatMap(new GetFile(context, sfsVertx, sfsDataV1, expectedBuffer))
+                .flatMap(new PutFile<Long>(context, sfsVertx, sfsDataV1, expectedBuffer, VolumeV1.INDEX_BLOCK_SIZE))
+                // writes don't touch the saved map
+                .doOnNext(aLong -> VertxAssert.assertTrue(context, Files.exists(freeSpaceMapPath)))
+                .map(new ToVoid<Long>())
+                .flatMap(new Stop(sfsVertx, sfsDataV1))
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testReopenWithCorruptFreeSpaceMap(TestContext context) {
+
+        SfsVertx sfsVertx = new SfsVertxImpl(rule.vertx(), backgroundPool, ioPool);
+
+        final Buffer expectedBuffer = Buffer.buffer("HELLO");
+        final VolumeV1 sfsDataV1 = new VolumeV1(path);
+        Path freeSpaceMapPath = sfsDataV1.freeSpaceMapPath(path);
+
+        Async async = context.async();
+        sfsDataV1.open(sfsVertx)
+                .flatMap(new PutFile<Void>(context, sfsVertx, sfsDataV1, expectedBuffer, 0L))
+                .flatMap(aLong -> sfsDataV1.close(sfsVertx))
+                .map(aVoid -> {
+                    try {
+                        Files.write(freeSpaceMapPath, new byte[]{1, 2, 3, 4});
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return (Void) null;
+                })
+                .flatMap(aVoid -> sfsDataV1.open(sfsVertx))
+                .doOnNext(aVoid -> VertxAssert.assertFalse(context, Files.exists(freeSpaceMapPath)))
+                .map(aVoid -> 0L)
+                .flatMap(new GetFile(context, sfsVertx, sfsDataV1, expectedBuffer))
+                .flatMap(new PutFile<Long>(context, sfsVertx, sfsDataV1, expectedBuffer, VolumeV1.INDEX_BLOCK_SIZE))
+                .map(new ToVoid<Long>())
+                .flatMap(new Stop(sfsVertx, sfsDataV1))
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testCrashAfterSaveFindsNewBlocks(TestContext context) {
+
+        SfsVertx sfsVertx = new SfsVertxImpl(rule.vertx(), backgroundPool, ioPool);
+
+        final Buffer firstBuffer = Buffer.buffer("HELLO");
+        final Buffer secondBuffer = Buffer.buffer("WORLD");
+        final Buffer thirdBuffer = Buffer.buffer("AGAIN");
+        final VolumeV1 sfsDataV1 = new VolumeV1(path);
+        Path crashedPath = path.resolve("crashed");
+        AtomicBoolean scanned = new AtomicBoolean(false);
+        final VolumeV1 crashedV1 = new VolumeV1(crashedPath) {
+            @Override
+            protected Observable<Void> scanIndex(SfsVertx vertx, IndexBlockReader.LockType lockType, Func1<ChecksummedPositional<XVolume.XIndexBlock>, Observable<Void>> transformer) {
+                scanned.set(true);
+                return super.scanIndex(vertx, lockType, transformer);
+            }
+        };
+
+        Async async = context.async();
+        sfsDataV1.open(sfsVertx)
+                .flatMap(new PutFile<Void>(context, sfsVertx, sfsDataV1, firstBuffer, 0L))
+                .flatMap(position -> sfsDataV1.saveFreeSpaceMap(sfsVertx))
+                .flatMap(new PutFile<Void>(context, sfsVertx, sfsDataV1, secondBuffer, VolumeV1.INDEX_BLOCK_SIZE))
+                .map(position -> copyVolume(path, crashedPath))
+                .flatMap(aVoid -> crashedV1.open(sfsVertx))
+                .doOnNext(aVoid -> VertxAssert.assertFalse(context, scanned.get()))
+                .map(aVoid -> 0L)
+                .flatMap(new PutFile<Long>(context, sfsVertx, crashedV1, thirdBuffer, VolumeV1.INDEX_BLOCK_SIZE * 2))
+                .map(position -> 0L)
+                .flatMap(new GetFile(context, sfsVertx, crashedV1, firstBuffer))
+                .map(position -> (long) VolumeV1.INDEX_BLOCK_SIZE)
+                .flatMap(new GetFile(context, sfsVertx, crashedV1, secondBuffer))
+                .map(new ToVoid<Long>())
+                .flatMap(new Stop(sfsVertx, crashedV1))
+                .flatMap(new Stop(sfsVertx, sfsDataV1))
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testCrashAfterSaveReplaysJournal(TestContext context) {
+
+        SfsVertx sfsVertx = new SfsVertxImpl(rule.vertx(), backgroundPool, ioPool);
+
+        final Buffer expectedBuffer = Buffer.buffer("HELLO");
+        final VolumeV1 sfsDataV1 = new VolumeV1(path);
+        Path crashedPath = path.resolve("crashed");
+        final VolumeV1 crashedV1 = new VolumeV1(crashedPath);
+
+        long inThePast = System.currentTimeMillis() - VolumeV1.MAX_GC_AGE - 1;
+
+        Async async = context.async();
+        sfsDataV1.open(sfsVertx)
+                .flatMap(new PutFile<Void>(context, sfsVertx, sfsDataV1, expectedBuffer, 0L))
+                .flatMap(new AckFile(context, sfsVertx, sfsDataV1))
+                .flatMap(position -> sfsDataV1.saveFreeSpaceMap(sfsVertx).map(aVoid -> position))
+                .flatMap(new DeleteFile(context, sfsVertx, sfsDataV1))
+                .flatMap(new SetUpdateDateTime(sfsVertx, sfsDataV1, inThePast))
+                .flatMap(new Reclaim(sfsVertx, sfsDataV1))
+                .map(position -> copyVolume(path, crashedPath))
+                .flatMap(aVoid -> crashedV1.open(sfsVertx))
+                // the block freed after the map was saved can be reused
+                .flatMap(new PutFile<Void>(context, sfsVertx, crashedV1, expectedBuffer, 0L))
+                .flatMap(new PutFile<Long>(context, sfsVertx, crashedV1, expectedBuffer, VolumeV1.INDEX_BLOCK_SIZE))
+                .map(new ToVoid<Long>())
+                .flatMap(new Stop(sfsVertx, crashedV1))
+                .flatMap(new Stop(sfsVertx, sfsDataV1))
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testCrashBeforeJournalFlushFreesCollectedBlock(TestContext context) {
+
+        SfsVertx sfsVertx = new SfsVertxImpl(rule.vertx(), backgroundPool, ioPool);
+
+        final Buffer expectedBuffer = Buffer.buffer("HELLO");
+        AtomicBoolean journal = new AtomicBoolean(true);
+        final VolumeV1 sfsDataV1 = new VolumeV1(path) {
+            @Override
+            protected Observable<Void> flushFreeSpaceJournal(SfsVertx vertx) {
+                return journal.get() ? super.flushFreeSpaceJournal(vertx) : Observable.just(null);
+            }
+        };
+        Path crashedPath = path.resolve("crashed");
+        final VolumeV1 crashedV1 = new VolumeV1(crashedPath);
+
+        long inThePast = System.currentTimeMillis() - VolumeV1.MAX_GC_AGE - 1;
+
+        Async async = context.async();
+        sfsDataV1.open(sfsVertx)
+                .flatMap(new PutFile<Void>(context, sfsVertx, sfsDataV1, expectedBuffer, 0L))
+                .flatMap(new AckFile(context, sfsVertx, sfsDataV1))
+                .flatMap(new DeleteFile(context, sfsVertx, sfsDataV1))
+                .flatMap(new SetUpdateDateTime(sfsVertx, sfsDataV1, inThePast))
+                .flatMap(position -> sfsDataV1.saveFreeSpaceMap(sfsVertx).map(aVoid -> position))
+                // the block is collected but the crash happens before the space it freed is journaled
+                .doOnNext(position -> journal.set(false))
+                .flatMap(new Reclaim(sfsVertx, sfsDataV1))
+                .map(position -> copyVolume(path, crashedPath))
+                .flatMap(aVoid -> crashedV1.open(sfsVertx))
+                .map(aVoid -> 0L)
+                .flatMap(new PutFile<Long>(context, sfsVertx, crashedV1, expectedBuffer, VolumeV1.INDEX_BLOCK_SIZE))
+                // the collected block is still a candidate so the next run frees it
+                .flatMap(new Reclaim(sfsVertx, crashedV1))
+                .flatMap(new PutFile<Long>(context, sfsVertx, crashedV1, expectedBuffer, 0L))
+                .map(new ToVoid<Long>())
+                .flatMap(new Stop(sfsVertx, crashedV1))
+                .doOnNext(aVoid -> journal.set(true))
+                .flatMap(new Stop(sfsVertx, sfsDataV1))
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testGcCandidatesSurviveReopen(TestContext context) {
+
+        SfsVertx sfsVertx = new SfsVertxImpl(rule.vertx(), backgroundPool, ioPool);
+
+        final Buffer expectedBuffer = Buffer.buffer("HELLO");
+        final VolumeV1 sfsDataV1 = new VolumeV1(path);
+
+        long inThePast = System.currentTimeMillis() - VolumeV1.MAX_GC_AGE - 1;
+
+        Async async = context.async();
+        sfsDataV1.open(sfsVertx)
+                .flatMap(new PutFile<Void>(context, sfsVertx, sfsDataV1, expectedBuffer, 0L))
+                .flatMap(new AckFile(context, sfsVertx, sfsDataV1))
+                .flatMap(new DeleteFile(context, sfsVertx, sfsDataV1))
+                .flatMap(new SetUpdateDateTime(sfsVertx, sfsDataV1, inThePast))
+                .flatMap(position -> sfsDataV1.close(sfsVertx))
+                .flatMap(aVoid -> sfsDataV1.open(sfsVertx))
+                .flatMap(aVoid -> sfsDataV1.volumeInfo(sfsVertx))
+                .map(transientXVolume -> {
+                    VertxAssert.assertEquals(context, 1L, transientXVolume.getGcPendingCount().get().longValue());
+                    VertxAssert.assertEquals(context, 0L, transientXVolume.getGcReclaimedCount().get().longValue());
+                    return 0L;
+                })
+                .flatMap(new Reclaim(sfsVertx, sfsDataV1))
+                .flatMap(position -> sfsDataV1.volumeInfo(sfsVertx))
+                .map(transientXVolume -> {
+                    VertxAssert.assertEquals(context, 0L, transientXVolume.getGcPendingCount().get().longValue());
+                    VertxAssert.assertEquals(context, 1L, transientXVolume.getGcReclaimedCount().get().longValue());
+                    VertxAssert.assertEquals(context, (long) expectedBuffer.length(), transientXVolume.getGcReclaimedBytes().get().longValue());
+                    return (Void) null;
+                })
+                .flatMap(new PutFile<Void>(context, sfsVertx, sfsDataV1, expectedBuffer, 0L))
+                .map(new ToVoid<Long>())
+                .flatMap(new Stop(sfsVertx, sfsDataV1))
+                .subscribe(new TestSubscriber(context, async));
+    }
+
     @Test
     public void testSingleSweeperUnacknowledgedRealloc(TestContext context) {
 
@@ -315,6 +530,85 @@ public class VolumeV1Test {
                 .subscribe(new TestSubscriber(context, async));
     }
 
+    @Test
+    public void testSendFile(TestContext context) {
+
+        SfsVertx sfsVertx = new SfsVertxImpl(rule.vertx(), backgroundPool, ioPool);
+
+        final Buffer expectedBuffer = Buffer.buffer("HELLO");
+        final VolumeV1 sfsDataV1 = new VolumeV1(path);
+
+        HttpServer httpServer = rule.vertx().createHttpServer()
+                .requestHandler(httpServerRequest -> {
+                    HttpServerResponse httpServerResponse = httpServerRequest.response();
+                    sfsDataV1.getDataStream(sfsVertx, 0L, Optional.absent(), Optional.absent())
+                            .flatMap(readStreamBlobOptional -> {
+                                ReadStreamBlob readStreamBlob = readStreamBlobOptional.get();
+                                VertxAssert.assertTrue(context, readStreamBlob instanceof SendFileReadStreamBlob);
+                                return ((SendFileReadStreamBlob) readStreamBlob).sendFile(httpServerResponse);
+                            })
+                            .subscribe(aVoid -> {
+                            }, throwable -> context.fail(throwable));
+                });
+
+        Async async = context.async();
+        sfsDataV1.open(sfsVertx)
+                .flatMap(new PutFile<Void>(context, sfsVertx, sfsDataV1, expectedBuffer, 0L))
+                .flatMap(aLong -> {
+                    ObservableFuture<HttpServer> handler = RxHelper.observableFuture();
+                    httpServer.listen(0, "127.0.0.1", handler.toHandler());
+                    return handler;
+                })
+                .flatMap(listening -> {
+                    ObservableFuture<Buffer> handler = RxHelper.observableFuture();
+                    HttpClient httpClient = rule.vertx().createHttpClient();
+                    httpClient.getNow(listening.actualPort(), "127.0.0.1", "/", httpClientResponse -> {
+                        VertxAssert.assertEquals(context, String.valueOf(expectedBuffer.length()), httpClientResponse.getHeader(CONTENT_LENGTH));
+                        httpClientResponse.exceptionHandler(handler::fail);
+                        httpClientResponse.bodyHandler(handler::complete);
+                    });
+                    return handler.doOnTerminate(httpClient::close);
+                })
+                .doOnNext(buffer -> VertxAssert.assertArrayEquals(context, expectedBuffer.getBytes(), buffer.getBytes()))
+                .flatMap(buffer -> {
+                    ObservableFuture<Void> handler = RxHelper.observableFuture();
+                    httpServer.close(handler.toHandler());
+                    return handler;
+                })
+                .flatMap(new Stop(sfsVertx, sfsDataV1))
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testPutChunkedDataStream(TestContext context) {
+
+        SfsVertx sfsVertx = new SfsVertxImpl(rule.vertx(), backgroundPool, ioPool);
+
+        final Buffer expectedBuffer = Buffer.buffer("HELLO");
+        final VolumeV1 sfsDataV1 = new VolumeV1(path);
+
+        Async async = context.async();
+        sfsDataV1.open(sfsVertx)
+                .flatMap(aVoid -> sfsDataV1.putChunkedDataStream(sfsVertx, 1024 * 1024))
+                .flatMap(writeStreamBlob ->
+                        writeStreamBlob.consume(new BufferReadStream(expectedBuffer))
+                                .map(aVoid -> {
+                                    VertxAssert.assertEquals(context, (long) expectedBuffer.length(), writeStreamBlob.getLength());
+                                    return writeStreamBlob.getPosition();
+                                }))
+                .flatMap(new GetFile(context, sfsVertx, sfsDataV1, expectedBuffer))
+                .flatMap(position -> sfsDataV1.fragmentationReport(sfsVertx))
+                .map(jsonObject -> {
+                    // the unused part of the reservation is returned to the end of the file
+                    JsonObject dataFile = jsonObject.getJsonObject("data_file");
+                    VertxAssert.assertEquals(context, (long) VolumeV1.DATA_BLOCK_SIZE, dataFile.getLong("end_of_allocated").longValue());
+                    VertxAssert.assertEquals(context, 0L, dataFile.getLong("hole_count").longValue());
+                    return (Void) null;
+                })
+                .flatMap(new Stop(sfsVertx, sfsDataV1))
+                .subscribe(new TestSubscriber(context, async));
+    }
+
     @Test
     public void testGetDataStreamWithInvalidPosition(TestContext context) {
 
@@ -472,4 +766,18 @@ public class VolumeV1Test {
                 .subscribe(new TestSubscriber(context, async));
     }
 
-}
\ No newline at end of file
+    // copies the files of an open volume as a crash would leave them
+    private Void copyVolume(Path source, Path destination) {
+        try {
+            Files.createDirectories(destination);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(source, Files::isRegularFile)) {
+                for (Path file : files) {
+                    Files.copy(file, destination.resolve(file.getFileName()));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return null;
+    }
+}
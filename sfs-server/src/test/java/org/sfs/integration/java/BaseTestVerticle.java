@@ -42,7 +42,12 @@ public class BaseTestVerticle {
     private static final Logger LOGGER = getLogger(BaseTestVerticle.class);
 
     @Rule
-    public RunBootedTestOnContextRx runTestOnContext = new RunBootedTestOnContextRx();
+    public RunBootedTestOnContextRx runTestOnContext = configure(new RunBootedTestOnContextRx());
+
+    // tests that need a differently configured server override this
+    protected RunBootedTestOnContextRx configure(RunBootedTestOnContextRx runTestOnContext) {
+        return runTestOnContext;
+    }
 
     public VertxContext<Server> vertxContext() {
         return runTestOnContext.getVertxContext();
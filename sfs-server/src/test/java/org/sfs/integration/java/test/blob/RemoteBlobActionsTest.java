@@ -25,6 +25,8 @@ import io.vertx.ext.unit.TestContext;
 import org.junit.Test;
 import org.sfs.Server;
 import org.sfs.VertxContext;
+import org.sfs.filesystem.volume.BlobAddress;
+import org.sfs.filesystem.volume.DigestBlob;
 import org.sfs.filesystem.volume.HeaderBlob;
 import org.sfs.filesystem.volume.ReadStreamBlob;
 import org.sfs.integration.java.BaseTestVerticle;
@@ -42,7 +44,9 @@ import rx.functions.Func1;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 import static com.google.common.base.Optional.absent;
 import static com.google.common.base.Optional.fromNullable;
@@ -360,6 +364,69 @@ public class RemoteBlobActionsTest extends BaseTestVerticle {
 
     }
 
+    @Test
+    public void testBatch(TestContext context) {
+        runOnServerContext(context, () -> {
+            final byte[] data = new byte[256];
+            getCurrentInstance().nextBytesBlocking(data);
+
+            final Path tempFile1 = createTempFile(tmpDir(), "", "");
+            write(tempFile1, data);
+            final Path tempFile2 = createTempFile(tmpDir(), "", "");
+            write(tempFile2, data);
+
+            Nodes nodes = vertxContext().verticle().nodes();
+            RemoteNode remoteNode =
+                    new RemoteNode(
+                            vertxContext(),
+                            nodes.getResponseTimeout(),
+                            Collections.singletonList(nodes.getHostAndPort()));
+
+            List<BlobAddress> blobAddresses = new ArrayList<>();
+
+            return aVoid()
+                    .flatMap(new PutData(vertxContext(), context, remoteNode, tempFile1))
+                    .doOnNext(blob -> blobAddresses.add(new BlobAddress(blob.getVolume(), blob.getPosition())))
+                    .map(new ToVoid<>())
+                    .flatMap(new PutData(vertxContext(), context, remoteNode, tempFile2))
+                    .doOnNext(blob -> blobAddresses.add(new BlobAddress(blob.getVolume(), blob.getPosition())))
+                    // an address that doesn't exist shouldn't fail the others
+                    .doOnNext(blob -> blobAddresses.add(new BlobAddress(blob.getVolume(), Long.MAX_VALUE - 1)))
+                    .flatMap(blob -> remoteNode.acknowledge(blobAddresses))
+                    .map(results -> {
+                        assertEquals(context, 3, results.size());
+                        assertTrue(context, results.get(0).isPresent());
+                        assertTrue(context, results.get(1).isPresent());
+                        assertTrue(context, !results.get(2).isPresent());
+                        return (Void) null;
+                    })
+                    .flatMap(aVoid -> remoteNode.checksum(blobAddresses, SHA512))
+                    .map(results -> {
+                        assertEquals(context, 3, results.size());
+                        byte[] expected = sha512().hashBytes(data).asBytes();
+                        assertArrayEquals(context, expected, results.get(0).get().getDigest(SHA512).get());
+                        assertArrayEquals(context, expected, results.get(1).get().getDigest(SHA512).get());
+                        assertTrue(context, !results.get(2).isPresent());
+                        return (Void) null;
+                    })
+                    .flatMap(aVoid -> remoteNode.delete(blobAddresses))
+                    .map(results -> {
+                        assertEquals(context, 3, results.size());
+                        assertTrue(context, results.get(0).isPresent());
+                        assertTrue(context, results.get(1).isPresent());
+                        assertTrue(context, !results.get(2).isPresent());
+                        return (Void) null;
+                    })
+                    .flatMap(aVoid -> remoteNode.checksum(blobAddresses, SHA512))
+                    .map(results -> {
+                        for (Optional<DigestBlob> result : results) {
+                            assertTrue(context, !result.isPresent());
+                        }
+                        return (Void) null;
+                    });
+        });
+    }
+
     protected static class PutData implements Func1<Void, Observable<HeaderBlob>> {
 
         private final TestContext testContext;
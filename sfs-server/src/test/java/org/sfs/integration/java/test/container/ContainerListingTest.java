@@ -25,6 +25,7 @@ import io.vertx.ext.unit.TestContext;
 import org.junit.Test;
 import org.sfs.integration.java.BaseTestVerticle;
 import org.sfs.integration.java.func.AssertHttpClientResponseStatusCode;
+import org.sfs.integration.java.func.DeleteObject;
 import org.sfs.integration.java.func.GetContainer;
 import org.sfs.integration.java.func.PostAccount;
 import org.sfs.integration.java.func.PutContainer;
@@ -65,6 +66,7 @@ import static org.sfs.integration.java.help.AuthorizationFactory.Producer;
 import static org.sfs.integration.java.help.AuthorizationFactory.httpBasic;
 import static org.sfs.util.SfsHttpQueryParams.DELIMITER;
 import static org.sfs.util.SfsHttpQueryParams.END_MARKER;
+import static org.sfs.util.SfsHttpQueryParams.LIMIT;
 import static org.sfs.util.SfsHttpQueryParams.MARKER;
 import static org.sfs.util.SfsHttpQueryParams.PREFIX;
 import static org.sfs.util.VertxAssert.assertEquals;
@@ -713,6 +715,140 @@ public class ContainerListingTest extends BaseTestVerticle {
     }
 
 
+    // lists with the query params given as name, value pairs and asserts the listed names in order
+    protected Func1<Void, Observable<JsonArray>> assertListing(TestContext context, String[] queryParams, String... expectedNames) {
+        return aVoid -> {
+            GetContainer getContainer = new GetContainer(httpClient(), accountName, containerName, authNonAdmin)
+                    .setMediaTypes(JSON_UTF_8);
+            for (int i = 0; i < queryParams.length; i += 2) {
+                getContainer.setQueryParam(queryParams[i], queryParams[i + 1]);
+            }
+            return just((Void) null)
+                    .flatMap(getContainer)
+                    .map(new HttpClientResponseHeaderLogger())
+                    .map(new AssertHttpClientResponseStatusCode(context, HTTP_OK))
+                    .flatMap(new HttpClientResponseBodyBuffer())
+                    .map(new HttpBodyLogger())
+                    .map(new BufferToJsonArray())
+                    .map(jsonArray -> {
+                        assertEquals(context, expectedNames.length, jsonArray.size());
+                        for (int i = 0; i < expectedNames.length; i++) {
+                            assertEquals(context, expectedNames[i], jsonArray.getJsonObject(i).getString("name"));
+                        }
+                        return jsonArray;
+                    });
+        };
+    }
+
+    protected Observable<Void> putObjects(TestContext context, String... objectNames) {
+        return Observable.from(objectNames)
+                .concatMap(name -> just((Void) null)
+                        .flatMap(new PutObject(httpClient(), accountName, containerName, name, authNonAdmin, name.getBytes(UTF_8)))
+                        .map(new AssertHttpClientResponseStatusCode(context, HTTP_CREATED)))
+                .count()
+                .map(new ToVoid<Integer>())
+                .flatMap(new RefreshIndex(httpClient(), authAdmin));
+    }
+
+    @Test
+    public void testListLimitBoundaries(TestContext context) {
+        runOnServerContext(context, () -> {
+            return prepareContainer(context)
+                    .flatMap(aVoid -> putObjects(context, "a", "b", "c", "d", "e"))
+                    .flatMap(assertListing(context, new String[]{LIMIT, "1"}, "a"))
+                    .map(new ToVoid<>())
+                    .flatMap(assertListing(context, new String[]{LIMIT, "4"}, "a", "b", "c", "d"))
+                    .map(new ToVoid<>())
+                    .flatMap(assertListing(context, new String[]{LIMIT, "5"}, "a", "b", "c", "d", "e"))
+                    .map(new ToVoid<>())
+                    .flatMap(assertListing(context, new String[]{LIMIT, "6"}, "a", "b", "c", "d", "e"))
+                    .map(new ToVoid<>())
+                    .flatMap(assertListing(context, new String[]{LIMIT, "0"}))
+                    .map(new ToVoid<>())
+                    // paging with the last listed name as the marker
+                    .flatMap(assertListing(context, new String[]{LIMIT, "2", MARKER, "b"}, "c", "d"))
+                    .map(new ToVoid<>())
+                    .flatMap(assertListing(context, new String[]{LIMIT, "2", MARKER, "d"}, "e"))
+                    .map(new ToVoid<>())
+                    .flatMap(assertListing(context, new String[]{LIMIT, "2", MARKER, "e"}))
+                    .map(new ToVoid<>());
+        });
+    }
+
+    @Test
+    public void testListMarkersWithDelimiter(TestContext context) {
+        runOnServerContext(context, () -> {
+            return prepareContainer(context)
+                    .flatMap(aVoid -> putObjects(context,
+                            "a/1", "a/2", "b", "c/1", "c/2/1", "d/1", "e"))
+                    .flatMap(assertListing(context, new String[]{DELIMITER, "/"}, "a", "b", "c", "d", "e"))
+                    .map(new ToVoid<>())
+                    // each page rolls up a directory and the next page starts after it
+                    .flatMap(assertListing(context, new String[]{DELIMITER, "/", LIMIT, "1"}, "a"))
+                    .map(new ToVoid<>())
+                    .flatMap(assertListing(context, new String[]{DELIMITER, "/", LIMIT, "1", MARKER, "a"}, "b"))
+                    .map(new ToVoid<>())
+                    .flatMap(assertListing(context, new String[]{DELIMITER, "/", LIMIT, "2", MARKER, "b"}, "c", "d"))
+                    .map(new ToVoid<>())
+                    // the rolled up name sorts before a marker inside its directory
+                    .flatMap(assertListing(context, new String[]{DELIMITER, "/", MARKER, "c/1"}, "d", "e"))
+                    .map(new ToVoid<>())
+                    .flatMap(assertListing(context, new String[]{DELIMITER, "/", END_MARKER, "c"}, "a", "b"))
+                    .map(new ToVoid<>())
+                    .flatMap(assertListing(context, new String[]{DELIMITER, "/", MARKER, "a", END_MARKER, "d"}, "b", "c"))
+                    .map(new ToVoid<>())
+                    .flatMap(assertListing(context, new String[]{PREFIX, "c/", DELIMITER, "/"}, "c/1", "c/2"))
+                    .map(new ToVoid<>())
+                    .flatMap(assertListing(context, new String[]{PREFIX, "c/", DELIMITER, "/", MARKER, "c/1"}, "c/2"))
+                    .map(new ToVoid<>())
+                    .flatMap(assertListing(context, new String[]{PREFIX, "c/", END_MARKER, "c/2/1"}, "c/1"))
+                    .map(new ToVoid<>());
+        });
+    }
+
+    @Test
+    public void testListDirectoryBytes(TestContext context) {
+        runOnServerContext(context, () -> {
+            return prepareContainer(context)
+                    .flatMap(aVoid -> putObjects(context, "dir/a", "dir/bb", "dir/sub/ccc", "file"))
+                    .flatMap(assertListing(context, new String[]{DELIMITER, "/"}, "dir", "file"))
+                    .map(jsonArray -> {
+                        // the objects hold their own names
+                        assertEquals(context, "application/directory", jsonArray.getJsonObject(0).getString("content_type"));
+                        assertEquals(context, (long) ("dir/a".length() + "dir/bb".length() + "dir/sub/ccc".length()), jsonArray.getJsonObject(0).getLong("bytes").longValue());
+                        assertEquals(context, (long) "file".length(), jsonArray.getJsonObject(1).getLong("bytes").longValue());
+                        return (Void) null;
+                    })
+                    // only the newest version of an object counts and deleted objects don't count at all
+                    .flatMap(new PutObject(httpClient(), accountName, containerName, "dir/a", authNonAdmin, "dir/a overwritten".getBytes(UTF_8)))
+                    .map(new AssertHttpClientResponseStatusCode(context, HTTP_CREATED))
+                    .map(new ToVoid<>())
+                    .flatMap(new PutObject(httpClient(), accountName, containerName, "dir/sub/ccc", authNonAdmin, "ccc".getBytes(UTF_8)))
+                    .map(new AssertHttpClientResponseStatusCode(context, HTTP_CREATED))
+                    .map(new ToVoid<>())
+                    .flatMap(new DeleteObject(httpClient(), accountName, containerName, "dir/bb", authNonAdmin))
+                    .map(new AssertHttpClientResponseStatusCode(context, HTTP_NO_CONTENT))
+                    .map(new ToVoid<>())
+                    .flatMap(new RefreshIndex(httpClient(), authAdmin))
+                    .flatMap(assertListing(context, new String[]{DELIMITER, "/"}, "dir", "file"))
+                    .map(jsonArray -> {
+                        assertEquals(context, (long) ("dir/a overwritten".length() + "ccc".length()), jsonArray.getJsonObject(0).getLong("bytes").longValue());
+                        assertEquals(context, (long) "file".length(), jsonArray.getJsonObject(1).getLong("bytes").longValue());
+                        return (Void) null;
+                    })
+                    // a directory with nothing left in it isn't listed
+                    .flatMap(new DeleteObject(httpClient(), accountName, containerName, "dir/a", authNonAdmin))
+                    .map(new AssertHttpClientResponseStatusCode(context, HTTP_NO_CONTENT))
+                    .map(new ToVoid<>())
+                    .flatMap(new DeleteObject(httpClient(), accountName, containerName, "dir/sub/ccc", authNonAdmin))
+                    .map(new AssertHttpClientResponseStatusCode(context, HTTP_NO_CONTENT))
+                    .map(new ToVoid<>())
+                    .flatMap(new RefreshIndex(httpClient(), authAdmin))
+                    .flatMap(assertListing(context, new String[]{DELIMITER, "/"}, "file"))
+                    .map(new ToVoid<>());
+        });
+    }
+
     @Test
     public void testEmptyContainer(TestContext context) {
         runOnServerContext(context, () -> {
@@ -43,6 +43,7 @@ import rx.Scheduler;
 
 import java.io.OutputStream;
 import java.nio.file.Path;
+import java.util.List;
 
 import static com.google.common.base.Optional.absent;
 import static com.google.common.collect.Lists.newArrayList;
@@ -182,4 +183,87 @@ public class ReplicatedWriteTest extends BaseTestVerticle {
 
     }
 
+    @Test
+    public void testChain(TestContext context) {
+        runOnServerContext(context, () -> {
+
+            final byte[] data = new byte[256];
+            getCurrentInstance().nextBytesBlocking(data);
+            int dataSize = 256 * 1024;
+
+            final Path tempFile1 = createTempFile(tmpDir(), "", "");
+
+            int bytesWritten = 0;
+            try (OutputStream out = newOutputStream(tempFile1, WRITE, SYNC)) {
+                while (bytesWritten < dataSize) {
+                    out.write(data);
+                    bytesWritten += data.length;
+                }
+            }
+
+            final long size = size(tempFile1);
+
+            final byte[] md5 = hash(tempFile1.toFile(), md5()).asBytes();
+            final byte[] sha512 = hash(tempFile1.toFile(), sha512()).asBytes();
+
+            OpenOptions openOptions = new OpenOptions();
+            openOptions.setCreate(true)
+                    .setRead(true)
+                    .setWrite(true);
+
+            final AsyncFile asyncFile = vertx().fileSystem().openBlocking(tempFile1.toString(), openOptions);
+
+            Nodes nodes = vertxContext().verticle().nodes();
+            ClusterInfo clusterInfo = vertxContext().verticle().getClusterInfo();
+
+            Scheduler scheduler = RxHelper.scheduler(vertxContext().verticle().getContext());
+
+            final VolumeManager volumeManager = nodes.volumeManager();
+
+            return volumeManager.newVolume(vertxContext())
+                    .map(new ToVoid<>())
+                    .flatMap(new UpdateClusterStats(httpClient(), authAdmin))
+                    .map(new ToVoid<>())
+                    .flatMap(new RefreshIndex(httpClient(), authAdmin))
+                    .flatMap(aVoid -> {
+                        List<String> volumeIds = newArrayList(volumeManager.volumes());
+                        assertEquals(context, 2, volumeIds.size());
+                        String headVolumeId = volumeIds.get(0);
+                        XNode xNode = clusterInfo.getNodeForVolume(vertxContext(), headVolumeId).get();
+                        return xNode.createChainWriteStream(headVolumeId, size, volumeIds.subList(1, 2), MD5, SHA512)
+                                .flatMap(chainWriteStreamBlob -> chainWriteStreamBlob.consume(asyncFile))
+                                .subscribeOn(scheduler)
+                                .doOnNext(digestBlobs -> {
+                                    // the blobs come back in the order of the chain
+                                    assertEquals(context, 2, digestBlobs.size());
+                                    for (int i = 0; i < digestBlobs.size(); i++) {
+                                        DigestBlob blob = digestBlobs.get(i);
+                                        assertEquals(context, volumeIds.get(i), blob.getVolume());
+                                        assertEquals(context, size, blob.getLength());
+                                        assertArrayEquals(context, md5, blob.getDigest(MD5).get());
+                                        assertArrayEquals(context, sha512, blob.getDigest(SHA512).get());
+                                    }
+                                });
+                    })
+                    .flatMap(digestBlobs ->
+                            from(digestBlobs)
+                                    .flatMap(digestBlob -> {
+                                        XNode xNode = clusterInfo.getNodeForVolume(vertxContext(), digestBlob.getVolume()).get();
+                                        return xNode.createReadStream(digestBlob.getVolume(), digestBlob.getPosition(), absent(), absent())
+                                                .map(Optional::get)
+                                                .flatMap(readStreamBlob -> {
+                                                    final DigestEndableWriteStream digestWriteStream = new DigestEndableWriteStream(new NullEndableWriteStream(), SHA512);
+                                                    return readStreamBlob.produce(digestWriteStream)
+                                                            .map(aVoid -> {
+                                                                assertArrayEquals(context, sha512, digestWriteStream.getDigest(SHA512).get());
+                                                                return (Void) null;
+                                                            });
+                                                });
+                                    })
+                                    .count()
+                    )
+                    .map(new ToVoid<>());
+        });
+    }
+
 }
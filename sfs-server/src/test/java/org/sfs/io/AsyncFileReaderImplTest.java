@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.io;
+
+import io.vertx.core.Context;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.logging.Logger;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sfs.RunTestOnContextRx;
+import org.sfs.thread.NamedCapacityFixedThreadPool;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.vertx.core.logging.LoggerFactory.getLogger;
+
+@RunWith(VertxUnitRunner.class)
+public class AsyncFileReaderImplTest {
+
+    private static final Logger LOGGER = getLogger(AsyncFileReaderImplTest.class);
+
+    @Rule
+    public final RunTestOnContextRx rule = new RunTestOnContextRx();
+
+    private ExecutorService ioPool;
+    private Path tmpFile;
+    private AsynchronousFileChannel channel;
+    private byte[] data;
+
+    @Before
+    public void start() throws IOException {
+        ioPool = NamedCapacityFixedThreadPool.newInstance(20, "sfs-io-pool");
+        data = new byte[3 * 1024 * 1024 + 123];
+        new Random(0).nextBytes(data);
+        tmpFile = Files.createTempFile("", "");
+        Files.write(tmpFile, data, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+        channel = AsynchronousFileChannel.open(tmpFile, Collections.singleton(StandardOpenOption.READ), ioPool);
+    }
+
+    @After
+    public void stop() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        if (tmpFile != null) {
+            Files.deleteIfExists(tmpFile);
+        }
+        if (ioPool != null) {
+            ioPool.shutdown();
+        }
+    }
+
+    @Test
+    public void testReadSizeGrows(TestContext context) {
+        Context vertxContext = rule.vertx().getOrCreateContext();
+        Async async = context.async();
+        vertxContext.runOnContext(event -> {
+            int maxBufferSize = 256 * 1024;
+            AsyncFileReaderImpl reader = new AsyncFileReaderImpl(vertxContext, 0, 8192, maxBufferSize, data.length, channel, LOGGER);
+            Buffer received = Buffer.buffer();
+            AtomicInteger largest = new AtomicInteger(0);
+            reader.exceptionHandler(context::fail);
+            reader.endHandler(aVoid -> {
+                context.assertEquals(maxBufferSize, largest.get());
+                context.assertTrue(Arrays.equals(data, received.getBytes()));
+                async.complete();
+            });
+            reader.handler(buffer -> {
+                context.assertTrue(buffer.length() <= maxBufferSize);
+                largest.set(Math.max(largest.get(), buffer.length()));
+                received.appendBuffer(buffer);
+            });
+        });
+    }
+
+    @Test
+    public void testPauseAndResume(TestContext context) {
+        Context vertxContext = rule.vertx().getOrCreateContext();
+        Async async = context.async();
+        vertxContext.runOnContext(event -> {
+            AsyncFileReaderImpl reader = new AsyncFileReaderImpl(vertxContext, 0, 8192, data.length, channel, LOGGER);
+            Buffer received = Buffer.buffer();
+            AtomicInteger count = new AtomicInteger(0);
+            reader.exceptionHandler(context::fail);
+            reader.endHandler(aVoid -> {
+                context.assertTrue(Arrays.equals(data, received.getBytes()));
+                async.complete();
+            });
+            reader.handler(buffer -> {
+                received.appendBuffer(buffer);
+                if (count.incrementAndGet() % 3 == 0) {
+                    reader.pause();
+                    rule.vertx().setTimer(1, id -> reader.resume());
+                }
+            });
+        });
+    }
+
+    @Test
+    public void testLengthPastEndOfFile(TestContext context) {
+        Context vertxContext = rule.vertx().getOrCreateContext();
+        Async async = context.async();
+        vertxContext.runOnContext(event -> {
+            int offset = data.length - 100;
+            AsyncFileReaderImpl reader = new AsyncFileReaderImpl(vertxContext, offset, 8192, 1000, channel, LOGGER);
+            Buffer received = Buffer.buffer();
+            reader.exceptionHandler(context::fail);
+            reader.endHandler(aVoid -> {
+                context.assertTrue(Arrays.equals(Arrays.copyOfRange(data, offset, data.length), received.getBytes()));
+                context.assertEquals((long) data.length, reader.readPosition());
+                async.complete();
+            });
+            reader.handler(received::appendBuffer);
+        });
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.io;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.sfs.erasure.ReedSolomon;
+import org.sfs.vo.ErasureCoding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ErasureEncodeWriteStreamTest {
+
+    @Test
+    public void testStripesAndPadding() {
+        ErasureCoding erasureCoding = new ErasureCoding(3, 2, 4);
+        // two full stripes and two bytes of a third
+        byte[] data = new byte[26];
+        new Random(1).nextBytes(data);
+
+        List<BufferWriteEndableWriteStream> fragments = encode(erasureCoding, data, 5);
+
+        int cellSize = erasureCoding.getCellSize();
+        int stripeSize = (int) erasureCoding.getStripeSize();
+        ReedSolomon reedSolomon = new ReedSolomon(3, 2);
+        for (BufferWriteEndableWriteStream fragment : fragments) {
+            Assert.assertEquals(3 * cellSize, fragment.toBuffer().length());
+        }
+        byte[] padded = Arrays.copyOf(data, 3 * stripeSize);
+        for (int stripe = 0; stripe < 3; stripe++) {
+            byte[][] shards = new byte[5][];
+            for (int i = 0; i < 5; i++) {
+                shards[i] = fragments.get(i).toBuffer().getBytes(stripe * cellSize, (stripe + 1) * cellSize);
+            }
+            // cell i of a stripe is the i-th data cell and the last stripe is zero padded
+            for (int i = 0; i < 3; i++) {
+                int start = stripe * stripeSize + i * cellSize;
+                Assert.assertArrayEquals("stripe " + stripe + " cell " + i, Arrays.copyOfRange(padded, start, start + cellSize), shards[i]);
+            }
+            byte[][] expected = new byte[5][];
+            for (int i = 0; i < 5; i++) {
+                expected[i] = i < 3 ? shards[i] : new byte[cellSize];
+            }
+            reedSolomon.encodeParity(expected, 0, cellSize);
+            Assert.assertArrayEquals("stripe " + stripe + " parity 0", expected[3], shards[3]);
+            Assert.assertArrayEquals("stripe " + stripe + " parity 1", expected[4], shards[4]);
+        }
+    }
+
+    @Test
+    public void testFullStripesAreNotPadded() {
+        ErasureCoding erasureCoding = new ErasureCoding(3, 2, 4);
+        byte[] data = new byte[24];
+        new Random(2).nextBytes(data);
+
+        List<BufferWriteEndableWriteStream> fragments = encode(erasureCoding, data, 24);
+
+        for (BufferWriteEndableWriteStream fragment : fragments) {
+            Assert.assertEquals(erasureCoding.getFragmentLength(data.length), fragment.toBuffer().length());
+            Assert.assertEquals(8, fragment.toBuffer().length());
+        }
+        Assert.assertArrayEquals(Arrays.copyOfRange(data, 12, 16), fragments.get(0).toBuffer().getBytes(4, 8));
+    }
+
+    @Test
+    public void testEmptyStreamWritesOneZeroStripe() {
+        ErasureCoding erasureCoding = new ErasureCoding(3, 2, 4);
+
+        List<BufferWriteEndableWriteStream> fragments = encode(erasureCoding, new byte[0], 1);
+
+        for (BufferWriteEndableWriteStream fragment : fragments) {
+            Assert.assertArrayEquals(new byte[4], fragment.toBuffer().getBytes());
+        }
+    }
+
+    @Test
+    public void testSameFragmentsForAnyWriteSize() {
+        ErasureCoding erasureCoding = new ErasureCoding(4, 2, 16);
+        byte[] data = new byte[1000];
+        new Random(3).nextBytes(data);
+
+        List<BufferWriteEndableWriteStream> expected = encode(erasureCoding, data, data.length);
+        for (int writeSize : new int[]{1, 7, 64, 65, 999}) {
+            List<BufferWriteEndableWriteStream> actual = encode(erasureCoding, data, writeSize);
+            for (int i = 0; i < erasureCoding.getNumberOfFragments(); i++) {
+                Assert.assertEquals("write size " + writeSize + " fragment " + i, expected.get(i).toBuffer(), actual.get(i).toBuffer());
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNeedsAWriteStreamPerFragment() {
+        ErasureCoding erasureCoding = new ErasureCoding(3, 2, 4);
+        List<BufferEndableWriteStream> fragmentWriteStreams = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            fragmentWriteStreams.add(new BufferWriteEndableWriteStream());
+        }
+        new ErasureEncodeWriteStream(erasureCoding, fragmentWriteStreams);
+    }
+
+    protected List<BufferWriteEndableWriteStream> encode(ErasureCoding erasureCoding, byte[] data, int writeSize) {
+        List<BufferWriteEndableWriteStream> fragments = new ArrayList<>();
+        List<BufferEndableWriteStream> fragmentWriteStreams = new ArrayList<>();
+        for (int i = 0; i < erasureCoding.getNumberOfFragments(); i++) {
+            BufferWriteEndableWriteStream fragment = new BufferWriteEndableWriteStream();
+            fragments.add(fragment);
+            fragmentWriteStreams.add(fragment);
+        }
+        AtomicBoolean ended = new AtomicBoolean(false);
+        ErasureEncodeWriteStream encoder = new ErasureEncodeWriteStream(erasureCoding, fragmentWriteStreams);
+        encoder.endHandler(event -> ended.set(true));
+        for (int offset = 0; offset < data.length; offset += writeSize) {
+            encoder.write(Buffer.buffer(Arrays.copyOfRange(data, offset, Math.min(data.length, offset + writeSize))));
+        }
+        encoder.end();
+        Assert.assertTrue(ended.get());
+        return fragments;
+    }
+}
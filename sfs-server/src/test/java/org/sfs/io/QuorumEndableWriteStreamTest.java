@@ -0,0 +1,181 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.io;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class QuorumEndableWriteStreamTest {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    @Test
+    public void testSlowWriteStreamDoesNotThrottle() {
+        List<PipedReadStream> readStreams = new ArrayList<>();
+        List<Buffer> received = new ArrayList<>();
+        QuorumEndableWriteStream writeStream = newWriteStream(3, 2, 1024 * 1024, readStreams, received);
+        // the last write stream stops reading
+        readStreams.get(2).pause();
+
+        AtomicBoolean ended = new AtomicBoolean(false);
+        AtomicInteger readStreamsEnded = new AtomicInteger(0);
+        for (PipedReadStream readStream : readStreams) {
+            readStream.endHandler(event -> readStreamsEnded.incrementAndGet());
+        }
+
+        int numberOfChunks = 32;
+        for (int i = 0; i < numberOfChunks; i++) {
+            writeStream.write(chunk(i));
+            Assert.assertFalse(writeStream.writeQueueFull());
+        }
+        writeStream.endHandler(event -> ended.set(true));
+        writeStream.end();
+
+        Assert.assertTrue(ended.get());
+        Assert.assertFalse(writeStream.isAbandoned(2));
+        Assert.assertEquals(2, readStreamsEnded.get());
+        Assert.assertEquals(numberOfChunks * CHUNK_SIZE, received.get(0).length());
+        Assert.assertEquals(numberOfChunks * CHUNK_SIZE, received.get(1).length());
+
+        // the straggler catches up from the buffer once it reads again
+        readStreams.get(2).resume();
+        Assert.assertEquals(3, readStreamsEnded.get());
+        Assert.assertEquals(received.get(0), received.get(2));
+    }
+
+    @Test
+    public void testLaggingWriteStreamIsAbandoned() {
+        List<PipedReadStream> readStreams = new ArrayList<>();
+        List<Buffer> received = new ArrayList<>();
+        QuorumEndableWriteStream writeStream = newWriteStream(3, 2, 4 * CHUNK_SIZE, readStreams, received);
+        readStreams.get(1).pause();
+
+        List<Integer> abandoned = new ArrayList<>();
+        writeStream.abandonHandler(abandoned::add);
+
+        for (int i = 0; i < 32; i++) {
+            writeStream.write(chunk(i));
+            Assert.assertFalse(writeStream.writeQueueFull());
+        }
+
+        Assert.assertTrue(writeStream.isAbandoned(1));
+        Assert.assertFalse(writeStream.isAbandoned(0));
+        Assert.assertFalse(writeStream.isAbandoned(2));
+        Assert.assertEquals(1, abandoned.size());
+        Assert.assertEquals(1, (int) abandoned.get(0));
+    }
+
+    @Test
+    public void testFullWhenQuorumCantKeepUp() {
+        List<PipedReadStream> readStreams = new ArrayList<>();
+        List<Buffer> received = new ArrayList<>();
+        QuorumEndableWriteStream writeStream = newWriteStream(3, 2, 1024 * 1024, readStreams, received);
+        readStreams.get(0).pause();
+        readStreams.get(1).pause();
+
+        while (!writeStream.writeQueueFull()) {
+            writeStream.write(chunk(0));
+        }
+
+        AtomicBoolean drained = new AtomicBoolean(false);
+        writeStream.drainHandler(event -> drained.set(true));
+        Assert.assertFalse(drained.get());
+
+        readStreams.get(0).resume();
+        Assert.assertTrue(drained.get());
+        Assert.assertFalse(writeStream.writeQueueFull());
+    }
+
+    @Test
+    public void testFailsWhenLessThanQuorumRemain() {
+        List<PipedReadStream> readStreams = new ArrayList<>();
+        List<Buffer> received = new ArrayList<>();
+        QuorumEndableWriteStream writeStream = newWriteStream(3, 2, 1024 * 1024, readStreams, received);
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        writeStream.exceptionHandler(error::set);
+
+        writeStream.abandon(0);
+        Assert.assertNull(error.get());
+
+        writeStream.abandon(2);
+        Assert.assertNotNull(error.get());
+    }
+
+    @Test
+    public void testAbandonedPipeFailsInsteadOfEnding() {
+        List<PipedReadStream> readStreams = new ArrayList<>();
+        List<PipedEndableWriteStream> pipes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            PipedReadStream readStream = new PipedReadStream();
+            pipes.add(new PipedEndableWriteStream(readStream));
+            readStream.handler(buffer -> {
+            });
+            readStreams.add(readStream);
+        }
+        QuorumEndableWriteStream writeStream = new QuorumEndableWriteStream(new ArrayList<>(pipes), 2, 4 * CHUNK_SIZE);
+        writeStream.abandonHandler(index -> pipes.get(index).fail(new IOException("abandoned")));
+        readStreams.get(1).pause();
+
+        AtomicInteger readStreamsEnded = new AtomicInteger(0);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        for (PipedReadStream readStream : readStreams) {
+            readStream.endHandler(event -> readStreamsEnded.incrementAndGet());
+        }
+        readStreams.get(1).exceptionHandler(error::set);
+
+        for (int i = 0; i < 32; i++) {
+            writeStream.write(chunk(i));
+        }
+        writeStream.end();
+
+        Assert.assertTrue(writeStream.isAbandoned(1));
+        Assert.assertNotNull(error.get());
+        // resuming the abandoned read stream doesn't end it
+        readStreams.get(1).resume();
+        Assert.assertEquals(2, readStreamsEnded.get());
+    }
+
+    private QuorumEndableWriteStream newWriteStream(int size, int quorum, long maxLagBytes, List<PipedReadStream> readStreams, List<Buffer> received) {
+        List<BufferEndableWriteStream> writeStreams = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            PipedReadStream readStream = new PipedReadStream();
+            writeStreams.add(new PipedEndableWriteStream(readStream));
+            Buffer buffer = Buffer.buffer();
+            readStream.handler(buffer::appendBuffer);
+            readStreams.add(readStream);
+            received.add(buffer);
+        }
+        return new QuorumEndableWriteStream(writeStreams, quorum, maxLagBytes);
+    }
+
+    private Buffer chunk(int value) {
+        byte[] data = new byte[CHUNK_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (value + i);
+        }
+        return Buffer.buffer(data);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.sfs.vo.TransientServiceDef;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MembershipTest {
+
+    private static final long FAILURE_TIMEOUT = 10000;
+    private static final long RECENT_WINDOW = 3000;
+
+    @Test
+    public void testJoinThroughSeed() {
+        long now = 1000;
+        Membership a = newMembership("a", now);
+        Membership b = newMembership("b", now);
+        Membership c = newMembership("c", now);
+
+        // a and c only know b
+        a.mergeReply(b.merge(a.newMessage(now, RECENT_WINDOW), now), now);
+        c.mergeReply(b.merge(c.newMessage(now, RECENT_WINDOW), now), now);
+        Assert.assertEquals(ids("a", "b"), ids(a.getLiveNodes(now)));
+        Assert.assertEquals(ids("a", "b", "c"), ids(b.getLiveNodes(now)));
+        Assert.assertEquals(ids("a", "b", "c"), ids(c.getLiveNodes(now)));
+
+        // a learns c in the reply even though c's stats are no longer recent
+        now += RECENT_WINDOW * 2;
+        a.mergeReply(c.merge(a.newMessage(now, RECENT_WINDOW), now), now);
+        Assert.assertEquals(ids("a", "b", "c"), ids(a.getLiveNodes(now)));
+    }
+
+    @Test
+    public void testFailureDetection() {
+        long now = 1000;
+        Membership a = newMembership("a", now);
+        Membership b = newMembership("b", now);
+        Membership c = newMembership("c", now);
+        a.mergeReply(b.merge(a.newMessage(now, RECENT_WINDOW), now), now);
+        c.mergeReply(b.merge(c.newMessage(now, RECENT_WINDOW), now), now);
+        a.mergeReply(c.merge(a.newMessage(now, RECENT_WINDOW), now), now);
+
+        // b stops heartbeating and a and c keep gossiping
+        for (int i = 0; i < 12; i++) {
+            now += 1000;
+            a.updateSelf(serviceDef("a"), now);
+            c.updateSelf(serviceDef("c"), now);
+            a.mergeReply(c.merge(a.newMessage(now, RECENT_WINDOW), now), now);
+        }
+        Assert.assertEquals(ids("a", "c"), ids(a.getLiveNodes(now)));
+        Assert.assertEquals(ids("a", "c"), ids(c.getLiveNodes(now)));
+
+        // a stale message about b doesn't bring it back
+        JsonObject stale = b.newMessage(1000, RECENT_WINDOW);
+        a.merge(stale, now);
+        Assert.assertEquals(ids("a", "c"), ids(a.getLiveNodes(now)));
+
+        // and c is found to be down once it stops heartbeating too
+        now += FAILURE_TIMEOUT + 1;
+        a.updateSelf(serviceDef("a"), now);
+        a.merge(c.newMessage(now, RECENT_WINDOW), now);
+        Assert.assertEquals(ids("a"), ids(a.getLiveNodes(now)));
+    }
+
+    @Test
+    public void testVersionOnlyChangesWithStats() {
+        long now = 1000;
+        Membership a = newMembership("a", now);
+        Membership b = newMembership("b", now);
+        a.mergeReply(b.merge(a.newMessage(now, RECENT_WINDOW), now), now);
+        long version = a.getLiveVersions(now).get("a");
+
+        // memory changes all the time and isn't gossiped as a change
+        now += RECENT_WINDOW * 2;
+        a.updateSelf(serviceDef("a").setFreeMemory(12345L), now);
+        Assert.assertEquals(version, (long) a.getLiveVersions(now).get("a"));
+        JsonObject message = a.newMessage(now, RECENT_WINDOW);
+        for (Object o : message.getJsonArray("members")) {
+            Assert.assertNull(((JsonObject) o).getJsonObject("node"));
+        }
+
+        a.updateSelf(serviceDef("a").setDocumentCount(10L), now);
+        Assert.assertEquals(version + 1, (long) a.getLiveVersions(now).get("a"));
+        b.merge(a.newMessage(now, RECENT_WINDOW), now);
+        Assert.assertEquals(version + 1, (long) b.getLiveVersions(now).get("a"));
+        Assert.assertEquals(10L, (long) find(b.getLiveNodes(now), "a").getDocumentCount().get());
+    }
+
+    @Test
+    public void testRestartedNodeReplacesOldEntry() {
+        long now = 1000;
+        Membership a = newMembership("a", now);
+        Membership b = newMembership("b", now);
+        a.mergeReply(b.merge(a.newMessage(now, RECENT_WINDOW), now), now);
+
+        // b restarts and its counters start over from the time it started
+        now += 5000;
+        b = new Membership("b", FAILURE_TIMEOUT);
+        b.updateSelf(serviceDef("b").setRack("rack2"), now);
+        a.updateSelf(serviceDef("a"), now);
+        b.mergeReply(a.merge(b.newMessage(now, RECENT_WINDOW), now), now);
+        Assert.assertEquals("rack2", find(a.getLiveNodes(now), "b").getRack().get());
+        Assert.assertEquals(ids("a", "b"), ids(b.getLiveNodes(now)));
+    }
+
+    private Membership newMembership(String id, long now) {
+        Membership membership = new Membership(id, FAILURE_TIMEOUT);
+        membership.updateSelf(serviceDef(id), now);
+        return membership;
+    }
+
+    private TransientServiceDef serviceDef(String id) {
+        return new TransientServiceDef(id)
+                .setDataNode(true)
+                .setMaster("a".equals(id))
+                .setDocumentCount(0L);
+    }
+
+    private TransientServiceDef find(List<TransientServiceDef> serviceDefs, String id) {
+        for (TransientServiceDef serviceDef : serviceDefs) {
+            if (id.equals(serviceDef.getId())) {
+                return serviceDef;
+            }
+        }
+        throw new AssertionError(id + " not found");
+    }
+
+    private List<String> ids(String... ids) {
+        List<String> list = new ArrayList<>();
+        for (String id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    private List<String> ids(List<TransientServiceDef> serviceDefs) {
+        List<String> list = new ArrayList<>();
+        for (TransientServiceDef serviceDef : serviceDefs) {
+            list.add(serviceDef.getId());
+        }
+        return list;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes;
+
+import com.google.common.base.Optional;
+import com.google.common.net.HostAndPort;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.Http2Settings;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.ext.unit.TestContext;
+import org.junit.Test;
+import org.sfs.RunBootedTestOnContextRx;
+import org.sfs.integration.java.BaseTestVerticle;
+import org.sfs.io.BufferReadStream;
+import org.sfs.io.BufferWriteEndableWriteStream;
+import org.sfs.rx.HttpClientResponseBodyBuffer;
+import org.sfs.rx.ObservableFuture;
+import org.sfs.rx.RxHelper;
+import rx.Observable;
+
+import java.util.Collections;
+import java.util.Random;
+
+import static com.google.common.collect.Iterables.getFirst;
+import static com.google.common.io.BaseEncoding.base64;
+import static io.vertx.core.http.HttpVersion.HTTP_2;
+import static org.sfs.util.MessageDigestFactory.SHA512;
+import static org.sfs.util.SfsHttpHeaders.X_SFS_REMOTE_NODE_TOKEN;
+import static org.sfs.util.VertxAssert.assertArrayEquals;
+import static org.sfs.util.VertxAssert.assertEquals;
+import static org.sfs.util.VertxAssert.assertTrue;
+
+public class RemoteNodeHttp2Test extends BaseTestVerticle {
+
+    private static final int STREAM_WINDOW_SIZE = 2 * 1024 * 1024;
+
+    @Override
+    protected RunBootedTestOnContextRx configure(RunBootedTestOnContextRx runTestOnContext) {
+        return runTestOnContext
+                .putConfig("remotenode.http2", true)
+                .putConfig("http2.streamwindowsize", STREAM_WINDOW_SIZE);
+    }
+
+    @Test
+    public void testBlobRoundTrip(TestContext context) {
+        runOnServerContext(context, () -> {
+            Nodes nodes = vertxContext().verticle().nodes();
+            RemoteNode remoteNode = new RemoteNode(vertxContext(), nodes.getResponseTimeout(), Collections.singletonList(nodes.getHostAndPort()));
+            String volumeId = getFirst(nodes.volumeManager().volumes(), null);
+            // larger than the stream window so that flow control is exercised
+            byte[] data = new byte[3 * STREAM_WINDOW_SIZE];
+            new Random(0).nextBytes(data);
+
+            return remoteNode.createWriteStream(volumeId, data.length, SHA512)
+                    .flatMap(nodeWriteStreamBlob -> nodeWriteStreamBlob.consume(new BufferReadStream(Buffer.buffer(data))))
+                    .flatMap(digestBlob -> remoteNode.acknowledge(digestBlob.getVolume(), digestBlob.getPosition()))
+                    .map(Optional::get)
+                    .flatMap(headerBlob -> remoteNode.createReadStream(headerBlob.getVolume(), headerBlob.getPosition(), Optional.absent(), Optional.absent()))
+                    .map(Optional::get)
+                    .flatMap(readStreamBlob -> {
+                        BufferWriteEndableWriteStream bufferWriteStream = new BufferWriteEndableWriteStream();
+                        return readStreamBlob.produce(bufferWriteStream)
+                                .map(aVoid -> {
+                                    assertArrayEquals(context, data, bufferWriteStream.toBuffer().getBytes());
+                                    return (Void) null;
+                                });
+                    });
+        });
+    }
+
+    @Test
+    public void testOnlyRemoteNodeConnectionsAreWidened(TestContext context) {
+        runOnServerContext(context, () -> {
+            String token = base64().encode(vertxContext().verticle().getRemoteNodeSecret());
+            HttpClient remoteNodeClient = createH2cClient();
+            HttpClient publicClient = createH2cClient();
+
+            // the first request on a connection is the http/1.1 upgrade request
+            return get(remoteNodeClient, "/_internal_node/stats", token)
+                    .flatMap(httpClientResponse -> get(remoteNodeClient, "/_internal_node/stats", token))
+                    .map(httpClientResponse -> {
+                        assertTrue(context, httpClientResponse.version() == HTTP_2);
+                        assertEquals(context, STREAM_WINDOW_SIZE, httpClientResponse.request().connection().remoteSettings().getInitialWindowSize());
+                        return (Void) null;
+                    })
+                    .flatMap(aVoid -> get(publicClient, "/", null))
+                    .flatMap(httpClientResponse -> get(publicClient, "/", null))
+                    .map(httpClientResponse -> {
+                        assertTrue(context, httpClientResponse.version() == HTTP_2);
+                        assertEquals(context, Http2Settings.DEFAULT_INITIAL_WINDOW_SIZE, httpClientResponse.request().connection().remoteSettings().getInitialWindowSize());
+                        return (Void) null;
+                    })
+                    .doOnTerminate(() -> {
+                        remoteNodeClient.close();
+                        publicClient.close();
+                    });
+        });
+    }
+
+    protected HttpClient createH2cClient() {
+        return vertx().createHttpClient(
+                new HttpClientOptions()
+                        .setProtocolVersion(HTTP_2)
+                        .setHttp2ClearTextUpgrade(true)
+                        .setHttp2MaxPoolSize(1));
+    }
+
+    protected Observable<HttpClientResponse> get(HttpClient httpClient, String uri, String token) {
+        HostAndPort hostAndPort = vertxContext().verticle().nodes().getHostAndPort();
+        ObservableFuture<HttpClientResponse> handler = RxHelper.observableFuture();
+        HttpClientRequest httpClientRequest =
+                httpClient.get(hostAndPort.getPort(), hostAndPort.getHostText(), uri, httpClientResponse -> {
+                    httpClientResponse.pause();
+                    handler.complete(httpClientResponse);
+                })
+                        .exceptionHandler(handler::fail);
+        if (token != null) {
+            httpClientRequest.putHeader(X_SFS_REMOTE_NODE_TOKEN, token);
+        }
+        httpClientRequest.end();
+        return handler.flatMap(httpClientResponse ->
+                new HttpClientResponseBodyBuffer().call(httpClientResponse)
+                        .map(buffer -> httpClientResponse));
+    }
+}
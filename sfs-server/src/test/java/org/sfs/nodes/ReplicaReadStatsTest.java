@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReplicaReadStatsTest {
+
+    @Test
+    public void testExpectedLatency() {
+        ReplicaReadStats stats = new ReplicaReadStats(95, 10, 1000);
+        Assert.assertEquals(0, stats.expectedLatency("unknown"), 0);
+
+        for (int i = 0; i < 10; i++) {
+            stats.record("fast", 5, false);
+            stats.record("slow", 50, false);
+        }
+        Assert.assertTrue(stats.expectedLatency("fast") < stats.expectedLatency("slow"));
+
+        // a node that fails is penalized even though it answers quickly
+        stats.record("fast", 1, true);
+        stats.record("fast", 1, true);
+        Assert.assertTrue(stats.expectedLatency("fast") > stats.expectedLatency("slow"));
+    }
+
+    @Test
+    public void testHedgeDelay() {
+        ReplicaReadStats disabled = new ReplicaReadStats(0, 10, 1000);
+        for (int i = 0; i < 100; i++) {
+            disabled.record("node", 20, false);
+        }
+        Assert.assertEquals(-1, disabled.hedgeDelay());
+
+        ReplicaReadStats stats = new ReplicaReadStats(90, 10, 1000);
+        // not enough samples yet
+        stats.record("node", 20, false);
+        Assert.assertEquals(-1, stats.hedgeDelay());
+
+        for (int i = 1; i <= 100; i++) {
+            stats.record("node", i, false);
+        }
+        long hedgeDelay = stats.hedgeDelay();
+        Assert.assertTrue(hedgeDelay >= 85 && hedgeDelay <= 95);
+
+        // never less than the minimum delay
+        ReplicaReadStats fast = new ReplicaReadStats(90, 10, 1000);
+        for (int i = 0; i < 100; i++) {
+            fast.record("node", 1, false);
+        }
+        Assert.assertEquals(10, fast.hedgeDelay());
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import org.sfs.Server;
+import org.sfs.VertxContext;
+import org.sfs.filesystem.volume.DigestBlob;
+import org.sfs.io.BufferWriteEndableWriteStream;
+import org.sfs.rx.Defer;
+import org.sfs.util.MessageDigestFactory;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.google.common.collect.Iterables.addAll;
+import static org.sfs.io.AsyncIO.pump;
+
+// Writes to in memory volumes instead of the started volumes of the cluster
+public class TestVolumeReplicaGroup extends VolumeReplicaGroup {
+
+    private final List<TestVolume> volumes;
+    private final Set<String> excludedVolumeIds = new HashSet<>();
+
+    public TestVolumeReplicaGroup(VertxContext<Server> vertxContext, int numberOfObjectCopies, List<TestVolume> volumes) {
+        super(vertxContext, numberOfObjectCopies);
+        this.volumes = volumes;
+    }
+
+    @Override
+    public VolumeReplicaGroup setExcludeVolumeIds(Iterable<String> volumeIds) {
+        excludedVolumeIds.clear();
+        addAll(excludedVolumeIds, volumeIds);
+        return super.setExcludeVolumeIds(volumeIds);
+    }
+
+    @Override
+    public Observable<List<ConnectedVolume>> getReplicaVolumesForWrite(List<ConnectedVolume> toIgnore, long requiredSpace, int numberOfReplicas, boolean allowSameNode, MessageDigestFactory... messageDigestFactories) {
+        List<ConnectedVolume> connectedVolumes = new ArrayList<>();
+        for (TestVolume volume : volumes) {
+            if (connectedVolumes.size() < numberOfReplicas && !excludedVolumeIds.contains(volume.getVolumeId())) {
+                connectedVolumes.add(
+                        new ConnectedVolume(volume.getVolumeId(), null, volume.getVolumeId())
+                                .setNodeWriteStreamBlob(volume.nodeWriteStreamBlob(messageDigestFactories)));
+            }
+        }
+        return Defer.just(connectedVolumes);
+    }
+
+    public static class TestVolume {
+
+        private final String volumeId;
+        private final BufferWriteEndableWriteStream received = new BufferWriteEndableWriteStream();
+        private boolean corrupt = false;
+        private boolean truncate = false;
+
+        public TestVolume(String volumeId) {
+            this.volumeId = volumeId;
+        }
+
+        public String getVolumeId() {
+            return volumeId;
+        }
+
+        public Buffer getReceived() {
+            return received.toBuffer();
+        }
+
+        // store something other than what was sent
+        public TestVolume setCorrupt(boolean corrupt) {
+            this.corrupt = corrupt;
+            return this;
+        }
+
+        // store one byte less than what was sent
+        public TestVolume setTruncate(boolean truncate) {
+            this.truncate = truncate;
+            return this;
+        }
+
+        protected NodeWriteStreamBlob nodeWriteStreamBlob(MessageDigestFactory... messageDigestFactories) {
+            return new NodeWriteStreamBlob(null) {
+                @Override
+                public Observable<DigestBlob> consume(ReadStream<Buffer> src) {
+                    return pump(src, received)
+                            .map(aVoid -> {
+                                byte[] stored = received.toBuffer().getBytes();
+                                if (truncate) {
+                                    stored = Buffer.buffer(stored).getBytes(0, stored.length - 1);
+                                }
+                                if (corrupt) {
+                                    stored[0] ^= 1;
+                                }
+                                DigestBlob digestBlob = new DigestBlob(volumeId, 0, stored.length);
+                                for (MessageDigestFactory messageDigestFactory : messageDigestFactories) {
+                                    digestBlob.withDigest(messageDigestFactory, messageDigestFactory.instance().digest(stored));
+                                }
+                                return digestBlob;
+                            });
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes;
+
+import com.google.common.base.Ticker;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.sfs.nodes.VolumePlacement.MOST_FREE_SPACE;
+import static org.sfs.nodes.VolumePlacement.POWER_OF_TWO_CHOICES;
+
+public class VolumePlacementTest {
+
+    @Test
+    public void testMostFreeSpace() {
+        List<VolumeCandidate> candidates = new ArrayList<>();
+        candidates.add(new VolumeCandidate("v0", "n0", null, 10, 0, 0, 0));
+        candidates.add(new VolumeCandidate("v1", "n1", null, 30, 0, 0, 0));
+        candidates.add(new VolumeCandidate("v2", "n2", null, 20, 0, 0, 0));
+        List<VolumeCandidate> ordered = MOST_FREE_SPACE.order(candidates, 2, new Random(0));
+        assertEquals("v1", ordered.get(0).getVolumeId());
+        assertEquals("v2", ordered.get(1).getVolumeId());
+        assertEquals("v0", ordered.get(2).getVolumeId());
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesAvoidsLoadedVolume() {
+        // the emptiest volume already has writes in flight
+        List<VolumeCandidate> candidates = new ArrayList<>();
+        candidates.add(new VolumeCandidate("v0", "n0", null, 1100, 0, 20, 0));
+        candidates.add(new VolumeCandidate("v1", "n1", null, 1000, 0, 0, 0));
+        Random random = new Random(0);
+        for (int i = 0; i < 100; i++) {
+            assertEquals("v1", POWER_OF_TWO_CHOICES.order(candidates, 1, random).get(0).getVolumeId());
+        }
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesSpreadsWrites() {
+        List<VolumeCandidate> candidates = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            candidates.add(new VolumeCandidate("v" + i, "n" + i, null, 1000 + i, 0, 0, 0));
+        }
+        Set<String> firstChoices = new HashSet<>();
+        Random random = new Random(0);
+        for (int i = 0; i < 100; i++) {
+            firstChoices.add(POWER_OF_TWO_CHOICES.order(candidates, 1, random).get(0).getVolumeId());
+        }
+        assertTrue(firstChoices.size() > 1);
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesSpreadsCopiesAcrossRacks() {
+        List<VolumeCandidate> candidates = new ArrayList<>();
+        // two nodes with two volumes each in rack a and one node in rack b
+        candidates.add(new VolumeCandidate("v0", "n0", "a", 1000, 0, 0, 0));
+        candidates.add(new VolumeCandidate("v1", "n0", "a", 1000, 0, 0, 0));
+        candidates.add(new VolumeCandidate("v2", "n1", "a", 1000, 0, 0, 0));
+        candidates.add(new VolumeCandidate("v3", "n1", "a", 1000, 0, 0, 0));
+        candidates.add(new VolumeCandidate("v4", "n2", "b", 10, 0, 0, 0));
+        Random random = new Random(0);
+        for (int i = 0; i < 100; i++) {
+            List<VolumeCandidate> ordered = POWER_OF_TWO_CHOICES.order(candidates, 3, random);
+            assertEquals(candidates.size(), ordered.size());
+            Set<String> racks = new HashSet<>();
+            Set<String> nodes = new HashSet<>();
+            for (VolumeCandidate candidate : ordered.subList(0, 3)) {
+                racks.add(candidate.getRack());
+                nodes.add(candidate.getNodeId());
+            }
+            assertEquals(2, racks.size());
+            assertEquals(3, nodes.size());
+        }
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesRecoversAfterFailure() {
+        AtomicLong now = new AtomicLong(0);
+        VolumeWriteStats stats = new VolumeWriteStats(30000, new Ticker() {
+            @Override
+            public long read() {
+                return now.get();
+            }
+        });
+        stats.begin("v0");
+        stats.end("v0", 30000, 0, true);
+        // v1 is busy but still preferred to a volume whose last write failed
+        stats.begin("v1");
+        // the response timeout is capped so one failure doesn't outweigh everything else
+        assertTrue(stats.latency("v0") <= 100);
+
+        Random random = new Random(0);
+        for (int i = 0; i < 100; i++) {
+            assertEquals("v1", POWER_OF_TWO_CHOICES.order(candidates(stats), 1, random).get(0).getVolumeId());
+        }
+
+        // nothing was written to v0 since the failure so it's preferred again
+        now.addAndGet(MINUTES.toNanos(2));
+        assertTrue(stats.latency("v0") < 0.1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals("v0", POWER_OF_TWO_CHOICES.order(candidates(stats), 1, random).get(0).getVolumeId());
+        }
+    }
+
+    private List<VolumeCandidate> candidates(VolumeWriteStats stats) {
+        List<VolumeCandidate> candidates = new ArrayList<>();
+        candidates.add(new VolumeCandidate("v0", "n0", null, 1000, 0, stats.inFlight("v0"), stats.latency("v0")));
+        candidates.add(new VolumeCandidate("v1", "n1", null, 1000, 0, stats.inFlight("v1"), stats.latency("v1")));
+        return candidates;
+    }
+}
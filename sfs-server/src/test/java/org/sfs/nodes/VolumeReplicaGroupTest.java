@@ -0,0 +1,180 @@
+/*
+ * Copyright 2018 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sfs.RunTestOnContextRx;
+import org.sfs.TestServer;
+import org.sfs.TestSubscriber;
+import org.sfs.filesystem.volume.DigestBlob;
+import org.sfs.io.BufferEndableWriteStream;
+import org.sfs.io.BufferReadStream;
+import org.sfs.io.BufferWriteEndableWriteStream;
+import org.sfs.io.ErasureEncodeWriteStream;
+import org.sfs.nodes.TestVolumeReplicaGroup.TestVolume;
+import org.sfs.vo.ErasureCoding;
+import rx.Observable;
+import rx.Subscriber;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.sfs.util.MessageDigestFactory.SHA512;
+import static org.sfs.util.VertxAssert.assertArrayEquals;
+import static org.sfs.util.VertxAssert.assertEquals;
+import static org.sfs.util.VertxAssert.assertTrue;
+
+@RunWith(VertxUnitRunner.class)
+public class VolumeReplicaGroupTest {
+
+    @Rule
+    public final RunTestOnContextRx rule = new RunTestOnContextRx();
+
+    private final ErasureCoding erasureCoding = new ErasureCoding(3, 2, 16);
+    private final byte[] data = data(100);
+
+    @Test
+    public void testErasureCodedWriteStoresEveryFragment(TestContext context) {
+        List<TestVolume> volumes = volumes(5);
+        List<Buffer> expected = encode();
+        Async async = context.async();
+        consume(volumes, erasureCoding.getFragmentIndexes())
+                .map(digestBlobs -> {
+                    assertEquals(context, 5, digestBlobs.size());
+                    for (int i = 0; i < 5; i++) {
+                        DigestBlob digestBlob = digestBlobs.get(i);
+                        assertEquals(context, "v" + i, digestBlob.getVolume());
+                        assertEquals(context, erasureCoding.getFragmentLength(data.length), digestBlob.getLength());
+                        assertEquals(context, expected.get(i), volumes.get(i).getReceived());
+                        assertArrayEquals(context, SHA512.instance().digest(expected.get(i).getBytes()), digestBlob.getDigest(SHA512).get());
+                    }
+                    return (Void) null;
+                })
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testErasureCodedWriteStoresOnlyListedFragments(TestContext context) {
+        List<TestVolume> volumes = volumes(5);
+        List<Buffer> expected = encode();
+        Async async = context.async();
+        // the blobs are returned in the order the fragments were asked for
+        consume(volumes, Arrays.asList(4, 1))
+                .map(digestBlobs -> {
+                    assertEquals(context, 2, digestBlobs.size());
+                    assertEquals(context, "v0", digestBlobs.get(0).getVolume());
+                    assertEquals(context, "v1", digestBlobs.get(1).getVolume());
+                    assertEquals(context, expected.get(4), volumes.get(0).getReceived());
+                    assertEquals(context, expected.get(1), volumes.get(1).getReceived());
+                    for (int i = 2; i < 5; i++) {
+                        assertEquals(context, 0, volumes.get(i).getReceived().length());
+                    }
+                    return (Void) null;
+                })
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testErasureCodedWriteFailsOnLengthMismatch(TestContext context) {
+        List<TestVolume> volumes = volumes(5);
+        volumes.get(2).setTruncate(true);
+        assertFails(context, consume(volumes, erasureCoding.getFragmentIndexes()), IllegalStateException.class, "Fragment 2 length");
+    }
+
+    @Test
+    public void testErasureCodedWriteFailsOnDigestMismatch(TestContext context) {
+        List<TestVolume> volumes = volumes(5);
+        volumes.get(3).setCorrupt(true);
+        assertFails(context, consume(volumes, erasureCoding.getFragmentIndexes()), IllegalStateException.class, "Fragment 3 digest mismatch");
+    }
+
+    @Test
+    public void testErasureCodedWriteNeedsAVolumePerFragment(TestContext context) {
+        assertFails(context, consume(volumes(4), erasureCoding.getFragmentIndexes()), InsufficientReplicaVolumesAvailableException.class, null);
+    }
+
+    protected Observable<List<DigestBlob>> consume(List<TestVolume> volumes, List<Integer> fragmentIndexes) {
+        TestVolumeReplicaGroup volumeReplicaGroup = new TestVolumeReplicaGroup(new TestServer(rule.vertx()).vertxContext(), fragmentIndexes.size(), volumes);
+        return volumeReplicaGroup.consume(data.length, erasureCoding, fragmentIndexes, SHA512, new BufferReadStream(Buffer.buffer(data)));
+    }
+
+    protected void assertFails(TestContext context, Observable<List<DigestBlob>> observable, Class<? extends Throwable> expected, String messagePrefix) {
+        Async async = context.async();
+        observable.subscribe(new Subscriber<List<DigestBlob>>() {
+            @Override
+            public void onCompleted() {
+                context.fail("Expected " + expected.getSimpleName());
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                Throwable cause = e;
+                while (cause != null && !expected.isInstance(cause)) {
+                    cause = cause.getCause();
+                }
+                assertTrue(context, "Unexpected " + e, cause != null);
+                if (messagePrefix != null) {
+                    assertTrue(context, cause.getMessage(), cause.getMessage().startsWith(messagePrefix));
+                }
+                async.complete();
+            }
+
+            @Override
+            public void onNext(List<DigestBlob> digestBlobs) {
+
+            }
+        });
+    }
+
+    protected List<TestVolume> volumes(int count) {
+        List<TestVolume> volumes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            volumes.add(new TestVolume("v" + i));
+        }
+        return volumes;
+    }
+
+    protected List<Buffer> encode() {
+        List<BufferWriteEndableWriteStream> fragments = new ArrayList<>();
+        List<BufferEndableWriteStream> fragmentWriteStreams = new ArrayList<>();
+        for (int i = 0; i < erasureCoding.getNumberOfFragments(); i++) {
+            BufferWriteEndableWriteStream fragment = new BufferWriteEndableWriteStream();
+            fragments.add(fragment);
+            fragmentWriteStreams.add(fragment);
+        }
+        new ErasureEncodeWriteStream(erasureCoding, fragmentWriteStreams).end(Buffer.buffer(data));
+        List<Buffer> buffers = new ArrayList<>();
+        for (BufferWriteEndableWriteStream fragment : fragments) {
+            buffers.add(fragment.toBuffer());
+        }
+        return buffers;
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        new Random(1).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2018 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes.all.segment;
+
+import com.google.common.base.Optional;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sfs.RunTestOnContextRx;
+import org.sfs.TestSubscriber;
+import org.sfs.filesystem.volume.ReadStreamBlob;
+import org.sfs.io.BufferEndableWriteStream;
+import org.sfs.io.BufferReadStream;
+import org.sfs.io.BufferWriteEndableWriteStream;
+import org.sfs.io.ErasureEncodeWriteStream;
+import org.sfs.nodes.all.segment.ErasureCodedReadStreamBlob.StripeRange;
+import org.sfs.vo.ErasureCoding;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.of;
+import static org.sfs.io.AsyncIO.pump;
+import static org.sfs.util.VertxAssert.assertEquals;
+
+@RunWith(VertxUnitRunner.class)
+public class ErasureCodedReadStreamBlobTest {
+
+    @Rule
+    public final RunTestOnContextRx rule = new RunTestOnContextRx();
+
+    @Test
+    public void testStripeRange(TestContext context) {
+        ErasureCoding erasureCoding = new ErasureCoding(4, 2, 16);
+
+        StripeRange all = new StripeRange(erasureCoding, 1000, absent(), absent());
+        assertEquals(context, 0L, all.getOffset());
+        assertEquals(context, 1000L, all.getLength());
+        assertEquals(context, 0L, all.getFragmentOffset());
+        assertEquals(context, erasureCoding.getFragmentLength(1000), all.getFragmentLength());
+        assertEquals(context, 0L, all.getSkip());
+
+        // inside the second stripe
+        StripeRange inside = new StripeRange(erasureCoding, 1000, of(70L), of(10L));
+        assertEquals(context, 16L, inside.getFragmentOffset());
+        assertEquals(context, 16L, inside.getFragmentLength());
+        assertEquals(context, 6L, inside.getSkip());
+
+        // across the boundary of the second and third stripes
+        StripeRange across = new StripeRange(erasureCoding, 1000, of(120L), of(20L));
+        assertEquals(context, 16L, across.getFragmentOffset());
+        assertEquals(context, 32L, across.getFragmentLength());
+        assertEquals(context, 56L, across.getSkip());
+
+        // past the end of the segment
+        StripeRange past = new StripeRange(erasureCoding, 1000, of(990L), of(100L));
+        assertEquals(context, 10L, past.getLength());
+        assertEquals(context, 15 * 16L, past.getFragmentOffset());
+        assertEquals(context, 16L, past.getFragmentLength());
+    }
+
+    @Test
+    public void testDecodeWithMissingFragments(TestContext context) {
+        ErasureCoding erasureCoding = new ErasureCoding(4, 2, 16);
+        byte[] data = new byte[1000];
+        new Random(1).nextBytes(data);
+        List<Buffer> fragments = encode(erasureCoding, data);
+
+        long[][] ranges = new long[][]{
+                {-1, -1},
+                {0, 1},
+                {5, 100},
+                {63, 2},
+                {70, 10},
+                {500, -1},
+                {999, -1},
+                {990, 100}};
+
+        List<Set<Integer>> combinations = combinations(erasureCoding.getNumberOfFragments(), erasureCoding.getDataFragments());
+        // every way of dropping up to the number of parity fragments
+        assertEquals(context, 15, combinations.size());
+
+        List<Observable<Void>> reads = new ArrayList<>();
+        for (Set<Integer> fragmentIndexes : combinations) {
+            for (long[] range : ranges) {
+                Optional<Long> oOffset = range[0] >= 0 ? of(range[0]) : absent();
+                Optional<Long> oLength = range[1] >= 0 ? of(range[1]) : absent();
+                reads.add(Observable.defer(() -> assertRead(context, erasureCoding, data, fragments, fragmentIndexes, oOffset, oLength)));
+            }
+        }
+
+        Async async = context.async();
+        Observable.concat(Observable.from(reads))
+                .count()
+                .map(count -> (Void) null)
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testDiscardReleasesEveryFragment(TestContext context) {
+        ErasureCoding erasureCoding = new ErasureCoding(2, 1, 16);
+        StripeRange stripeRange = new StripeRange(erasureCoding, 10, absent(), absent());
+        Set<Integer> discarded = new TreeSet<>();
+        SortedMap<Integer, ReadStreamBlob> fragments = new TreeMap<>();
+        for (int fragmentIndex : new int[]{0, 2}) {
+            fragments.put(fragmentIndex, new ReadStreamBlob("volume", 0, 0, 16) {
+                @Override
+                public Observable<Void> produce(BufferEndableWriteStream bufferStreamConsumer) {
+                    return Observable.error(new IllegalStateException("discarded fragments are never produced"));
+                }
+
+                @Override
+                public void discard() {
+                    discarded.add(fragmentIndex);
+                }
+            });
+        }
+
+        new ErasureCodedReadStreamBlob("volume", 0, erasureCoding, stripeRange, fragments).discard();
+
+        assertEquals(context, new TreeSet<>(Arrays.asList(0, 2)), discarded);
+    }
+
+    protected Observable<Void> assertRead(TestContext context, ErasureCoding erasureCoding, byte[] data, List<Buffer> fragments, Set<Integer> fragmentIndexes, Optional<Long> oOffset, Optional<Long> oLength) {
+        StripeRange stripeRange = new StripeRange(erasureCoding, data.length, oOffset, oLength);
+        SortedMap<Integer, ReadStreamBlob> readStreamBlobs = new TreeMap<>();
+        for (int fragmentIndex : fragmentIndexes) {
+            // a volume only returns the requested range of the fragment
+            Buffer fragment = fragments.get(fragmentIndex);
+            int start = (int) stripeRange.getFragmentOffset();
+            int end = (int) (stripeRange.getFragmentOffset() + stripeRange.getFragmentLength());
+            readStreamBlobs.put(fragmentIndex, new BufferReadStreamBlob(fragment.getBuffer(start, end)));
+        }
+        ErasureCodedReadStreamBlob readStreamBlob = new ErasureCodedReadStreamBlob("volume", 0, erasureCoding, stripeRange, readStreamBlobs);
+        BufferWriteEndableWriteStream output = new BufferWriteEndableWriteStream();
+        return readStreamBlob.produce(output)
+                .map(aVoid -> {
+                    int start = (int) stripeRange.getOffset();
+                    int end = (int) (stripeRange.getOffset() + stripeRange.getLength());
+                    String message = "fragments " + fragmentIndexes + " offset " + oOffset + " length " + oLength;
+                    assertEquals(context, message, Buffer.buffer(Arrays.copyOfRange(data, start, end)), output.toBuffer());
+                    return (Void) null;
+                });
+    }
+
+    protected List<Buffer> encode(ErasureCoding erasureCoding, byte[] data) {
+        List<BufferWriteEndableWriteStream> fragments = new ArrayList<>();
+        List<BufferEndableWriteStream> fragmentWriteStreams = new ArrayList<>();
+        for (int i = 0; i < erasureCoding.getNumberOfFragments(); i++) {
+            BufferWriteEndableWriteStream fragment = new BufferWriteEndableWriteStream();
+            fragments.add(fragment);
+            fragmentWriteStreams.add(fragment);
+        }
+        ErasureEncodeWriteStream encoder = new ErasureEncodeWriteStream(erasureCoding, fragmentWriteStreams);
+        encoder.end(Buffer.buffer(data));
+        List<Buffer> buffers = new ArrayList<>();
+        for (BufferWriteEndableWriteStream fragment : fragments) {
+            buffers.add(fragment.toBuffer());
+        }
+        return buffers;
+    }
+
+    // every set of size fragment indexes from 0 to numberOfFragments - 1
+    protected List<Set<Integer>> combinations(int numberOfFragments, int size) {
+        List<Set<Integer>> combinations = new ArrayList<>();
+        for (int mask = 0; mask < 1 << numberOfFragments; mask++) {
+            if (Integer.bitCount(mask) == size) {
+                Set<Integer> fragmentIndexes = new TreeSet<>();
+                for (int i = 0; i < numberOfFragments; i++) {
+                    if ((mask & (1 << i)) != 0) {
+                        fragmentIndexes.add(i);
+                    }
+                }
+                combinations.add(fragmentIndexes);
+            }
+        }
+        return combinations;
+    }
+
+    private static class BufferReadStreamBlob extends ReadStreamBlob {
+
+        private final Buffer buffer;
+
+        public BufferReadStreamBlob(Buffer buffer) {
+            super("volume", 0, 0, buffer.length());
+            this.buffer = buffer;
+        }
+
+        @Override
+        public Observable<Void> produce(BufferEndableWriteStream bufferStreamConsumer) {
+            return pump(new BufferReadStream(buffer), bufferStreamConsumer);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2018 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes.all.segment;
+
+import com.google.common.base.Optional;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sfs.RunTestOnContextRx;
+import org.sfs.TestServer;
+import org.sfs.TestSubscriber;
+import org.sfs.filesystem.volume.ReadStreamBlob;
+import org.sfs.io.BufferEndableWriteStream;
+import org.sfs.io.BufferReadStream;
+import org.sfs.io.BufferWriteEndableWriteStream;
+import org.sfs.io.ErasureEncodeWriteStream;
+import org.sfs.nodes.TestVolumeReplicaGroup;
+import org.sfs.nodes.TestVolumeReplicaGroup.TestVolume;
+import org.sfs.nodes.VolumeReplicaGroup;
+import org.sfs.nodes.all.segment.ErasureCodedReadStreamBlob.StripeRange;
+import org.sfs.rx.Defer;
+import org.sfs.rx.Holder2;
+import org.sfs.vo.ErasureCoding;
+import org.sfs.vo.PersistentAccount;
+import org.sfs.vo.PersistentContainer;
+import org.sfs.vo.TransientBlobReference;
+import org.sfs.vo.TransientObject;
+import org.sfs.vo.TransientSegment;
+import org.sfs.vo.TransientVersion;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.of;
+import static org.sfs.io.AsyncIO.pump;
+import static org.sfs.util.MessageDigestFactory.SHA512;
+import static org.sfs.util.VertxAssert.assertArrayEquals;
+import static org.sfs.util.VertxAssert.assertEquals;
+import static org.sfs.util.VertxAssert.assertFalse;
+import static org.sfs.util.VertxAssert.assertTrue;
+
+@RunWith(VertxUnitRunner.class)
+public class RebalanceSegmentTest {
+
+    @Rule
+    public final RunTestOnContextRx rule = new RunTestOnContextRx();
+
+    private final ErasureCoding erasureCoding = new ErasureCoding(3, 2, 16);
+    private final byte[] data = data(100);
+    private final List<Buffer> fragments = encode();
+
+    @Test
+    public void testRegeneratesMissingFragments(TestContext context) {
+        TransientSegment segment = segment(0, 2, 3);
+        // a0 already holds a fragment of the segment so it can't be used
+        List<TestVolume> volumes = Arrays.asList(new TestVolume("a0"), new TestVolume("n0"), new TestVolume("n1"));
+        TestRebalanceSegment rebalanceSegment = new TestRebalanceSegment(volumes);
+        Async async = context.async();
+        just(segment)
+                .flatMap(rebalanceSegment)
+                .map(rebalanced -> {
+                    assertTrue(context, rebalanced);
+                    assertEquals(context, 1, rebalanceSegment.reads);
+                    assertEquals(context, 0, volumes.get(0).getReceived().length());
+                    assertEquals(context, fragments.get(1), volumes.get(1).getReceived());
+                    assertEquals(context, fragments.get(4), volumes.get(2).getReceived());
+
+                    List<TransientBlobReference> blobs = segment.getBlobs();
+                    assertEquals(context, 5, blobs.size());
+                    assertNewFragment(context, segment, blobs.get(3), 1, "n0");
+                    assertNewFragment(context, segment, blobs.get(4), 4, "n1");
+                    return (Void) null;
+                })
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testTooFewFragmentsToRegenerate(TestContext context) {
+        TransientSegment segment = segment(0, 4);
+        List<TestVolume> volumes = Arrays.asList(new TestVolume("n0"), new TestVolume("n1"), new TestVolume("n2"));
+        TestRebalanceSegment rebalanceSegment = new TestRebalanceSegment(volumes);
+        Async async = context.async();
+        just(segment)
+                .flatMap(rebalanceSegment)
+                .map(rebalanced -> {
+                    assertFalse(context, rebalanced);
+                    assertEquals(context, 0, rebalanceSegment.reads);
+                    assertEquals(context, 2, segment.getBlobs().size());
+                    return (Void) null;
+                })
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testNothingToRegenerate(TestContext context) {
+        TransientSegment segment = segment(0, 1, 2, 3, 4);
+        TestRebalanceSegment rebalanceSegment = new TestRebalanceSegment(Arrays.asList(new TestVolume("n0")));
+        Async async = context.async();
+        just(segment)
+                .flatMap(rebalanceSegment)
+                .map(rebalanced -> {
+                    assertFalse(context, rebalanced);
+                    assertEquals(context, 0, rebalanceSegment.reads);
+                    assertEquals(context, 5, segment.getBlobs().size());
+                    return (Void) null;
+                })
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    protected void assertNewFragment(TestContext context, TransientSegment segment, TransientBlobReference blob, int fragmentIndex, String volumeId) {
+        assertEquals(context, fragmentIndex, blob.getFragmentIndex().get().intValue());
+        assertEquals(context, volumeId, blob.getVolumeId().get());
+        assertEquals(context, erasureCoding.getFragmentLength(data.length), blob.getReadLength().get().longValue());
+        // the regenerated fragment verifies against the digest recorded when the segment was written
+        assertArrayEquals(context, segment.getExpectedBlobDigest(blob).get(), blob.getReadDigest().get());
+        // and is left to the next maintain run to be acknowledged
+        assertFalse(context, blob.isAcknowledged());
+    }
+
+    protected Observable<TransientSegment> just(TransientSegment segment) {
+        return Defer.just(segment);
+    }
+
+    protected TransientSegment segment(int... fragmentIndexes) {
+        PersistentAccount account = new PersistentAccount("/account", 0);
+        PersistentContainer container = new PersistentContainer(account, "/account/container", 0);
+        TransientObject object = new TransientObject(container, "/account/container/object");
+        TransientVersion version = object.newVersion();
+        TransientSegment segment = new TransientSegment(version, 0);
+        List<byte[]> fragmentDigests = new ArrayList<>();
+        for (Buffer fragment : fragments) {
+            fragmentDigests.add(SHA512.instance().digest(fragment.getBytes()));
+        }
+        byte[] md5 = new byte[16];
+        segment.setErasureCoding(erasureCoding)
+                .setFragmentDigests(fragmentDigests)
+                .setBlobDigestAlgorithm(SHA512)
+                .setWriteLength((long) data.length)
+                .setReadLength((long) data.length)
+                .setReadMd5(md5)
+                .setReadSha512(SHA512.instance().digest(data))
+                .setWriteDigest(SHA512.instance().digest(data));
+        for (int fragmentIndex : fragmentIndexes) {
+            segment.newBlob()
+                    .setFragmentIndex(fragmentIndex)
+                    .setVolumeId("a" + fragmentIndex)
+                    .setPosition(0L)
+                    .setReadLength(erasureCoding.getFragmentLength(data.length))
+                    .setReadDigest(fragmentDigests.get(fragmentIndex))
+                    .setDigestAlgorithm(SHA512)
+                    .setAcknowledged(true);
+        }
+        return segment;
+    }
+
+    protected List<Buffer> encode() {
+        List<BufferWriteEndableWriteStream> fragments = new ArrayList<>();
+        List<BufferEndableWriteStream> fragmentWriteStreams = new ArrayList<>();
+        for (int i = 0; i < erasureCoding.getNumberOfFragments(); i++) {
+            BufferWriteEndableWriteStream fragment = new BufferWriteEndableWriteStream();
+            fragments.add(fragment);
+            fragmentWriteStreams.add(fragment);
+        }
+        new ErasureEncodeWriteStream(erasureCoding, fragmentWriteStreams).end(Buffer.buffer(data));
+        List<Buffer> buffers = new ArrayList<>();
+        for (BufferWriteEndableWriteStream fragment : fragments) {
+            buffers.add(fragment.toBuffer());
+        }
+        return buffers;
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        new Random(1).nextBytes(data);
+        return data;
+    }
+
+    // reads the fragments from memory and writes the regenerated ones to test volumes
+    private class TestRebalanceSegment extends RebalanceSegment {
+
+        private final List<TestVolume> volumes;
+        private int reads = 0;
+
+        public TestRebalanceSegment(List<TestVolume> volumes) {
+            super(new TestServer(rule.vertx()).vertxContext(), new ArrayList<>());
+            this.volumes = volumes;
+        }
+
+        @Override
+        protected Observable<Optional<Holder2<TransientBlobReference, ReadStreamBlob>>> readSegment(TransientSegment transientSegment) {
+            reads++;
+            StripeRange stripeRange = new StripeRange(erasureCoding, data.length, absent(), absent());
+            SortedMap<Integer, ReadStreamBlob> readStreamBlobs = new TreeMap<>();
+            TransientBlobReference first = null;
+            for (TransientBlobReference blob : transientSegment.verifiedAckdBlobs()) {
+                int fragmentIndex = blob.getFragmentIndex().get();
+                if (readStreamBlobs.size() < erasureCoding.getDataFragments()) {
+                    Buffer fragment = fragments.get(fragmentIndex);
+                    readStreamBlobs.put(fragmentIndex, new ReadStreamBlob(blob.getVolumeId().get(), 0, 0, fragment.length()) {
+                        @Override
+                        public Observable<Void> produce(BufferEndableWriteStream bufferStreamConsumer) {
+                            return pump(new BufferReadStream(fragment), bufferStreamConsumer);
+                        }
+                    });
+                    if (first == null) {
+                        first = blob;
+                    }
+                }
+            }
+            ReadStreamBlob readStreamBlob = new ErasureCodedReadStreamBlob(first.getVolumeId().get(), 0, erasureCoding, stripeRange, readStreamBlobs);
+            return Defer.just(of(new Holder2<>(first, readStreamBlob)));
+        }
+
+        @Override
+        protected VolumeReplicaGroup volumeReplicaGroup(int numberOfCopies, Set<String> usedVolumeIds) {
+            return new TestVolumeReplicaGroup(new TestServer(rule.vertx()).vertxContext(), numberOfCopies, volumes)
+                    .setExcludeVolumeIds(usedVolumeIds);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.nodes.compute.object;
+
+import com.google.common.base.Optional;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sfs.RunTestOnContextRx;
+import org.sfs.TestSubscriber;
+import org.sfs.filesystem.volume.ReadStreamBlob;
+import org.sfs.io.BufferEndableWriteStream;
+import org.sfs.io.BufferWriteEndableWriteStream;
+import org.sfs.io.NoEndEndableWriteStream;
+import org.sfs.rx.Defer;
+import org.sfs.rx.Holder2;
+import org.sfs.rx.ObservableFuture;
+import org.sfs.rx.RxHelper;
+import org.sfs.vo.ByteRange;
+import org.sfs.vo.PersistentAccount;
+import org.sfs.vo.PersistentContainer;
+import org.sfs.vo.TransientObject;
+import org.sfs.vo.TransientSegment;
+import org.sfs.vo.TransientVersion;
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.subjects.PublishSubject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.google.common.base.Optional.absent;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Sets.newTreeSet;
+import static org.sfs.util.VertxAssert.assertEquals;
+
+@RunWith(VertxUnitRunner.class)
+public class CopySegmentsReadStreamsTest {
+
+    @Rule
+    public final RunTestOnContextRx rule = new RunTestOnContextRx();
+
+    @Test
+    public void testSegmentOrderWhenOpensCompleteOutOfOrder(TestContext context) {
+        Vertx vertx = rule.vertx();
+        BufferWriteEndableWriteStream writeStream = new BufferWriteEndableWriteStream();
+        // the later segments open first
+        TestCopy copy = new TestCopy(vertx, writeStream, 3, new long[]{40, 30, 20, 10});
+        Async async = context.async();
+        copy.copy(segments(4))
+                .map(aVoid -> {
+                    assertEquals(context, "0123", writeStream.toBuffer().toString());
+                    assertEquals(context, newArrayList(0, 1, 2, 3), copy.opened);
+                    assertEquals(context, newTreeSet(), copy.discarded);
+                    return (Void) null;
+                })
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testPrefetchedStreamsDiscardedOnError(TestContext context) {
+        Vertx vertx = rule.vertx();
+        BufferWriteEndableWriteStream writeStream = new BufferWriteEndableWriteStream();
+        TestCopy copy = new TestCopy(vertx, writeStream, 3, new long[]{10, 20, 1, 1});
+        copy.failOpen = 1;
+        Async async = context.async();
+        copy.copy(segments(4))
+                .subscribe(new Subscriber<Void>() {
+                    @Override
+                    public void onCompleted() {
+                        context.fail("copy should have failed");
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        vertx.setTimer(100, timerId -> {
+                            assertEquals(context, "0", writeStream.toBuffer().toString());
+                            // the streams opened ahead of the failed segment are never read
+                            assertEquals(context, newTreeSet(newArrayList(2, 3)), copy.discarded);
+                            async.complete();
+                        });
+                    }
+
+                    @Override
+                    public void onNext(Void aVoid) {
+
+                    }
+                });
+    }
+
+    @Test
+    public void testPrefetchedStreamsDiscardedOnUnsubscribe(TestContext context) {
+        Vertx vertx = rule.vertx();
+        BufferWriteEndableWriteStream writeStream = new BufferWriteEndableWriteStream();
+        TestCopy copy = new TestCopy(vertx, writeStream, 3, new long[]{1, 1, 1, 1});
+        // the copy of segment 1 never finishes
+        copy.stallProduce = 1;
+        Async async = context.async();
+        Subscription subscription = copy.copy(segments(4)).subscribe(new TestSubscriber(context, async));
+        copy.producing.subscribe(index -> {
+            if (index == 1) {
+                vertx.setTimer(50, timerId -> {
+                    subscription.unsubscribe();
+                    vertx.setTimer(50, timerId1 -> {
+                        assertEquals(context, newTreeSet(newArrayList(2, 3)), copy.discarded);
+                        async.complete();
+                    });
+                });
+            }
+        });
+    }
+
+    @Test
+    public void testNoPrefetchOpensEachSegmentWhenItIsCopied(TestContext context) {
+        Vertx vertx = rule.vertx();
+        BufferWriteEndableWriteStream writeStream = new BufferWriteEndableWriteStream();
+        TestCopy copy = new TestCopy(vertx, writeStream, 0, new long[]{10, 1, 1});
+        Async async = context.async();
+        copy.copy(segments(3))
+                .map(aVoid -> {
+                    assertEquals(context, "012", writeStream.toBuffer().toString());
+                    assertEquals(context, newArrayList("open0", "produce0", "open1", "produce1", "open2", "produce2"), copy.events);
+                    return (Void) null;
+                })
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    private List<Holder2<TransientSegment, Optional<ByteRange>>> segments(int count) {
+        PersistentAccount account = new PersistentAccount("/account", 0);
+        PersistentContainer container = new PersistentContainer(account, "/account/container", 0);
+        TransientObject object = new TransientObject(container, "/account/container/object");
+        TransientVersion version = object.newVersion();
+        List<TransientSegment> segments = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            TransientSegment segment = new TransientSegment(version, i);
+            segment.newBlob();
+            segments.add(segment);
+        }
+        return CopySegmentsReadStreams.segmentRanges(segments, absent());
+    }
+
+    private static class TestCopy extends CopySegmentsReadStreams {
+
+        private final Vertx vertx;
+        private final BufferEndableWriteStream writeStream;
+        private final int prefetch;
+        private final long[] openDelays;
+        private final List<Integer> opened = new ArrayList<>();
+        private final Set<Integer> discarded = new TreeSet<>();
+        private final List<String> events = new ArrayList<>();
+        private final PublishSubject<Integer> producing = PublishSubject.create();
+        private int failOpen = -1;
+        private int stallProduce = -1;
+
+        public TestCopy(Vertx vertx, BufferEndableWriteStream writeStream, int prefetch, long[] openDelays) {
+            super(null, writeStream, false);
+            this.vertx = vertx;
+            this.writeStream = writeStream;
+            this.prefetch = prefetch;
+            this.openDelays = openDelays;
+        }
+
+        @Override
+        protected Vertx vertx() {
+            return vertx;
+        }
+
+        @Override
+        protected int prefetch() {
+            return prefetch;
+        }
+
+        @Override
+        protected long maxIdle() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        protected Observable<OpenedSegment> open(Holder2<TransientSegment, Optional<ByteRange>> segmentRange) {
+            TransientSegment transientSegment = segmentRange.value0();
+            int index = (int) transientSegment.getId();
+            opened.add(index);
+            events.add("open" + index);
+            ObservableFuture<OpenedSegment> handler = RxHelper.observableFuture();
+            vertx.setTimer(openDelays[index], timerId -> {
+                if (index == failOpen) {
+                    handler.fail(new RuntimeException("open " + index));
+                } else {
+                    SegmentRead segmentRead = new SegmentRead(absent(), absent(), new NoEndEndableWriteStream(writeStream));
+                    handler.complete(new OpenedSegment(segmentRead, transientSegment.getBlobs().get(0), new TestBlob(index)));
+                }
+            });
+            return handler;
+        }
+
+        private class TestBlob extends ReadStreamBlob {
+
+            private final int index;
+
+            public TestBlob(int index) {
+                super("volume", 0, 0, 1);
+                this.index = index;
+            }
+
+            @Override
+            public Observable<Void> produce(BufferEndableWriteStream bufferStreamConsumer) {
+                events.add("produce" + index);
+                producing.onNext(index);
+                if (index == stallProduce) {
+                    return Observable.never();
+                }
+                bufferStreamConsumer.write(Buffer.buffer(String.valueOf(index)));
+                return Defer.aVoid();
+            }
+
+            @Override
+            public void discard() {
+                discarded.add(index);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.util;
+
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.io.BaseEncoding.base16;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.sfs.util.MessageDigestFactory.CRC32C;
+import static org.sfs.util.MessageDigestFactory.XXHASH64;
+import static org.sfs.util.MessageDigestFactory.fromValueIfExists;
+
+public class MessageDigestFactoryTest {
+
+    @Test
+    public void testXxHash64() {
+        assertEquals("ef46db3751d8e999", hex(XXHASH64, ""));
+        assertEquals("d24ec4f1a98c6e5b", hex(XXHASH64, "a"));
+        assertEquals("44bc2cf5ad770999", hex(XXHASH64, "abc"));
+        assertEquals("fbcea83c8a378bf1", hex(XXHASH64, "Nobody inspects the spammish repetition"));
+    }
+
+    @Test
+    public void testCrc32c() {
+        // guava's byte order, which is little endian
+        assertEquals("839206e3", hex(CRC32C, "123456789"));
+    }
+
+    @Test
+    public void testUpdatesOfAnySize() {
+        Random random = new Random(0);
+        byte[] data = new byte[10000];
+        random.nextBytes(data);
+        for (MessageDigestFactory messageDigestFactory : new MessageDigestFactory[]{XXHASH64, CRC32C}) {
+            byte[] expected = messageDigestFactory.instance().digest(data);
+            MessageDigest messageDigest = messageDigestFactory.instance();
+            int offset = 0;
+            while (offset < data.length) {
+                int length = Math.min(data.length - offset, random.nextInt(100));
+                messageDigest.update(data, offset, length);
+                offset += length;
+            }
+            assertArrayEquals(expected, messageDigest.digest());
+            // digest resets the state
+            assertArrayEquals(expected, messageDigest.digest(data));
+        }
+    }
+
+    @Test
+    public void testFromValue() {
+        assertEquals(XXHASH64, fromValueIfExists("xxh64").get());
+        assertEquals(CRC32C, fromValueIfExists("crc32c").get());
+    }
+
+    private static String hex(MessageDigestFactory messageDigestFactory, String value) {
+        return base16().lowerCase().encode(messageDigestFactory.instance().digest(value.getBytes(UTF_8)));
+    }
+}
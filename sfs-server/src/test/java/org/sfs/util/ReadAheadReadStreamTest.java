@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.sfs.util;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sfs.RunTestOnContextRx;
+import org.sfs.TestSubscriber;
+import org.sfs.io.BufferReadStream;
+import org.sfs.io.BufferWriteEndableWriteStream;
+import org.sfs.io.ReadAheadReadStream;
+import org.sfs.io.ReplayReadStream;
+
+import static io.vertx.core.buffer.Buffer.buffer;
+import static org.sfs.io.AsyncIO.pump;
+import static org.sfs.util.VertxAssert.assertArrayEquals;
+import static org.sfs.util.VertxAssert.assertEquals;
+import static org.sfs.util.VertxAssert.assertFalse;
+import static org.sfs.util.VertxAssert.assertTrue;
+
+@RunWith(VertxUnitRunner.class)
+public class ReadAheadReadStreamTest {
+
+    @Rule
+    public final RunTestOnContextRx rule = new RunTestOnContextRx();
+
+    @Test
+    public void testEndsBeforeLimit(TestContext context) {
+        Buffer expected = buffer("HELLO");
+        ReadAheadReadStream readAheadReadStream = new ReadAheadReadStream(new BufferReadStream(expected), 10);
+        BufferWriteEndableWriteStream bufferWriteStream = new BufferWriteEndableWriteStream();
+
+        Async async = context.async();
+        readAheadReadStream.readAhead()
+                .doOnNext(aVoid -> {
+                    assertTrue(context, readAheadReadStream.isEnded());
+                    assertEquals(context, expected.length(), readAheadReadStream.getReadAheadLength());
+                })
+                .flatMap(aVoid -> pump(readAheadReadStream, bufferWriteStream))
+                .doOnNext(aVoid -> assertArrayEquals(context, expected.getBytes(), bufferWriteStream.toBuffer().getBytes()))
+                .subscribe(new TestSubscriber(context, async));
+    }
+
+    @Test
+    public void testReplaysReadAheadBeforeRest(TestContext context) {
+        Buffer chunk = buffer("HELLO");
+        Buffer expected = buffer();
+        for (int i = 0; i < 4; i++) {
+            expected.appendBuffer(chunk);
+        }
+        ReplayReadStream replayReadStream = new ReplayReadStream(chunk, 4);
+        replayReadStream.pause();
+        ReadAheadReadStream readAheadReadStream = new ReadAheadReadStream(replayReadStream, 3);
+        BufferWriteEndableWriteStream bufferWriteStream = new BufferWriteEndableWriteStream();
+
+        Async async = context.async();
+        readAheadReadStream.readAhead()
+                .doOnNext(aVoid -> {
+                    assertFalse(context, readAheadReadStream.isEnded());
+                    assertEquals(context, chunk.length(), readAheadReadStream.getReadAheadLength());
+                })
+                .flatMap(aVoid -> pump(readAheadReadStream, bufferWriteStream))
+                .doOnNext(aVoid -> assertArrayEquals(context, expected.getBytes(), bufferWriteStream.toBuffer().getBytes()))
+                .subscribe(new TestSubscriber(context, async));
+    }
+}
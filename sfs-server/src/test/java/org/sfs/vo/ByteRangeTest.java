@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.vo;
+
+import com.google.common.base.Optional;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class ByteRangeTest {
+
+    @Test
+    public void testSingleRange() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=0-499", 1000).get();
+        Assert.assertEquals(1, ranges.size());
+        Assert.assertEquals(new ByteRange(0, 499), ranges.get(0));
+        Assert.assertEquals(500, ranges.get(0).getLength());
+        Assert.assertEquals("bytes 0-499/1000", ranges.get(0).toContentRange(1000));
+    }
+
+    @Test
+    public void testOpenEndedAndSuffixRanges() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=900-, -100, 990-5000", 1000).get();
+        Assert.assertEquals(3, ranges.size());
+        Assert.assertEquals(new ByteRange(900, 999), ranges.get(0));
+        Assert.assertEquals(new ByteRange(900, 999), ranges.get(1));
+        Assert.assertEquals(new ByteRange(990, 999), ranges.get(2));
+
+        Assert.assertEquals(new ByteRange(0, 9), ByteRange.parse("bytes=-100", 10).get().get(0));
+    }
+
+    @Test
+    public void testUnsatisfiable() {
+        Optional<List<ByteRange>> oRanges = ByteRange.parse("bytes=1000-1001", 1000);
+        Assert.assertTrue(oRanges.isPresent());
+        Assert.assertTrue(oRanges.get().isEmpty());
+
+        oRanges = ByteRange.parse("bytes=-0", 1000);
+        Assert.assertTrue(oRanges.isPresent());
+        Assert.assertTrue(oRanges.get().isEmpty());
+
+        oRanges = ByteRange.parse("bytes=0-", 0);
+        Assert.assertTrue(oRanges.isPresent());
+        Assert.assertTrue(oRanges.get().isEmpty());
+    }
+
+    @Test
+    public void testMalformedIsIgnored() {
+        Assert.assertFalse(ByteRange.parse(null, 1000).isPresent());
+        Assert.assertFalse(ByteRange.parse("", 1000).isPresent());
+        Assert.assertFalse(ByteRange.parse("items=0-1", 1000).isPresent());
+        Assert.assertFalse(ByteRange.parse("bytes=", 1000).isPresent());
+        Assert.assertFalse(ByteRange.parse("bytes=5-1", 1000).isPresent());
+        Assert.assertFalse(ByteRange.parse("bytes=a-b", 1000).isPresent());
+        Assert.assertFalse(ByteRange.parse("bytes=10", 1000).isPresent());
+    }
+
+    @Test
+    public void testIntersect() {
+        ByteRange range = new ByteRange(100, 299);
+
+        Assert.assertFalse(range.intersect(0, 100).isPresent());
+        Assert.assertFalse(range.intersect(300, 100).isPresent());
+        Assert.assertFalse(range.intersect(150, 0).isPresent());
+
+        Assert.assertEquals(new ByteRange(100, 199), range.intersect(0, 200).get());
+        Assert.assertEquals(new ByteRange(0, 99), range.intersect(200, 200).get());
+        Assert.assertEquals(new ByteRange(0, 9), range.intersect(150, 10).get());
+        Assert.assertEquals(new ByteRange(50, 249), range.intersect(50, 1000).get());
+    }
+}
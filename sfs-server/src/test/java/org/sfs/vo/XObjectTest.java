@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 The Simple File Server Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sfs.vo;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class XObjectTest {
+
+    @Test
+    public void testListedLengthIsTheNewestVersion() {
+        TransientObject object = newObject();
+        newTinyVersion(object, "older");
+        TransientVersion newest = newTinyVersion(object, "the newest");
+
+        Assert.assertEquals("the newest".length(), object.listedLength());
+        Assert.assertEquals((long) "the newest".length(), object.toJsonObject().getLong("listed_length").longValue());
+
+        newest.setDeleteAt(1L);
+        Assert.assertEquals(1L, object.toJsonObject().getLong("listed_delete_at").longValue());
+    }
+
+    @Test
+    public void testListedLengthOfDeletedNewestVersion() {
+        TransientObject object = newObject();
+        newTinyVersion(object, "older");
+        newTinyVersion(object, "the newest").setDeleted(true);
+
+        Assert.assertEquals(0, object.listedLength());
+    }
+
+    @Test
+    public void testListedLengthOfDeleteMarker() {
+        TransientObject object = newObject();
+        newTinyVersion(object, "older");
+        object.newVersion().setDeleteMarker(true);
+
+        Assert.assertEquals(0, object.listedLength());
+    }
+
+    @Test
+    public void testListedLengthOfUnreadableVersion() {
+        TransientObject object = newObject();
+        newTinyVersion(object, "older");
+        TransientVersion newest = object.newVersion();
+        newest.newSegment().setReadLength(10L);
+
+        Assert.assertEquals(0, object.listedLength());
+    }
+
+    @Test
+    public void testListedLengthWithoutVersions() {
+        TransientObject object = newObject();
+
+        Assert.assertEquals(0, object.listedLength());
+        Assert.assertNull(object.toJsonObject().getLong("listed_delete_at"));
+    }
+
+    private TransientObject newObject() {
+        PersistentAccount account = new PersistentAccount("/account", 0);
+        PersistentContainer container = new PersistentContainer(account, "/account/container", 0);
+        return new TransientObject(container, "/account/container/object");
+    }
+
+    private TransientVersion newTinyVersion(TransientObject object, String data) {
+        TransientVersion version = object.newVersion();
+        version.newSegment()
+                .setIsTinyData(true)
+                .setTinyData(data.getBytes())
+                .setReadLength((long) data.length());
+        return version;
+    }
+}